@@ -61,17 +61,11 @@ public abstract class NodeSensitivityCalculator {
       final Interpolator1DDataBundle data = interpolatedCurve.getDataBundle();
       final List<DoublesPair> sensitivityList = curveSensitivities.get(name);
       if (sensitivityList != null && sensitivityList.size() > 0) {
-        final double[][] sensitivity = new double[sensitivityList.size()][];
-        int k = 0;
+        final double[] sensitivity = new double[interpolatedCurve.size()];
         for (final DoublesPair timeAndDF : sensitivityList) {
-          sensitivity[k++] = interpolator.getNodeSensitivitiesForValue(data, timeAndDF.getFirst());
+          interpolator.getSparseNodeSensitivitiesForValue(data, timeAndDF.first).addTo(timeAndDF.second, sensitivity);
         }
-        for (int j = 0; j < sensitivity[0].length; j++) {
-          double temp = 0.0;
-          k = 0;
-          for (final DoublesPair timeAndDF : sensitivityList) {
-            temp += timeAndDF.getSecond() * sensitivity[k++][j];
-          }
+        for (final double temp : sensitivity) {
           result.add(temp);
         }
       } else {
@@ -96,18 +90,9 @@ public abstract class NodeSensitivityCalculator {
         result[i] = 0;
       }
     } else {
-      final double[][] sensitivity = new double[curveSensitivities.size()][];
-      int k = 0;
+      // only the nodes around each time have a non-zero sensitivity for local interpolators
       for (final DoublesPair timeAndDF : curveSensitivities) {
-        sensitivity[k++] = interpolator.getNodeSensitivitiesForValue(data, timeAndDF.getFirst());
-      }
-      for (int j = 0; j < sensitivity[0].length; j++) {
-        double temp = 0.0;
-        k = 0;
-        for (final DoublesPair timeAndDF : curveSensitivities) {
-          temp += timeAndDF.getSecond() * sensitivity[k++][j];
-        }
-        result[j] = temp;
+        interpolator.getSparseNodeSensitivitiesForValue(data, timeAndDF.first).addTo(timeAndDF.second, result);
       }
     }
     return new DoubleMatrix1D(result);
@@ -5,12 +5,10 @@
  */
 package com.opengamma.financial.model.finitedifference;
 
-import org.apache.commons.lang.Validate;
-
 import com.opengamma.math.cube.Cube;
 
 /**
- * Craig-Sneyd splitting
+ * Craig-Sneyd splitting. The tridiagonal system of each implicit sweep is solved directly by the Thomas algorithm
  * <b>Note</b> this is for testing purposes and is not recommended for actual use 
  */
 public class CraigSneydFiniteDifference2D implements ConvectionDiffusionPDESolver2D {
@@ -46,8 +44,9 @@ public class CraigSneydFiniteDifference2D implements ConvectionDiffusionPDESolve
 
     final double[] q = new double[xSteps + 1];
     final double[] r = new double[ySteps + 1];
-    final double[][] mx = new double[xSteps + 1][xSteps + 1];
-    final double[][] my = new double[ySteps + 1][ySteps + 1];
+    final double[] column = new double[xSteps + 1];
+    final TridiagonalSystem mx = new TridiagonalSystem(xSteps + 1);
+    final TridiagonalSystem my = new TridiagonalSystem(ySteps + 1);
     initializeMatrices(pdeData, xSteps, ySteps, xLowerBoundary, yLowerBoundary, dx, dy, v, x, y);
 
     double t = 0.0;
@@ -148,20 +147,20 @@ public class CraigSneydFiniteDifference2D implements ConvectionDiffusionPDESolve
           b = pdeData.getB(t, x[i], y[j]);
           c = pdeData.getC(t, x[i], y[j]);
 
-          mx[i][i - 1] = THETA * (dtdx2 * a - 0.5 * dtdx * b);
-          mx[i][i] = 1 + THETA * (-2 * dtdx2 * a + 0.5 * dt * c);
-          mx[i][i + 1] = THETA * (dtdx2 * a + 0.5 * dtdx * b);
+          mx.set(i, i - 1, THETA * (dtdx2 * a - 0.5 * dtdx * b));
+          mx.set(i, i, 1 + THETA * (-2 * dtdx2 * a + 0.5 * dt * c));
+          mx.set(i, i + 1, THETA * (dtdx2 * a + 0.5 * dtdx * b));
 
           q[i] = vt[i][j];
         }
 
         double[] temp = xLowerBoundary.getLeftMatrixCondition(pdeData, t, y[j]);
         for (int k = 0; k < temp.length; k++) {
-          mx[0][k] = temp[k];
+          mx.set(0, k, temp[k]);
         }
         temp = xUpperBoundary.getLeftMatrixCondition(pdeData, t, y[j]);
         for (int k = 0; k < temp.length; k++) {
-          mx[xSteps][xSteps - k] = temp[k];
+          mx.set(xSteps, xSteps - k, temp[k]);
         }
 
         temp = xLowerBoundary.getRightMatrixCondition(pdeData, t, y[j]);
@@ -178,10 +177,10 @@ public class CraigSneydFiniteDifference2D implements ConvectionDiffusionPDESolve
         }
         q[xSteps] = sum + xUpperBoundary.getConstant(pdeData, t, y[j], dx);
 
-        // SOR
-        final double omega = 1.5;
-        final int count = sor(xSteps, vt, q, mx, j, omega);
-        Validate.isTrue(count < 1000, "SOR exceeded max iterations");
+        mx.solve(q, column);
+        for (int l = 0; l <= xSteps; l++) {
+          vt[l][j] = column[l];
+        }
       }
 
       // stag 3 explicit in y
@@ -252,20 +251,20 @@ public class CraigSneydFiniteDifference2D implements ConvectionDiffusionPDESolve
           // my[j][j] = 1 + THETA * (-2 * dtdy2 * d - dtdy * f + 0.5 * dt * c);
           // my[j][j + 1] = THETA * (dtdy2 * d + dtdy * f);
           // }
-          my[j][j - 1] = THETA * (dtdy2 * d - 0.5 * dtdy * f);
-          my[j][j] = 1 + THETA * (-2 * dtdy2 * d + 0.5 * dt * c);
-          my[j][j + 1] = THETA * (dtdy2 * d + 0.5 * dtdy * f);
+          my.set(j, j - 1, THETA * (dtdy2 * d - 0.5 * dtdy * f));
+          my.set(j, j, 1 + THETA * (-2 * dtdy2 * d + 0.5 * dt * c));
+          my.set(j, j + 1, THETA * (dtdy2 * d + 0.5 * dtdy * f));
 
           r[j] = vt[i][j];
         }
 
         double[] temp = yLowerBoundary.getLeftMatrixCondition(pdeData, t, x[i]);
         for (int k = 0; k < temp.length; k++) {
-          my[0][k] = temp[k];
+          my.set(0, k, temp[k]);
         }
         temp = yUpperBoundary.getLeftMatrixCondition(pdeData, t, x[i]);
         for (int k = 0; k < temp.length; k++) {
-          my[ySteps][ySteps - k] = temp[k];
+          my.set(ySteps, ySteps - k, temp[k]);
         }
 
         temp = yLowerBoundary.getRightMatrixCondition(pdeData, t, x[i]);
@@ -282,34 +281,7 @@ public class CraigSneydFiniteDifference2D implements ConvectionDiffusionPDESolve
         }
         r[ySteps] = sum + yUpperBoundary.getConstant(pdeData, t, x[i], dy);
 
-        // SOR
-        final double omega = 1.5;
-        double scale = 1.0;
-        double errorSqr = Double.POSITIVE_INFINITY;
-        int count = 0;
-        while (errorSqr / (scale + 1e-10) > 1e-18 && count < 1000) {
-          errorSqr = 0.0;
-          scale = 0.0;
-          int min, max;
-          for (int l = 0; l <= ySteps; l++) {
-            min = (l == ySteps ? 0 : Math.max(0, l - 1));
-            max = (l == 0 ? ySteps : Math.min(ySteps, l + 1));
-            sum = 0;
-            // for (int k = 0; k <= ySteps; k++) {
-            for (int k = min; k <= max; k++) {
-              sum += my[l][k] * v[i][k];
-            }
-            final double correction = omega / my[l][l] * (r[l] - sum);
-            // if (freeBoundary != null) {
-            // correction = Math.max(correction, freeBoundary.getZValue(t, x[j]) - f[j]);
-            // }
-            errorSqr += correction * correction;
-            v[i][l] += correction;
-            scale += v[i][l] * v[i][l];
-          }
-          count++;
-        }
-        Validate.isTrue(count < 1000, "SOR exceeded max interations");
+        my.solve(r, v[i]);
       }
 
     } // time loop
@@ -317,38 +289,6 @@ public class CraigSneydFiniteDifference2D implements ConvectionDiffusionPDESolve
 
   }
 
-  // TODO there is almost identical code lines 297-319
-  private int sor(final int steps, final double[][] v, final double[] q, final double[][] mx, final int j, final double omega) {
-    double sum;
-    int min;
-    int max;
-    int count = 0;
-    double scale = 1.0;
-    double errorSqr = Double.POSITIVE_INFINITY;
-    while (errorSqr / (scale + 1e-10) > 1e-18 && count < 1000) {
-      errorSqr = 0.0;
-      scale = 0.0;
-      for (int l = 0; l <= steps; l++) {
-        min = (l == steps ? 0 : Math.max(0, l - 1));
-        max = (l == 0 ? steps : Math.min(steps, l + 1));
-        sum = 0;
-        // for (int k = 0; k <= xSteps; k++) {
-        for (int k = min; k <= max; k++) { // mx is tri-diagonal so only need 3 steps here
-          sum += mx[l][k] * v[k][j];
-        }
-        final double correction = omega / mx[l][l] * (q[l] - sum);
-        // if (freeBoundary != null) {
-        // correction = Math.max(correction, freeBoundary.getZValue(t, x[j]) - f[j]);
-        // }
-        errorSqr += correction * correction;
-        v[l][j] += correction;
-        scale += v[l][j] * v[l][j];
-      }
-      count++;
-    }
-    return count;
-  }
-
   private void initializeMatrices(final ConvectionDiffusion2DPDEDataBundle pdeData, final int xSteps, final int ySteps, final BoundaryCondition2D xLowerBoundary,
       final BoundaryCondition2D yLowerBoundary, final double dx, final double dy, final double[][] v, final double[] x, final double[] y) {
     double currentX = 0;
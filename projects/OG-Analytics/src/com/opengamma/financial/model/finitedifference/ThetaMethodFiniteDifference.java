@@ -6,30 +6,28 @@
 package com.opengamma.financial.model.finitedifference;
 
 import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.lang.Validate;
 
-import com.opengamma.math.linearalgebra.Decomposition;
-import com.opengamma.math.linearalgebra.DecompositionResult;
-import com.opengamma.math.linearalgebra.LUDecompositionCommons;
-import com.opengamma.math.matrix.DoubleMatrix2D;
+import com.opengamma.math.function.Function1D;
 import com.opengamma.math.surface.Surface;
 
 /**
- * A theta (i.e. weighted between explicit and implicit time stepping) scheme using SOR algorithm to solve the matrix system at each time step 
+ * A theta (i.e. weighted between explicit and implicit time stepping) scheme. The matrix system at each time step is tridiagonal and is solved
+ * directly by the Thomas algorithm, or by the Brennan-Schwartz algorithm when there is a free boundary, in O(n) time and memory 
  * This uses the exponentially fitted scheme of duffy 
  */
 public class ThetaMethodFiniteDifference implements ConvectionDiffusionPDESolver {
-  private static final Decomposition<?> DCOMP = new LUDecompositionCommons();
   private final double _theta;
   private final boolean _showFullResults;
+  private final boolean _useSOR;
 
   /**
    * Sets up a standard Crank-Nicolson scheme 
    */
   public ThetaMethodFiniteDifference() {
-    _theta = 0.5;
-    _showFullResults = false;
+    this(0.5, false, false);
   }
 
   /**
@@ -38,9 +36,20 @@ public class ThetaMethodFiniteDifference implements ConvectionDiffusionPDESolver
    * @param showFullResults Show the full results 
    */
   public ThetaMethodFiniteDifference(final double theta, final boolean showFullResults) {
+    this(theta, showFullResults, false);
+  }
+
+  /**
+   * Sets up a scheme which can solve the matrix system by SOR rather than directly, for comparison 
+   * @param theta The weight. theta = 0 - fully explicit, theta = 0.5 - Crank-Nicolson, theta = 1.0 - fully implicit
+   * @param showFullResults Show the full results 
+   * @param useSOR Solve the matrix system at each time step by SOR
+   */
+  ThetaMethodFiniteDifference(final double theta, final boolean showFullResults, final boolean useSOR) {
     Validate.isTrue(theta >= 0 && theta <= 1.0, "theta must be in the range 0 to 1");
     _theta = theta;
     _showFullResults = showFullResults;
+    _useSOR = useSOR;
   }
 
   public double getTheta() {
@@ -76,17 +85,54 @@ public class ThetaMethodFiniteDifference implements ConvectionDiffusionPDESolver
     return solver.solve();
   }
 
+  /**
+   * Solves several PDEs that share the coefficients a, b and c but have different initial and boundary conditions, e.g. the backwards PDE for
+   * European options of many strikes under the same local volatility. The coefficients and the matrix system are computed, and the matrix
+   * eliminated, once per time step for all the PDEs, so each additional PDE only costs a right hand side and a substitution.
+   * <p>
+   * Options of many expiries as well as strikes are better priced with the forward (Dupire) PDE, which gives the whole price surface from a
+   * single call of {@link #solve(ConvectionDiffusionPDEDataBundle, PDEGrid1D, BoundaryCondition, BoundaryCondition)} with full results shown.
+   * @param pdeData The coefficients of the PDEs. The initial condition of this is not used.
+   * @param initialConditions The initial condition of each PDE, not null or empty
+   * @param grid The grid
+   * @param lowerBoundaries The lower boundary condition of each PDE. These must give the same left matrix condition, i.e. differ only in
+   * their values.
+   * @param upperBoundaries The upper boundary condition of each PDE, as for the lower
+   * @return The results for each PDE, in the order of the initial conditions. These are full results if this solver shows full results.
+   */
+  public PDEResults1D[] solve(final ConvectionDiffusionPDEDataBundle pdeData, final List<Function1D<Double, Double>> initialConditions, final PDEGrid1D grid,
+      final BoundaryCondition[] lowerBoundaries, final BoundaryCondition[] upperBoundaries) {
+    Validate.notNull(pdeData, "pde data");
+    Validate.notEmpty(initialConditions, "initial conditions");
+    Validate.notNull(grid, "need a grid");
+    Validate.noNullElements(lowerBoundaries, "lower boundaries");
+    Validate.noNullElements(upperBoundaries, "upper boundaries");
+    final int n = initialConditions.size();
+    Validate.isTrue(lowerBoundaries.length == n && upperBoundaries.length == n, "need a lower and an upper boundary condition for each initial condition");
+    for (int k = 0; k < n; k++) {
+      validateSetup(grid, lowerBoundaries[k], upperBoundaries[k]);
+      Validate.isTrue(Arrays.equals(lowerBoundaries[k].getLeftMatrixCondition(pdeData, grid, 0.0), lowerBoundaries[0].getLeftMatrixCondition(pdeData, grid, 0.0)),
+          "lower boundary conditions must be of the same type");
+      Validate.isTrue(Arrays.equals(upperBoundaries[k].getLeftMatrixCondition(pdeData, grid, 0.0), upperBoundaries[0].getLeftMatrixCondition(pdeData, grid, 0.0)),
+          "upper boundary conditions must be of the same type");
+    }
+
+    final BatchSolverImpl solver = new BatchSolverImpl(pdeData, initialConditions, grid, lowerBoundaries, upperBoundaries);
+    return solver.solveAll();
+  }
+
   class SolverImpl {
     private final ConvectionDiffusionPDEDataBundle _pdeData;
     private final PDEGrid1D _grid;
-    private final BoundaryCondition _lowerBoundary;
-    private final BoundaryCondition _upperBoundary;
+    private BoundaryCondition _lowerBoundary;
+    private BoundaryCondition _upperBoundary;
     private final Surface<Double, Double, Double> _freeBoundary;
-    private final double[] _f;
+    private double[] _f;
     private double[][] _full;
 
-    private final double[] _q;
-    private final double[][] _m;
+    private double[] _q;
+    private final TridiagonalSystem _m;
+    private final double[] _obstacle;
 
     private final double[] _rho;
     private final double[] _a;
@@ -111,11 +157,12 @@ public class ThetaMethodFiniteDifference implements ConvectionDiffusionPDESolver
 
       _f = new double[xNodes];
       if (_showFullResults) {
-        _full = new double[tNodes][xNodes];
+        _full = new double[tNodes][];
       }
 
       _q = new double[xNodes];
-      _m = new double[xNodes][xNodes];
+      _m = new TridiagonalSystem(xNodes);
+      _obstacle = freeBoundary == null ? null : new double[xNodes];
       _rho = new double[xNodes - 2];
       _a = new double[xNodes - 2];
       _b = new double[xNodes - 2];
@@ -250,37 +297,38 @@ public class ThetaMethodFiniteDifference implements ConvectionDiffusionPDESolver
       }
     }
 
-    private void solveMatrixSystem() {
-      final double omega = 1.0;
-      @SuppressWarnings("unused")
-      //NOTE get this working again with dynamic omega
-      final int count = solveBySOR(omega);
-      //   solveByLU();
-      //      if (oldCount > 0) {
-      //        if ((omegaIncrease && count > oldCount) || (!omegaIncrease && count < oldCount)) {
-      //          omega = Math.max(1.0, omega * 0.9);
-      //          omegaIncrease = false;
-      //        } else {
-      //          omega = 1.1 * omega;
-      //          omegaIncrease = true;
-      //        }
-      //      }
-      //      oldCount = count;
-
-    }
-
-    @SuppressWarnings({"unused", "synthetic-access" })
-    private void solveByLU() {
-      DoubleMatrix2D temp = new DoubleMatrix2D(_m);
-      DecompositionResult res = DCOMP.evaluate(temp);
-      double[] f = res.solve(_q);
-      for (int i = 0; i < f.length; i++) {
-        _f[i] = f[i];
+    /**
+     * Points the solver at the solution and right hand side vectors, and the boundary conditions, of one of several PDEs that share the
+     * coefficients and so the matrix system
+     * @param f The solution vector
+     * @param q The right hand side vector
+     * @param lowerBoundary The lower boundary condition
+     * @param upperBoundary The upper boundary condition
+     */
+    void select(final double[] f, final double[] q, final BoundaryCondition lowerBoundary, final BoundaryCondition upperBoundary) {
+      _f = f;
+      _q = q;
+      _lowerBoundary = lowerBoundary;
+      _upperBoundary = upperBoundary;
+    }
+
+    @SuppressWarnings("synthetic-access")
+    void solveMatrixSystem() {
+      if (_freeBoundary != null) {
+        for (int j = 0; j < getGrid().getNumSpaceNodes(); j++) {
+          _obstacle[j] = _freeBoundary.getZValue(getT2(), getGrid().getSpaceNode(j));
+        }
+      }
+      // Brennan-Schwartz is only exact for an obstacle that binds at one end of the grid; otherwise use projected SOR
+      if (_useSOR || !_m.isTridiagonal() || !_m.solve(_q, _obstacle, _f)) {
+        //NOTE get this working again with dynamic omega
+        solveBySOR(1.0);
       }
     }
 
     private int solveBySOR(final double omega) {
 
+      final int xNodes = getGrid().getNumSpaceNodes();
       double sum;
       int count = 0;
       double scale = 1.0;
@@ -288,14 +336,15 @@ public class ThetaMethodFiniteDifference implements ConvectionDiffusionPDESolver
       while (errorSqr / (scale + 1e-10) > 1e-18) {
         errorSqr = 0.0;
         scale = 0.0;
-        for (int j = 0; j < getGrid().getNumSpaceNodes(); j++) {
+        for (int j = 0; j < xNodes; j++) {
           sum = 0;
-          for (int k = 0; k < getGrid().getNumSpaceNodes(); k++) {
+          // only the band of the matrix is non-zero
+          for (int k = Math.max(0, j - 2); k <= Math.min(xNodes - 1, j + 2); k++) {
             sum += getM(j, k) * getF(k);
           }
           double correction = omega / getM(j, j) * (getQ(j) - sum);
           if (_freeBoundary != null) {
-            correction = Math.max(correction, _freeBoundary.getZValue(getT2(), getGrid().getSpaceNode(j)) - getF(j));
+            correction = Math.max(correction, _obstacle[j] - getF(j));
           }
           errorSqr += correction * correction;
           setF(j, getF(j) + correction); //TODO don't like this 
@@ -371,12 +420,16 @@ public class ThetaMethodFiniteDifference implements ConvectionDiffusionPDESolver
       _q[i] = value;
     }
 
+    TridiagonalSystem getMatrix() {
+      return _m;
+    }
+
     public double getM(final int i, final int j) {
-      return _m[i][j];
+      return _m.get(i, j);
     }
 
     public void setM(final int i, final int j, final double value) {
-      _m[i][j] = value;
+      _m.set(i, j, value);
     }
 
     public double getF(final int i) {
@@ -421,6 +474,86 @@ public class ThetaMethodFiniteDifference implements ConvectionDiffusionPDESolver
 
   }
 
+  /**
+   * Solves several PDEs with the same coefficients together. Each time step updates the coefficients and the matrix once, then the right hand side
+   * of each PDE, and solves for all the right hand sides at once.
+   */
+  private final class BatchSolverImpl extends SolverImpl {
+    private final List<Function1D<Double, Double>> _initialConditions;
+    private final BoundaryCondition[] _lowerBoundaries;
+    private final BoundaryCondition[] _upperBoundaries;
+    private final double[][] _fs;
+    private final double[][] _qs;
+    private final double[][][] _fulls;
+
+    @SuppressWarnings("synthetic-access")
+    public BatchSolverImpl(final ConvectionDiffusionPDEDataBundle pdeData, final List<Function1D<Double, Double>> initialConditions, final PDEGrid1D grid,
+        final BoundaryCondition[] lowerBoundaries, final BoundaryCondition[] upperBoundaries) {
+      super(pdeData, grid, lowerBoundaries[0], upperBoundaries[0], null);
+      _initialConditions = initialConditions;
+      _lowerBoundaries = lowerBoundaries;
+      _upperBoundaries = upperBoundaries;
+      final int n = initialConditions.size();
+      final int xNodes = grid.getNumSpaceNodes();
+      _fs = new double[n][xNodes];
+      _qs = new double[n][xNodes];
+      _fulls = _showFullResults ? new double[n][grid.getNumTimeNodes()][] : null;
+    }
+
+    @SuppressWarnings("synthetic-access")
+    public PDEResults1D[] solveAll() {
+      final int n = _fs.length;
+      final PDEGrid1D grid = getGrid();
+      select(_fs[0], _qs[0], _lowerBoundaries[0], _upperBoundaries[0]);
+      initialise();
+      for (int k = 0; k < n; k++) {
+        final Function1D<Double, Double> initialCondition = _initialConditions.get(k);
+        for (int i = 0; i < grid.getNumSpaceNodes(); i++) {
+          _fs[k][i] = initialCondition.evaluate(grid.getSpaceNode(i));
+        }
+        if (_showFullResults) {
+          _fulls[k][0] = Arrays.copyOf(_fs[k], _fs[k].length);
+        }
+      }
+
+      for (int j = 1; j < grid.getNumTimeNodes(); j++) {
+        setT2(grid.getTimeNode(j));
+        for (int k = 0; k < n; k++) {
+          select(_fs[k], _qs[k], _lowerBoundaries[k], _upperBoundaries[k]);
+          updateRHSVector();
+          updateRHSBoundary();
+        }
+        updateCoefficents(j);
+        updateLHSMatrix();
+        updateLHSBoundary();
+        if (_useSOR || !getMatrix().isTridiagonal()) {
+          for (int k = 0; k < n; k++) {
+            select(_fs[k], _qs[k], _lowerBoundaries[k], _upperBoundaries[k]);
+            solveMatrixSystem();
+          }
+        } else {
+          getMatrix().solve(_qs, _fs);
+        }
+        if (_showFullResults) {
+          for (int k = 0; k < n; k++) {
+            _fulls[k][j] = Arrays.copyOf(_fs[k], _fs[k].length);
+          }
+        }
+        setT1(getT2());
+      }
+
+      final PDEResults1D[] res = new PDEResults1D[n];
+      for (int k = 0; k < n; k++) {
+        if (_showFullResults) {
+          res[k] = new PDEFullResults1D(grid, _fulls[k]);
+        } else {
+          res[k] = new PDETerminalResults1D(grid, _fs[k]);
+        }
+      }
+      return res;
+    }
+  }
+
   /**
    * Checks that the lower and upper boundaries match up with the grid
    * @param grid The grid
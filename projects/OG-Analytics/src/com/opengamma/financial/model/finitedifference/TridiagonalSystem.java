@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.financial.model.finitedifference;
+
+import org.apache.commons.lang.Validate;
+
+import com.opengamma.math.MathException;
+import com.opengamma.math.linearalgebra.TridiagonalSolver;
+
+/**
+ * The matrix system of one implicit step (or one implicit sweep of an ADI scheme) of a finite difference scheme on a line of grid points.
+ * <p>
+ * The rows of the interior points are tridiagonal. The boundary rows can have a third element, (0, 2) or (n - 1, n - 3), from a one sided difference
+ * in the boundary condition (e.g. Neumann or fixed second derivative); this is eliminated with the neighbouring row before the system is solved
+ * by a {@link TridiagonalSolver}. The storage is O(n) and is reused from one solve to the next, so one system should be created per solver run and
+ * not shared between threads.
+ */
+class TridiagonalSystem {
+
+  private final int _size;
+  private final double[] _lower;
+  private final double[] _diagonal;
+  private final double[] _upper;
+  /**
+   * The element (0, 2).
+   */
+  private double _firstRowExtra;
+  /**
+   * The element (n - 1, n - 3).
+   */
+  private double _lastRowExtra;
+  /**
+   * The boundary row elements saved while the extra elements are eliminated.
+   */
+  private double _diagonal0;
+  private double _upper0;
+  private double _lowerN;
+  private double _diagonalN;
+  private final TridiagonalSolver _solver;
+
+  /**
+   * @param size The number of grid points, at least 3
+   */
+  TridiagonalSystem(final int size) {
+    Validate.isTrue(size > 2, "need at least 3 points");
+    _size = size;
+    _lower = new double[size];
+    _diagonal = new double[size];
+    _upper = new double[size];
+    _solver = new TridiagonalSolver(size);
+  }
+
+  int getSize() {
+    return _size;
+  }
+
+  /**
+   * Gets an element of the matrix.
+   * @param i The row
+   * @param j The column
+   * @return The element, zero outside the stored band
+   */
+  double get(final int i, final int j) {
+    switch (j - i) {
+      case -1:
+        return _lower[i];
+      case 0:
+        return _diagonal[i];
+      case 1:
+        return _upper[i];
+      case 2:
+        return i == 0 ? _firstRowExtra : 0.0;
+      case -2:
+        return i == _size - 1 ? _lastRowExtra : 0.0;
+      default:
+        return 0.0;
+    }
+  }
+
+  /**
+   * Sets an element of the matrix.
+   * @param i The row
+   * @param j The column, within one of the diagonal or, for the boundary rows, within two of the diagonal
+   * @param value The value
+   */
+  void set(final int i, final int j, final double value) {
+    switch (j - i) {
+      case -1:
+        _lower[i] = value;
+        break;
+      case 0:
+        _diagonal[i] = value;
+        break;
+      case 1:
+        _upper[i] = value;
+        break;
+      case 2:
+        Validate.isTrue(i == 0, "matrix is not tridiagonal");
+        _firstRowExtra = value;
+        break;
+      case -2:
+        Validate.isTrue(i == _size - 1, "matrix is not tridiagonal");
+        _lastRowExtra = value;
+        break;
+      default:
+        throw new IllegalArgumentException("matrix is not tridiagonal at (" + i + ", " + j + ")");
+    }
+  }
+
+  /**
+   * Whether the extra elements of the boundary rows can be eliminated with the neighbouring rows. This is not the case for a fully explicit scheme with
+   * a three point boundary condition, as the neighbouring rows are then diagonal.
+   * @return true if the system can be solved directly
+   */
+  boolean isTridiagonal() {
+    return (_firstRowExtra == 0.0 || _upper[1] != 0.0) && (_lastRowExtra == 0.0 || _lower[_size - 2] != 0.0);
+  }
+
+  /**
+   * The tolerance, relative to the size of the terms of a row, to which a solution subject to a lower bound must satisfy the complementarity
+   * conditions.
+   */
+  private static final double COMPLEMENTARITY_TOLERANCE = 1e-9;
+
+  /**
+   * Solves the system.
+   * @param rhs The right hand side, not modified
+   * @param x The array to fill with the solution, not the same as rhs
+   */
+  void solve(final double[] rhs, final double[] x) {
+    solve(rhs, null, x);
+  }
+
+  /**
+   * Solves the system subject to a lower bound on the solution by the Brennan-Schwartz algorithm. This is only exact if the bound is active over a
+   * single interval at one end of the grid (e.g. low spots for an American put), so it is only attempted for a monotone bound, eliminating towards
+   * the end where the bound is highest, and the result is checked against the complementarity conditions. If this fails the problem must be solved
+   * iteratively (e.g. by projected SOR).
+   * @param rhs The right hand side, not modified
+   * @param lowerBound The lower bound, null for none
+   * @param x The array to fill with the solution, not the same as rhs. This is left unchanged if the bound is not monotone.
+   * @return true if x is the solution, false if the bound is not monotone or the solution found by the Brennan-Schwartz algorithm is not exact
+   */
+  boolean solve(final double[] rhs, final double[] lowerBound, final double[] x) {
+    final int n = _size;
+    boolean boundAtStart = false;
+    if (lowerBound != null) {
+      boolean nonIncreasing = true;
+      boolean nonDecreasing = true;
+      for (int i = 1; i < n; i++) {
+        if (lowerBound[i] > lowerBound[i - 1]) {
+          nonIncreasing = false;
+        } else if (lowerBound[i] < lowerBound[i - 1]) {
+          nonDecreasing = false;
+        }
+      }
+      if (!nonIncreasing && !nonDecreasing) {
+        return false;
+      }
+      boundAtStart = nonIncreasing;
+    }
+    final double rhs0 = rhs[0];
+    final double rhsN = rhs[n - 1];
+    eliminateBoundaryRows();
+    try {
+      reduceBoundaryValues(rhs);
+      if (lowerBound == null) {
+        _solver.solve(_lower, _diagonal, _upper, rhs, x);
+      } else {
+        _solver.solve(_lower, _diagonal, _upper, rhs, lowerBound, boundAtStart, x);
+      }
+    } finally {
+      restoreBoundaryRows();
+      rhs[0] = rhs0;
+      rhs[n - 1] = rhsN;
+    }
+    return (lowerBound == null) || isComplementary(rhs, lowerBound, x);
+  }
+
+  /**
+   * Tests whether a solution satisfies {@latex.inline $Mx \\geq r$} everywhere, with equality where {@latex.inline $x > g$}.
+   */
+  private boolean isComplementary(final double[] rhs, final double[] lowerBound, final double[] x) {
+    final int n = _size;
+    for (int i = 0; i < n; i++) {
+      double residual = -rhs[i];
+      double scale = Math.abs(rhs[i]);
+      for (int j = Math.max(0, i - 2); j <= Math.min(n - 1, i + 2); j++) {
+        final double term = get(i, j) * x[j];
+        residual += term;
+        scale += Math.abs(term);
+      }
+      final double tolerance = COMPLEMENTARITY_TOLERANCE * scale;
+      if (residual < -tolerance || (x[i] > lowerBound[i] && residual > tolerance)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Solves the system for several right hand sides, eliminating the matrix only once.
+   * @param rhs The right hand sides, not modified
+   * @param x The arrays to fill with the solutions, not the same as rhs
+   */
+  void solve(final double[][] rhs, final double[][] x) {
+    final int n = _size;
+    final int m = rhs.length;
+    final double[] rhs0 = new double[m];
+    final double[] rhsN = new double[m];
+    for (int k = 0; k < m; k++) {
+      rhs0[k] = rhs[k][0];
+      rhsN[k] = rhs[k][n - 1];
+    }
+    eliminateBoundaryRows();
+    try {
+      for (int k = 0; k < m; k++) {
+        reduceBoundaryValues(rhs[k]);
+      }
+      _solver.solve(_lower, _diagonal, _upper, rhs, x);
+    } finally {
+      restoreBoundaryRows();
+      for (int k = 0; k < m; k++) {
+        rhs[k][0] = rhs0[k];
+        rhs[k][n - 1] = rhsN[k];
+      }
+    }
+  }
+
+  /**
+   * Eliminates the extra elements of the boundary rows with the neighbouring rows. The rows are restored by {@link #restoreBoundaryRows} so that the
+   * matrix can be reused.
+   */
+  private void eliminateBoundaryRows() {
+    if (!isTridiagonal()) {
+      throw new MathException("Cannot eliminate the boundary rows of the matrix");
+    }
+    final int n = _size;
+    _diagonal0 = _diagonal[0];
+    _upper0 = _upper[0];
+    _lowerN = _lower[n - 1];
+    _diagonalN = _diagonal[n - 1];
+    if (_firstRowExtra != 0.0) {
+      final double factor = _firstRowExtra / _upper[1];
+      _diagonal[0] -= factor * _lower[1];
+      _upper[0] -= factor * _diagonal[1];
+    }
+    if (_lastRowExtra != 0.0) {
+      final double factor = _lastRowExtra / _lower[n - 2];
+      _diagonal[n - 1] -= factor * _upper[n - 2];
+      _lower[n - 1] -= factor * _diagonal[n - 2];
+    }
+  }
+
+  /**
+   * Applies the row operations of {@link #eliminateBoundaryRows} to a right hand side.
+   */
+  private void reduceBoundaryValues(final double[] rhs) {
+    final int n = _size;
+    if (_firstRowExtra != 0.0) {
+      rhs[0] -= _firstRowExtra / _upper[1] * rhs[1];
+    }
+    if (_lastRowExtra != 0.0) {
+      rhs[n - 1] -= _lastRowExtra / _lower[n - 2] * rhs[n - 2];
+    }
+  }
+
+  private void restoreBoundaryRows() {
+    final int n = _size;
+    _diagonal[0] = _diagonal0;
+    _upper[0] = _upper0;
+    _lower[n - 1] = _lowerN;
+    _diagonal[n - 1] = _diagonalN;
+  }
+
+}
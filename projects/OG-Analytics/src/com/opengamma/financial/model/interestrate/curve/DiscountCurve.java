@@ -5,6 +5,8 @@
  */
 package com.opengamma.financial.model.interestrate.curve;
 
+import org.apache.commons.lang.Validate;
+
 import com.opengamma.math.curve.Curve;
 
 /**
@@ -26,4 +28,22 @@ public class DiscountCurve extends YieldAndDiscountCurve {
     return getCurve().getYValue(t);
   }
 
+  @Override
+  public double getInterestRate(final double t) {
+    return -Math.log(getCurveValue(t)) / t;
+  }
+
+  @Override
+  public double getDiscountFactor(final double t) {
+    return getCurveValue(t);
+  }
+
+  @Override
+  public void getDiscountFactors(final double[] t, final double[] discountFactors) {
+    Validate.notNull(t, "t");
+    Validate.notNull(discountFactors, "discount factors");
+    Validate.isTrue(discountFactors.length >= t.length, "discount factor array too short");
+    getCurveValues(t, discountFactors);
+  }
+
 }
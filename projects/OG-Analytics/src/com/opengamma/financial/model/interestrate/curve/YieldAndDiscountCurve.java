@@ -8,6 +8,7 @@ package com.opengamma.financial.model.interestrate.curve;
 import com.opengamma.financial.model.interestrate.InterestRateModel;
 import com.opengamma.math.curve.Curve;
 import com.opengamma.math.curve.CurveShiftFunctionFactory;
+import com.opengamma.math.curve.InterpolatedDoublesCurve;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.Validate;
@@ -16,14 +17,19 @@ import org.apache.commons.lang.Validate;
  * A DiscountCurve contains discount factors <i>e<sup>-r(t)t</sup></i> (where
  * <i>t</i> is the maturity in years and <i>r(t)</i> is the continuously-compounded interest rate to
  * maturity <i>t</i>).
+ * <p>
+ * Discount factor lookups are the most frequent call in interest rate pricing, so there are primitive versions of the lookups, and versions for
+ * many times at once; for interpolated curves these do not allocate.
  */
 
 public abstract class YieldAndDiscountCurve implements InterestRateModel<Double> {
   private final Curve<Double, Double> _curve;
+  private final InterpolatedDoublesCurve _interpolatedCurve;
 
   public YieldAndDiscountCurve(final Curve<Double, Double> curve) {
     Validate.notNull(curve, "curve");
     _curve = curve;
+    _interpolatedCurve = curve instanceof InterpolatedDoublesCurve ? (InterpolatedDoublesCurve) curve : null;
   }
 
   /**
@@ -43,10 +49,69 @@ public abstract class YieldAndDiscountCurve implements InterestRateModel<Double>
    */
   public abstract double getDiscountFactor(final Double t);
 
+  /**
+   * Primitive version of {@link #getInterestRate(Double)}.
+   * @param t The time 
+   * @return The interest rate for time to maturity <i>t</i>.
+   */
+  public double getInterestRate(final double t) {
+    return getInterestRate(Double.valueOf(t));
+  }
+
+  /**
+   * Primitive version of {@link #getDiscountFactor(Double)}.
+   * @param t The time 
+   * @return The discount factor for time to maturity <i>t</i>.
+   */
+  public double getDiscountFactor(final double t) {
+    return getDiscountFactor(Double.valueOf(t));
+  }
+
+  /**
+   * Gets the discount factors for many times, e.g. all the payment times of a swap. This is fastest when the times are increasing.
+   * @param t The times, not null
+   * @param discountFactors The array to fill with the discount factors, not null and not the same array as t
+   */
+  public void getDiscountFactors(final double[] t, final double[] discountFactors) {
+    Validate.notNull(t, "t");
+    Validate.notNull(discountFactors, "discount factors");
+    Validate.isTrue(discountFactors.length >= t.length, "discount factor array too short");
+    for (int i = 0; i < t.length; i++) {
+      discountFactors[i] = getDiscountFactor(t[i]);
+    }
+  }
+
   public Curve<Double, Double> getCurve() {
     return _curve;
   }
 
+  /**
+   * Gets the value of the underlying curve without boxing when it is an interpolated curve.
+   * @param t The time
+   * @return The value of the curve
+   */
+  protected double getCurveValue(final double t) {
+    if (_interpolatedCurve != null) {
+      return _interpolatedCurve.getYValue(t);
+    }
+    return _curve.getYValue(t);
+  }
+
+  /**
+   * Gets the values of the underlying curve at many times.
+   * @param t The times
+   * @param values The array to fill with the values
+   */
+  protected void getCurveValues(final double[] t, final double[] values) {
+    if (_interpolatedCurve != null) {
+      _interpolatedCurve.getYValues(t, values);
+    } else {
+      for (int i = 0; i < t.length; i++) {
+        values[i] = _curve.getYValue(t[i]);
+      }
+    }
+  }
+
   public YieldAndDiscountCurve withParallelShift(final double shift) {
     return new YieldCurve(CurveShiftFunctionFactory.getShiftedCurve(_curve, shift));
   }
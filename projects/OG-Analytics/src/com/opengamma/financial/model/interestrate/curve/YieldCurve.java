@@ -5,6 +5,8 @@
  */
 package com.opengamma.financial.model.interestrate.curve;
 
+import org.apache.commons.lang.Validate;
+
 import com.opengamma.math.curve.Curve;
 
 /**
@@ -28,4 +30,25 @@ public class YieldCurve extends YieldAndDiscountCurve {
   public double getDiscountFactor(final Double t) {
     return Math.exp(-t * getInterestRate(t));
   }
+
+  @Override
+  public double getInterestRate(final double t) {
+    return getCurveValue(t);
+  }
+
+  @Override
+  public double getDiscountFactor(final double t) {
+    return Math.exp(-t * getCurveValue(t));
+  }
+
+  @Override
+  public void getDiscountFactors(final double[] t, final double[] discountFactors) {
+    Validate.notNull(t, "t");
+    Validate.notNull(discountFactors, "discount factors");
+    Validate.isTrue(discountFactors.length >= t.length, "discount factor array too short");
+    getCurveValues(t, discountFactors);
+    for (int i = 0; i < t.length; i++) {
+      discountFactors[i] = Math.exp(-t[i] * discountFactors[i]);
+    }
+  }
 }
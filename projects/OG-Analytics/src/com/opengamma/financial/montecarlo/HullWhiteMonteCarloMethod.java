@@ -21,6 +21,7 @@ import com.opengamma.financial.model.interestrate.definition.HullWhiteOneFactorP
 import com.opengamma.math.linearalgebra.CholeskyDecompositionCommons;
 import com.opengamma.math.linearalgebra.CholeskyDecompositionResult;
 import com.opengamma.math.matrix.DoubleMatrix2D;
+import com.opengamma.math.random.BrownianBridge;
 import com.opengamma.math.random.RandomNumberGenerator;
 import com.opengamma.util.money.Currency;
 import com.opengamma.util.money.CurrencyAmount;
@@ -65,10 +66,21 @@ public class HullWhiteMonteCarloMethod extends MonteCarloMethod {
     super(numberGenerator, nbPath);
   }
 
+  /**
+   * Constructor of a method pricing the blocks of paths concurrently. Only the present value is computed concurrently; the curve sensitivity runs
+   * the same blocks, with the same random numbers, in sequence.
+   * @param blockEngine The block engine.
+   * @param nbPath The number of paths.
+   */
+  public HullWhiteMonteCarloMethod(MonteCarloBlockEngine blockEngine, int nbPath) {
+    super(blockEngine, nbPath);
+  }
+
   /**
    * Computes the present value in the Hull-White one factor model by Monte-Carlo.
    * Implementation note: The total number of paths is divided in blocks of maximum size BLOCK_SIZE=1000. The Monte Carlo is run on each block and the average of each
-   * block price is the total price. 
+   * block price is the total price. If the method has a block engine, the blocks are sized and run by the engine, and the correlated factors of each
+   * path are built by a Brownian bridge rather than the Cholesky decomposition.
    * @param instrument The swaption.
    * @param ccy The currency
    * @param dscName The discounting curve name.
@@ -132,30 +144,34 @@ public class HullWhiteMonteCarloMethod extends MonteCarloMethod {
         covCD[loopjump + nbZero][loopjump2 + nbZero] = covCD2[loopjump][loopjump2];
       }
     }
-    int nbBlock = (int) Math.round(Math.ceil(getNbPath() / ((double) BLOCK_SIZE)));
-    int[] nbPath2 = new int[nbBlock];
-    for (int i = 0; i < nbBlock - 1; i++) {
-      nbPath2[i] = BLOCK_SIZE;
-    }
-    nbPath2[nbBlock - 1] = getNbPath() - (nbBlock - 1) * BLOCK_SIZE;
     double[][] impactAmount = decision.getImpactAmount();
     double pv = 0;
-    for (int loopblock = 0; loopblock < nbBlock; loopblock++) {
-      double[][] x = getNormalArray(nbJump, nbPath2[loopblock]);
+    if (getBlockEngine() != null) {
+      pv = getBlockEngine().sum(getNbPath(), new DiscountFactorSimulation(instrument, impactAmount, pDI, h, h2, gamma));
+    } else {
+      int nbBlock = (int) Math.round(Math.ceil(getNbPath() / ((double) BLOCK_SIZE)));
+      int[] nbPath2 = new int[nbBlock];
+      for (int i = 0; i < nbBlock - 1; i++) {
+        nbPath2[i] = BLOCK_SIZE;
+      }
+      nbPath2[nbBlock - 1] = getNbPath() - (nbBlock - 1) * BLOCK_SIZE;
+      for (int loopblock = 0; loopblock < nbBlock; loopblock++) {
+        double[][] x = getNormalArray(nbJump, nbPath2[loopblock]);
 
-      double[][] y = new double[nbJump][nbPath2[loopblock]]; // jump/path
-      double s; // tmp sum
-      for (int looppath = 0; looppath < nbPath2[loopblock]; looppath++) {
-        for (int i = 0; i < nbJump; i++) {
-          s = 0;
-          for (int j = 0; j < nbJump; j++) {
-            s += x[j][looppath] * covCD[i][j];
+        double[][] y = new double[nbJump][nbPath2[loopblock]]; // jump/path
+        double s; // tmp sum
+        for (int looppath = 0; looppath < nbPath2[loopblock]; looppath++) {
+          for (int i = 0; i < nbJump; i++) {
+            s = 0;
+            for (int j = 0; j < nbJump; j++) {
+              s += x[j][looppath] * covCD[i][j];
+            }
+            y[i][looppath] = s;
           }
-          y[i][looppath] = s;
         }
+        Double[][][] pD = pathGeneratorDiscount(pDI, y, h, h2, gamma);
+        pv += MCC.visit(instrument, new MonteCarloDiscountFactorDataBundle(pD, impactAmount)) * nbPath2[loopblock];
       }
-      Double[][][] pD = pathGeneratorDiscount(pDI, y, h, h2, gamma);
-      pv += MCC.visit(instrument, new MonteCarloDiscountFactorDataBundle(pD, impactAmount)) * nbPath2[loopblock];
     }
     pv *= pDN / getNbPath(); // Multiply by the numeraire.
     return CurrencyAmount.of(ccy, pv);
@@ -164,7 +180,8 @@ public class HullWhiteMonteCarloMethod extends MonteCarloMethod {
   /**
    * Computes the present value curve sensitivity in the Hull-White one factor model by Monte-Carlo. The sensitivity is computed by Adjoint Algorithmic Differentiation. 
    * Implementation note: The total number of paths is divided in blocks of maximum size BLOCK_SIZE=1000. The Monte Carlo is run on each block and the average of each
-   * block price is the total price. 
+   * block price is the total price. If the method has a block engine, the blocks are sized by the engine and their paths are the ones of the present
+   * value: the random numbers of each block come from the engine and are correlated by a Brownian bridge.
    * @param instrument The swaption.
    * @param dscName The discounting curve name.
    * @param hwData The Hull-White data (curves and Hull-White parameters).
@@ -228,12 +245,25 @@ public class HullWhiteMonteCarloMethod extends MonteCarloMethod {
         covCD[loopjump + nbZero][loopjump2 + nbZero] = covCD2[loopjump][loopjump2];
       }
     }
-    int nbBlock = (int) Math.round(Math.ceil(getNbPath() / ((double) BLOCK_SIZE)));
-    int[] nbPath2 = new int[nbBlock];
-    for (int i = 0; i < nbBlock - 1; i++) {
-      nbPath2[i] = BLOCK_SIZE;
+    final MonteCarloBlockEngine blockEngine = getBlockEngine();
+    int nbBlock;
+    int[] nbPath2;
+    BrownianBridge bridge = null;
+    if (blockEngine != null) {
+      nbBlock = blockEngine.getNbBlock(getNbPath());
+      nbPath2 = new int[nbBlock];
+      for (int i = 0; i < nbBlock; i++) {
+        nbPath2[i] = blockEngine.getNbPath(getNbPath(), i);
+      }
+      bridge = new BrownianBridge(gamma);
+    } else {
+      nbBlock = (int) Math.round(Math.ceil(getNbPath() / ((double) BLOCK_SIZE)));
+      nbPath2 = new int[nbBlock];
+      for (int i = 0; i < nbBlock - 1; i++) {
+        nbPath2[i] = BLOCK_SIZE;
+      }
+      nbPath2[nbBlock - 1] = getNbPath() - (nbBlock - 1) * BLOCK_SIZE;
     }
-    nbPath2[nbBlock - 1] = getNbPath() - (nbBlock - 1) * BLOCK_SIZE;
     double[][] impactAmount = decision.getImpactAmount();
     double pv = 0;
     double[] pvBlock = new double[nbBlock];
@@ -253,16 +283,22 @@ public class HullWhiteMonteCarloMethod extends MonteCarloMethod {
       pDIBar[loopjump] = new double[impactAmount[loopjump].length];
     }
     for (int loopblock = 0; loopblock < nbBlock; loopblock++) {
-      double[][] x = getNormalArray(nbJump, nbPath2[loopblock]);
       double[][] y = new double[nbJump][nbPath2[loopblock]]; // jump/path
-      double s; // tmp sum
-      for (int looppath = 0; looppath < nbPath2[loopblock]; looppath++) {
-        for (int i = 0; i < nbJump; i++) {
-          s = 0;
-          for (int j = 0; j < nbJump; j++) {
-            s += x[j][looppath] * covCD[i][j];
+      if (blockEngine != null) {
+        double[][] x = new double[nbJump][nbPath2[loopblock]];
+        blockEngine.getPathNumberGenerator(nbJump, loopblock).fillPaths(x, nbPath2[loopblock]);
+        bridge.buildPaths(x, y, nbPath2[loopblock]);
+      } else {
+        double[][] x = getNormalArray(nbJump, nbPath2[loopblock]);
+        double s; // tmp sum
+        for (int looppath = 0; looppath < nbPath2[loopblock]; looppath++) {
+          for (int i = 0; i < nbJump; i++) {
+            s = 0;
+            for (int j = 0; j < nbJump; j++) {
+              s += x[j][looppath] * covCD[i][j];
+            }
+            y[i][looppath] = s;
           }
-          y[i][looppath] = s;
         }
       }
       Double[][][] pD = pathGeneratorDiscount(pDI, y, h, h2, gamma);
@@ -346,9 +382,22 @@ public class HullWhiteMonteCarloMethod extends MonteCarloMethod {
    * @return The discount factor paths (path/jump/cf).
    */
   private Double[][][] pathGeneratorDiscount(double[][] initDiscountFactor, double[][] y, double[][] h, double[][] h2, double[] gamma) {
+    return pathGeneratorDiscount(initDiscountFactor, y, y[0].length, h, h2, gamma, new Double[y[0].length][y.length][]);
+  }
+
+  /**
+   * Construct the discount factors on the simulated paths from the random variables and the model constants, in an existing array.
+   * @param initDiscountFactor The initial discount factors.
+   * @param y The correlated random variables. Only the first nbPath columns are used.
+   * @param nbPath The number of paths.
+   * @param h The H parameters.
+   * @param h2 The H^2 parameters.
+   * @param gamma The gamma parameters.
+   * @param pD The array to fill, with nbPath elements. The discount factor arrays are reused if already present.
+   * @return The discount factor paths (path/jump/cf).
+   */
+  private Double[][][] pathGeneratorDiscount(double[][] initDiscountFactor, double[][] y, int nbPath, double[][] h, double[][] h2, double[] gamma, Double[][][] pD) {
     int nbJump = y.length;
-    int nbPath = y[0].length;
-    Double[][][] pD = new Double[nbPath][nbJump][];
     double[] h2gamma;
     for (int loopjump = 0; loopjump < nbJump; loopjump++) {
       int nbCF = h[loopjump].length;
@@ -357,7 +406,9 @@ public class HullWhiteMonteCarloMethod extends MonteCarloMethod {
         h2gamma[loopcf] = h2[loopjump][loopcf] * gamma[loopjump];
       }
       for (int looppath = 0; looppath < nbPath; looppath++) {
-        pD[looppath][loopjump] = new Double[nbCF];
+        if (pD[looppath][loopjump] == null) {
+          pD[looppath][loopjump] = new Double[nbCF];
+        }
         for (int loopcf = 0; loopcf < nbCF; loopcf++) {
           pD[looppath][loopjump][loopcf] = initDiscountFactor[loopjump][loopcf] * Math.exp(-h[loopjump][loopcf] * y[loopjump][looppath] - h2gamma[loopcf]);
         }
@@ -395,6 +446,49 @@ public class HullWhiteMonteCarloMethod extends MonteCarloMethod {
     return initDiscountFactorBar;
   }
 
+  /**
+   * The simulation of the discount factors of a block of paths, for the block engine.
+   */
+  private final class DiscountFactorSimulation implements MonteCarloBlockEngine.Simulation {
+
+    private final InterestRateDerivative _instrument;
+    private final double[][] _impactAmount;
+    private final double[][] _pDI;
+    private final double[][] _h;
+    private final double[][] _h2;
+    private final double[] _gamma;
+
+    private DiscountFactorSimulation(InterestRateDerivative instrument, double[][] impactAmount, double[][] pDI, double[][] h, double[][] h2, double[] gamma) {
+      _instrument = instrument;
+      _impactAmount = impactAmount;
+      _pDI = pDI;
+      _h = h;
+      _h2 = h2;
+      _gamma = gamma;
+    }
+
+    @Override
+    public MonteCarloBlockEngine.BlockEvaluator createEvaluator(final int blockSize) {
+      final int nbJump = _gamma.length;
+      // The covariance of the factors is gamma[min(i, j)]: they are the values of a Brownian motion at the "times" gamma
+      final BrownianBridge bridge = new BrownianBridge(_gamma);
+      final double[][] x = new double[nbJump][blockSize]; // jump/path
+      final double[][] y = new double[nbJump][blockSize]; // jump/path
+      final Double[][][] pDFull = new Double[blockSize][nbJump][];
+      return new MonteCarloBlockEngine.BlockEvaluator() {
+        @Override
+        public double evaluate(int block, int nbPath) {
+          getBlockEngine().getPathNumberGenerator(nbJump, block).fillPaths(x, nbPath);
+          bridge.buildPaths(x, y, nbPath);
+          Double[][][] pD = (nbPath == blockSize) ? pDFull : new Double[nbPath][nbJump][];
+          pathGeneratorDiscount(_pDI, y, nbPath, _h, _h2, _gamma, pD);
+          return MCC.visit(_instrument, new MonteCarloDiscountFactorDataBundle(pD, _impactAmount)) * nbPath;
+        }
+      };
+    }
+
+  }
+
   @Override
   public CurrencyAmount presentValue(InterestRateDerivative instrument, YieldCurveBundle curves) {
     Validate.isTrue(curves instanceof HullWhiteOneFactorPiecewiseConstantDataBundle, "Bundle should contain Hull-White data");
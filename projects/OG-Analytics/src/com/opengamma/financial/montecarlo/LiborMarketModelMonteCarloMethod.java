@@ -15,6 +15,7 @@ import com.opengamma.financial.model.interestrate.definition.LiborMarketModelDis
 import com.opengamma.math.matrix.CommonsMatrixAlgebra;
 import com.opengamma.math.matrix.DoubleMatrix2D;
 import com.opengamma.math.matrix.MatrixAlgebra;
+import com.opengamma.math.random.PathNumberGenerator;
 import com.opengamma.math.random.RandomNumberGenerator;
 import com.opengamma.util.money.Currency;
 import com.opengamma.util.money.CurrencyAmount;
@@ -67,6 +68,26 @@ public class LiborMarketModelMonteCarloMethod extends MonteCarloMethod {
     _maxJump = maxJump;
   }
 
+  /**
+   * Constructor of a method pricing the blocks of paths concurrently. The maximum length of a jump is the default one.
+   * @param blockEngine The block engine.
+   * @param nbPath The number of paths.
+   */
+  public LiborMarketModelMonteCarloMethod(MonteCarloBlockEngine blockEngine, int nbPath) {
+    this(blockEngine, nbPath, MAX_JUMP_DEFAULT);
+  }
+
+  /**
+   * Constructor of a method pricing the blocks of paths concurrently.
+   * @param blockEngine The block engine.
+   * @param nbPath The number of paths.
+   * @param maxJump The maximum length of a jump in the path generation.
+   */
+  public LiborMarketModelMonteCarloMethod(MonteCarloBlockEngine blockEngine, int nbPath, double maxJump) {
+    super(blockEngine, nbPath);
+    _maxJump = maxJump;
+  }
+
   public CurrencyAmount presentValue(final InterestRateDerivative instrument, Currency ccy, YieldAndDiscountCurve dsc, final LiborMarketModelDisplacedDiffusionDataBundle lmmData) {
     // The numeraire is the last time in the LMM description.
     DecisionSchedule decision = DC.visit(instrument, lmmData);
@@ -83,23 +104,21 @@ public class LiborMarketModelMonteCarloMethod extends MonteCarloMethod {
       initL[loopper] = (dfL[loopper] / dfL[loopper + 1] - 1.0) / deltaLMM[loopper];
     }
 
-    int nbBlock = (int) Math.round(Math.ceil(getNbPath() / ((double) BLOCK_SIZE)));
-    int[] nbPath2 = new int[nbBlock];
-    for (int i = 0; i < nbBlock - 1; i++) {
-      nbPath2[i] = BLOCK_SIZE;
-    }
-    nbPath2[nbBlock - 1] = getNbPath() - (nbBlock - 1) * BLOCK_SIZE;
-
     double price = 0.0;
-    for (int loopblock = 0; loopblock < nbBlock; loopblock++) {
-      double[][] initLPath = new double[nbPeriodLMM][nbPath2[loopblock]];
-      for (int loopper = 0; loopper < nbPeriodLMM; loopper++) {
-        for (int looppath = 0; looppath < nbPath2[loopblock]; looppath++) {
-          initLPath[loopper][looppath] = initL[loopper];
-        }
+    if (getBlockEngine() != null) {
+      price = getBlockEngine().sum(getNbPath(), new IborRateSimulation(instrument, decision, impactIndex, initL, deltaLMM, lmmData.getLmmParameter()));
+    } else {
+      int nbBlock = (int) Math.round(Math.ceil(getNbPath() / ((double) BLOCK_SIZE)));
+      int[] nbPath2 = new int[nbBlock];
+      for (int i = 0; i < nbBlock - 1; i++) {
+        nbPath2[i] = BLOCK_SIZE;
+      }
+      nbPath2[nbBlock - 1] = getNbPath() - (nbBlock - 1) * BLOCK_SIZE;
+      LiborPathGenerator generator = new LiborPathGenerator(decision.getDecisionTime(), lmmData.getLmmParameter(), _maxJump, BLOCK_SIZE);
+      for (int loopblock = 0; loopblock < nbBlock; loopblock++) {
+        double[][][] pathIbor = generator.generate(initL, nbPath2[loopblock], getNumberGenerator());
+        price += MCC.visit(instrument, new MonteCarloIborRateDataBundle(pathIbor, deltaLMM, decision.getImpactAmount(), impactIndex));
       }
-      double[][][] pathIbor = pathgeneratorlibor(decision.getDecisionTime(), initLPath, lmmData.getLmmParameter());
-      price += MCC.visit(instrument, new MonteCarloIborRateDataBundle(pathIbor, deltaLMM, decision.getImpactAmount(), impactIndex));
     }
     price *= dsc.getDiscountFactor(lmmData.getLmmParameter().getIborTime()[lmmData.getLmmParameter().getIborTime().length - 1]) / getNbPath();
     return CurrencyAmount.of(ccy, price);
@@ -122,152 +141,221 @@ public class LiborMarketModelMonteCarloMethod extends MonteCarloMethod {
   }
 
   /**
-   * Create one step in the LMM diffusion. The step is done through several jump times. The diffusion is approximated with a predictor-corrector approach.
-   * @param jumpTime The jump times.
-   * @param initIbor Rate at the start of the period. Size: nbPeriodLMM x nbPath.
-   * @return The Ibor rates at the end of the jump period. Size: nbPeriodLMM x nbPath.
+   * Generates the Ibor rates of blocks of paths. The diffusion is approximated with a predictor-corrector approach, the decision periods being
+   * split in jumps no longer than the maximum jump. The work arrays are allocated once for the largest block, so a generator must only be used
+   * by one thread at a time.
    */
-  private double[][] stepPC(double[] jumpTime, double[][] initIbor, final LiborMarketModelDisplacedDiffusionParameters lmm) {
-    double amr = lmm.getMeanReversion();
-    double[] iborTime = lmm.getIborTime();
-    double[] almm = lmm.getDisplacement();
-    double[] deltalmm = lmm.getAccrualFactor();
-    DoubleMatrix2D gammaLMM = new DoubleMatrix2D(lmm.getVolatility());
-    MatrixAlgebra algebra = new CommonsMatrixAlgebra();
-    DoubleMatrix2D s = (DoubleMatrix2D) algebra.multiply(gammaLMM, algebra.getTranspose(gammaLMM));
-    int nbJump = jumpTime.length - 1;
-    int nbPath = initIbor[0].length;
-    int nbPeriodLMM = lmm.getNbPeriod();
-    int nbFactorLMM = lmm.getNbFactor();
-    double[] dt = new double[nbJump];
-    double[] alpha = new double[nbJump];
-    double[] alpha2 = new double[nbJump];
-    for (int loopjump = 0; loopjump < nbJump; loopjump++) {
-      dt[loopjump] = jumpTime[loopjump + 1] - jumpTime[loopjump];
-      alpha[loopjump] = Math.exp(amr * jumpTime[loopjump + 1]);
-      alpha2[loopjump] = alpha[loopjump] * alpha[loopjump];
-    }
+  private static final class LiborPathGenerator {
 
-    double[][] f = initIbor;
-    for (int loopjump = 0; loopjump < nbJump; loopjump++) {
-      double sqrtDt = Math.sqrt(dt[loopjump]);
-      int index = Arrays.binarySearch(iborTime, jumpTime[loopjump + 1] - lmm.getTimeTolerance());
-      index = -index - 1; // The index from which the rate should be evolved.
-      int nI = nbPeriodLMM - index;
-      double[] dI = new double[nI];
-      for (int loopn = 0; loopn < nI; loopn++) {
-        dI[loopn] = 1.0 / deltalmm[index + loopn];
-      }
-      double[][] salpha2Array = new double[nI][nI];
-      for (int loopn1 = 0; loopn1 < nI; loopn1++) {
-        for (int loopn2 = 0; loopn2 < nI; loopn2++) {
-          salpha2Array[loopn1][loopn2] = s.getEntry(index + loopn1, index + loopn2) * alpha2[loopjump];
+    private final LiborMarketModelDisplacedDiffusionParameters _lmm;
+    /**
+     * The volatilities. Size: nbPeriodLMM x nbFactorLMM.
+     */
+    private final double[][] _gamma;
+    /**
+     * The covariances of the rates, gamma x gamma^T. Size: nbPeriodLMM x nbPeriodLMM.
+     */
+    private final double[][] _s;
+    /**
+     * The jump times of each decision period, starting with the previous decision date.
+     */
+    private final double[][] _jumpTime;
+    private final int _nbPeriod;
+    private final double[] _dI;
+    private final double[][] _dw;
+    private final double[][] _cc;
+    private final double[][] _mP;
+    private final double[][] _mC;
+    private final double[][] _coefP;
+    private final double[][] _coefC;
+    /**
+     * The rates of the paths, evolved jump by jump. Size: nbPeriodLMM x maximum number of paths.
+     */
+    private final double[][] _f;
+    /**
+     * The result for a block of the maximum number of paths.
+     */
+    private final double[][][] _pathFull;
+
+    private LiborPathGenerator(final double[] decisionTime, final LiborMarketModelDisplacedDiffusionParameters lmm, final double maxJump, final int maxPath) {
+      _lmm = lmm;
+      _gamma = lmm.getVolatility();
+      DoubleMatrix2D gammaLMM = new DoubleMatrix2D(_gamma);
+      MatrixAlgebra algebra = new CommonsMatrixAlgebra();
+      _s = ((DoubleMatrix2D) algebra.multiply(gammaLMM, algebra.getTranspose(gammaLMM))).getData();
+      int nbJump = decisionTime.length;
+      _jumpTime = new double[nbJump][];
+      double previousTime = 0;
+      for (int loopjump = 0; loopjump < nbJump; loopjump++) {
+        double jump = decisionTime[loopjump] - previousTime;
+        if (jump < maxJump) {
+          _jumpTime[loopjump] = new double[] {previousTime, decisionTime[loopjump]};
+        } else {
+          int nbJumpIn = (int) Math.ceil(jump / maxJump);
+          _jumpTime[loopjump] = new double[nbJumpIn + 1];
+          _jumpTime[loopjump][0] = previousTime;
+          for (int loopJumpIn = 1; loopJumpIn <= nbJumpIn; loopJumpIn++) {
+            _jumpTime[loopjump][loopJumpIn] = previousTime + loopJumpIn * jump / nbJumpIn;
+          }
         }
+        previousTime = decisionTime[loopjump];
       }
-      DoubleMatrix2D salpha2 = new DoubleMatrix2D(salpha2Array);
-      // Random seed
-      double[][] dw = getNormalArray(nbFactorLMM, nbPath);
-      // Common figures
-      double[] dr1 = new double[nI];
-      for (int loopn = 0; loopn < nI; loopn++) {
-        dr1[loopn] = -salpha2.getEntry(loopn, loopn) * dt[loopjump] / 2.0;
+      _nbPeriod = lmm.getNbPeriod();
+      _dI = new double[_nbPeriod];
+      _dw = new double[lmm.getNbFactor()][maxPath];
+      _cc = new double[_nbPeriod][maxPath];
+      _mP = new double[_nbPeriod][maxPath];
+      _mC = new double[_nbPeriod][maxPath];
+      _coefP = new double[maxPath][_nbPeriod];
+      _coefC = new double[_nbPeriod][maxPath];
+      _f = new double[_nbPeriod][maxPath];
+      _pathFull = new double[nbJump][_nbPeriod][maxPath];
+    }
+
+    /**
+     * Generates the Ibor rates at the decision dates.
+     * @param initL The Ibor rates at the start, common to all the paths. Size: nbPeriodLMM.
+     * @param nbPath The number of paths, no more than the maximum.
+     * @param numberGenerator The generator of the normally distributed numbers.
+     * @return The paths. Size: nbJump x nbPeriodLMM x nbPath. The array is reused by the next block of the maximum number of paths.
+     */
+    private double[][][] generate(final double[] initL, final int nbPath, final RandomNumberGenerator numberGenerator) {
+      for (int loopper = 0; loopper < _nbPeriod; loopper++) {
+        Arrays.fill(_f[loopper], 0, nbPath, initL[loopper]);
       }
-      double[][] cc = new double[nI][nbPath];
-      for (int loopn = 0; loopn < nI; loopn++) {
-        for (int looppath = 0; looppath < nbPath; looppath++) {
-          for (int loopfact = 0; loopfact < nbFactorLMM; loopfact++) {
-            cc[loopn][looppath] += gammaLMM.getEntry(index + loopn, loopfact) * dw[loopfact][looppath] * sqrtDt * alpha[loopjump];
-          }
-          cc[loopn][looppath] += dr1[loopn];
+      double[][][] result = (nbPath == _f[0].length) ? _pathFull : new double[_jumpTime.length][_nbPeriod][nbPath];
+      for (int loopjump = 0; loopjump < _jumpTime.length; loopjump++) {
+        stepPC(_jumpTime[loopjump], nbPath, numberGenerator);
+        for (int loopper = 0; loopper < _nbPeriod; loopper++) {
+          System.arraycopy(_f[loopper], 0, result[loopjump][loopper], 0, nbPath);
         }
       }
-      // Unique step: predictor and corrector
-      double[][] mP = new double[nI][nbPath];
-      double[][] mC = new double[nI][nbPath];
-      double[][] coefP = new double[nbPath][nI - 1];
-      double[][] coefC = new double[nI][nbPath];
-      for (int looppath = 0; looppath < nbPath; looppath++) {
-        for (int loopn = 0; loopn < nI - 1; loopn++) {
-          coefP[looppath][loopn] = (f[index + loopn + 1][looppath] + almm[index + loopn + 1]) / (f[index + loopn + 1][looppath] + dI[loopn + 1]);
+      return result;
+    }
+
+    /**
+     * Fills the first columns of the random seed.
+     */
+    private void fillNormal(final int nbPath, final RandomNumberGenerator numberGenerator) {
+      if (numberGenerator instanceof PathNumberGenerator) {
+        // Draws the rows one after the other, as getVector would
+        ((PathNumberGenerator) numberGenerator).fillPaths(_dw, nbPath);
+      } else {
+        for (int loopfact = 0; loopfact < _dw.length; loopfact++) {
+          System.arraycopy(numberGenerator.getVector(nbPath), 0, _dw[loopfact], 0, nbPath);
         }
       }
-      for (int loopdrift = nI - 1; loopdrift >= 0; loopdrift--) {
-        if (loopdrift < nI - 1) {
+    }
+
+    /**
+     * Evolves the rates through one decision period, jump by jump.
+     * @param jumpTime The jump times.
+     * @param nbPath The number of paths.
+     * @param numberGenerator The generator of the normally distributed numbers.
+     */
+    private void stepPC(final double[] jumpTime, final int nbPath, final RandomNumberGenerator numberGenerator) {
+      double amr = _lmm.getMeanReversion();
+      double[] iborTime = _lmm.getIborTime();
+      double[] almm = _lmm.getDisplacement();
+      double[] deltalmm = _lmm.getAccrualFactor();
+      int nbFactorLMM = _dw.length;
+      double[][] f = _f;
+      for (int loopjump = 0; loopjump < jumpTime.length - 1; loopjump++) {
+        double dt = jumpTime[loopjump + 1] - jumpTime[loopjump];
+        double alpha = Math.exp(amr * jumpTime[loopjump + 1]);
+        double alpha2 = alpha * alpha;
+        double sqrtDt = Math.sqrt(dt);
+        int index = Arrays.binarySearch(iborTime, jumpTime[loopjump + 1] - _lmm.getTimeTolerance());
+        index = -index - 1; // The index from which the rate should be evolved.
+        int nI = _nbPeriod - index;
+        for (int loopn = 0; loopn < nI; loopn++) {
+          _dI[loopn] = 1.0 / deltalmm[index + loopn];
+        }
+        // Random seed
+        fillNormal(nbPath, numberGenerator);
+        // Common figures
+        for (int loopn = 0; loopn < nI; loopn++) {
+          double dr1 = -(_s[index + loopn][index + loopn] * alpha2) * dt / 2.0;
+          double[] cc = _cc[loopn];
+          Arrays.fill(cc, 0, nbPath, 0.0);
           for (int looppath = 0; looppath < nbPath; looppath++) {
-            coefC[loopdrift + 1][looppath] = (f[index + loopdrift + 1][looppath] + almm[index + loopdrift + 1]) / (f[index + loopdrift + 1][looppath] + dI[loopdrift + 1]);
-            for (int loop = loopdrift + 1; loop < nI; loop++) {
-              mP[loopdrift][looppath] += salpha2.getEntry(loop, loopdrift) * coefP[looppath][loop - 1];
-              mC[loopdrift][looppath] += salpha2.getEntry(loop, loopdrift) * coefC[loop][looppath];
+            for (int loopfact = 0; loopfact < nbFactorLMM; loopfact++) {
+              cc[looppath] += _gamma[index + loopn][loopfact] * _dw[loopfact][looppath] * sqrtDt * alpha;
             }
+            cc[looppath] += dr1;
           }
-          for (int looppath = 0; looppath < nbPath; looppath++) {
-            f[loopdrift + index][looppath] = (f[loopdrift + index][looppath] + almm[index + loopdrift])
-                * Math.exp(-(mP[loopdrift][looppath] + mC[loopdrift][looppath]) * dt[loopjump] / 2.0 + cc[loopdrift][looppath]) - almm[index + loopdrift];
+        }
+        // Unique step: predictor and corrector
+        for (int looppath = 0; looppath < nbPath; looppath++) {
+          for (int loopn = 0; loopn < nI - 1; loopn++) {
+            _coefP[looppath][loopn] = (f[index + loopn + 1][looppath] + almm[index + loopn + 1]) / (f[index + loopn + 1][looppath] + _dI[loopn + 1]);
           }
-        } else {
-          for (int looppath = 0; looppath < nbPath; looppath++) {
-            f[loopdrift + index][looppath] = (f[loopdrift + index][looppath] + almm[index + loopdrift]) * Math.exp(cc[loopdrift][looppath]) - almm[index + loopdrift];
+        }
+        for (int loopdrift = nI - 1; loopdrift >= 0; loopdrift--) {
+          if (loopdrift < nI - 1) {
+            double[] mP = _mP[loopdrift];
+            double[] mC = _mC[loopdrift];
+            Arrays.fill(mP, 0, nbPath, 0.0);
+            Arrays.fill(mC, 0, nbPath, 0.0);
+            for (int looppath = 0; looppath < nbPath; looppath++) {
+              _coefC[loopdrift + 1][looppath] = (f[index + loopdrift + 1][looppath] + almm[index + loopdrift + 1]) / (f[index + loopdrift + 1][looppath] + _dI[loopdrift + 1]);
+              for (int loop = loopdrift + 1; loop < nI; loop++) {
+                double salpha2 = _s[index + loop][index + loopdrift] * alpha2;
+                mP[looppath] += salpha2 * _coefP[looppath][loop - 1];
+                mC[looppath] += salpha2 * _coefC[loop][looppath];
+              }
+            }
+            for (int looppath = 0; looppath < nbPath; looppath++) {
+              f[loopdrift + index][looppath] = (f[loopdrift + index][looppath] + almm[index + loopdrift])
+                  * Math.exp(-(mP[looppath] + mC[looppath]) * dt / 2.0 + _cc[loopdrift][looppath]) - almm[index + loopdrift];
+            }
+          } else {
+            for (int looppath = 0; looppath < nbPath; looppath++) {
+              f[loopdrift + index][looppath] = (f[loopdrift + index][looppath] + almm[index + loopdrift]) * Math.exp(_cc[loopdrift][looppath]) - almm[index + loopdrift];
+            }
           }
         }
       }
     }
-    return f;
+
   }
 
   /**
-   * 
-   * @param jumpTime The time of the mandatory jumps.
-   * @param initIbor The Ibor rates at the start. nbPeriodLMM x nbPath
-   * @param lmm The LMM parameters.
-   * @return The paths. Size: nbJump x nbPeriodLMM x nbPath
+   * The simulation of the Ibor rates of a block of paths, for the block engine.
    */
-  private double[][][] pathgeneratorlibor(double[] jumpTime, final double[][] initIbor, final LiborMarketModelDisplacedDiffusionParameters lmm) {
-    int nbPeriod = initIbor.length;
-    int nbPath = initIbor[0].length;
-    int nbJump = jumpTime.length;
-    double[][] initTmp = new double[nbPeriod][nbPath];
-    for (int loop1 = 0; loop1 < nbPeriod; loop1++) {
-      System.arraycopy(initIbor[loop1], 0, initTmp[loop1], 0, nbPath);
+  private final class IborRateSimulation implements MonteCarloBlockEngine.Simulation {
+
+    private final InterestRateDerivative _instrument;
+    private final DecisionSchedule _decision;
+    private final int[][] _impactIndex;
+    private final double[] _initL;
+    private final double[] _deltaLMM;
+    private final LiborMarketModelDisplacedDiffusionParameters _lmm;
+
+    private IborRateSimulation(InterestRateDerivative instrument, DecisionSchedule decision, int[][] impactIndex, double[] initL, double[] deltaLMM,
+        LiborMarketModelDisplacedDiffusionParameters lmm) {
+      _instrument = instrument;
+      _decision = decision;
+      _impactIndex = impactIndex;
+      _initL = initL;
+      _deltaLMM = deltaLMM;
+      _lmm = lmm;
     }
-    double[] jumpTimeA = new double[nbJump + 1];
-    jumpTimeA[0] = 0;
-    System.arraycopy(jumpTime, 0, jumpTimeA, 1, nbJump);
-    double[][][] result = new double[nbJump][nbPeriod][nbPath];
-    // TODO: add intermediary jump dates if necessary
-    for (int loopjump = 0; loopjump < nbJump; loopjump++) {
-      // Intermediary jumps
-      double[] jumpIn;
-      if (jumpTimeA[loopjump + 1] - jumpTimeA[loopjump] < _maxJump) {
-        jumpIn = new double[] {jumpTimeA[loopjump], jumpTimeA[loopjump + 1]};
-      } else {
-        double jump = jumpTimeA[loopjump + 1] - jumpTimeA[loopjump];
-        int nbJumpIn = (int) Math.ceil(jump / _maxJump);
-        jumpIn = new double[nbJumpIn + 1];
-        jumpIn[0] = jumpTimeA[loopjump];
-        for (int loopJumpIn = 1; loopJumpIn <= nbJumpIn; loopJumpIn++) {
-          jumpIn[loopJumpIn] = jumpTimeA[loopjump] + loopJumpIn * jump / nbJumpIn;
+
+    @Override
+    public MonteCarloBlockEngine.BlockEvaluator createEvaluator(final int blockSize) {
+      // The work arrays of the path generation are allocated once per thread, for the largest block
+      final LiborPathGenerator generator = new LiborPathGenerator(_decision.getDecisionTime(), _lmm, _maxJump, blockSize);
+      return new MonteCarloBlockEngine.BlockEvaluator() {
+        @Override
+        public double evaluate(int block, int nbPath) {
+          // The numbers are drawn step by step, so the paths are always pseudo-random
+          double[][][] pathIbor = generator.generate(_initL, nbPath, getBlockEngine().getNumberGenerator(block));
+          return MCC.visit(_instrument, new MonteCarloIborRateDataBundle(pathIbor, _deltaLMM, _decision.getImpactAmount(), _impactIndex));
         }
-      }
-      initTmp = stepPC(jumpIn, initTmp, lmm);
-      for (int loop1 = 0; loop1 < nbPeriod; loop1++) {
-        System.arraycopy(initTmp[loop1], 0, result[loopjump][loop1], 0, nbPath);
-      }
+      };
     }
-    return result;
-  }
 
-  /**
-   * Gets a 2D-array of independent normally distributed variables.
-   * @param nbJump The number of jumps.
-   * @param nbPath The number of paths.
-   * @return The array of variables.
-   */
-  private double[][] getNormalArray(int nbJump, int nbPath) {
-    double[][] result = new double[nbJump][nbPath];
-    for (int loopjump = 0; loopjump < nbJump; loopjump++) {
-      result[loopjump] = getNumberGenerator().getVector(nbPath);
-    }
-    return result;
   }
 
 }
@@ -0,0 +1,341 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.financial.montecarlo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.Validate;
+
+import cern.jet.random.engine.MersenneTwister;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.math.random.NormalRandomNumberGenerator;
+import com.opengamma.math.random.PathNumberGenerator;
+import com.opengamma.math.random.SobolNormalRandomNumberGenerator;
+import com.opengamma.math.random.SobolSequenceGenerator;
+import com.opengamma.util.NamedThreadPoolFactory;
+
+/**
+ * Runs the paths of a Monte Carlo simulation in blocks, on several threads.
+ * <p>
+ * Each block draws its normally distributed numbers from its own stream, seeded from the seed of the engine and the index of the block.
+ * The block sums are added in the order of the blocks with compensated (Kahan) summation. The result therefore only depends on the seed, the block size
+ * and the number of paths; it is the same whatever the number of threads and the order in which the blocks complete.
+ * <p>
+ * Each thread creates a single {@link BlockEvaluator} which is used for all the blocks it runs, so that path matrices can be allocated once and filled
+ * in place.
+ * <p>
+ * The engine can also be quasi-random. The paths are then driven by a single Sobol sequence, scrambled from the seed, and each block skips directly
+ * to its first point. Dimensions beyond those of the sequence are filled with pseudo-random numbers from the stream of the block.
+ */
+public class MonteCarloBlockEngine {
+
+  /**
+   * The default number of paths in one block.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1000;
+  /**
+   * The executor shared by all engines. The threads are created when needed and are daemon threads.
+   */
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new NamedThreadPoolFactory("MonteCarlo", true));
+
+  /**
+   * The seed from which the seed of each block stream is derived.
+   */
+  private final long _seed;
+  /**
+   * The number of paths in one block.
+   */
+  private final int _blockSize;
+  /**
+   * The maximum number of threads running blocks, including the calling thread.
+   */
+  private final int _nbThread;
+  /**
+   * Whether the paths are driven by a Sobol sequence rather than pseudo-random numbers.
+   */
+  private final boolean _quasiRandom;
+
+  /**
+   * Constructor with the default block size using all the available processors.
+   * @param seed The seed.
+   */
+  public MonteCarloBlockEngine(final long seed) {
+    this(seed, DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor.
+   * @param seed The seed.
+   * @param blockSize The number of paths in one block.
+   * @param nbThread The maximum number of threads running blocks, including the calling thread.
+   */
+  public MonteCarloBlockEngine(final long seed, final int blockSize, final int nbThread) {
+    this(seed, blockSize, nbThread, false);
+  }
+
+  /**
+   * Constructor.
+   * @param seed The seed.
+   * @param blockSize The number of paths in one block.
+   * @param nbThread The maximum number of threads running blocks, including the calling thread.
+   * @param quasiRandom Whether the paths are driven by a scrambled Sobol sequence.
+   */
+  public MonteCarloBlockEngine(final long seed, final int blockSize, final int nbThread, final boolean quasiRandom) {
+    Validate.isTrue(blockSize > 0, "block size must be positive");
+    Validate.isTrue(nbThread > 0, "number of threads must be positive");
+    _seed = seed;
+    _blockSize = blockSize;
+    _nbThread = nbThread;
+    _quasiRandom = quasiRandom;
+  }
+
+  /**
+   * Gets the seed.
+   * @return The seed.
+   */
+  public long getSeed() {
+    return _seed;
+  }
+
+  /**
+   * Gets the number of paths in one block.
+   * @return The block size.
+   */
+  public int getBlockSize() {
+    return _blockSize;
+  }
+
+  /**
+   * Gets the maximum number of threads running blocks.
+   * @return The number of threads.
+   */
+  public int getNbThread() {
+    return _nbThread;
+  }
+
+  /**
+   * Gets whether the paths are driven by a Sobol sequence.
+   * @return True if quasi-random.
+   */
+  public boolean isQuasiRandom() {
+    return _quasiRandom;
+  }
+
+  /**
+   * Gets the number of blocks for a number of paths.
+   * @param nbPath The number of paths.
+   * @return The number of blocks.
+   */
+  public int getNbBlock(final int nbPath) {
+    return (nbPath + _blockSize - 1) / _blockSize;
+  }
+
+  /**
+   * Gets the number of paths in a block. All the blocks are full except possibly the last one.
+   * @param nbPath The total number of paths.
+   * @param block The index of the block.
+   * @return The number of paths in the block.
+   */
+  public int getNbPath(final int nbPath, final int block) {
+    return Math.min(_blockSize, nbPath - block * _blockSize);
+  }
+
+  /**
+   * Creates the generator of the normally distributed numbers for a block. The generators of different blocks are independently seeded.
+   * @param block The index of the block.
+   * @return The generator.
+   */
+  public NormalRandomNumberGenerator getNumberGenerator(final int block) {
+    return new NormalRandomNumberGenerator(0.0, 1.0, new MersenneTwister(getBlockSeed(block)));
+  }
+
+  /**
+   * Creates the generator of the normally distributed numbers driving the paths of a block, one row per dimension and one column per path.
+   * If the engine is quasi-random, the first rows are driven by the Sobol sequence positioned at the first path of the block; simulations should
+   * assign them the largest part of the variance, for example through a {@link com.opengamma.math.random.BrownianBridge}.
+   * @param dimension The number of dimensions of a path.
+   * @param block The index of the block.
+   * @return The generator.
+   */
+  public PathNumberGenerator getPathNumberGenerator(final int dimension, final int block) {
+    if (!_quasiRandom) {
+      return getNumberGenerator(block);
+    }
+    // The scrambling is the same for all the blocks, which are parts of the same sequence
+    final SobolNormalRandomNumberGenerator sobol = new SobolNormalRandomNumberGenerator(Math.min(dimension, SobolSequenceGenerator.MAX_DIMENSION), getBlockSeed(-1));
+    sobol.getSequence().skipTo(1L + (long) block * _blockSize);
+    if (dimension <= SobolSequenceGenerator.MAX_DIMENSION) {
+      return sobol;
+    }
+    return new PaddedPathNumberGenerator(sobol, getNumberGenerator(block));
+  }
+
+  /**
+   * Derives the seed of the stream of a block by mixing the seed of the engine with the index of the block (finaliser of the SplitMix64 generator),
+   * so that the streams of consecutive blocks are not correlated.
+   * @param block The index of the block.
+   * @return The seed of the block stream.
+   */
+  private int getBlockSeed(final int block) {
+    long z = _seed + (block + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    z = z ^ (z >>> 31);
+    return (int) (z ^ (z >>> 32));
+  }
+
+  /**
+   * Runs all the blocks of a simulation and returns the sum over all the paths.
+   * @param nbPath The total number of paths.
+   * @param simulation The simulation.
+   * @return The sum of the block sums.
+   */
+  public double sum(final int nbPath, final Simulation simulation) {
+    Validate.isTrue(nbPath > 0, "number of paths must be positive");
+    Validate.notNull(simulation, "simulation");
+    final int nbBlock = getNbBlock(nbPath);
+    final double[] blockSum = new double[nbBlock];
+    final AtomicInteger nextBlock = new AtomicInteger();
+    final int nbTask = Math.min(_nbThread, nbBlock);
+    final List<Future<?>> futures = new ArrayList<Future<?>>(nbTask - 1);
+    for (int looptask = 1; looptask < nbTask; looptask++) {
+      futures.add(EXECUTOR.submit(new BlockRunner(nbPath, simulation, nextBlock, blockSum)));
+    }
+    try {
+      // The calling thread runs blocks too rather than waiting idle
+      new BlockRunner(nbPath, simulation, nextBlock, blockSum).run();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OpenGammaRuntimeException("Interrupted while running Monte Carlo blocks", e);
+    } catch (ExecutionException e) {
+      throw new OpenGammaRuntimeException("Error running Monte Carlo block", e.getCause());
+    } finally {
+      // Stop the other threads picking up blocks if one of them failed
+      nextBlock.set(nbBlock);
+    }
+    return compensatedSum(blockSum);
+  }
+
+  /**
+   * Adds an array of numbers, in order, with Kahan's compensated summation.
+   * @param values The numbers.
+   * @return The sum.
+   */
+  public static double compensatedSum(final double[] values) {
+    double sum = 0.0;
+    double compensation = 0.0;
+    for (final double value : values) {
+      final double y = value - compensation;
+      final double t = sum + y;
+      compensation = (t - sum) - y;
+      sum = t;
+    }
+    return sum;
+  }
+
+  /**
+   * Runs blocks, taking the next one not yet started, until all the blocks have been started.
+   */
+  private final class BlockRunner implements Runnable {
+
+    private final int _nbPath;
+    private final Simulation _simulation;
+    private final AtomicInteger _nextBlock;
+    private final double[] _blockSum;
+
+    private BlockRunner(final int nbPath, final Simulation simulation, final AtomicInteger nextBlock, final double[] blockSum) {
+      _nbPath = nbPath;
+      _simulation = simulation;
+      _nextBlock = nextBlock;
+      _blockSum = blockSum;
+    }
+
+    @Override
+    public void run() {
+      BlockEvaluator evaluator = null;
+      int block = _nextBlock.getAndIncrement();
+      while (block < _blockSum.length) {
+        if (evaluator == null) {
+          evaluator = _simulation.createEvaluator(_blockSize);
+        }
+        // Each element is written by a single thread; Future.get makes the writes visible to the calling thread
+        _blockSum[block] = evaluator.evaluate(block, getNbPath(_nbPath, block));
+        block = _nextBlock.getAndIncrement();
+      }
+    }
+
+  }
+
+  /**
+   * Fills the first dimensions from a Sobol sequence and the others from a pseudo-random generator.
+   */
+  private static final class PaddedPathNumberGenerator implements PathNumberGenerator {
+
+    private final SobolNormalRandomNumberGenerator _sobol;
+    private final NormalRandomNumberGenerator _padding;
+    private double[][] _sobolRows;
+
+    private PaddedPathNumberGenerator(final SobolNormalRandomNumberGenerator sobol, final NormalRandomNumberGenerator padding) {
+      _sobol = sobol;
+      _padding = padding;
+    }
+
+    @Override
+    public void fillPaths(final double[][] numbers, final int nbPath) {
+      final int nbSobol = _sobol.getDimension();
+      if (_sobolRows == null) {
+        _sobolRows = new double[nbSobol][];
+      }
+      System.arraycopy(numbers, 0, _sobolRows, 0, nbSobol);
+      _sobol.fillPaths(_sobolRows, nbPath);
+      for (int i = nbSobol; i < numbers.length; i++) {
+        _padding.fillVector(numbers[i], nbPath);
+      }
+    }
+
+  }
+
+  /**
+   * A Monte Carlo simulation which can be run in blocks.
+   */
+  public interface Simulation {
+
+    /**
+     * Creates an evaluator for the blocks run by one thread. The evaluator may allocate the path matrices for the largest block.
+     * @param blockSize The maximum number of paths in a block.
+     * @return The evaluator.
+     */
+    BlockEvaluator createEvaluator(int blockSize);
+
+  }
+
+  /**
+   * Evaluates blocks of paths. An evaluator is only used by one thread at a time.
+   */
+  public interface BlockEvaluator {
+
+    /**
+     * Evaluates a block of paths. The random numbers of the block are generated by {@link MonteCarloBlockEngine#getPathNumberGenerator} or
+     * {@link MonteCarloBlockEngine#getNumberGenerator}.
+     * @param block The index of the block.
+     * @param nbPath The number of paths in the block, no more than the block size.
+     * @return The sum over the paths of the block.
+     */
+    double evaluate(int block, int nbPath);
+
+  }
+
+}
@@ -5,6 +5,8 @@
  */
 package com.opengamma.financial.montecarlo;
 
+import org.apache.commons.lang.Validate;
+
 import com.opengamma.financial.interestrate.method.PricingMethod;
 import com.opengamma.math.random.RandomNumberGenerator;
 
@@ -21,6 +23,10 @@ public abstract class MonteCarloMethod implements PricingMethod {
    * The number of paths.
    */
   private final int _nbPath;
+  /**
+   * The engine running the blocks of paths concurrently. Null if the paths are generated sequentially from the random number generator.
+   */
+  private final MonteCarloBlockEngine _blockEngine;
 
   /**
    * Constructor.
@@ -30,6 +36,19 @@ public abstract class MonteCarloMethod implements PricingMethod {
   public MonteCarloMethod(RandomNumberGenerator numberGenerator, int nbPath) {
     _numberGenerator = numberGenerator;
     _nbPath = nbPath;
+    _blockEngine = null;
+  }
+
+  /**
+   * Constructor of a method running the blocks of paths concurrently. The random numbers of each block are generated by the engine.
+   * @param blockEngine The block engine.
+   * @param nbPath The number of paths.
+   */
+  public MonteCarloMethod(MonteCarloBlockEngine blockEngine, int nbPath) {
+    Validate.notNull(blockEngine, "block engine");
+    _numberGenerator = null;
+    _nbPath = nbPath;
+    _blockEngine = blockEngine;
   }
 
   /**
@@ -48,4 +67,12 @@ public abstract class MonteCarloMethod implements PricingMethod {
     return _nbPath;
   }
 
+  /**
+   * Gets the _blockEngine field.
+   * @return the _blockEngine, null if the paths are generated sequentially
+   */
+  public MonteCarloBlockEngine getBlockEngine() {
+    return _blockEngine;
+  }
+
 }
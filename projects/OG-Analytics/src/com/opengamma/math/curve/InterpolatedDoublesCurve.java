@@ -13,6 +13,7 @@ import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.Validate;
 
 import com.opengamma.math.interpolation.Interpolator1D;
+import com.opengamma.math.interpolation.data.InterpolationNodeSensitivities;
 import com.opengamma.math.interpolation.data.Interpolator1DDataBundle;
 import com.opengamma.util.tuple.DoublesPair;
 
@@ -512,6 +513,33 @@ public class InterpolatedDoublesCurve extends DoublesCurve {
     return _interpolator.interpolate(_dataBundle, x);
   }
 
+  /**
+   * Primitive version of {@link #getYValue(Double)}, which does not allocate for the interpolators used for curves.
+   * @param x The <i>x</i> value
+   * @return The <i>y</i> value
+   */
+  public double getYValue(final double x) {
+    return _interpolator.interpolate(_dataBundle, x);
+  }
+
+  /**
+   * Gets the <i>y</i> values for many <i>x</i> values. This is fastest when the <i>x</i> values are increasing.
+   * @param x The <i>x</i> values, not null
+   * @param y The array to fill with the <i>y</i> values, not null. This can be the same array as x.
+   */
+  public void getYValues(final double[] x, final double[] y) {
+    _interpolator.interpolate(_dataBundle, x, y);
+  }
+
+  /**
+   * Gets the sensitivities of the <i>y</i> value at <i>x</i> to the <i>y</i> values of the nodes.
+   * @param x The <i>x</i> value
+   * @return The sensitivities to the nodes that can be non-zero
+   */
+  public InterpolationNodeSensitivities getNodeSensitivities(final double x) {
+    return _interpolator.getSparseNodeSensitivitiesForValue(_dataBundle, x);
+  }
+
   public Interpolator1D getInterpolator() {
     return _interpolator;
   }
@@ -7,6 +7,7 @@ package com.opengamma.math.interpolation;
 
 import org.apache.commons.lang.Validate;
 
+import com.opengamma.math.interpolation.data.InterpolationNodeSensitivities;
 import com.opengamma.math.interpolation.data.Interpolator1DDataBundle;
 
 /**
@@ -81,6 +82,13 @@ public class CombinedInterpolatorExtrapolator extends Interpolator1D {
     return _interpolator.interpolate(data, value);
   }
 
+  @Override
+  public double interpolate(final Interpolator1DDataBundle data, final double value) {
+    Validate.notNull(data, "data");
+    final Interpolator1D interpolator = getInterpolatorForValue(data, value);
+    return interpolator.interpolate(data, value);
+  }
+
   @Override
   public double[] getNodeSensitivitiesForValue(final Interpolator1DDataBundle data, final Double value) {
     Validate.notNull(data, "data");
@@ -97,4 +105,24 @@ public class CombinedInterpolatorExtrapolator extends Interpolator1D {
     return _interpolator.getNodeSensitivitiesForValue(data, value);
   }
 
+  @Override
+  public InterpolationNodeSensitivities getSparseNodeSensitivitiesForValue(final Interpolator1DDataBundle data, final double value) {
+    Validate.notNull(data, "data");
+    return getInterpolatorForValue(data, value).getSparseNodeSensitivitiesForValue(data, value);
+  }
+
+  private Interpolator1D getInterpolatorForValue(final Interpolator1DDataBundle data, final double value) {
+    final double[] x = data.getKeys();
+    if (value < x[0]) {
+      if (_leftExtrapolator != null) {
+        return _leftExtrapolator;
+      }
+    } else if (value > x[x.length - 1]) {
+      if (_rightExtrapolator != null) {
+        return _rightExtrapolator;
+      }
+    }
+    return _interpolator;
+  }
+
 }
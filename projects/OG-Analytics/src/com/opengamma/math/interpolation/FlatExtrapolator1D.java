@@ -7,6 +7,7 @@ package com.opengamma.math.interpolation;
 
 import org.apache.commons.lang.Validate;
 
+import com.opengamma.math.interpolation.data.InterpolationNodeSensitivities;
 import com.opengamma.math.interpolation.data.Interpolator1DDataBundle;
 
 /**
@@ -27,17 +28,23 @@ public class FlatExtrapolator1D extends Interpolator1D {
 
   @Override
   public Double interpolate(final Interpolator1DDataBundle data, final Double value) {
-    Validate.notNull(data, "data");
     Validate.notNull(value, "value");
-    if (value < data.firstKey()) {
-      return data.firstValue();
-    } else if (value > data.lastKey()) {
-      return data.lastValue();
+    return interpolate(data, value.doubleValue());
+  }
+
+  @Override
+  public double interpolate(final Interpolator1DDataBundle data, final double value) {
+    Validate.notNull(data, "data");
+    final double[] x = data.getKeys();
+    final int n = x.length;
+    if (value < x[0]) {
+      return data.getValues()[0];
+    } else if (value > x[n - 1]) {
+      return data.getValues()[n - 1];
     }
     throw new IllegalArgumentException("Value " + value + " was within data range");
   }
 
-
   @Override
   public double[] getNodeSensitivitiesForValue(final Interpolator1DDataBundle data, final Double value) {
     Validate.notNull(data, "data");
@@ -53,4 +60,17 @@ public class FlatExtrapolator1D extends Interpolator1D {
     }
     throw new IllegalArgumentException("Value " + value + " was within data range");
   }
+
+  @Override
+  public InterpolationNodeSensitivities getSparseNodeSensitivitiesForValue(final Interpolator1DDataBundle data, final double value) {
+    Validate.notNull(data, "data");
+    final double[] x = data.getKeys();
+    final int n = x.length;
+    if (value < x[0]) {
+      return new InterpolationNodeSensitivities(0, new double[] {1.0 });
+    } else if (value > x[n - 1]) {
+      return new InterpolationNodeSensitivities(n - 1, new double[] {1.0 });
+    }
+    throw new IllegalArgumentException("Value " + value + " was within data range");
+  }
 }
@@ -12,10 +12,14 @@ import java.util.SortedMap;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.Validate;
 
+import com.opengamma.math.interpolation.data.InterpolationNodeSensitivities;
 import com.opengamma.math.interpolation.data.Interpolator1DDataBundle;
 
 /**
  * A base class for interpolation in one dimension.
+ * <p>
+ * As well as the {@link Double} methods of {@link Interpolator}, there are primitive methods for single and many values. By default these box
+ * the values; the interpolators used for curves (e.g. linear, log-linear and the extrapolators) override them so that a lookup does not allocate.
  */
 
 public abstract class Interpolator1D implements Interpolator<Interpolator1DDataBundle, Double>, Serializable {
@@ -25,11 +29,49 @@ public abstract class Interpolator1D implements Interpolator<Interpolator1DDataB
   @Override
   public abstract Double interpolate(Interpolator1DDataBundle data, Double value);
 
+  /**
+   * Primitive version of {@link #interpolate(Interpolator1DDataBundle, Double)}.
+   * @param data The data, not null
+   * @param value The value to interpolate
+   * @return The interpolated value
+   */
+  public double interpolate(final Interpolator1DDataBundle data, final double value) {
+    return interpolate(data, Double.valueOf(value));
+  }
+
+  /**
+   * Interpolates many values, e.g. all the payment times of a swap.
+   * @param data The data, not null
+   * @param values The values to interpolate, not null
+   * @param results The array to fill with the interpolated values, not null. This can be the same array as values.
+   */
+  public void interpolate(final Interpolator1DDataBundle data, final double[] values, final double[] results) {
+    Validate.notNull(data, "data");
+    Validate.notNull(values, "values");
+    Validate.notNull(results, "results");
+    Validate.isTrue(results.length >= values.length, "results array too short");
+    for (int i = 0; i < values.length; i++) {
+      results[i] = interpolate(data, values[i]);
+    }
+  }
+
   public double[] getNodeSensitivitiesForValue(Interpolator1DDataBundle data, Double value, boolean useFiniteDifferenceSensitivities) {
     return useFiniteDifferenceSensitivities ? getFiniteDifferenceSensitivities(data, value) : getNodeSensitivitiesForValue(data, value);
   }
   
   public abstract double[] getNodeSensitivitiesForValue(Interpolator1DDataBundle data, Double value);
+
+  /**
+   * Gets the sensitivities of the interpolated value to the nodes, holding only the range of nodes that can be non-zero. By default this is found
+   * from {@link #getNodeSensitivitiesForValue(Interpolator1DDataBundle, Double)}; local interpolators override it to avoid allocating an
+   * array of the size of the data.
+   * @param data The data, not null
+   * @param value The value
+   * @return The sensitivities
+   */
+  public InterpolationNodeSensitivities getSparseNodeSensitivitiesForValue(final Interpolator1DDataBundle data, final double value) {
+    return InterpolationNodeSensitivities.fromDense(getNodeSensitivitiesForValue(data, Double.valueOf(value)));
+  }
   
   protected double[] getFiniteDifferenceSensitivities(Interpolator1DDataBundle data, Double value) {
     Validate.notNull(data, "data");
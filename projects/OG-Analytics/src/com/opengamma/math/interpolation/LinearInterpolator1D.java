@@ -9,6 +9,7 @@ import org.apache.commons.lang.Validate;
 
 import com.opengamma.math.interpolation.data.ArrayInterpolator1DDataBundle;
 import com.opengamma.math.interpolation.data.InterpolationBoundedValues;
+import com.opengamma.math.interpolation.data.InterpolationNodeSensitivities;
 import com.opengamma.math.interpolation.data.Interpolator1DDataBundle;
 
 /**
@@ -24,18 +25,58 @@ public class LinearInterpolator1D extends Interpolator1D {
   @Override
   public Double interpolate(final Interpolator1DDataBundle model, final Double value) {
     Validate.notNull(value, "Value to be interpolated must not be null");
+    return interpolate(model, value.doubleValue());
+  }
+
+  @Override
+  public double interpolate(final Interpolator1DDataBundle model, final double value) {
     Validate.notNull(model, "Data bundle must not be null");
-    final InterpolationBoundedValues boundedValues = model.getBoundedValues(value);
-    final double x1 = boundedValues.getLowerBoundKey();
-    final double y1 = boundedValues.getLowerBoundValue();
-    if (model.getLowerBoundIndex(value) == model.size() - 1) {
-      return y1;
+    final double[] x = model.getKeys();
+    final double[] y = model.getValues();
+    final int index = ArrayInterpolator1DDataBundle.getLowerBoundIndex(x, value);
+    if (index == x.length - 1) {
+      return y[index];
     }
-    final double x2 = boundedValues.getHigherBoundKey();
-    final double y2 = boundedValues.getHigherBoundValue();
-    return y1 + (value - x1) / (x2 - x1) * (y2 - y1);
+    final double x1 = x[index];
+    final double y1 = y[index];
+    return y1 + (value - x1) / (x[index + 1] - x1) * (y[index + 1] - y1);
   }
 
+  /**
+   * Interpolates many values, searching for each segment from the previous one when the values are increasing (e.g. the payment times of a
+   * swap).
+   * @param model The data, not null
+   * @param values The values to interpolate, not null
+   * @param results The array to fill with the interpolated values, not null. This can be the same array as values.
+   */
+  @Override
+  public void interpolate(final Interpolator1DDataBundle model, final double[] values, final double[] results) {
+    Validate.notNull(model, "Data bundle must not be null");
+    Validate.notNull(values, "values");
+    Validate.notNull(results, "results");
+    Validate.isTrue(results.length >= values.length, "results array too short");
+    final double[] x = model.getKeys();
+    final double[] y = model.getValues();
+    final int n = x.length;
+    int index = 0;
+    for (int i = 0; i < values.length; i++) {
+      final double value = values[i];
+      if (value < x[index] || value > x[n - 1]) {
+        index = ArrayInterpolator1DDataBundle.getLowerBoundIndex(x, value);
+      } else {
+        while (index < n - 1 && x[index + 1] <= value) {
+          index++;
+        }
+      }
+      if (index == n - 1) {
+        results[i] = y[index];
+      } else {
+        final double x1 = x[index];
+        final double y1 = y[index];
+        results[i] = y1 + (value - x1) / (x[index + 1] - x1) * (y[index + 1] - y1);
+      }
+    }
+  }
 
   @Override
   public double[] getNodeSensitivitiesForValue(final Interpolator1DDataBundle data, final Double value) {
@@ -57,6 +98,18 @@ public class LinearInterpolator1D extends Interpolator1D {
     result[index + 1] = b;
     return result;
   }
+
+  @Override
+  public InterpolationNodeSensitivities getSparseNodeSensitivitiesForValue(final Interpolator1DDataBundle data, final double value) {
+    Validate.notNull(data, "data");
+    final double[] x = data.getKeys();
+    final int index = ArrayInterpolator1DDataBundle.getLowerBoundIndex(x, value);
+    if (index == x.length - 1) {
+      return new InterpolationNodeSensitivities(index, new double[] {1.0 });
+    }
+    final double a = (x[index + 1] - value) / (x[index + 1] - x[index]);
+    return new InterpolationNodeSensitivities(index, new double[] {a, 1 - a });
+  }
   @Override
   public Interpolator1DDataBundle getDataBundle(final double[] x, final double[] y) {
     return new ArrayInterpolator1DDataBundle(x, y);
@@ -122,15 +122,27 @@ public class ArrayInterpolator1DDataBundle implements Interpolator1DDataBundle {
 
   @Override
   public int getLowerBoundIndex(final Double value) {
-    if (value < _keys[0]) {
+    return getLowerBoundIndex(_keys, value);
+  }
+
+  /**
+   * Finds the index of the largest key that is less than or equal to a value, without boxing the value.
+   * @param keys The keys, sorted ascending
+   * @param value The value
+   * @return The index
+   * @throws IllegalArgumentException If the value is outside the range of the keys
+   */
+  public static int getLowerBoundIndex(final double[] keys, final double value) {
+    final int n = keys.length;
+    if (value < keys[0]) {
       throw new IllegalArgumentException("Could not get lower bound index for " + value + ": lowest x-value is "
-          + _keys[0]);
+          + keys[0]);
     }
-    if (value > _keys[_n - 1]) {
+    if (value > keys[n - 1]) {
       throw new IllegalArgumentException("Could not get lower bound index for " + value + ": highest x-value is "
-          + _keys[_keys.length - 1]);
+          + keys[n - 1]);
     }
-    int index = Arrays.binarySearch(_keys, value);
+    int index = Arrays.binarySearch(keys, value);
     if (index >= 0) {
       // Fast break out if it's an exact match.
       return index;
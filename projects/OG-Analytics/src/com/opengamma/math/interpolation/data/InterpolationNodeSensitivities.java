@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.math.interpolation.data;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang.Validate;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * The sensitivities of an interpolated value to the <i>y</i> values of the nodes, stored as the weights of the contiguous range of nodes that
+ * can be non-zero (e.g. the two nodes either side of the value for linear interpolation). The sensitivity to every other node is zero.
+ */
+public final class InterpolationNodeSensitivities {
+  private final int _startIndex;
+  private final double[] _weights;
+
+  /**
+   * @param startIndex The index of the first node with a (possibly) non-zero sensitivity, not negative
+   * @param weights The sensitivities to the nodes from startIndex onwards, not null. This is not copied.
+   */
+  public InterpolationNodeSensitivities(final int startIndex, final double[] weights) {
+    ArgumentChecker.notNegative(startIndex, "start index");
+    Validate.notNull(weights, "weights");
+    _startIndex = startIndex;
+    _weights = weights;
+  }
+
+  /**
+   * Gets the non-zero range of dense sensitivities.
+   * @param sensitivities The sensitivities to all the nodes, not null
+   * @return The sensitivities
+   */
+  public static InterpolationNodeSensitivities fromDense(final double[] sensitivities) {
+    Validate.notNull(sensitivities, "sensitivities");
+    int start = 0;
+    int end = sensitivities.length;
+    while (start < end && sensitivities[start] == 0.0) {
+      start++;
+    }
+    while (end > start && sensitivities[end - 1] == 0.0) {
+      end--;
+    }
+    return new InterpolationNodeSensitivities(start, Arrays.copyOfRange(sensitivities, start, end));
+  }
+
+  /**
+   * @return The index of the first node with a (possibly) non-zero sensitivity
+   */
+  public int getStartIndex() {
+    return _startIndex;
+  }
+
+  /**
+   * @return The sensitivities to the nodes from the start index onwards
+   */
+  public double[] getWeights() {
+    return _weights;
+  }
+
+  /**
+   * @param index The index of a node
+   * @return The sensitivity to that node
+   */
+  public double getSensitivity(final int index) {
+    final int i = index - _startIndex;
+    return i >= 0 && i < _weights.length ? _weights[i] : 0.0;
+  }
+
+  /**
+   * Adds a multiple of the sensitivities to an array of sensitivities to all the nodes.
+   * @param factor The multiple
+   * @param result The array to add to, not null
+   */
+  public void addTo(final double factor, final double[] result) {
+    Validate.notNull(result, "result");
+    Validate.isTrue(_startIndex + _weights.length <= result.length, "result array too short");
+    for (int i = 0; i < _weights.length; i++) {
+      result[_startIndex + i] += factor * _weights[i];
+    }
+  }
+
+  /**
+   * @param n The number of nodes
+   * @return The sensitivities to all the nodes
+   */
+  public double[] toArray(final int n) {
+    final double[] result = new double[n];
+    addTo(1.0, result);
+    return result;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + _startIndex;
+    result = prime * result + Arrays.hashCode(_weights);
+    return result;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null) {
+      return false;
+    }
+    if (getClass() != obj.getClass()) {
+      return false;
+    }
+    final InterpolationNodeSensitivities other = (InterpolationNodeSensitivities) obj;
+    return _startIndex == other._startIndex && Arrays.equals(_weights, other._weights);
+  }
+
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.math.linearalgebra;
+
+import org.apache.commons.lang.Validate;
+
+import com.opengamma.math.MathException;
+
+/**
+ * Direct solution of tridiagonal systems of equations by the Thomas algorithm (Gaussian elimination without pivoting), in O(n) operations.
+ * <p>
+ * The matrix is given by three arrays of the same length as the system: the element (i, i - 1) is lower[i], the element (i, i) is diagonal[i] and
+ * the element (i, i + 1) is upper[i]; lower[0] and upper[n - 1] are not used. The work arrays are allocated once by the constructor, so a solver
+ * can be reused for many systems of the same size (e.g. at each time step of a finite difference scheme) without allocation. For the same reason
+ * a solver must not be shared between threads.
+ * <p>
+ * The solver can also solve the linear complementarity problem {@latex.inline $Mx \\geq r$}, {@latex.inline $x \\geq g$},
+ * {@latex.inline $(Mx - r)(x - g) = 0$} that arises for American options, by the algorithm of Brennan and Schwartz: the elimination is run
+ * towards the side where the constraint is active and the constraint is applied during the back substitution. This is exact when the matrix is an
+ * M-matrix and the region where the constraint binds is a single interval at one end of the domain.
+ * See M. Brennan and E. Schwartz, "The valuation of American put options", Journal of Finance 32 (1977).
+ */
+public class TridiagonalSolver {
+
+  private final int _size;
+  /**
+   * The eliminated off-diagonal coefficients.
+   */
+  private final double[] _factor;
+  /**
+   * The pivots of the elimination.
+   */
+  private final double[] _pivot;
+  /**
+   * The eliminated right hand side.
+   */
+  private final double[] _value;
+
+  /**
+   * @param size The size of the systems to solve, at least 1
+   */
+  public TridiagonalSolver(final int size) {
+    Validate.isTrue(size > 0, "size must be positive");
+    _size = size;
+    _factor = new double[size];
+    _pivot = new double[size];
+    _value = new double[size];
+  }
+
+  /**
+   * @return The size of the systems
+   */
+  public int getSize() {
+    return _size;
+  }
+
+  /**
+   * Solves the system {@latex.inline $Mx = r$}.
+   * @param lower The lower sub-diagonal, not null
+   * @param diagonal The diagonal, not null
+   * @param upper The upper sub-diagonal, not null
+   * @param rhs The right hand side r, not null. This is not modified.
+   * @param x The array to fill with the solution, not null. This can be the same array as rhs.
+   */
+  public void solve(final double[] lower, final double[] diagonal, final double[] upper, final double[] rhs, final double[] x) {
+    validate(lower, diagonal, upper, rhs, x);
+    eliminateDown(lower, diagonal, upper, rhs);
+    backSubstitute(x);
+  }
+
+  /**
+   * Solves the systems {@latex.inline $Mx_k = r_k$} which share the same matrix (e.g. a finite difference step for several options with the same
+   * underlying dynamics). The matrix is eliminated once, then each right hand side costs only a forward and a back substitution.
+   * @param lower The lower sub-diagonal, not null
+   * @param diagonal The diagonal, not null
+   * @param upper The upper sub-diagonal, not null
+   * @param rhs The right hand sides {@latex.inline $r_k$}, not null. These are not modified.
+   * @param x The arrays to fill with the solutions, not null and with the same number of rows as rhs. These can be the same arrays as rhs.
+   */
+  public void solve(final double[] lower, final double[] diagonal, final double[] upper, final double[][] rhs, final double[][] x) {
+    Validate.notNull(rhs, "rhs");
+    Validate.notNull(x, "x");
+    Validate.isTrue(rhs.length == x.length, "need a solution vector for each right hand side");
+    for (int k = 0; k < rhs.length; k++) {
+      validate(lower, diagonal, upper, rhs[k], x[k]);
+    }
+    factoriseDown(lower, diagonal, upper);
+    for (int k = 0; k < rhs.length; k++) {
+      substituteDown(lower, rhs[k]);
+      backSubstitute(x[k]);
+    }
+  }
+
+  /**
+   * Solves the system {@latex.inline $Mx = r$} subject to {@latex.inline $x \\geq g$} by the Brennan-Schwartz algorithm.
+   * @param lower The lower sub-diagonal, not null
+   * @param diagonal The diagonal, not null
+   * @param upper The upper sub-diagonal, not null
+   * @param rhs The right hand side r, not null. This is not modified.
+   * @param lowerBound The lower bound g, not null
+   * @param boundAtStart true if the bound is active at the start of the domain (low indices, e.g. an American put on a spot grid), false if it is
+   * active at the end (e.g. an American call)
+   * @param x The array to fill with the solution, not null. This can be the same array as rhs.
+   */
+  public void solve(final double[] lower, final double[] diagonal, final double[] upper, final double[] rhs, final double[] lowerBound, final boolean boundAtStart,
+      final double[] x) {
+    validate(lower, diagonal, upper, rhs, x);
+    Validate.notNull(lowerBound, "lower bound");
+    Validate.isTrue(lowerBound.length >= _size, "lower bound too short");
+    final int n = _size;
+    if (boundAtStart) {
+      eliminateUp(lower, diagonal, upper, rhs);
+      x[0] = Math.max(_value[0], lowerBound[0]);
+      for (int i = 1; i < n; i++) {
+        x[i] = Math.max(_value[i] - _factor[i] * x[i - 1], lowerBound[i]);
+      }
+    } else {
+      eliminateDown(lower, diagonal, upper, rhs);
+      x[n - 1] = Math.max(_value[n - 1], lowerBound[n - 1]);
+      for (int i = n - 2; i >= 0; i--) {
+        x[i] = Math.max(_value[i] - _factor[i] * x[i + 1], lowerBound[i]);
+      }
+    }
+  }
+
+  /**
+   * Eliminates the lower sub-diagonal, from the first row to the last.
+   */
+  private void eliminateDown(final double[] lower, final double[] diagonal, final double[] upper, final double[] rhs) {
+    factoriseDown(lower, diagonal, upper);
+    substituteDown(lower, rhs);
+  }
+
+  /**
+   * The part of the downwards elimination that depends only on the matrix.
+   */
+  private void factoriseDown(final double[] lower, final double[] diagonal, final double[] upper) {
+    final int n = _size;
+    _pivot[0] = checkPivot(diagonal[0]);
+    _factor[0] = n > 1 ? upper[0] / _pivot[0] : 0.0;
+    for (int i = 1; i < n; i++) {
+      _pivot[i] = checkPivot(diagonal[i] - lower[i] * _factor[i - 1]);
+      _factor[i] = i < n - 1 ? upper[i] / _pivot[i] : 0.0;
+    }
+  }
+
+  /**
+   * The part of the downwards elimination that depends on the right hand side.
+   */
+  private void substituteDown(final double[] lower, final double[] rhs) {
+    _value[0] = rhs[0] / _pivot[0];
+    for (int i = 1; i < _size; i++) {
+      _value[i] = (rhs[i] - lower[i] * _value[i - 1]) / _pivot[i];
+    }
+  }
+
+  private void backSubstitute(final double[] x) {
+    x[_size - 1] = _value[_size - 1];
+    for (int i = _size - 2; i >= 0; i--) {
+      x[i] = _value[i] - _factor[i] * x[i + 1];
+    }
+  }
+
+  /**
+   * Eliminates the upper sub-diagonal, from the last row to the first.
+   */
+  private void eliminateUp(final double[] lower, final double[] diagonal, final double[] upper, final double[] rhs) {
+    final int n = _size;
+    double pivot = checkPivot(diagonal[n - 1]);
+    _factor[n - 1] = n > 1 ? lower[n - 1] / pivot : 0.0;
+    _value[n - 1] = rhs[n - 1] / pivot;
+    for (int i = n - 2; i >= 0; i--) {
+      pivot = checkPivot(diagonal[i] - upper[i] * _factor[i + 1]);
+      _factor[i] = i > 0 ? lower[i] / pivot : 0.0;
+      _value[i] = (rhs[i] - upper[i] * _value[i + 1]) / pivot;
+    }
+  }
+
+  private static double checkPivot(final double pivot) {
+    if (pivot == 0.0) {
+      throw new MathException("Zero pivot. The matrix is singular or needs pivoting");
+    }
+    return pivot;
+  }
+
+  private void validate(final double[] lower, final double[] diagonal, final double[] upper, final double[] rhs, final double[] x) {
+    Validate.notNull(lower, "lower");
+    Validate.notNull(diagonal, "diagonal");
+    Validate.notNull(upper, "upper");
+    Validate.notNull(rhs, "rhs");
+    Validate.notNull(x, "x");
+    Validate.isTrue(lower.length >= _size && diagonal.length >= _size && upper.length >= _size, "matrix arrays too short");
+    Validate.isTrue(rhs.length >= _size && x.length >= _size, "vectors too short");
+  }
+
+}
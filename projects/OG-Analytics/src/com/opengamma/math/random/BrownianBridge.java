@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.math.random;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Builds the values of a Brownian motion at a set of times from independent standard normal numbers by the Brownian bridge construction.
+ * <p>
+ * The first number gives the value at the last time, which has the largest variance; the following ones fill the middle of the intervals already built,
+ * in order of decreasing conditional variance. With a quasi-random sequence the best dimensions therefore drive the largest part of the variance of the
+ * paths. The values have the covariance of a Brownian motion, min(t<sub>i</sub>, t<sub>j</sub>), whatever the generator.
+ * <p>
+ * The construction is the one described in P. Jaeckel, "Monte Carlo methods in finance", Wiley (2002). The times can be any non-decreasing
+ * non-negative numbers, for example the cumulative variances of a time-dependent volatility; equal times give equal values.
+ */
+public class BrownianBridge {
+
+  private final double[] _times;
+  /**
+   * The index of the value built at each step.
+   */
+  private final int[] _bridgeIndex;
+  /**
+   * The index of the value on the left of the one built at each step, -1 for the origin.
+   */
+  private final int[] _leftIndex;
+  /**
+   * The index of the value on the right of the one built at each step.
+   */
+  private final int[] _rightIndex;
+  private final double[] _leftWeight;
+  private final double[] _rightWeight;
+  private final double[] _stdDev;
+
+  /**
+   * Constructor.
+   * @param times The times, or variances, of the values. Non-negative and non-decreasing. Not null or empty.
+   */
+  public BrownianBridge(final double[] times) {
+    Validate.notNull(times, "times");
+    final int n = times.length;
+    Validate.isTrue(n > 0, "no times");
+    Validate.isTrue(times[0] >= 0, "times must be non-negative");
+    for (int i = 1; i < n; i++) {
+      Validate.isTrue(times[i] >= times[i - 1], "times must be non-decreasing");
+    }
+    _times = times.clone();
+    _bridgeIndex = new int[n];
+    _leftIndex = new int[n];
+    _rightIndex = new int[n];
+    _leftWeight = new double[n];
+    _rightWeight = new double[n];
+    _stdDev = new double[n];
+    // map[i] is true once the value i has been built
+    final boolean[] map = new boolean[n];
+    map[n - 1] = true;
+    _bridgeIndex[0] = n - 1;
+    _leftIndex[0] = -1;
+    _rightIndex[0] = n - 1;
+    _stdDev[0] = Math.sqrt(_times[n - 1]);
+    int j = 0;
+    for (int step = 1; step < n; step++) {
+      // Find the next interval j..k-1 of values not yet built; the value k is built
+      while (map[j]) {
+        j++;
+      }
+      int k = j;
+      while (!map[k]) {
+        k++;
+      }
+      final int l = j + ((k - 1 - j) >> 1);
+      map[l] = true;
+      _bridgeIndex[step] = l;
+      _leftIndex[step] = j - 1;
+      _rightIndex[step] = k;
+      final double tLeft = (j > 0) ? _times[j - 1] : 0.0;
+      final double interval = _times[k] - tLeft;
+      if (interval > 0) {
+        _leftWeight[step] = (_times[k] - _times[l]) / interval;
+        _rightWeight[step] = (_times[l] - tLeft) / interval;
+        _stdDev[step] = Math.sqrt((_times[l] - tLeft) * (_times[k] - _times[l]) / interval);
+      } else {
+        // No variance over the interval: the value is the one on the left
+        _leftWeight[step] = 1.0;
+      }
+      j = k + 1;
+      if (j >= n) {
+        j = 0;
+      }
+    }
+  }
+
+  /**
+   * Gets the number of values.
+   * @return The dimension.
+   */
+  public int getDimension() {
+    return _times.length;
+  }
+
+  /**
+   * Gets the times.
+   * @return The times.
+   */
+  public double[] getTimes() {
+    return _times.clone();
+  }
+
+  /**
+   * Builds one path.
+   * @param normals The independent standard normal numbers, in order of importance. At least the dimension. Not null.
+   * @param path The array to fill with the values of the Brownian motion at the times. At least the dimension. Not null.
+   */
+  public void buildPath(final double[] normals, final double[] path) {
+    Validate.notNull(normals, "normals");
+    Validate.notNull(path, "path");
+    final int n = _times.length;
+    path[n - 1] = _stdDev[0] * normals[0];
+    for (int step = 1; step < n; step++) {
+      final int left = _leftIndex[step];
+      final double leftValue = (left >= 0) ? path[left] : 0.0;
+      path[_bridgeIndex[step]] = _leftWeight[step] * leftValue + _rightWeight[step] * path[_rightIndex[step]] + _stdDev[step] * normals[step];
+    }
+  }
+
+  /**
+   * Builds a set of paths stored by column.
+   * @param normals The independent standard normal numbers, one row per dimension in order of importance and one column per path. Not null.
+   * @param paths The matrix to fill with the values of the Brownian motion, one row per time and one column per path. Not null.
+   * @param nbPath The number of paths (columns) to build.
+   */
+  public void buildPaths(final double[][] normals, final double[][] paths, final int nbPath) {
+    Validate.notNull(normals, "normals");
+    Validate.notNull(paths, "paths");
+    final int n = _times.length;
+    Validate.isTrue(normals.length >= n && paths.length >= n, "matrices smaller than the dimension");
+    final double[] last = paths[n - 1];
+    final double[] first = normals[0];
+    for (int looppath = 0; looppath < nbPath; looppath++) {
+      last[looppath] = _stdDev[0] * first[looppath];
+    }
+    for (int step = 1; step < n; step++) {
+      final double[] result = paths[_bridgeIndex[step]];
+      final double[] right = paths[_rightIndex[step]];
+      final double[] normal = normals[step];
+      final double rightWeight = _rightWeight[step];
+      final double stdDev = _stdDev[step];
+      final int left = _leftIndex[step];
+      if (left >= 0) {
+        final double[] leftValue = paths[left];
+        final double leftWeight = _leftWeight[step];
+        for (int looppath = 0; looppath < nbPath; looppath++) {
+          result[looppath] = leftWeight * leftValue[looppath] + rightWeight * right[looppath] + stdDev * normal[looppath];
+        }
+      } else {
+        for (int looppath = 0; looppath < nbPath; looppath++) {
+          result[looppath] = rightWeight * right[looppath] + stdDev * normal[looppath];
+        }
+      }
+    }
+  }
+
+}
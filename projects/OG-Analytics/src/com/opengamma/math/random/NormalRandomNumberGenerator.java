@@ -19,7 +19,7 @@ import com.opengamma.util.ArgumentChecker;
 /**
  * 
  */
-public class NormalRandomNumberGenerator implements RandomNumberGenerator {
+public class NormalRandomNumberGenerator implements RandomNumberGenerator, PathNumberGenerator {
   private final ProbabilityDistribution<Double> _normal;
 
   public NormalRandomNumberGenerator(final double mean, final double sigma) {
@@ -43,6 +43,32 @@ public class NormalRandomNumberGenerator implements RandomNumberGenerator {
     return result;
   }
 
+  /**
+   * Fills the start of an existing array with random numbers, without allocating.
+   * @param vector The array to fill, not null.
+   * @param dimension The number of elements to fill, from the start of the array.
+   */
+  public void fillVector(final double[] vector, final int dimension) {
+    Validate.notNull(vector, "vector");
+    ArgumentChecker.notNegative(dimension, "dimension");
+    Validate.isTrue(dimension <= vector.length, "dimension greater than the length of the vector");
+    for (int i = 0; i < dimension; i++) {
+      vector[i] = _normal.nextRandom();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * The rows are filled one after the other.
+   */
+  @Override
+  public void fillPaths(final double[][] numbers, final int nbPath) {
+    Validate.notNull(numbers, "numbers");
+    for (final double[] row : numbers) {
+      fillVector(row, nbPath);
+    }
+  }
+
   @Override
   public List<double[]> getVectors(final int dimension, final int n) {
     if (dimension < 0) {
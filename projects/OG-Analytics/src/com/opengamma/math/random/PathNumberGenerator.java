@@ -0,0 +1,24 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.math.random;
+
+/**
+ * Generates the normally distributed numbers driving a set of Monte Carlo paths, as a matrix with one row per dimension (time step or factor)
+ * and one column per path.
+ * <p>
+ * For a pseudo-random generator the rows can be filled one after the other. For a quasi-random generator each column is one point of the
+ * sequence, so that the first rows are driven by the best dimensions.
+ */
+public interface PathNumberGenerator {
+
+  /**
+   * Fills the first columns of an existing matrix, without allocating.
+   * @param numbers The matrix to fill, one row per dimension. Not null.
+   * @param nbPath The number of columns (paths) to fill.
+   */
+  void fillPaths(double[][] numbers, int nbPath);
+
+}
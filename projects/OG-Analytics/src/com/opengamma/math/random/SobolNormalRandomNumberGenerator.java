@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.math.random;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+
+import cern.jet.stat.Probability;
+
+/**
+ * Generates quasi-random normally distributed vectors from a Sobol sequence, by the inverse of the normal cumulative distribution.
+ * <p>
+ * Each vector is one point of the sequence, so the dimension of the vectors is fixed by the generator. The best dimensions of the sequence are the
+ * first ones; they should drive the largest part of the variance, for example through a {@link BrownianBridge}.
+ */
+public class SobolNormalRandomNumberGenerator implements RandomNumberGenerator, PathNumberGenerator {
+
+  private final SobolSequenceGenerator _sequence;
+  private final double[] _point;
+
+  /**
+   * Creates an unscrambled generator.
+   * @param dimension The dimension, from 1 to {@link SobolSequenceGenerator#MAX_DIMENSION}.
+   */
+  public SobolNormalRandomNumberGenerator(final int dimension) {
+    this(new SobolSequenceGenerator(dimension));
+  }
+
+  /**
+   * Creates a generator scrambled by a random digital shift.
+   * @param dimension The dimension, from 1 to {@link SobolSequenceGenerator#MAX_DIMENSION}.
+   * @param seed The seed of the scrambling.
+   */
+  public SobolNormalRandomNumberGenerator(final int dimension, final int seed) {
+    this(new SobolSequenceGenerator(dimension, seed));
+  }
+
+  /**
+   * Creates a generator from a Sobol sequence.
+   * @param sequence The sequence, not null. It is used, and advanced, by the generator.
+   */
+  public SobolNormalRandomNumberGenerator(final SobolSequenceGenerator sequence) {
+    Validate.notNull(sequence, "sequence");
+    _sequence = sequence;
+    _point = new double[sequence.getDimension()];
+  }
+
+  /**
+   * Gets the underlying Sobol sequence, for example to skip to the first point of a block of paths.
+   * @return The sequence.
+   */
+  public SobolSequenceGenerator getSequence() {
+    return _sequence;
+  }
+
+  /**
+   * Gets the dimension of the vectors.
+   * @return The dimension.
+   */
+  public int getDimension() {
+    return _point.length;
+  }
+
+  @Override
+  public double[] getVector(final int dimension) {
+    Validate.isTrue(dimension == getDimension(), "dimension must be the one of the sequence");
+    final double[] result = new double[dimension];
+    _sequence.nextVector(result);
+    for (int i = 0; i < dimension; i++) {
+      result[i] = Probability.normalInverse(result[i]);
+    }
+    return result;
+  }
+
+  @Override
+  public List<double[]> getVectors(final int dimension, final int n) {
+    Validate.isTrue(n >= 0, "Number of values must be greater than zero");
+    final List<double[]> result = new ArrayList<double[]>(n);
+    for (int i = 0; i < n; i++) {
+      result.add(getVector(dimension));
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   * Each column is the next point of the sequence.
+   */
+  @Override
+  public void fillPaths(final double[][] numbers, final int nbPath) {
+    Validate.notNull(numbers, "numbers");
+    Validate.isTrue(numbers.length == getDimension(), "number of rows must be the dimension of the sequence");
+    for (int looppath = 0; looppath < nbPath; looppath++) {
+      _sequence.nextVector(_point);
+      for (int i = 0; i < _point.length; i++) {
+        numbers[i][looppath] = Probability.normalInverse(_point[i]);
+      }
+    }
+  }
+
+}
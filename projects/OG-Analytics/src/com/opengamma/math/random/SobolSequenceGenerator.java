@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.math.random;
+
+import org.apache.commons.lang.Validate;
+
+import cern.jet.random.engine.MersenneTwister;
+
+/**
+ * Generates the points of a Sobol low-discrepancy sequence in the unit hypercube.
+ * <p>
+ * The direction numbers are those of S. Joe and F. Y. Kuo, "Constructing Sobol sequences with better two-dimensional projections", SIAM J. Sci. Comput. 30,
+ * 2635-2654 (2008), for up to {@link #MAX_DIMENSION} dimensions. The points are generated in Gray code order, 32 bits per coordinate, and the generator
+ * can skip directly to any point so that blocks of paths can be generated independently.
+ * <p>
+ * The sequence can be scrambled by a random digital shift: each coordinate is XOR-ed with a random number drawn once per dimension. This preserves the
+ * low-discrepancy of the sequence and allows error estimates from independently scrambled runs. The first point (the origin of the unscrambled sequence)
+ * is skipped by default and the coordinates are mid-points of their 2<sup>-32</sup> interval, so that they are strictly inside (0, 1).
+ */
+public class SobolSequenceGenerator {
+
+  /**
+   * The number of bits of each coordinate.
+   */
+  private static final int BITS = 32;
+  /**
+   * The scale from the integer coordinates to (0, 1).
+   */
+  private static final double SCALE = 1.0 / (1L << BITS);
+  /**
+   * The degree s, the coefficients a and the initial direction numbers m_1, ..., m_s of the primitive polynomials of the dimensions after the first.
+   */
+  private static final int[][] DIRECTION_NUMBERS = {
+    {1, 0, 1 }, {2, 1, 1, 3 }, {3, 1, 1, 3, 1 }, {3, 2, 1, 1, 1 }, {4, 1, 1, 1, 3, 3 }, {4, 4, 1, 3, 5, 13 }, {5, 2, 1, 1, 5, 5, 17 },
+    {5, 4, 1, 1, 5, 5, 5 }, {5, 7, 1, 1, 7, 11, 19 }, {5, 11, 1, 1, 5, 1, 1 }, {5, 13, 1, 1, 1, 3, 11 }, {5, 14, 1, 3, 5, 5, 31 },
+    {6, 1, 1, 3, 3, 9, 7, 49 }, {6, 13, 1, 1, 1, 15, 21, 21 }, {6, 16, 1, 3, 1, 13, 27, 49 }, {6, 19, 1, 1, 1, 15, 7, 5 },
+    {6, 22, 1, 3, 1, 15, 13, 25 }, {6, 25, 1, 1, 5, 5, 19, 61 }, {7, 1, 1, 3, 7, 11, 23, 15, 103 }, {7, 4, 1, 3, 7, 13, 13, 15, 69 },
+    {7, 7, 1, 1, 3, 13, 7, 35, 63 }, {7, 8, 1, 3, 5, 9, 1, 25, 53 }, {7, 14, 1, 3, 1, 13, 9, 35, 107 }, {7, 19, 1, 3, 1, 5, 27, 61, 31 },
+    {7, 21, 1, 1, 5, 11, 19, 41, 61 }, {7, 28, 1, 3, 5, 3, 3, 13, 69 }, {7, 31, 1, 1, 7, 13, 1, 19, 1 }, {7, 32, 1, 3, 7, 5, 13, 19, 59 },
+    {7, 37, 1, 1, 3, 9, 25, 29, 41 }, {7, 41, 1, 3, 5, 13, 23, 1, 55 }, {7, 42, 1, 3, 7, 3, 13, 59, 17 }, {7, 50, 1, 3, 1, 3, 5, 53, 69 },
+    {7, 55, 1, 1, 5, 5, 23, 33, 13 }, {7, 56, 1, 1, 7, 7, 1, 61, 123 }, {7, 59, 1, 1, 7, 9, 13, 61, 49 }, {7, 62, 1, 3, 3, 5, 3, 55, 33 },
+    {8, 14, 1, 3, 1, 15, 31, 13, 49, 245 }, {8, 21, 1, 3, 5, 15, 31, 59, 63, 97 }, {8, 22, 1, 3, 1, 11, 11, 11, 77, 249 } };
+  /**
+   * The maximum number of dimensions.
+   */
+  public static final int MAX_DIMENSION = DIRECTION_NUMBERS.length + 1;
+
+  /**
+   * The direction numbers, by dimension and bit.
+   */
+  private final int[][] _direction;
+  /**
+   * The digital shift of each dimension, 0 if not scrambled.
+   */
+  private final int[] _shift;
+  /**
+   * The integer coordinates of the current point, unshifted.
+   */
+  private final int[] _x;
+  /**
+   * The index of the next point.
+   */
+  private long _nextIndex;
+
+  /**
+   * Creates an unscrambled generator, positioned at the first point after the origin.
+   * @param dimension The dimension, from 1 to {@link #MAX_DIMENSION}.
+   */
+  public SobolSequenceGenerator(final int dimension) {
+    this(dimension, new int[dimension]);
+  }
+
+  /**
+   * Creates a generator scrambled by a random digital shift, positioned at the second point of the sequence.
+   * @param dimension The dimension, from 1 to {@link #MAX_DIMENSION}.
+   * @param seed The seed of the digital shifts.
+   */
+  public SobolSequenceGenerator(final int dimension, final int seed) {
+    this(dimension, getShift(dimension, seed));
+  }
+
+  private SobolSequenceGenerator(final int dimension, final int[] shift) {
+    Validate.isTrue(dimension > 0 && dimension <= MAX_DIMENSION, "dimension must be between 1 and " + MAX_DIMENSION);
+    _direction = new int[dimension][BITS];
+    for (int i = 0; i < BITS; i++) {
+      _direction[0][i] = 1 << (BITS - 1 - i);
+    }
+    for (int d = 1; d < dimension; d++) {
+      final int[] poly = DIRECTION_NUMBERS[d - 1];
+      final int s = poly[0];
+      final int a = poly[1];
+      final int[] v = _direction[d];
+      for (int i = 0; i < s; i++) {
+        v[i] = poly[2 + i] << (BITS - 1 - i);
+      }
+      for (int i = s; i < BITS; i++) {
+        v[i] = v[i - s] ^ (v[i - s] >>> s);
+        for (int k = 1; k < s; k++) {
+          v[i] ^= ((a >>> (s - 1 - k)) & 1) * v[i - k];
+        }
+      }
+    }
+    _shift = shift;
+    _x = new int[dimension];
+    _nextIndex = 1;
+  }
+
+  private static int[] getShift(final int dimension, final int seed) {
+    final MersenneTwister engine = new MersenneTwister(seed);
+    final int[] shift = new int[dimension];
+    for (int d = 0; d < dimension; d++) {
+      shift[d] = engine.nextInt();
+    }
+    return shift;
+  }
+
+  /**
+   * Gets the dimension.
+   * @return The dimension.
+   */
+  public int getDimension() {
+    return _x.length;
+  }
+
+  /**
+   * Gets the index of the next point. The index of the origin of the sequence is 0.
+   * @return The index.
+   */
+  public long getNextIndex() {
+    return _nextIndex;
+  }
+
+  /**
+   * Positions the generator so that the next point is the one of a given index, without generating the points in between.
+   * @param index The index of the next point, at least 0 and less than 2<sup>32</sup>.
+   */
+  public void skipTo(final long index) {
+    Validate.isTrue(index >= 0 && index < (1L << BITS), "index must be between 0 and 2^32 - 1");
+    // The point of index n is the XOR of the direction numbers of the bits set in the Gray code of n; it becomes the current point, n - 1
+    final long gray = (index - 1) ^ ((index - 1) >>> 1);
+    for (int d = 0; d < _x.length; d++) {
+      int x = 0;
+      if (index > 0) {
+        for (int i = 0; i < BITS; i++) {
+          if (((gray >>> i) & 1) != 0) {
+            x ^= _direction[d][i];
+          }
+        }
+      }
+      _x[d] = x;
+    }
+    _nextIndex = index;
+  }
+
+  /**
+   * Generates the next point into an existing array.
+   * @param point The array to fill, with at least the dimension of the generator. Not null.
+   */
+  public void nextVector(final double[] point) {
+    Validate.notNull(point, "point");
+    Validate.isTrue(point.length >= _x.length, "point shorter than the dimension");
+    if (_nextIndex > 0) {
+      // Gray code order: the bit which changes is the lowest zero bit of the index of the current point
+      final int c = Long.numberOfTrailingZeros(~(_nextIndex - 1));
+      Validate.isTrue(c < BITS, "sequence exhausted");
+      for (int d = 0; d < _x.length; d++) {
+        _x[d] ^= _direction[d][c];
+      }
+    }
+    for (int d = 0; d < _x.length; d++) {
+      point[d] = (((_x[d] ^ _shift[d]) & 0xFFFFFFFFL) + 0.5) * SCALE;
+    }
+    _nextIndex++;
+  }
+
+  /**
+   * Generates the next point.
+   * @return The point, in (0, 1)<sup>d</sup>.
+   */
+  public double[] nextVector() {
+    final double[] point = new double[_x.length];
+    nextVector(point);
+    return point;
+  }
+
+}
@@ -35,14 +35,21 @@ import com.opengamma.financial.interestrate.swap.definition.TenorSwap;
 import com.opengamma.financial.model.interestrate.curve.YieldAndDiscountCurve;
 import com.opengamma.financial.model.interestrate.curve.YieldCurve;
 import com.opengamma.math.curve.ConstantDoublesCurve;
+import com.opengamma.math.curve.InterpolatedDoublesCurve;
+import com.opengamma.math.interpolation.CombinedInterpolatorExtrapolatorFactory;
+import com.opengamma.math.interpolation.Interpolator1D;
+import com.opengamma.math.interpolation.Interpolator1DFactory;
 import com.opengamma.util.money.Currency;
 import com.opengamma.util.money.CurrencyAmount;
+import com.opengamma.util.monitor.OperationTimer;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.time.calendar.Period;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
 /**
@@ -446,4 +453,60 @@ public class PresentValueCalculatorTest {
     assertEquals(expected, pv, 1e-8);
   }
 
+  /**
+   * Prices a 30 year swap on interpolated curves, and compares the primitive, boxed and batched discount factor lookups of its payment times.
+   * "enabled = false" for the standard testing.
+   */
+  @Test(enabled = false)
+  public void performanceSwap30Y() {
+    final Logger logger = LoggerFactory.getLogger(PresentValueCalculatorTest.class);
+    final int benchmarkCycles = 100000;
+    final Interpolator1D interpolator = CombinedInterpolatorExtrapolatorFactory.getInterpolator(Interpolator1DFactory.LINEAR, Interpolator1DFactory.FLAT_EXTRAPOLATOR);
+    final double[] nodes = new double[] {0.25, 0.5, 1, 2, 3, 5, 7, 10, 15, 20, 25, 30, 40 };
+    final double[] fundingRates = new double[nodes.length];
+    final double[] liborRates = new double[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      fundingRates[i] = 0.03 + 0.02 * (1 - Math.exp(-nodes[i] / 5));
+      liborRates[i] = fundingRates[i] + 0.002;
+    }
+    final YieldAndDiscountCurve fundingCurve = new YieldCurve(InterpolatedDoublesCurve.fromSorted(nodes, fundingRates, interpolator));
+    final YieldCurveBundle curves = new YieldCurveBundle();
+    curves.setCurve(FIVE_PC_CURVE_NAME, fundingCurve);
+    curves.setCurve(FOUR_PC_CURVE_NAME, new YieldCurve(InterpolatedDoublesCurve.fromSorted(nodes, liborRates, interpolator)));
+    final FixedFloatSwap swap = makeSwap(30, SimpleFrequency.QUARTERLY, SimpleFrequency.SEMI_ANNUAL, FIVE_PC_CURVE_NAME, FOUR_PC_CURVE_NAME, 0.045, 1);
+    final double[] times = new double[120];
+    for (int i = 0; i < times.length; i++) {
+      times[i] = 0.25 * (i + 1);
+    }
+    final double[] df = new double[times.length];
+    double sum = 0;
+
+    OperationTimer timer = new OperationTimer(logger, "processing {} cycles pricing a 30y swap", benchmarkCycles);
+    for (int i = 0; i < benchmarkCycles; i++) {
+      sum += PVC.visit(swap, curves);
+    }
+    timer.finished();
+    timer = new OperationTimer(logger, "processing {} cycles of 120 primitive discount factors", benchmarkCycles);
+    for (int i = 0; i < benchmarkCycles; i++) {
+      for (final double t : times) {
+        sum += fundingCurve.getDiscountFactor(t);
+      }
+    }
+    timer.finished();
+    timer = new OperationTimer(logger, "processing {} cycles of 120 boxed discount factors", benchmarkCycles);
+    for (int i = 0; i < benchmarkCycles; i++) {
+      for (final double t : times) {
+        sum += fundingCurve.getDiscountFactor(Double.valueOf(t));
+      }
+    }
+    timer.finished();
+    timer = new OperationTimer(logger, "processing {} cycles of 120 batched discount factors", benchmarkCycles);
+    for (int i = 0; i < benchmarkCycles; i++) {
+      fundingCurve.getDiscountFactors(times, df);
+      sum += df[0];
+    }
+    timer.finished();
+    logger.info("check sum {}", sum);
+  }
+
 }
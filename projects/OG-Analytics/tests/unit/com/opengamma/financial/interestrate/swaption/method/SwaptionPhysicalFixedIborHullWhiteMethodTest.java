@@ -49,6 +49,7 @@ import com.opengamma.financial.model.interestrate.definition.HullWhiteOneFactorP
 import com.opengamma.financial.model.option.pricing.analytic.formula.BlackFunctionData;
 import com.opengamma.financial.model.volatility.BlackImpliedVolatilityFormula;
 import com.opengamma.financial.montecarlo.HullWhiteMonteCarloMethod;
+import com.opengamma.financial.montecarlo.MonteCarloBlockEngine;
 import com.opengamma.financial.schedule.ScheduleCalculator;
 import com.opengamma.math.random.NormalRandomNumberGenerator;
 import com.opengamma.math.statistics.distribution.NormalDistribution;
@@ -249,6 +250,38 @@ public class SwaptionPhysicalFixedIborHullWhiteMethodTest {
     assertEquals("Swaption physical - Hull-White - Monte Carlo - payer/receiver/swap parity", pvReceiverLongMC.getAmount() + pvPayerShortMC.getAmount(), pvSwap, 1.0E+5);
   }
 
+  @Test
+  /**
+   * Compare explicit formula with Monte-Carlo run in concurrent blocks. The price does not depend on the number of threads.
+   */
+  public void presentValueMonteCarloBlockEngine() {
+    int nbPath = 12500;
+    HullWhiteMonteCarloMethod methodMC1 = new HullWhiteMonteCarloMethod(new MonteCarloBlockEngine(12345L, 1000, 1), nbPath);
+    HullWhiteMonteCarloMethod methodMC4 = new HullWhiteMonteCarloMethod(new MonteCarloBlockEngine(12345L, 1000, 4), nbPath);
+    CurrencyAmount pvPayerLongExplicit = METHOD_HW.presentValue(SWAPTION_PAYER_LONG, BUNDLE_HW);
+    CurrencyAmount pvPayerLongMC1 = methodMC1.presentValue(SWAPTION_PAYER_LONG, CUR, FUNDING_CURVE_NAME, BUNDLE_HW);
+    CurrencyAmount pvPayerLongMC4 = methodMC4.presentValue(SWAPTION_PAYER_LONG, CUR, FUNDING_CURVE_NAME, BUNDLE_HW);
+    assertEquals("Swaption physical - Hull-White - Monte Carlo blocks", pvPayerLongExplicit.getAmount(), pvPayerLongMC4.getAmount(), 1.0E+4);
+    assertEquals("Swaption physical - Hull-White - Monte Carlo blocks - threads", pvPayerLongMC1.getAmount(), pvPayerLongMC4.getAmount(), 0.0);
+    CurrencyAmount pvPayerShortMC4 = methodMC4.presentValue(SWAPTION_PAYER_SHORT, CUR, FUNDING_CURVE_NAME, BUNDLE_HW);
+    assertEquals("Swaption physical - Hull-White - Monte Carlo blocks", -pvPayerLongMC4.getAmount(), pvPayerShortMC4.getAmount(), 1.0E-2);
+  }
+
+  @Test
+  /**
+   * Compare explicit formula with quasi-random Monte-Carlo, with fewer paths than the pseudo-random Monte-Carlo.
+   */
+  public void presentValueMonteCarloQuasiRandom() {
+    int nbPath = 4096;
+    HullWhiteMonteCarloMethod methodMC1 = new HullWhiteMonteCarloMethod(new MonteCarloBlockEngine(12345L, 1000, 1, true), nbPath);
+    HullWhiteMonteCarloMethod methodMC4 = new HullWhiteMonteCarloMethod(new MonteCarloBlockEngine(12345L, 1000, 4, true), nbPath);
+    CurrencyAmount pvPayerLongExplicit = METHOD_HW.presentValue(SWAPTION_PAYER_LONG, BUNDLE_HW);
+    CurrencyAmount pvPayerLongMC1 = methodMC1.presentValue(SWAPTION_PAYER_LONG, CUR, FUNDING_CURVE_NAME, BUNDLE_HW);
+    CurrencyAmount pvPayerLongMC4 = methodMC4.presentValue(SWAPTION_PAYER_LONG, CUR, FUNDING_CURVE_NAME, BUNDLE_HW);
+    assertEquals("Swaption physical - Hull-White - Monte Carlo quasi-random", pvPayerLongExplicit.getAmount(), pvPayerLongMC4.getAmount(), 1.0E+4);
+    assertEquals("Swaption physical - Hull-White - Monte Carlo quasi-random - threads", pvPayerLongMC1.getAmount(), pvPayerLongMC4.getAmount(), 0.0);
+  }
+
   @Test
   /**
    * Tests the Hull-White parameters sensitivity for the explicit formula.
@@ -346,6 +379,33 @@ public class SwaptionPhysicalFixedIborHullWhiteMethodTest {
     }
   }
 
+  @Test
+  /**
+   * Tests the curve sensitivity in Monte Carlo approach for a method built with a block engine. The sensitivity does not depend on the number of threads.
+   */
+  public void presentValueCurveSensitivityMonteCarloBlockEngine() {
+    double toleranceDelta = 1000000.0; // 100 USD by bp
+    InterestRateCurveSensitivity pvcsExplicit = METHOD_HW.presentValueCurveSensitivity(SWAPTION_PAYER_LONG, BUNDLE_HW);
+    int nbPath = 30000;
+    HullWhiteMonteCarloMethod methodMC1 = new HullWhiteMonteCarloMethod(new MonteCarloBlockEngine(12345L, 1000, 1), nbPath);
+    HullWhiteMonteCarloMethod methodMC4 = new HullWhiteMonteCarloMethod(new MonteCarloBlockEngine(12345L, 1000, 4), nbPath);
+    InterestRateCurveSensitivity pvcsMC1 = methodMC1.presentValueCurveSensitivity(SWAPTION_PAYER_LONG, FUNDING_CURVE_NAME, BUNDLE_HW);
+    InterestRateCurveSensitivity pvcsMC4 = methodMC4.presentValueCurveSensitivity(SWAPTION_PAYER_LONG, FUNDING_CURVE_NAME, BUNDLE_HW);
+    InterestRateCurveSensitivity diff = pvcsExplicit.clean().add(pvcsMC4.clean().multiply(-1)).clean();
+    for (String curveName : new String[] {FUNDING_CURVE_NAME, FORWARD_CURVE_NAME}) {
+      final List<DoublesPair> sensi = diff.getSensitivities().get(curveName);
+      for (int loopnode = 0; loopnode < sensi.size(); loopnode++) {
+        assertEquals("Sensitivity MC blocks: node sensitivity (curve: " + curveName + ", node: " + loopnode + ")", 0.0, sensi.get(loopnode).second, toleranceDelta);
+      }
+      final List<DoublesPair> sensi1 = pvcsMC1.clean().getSensitivities().get(curveName);
+      final List<DoublesPair> sensi4 = pvcsMC4.clean().getSensitivities().get(curveName);
+      assertEquals("Sensitivity MC blocks - threads", sensi1.size(), sensi4.size());
+      for (int loopnode = 0; loopnode < sensi1.size(); loopnode++) {
+        assertEquals("Sensitivity MC blocks - threads", sensi1.get(loopnode).second, sensi4.get(loopnode).second, 0.0);
+      }
+    }
+  }
+
   @Test(enabled = false)
   /**
    * Tests of performance. "enabled = false" for the standard testing.
@@ -413,6 +473,52 @@ public class SwaptionPhysicalFixedIborHullWhiteMethodTest {
     System.out.println("HW sensitivity: " + pvhws.toString());
   }
 
+  @Test(enabled = false)
+  /**
+   * Tests of performance. "enabled = false" for the standard testing.
+   * Scaling of the Monte Carlo price run in concurrent blocks with the number of threads.
+   */
+  public void performanceMonteCarloBlockEngine() {
+    long startTime, endTime;
+    final int nbTest = 10;
+    final int nbPath = 100000;
+    CurrencyAmount pvMC = CurrencyAmount.of(CUR, 0.0);
+    final int nbProcessor = Runtime.getRuntime().availableProcessors();
+    for (int nbThread = 1; nbThread <= nbProcessor; nbThread *= 2) {
+      HullWhiteMonteCarloMethod methodMC = new HullWhiteMonteCarloMethod(new MonteCarloBlockEngine(12345L, MonteCarloBlockEngine.DEFAULT_BLOCK_SIZE, nbThread), nbPath);
+      pvMC = methodMC.presentValue(SWAPTION_PAYER_LONG, CUR, FUNDING_CURVE_NAME, BUNDLE_HW); // Warm up
+      startTime = System.currentTimeMillis();
+      for (int looptest = 0; looptest < nbTest; looptest++) {
+        pvMC = methodMC.presentValue(SWAPTION_PAYER_LONG, CUR, FUNDING_CURVE_NAME, BUNDLE_HW);
+      }
+      endTime = System.currentTimeMillis();
+      System.out.println(nbTest + " swaption Hull-White Monte Carlo method (" + nbPath + " paths, " + nbThread + " threads): " + (endTime - startTime) + " ms / price:" + pvMC.toString());
+    }
+  }
+
+  @Test(enabled = false)
+  /**
+   * Tests of convergence. "enabled = false" for the standard testing.
+   * Root mean square error of the Monte Carlo price with respect to the explicit formula, over independent seeds, for pseudo-random and quasi-random
+   * (scrambled Sobol) numbers.
+   */
+  public void convergenceMonteCarloQuasiRandom() {
+    final int nbSeed = 20;
+    final double pvExplicit = METHOD_HW.presentValue(SWAPTION_PAYER_LONG, BUNDLE_HW).getAmount();
+    for (int nbPath = 1000; nbPath <= 64000; nbPath *= 4) {
+      for (boolean quasiRandom : new boolean[] {false, true }) {
+        double sumSquare = 0.0;
+        for (int loopseed = 0; loopseed < nbSeed; loopseed++) {
+          HullWhiteMonteCarloMethod methodMC = new HullWhiteMonteCarloMethod(new MonteCarloBlockEngine(loopseed, MonteCarloBlockEngine.DEFAULT_BLOCK_SIZE, 1, quasiRandom), nbPath);
+          double error = methodMC.presentValue(SWAPTION_PAYER_LONG, CUR, FUNDING_CURVE_NAME, BUNDLE_HW).getAmount() - pvExplicit;
+          sumSquare += error * error;
+        }
+        System.out.println("Swaption Hull-White Monte Carlo method (" + nbPath + " paths, " + (quasiRandom ? "quasi-random" : "pseudo-random") + "): RMS error "
+            + Math.sqrt(sumSquare / nbSeed));
+      }
+    }
+  }
+
   @Test(enabled = false)
   /**
    * Tests of performance. "enabled = false" for the standard testing.
@@ -5,10 +5,21 @@
  */
 package com.opengamma.financial.model.finitedifference;
 
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
+import com.opengamma.financial.model.finitedifference.applications.PDEDataBundleProvider;
+import com.opengamma.math.function.Function;
+import com.opengamma.math.function.Function1D;
+import com.opengamma.math.surface.FunctionalDoublesSurface;
+import com.opengamma.math.surface.Surface;
 import com.opengamma.util.monitor.OperationTimer;
 
 /**
@@ -18,6 +29,26 @@ public class ThetaMethodFiniteDifferenceTest {
 
   private static final ConvectionDiffusionPDESolverTestCase TESTER = new ConvectionDiffusionPDESolverTestCase();
   private static final ThetaMethodFiniteDifference SOLVER = new ThetaMethodFiniteDifference(0.5, false);
+  private static final ThetaMethodFiniteDifference SOR_SOLVER = new ThetaMethodFiniteDifference(0.5, false, true);
+  private static final ThetaMethodFiniteDifference FULL_SOLVER = new ThetaMethodFiniteDifference(0.5, true);
+
+  private static final double STRIKE = 100;
+  private static final double RATE = 0.05;
+  private static final double T = 5.0;
+  private static final ConvectionDiffusionPDEDataBundle PUT_DATA = new PDEDataBundleProvider().getBackwardsBlackScholes(0.2, RATE, STRIKE, false);
+  private static final BoundaryCondition PUT_LOWER = new DirichletBoundaryCondition(new Function1D<Double, Double>() {
+    @Override
+    public Double evaluate(final Double tau) {
+      return STRIKE * Math.exp(-RATE * tau);
+    }
+  }, 0.0);
+  private static final BoundaryCondition PUT_UPPER = new NeumannBoundaryCondition(0.0, 5.0 * STRIKE, false);
+  private static final Surface<Double, Double, Double> PUT_PAYOFF = FunctionalDoublesSurface.from(new Function<Double, Double>() {
+    @Override
+    public Double evaluate(final Double... ts) {
+      return Math.max(0, STRIKE - ts[1]);
+    }
+  });
 
   @Test
   public void testBlackScholesEquation1() {
@@ -115,4 +146,138 @@ public class ThetaMethodFiniteDifferenceTest {
     TESTER.testAmericanPrice(SOLVER, timeSteps, priceSteps, lowerMoneyness, upperMoneyness, priceTol, print);
   }
 
+  /**
+   * The direct solution (Thomas algorithm, or Brennan-Schwartz for the American option) agrees with the iterative SOR solution to within the SOR tolerance
+   */
+  @Test
+  public void testDirectSolverAgainstSOR() {
+    final int timeSteps = 20;
+    final int priceSteps = 100;
+    for (final boolean isAmerican : new boolean[] {false, true }) {
+      final Surface<Double, Double, Double> freeBoundary = isAmerican ? PUT_PAYOFF : null;
+      final PDEResults1D direct = SOLVER.solve(PUT_DATA, timeSteps, priceSteps, T, PUT_LOWER, PUT_UPPER, freeBoundary);
+      final PDEResults1D sor = SOR_SOLVER.solve(PUT_DATA, timeSteps, priceSteps, T, PUT_LOWER, PUT_UPPER, freeBoundary);
+      for (int i = 0; i <= priceSteps; i++) {
+        assertEquals(sor.getFunctionValue(i), direct.getFunctionValue(i), 1e-4);
+        if (isAmerican) {
+          assertTrue(direct.getFunctionValue(i) >= PUT_PAYOFF.getZValue(T, direct.getSpaceValue(i)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Compares the direct solution with SOR on an American put. "enabled = false" for the standard testing.
+   */
+  @Test(enabled = false)
+  public void performanceDirectSolverAgainstSOR() {
+    final Logger logger = LoggerFactory.getLogger(ThetaMethodFiniteDifferenceTest.class);
+    final int benchmarkCycles = 5;
+    for (final int nodes : new int[] {100, 400, 1000 }) {
+      for (final ThetaMethodFiniteDifference solver : new ThetaMethodFiniteDifference[] {SOLVER, SOR_SOLVER }) {
+        solver.solve(PUT_DATA, nodes, nodes, T, PUT_LOWER, PUT_UPPER, PUT_PAYOFF);
+        final OperationTimer timer = new OperationTimer(logger, "processing {} cycles on " + nodes + "x" + nodes + " grid " + (solver == SOLVER ? "direct" : "SOR"),
+            benchmarkCycles);
+        for (int i = 0; i < benchmarkCycles; i++) {
+          solver.solve(PUT_DATA, nodes, nodes, T, PUT_LOWER, PUT_UPPER, PUT_PAYOFF);
+        }
+        timer.finished();
+      }
+    }
+  }
+
+  /**
+   * Puts of many strikes solved together give the same prices as solving one at a time
+   */
+  @Test
+  public void testBatchSolve() {
+    final double[] strikes = new double[] {60, 80, 100, 120, 150 };
+    final PDEGrid1D grid = new PDEGrid1D(21, 101, T, 0.0, 5.0 * STRIKE);
+    for (final ThetaMethodFiniteDifference solver : new ThetaMethodFiniteDifference[] {SOLVER, FULL_SOLVER }) {
+      final PDEResults1D[] batch = solveBatch(solver, strikes, grid);
+      assertEquals(strikes.length, batch.length);
+      for (int k = 0; k < strikes.length; k++) {
+        final PDEResults1D single = solver.solve(new PDEDataBundleProvider().getBackwardsBlackScholes(0.2, RATE, strikes[k], false), grid, getPutLower(strikes[k]), PUT_UPPER);
+        for (int i = 0; i < grid.getNumSpaceNodes(); i++) {
+          assertEquals(single.getFunctionValue(i), batch[k].getFunctionValue(i), 1e-12);
+        }
+        if (solver == FULL_SOLVER) {
+          final PDEFullResults1D full = (PDEFullResults1D) batch[k];
+          final PDEFullResults1D singleFull = (PDEFullResults1D) single;
+          for (int i = 0; i < grid.getNumSpaceNodes(); i++) {
+            assertEquals(singleFull.getFunctionValue(i, 10), full.getFunctionValue(i, 10), 1e-12);
+          }
+        }
+      }
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBatchBoundaryTypes() {
+    final List<Function1D<Double, Double>> payoffs = new ArrayList<Function1D<Double, Double>>();
+    payoffs.add(getPutPayoff(90));
+    payoffs.add(getPutPayoff(110));
+    final PDEGrid1D grid = new PDEGrid1D(21, 101, T, 0.0, 5.0 * STRIKE);
+    SOLVER.solve(PUT_DATA, payoffs, grid, new BoundaryCondition[] {getPutLower(90), new NeumannBoundaryCondition(-1.0, 0.0, true) }, new BoundaryCondition[] {PUT_UPPER,
+        PUT_UPPER });
+  }
+
+  /**
+   * Compares solving the puts of many strikes together with solving them one at a time. "enabled = false" for the standard testing.
+   */
+  @Test(enabled = false)
+  public void performanceBatchSolve() {
+    final Logger logger = LoggerFactory.getLogger(ThetaMethodFiniteDifferenceTest.class);
+    final int benchmarkCycles = 5;
+    final double[] strikes = new double[50];
+    for (int k = 0; k < strikes.length; k++) {
+      strikes[k] = 50 + 2 * k;
+    }
+    final PDEGrid1D grid = new PDEGrid1D(201, 401, T, 0.0, 5.0 * STRIKE);
+    solveBatch(SOLVER, strikes, grid);
+    OperationTimer timer = new OperationTimer(logger, "processing {} cycles of " + strikes.length + " strikes as a batch", benchmarkCycles);
+    for (int i = 0; i < benchmarkCycles; i++) {
+      solveBatch(SOLVER, strikes, grid);
+    }
+    timer.finished();
+    timer = new OperationTimer(logger, "processing {} cycles of " + strikes.length + " strikes one at a time", benchmarkCycles);
+    for (int i = 0; i < benchmarkCycles; i++) {
+      for (final double strike : strikes) {
+        SOLVER.solve(new PDEDataBundleProvider().getBackwardsBlackScholes(0.2, RATE, strike, false), grid, getPutLower(strike), PUT_UPPER);
+      }
+    }
+    timer.finished();
+  }
+
+  private static PDEResults1D[] solveBatch(final ThetaMethodFiniteDifference solver, final double[] strikes, final PDEGrid1D grid) {
+    final int n = strikes.length;
+    final List<Function1D<Double, Double>> payoffs = new ArrayList<Function1D<Double, Double>>(n);
+    final BoundaryCondition[] lower = new BoundaryCondition[n];
+    final BoundaryCondition[] upper = new BoundaryCondition[n];
+    for (int k = 0; k < n; k++) {
+      payoffs.add(getPutPayoff(strikes[k]));
+      lower[k] = getPutLower(strikes[k]);
+      upper[k] = PUT_UPPER;
+    }
+    return solver.solve(PUT_DATA, payoffs, grid, lower, upper);
+  }
+
+  private static Function1D<Double, Double> getPutPayoff(final double strike) {
+    return new Function1D<Double, Double>() {
+      @Override
+      public Double evaluate(final Double x) {
+        return Math.max(0, strike - x);
+      }
+    };
+  }
+
+  private static BoundaryCondition getPutLower(final double strike) {
+    return new DirichletBoundaryCondition(new Function1D<Double, Double>() {
+      @Override
+      public Double evaluate(final Double tau) {
+        return strike * Math.exp(-RATE * tau);
+      }
+    }, 0.0);
+  }
+
 }
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.financial.model.finitedifference;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.math.MathException;
+import com.opengamma.math.linearalgebra.DecompositionResult;
+import com.opengamma.math.linearalgebra.LUDecompositionCommons;
+import com.opengamma.math.matrix.DoubleMatrix2D;
+
+/**
+ *
+ */
+public class TridiagonalSystemTest {
+  private static final int N = 20;
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNotTridiagonal() {
+    new TridiagonalSystem(N).set(1, 3, 1.0);
+  }
+
+  @Test(expectedExceptions = MathException.class)
+  public void testNotReducible() {
+    final TridiagonalSystem system = new TridiagonalSystem(N);
+    for (int i = 0; i < N; i++) {
+      system.set(i, i, 1.0);
+    }
+    system.set(0, 2, 1.0);
+    assertFalse(system.isTridiagonal());
+    system.solve(new double[N], new double[N]);
+  }
+
+  /**
+   * Three point boundary conditions at both ends, compared with a dense LU decomposition
+   */
+  @Test
+  public void testBoundaryRows() {
+    final TridiagonalSystem system = new TridiagonalSystem(N);
+    final double[][] dense = new double[N][N];
+    final double[] rhs = new double[N];
+    for (int i = 1; i < N - 1; i++) {
+      set(system, dense, i, i - 1, -0.3 - 0.01 * i);
+      set(system, dense, i, i, 1.7);
+      set(system, dense, i, i + 1, -0.4 + 0.02 * i);
+      rhs[i] = Math.cos(0.2 * i);
+    }
+    // one sided first derivative at the lower boundary, second derivative at the upper boundary
+    set(system, dense, 0, 0, -1.5);
+    set(system, dense, 0, 1, 2.0);
+    set(system, dense, 0, 2, -0.5);
+    set(system, dense, N - 1, N - 1, 1.0);
+    set(system, dense, N - 1, N - 2, -2.0);
+    set(system, dense, N - 1, N - 3, 1.0);
+    rhs[0] = 0.1;
+    rhs[N - 1] = 0.2;
+    assertTrue(system.isTridiagonal());
+
+    final double[] rhsCopy = rhs.clone();
+    final double[] x = new double[N];
+    system.solve(rhs, x);
+    final DecompositionResult lu = new LUDecompositionCommons().evaluate(new DoubleMatrix2D(dense));
+    final double[] expected = lu.solve(rhs);
+    for (int i = 0; i < N; i++) {
+      assertEquals(expected[i], x[i], 1e-12);
+      // the system and the right hand side are unchanged so they can be reused
+      assertEquals(rhsCopy[i], rhs[i], 0.0);
+      for (int j = 0; j < N; j++) {
+        assertEquals(dense[i][j], system.get(i, j), 0.0);
+      }
+    }
+  }
+
+  /**
+   * An implicit step of the heat equation with the payoff of a put as the lower bound, compared with projected SOR
+   */
+  @Test
+  public void testMonotoneLowerBound() {
+    final TridiagonalSystem system = heatEquationStep();
+    final double[] rhs = new double[N];
+    final double[] bound = new double[N];
+    for (int i = 0; i < N; i++) {
+      bound[i] = Math.max(10.0 - i, 0.0);
+      rhs[i] = bound[i] + 0.5 * Math.exp(-0.1 * (i - 12) * (i - 12));
+    }
+    final double[] x = new double[N];
+    assertTrue(system.solve(rhs, bound, x));
+    final double[] expected = solveByPSOR(system, rhs, bound);
+    for (int i = 0; i < N; i++) {
+      assertEquals(expected[i], x[i], 1e-10);
+    }
+  }
+
+  /**
+   * The payoff of a straddle can bind at both ends of the grid, so the Brennan-Schwartz algorithm is not attempted
+   */
+  @Test
+  public void testNonMonotoneLowerBound() {
+    final TridiagonalSystem system = heatEquationStep();
+    final double[] rhs = new double[N];
+    final double[] bound = new double[N];
+    for (int i = 0; i < N; i++) {
+      bound[i] = Math.abs(i - 10.0);
+      rhs[i] = bound[i] + 0.5;
+    }
+    final double[] x = new double[N];
+    assertFalse(system.solve(rhs, bound, x));
+    for (int i = 0; i < N; i++) {
+      assertEquals(0.0, x[i], 0.0);
+    }
+  }
+
+  /**
+   * A monotone bound which binds at an interior point only, so the solution of the Brennan-Schwartz algorithm is rejected
+   */
+  @Test
+  public void testLowerBoundActiveInInterior() {
+    final TridiagonalSystem system = heatEquationStep();
+    final double[] rhs = new double[N];
+    final double[] bound = new double[N];
+    for (int i = 0; i < N; i++) {
+      bound[i] = i < 10 ? 0.0 : 1.0;
+      rhs[i] = 2.0;
+    }
+    rhs[10] = -5.0;
+    rhs[N - 1] = 5.0;
+    final double[] x = new double[N];
+    assertFalse(system.solve(rhs, bound, x));
+    // the bound binds at an interior point only, and nowhere near the end of the grid
+    final double[] expected = solveByPSOR(system, rhs, bound);
+    assertEquals(bound[10], expected[10], 0.0);
+    assertTrue(expected[N - 2] > bound[N - 2]);
+  }
+
+  /**
+   * Dirichlet boundary rows and the interior rows of a fully implicit step of the heat equation, an M-matrix.
+   */
+  private static TridiagonalSystem heatEquationStep() {
+    final TridiagonalSystem system = new TridiagonalSystem(N);
+    system.set(0, 0, 1.0);
+    system.set(N - 1, N - 1, 1.0);
+    for (int i = 1; i < N - 1; i++) {
+      system.set(i, i - 1, -0.5);
+      system.set(i, i, 2.0);
+      system.set(i, i + 1, -0.5);
+    }
+    return system;
+  }
+
+  private static double[] solveByPSOR(final TridiagonalSystem system, final double[] rhs, final double[] bound) {
+    final double[] x = bound.clone();
+    double change;
+    do {
+      change = 0.0;
+      for (int i = 0; i < N; i++) {
+        double sum = rhs[i];
+        for (int j = Math.max(0, i - 1); j <= Math.min(N - 1, i + 1); j++) {
+          if (j != i) {
+            sum -= system.get(i, j) * x[j];
+          }
+        }
+        final double value = Math.max(sum / system.get(i, i), bound[i]);
+        change = Math.max(change, Math.abs(value - x[i]));
+        x[i] = value;
+      }
+    } while (change > 1e-14);
+    return x;
+  }
+
+  private static void set(final TridiagonalSystem system, final double[][] dense, final int i, final int j, final double value) {
+    system.set(i, j, value);
+    dense[i][j] = value;
+  }
+
+}
@@ -53,6 +53,24 @@ public class YieldAndDiscountCurveTest {
     assertEquals(DISCOUNT.getDiscountFactor(1.5), DF.getYValue(1.5), 1e-15);
   }
 
+  @Test
+  public void testPrimitiveGetters() {
+    final double[] t = new double[] {1, 1.4, 2, 2.5, 3, 1.2 };
+    final double[] yieldDF = new double[t.length];
+    final double[] discountDF = new double[t.length];
+    YIELD.getDiscountFactors(t, yieldDF);
+    DISCOUNT.getDiscountFactors(t, discountDF);
+    for (int i = 0; i < t.length; i++) {
+      final Double boxed = t[i];
+      assertEquals(YIELD.getInterestRate(boxed), YIELD.getInterestRate(t[i]), 0);
+      assertEquals(YIELD.getDiscountFactor(boxed), YIELD.getDiscountFactor(t[i]), 0);
+      assertEquals(YIELD.getDiscountFactor(boxed), yieldDF[i], 0);
+      assertEquals(DISCOUNT.getInterestRate(boxed), DISCOUNT.getInterestRate(t[i]), 0);
+      assertEquals(DISCOUNT.getDiscountFactor(boxed), DISCOUNT.getDiscountFactor(t[i]), 0);
+      assertEquals(DISCOUNT.getDiscountFactor(boxed), discountDF[i], 0);
+    }
+  }
+
   @Test
   public void testShift() {
     final InterpolatedCurveShiftFunction f = new InterpolatedCurveShiftFunction();
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.financial.montecarlo;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.math.random.SobolSequenceGenerator;
+
+/**
+ * Tests related to the Monte Carlo block engine.
+ */
+public class MonteCarloBlockEngineTest {
+
+  private static final int NB_PATH = 100500;
+  /**
+   * Sum of the squares of the normal variables, summed over the dimensions: the mean is the dimension.
+   */
+  private static MonteCarloBlockEngine.Simulation square(final MonteCarloBlockEngine engine, final int dimension) {
+    return new MonteCarloBlockEngine.Simulation() {
+      @Override
+      public MonteCarloBlockEngine.BlockEvaluator createEvaluator(final int blockSize) {
+        final double[][] x = new double[dimension][blockSize];
+        return new MonteCarloBlockEngine.BlockEvaluator() {
+          @Override
+          public double evaluate(int block, int nbPath) {
+            engine.getPathNumberGenerator(dimension, block).fillPaths(x, nbPath);
+            double sum = 0.0;
+            for (int loopdim = 0; loopdim < dimension; loopdim++) {
+              for (int looppath = 0; looppath < nbPath; looppath++) {
+                sum += x[loopdim][looppath] * x[loopdim][looppath];
+              }
+            }
+            return sum;
+          }
+        };
+      }
+    };
+  }
+
+  private static double sum(final MonteCarloBlockEngine engine, final int dimension) {
+    return engine.sum(NB_PATH, square(engine, dimension));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBlockSize() {
+    new MonteCarloBlockEngine(0L, 0, 1);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNbThread() {
+    new MonteCarloBlockEngine(0L, 1000, 0);
+  }
+
+  @Test
+  /**
+   * Tests the division of the paths in blocks.
+   */
+  public void blocks() {
+    MonteCarloBlockEngine engine = new MonteCarloBlockEngine(0L, 1000, 1);
+    assertEquals(101, engine.getNbBlock(NB_PATH));
+    assertEquals(1000, engine.getNbPath(NB_PATH, 0));
+    assertEquals(500, engine.getNbPath(NB_PATH, 100));
+    assertEquals(1, engine.getNbBlock(1000));
+  }
+
+  @Test
+  /**
+   * Tests that the sum does not depend on the number of threads.
+   */
+  public void reproducible() {
+    final double sum1 = sum(new MonteCarloBlockEngine(42L, 1000, 1), 1);
+    for (int nbThread = 2; nbThread <= 8; nbThread *= 2) {
+      assertEquals("Monte Carlo block engine - threads: " + nbThread, sum1, sum(new MonteCarloBlockEngine(42L, 1000, nbThread), 1), 0.0);
+    }
+    assertEquals("Monte Carlo block engine - mean", 1.0, sum1 / NB_PATH, 1.0E-2);
+  }
+
+  @Test
+  /**
+   * Tests that the quasi-random sum does not depend on the number of threads or the block size, as the blocks are parts of the same sequence.
+   */
+  public void reproducibleQuasiRandom() {
+    final double sum1 = sum(new MonteCarloBlockEngine(42L, 1000, 1, true), 3);
+    assertEquals("Monte Carlo block engine - quasi-random - threads", sum1, sum(new MonteCarloBlockEngine(42L, 1000, 4, true), 3), 0.0);
+    assertEquals("Monte Carlo block engine - quasi-random - block size", sum1, sum(new MonteCarloBlockEngine(42L, 777, 4, true), 3), 1.0E-8 * sum1);
+    assertEquals("Monte Carlo block engine - quasi-random - mean", 3.0, sum1 / NB_PATH, 1.0E-3);
+    // Beyond the dimension of the Sobol sequence
+    final int dimension = SobolSequenceGenerator.MAX_DIMENSION + 2;
+    assertEquals("Monte Carlo block engine - quasi-random - padded", dimension, sum(new MonteCarloBlockEngine(42L, 1000, 4, true), dimension) / NB_PATH, 1.0E-1);
+  }
+
+  @Test
+  /**
+   * Tests the compensated summation against a sum which loses precision when added naively.
+   */
+  public void compensatedSum() {
+    final int nb = 1000000;
+    final double[] values = new double[nb + 1];
+    values[0] = 1.0;
+    for (int loop = 1; loop <= nb; loop++) {
+      values[loop] = 1.0E-16;
+    }
+    assertEquals("Compensated sum", 1.0 + nb * 1.0E-16, MonteCarloBlockEngine.compensatedSum(values), 1.0E-15);
+  }
+
+}
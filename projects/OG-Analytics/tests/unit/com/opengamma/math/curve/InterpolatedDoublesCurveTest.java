@@ -224,6 +224,18 @@ public class InterpolatedDoublesCurveTest extends DoublesCurveTestCase {
     }
   }
 
+  @Test
+  public void testGetYValues() {
+    final InterpolatedDoublesCurve curve = InterpolatedDoublesCurve.from(MAP, LINEAR, NAME1);
+    final double[] x = new double[] {0, 0.5, 2, 2.3, 7.1, 1.5, 8 };
+    final double[] y = new double[x.length];
+    curve.getYValues(x, y);
+    for (int i = 0; i < x.length; i++) {
+      assertEquals(curve.getYValue(Double.valueOf(x[i])), y[i], 0);
+      assertEquals(curve.getNodeSensitivities(x[i]).toArray(curve.size())[(int) Math.floor(x[i])], Math.floor(x[i]) + 1 - x[i], EPS);
+    }
+  }
+
   @Test
   public void testGetYValueManyInterpolators() {
     InterpolatedDoublesCurve curve = InterpolatedDoublesCurve.from(MAP, LINEAR, NAME1);
@@ -13,6 +13,7 @@ import org.testng.annotations.Test;
 
 import com.opengamma.math.function.Function1D;
 import com.opengamma.math.interpolation.data.ArrayInterpolator1DDataBundle;
+import com.opengamma.math.interpolation.data.InterpolationNodeSensitivities;
 import com.opengamma.math.interpolation.data.Interpolator1DDataBundle;
 
 /**
@@ -69,4 +70,39 @@ public class LinearInterpolator1DTest {
     }
     assertEquals(INTERPOLATOR.interpolate(INTERPOLATOR.getDataBundle(data), 3.4), FUNCTION.evaluate(3.4), 1e-15);
   }
+
+  @Test
+  public void testPrimitive() {
+    for (final double x : new double[] {1, 1.3, 2, 2.7, 3 }) {
+      final double boxed = INTERPOLATOR.interpolate(MODEL, Double.valueOf(x));
+      assertEquals(boxed, INTERPOLATOR.interpolate(MODEL, x), 0);
+    }
+  }
+
+  @Test
+  public void testMany() {
+    final double[] x = new double[] {1, 1.3, 2, 2.7, 3, 1.1, 2.5 };
+    final double[] y = new double[x.length];
+    INTERPOLATOR.interpolate(MODEL, x, y);
+    for (int i = 0; i < x.length; i++) {
+      assertEquals(INTERPOLATOR.interpolate(MODEL, x[i]), y[i], 0);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testManyHighValue() {
+    INTERPOLATOR.interpolate(MODEL, new double[] {1.5, 10 }, new double[2]);
+  }
+
+  @Test
+  public void testSparseSensitivities() {
+    for (final double x : new double[] {1, 1.3, 2, 2.7, 3 }) {
+      final double[] dense = INTERPOLATOR.getNodeSensitivitiesForValue(MODEL, x);
+      final InterpolationNodeSensitivities sparse = INTERPOLATOR.getSparseNodeSensitivitiesForValue(MODEL, x);
+      assertEquals(x == 3 ? 1 : 2, sparse.getWeights().length);
+      for (int i = 0; i < dense.length; i++) {
+        assertEquals(dense[i], sparse.getSensitivity(i), 0);
+      }
+    }
+  }
 }
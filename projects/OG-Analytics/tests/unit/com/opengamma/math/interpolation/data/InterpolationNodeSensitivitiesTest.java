@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.math.interpolation.data;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.internal.junit.ArrayAsserts.assertArrayEquals;
+
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class InterpolationNodeSensitivitiesTest {
+  private static final InterpolationNodeSensitivities SENSITIVITIES = new InterpolationNodeSensitivities(2, new double[] {0.25, 0.75 });
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNegativeStartIndex() {
+    new InterpolationNodeSensitivities(-1, new double[] {1 });
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNullWeights() {
+    new InterpolationNodeSensitivities(1, null);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testShortArray() {
+    SENSITIVITIES.addTo(1, new double[3]);
+  }
+
+  @Test
+  public void testGetters() {
+    assertEquals(SENSITIVITIES.getStartIndex(), 2);
+    assertArrayEquals(SENSITIVITIES.getWeights(), new double[] {0.25, 0.75 }, 0);
+    assertEquals(SENSITIVITIES.getSensitivity(1), 0, 0);
+    assertEquals(SENSITIVITIES.getSensitivity(2), 0.25, 0);
+    assertEquals(SENSITIVITIES.getSensitivity(3), 0.75, 0);
+    assertEquals(SENSITIVITIES.getSensitivity(4), 0, 0);
+  }
+
+  @Test
+  public void testDense() {
+    final double[] dense = new double[] {0, 0, 0.25, 0.75, 0 };
+    assertArrayEquals(SENSITIVITIES.toArray(5), dense, 0);
+    assertEquals(InterpolationNodeSensitivities.fromDense(dense), SENSITIVITIES);
+    final double[] result = new double[] {1, 1, 1, 1, 1 };
+    SENSITIVITIES.addTo(2, result);
+    assertArrayEquals(result, new double[] {1, 1, 1.5, 2.5, 1 }, 0);
+  }
+
+  @Test
+  public void testHashCodeAndEquals() {
+    InterpolationNodeSensitivities other = new InterpolationNodeSensitivities(2, new double[] {0.25, 0.75 });
+    assertEquals(other, SENSITIVITIES);
+    assertEquals(other.hashCode(), SENSITIVITIES.hashCode());
+    other = new InterpolationNodeSensitivities(1, new double[] {0.25, 0.75 });
+    assertFalse(other.equals(SENSITIVITIES));
+    other = new InterpolationNodeSensitivities(2, new double[] {0.75, 0.25 });
+    assertFalse(other.equals(SENSITIVITIES));
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.math.linearalgebra;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.math.MathException;
+
+/**
+ *
+ */
+public class TridiagonalSolverTest {
+  private static final int N = 50;
+  private static final double[] LOWER = new double[N];
+  private static final double[] DIAGONAL = new double[N];
+  private static final double[] UPPER = new double[N];
+  private static final double[] RHS = new double[N];
+  private static final double[] BOUND_RHS = new double[N];
+  private static final TridiagonalSolver SOLVER = new TridiagonalSolver(N);
+
+  static {
+    // diagonally dominant M-matrix, like an implicit finite difference step
+    for (int i = 0; i < N; i++) {
+      LOWER[i] = -0.5 - 0.01 * i;
+      UPPER[i] = -0.4 + 0.005 * i;
+      DIAGONAL[i] = 1.0 - LOWER[i] - UPPER[i];
+      RHS[i] = Math.sin(0.3 * i);
+      BOUND_RHS[i] = 0.05;
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testSize() {
+    new TridiagonalSolver(0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNullRHS() {
+    SOLVER.solve(LOWER, DIAGONAL, UPPER, null, new double[N]);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testShortRHS() {
+    SOLVER.solve(LOWER, DIAGONAL, UPPER, new double[N - 1], new double[N]);
+  }
+
+  @Test(expectedExceptions = MathException.class)
+  public void testZeroPivot() {
+    new TridiagonalSolver(2).solve(new double[] {0, 1 }, new double[] {0, 1 }, new double[] {1, 0 }, new double[] {1, 1 }, new double[2]);
+  }
+
+  @Test
+  public void testSolve() {
+    final double[] x = new double[N];
+    SOLVER.solve(LOWER, DIAGONAL, UPPER, RHS, x);
+    final double[] res = multiply(x);
+    for (int i = 0; i < N; i++) {
+      assertEquals(RHS[i], res[i], 1e-12);
+    }
+  }
+
+  @Test
+  public void testSolveInPlace() {
+    final double[] x = new double[N];
+    SOLVER.solve(LOWER, DIAGONAL, UPPER, RHS, x);
+    final double[] y = RHS.clone();
+    SOLVER.solve(LOWER, DIAGONAL, UPPER, y, y);
+    for (int i = 0; i < N; i++) {
+      assertEquals(x[i], y[i], 0.0);
+    }
+  }
+
+  @Test
+  public void testSolveMultiple() {
+    final double[][] rhs = new double[3][];
+    final double[][] x = new double[3][N];
+    for (int k = 0; k < 3; k++) {
+      rhs[k] = new double[N];
+      for (int i = 0; i < N; i++) {
+        rhs[k][i] = Math.sin(0.3 * i + k);
+      }
+    }
+    SOLVER.solve(LOWER, DIAGONAL, UPPER, rhs, x);
+    final double[] expected = new double[N];
+    for (int k = 0; k < 3; k++) {
+      SOLVER.solve(LOWER, DIAGONAL, UPPER, rhs[k], expected);
+      for (int i = 0; i < N; i++) {
+        assertEquals(expected[i], x[k][i], 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testTridiagonalMatrix() {
+    final double[] b = new double[N - 1];
+    final double[] c = new double[N - 1];
+    System.arraycopy(UPPER, 0, b, 0, N - 1);
+    System.arraycopy(LOWER, 1, c, 0, N - 1);
+    final double[][] inverse = new InverseTridiagonalMatrixCalculator().evaluate(new TridiagonalMatrix(DIAGONAL, b, c)).getData();
+    final double[] x = new double[N];
+    SOLVER.solve(LOWER, DIAGONAL, UPPER, RHS, x);
+    for (int i = 0; i < N; i++) {
+      double sum = 0;
+      for (int j = 0; j < N; j++) {
+        sum += inverse[i][j] * RHS[j];
+      }
+      assertEquals(sum, x[i], 1e-10);
+    }
+  }
+
+  /**
+   * The Brennan-Schwartz solution must satisfy the linear complementarity conditions, and agree with a projected SOR solution. The bound is only active
+   * at one end, as for an American option
+   */
+  @Test
+  public void testLowerBound() {
+    for (final boolean boundAtStart : new boolean[] {true, false }) {
+      final double[] bound = new double[N];
+      for (int i = 0; i < N; i++) {
+        final double k = boundAtStart ? 0.5 - 0.02 * i : 0.02 * i - 0.5;
+        bound[i] = Math.max(k, 0.0);
+      }
+      final double[] x = new double[N];
+      SOLVER.solve(LOWER, DIAGONAL, UPPER, BOUND_RHS, bound, boundAtStart, x);
+      final double[] res = multiply(x);
+      boolean active = false;
+      for (int i = 0; i < N; i++) {
+        assertTrue(x[i] >= bound[i]);
+        assertTrue(res[i] >= BOUND_RHS[i] - 1e-12);
+        assertEquals(0.0, (res[i] - BOUND_RHS[i]) * (x[i] - bound[i]), 1e-12);
+        active |= x[i] == bound[i];
+      }
+      assertTrue(active);
+
+      final double[] sor = projectedSOR(BOUND_RHS, bound);
+      for (int i = 0; i < N; i++) {
+        assertEquals(sor[i], x[i], 1e-9);
+      }
+    }
+  }
+
+  private static double[] multiply(final double[] x) {
+    final double[] res = new double[N];
+    for (int i = 0; i < N; i++) {
+      res[i] = DIAGONAL[i] * x[i];
+      if (i > 0) {
+        res[i] += LOWER[i] * x[i - 1];
+      }
+      if (i < N - 1) {
+        res[i] += UPPER[i] * x[i + 1];
+      }
+    }
+    return res;
+  }
+
+  private static double[] projectedSOR(final double[] rhs, final double[] bound) {
+    final double[] x = bound.clone();
+    double error = 1.0;
+    while (error > 1e-28) {
+      error = 0.0;
+      for (int i = 0; i < N; i++) {
+        double sum = rhs[i];
+        if (i > 0) {
+          sum -= LOWER[i] * x[i - 1];
+        }
+        if (i < N - 1) {
+          sum -= UPPER[i] * x[i + 1];
+        }
+        final double value = Math.max(sum / DIAGONAL[i], bound[i]);
+        error += (value - x[i]) * (value - x[i]);
+        x[i] = value;
+      }
+    }
+    return x;
+  }
+
+}
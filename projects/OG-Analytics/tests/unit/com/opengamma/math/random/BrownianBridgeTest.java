@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.math.random;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests related to the Brownian bridge.
+ */
+public class BrownianBridgeTest {
+
+  private static final double[] TIMES = {0.0, 0.0, 0.25, 0.5, 1.0, 1.0, 2.5, 3.0, 4.0, 7.0, 10.0 };
+  private static final BrownianBridge BRIDGE = new BrownianBridge(TIMES);
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testDecreasing() {
+    new BrownianBridge(new double[] {1.0, 0.5 });
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNegative() {
+    new BrownianBridge(new double[] {-1.0, 0.5 });
+  }
+
+  @Test
+  /**
+   * Tests that the paths have the covariance of a Brownian motion. The bridge is linear so the covariance is the sum of the products of the paths
+   * built from the unit vectors.
+   */
+  public void covariance() {
+    final int n = TIMES.length;
+    final double[][] paths = new double[n][];
+    for (int k = 0; k < n; k++) {
+      final double[] normals = new double[n];
+      normals[k] = 1.0;
+      paths[k] = new double[n];
+      BRIDGE.buildPath(normals, paths[k]);
+    }
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        double cov = 0.0;
+        for (int k = 0; k < n; k++) {
+          cov += paths[k][i] * paths[k][j];
+        }
+        assertEquals("Brownian bridge: covariance " + i + ", " + j, Math.min(TIMES[i], TIMES[j]), cov, 1.0E-12);
+      }
+    }
+  }
+
+  @Test
+  /**
+   * Tests that the first number drives the last value and that paths built by column are the same as the paths built one by one.
+   */
+  public void paths() {
+    final int n = TIMES.length;
+    final int nbPath = 10;
+    final NormalRandomNumberGenerator generator = new NormalRandomNumberGenerator(0.0, 1.0);
+    final double[][] normals = new double[n][nbPath];
+    generator.fillPaths(normals, nbPath);
+    final double[][] paths = new double[n][nbPath];
+    BRIDGE.buildPaths(normals, paths, nbPath);
+    final double[] z = new double[n];
+    final double[] path = new double[n];
+    for (int looppath = 0; looppath < nbPath; looppath++) {
+      for (int i = 0; i < n; i++) {
+        z[i] = normals[i][looppath];
+      }
+      BRIDGE.buildPath(z, path);
+      assertEquals("Brownian bridge: last value", Math.sqrt(TIMES[n - 1]) * z[0], path[n - 1], 1.0E-12);
+      for (int i = 0; i < n; i++) {
+        assertEquals("Brownian bridge: path " + looppath, path[i], paths[i][looppath], 1.0E-12);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.math.random;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests related to the Sobol sequence generator.
+ */
+public class SobolSequenceGeneratorTest {
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testDimension() {
+    new SobolSequenceGenerator(SobolSequenceGenerator.MAX_DIMENSION + 1);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testSkip() {
+    new SobolSequenceGenerator(2).skipTo(-1);
+  }
+
+  @Test
+  /**
+   * Tests the first points of the first dimensions against the known sequence (mid-points of the 2^-32 intervals).
+   */
+  public void firstPoints() {
+    final SobolSequenceGenerator generator = new SobolSequenceGenerator(3);
+    final double[][] expected = { {0.5, 0.5, 0.5 }, {0.75, 0.25, 0.25 }, {0.25, 0.75, 0.75 }, {0.375, 0.375, 0.625 }, {0.875, 0.875, 0.125 } };
+    final double half = 0.5 / (1L << 32);
+    for (final double[] point : expected) {
+      final double[] x = generator.nextVector();
+      for (int d = 0; d < 3; d++) {
+        assertEquals("Sobol sequence: point " + generator.getNextIndex(), point[d] + half, x[d], 1.0E-15);
+      }
+    }
+  }
+
+  @Test
+  /**
+   * Tests that the first 2^k points are stratified in each dimension, with exactly one point in each interval of length 2^-k.
+   */
+  public void stratification() {
+    final int k = 10;
+    final int n = 1 << k;
+    final int dimension = SobolSequenceGenerator.MAX_DIMENSION;
+    for (final SobolSequenceGenerator generator : new SobolSequenceGenerator[] {new SobolSequenceGenerator(dimension), new SobolSequenceGenerator(dimension, 123) }) {
+      generator.skipTo(0);
+      final int[][] count = new int[dimension][n];
+      final double[] point = new double[dimension];
+      for (int i = 0; i < n; i++) {
+        generator.nextVector(point);
+        for (int d = 0; d < dimension; d++) {
+          assertTrue(point[d] > 0 && point[d] < 1);
+          count[d][(int) (point[d] * n)]++;
+        }
+      }
+      for (int d = 0; d < dimension; d++) {
+        for (int i = 0; i < n; i++) {
+          assertEquals("Sobol sequence: dimension " + d + " interval " + i, 1, count[d][i]);
+        }
+      }
+    }
+  }
+
+  @Test
+  /**
+   * Tests that skipping to a point gives the same points as generating the points in between.
+   */
+  public void skipTo() {
+    final int dimension = 12;
+    final SobolSequenceGenerator sequential = new SobolSequenceGenerator(dimension, 7);
+    final SobolSequenceGenerator skipping = new SobolSequenceGenerator(dimension, 7);
+    final double[] point = new double[dimension];
+    for (int i = 1; i < 5000; i++) {
+      sequential.nextVector(point);
+    }
+    skipping.skipTo(5000);
+    for (int i = 0; i < 100; i++) {
+      final double[] expected = sequential.nextVector();
+      final double[] x = skipping.nextVector();
+      for (int d = 0; d < dimension; d++) {
+        assertEquals("Sobol sequence: skip", expected[d], x[d], 0.0);
+      }
+    }
+    assertEquals(5100, skipping.getNextIndex());
+  }
+
+}
@@ -17,6 +17,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.lang.ObjectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +26,7 @@ import com.opengamma.core.position.PortfolioNode;
 import com.opengamma.engine.ComputationTarget;
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.function.ParameterizedFunction;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.util.ArgumentChecker;
@@ -66,6 +68,9 @@ public class DependencyGraph {
   private final Set<Pair<ValueRequirement, ValueSpecification>> _allRequiredMarketData = new HashSet<Pair<ValueRequirement, ValueSpecification>>();
   private final Set<ComputationTarget> _allComputationTargets = new HashSet<ComputationTarget>();
 
+  /** Order independent combination of the node identifiers, maintained as nodes are added and removed. */
+  private long _fingerprint;
+
   /**
    * Creates a new, initially empty, dependency graph for the named configuration.
    * 
@@ -189,6 +194,29 @@ public class DependencyGraph {
     return _dependencyNodes.size();
   }
 
+  /**
+   * Returns a fingerprint of the node instances in the graph or sub-graph. Graphs containing the same
+   * nodes have the same fingerprint; graphs containing different nodes will, with very high probability,
+   * have different fingerprints. The fingerprint is maintained as nodes are added and removed so is
+   * cheaper to use than the node set for recognizing a graph that has been seen before.
+   * 
+   * @return the fingerprint
+   */
+  public long getFingerprint() {
+    return _fingerprint;
+  }
+
+  private static long fingerprint(final DependencyNode node) {
+    // 64-bit finalizer from MurmurHash3 to spread the sequential identifiers over the whole range
+    long h = node.getIdentifier();
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
   /**
    * Returns an immutable set of all nodes in the graph for the given target type. The
    * set is backed by the graph so structural changes to the graph will be reflected in the returned
@@ -294,6 +322,7 @@ public class DependencyGraph {
     if (!_dependencyNodes.add(node)) {
       throw new IllegalStateException("Node " + node + " already in the graph");
     }
+    _fingerprint += fingerprint(node);
     _outputSpecifications.addAll(node.getOutputValues());
     _terminalOutputValues.addAll(node.getTerminalOutputValues());
     Pair<ValueRequirement, ValueSpecification> marketData = node.getRequiredMarketData();
@@ -356,6 +385,7 @@ public class DependencyGraph {
     if (!_dependencyNodes.remove(node)) {
       return;
     }
+    _fingerprint -= fingerprint(node);
     _outputSpecifications.removeAll(node.getOutputValues());
     _terminalOutputValues.removeAll(node.getTerminalOutputValues());
     final Pair<ValueRequirement, ValueSpecification> marketData = node.getRequiredMarketData();
@@ -515,6 +545,149 @@ public class DependencyGraph {
     return subGraph;
   }
 
+  /**
+   * Gets the nodes which operate on any of a set of targets, together with every node which depends on them directly
+   * or indirectly.
+   * 
+   * @param targets  the target specifications, not null
+   * @return the nodes, not null
+   */
+  public Set<DependencyNode> getNodesDependingOnTargets(final Set<ComputationTargetSpecification> targets) {
+    ArgumentChecker.notNull(targets, "targets");
+    final Set<DependencyNode> nodes = new HashSet<DependencyNode>();
+    final LinkedList<DependencyNode> pending = new LinkedList<DependencyNode>();
+    for (DependencyNode node : _dependencyNodes) {
+      if (targets.contains(node.getComputationTarget().toSpecification()) && nodes.add(node)) {
+        pending.add(node);
+      }
+    }
+    while (!pending.isEmpty()) {
+      for (DependencyNode dependent : pending.removeFirst().getDependentNodes()) {
+        if (_dependencyNodes.contains(dependent) && nodes.add(dependent)) {
+          pending.add(dependent);
+        }
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Creates a new graph from this one with some nodes removed and those of another graph added. This graph and its
+   * nodes are not modified so it can remain in use while the new graph is created.
+   * <p>
+   * A node of the other graph which produces a value already produced by a retained node of this graph is merged with
+   * it, and one which consumes a value produced by a retained node is connected to it. Nodes and values of this graph
+   * which are no longer needed are pruned, as by {@link #removeUnnecessaryValues}.
+   * 
+   * @param removedNodes  the nodes to remove, not null; must include every node that depends on them, as from
+   *        {@link #getNodesDependingOnTargets}
+   * @param additions  the graph to add, not null
+   * @return the new graph, or null if a node of the other graph could not be merged with the one of this graph
+   *         producing the same value
+   */
+  public DependencyGraph splice(final Set<DependencyNode> removedNodes, final DependencyGraph additions) {
+    ArgumentChecker.notNull(removedNodes, "removedNodes");
+    ArgumentChecker.notNull(additions, "additions");
+    final Map<DependencyNode, DependencyNode> copies = new HashMap<DependencyNode, DependencyNode>();
+    for (DependencyNode node : _dependencyNodes) {
+      if (!removedNodes.contains(node)) {
+        copies.put(node, copyNode(node));
+      }
+    }
+    for (Map.Entry<DependencyNode, DependencyNode> copy : copies.entrySet()) {
+      for (DependencyNode inputNode : copy.getKey().getInputNodes()) {
+        final DependencyNode inputCopy = copies.get(inputNode);
+        if (inputCopy == null) {
+          throw new IllegalArgumentException("Node " + copy.getKey() + " depends on removed node " + inputNode);
+        }
+        copy.getValue().addInputNode(inputCopy);
+      }
+    }
+    for (DependencyNode node : additions.getDependencyNodes()) {
+      DependencyNode existing = null;
+      for (ValueSpecification output : node.getOutputValues()) {
+        final DependencyNode producer = _specification2DependencyNode.get(output);
+        final DependencyNode producerCopy = (producer != null) ? copies.get(producer) : null;
+        if (producerCopy != null) {
+          if ((existing != null) && (existing != producerCopy)) {
+            return null;
+          }
+          existing = producerCopy;
+        }
+      }
+      if (existing == null) {
+        copies.put(node, copyNode(node));
+      } else {
+        if (!isSameFunction(existing, node) || !existing.getInputValues().containsAll(node.getInputValues())) {
+          return null;
+        }
+        existing.addOutputValues(node.getOutputValues());
+        for (ValueSpecification terminalOutput : node.getTerminalOutputValues()) {
+          existing.addTerminalOutputValue(terminalOutput);
+        }
+        copies.put(node, existing);
+      }
+    }
+    for (DependencyNode node : additions.getDependencyNodes()) {
+      final DependencyNode copy = copies.get(node);
+      for (DependencyNode inputNode : node.getInputNodes()) {
+        final DependencyNode inputCopy = copies.get(inputNode);
+        if (!copy.getInputNodes().contains(inputCopy)) {
+          copy.addInputNode(inputCopy);
+        }
+      }
+      for (ValueSpecification inputValue : node.getInputValues()) {
+        copy.addInputValue(inputValue);
+        // Inputs resolved against this graph (see DependencyGraphBuilder#addExistingNodes) have no input node in the other
+        final DependencyNode producer = _specification2DependencyNode.get(inputValue);
+        final DependencyNode producerCopy = (producer != null) ? copies.get(producer) : null;
+        if ((producerCopy != null) && (producerCopy != copy) && !copy.getInputNodes().contains(producerCopy)) {
+          copy.addInputNode(producerCopy);
+        }
+      }
+    }
+    final Set<DependencyNode> nodes = new HashSet<DependencyNode>(copies.values());
+    final List<DependencyNode> unnecessaryNodes = new LinkedList<DependencyNode>();
+    do {
+      unnecessaryNodes.clear();
+      for (DependencyNode node : nodes) {
+        node.removeUnnecessaryOutputs();
+        if (node.getOutputValues().isEmpty()) {
+          unnecessaryNodes.add(node);
+        }
+      }
+      nodes.removeAll(unnecessaryNodes);
+      for (DependencyNode node : unnecessaryNodes) {
+        node.clearInputs();
+      }
+    } while (!unnecessaryNodes.isEmpty());
+    final DependencyGraph graph = new DependencyGraph(getCalculationConfigurationName());
+    for (DependencyNode node : nodes) {
+      graph.addDependencyNode(node);
+    }
+    return graph;
+  }
+
+  private static DependencyNode copyNode(final DependencyNode node) {
+    final DependencyNode copy = new DependencyNode(node.getComputationTarget());
+    copy.setFunction(node.getFunction());
+    copy.addOutputValues(node.getOutputValues());
+    for (ValueSpecification inputValue : node.getInputValues()) {
+      copy.addInputValue(inputValue);
+    }
+    for (ValueSpecification terminalOutput : node.getTerminalOutputValues()) {
+      copy.addTerminalOutputValue(terminalOutput);
+    }
+    return copy;
+  }
+
+  private static boolean isSameFunction(final DependencyNode node1, final DependencyNode node2) {
+    final ParameterizedFunction function1 = node1.getFunction();
+    final ParameterizedFunction function2 = node2.getFunction();
+    return ObjectUtils.equals(function1.getFunction().getFunctionDefinition().getUniqueId(), function2.getFunction().getFunctionDefinition().getUniqueId())
+        && ObjectUtils.equals(function1.getParameters(), function2.getParameters());
+  }
+
   @Override
   public String toString() {
     return "DependencyGraph[calcConf=" + getCalculationConfigurationName() + ",size=" + getSize() + "]";
@@ -9,7 +9,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -33,6 +35,7 @@ import org.slf4j.LoggerFactory;
 
 import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.engine.ComputationTargetResolver;
+import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.fudgemsg.DependencyGraphFudgeBuilder;
 import com.opengamma.engine.function.FunctionCompilationContext;
 import com.opengamma.engine.function.resolver.CompiledFunctionResolver;
@@ -357,6 +360,11 @@ public final class DependencyGraphBuilder {
 
         };
       }
+      final ResolvedValue existing = getExistingResolution(requirement);
+      if (existing != null) {
+        s_loggerResolver.debug("Using existing resolution {}", existing);
+        return new ExistingResolvedValueProducer(this, requirement, existing);
+      }
       RequirementResolver resolver = null;
       for (ResolveTask task : getTasksResolving(requirement)) {
         if ((dependent == null) || !dependent.hasParent(task)) {
@@ -376,6 +384,39 @@ public final class DependencyGraphBuilder {
       }
     }
 
+    private ResolvedValue getExistingResolution(final ValueRequirement requirement) {
+      final Collection<DependencyNode> nodes = _existingNodes.get(requirement.getTargetSpecification());
+      if (nodes != null) {
+        for (DependencyNode node : nodes) {
+          for (ValueSpecification output : node.getOutputValues()) {
+            if (requirement.isSatisfiedBy(output)) {
+              return new ResolvedValue(output, node.getFunction(), node.getComputationTarget(), node.getInputValues(), node.getOutputValues());
+            }
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Tests whether a value is produced by a node of an existing graph, as added by {@link DependencyGraphBuilder#addExistingNodes}.
+     * Such a value will not have a node in the graph being built.
+     * 
+     * @param valueSpecification the value, not null
+     * @return true if the value is produced by an existing node
+     */
+    public boolean isExistingValue(final ValueSpecification valueSpecification) {
+      final Collection<DependencyNode> nodes = _existingNodes.get(valueSpecification.getTargetSpecification());
+      if (nodes != null) {
+        for (DependencyNode node : nodes) {
+          if (node.getOutputValues().contains(valueSpecification)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
     private ResolveTask getOrCreateTaskResolving(final ValueRequirement valueRequirement, final ResolveTask parentTask) {
       ResolveTask newTask = new ResolveTask(valueRequirement, parentTask);
       ResolveTask task;
@@ -531,6 +572,7 @@ public final class DependencyGraphBuilder {
   private final Queue<ContextRunnable> _runQueue = new ConcurrentLinkedQueue<ContextRunnable>();
   private final Set<DependencyNode> _graphNodes = Collections.synchronizedSet(new HashSet<DependencyNode>());
   private final Map<ValueRequirement, ValueSpecification> _terminalOutputs = new ConcurrentHashMap<ValueRequirement, ValueSpecification>();
+  private final Map<ComputationTargetSpecification, Collection<DependencyNode>> _existingNodes = new ConcurrentHashMap<ComputationTargetSpecification, Collection<DependencyNode>>();
   private final GraphBuildingContext _context = new GraphBuildingContext();
   private final AtomicLong _completedSteps = new AtomicLong();
   private final AtomicLong _scheduledSteps = new AtomicLong();
@@ -657,6 +699,30 @@ public final class DependencyGraphBuilder {
     ArgumentChecker.notNullInjected(getCalculationConfigurationName(), "calculationConfigurationName");
   }
 
+  /**
+   * Makes the values produced by the nodes of an existing graph available for the resolution of requirements. A requirement
+   * which can be satisfied by one of these values resolves to it without the node being added to the graph being built, so
+   * that a graph for a few changed targets can be built without resolving again the parts of the previous graph on which
+   * they depend. The inputs of nodes in the new graph which are produced by the existing nodes must be connected to them
+   * when the graphs are combined, for example by {@link DependencyGraph#splice}.
+   * <p>
+   * This must be called before any targets are added. The nodes are not modified.
+   * 
+   * @param nodes the nodes of the existing graph, not null and not containing nulls
+   */
+  public void addExistingNodes(final Collection<DependencyNode> nodes) {
+    ArgumentChecker.noNulls(nodes, "nodes");
+    for (DependencyNode node : nodes) {
+      final ComputationTargetSpecification target = node.getComputationTarget().toSpecification();
+      Collection<DependencyNode> targetNodes = _existingNodes.get(target);
+      if (targetNodes == null) {
+        targetNodes = new ArrayList<DependencyNode>();
+        _existingNodes.put(target, targetNodes);
+      }
+      targetNodes.add(node);
+    }
+  }
+
   /**
    * Adds a target requirement to the graph. The requirement is queued and the call returns; construction
    * of the graph will happen on a background thread (if additional threads is non-zero), or when the
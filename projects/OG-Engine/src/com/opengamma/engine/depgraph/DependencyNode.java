@@ -8,6 +8,7 @@ package com.opengamma.engine.depgraph;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.opengamma.core.security.Security;
 import com.opengamma.engine.ComputationTarget;
@@ -33,10 +34,17 @@ import com.opengamma.util.tuple.Pair;
 @PublicAPI
 public class DependencyNode {
 
+  private static final AtomicLong s_nextIdentifier = new AtomicLong();
+
   // BELOW: COMPLETELY IMMUTABLE VARIABLES
 
   private final ComputationTarget _computationTarget;
 
+  /**
+   * Unique identifier of the node instance, used to fingerprint the graphs containing it.
+   */
+  private final long _identifier;
+
   // COMPLETELY IMMUTABLE VARIABLES END
 
   private ParameterizedFunction _function;
@@ -65,6 +73,16 @@ public class DependencyNode {
   public DependencyNode(ComputationTarget target) {
     ArgumentChecker.notNull(target, "Computation Target");
     _computationTarget = target;
+    _identifier = s_nextIdentifier.incrementAndGet();
+  }
+
+  /**
+   * Returns an identifier for this node instance, unique within the JVM.
+   * 
+   * @return the identifier
+   */
+  /* package */long getIdentifier() {
+    return _identifier;
   }
 
   /**
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.depgraph;
+
+import com.opengamma.engine.depgraph.DependencyGraphBuilder.GraphBuildingContext;
+import com.opengamma.engine.value.ValueRequirement;
+
+/**
+ * Produces the single resolution of a requirement to a value of a node of an existing graph. The node is not part of the graph
+ * being built, so no further resolutions are attempted.
+ */
+/* package */final class ExistingResolvedValueProducer extends AbstractResolvedValueProducer {
+
+  public ExistingResolvedValueProducer(final GraphBuildingContext context, final ValueRequirement valueRequirement, final ResolvedValue value) {
+    super(valueRequirement);
+    pushResult(context, value);
+  }
+
+  @Override
+  protected void pumpImpl(final GraphBuildingContext context) {
+    finished(context);
+  }
+
+  @Override
+  public String toString() {
+    return "Existing" + getObjectId() + "[" + getValueRequirement() + "]";
+  }
+
+}
@@ -166,6 +166,8 @@ import com.opengamma.util.ArgumentChecker;
             // Only the values are ref-counted
             resolvedEntry.getValue().release(context);
           }
+        } else if (context.isExistingValue(input)) {
+          s_logger.debug("Input {} produced by an existing graph", input);
         } else {
           s_logger.warn("No registered node production for {}", input);
         }
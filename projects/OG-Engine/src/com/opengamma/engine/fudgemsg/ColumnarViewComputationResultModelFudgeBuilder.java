@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.fudgemsg;
+
+import javax.time.Duration;
+import javax.time.Instant;
+
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeBuilder;
+import org.fudgemsg.mapping.FudgeBuilderFor;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
+import com.opengamma.engine.view.ViewComputationResultLayout;
+import com.opengamma.engine.view.ViewComputationResultModel;
+import com.opengamma.engine.view.listener.ViewResultLayoutCall;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+
+/**
+ * Fudge message builder for {@link ColumnarViewComputationResultModel}.
+ * <p>
+ * The values are written as arrays, with only those which are not doubles written individually. The layout is
+ * referred to by its identifier. It is written in full with the result unless the receiver is known to have it
+ * already, for example because it was sent ahead in a {@link ViewResultLayoutCall}, so that the results of each
+ * cycle of a stream carry only the values.
+ */
+@FudgeBuilderFor(ColumnarViewComputationResultModel.class)
+public class ColumnarViewComputationResultModelFudgeBuilder implements FudgeBuilder<ColumnarViewComputationResultModel> {
+
+  private static final String FIELD_VIEWPROCESSID = "viewProcessId";
+  private static final String FIELD_VIEWCYCLEID = "viewCycleId";
+  private static final String FIELD_VALUATION_TIME = "valuationTime";
+  private static final String FIELD_CALCULATION_TIME = "calculationTime";
+  private static final String FIELD_CALCULATION_DURATION = "calculationDuration";
+  private static final String FIELD_VERSION_CORRECTION = "versionCorrection";
+  private static final String FIELD_LAYOUT_ID = "layoutId";
+  private static final String FIELD_LAYOUT = "layout";
+  private static final String FIELD_PRESENT = "present";
+  private static final String FIELD_DOUBLES = "doubles";
+  private static final String FIELD_OBJECT_CELLS = "objectCells";
+  private static final String FIELD_OBJECTS = "objects";
+  private static final String FIELD_LIVEDATA = "liveData";
+
+  @Override
+  public MutableFudgeMsg buildMessage(FudgeSerializer serializer, ColumnarViewComputationResultModel resultModel) {
+    return buildMessage(serializer, resultModel, true);
+  }
+
+  /**
+   * Writes a result model, optionally omitting its layout.
+   *
+   * @param serializer  the serializer, not null
+   * @param resultModel  the result model, not null
+   * @param includeLayout  true to write the layout in full, false to write only its identifier when the receiver has
+   *                       already been sent the layout
+   * @return the message, not null
+   */
+  public static MutableFudgeMsg buildMessage(FudgeSerializer serializer, ColumnarViewComputationResultModel resultModel, boolean includeLayout) {
+    final MutableFudgeMsg message = serializer.newMessage();
+    // Headers up to the interface ensure this builder is used when deserializing as a ViewComputationResultModel
+    FudgeSerializer.addClassHeader(message, ColumnarViewComputationResultModel.class, ViewComputationResultModel.class);
+    message.add(FIELD_VIEWPROCESSID, resultModel.getViewProcessId());
+    message.add(FIELD_VIEWCYCLEID, resultModel.getViewCycleId());
+    message.add(FIELD_VALUATION_TIME, resultModel.getValuationTime());
+    message.add(FIELD_CALCULATION_TIME, resultModel.getCalculationTime());
+    serializer.addToMessage(message, FIELD_CALCULATION_DURATION, null, resultModel.getCalculationDuration());
+    serializer.addToMessage(message, FIELD_VERSION_CORRECTION, null, resultModel.getVersionCorrection());
+    message.add(FIELD_LAYOUT_ID, resultModel.getLayout().getId());
+    if (includeLayout) {
+      serializer.addToMessage(message, FIELD_LAYOUT, null, resultModel.getLayout());
+    }
+    message.add(FIELD_PRESENT, resultModel.getPresentCells());
+    message.add(FIELD_DOUBLES, resultModel.getDoubleValues());
+    final Object[] objects = resultModel.getObjectValues();
+    if (objects != null) {
+      int count = 0;
+      for (int i = 0; i < objects.length; i++) {
+        if (objects[i] != null) {
+          count++;
+        }
+      }
+      final int[] objectCells = new int[count];
+      final MutableFudgeMsg objectsMsg = serializer.newMessage();
+      count = 0;
+      for (int i = 0; i < objects.length; i++) {
+        if (objects[i] != null) {
+          objectCells[count++] = i;
+          serializer.addToMessageWithClassHeaders(objectsMsg, null, null, objects[i]);
+        }
+      }
+      message.add(FIELD_OBJECT_CELLS, objectCells);
+      message.add(FIELD_OBJECTS, objectsMsg);
+    }
+    final MutableFudgeMsg liveDataMsg = serializer.newMessage();
+    for (ComputedValue value : resultModel.getAllMarketData()) {
+      serializer.addToMessage(liveDataMsg, null, 1, value);
+    }
+    message.add(FIELD_LIVEDATA, liveDataMsg);
+    return message;
+  }
+
+  @Override
+  public ColumnarViewComputationResultModel buildObject(FudgeDeserializer deserializer, FudgeMsg message) {
+    final String layoutId = message.getString(FIELD_LAYOUT_ID);
+    final FudgeField layoutField = message.getByName(FIELD_LAYOUT);
+    final ViewComputationResultLayout layout;
+    if (layoutField != null) {
+      // The layout builder returns the cached instance if the layout has been received before
+      layout = deserializer.fieldValueToObject(ViewComputationResultLayout.class, layoutField);
+    } else {
+      layout = ViewComputationResultLayoutFudgeBuilder.getCachedLayout(layoutId);
+      if (layout == null) {
+        throw new OpenGammaRuntimeException("Result layout " + layoutId + " has not been received");
+      }
+    }
+    final long[] present = message.getFieldValue(long[].class, message.getByName(FIELD_PRESENT));
+    final double[] doubles = message.getFieldValue(double[].class, message.getByName(FIELD_DOUBLES));
+    Object[] objects = null;
+    final FudgeField objectCellsField = message.getByName(FIELD_OBJECT_CELLS);
+    if (objectCellsField != null) {
+      final int[] objectCells = message.getFieldValue(int[].class, objectCellsField);
+      objects = new Object[doubles.length];
+      int i = 0;
+      for (FudgeField field : message.getFieldValue(FudgeMsg.class, message.getByName(FIELD_OBJECTS))) {
+        objects[objectCells[i++]] = deserializer.fieldValueToObject(field);
+      }
+    }
+    final ColumnarViewComputationResultModel resultModel = new ColumnarViewComputationResultModel(layout, present, doubles, objects);
+    resultModel.setViewProcessId(message.getValue(UniqueId.class, FIELD_VIEWPROCESSID));
+    resultModel.setViewCycleId(message.getValue(UniqueId.class, FIELD_VIEWCYCLEID));
+    resultModel.setValuationTime(message.getFieldValue(Instant.class, message.getByName(FIELD_VALUATION_TIME)));
+    resultModel.setCalculationTime(message.getFieldValue(Instant.class, message.getByName(FIELD_CALCULATION_TIME)));
+    resultModel.setCalculationDuration(deserializer.fieldValueToObject(Duration.class, message.getByName(FIELD_CALCULATION_DURATION)));
+    resultModel.setVersionCorrection(deserializer.fieldValueToObject(VersionCorrection.class, message.getByName(FIELD_VERSION_CORRECTION)));
+    for (FudgeField field : message.getFieldValue(FudgeMsg.class, message.getByName(FIELD_LIVEDATA))) {
+      resultModel.addMarketData(deserializer.fieldValueToObject(ComputedValue.class, field));
+    }
+    return resultModel;
+  }
+
+}
@@ -14,12 +14,17 @@ import org.fudgemsg.mapping.FudgeDeserializer;
 import org.fudgemsg.mapping.FudgeSerializer;
 
 import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
 import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewDeltaResultModel;
 import com.opengamma.engine.view.listener.CycleCompletedCall;
+import com.opengamma.engine.view.listener.ViewResultLayoutCall;
 
 /**
  * Fudge message builder for {@link CycleCompletedCall}
+ * <p>
+ * A columnar full result is written without its layout. The layout must have been sent to the receiver beforehand,
+ * in a {@link ViewResultLayoutCall}.
  */
 @FudgeBuilderFor(CycleCompletedCall.class)
 public class CycleCompletedCallFudgeBuilder implements FudgeBuilder<CycleCompletedCall> {
@@ -35,7 +40,11 @@ public class CycleCompletedCallFudgeBuilder implements FudgeBuilder<CycleComplet
     if (fullResult == null && deltaResult == null) {
       throw new OpenGammaRuntimeException("Unexpectedly useless CycleCompletedCall");
     }
-    serializer.addToMessage(msg, FULL_RESULT_FIELD, null, fullResult);
+    if (fullResult instanceof ColumnarViewComputationResultModel) {
+      msg.add(FULL_RESULT_FIELD, null, ColumnarViewComputationResultModelFudgeBuilder.buildMessage(serializer, (ColumnarViewComputationResultModel) fullResult, false));
+    } else {
+      serializer.addToMessage(msg, FULL_RESULT_FIELD, null, fullResult);
+    }
     serializer.addToMessage(msg, DELTA_RESULT_FIELD, null, deltaResult);
     return msg;
   }
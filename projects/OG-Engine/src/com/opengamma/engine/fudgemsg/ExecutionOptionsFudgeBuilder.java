@@ -39,6 +39,8 @@ public class ExecutionOptionsFudgeBuilder implements FudgeBuilder<ExecutionOptio
   private static final String MAX_SUCCESSIVE_DELTA_CYCLES_FIELD = "maxSuccessiveDeltaCycles";
   private static final String DEFAULT_EXECUTION_OPTIONS_FIELD = "defaultExecutionOptions";
   private static final String VERSION_CORRECTION_FIELD = "versionCorrection";
+  private static final String MARKET_DATA_LATENCY_MILLIS_FIELD = "marketDataLatencyMillis";
+  private static final String MAX_MARKET_DATA_CHANGES_FIELD = "maxMarketDataChanges";
 
   @Override
   public MutableFudgeMsg buildMessage(FudgeSerializer serializer, ExecutionOptions object) {
@@ -54,6 +56,12 @@ public class ExecutionOptionsFudgeBuilder implements FudgeBuilder<ExecutionOptio
     }
     serializer.addToMessage(msg, DEFAULT_EXECUTION_OPTIONS_FIELD, null, object.getDefaultExecutionOptions());
     serializer.addToMessage(msg, VERSION_CORRECTION_FIELD, null, object.getVersionCorrection());
+    if (object.getMarketDataLatencyMillis() != null) {
+      msg.add(MARKET_DATA_LATENCY_MILLIS_FIELD, object.getMarketDataLatencyMillis());
+    }
+    if (object.getMaxMarketDataChanges() != null) {
+      msg.add(MAX_MARKET_DATA_CHANGES_FIELD, object.getMaxMarketDataChanges());
+    }
     return msg;
   }
 
@@ -87,8 +95,18 @@ public class ExecutionOptionsFudgeBuilder implements FudgeBuilder<ExecutionOptio
     
     FudgeField versionCorrectionField = message.getByName(VERSION_CORRECTION_FIELD);
     VersionCorrection versionCorrection = deserializer.fieldValueToObject(VersionCorrection.class, versionCorrectionField);
+    
+    Long marketDataLatencyMillis = null;
+    if (message.hasField(MARKET_DATA_LATENCY_MILLIS_FIELD)) {
+      marketDataLatencyMillis = message.getLong(MARKET_DATA_LATENCY_MILLIS_FIELD);
+    }
+    Integer maxMarketDataChanges = null;
+    if (message.hasField(MAX_MARKET_DATA_CHANGES_FIELD)) {
+      maxMarketDataChanges = message.getInt(MAX_MARKET_DATA_CHANGES_FIELD);
+    }
         
-    return new ExecutionOptions(executionSequence, flags, maxSuccessiveDeltaCycles, defaultExecutionOptions, versionCorrection);
+    return new ExecutionOptions(executionSequence, flags, maxSuccessiveDeltaCycles, defaultExecutionOptions, versionCorrection,
+        marketDataLatencyMillis, maxMarketDataChanges);
   }
 
 }
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.fudgemsg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeBuilder;
+import org.fudgemsg.mapping.FudgeBuilderFor;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ViewComputationResultLayout;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * Fudge message builder for {@link ViewComputationResultLayout}.
+ * <p>
+ * The layout is written as its targets and columns, with each cell as a target and column index. Layouts are cached
+ * by identifier when they are read, so that a result can refer to a layout received earlier rather than carrying it,
+ * and a layout received again is not rebuilt. The cache holds the most recently used layouts.
+ */
+@FudgeBuilderFor(ViewComputationResultLayout.class)
+public class ViewComputationResultLayoutFudgeBuilder implements FudgeBuilder<ViewComputationResultLayout> {
+
+  private static final int MAX_CACHED_LAYOUTS = 64;
+
+  private static final String FIELD_ID = "id";
+  private static final String FIELD_CALC_CONFIGURATION = "calculationConfiguration";
+  private static final String FIELD_CALC_CONFIGURATION_CELLS = "calculationConfigurationCells";
+  private static final String FIELD_REQUIRED_TARGETS = "requiredTargets";
+  private static final String FIELD_TARGET = "target";
+  private static final String FIELD_VALUE_NAME = "valueName";
+  private static final String FIELD_PROPERTIES = "properties";
+  private static final String FIELD_CELL_TARGETS = "cellTargets";
+  private static final String FIELD_CELL_COLUMNS = "cellColumns";
+
+  private static final Map<String, ViewComputationResultLayout> s_layouts = new LinkedHashMap<String, ViewComputationResultLayout>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, ViewComputationResultLayout> eldest) {
+      return size() > MAX_CACHED_LAYOUTS;
+    }
+  };
+
+  /**
+   * Gets a layout that has been read previously.
+   *
+   * @param id  the layout identifier, not null
+   * @return the layout, null if it is not cached
+   */
+  public static ViewComputationResultLayout getCachedLayout(final String id) {
+    synchronized (s_layouts) {
+      return s_layouts.get(id);
+    }
+  }
+
+  private static void cacheLayout(final ViewComputationResultLayout layout) {
+    synchronized (s_layouts) {
+      s_layouts.put(layout.getId(), layout);
+    }
+  }
+
+  @Override
+  public MutableFudgeMsg buildMessage(FudgeSerializer serializer, ViewComputationResultLayout layout) {
+    final MutableFudgeMsg message = serializer.newMessage();
+    message.add(FIELD_ID, layout.getId());
+    final int calcConfigurations = layout.getCalculationConfigurationNames().size();
+    final int[] calcConfigurationCells = new int[calcConfigurations];
+    for (int i = 0; i < calcConfigurations; i++) {
+      message.add(FIELD_CALC_CONFIGURATION, layout.getCalculationConfigurationName(i));
+      calcConfigurationCells[i] = layout.getCellEnd(i) - layout.getCellStart(i);
+    }
+    message.add(FIELD_CALC_CONFIGURATION_CELLS, calcConfigurationCells);
+    message.add(FIELD_REQUIRED_TARGETS, layout.getRequiredTargets().size());
+    for (int i = 0; i < layout.getTargetCount(); i++) {
+      serializer.addToMessage(message, FIELD_TARGET, null, layout.getTarget(i));
+    }
+    for (int i = 0; i < layout.getColumnCount(); i++) {
+      final Pair<String, ValueProperties> column = layout.getColumn(i);
+      message.add(FIELD_VALUE_NAME, column.getFirst());
+      serializer.addToMessage(message, FIELD_PROPERTIES, null, column.getSecond());
+    }
+    final int[] cellTargets = new int[layout.getCellCount()];
+    final int[] cellColumns = new int[layout.getCellCount()];
+    for (int i = 0; i < cellTargets.length; i++) {
+      cellTargets[i] = layout.getCellTarget(i);
+      cellColumns[i] = layout.getCellColumn(i);
+    }
+    message.add(FIELD_CELL_TARGETS, cellTargets);
+    message.add(FIELD_CELL_COLUMNS, cellColumns);
+    return message;
+  }
+
+  @Override
+  public ViewComputationResultLayout buildObject(FudgeDeserializer deserializer, FudgeMsg message) {
+    final String id = message.getString(FIELD_ID);
+    final ViewComputationResultLayout cached = getCachedLayout(id);
+    if (cached != null) {
+      return cached;
+    }
+    final List<String> calcConfigurationNames = new ArrayList<String>();
+    for (FudgeField field : message.getAllByName(FIELD_CALC_CONFIGURATION)) {
+      calcConfigurationNames.add(message.getFieldValue(String.class, field));
+    }
+    final int[] calcConfigurationCells = message.getFieldValue(int[].class, message.getByName(FIELD_CALC_CONFIGURATION_CELLS));
+    final List<ComputationTargetSpecification> targets = new ArrayList<ComputationTargetSpecification>();
+    for (FudgeField field : message.getAllByName(FIELD_TARGET)) {
+      targets.add(deserializer.fieldValueToObject(ComputationTargetSpecification.class, field));
+    }
+    final List<FudgeField> valueNameFields = message.getAllByName(FIELD_VALUE_NAME);
+    final List<FudgeField> propertiesFields = message.getAllByName(FIELD_PROPERTIES);
+    final List<String> columnValueNames = new ArrayList<String>(valueNameFields.size());
+    final List<ValueProperties> columnProperties = new ArrayList<ValueProperties>(propertiesFields.size());
+    for (int i = 0; i < valueNameFields.size(); i++) {
+      columnValueNames.add(message.getFieldValue(String.class, valueNameFields.get(i)));
+      columnProperties.add(deserializer.fieldValueToObject(ValueProperties.class, propertiesFields.get(i)));
+    }
+    final int[] cellTargets = message.getFieldValue(int[].class, message.getByName(FIELD_CELL_TARGETS));
+    final int[] cellColumns = message.getFieldValue(int[].class, message.getByName(FIELD_CELL_COLUMNS));
+    final Map<String, List<ValueSpecification>> outputs = new HashMap<String, List<ValueSpecification>>();
+    int cell = 0;
+    for (int i = 0; i < calcConfigurationNames.size(); i++) {
+      final List<ValueSpecification> values = new ArrayList<ValueSpecification>(calcConfigurationCells[i]);
+      for (int j = 0; j < calcConfigurationCells[i]; j++, cell++) {
+        values.add(new ValueSpecification(columnValueNames.get(cellColumns[cell]), targets.get(cellTargets[cell]), columnProperties.get(cellColumns[cell])));
+      }
+      outputs.put(calcConfigurationNames.get(i), values);
+    }
+    final int requiredTargets = message.getInt(FIELD_REQUIRED_TARGETS);
+    final ViewComputationResultLayout layout = new ViewComputationResultLayout(id, calcConfigurationNames, targets.subList(0, requiredTargets), outputs);
+    cacheLayout(layout);
+    return layout;
+  }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.fudgemsg;
+
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeBuilder;
+import org.fudgemsg.mapping.FudgeBuilderFor;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+
+import com.opengamma.engine.view.ViewComputationResultLayout;
+import com.opengamma.engine.view.listener.ViewResultLayoutCall;
+
+/**
+ * Fudge message builder for {@link ViewResultLayoutCall}
+ */
+@FudgeBuilderFor(ViewResultLayoutCall.class)
+public class ViewResultLayoutCallFudgeBuilder implements FudgeBuilder<ViewResultLayoutCall> {
+
+  private static final String LAYOUT_FIELD = "layout";
+
+  @Override
+  public MutableFudgeMsg buildMessage(FudgeSerializer serializer, ViewResultLayoutCall object) {
+    MutableFudgeMsg msg = serializer.newMessage();
+    serializer.addToMessage(msg, LAYOUT_FIELD, null, object.getLayout());
+    return msg;
+  }
+
+  @Override
+  public ViewResultLayoutCall buildObject(FudgeDeserializer deserializer, FudgeMsg msg) {
+    // Decoding the layout caches it for the results which follow
+    ViewComputationResultLayout layout = deserializer.fieldValueToObject(ViewComputationResultLayout.class, msg.getByName(LAYOUT_FIELD));
+    return new ViewResultLayoutCall(layout);
+  }
+
+}
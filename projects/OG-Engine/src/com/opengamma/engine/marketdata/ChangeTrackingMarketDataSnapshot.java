@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.marketdata;
+
+import java.util.Set;
+
+import com.opengamma.engine.value.ValueRequirement;
+
+/**
+ * A market data snapshot which can report the values that have changed since an earlier snapshot, allowing a
+ * computation cycle to find the changed inputs without comparing every value.
+ */
+public interface ChangeTrackingMarketDataSnapshot extends MarketDataSnapshot {
+
+  /**
+   * Gets the requirements whose values may differ from those in an earlier snapshot. Both snapshots must have been
+   * initialised. The result may include requirements whose values are unchanged but must include every requirement
+   * whose value has changed.
+   *
+   * @param previousSnapshot  the earlier snapshot, not null
+   * @return the requirements that have changed, or null if they can't be determined from the earlier snapshot
+   */
+  Set<ValueRequirement> getChangesSince(MarketDataSnapshot previousSnapshot);
+
+}
@@ -6,10 +6,7 @@
 package com.opengamma.engine.marketdata;
 
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,12 +27,15 @@ import com.opengamma.util.ArgumentChecker;
 
 /**
  * An implementation of {@link MarketDataProvider} which maintains an LKV cache of externally-provided values.
+ * <p>
+ * The values are held in a versioned store so that taking a snapshot does not copy them, and a snapshot can report the
+ * values that have changed since an earlier one.
  */
 public class InMemoryLKVMarketDataProvider extends AbstractMarketDataProvider implements MarketDataInjector, MarketDataAvailabilityProvider {
   
   private static final Logger s_logger = LoggerFactory.getLogger(InMemoryLKVMarketDataProvider.class);
   
-  private final Map<ValueRequirement, Object> _lastKnownValues = new ConcurrentHashMap<ValueRequirement, Object>();
+  private final LastKnownValueStore _lastKnownValues = new LastKnownValueStore();
   private final SecuritySource _securitySource;
   private final MarketDataPermissionProvider _permissionProvider;
 
@@ -133,7 +133,7 @@ public class InMemoryLKVMarketDataProvider extends AbstractMarketDataProvider im
   
   //-------------------------------------------------------------------------
   public Set<ValueRequirement> getAllValueKeys() {
-    return Collections.unmodifiableSet(_lastKnownValues.keySet());
+    return doSnapshot().keySet();
   }
 
   public Object getCurrentValue(ValueRequirement valueRequirement) {
@@ -141,8 +141,8 @@ public class InMemoryLKVMarketDataProvider extends AbstractMarketDataProvider im
   }
   
   //-------------------------------------------------------------------------
-  /*package*/ Map<ValueRequirement, Object> doSnapshot() {
-    return new HashMap<ValueRequirement, Object>(_lastKnownValues);
+  /*package*/ LastKnownValueStore.Version doSnapshot() {
+    return _lastKnownValues.snapshot();
   }
   
   private ValueRequirement resolveRequirement(ExternalId identifier, String valueName) {
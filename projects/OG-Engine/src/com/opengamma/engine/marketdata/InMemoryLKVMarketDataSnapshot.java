@@ -5,8 +5,6 @@
  */
 package com.opengamma.engine.marketdata;
 
-import java.util.Collections;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -20,13 +18,13 @@ import com.opengamma.engine.value.ValueRequirement;
 /**
  * An implementation of {@link MarketDataSnapshot} backed by an {@link InMemoryLKVMarketDataProvider}.
  */
-public class InMemoryLKVMarketDataSnapshot implements MarketDataSnapshot {
+public class InMemoryLKVMarketDataSnapshot implements ChangeTrackingMarketDataSnapshot {
 
   private static final Logger s_logger = LoggerFactory.getLogger(InMemoryLKVMarketDataSnapshot.class);
   
   private final InMemoryLKVMarketDataProvider _provider;
   private Instant _snapshotTime;
-  private Map<ValueRequirement, Object> _snapshot;
+  private LastKnownValueStore.Version _snapshot;
   
   public InMemoryLKVMarketDataSnapshot(InMemoryLKVMarketDataProvider provider) {
     _provider = provider;
@@ -59,13 +57,25 @@ public class InMemoryLKVMarketDataSnapshot implements MarketDataSnapshot {
     return getSnapshot().get(requirement);
   }
 
+  @Override
+  public Set<ValueRequirement> getChangesSince(MarketDataSnapshot previousSnapshot) {
+    if (!(previousSnapshot instanceof InMemoryLKVMarketDataSnapshot)) {
+      return null;
+    }
+    final InMemoryLKVMarketDataSnapshot previous = (InMemoryLKVMarketDataSnapshot) previousSnapshot;
+    if (previous.getProvider() != getProvider()) {
+      return null;
+    }
+    return getSnapshot().getChangesSince(previous.getSnapshot());
+  }
+
   //-------------------------------------------------------------------------
   public Set<ValueRequirement> getAllValueKeys() {
-    return Collections.unmodifiableSet(getSnapshot().keySet());
+    return getSnapshot().keySet();
   }
   
   //-------------------------------------------------------------------------
-  private Map<ValueRequirement, Object> getSnapshot() {
+  private LastKnownValueStore.Version getSnapshot() {
     if (_snapshot == null) {
       throw new IllegalStateException("Snapshot has not been initialised");
     }
@@ -0,0 +1,400 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.marketdata;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import com.opengamma.engine.value.ValueRequirement;
+
+/**
+ * Versioned store of last known values.
+ * <p>
+ * The values are held in a persistent hash trie. An update copies only the path from the root to the changed entry, so
+ * taking a snapshot of the store is constant time and successive snapshots share all of their unchanged structure. Each
+ * version also records the requirements that changed since the version before it, so a consumer holding two snapshots
+ * can find the changed values without comparing every entry.
+ */
+/* package */final class LastKnownValueStore {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  /**
+   * Node of the trie.
+   */
+  private abstract static class Node {
+
+    public abstract Object get(int hash, int shift, Object key);
+
+    /**
+     * Returns the updated node. The size is incremented if a new key is added.
+     */
+    public abstract Node put(int hash, int shift, Object key, Object value, int[] size);
+
+    /**
+     * Returns the updated node, or null if it is empty. The size is decremented if the key is removed.
+     */
+    public abstract Node remove(int hash, int shift, Object key, int[] size);
+
+    public abstract void getKeys(List<Object> keys);
+
+  }
+
+  /**
+   * Node holding up to 32 entries or sub-nodes, indexed by 5 bits of the hash. The array holds a key and value pair for
+   * each entry or a null and node pair for each sub-node.
+   */
+  private static final class BitmapNode extends Node {
+
+    private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    private final int _bitmap;
+    private final Object[] _array;
+
+    private BitmapNode(final int bitmap, final Object[] array) {
+      _bitmap = bitmap;
+      _array = array;
+    }
+
+    private int index(final int bit) {
+      return Integer.bitCount(_bitmap & (bit - 1)) << 1;
+    }
+
+    @Override
+    public Object get(final int hash, final int shift, final Object key) {
+      final int bit = 1 << ((hash >>> shift) & MASK);
+      if ((_bitmap & bit) == 0) {
+        return null;
+      }
+      final int index = index(bit);
+      final Object k = _array[index];
+      if (k == null) {
+        return ((Node) _array[index + 1]).get(hash, shift + BITS, key);
+      }
+      return key.equals(k) ? _array[index + 1] : null;
+    }
+
+    @Override
+    public Node put(final int hash, final int shift, final Object key, final Object value, final int[] size) {
+      final int bit = 1 << ((hash >>> shift) & MASK);
+      final int index = index(bit);
+      if ((_bitmap & bit) == 0) {
+        final Object[] array = new Object[_array.length + 2];
+        System.arraycopy(_array, 0, array, 0, index);
+        array[index] = key;
+        array[index + 1] = value;
+        System.arraycopy(_array, index, array, index + 2, _array.length - index);
+        size[0]++;
+        return new BitmapNode(_bitmap | bit, array);
+      }
+      final Object k = _array[index];
+      final Object v = _array[index + 1];
+      if (k == null) {
+        final Node node = ((Node) v).put(hash, shift + BITS, key, value, size);
+        return (node == v) ? this : with(index + 1, node);
+      }
+      if (key.equals(k)) {
+        return (value == v) ? this : with(index + 1, value);
+      }
+      // Push the existing entry and the new one down into a sub-node
+      size[0]++;
+      final Node node = createNode(hash(k), k, v, hash, key, value, shift + BITS);
+      final Object[] array = _array.clone();
+      array[index] = null;
+      array[index + 1] = node;
+      return new BitmapNode(_bitmap, array);
+    }
+
+    private BitmapNode with(final int index, final Object value) {
+      final Object[] array = _array.clone();
+      array[index] = value;
+      return new BitmapNode(_bitmap, array);
+    }
+
+    @Override
+    public Node remove(final int hash, final int shift, final Object key, final int[] size) {
+      final int bit = 1 << ((hash >>> shift) & MASK);
+      if ((_bitmap & bit) == 0) {
+        return this;
+      }
+      final int index = index(bit);
+      final Object k = _array[index];
+      if (k == null) {
+        final Node child = (Node) _array[index + 1];
+        final Node node = child.remove(hash, shift + BITS, key, size);
+        if (node == child) {
+          return this;
+        }
+        if (node != null) {
+          return with(index + 1, node);
+        }
+      } else if (!key.equals(k)) {
+        return this;
+      } else {
+        size[0]--;
+      }
+      if (_bitmap == bit) {
+        return null;
+      }
+      final Object[] array = new Object[_array.length - 2];
+      System.arraycopy(_array, 0, array, 0, index);
+      System.arraycopy(_array, index + 2, array, index, array.length - index);
+      return new BitmapNode(_bitmap & ~bit, array);
+    }
+
+    @Override
+    public void getKeys(final List<Object> keys) {
+      for (int i = 0; i < _array.length; i += 2) {
+        if (_array[i] == null) {
+          ((Node) _array[i + 1]).getKeys(keys);
+        } else {
+          keys.add(_array[i]);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Node holding the entries whose keys have the same hash.
+   */
+  private static final class CollisionNode extends Node {
+
+    private final int _hash;
+    private final Object[] _array;
+
+    private CollisionNode(final int hash, final Object[] array) {
+      _hash = hash;
+      _array = array;
+    }
+
+    private int indexOf(final Object key) {
+      for (int i = 0; i < _array.length; i += 2) {
+        if (key.equals(_array[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public Object get(final int hash, final int shift, final Object key) {
+      final int index = indexOf(key);
+      return (index >= 0) ? _array[index + 1] : null;
+    }
+
+    @Override
+    public Node put(final int hash, final int shift, final Object key, final Object value, final int[] size) {
+      if (hash != _hash) {
+        // Nest this node within a bitmap node which can hold the new entry
+        return new BitmapNode(1 << ((_hash >>> shift) & MASK), new Object[] {null, this }).put(hash, shift, key, value, size);
+      }
+      final int index = indexOf(key);
+      final Object[] array;
+      if (index >= 0) {
+        if (_array[index + 1] == value) {
+          return this;
+        }
+        array = _array.clone();
+        array[index + 1] = value;
+      } else {
+        array = new Object[_array.length + 2];
+        System.arraycopy(_array, 0, array, 0, _array.length);
+        array[_array.length] = key;
+        array[_array.length + 1] = value;
+        size[0]++;
+      }
+      return new CollisionNode(_hash, array);
+    }
+
+    @Override
+    public Node remove(final int hash, final int shift, final Object key, final int[] size) {
+      final int index = indexOf(key);
+      if (index < 0) {
+        return this;
+      }
+      size[0]--;
+      if (_array.length == 2) {
+        return null;
+      }
+      final Object[] array = new Object[_array.length - 2];
+      System.arraycopy(_array, 0, array, 0, index);
+      System.arraycopy(_array, index + 2, array, index, array.length - index);
+      return new CollisionNode(_hash, array);
+    }
+
+    @Override
+    public void getKeys(final List<Object> keys) {
+      for (int i = 0; i < _array.length; i += 2) {
+        keys.add(_array[i]);
+      }
+    }
+
+  }
+
+  private static Node createNode(final int hash1, final Object key1, final Object value1, final int hash2, final Object key2, final Object value2, final int shift) {
+    if (hash1 == hash2) {
+      return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2 });
+    }
+    if (shift >= 32) {
+      // Not reachable for distinct hashes; all 32 bits will have been consumed
+      throw new IllegalStateException();
+    }
+    final int[] size = new int[1];
+    return BitmapNode.EMPTY.put(hash1, shift, key1, value1, size).put(hash2, shift, key2, value2, size);
+  }
+
+  private static int hash(final Object key) {
+    final int h = key.hashCode();
+    // Spread the bits used at the top levels of the trie
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * An immutable version of the store.
+   */
+  public static final class Version {
+
+    private final long _version;
+    private final Node _root;
+    private final int _size;
+    private final Set<ValueRequirement> _changes;
+    private volatile Version _next;
+
+    private Version(final long version, final Node root, final int size, final Set<ValueRequirement> changes) {
+      _version = version;
+      _root = root;
+      _size = size;
+      _changes = changes;
+    }
+
+    public long getVersion() {
+      return _version;
+    }
+
+    public Object get(final ValueRequirement requirement) {
+      return _root.get(hash(requirement), 0, requirement);
+    }
+
+    public boolean containsKey(final ValueRequirement requirement) {
+      return get(requirement) != null;
+    }
+
+    public int size() {
+      return _size;
+    }
+
+    /**
+     * Returns the requirements held in this version.
+     *
+     * @return the requirements, not null
+     */
+    public Set<ValueRequirement> keySet() {
+      return new AbstractSet<ValueRequirement>() {
+
+        private List<Object> _keys;
+
+        @SuppressWarnings({"unchecked", "rawtypes" })
+        @Override
+        public Iterator<ValueRequirement> iterator() {
+          if (_keys == null) {
+            _keys = new ArrayList<Object>(_size);
+            _root.getKeys(_keys);
+          }
+          return Collections.unmodifiableList((List) _keys).iterator();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+          return (o instanceof ValueRequirement) && containsKey((ValueRequirement) o);
+        }
+
+        @Override
+        public int size() {
+          return _size;
+        }
+
+      };
+    }
+
+    /**
+     * Returns the requirements whose values were added, changed or removed after an earlier version.
+     *
+     * @param previous the earlier version, not null
+     * @return the changed requirements, or null if the previous version is not an earlier version of the same store
+     */
+    public Set<ValueRequirement> getChangesSince(final Version previous) {
+      if (previous == this) {
+        return Collections.emptySet();
+      }
+      if (previous._version > _version) {
+        return null;
+      }
+      Version version = previous._next;
+      if (version == this) {
+        return _changes;
+      }
+      final Set<ValueRequirement> changes = new HashSet<ValueRequirement>();
+      while (version != null) {
+        changes.addAll(version._changes);
+        if (version == this) {
+          return Collections.unmodifiableSet(changes);
+        }
+        version = version._next;
+      }
+      return null;
+    }
+
+  }
+
+  private volatile Node _root = BitmapNode.EMPTY;
+  private final int[] _size = new int[1];
+  private Set<ValueRequirement> _changes = new HashSet<ValueRequirement>();
+  private Version _latest = new Version(0, BitmapNode.EMPTY, 0, Collections.<ValueRequirement>emptySet());
+
+  public Object get(final ValueRequirement requirement) {
+    return _root.get(hash(requirement), 0, requirement);
+  }
+
+  public boolean containsKey(final ValueRequirement requirement) {
+    return get(requirement) != null;
+  }
+
+  public synchronized void put(final ValueRequirement requirement, final Object value) {
+    _root = _root.put(hash(requirement), 0, requirement, value, _size);
+    _changes.add(requirement);
+  }
+
+  public synchronized void remove(final ValueRequirement requirement) {
+    final Node root = _root.remove(hash(requirement), 0, requirement, _size);
+    _root = (root != null) ? root : BitmapNode.EMPTY;
+    _changes.add(requirement);
+  }
+
+  /**
+   * Returns the current version of the store. If there have been no changes since the last call, the same version is
+   * returned.
+   *
+   * @return the current version, not null
+   */
+  public synchronized Version snapshot() {
+    if (_changes.isEmpty()) {
+      return _latest;
+    }
+    final Version version = new Version(_latest._version + 1, _root, _size[0], Collections.unmodifiableSet(_changes));
+    _latest._next = version;
+    _latest = version;
+    _changes = new HashSet<ValueRequirement>();
+    return version;
+  }
+
+}
@@ -23,7 +23,7 @@ import com.opengamma.engine.value.ValueRequirement;
 /**
  * A {@link MarketDataSnapshot} for live data.
  */
-public class LiveMarketDataSnapshot implements MarketDataSnapshot {
+public class LiveMarketDataSnapshot implements ChangeTrackingMarketDataSnapshot {
   private static final Logger s_logger = LoggerFactory.getLogger(LiveMarketDataSnapshot.class);
 
   private final InMemoryLKVMarketDataSnapshot _underlyingSnapshot;
@@ -117,4 +117,12 @@ public class LiveMarketDataSnapshot implements MarketDataSnapshot {
     //TODO: return useful error message if failed
     return _underlyingSnapshot.query(requirement);
   }
+
+  @Override
+  public Set<ValueRequirement> getChangesSince(MarketDataSnapshot previousSnapshot) {
+    if (!(previousSnapshot instanceof LiveMarketDataSnapshot)) {
+      return null;
+    }
+    return _underlyingSnapshot.getChangesSince(((LiveMarketDataSnapshot) previousSnapshot)._underlyingSnapshot);
+  }
 }
@@ -6,18 +6,23 @@
 package com.opengamma.engine.value;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 
 import com.google.common.collect.Sets;
@@ -210,58 +215,257 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
             _properties.put(optionalProperty, Collections.<String>emptySet());
           }
         }
-        return new ValuePropertiesImpl(Collections.unmodifiableMap(_properties), Collections.unmodifiableSet(_optional));
+        return ValuePropertiesImpl.of(_properties, _optional);
       } else {
         if (_properties.isEmpty()) {
           return EMPTY;
         }
-        return new ValuePropertiesImpl(Collections.unmodifiableMap(_properties), Collections.<String>emptySet());
+        return ValuePropertiesImpl.of(_properties, null);
       }
     }
   }
 
+  /**
+   * An immutable set of strings held as a sorted array. The hash code is calculated on construction.
+   */
+  /* package */static final class ValueSet extends AbstractSet<String> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ValueSet EMPTY = new ValueSet(new String[0]);
+
+    private final String[] _values;
+    private final int _hashCode;
+
+    private ValueSet(final String[] values) {
+      _values = values;
+      int hc = 0;
+      for (String value : values) {
+        hc += value.hashCode();
+      }
+      _hashCode = hc;
+    }
+
+    private static ValueSet of(final Collection<String> values) {
+      if (values.isEmpty()) {
+        return EMPTY;
+      }
+      if (values instanceof ValueSet) {
+        return (ValueSet) values;
+      }
+      final String[] array = values.toArray(new String[values.size()]);
+      Arrays.sort(array);
+      return s_valueSets.intern(new ValueSet(array));
+    }
+
+    private String get(final int index) {
+      return _values[index];
+    }
+
+    private int indexOf(final Object o) {
+      if (_values.length == 1) {
+        return _values[0].equals(o) ? 0 : -1;
+      }
+      return Arrays.binarySearch(_values, o);
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+      return (o instanceof String) && (indexOf(o) >= 0);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return new Iterator<String>() {
+        private int _index;
+
+        @Override
+        public boolean hasNext() {
+          return _index < _values.length;
+        }
+
+        @Override
+        public String next() {
+          if (_index >= _values.length) {
+            throw new NoSuchElementException();
+          }
+          return _values[_index++];
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return _values.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return _values.length == 0;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (o instanceof ValueSet) {
+        final ValueSet other = (ValueSet) o;
+        return (_hashCode == other._hashCode) && Arrays.equals(_values, other._values);
+      }
+      return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    private Object readResolve() {
+      return _values.length == 0 ? EMPTY : s_valueSets.intern(this);
+    }
+
+  }
+
+  /**
+   * Pool of canonical instances. The instances are weakly held so that they are discarded when no longer used. The pool is
+   * striped on the hash code to reduce contention when many threads are building properties.
+   *
+   * @param <T> the type of the instances
+   */
+  private static final class Interner<T> {
+
+    private static final int STRIPES = 32;
+
+    private final Map<T, WeakReference<T>>[] _pools;
+
+    @SuppressWarnings("unchecked")
+    public Interner() {
+      _pools = new Map[STRIPES];
+      for (int i = 0; i < STRIPES; i++) {
+        _pools[i] = new WeakHashMap<T, WeakReference<T>>();
+      }
+    }
+
+    public T intern(final T value) {
+      final int hc = value.hashCode();
+      final Map<T, WeakReference<T>> pool = _pools[(hc ^ (hc >>> 16)) & (STRIPES - 1)];
+      synchronized (pool) {
+        final WeakReference<T> ref = pool.get(value);
+        if (ref != null) {
+          final T existing = ref.get();
+          if (existing != null) {
+            return existing;
+          }
+        }
+        pool.put(value, new WeakReference<T>(value));
+        return value;
+      }
+    }
+
+  }
+
+  /**
+   * The canonical value sets.
+   */
+  private static final Interner<ValueSet> s_valueSets = new Interner<ValueSet>();
+  /**
+   * The canonical property sets.
+   */
+  private static final Interner<ValuePropertiesImpl> s_properties = new Interner<ValuePropertiesImpl>();
+
   /**
    * A value properties implementation holding a set of properties.
+   * <p>
+   * The property names and the values of each property are held in sorted arrays. Instances are created through a pool
+   * so that equal property sets, and equal sets of property values, share a single instance. This reduces the memory
+   * used by the many value specifications and requirements of a dependency graph that have the same properties, and
+   * means that most equality tests succeed on identity.
    */
   public static final class ValuePropertiesImpl extends ValueProperties {
 
     /**
-     * 
+     *
      */
     private static final long serialVersionUID = 1L;
     /**
-     * The properties.
+     * The property names.
      */
-    private final Map<String, Set<String>> _properties;
+    private final ValueSet _properties;
+    /**
+     * The values of each property, in the order of the names. An empty set is a wild-card.
+     */
+    private final ValueSet[] _values;
     /**
      * The optional properties.
      */
-    private final Set<String> _optional;
+    private final ValueSet _optional;
+    /**
+     * The hash code.
+     */
+    private final int _hashCode;
 
     /**
      * Creates an instance.
-     * 
-     * @param properties  the required properties, not null
+     *
+     * @param properties  the sorted property names, not null
+     * @param values  the property values, not null
      * @param optional  the optional properties, not null
      */
-    private ValuePropertiesImpl(final Map<String, Set<String>> properties, final Set<String> optional) {
+    private ValuePropertiesImpl(final ValueSet properties, final ValueSet[] values, final ValueSet optional) {
       _properties = properties;
+      _values = values;
       _optional = optional;
+      // Same as the hash code of the equivalent map
+      int hc = 0;
+      for (int i = 0; i < values.length; i++) {
+        hc += properties.get(i).hashCode() ^ values[i].hashCode();
+      }
+      _hashCode = hc;
+    }
+
+    private static ValueProperties of(final Map<String, Set<String>> properties, final Set<String> optional) {
+      final String[] names = properties.keySet().toArray(new String[properties.size()]);
+      Arrays.sort(names);
+      final ValueSet[] values = new ValueSet[names.length];
+      for (int i = 0; i < names.length; i++) {
+        values[i] = ValueSet.of(properties.get(names[i]));
+      }
+      return of(names, values, (optional != null) ? ValueSet.of(optional) : ValueSet.EMPTY);
+    }
+
+    private static ValueProperties of(final String[] names, final ValueSet[] values, final ValueSet optional) {
+      final ValueSet properties = (names.length == 0) ? ValueSet.EMPTY : s_valueSets.intern(new ValueSet(names));
+      return s_properties.intern(new ValuePropertiesImpl(properties, values, optional));
+    }
+
+    private Object readResolve() {
+      return s_properties.intern(this);
     }
 
     @Override
     public Builder copy() {
-      return new Builder(_properties, _optional);
+      final Map<String, Set<String>> properties = new HashMap<String, Set<String>>();
+      for (int i = 0; i < _values.length; i++) {
+        properties.put(_properties.get(i), _values[i].isEmpty() ? Collections.<String>emptySet() : _values[i]);
+      }
+      return new Builder(properties, _optional.isEmpty() ? null : _optional);
     }
 
     @Override
     public Set<String> getProperties() {
-      return _properties.keySet();
+      return _properties;
     }
 
     @Override
     public Set<String> getValues(final String propertyName) {
-      return _properties.get(propertyName);
+      final int index = _properties.indexOf(propertyName);
+      return (index >= 0) ? _values[index] : null;
     }
 
     @Override
@@ -272,28 +476,33 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
     @Override
     public boolean isSatisfiedBy(final ValueProperties properties) {
       assert properties != null;
+      if (properties == this) {
+        return true;
+      }
       nextProperty: // CSIGNORE [DVI-122]
-      for (Map.Entry<String, Set<String>> property : _properties.entrySet()) {
-        final Set<String> available = properties.getValues(property.getKey());
+      for (int i = 0; i < _values.length; i++) {
+        final String propertyName = _properties.get(i);
+        final Set<String> available = properties.getValues(propertyName);
         if (available == null) {
-          if (!isOptional(property.getKey())) {
+          if (!isOptional(propertyName)) {
             // Can't be satisfied - required property never defined
             return false;
           }
           continue;
         }
-        if (!isOptional(property.getKey())) {
-          if (properties.isOptional(property.getKey())) {
+        if (!isOptional(propertyName)) {
+          if (properties.isOptional(propertyName)) {
             // Can't be satisfied - required property might not be defined
             return false;
           }
         }
-        if (available.isEmpty() || property.getValue().isEmpty()) {
+        final ValueSet values = _values[i];
+        if (available.isEmpty() || values.isEmpty() || (available == values)) {
           // Other properties can supply anything - satisfying this requirement
           // or this requirement is for anything and so satisfied.
           continue;
         }
-        for (String value : property.getValue()) {
+        for (String value : values._values) {
           if (available.contains(value)) {
             // There is at least one value that can satisfy this requirement
             continue nextProperty;
@@ -309,31 +518,36 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
     @Override
     public ValueProperties compose(final ValueProperties properties) {
       assert properties != null;
-      if ((properties == EMPTY) || (properties == INFINITE)) {
+      if ((properties == EMPTY) || (properties == INFINITE) || (properties == this)) {
         return this;
       }
-      for (Map.Entry<String, Set<String>> property : _properties.entrySet()) {
-        final Set<String> available = properties.getValues(property.getKey());
+      for (int i = 0; i < _values.length; i++) {
+        final String propertyName = _properties.get(i);
+        final Set<String> available = properties.getValues(propertyName);
         if (available == null) {
           // This property unchanged in output
           continue;
         }
         if (available.isEmpty()) {
           // This property different in output if optional here, and composed against a required
-          if (isOptional(property.getKey()) && !properties.isOptional(property.getKey())) {
+          if (isOptional(propertyName) && !properties.isOptional(propertyName)) {
             return composeImpl(properties);
           }
           continue;
         }
-        if (property.getValue().isEmpty()) {
+        final ValueSet values = _values[i];
+        if (values.isEmpty()) {
           // Requires a subset in the output
           return composeImpl(properties);
         }
-        if (property.getValue().size() != available.size()) {
+        if (values == available) {
+          continue;
+        }
+        if (values.size() != available.size()) {
           // Requires an intersection in the output
           return composeImpl(properties);
         }
-        for (String value : property.getValue()) {
+        for (String value : values._values) {
           if (!available.contains(value)) {
             // Requires an intersection in the output
             return composeImpl(properties);
@@ -343,79 +557,81 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
       return this;
     }
 
+    private static ValueSet intersection(final ValueSet values, final Set<String> available) {
+      final List<String> intersection = new ArrayList<String>(values.size());
+      for (String value : values._values) {
+        if (available.contains(value)) {
+          intersection.add(value);
+        }
+      }
+      return ValueSet.of(intersection);
+    }
+
     private ValueProperties composeImpl(final ValueProperties properties) {
-      final Map<String, Set<String>> composed = new HashMap<String, Set<String>>();
-      Set<String> optional = null;
+      final String[] composedNames = new String[_values.length];
+      final ValueSet[] composedValues = new ValueSet[_values.length];
+      int composed = 0;
+      List<String> optional = null;
       int otherAvailable = 0;
-      nextProperty: // CSIGNORE [DVI-122]
-      for (Map.Entry<String, Set<String>> property : _properties.entrySet()) {
-        final Set<String> available = properties.getValues(property.getKey());
+      for (int i = 0; i < _values.length; i++) {
+        final String propertyName = _properties.get(i);
+        final ValueSet values = _values[i];
+        final Set<String> available = properties.getValues(propertyName);
         if (available == null) {
           // Other is not defined, so use current value
-          composed.put(property.getKey(), property.getValue());
+          composedNames[composed] = propertyName;
+          composedValues[composed++] = values;
           // Preserve optionality from this property set
-          if (isOptional(property.getKey())) {
+          if (isOptional(propertyName)) {
             if (optional == null) {
-              optional = new HashSet<String>();
+              optional = new ArrayList<String>();
             }
-            optional.add(property.getKey());
+            optional.add(propertyName);
           }
           continue;
         }
         // Preserve least optionality from property sets
-        if (properties.isOptional(property.getKey()) && isOptional(property.getKey())) {
+        if (properties.isOptional(propertyName) && isOptional(propertyName)) {
           if (optional == null) {
-            optional = new HashSet<String>();
+            optional = new ArrayList<String>();
           }
-          optional.add(property.getKey());
+          optional.add(propertyName);
         }
-        if (property.getValue().isEmpty()) {
+        if (values.isEmpty()) {
           // This is a wild-card so use other values
-          composed.put(property.getKey(), available);
+          composedNames[composed] = propertyName;
+          composedValues[composed++] = ValueSet.of(available);
           otherAvailable++;
           continue;
         }
-        if (available.isEmpty()) {
-          // Other is wild-card so use current value
-          composed.put(property.getKey(), property.getValue());
+        if (available.isEmpty() || (available == values)) {
+          // Other is wild-card or identical so use current value
+          composedNames[composed] = propertyName;
+          composedValues[composed++] = values;
           continue;
         }
-        if (property.getValue().size() != available.size()) {
-          final Set<String> intersection = Sets.intersection(property.getValue(), available);
-          // An empty intersection means no resulting property
-          if (!intersection.isEmpty()) {
-            composed.put(property.getKey(), intersection);
-          }
-          continue;
-        }
-        for (String value : property.getValue()) {
-          if (!available.contains(value)) {
-            final Set<String> intersection = Sets.intersection(property.getValue(), available);
-            // An empty intersection means no resulting property
-            if (!intersection.isEmpty()) {
-              composed.put(property.getKey(), intersection);
-            }
-            continue nextProperty;
-          }
+        final ValueSet intersection = intersection(values, available);
+        // An empty intersection means no resulting property
+        if (!intersection.isEmpty()) {
+          composedNames[composed] = propertyName;
+          composedValues[composed++] = (intersection.size() == values.size()) ? values : intersection;
         }
-        // Property is identical in both
-        composed.put(property.getKey(), property.getValue());
       }
-      if ((composed.size() == otherAvailable) && (otherAvailable == _properties.size())) {
-        // We've just built a map containing only the other property values, so possibly return that original
+      if ((composed == otherAvailable) && (otherAvailable == _values.length)) {
+        // We've just built a property set containing only the other property values, so possibly return that original
         if (properties instanceof ValuePropertiesImpl) {
-          if (otherAvailable == ((ValuePropertiesImpl) properties)._properties.size()) {
+          if (otherAvailable == ((ValuePropertiesImpl) properties)._values.length) {
             return properties;
           }
         }
       }
-      return new ValuePropertiesImpl(Collections.unmodifiableMap(composed), (optional != null) ? Collections.unmodifiableSet(optional) : Collections.<String>emptySet());
+      return of(Arrays.copyOf(composedNames, composed), Arrays.copyOf(composedValues, composed), (optional != null) ? ValueSet.of(optional) : ValueSet.EMPTY);
     }
 
     @Override
     public boolean isStrict() {
-      for (Set<String> property : _properties.values()) {
-        if (property.size() != 1) {
+      for (ValueSet values : _values) {
+        if (values.size() != 1) {
           return false;
         }
       }
@@ -431,17 +647,25 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
         return false;
       }
       final ValuePropertiesImpl other = (ValuePropertiesImpl) o;
-      return _properties.equals(other._properties) && ObjectUtils.equals(_optional, other._optional);
+      return (_hashCode == other._hashCode) && _properties.equals(other._properties) && Arrays.equals(_values, other._values) && _optional.equals(other._optional);
     }
 
     @Override
     public int hashCode() {
-      return _properties.hashCode();
+      return _hashCode;
     }
 
     @Override
     public boolean isEmpty() {
-      return _properties.isEmpty();
+      return _values.length == 0;
+    }
+
+    private Map<String, Set<String>> toMap() {
+      final Map<String, Set<String>> map = new LinkedHashMap<String, Set<String>>();
+      for (int i = 0; i < _values.length; i++) {
+        map.put(_properties.get(i), _values[i]);
+      }
+      return map;
     }
 
     public static String toString(final Map<String, Set<String>> properties, final Set<String> optional, final boolean strict) {
@@ -487,12 +711,12 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
 
     @Override
     public String toSimpleString() {
-      return toString(_properties, _optional, false);
+      return toString(toMap(), _optional, false);
     }
 
     @Override
     public String toString() {
-      return toString(_properties, _optional, true);
+      return toString(toMap(), _optional, true);
     }
   }
 
@@ -0,0 +1,502 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.time.Duration;
+import javax.time.Instant;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * An implementation of {@link ViewComputationResultModel} which holds the values in arrays indexed by the cells of a
+ * {@link ViewComputationResultLayout}.
+ * <p>
+ * Double values are held as primitives, and any other values in a side array which is only allocated once one is
+ * set. The layout is shared by every result produced from the same compiled view definition, so a result holds
+ * little more than its values. The {@link ViewResultModel} methods create {@link ComputedValue} instances, and maps
+ * or lists of them, on demand; code iterating through many results should use the cell accessors instead, visiting
+ * the cells holding values with {@link #nextPresentCell} and the targets reported with {@link #isReportedTarget}.
+ */
+public class ColumnarViewComputationResultModel implements ViewComputationResultModel, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private UniqueId _viewProcessId;
+  private UniqueId _viewCycleId;
+  private Instant _valuationTime;
+  private Instant _calculationTime;
+  private Duration _calculationDuration;
+  private VersionCorrection _versionCorrection;
+  private final ViewComputationResultLayout _layout;
+  /**
+   * Bit set of the cells holding values.
+   */
+  private final long[] _present;
+  private final double[] _doubles;
+  /**
+   * The values which are not doubles, null until one is set.
+   */
+  private Object[] _objects;
+  private final Set<ComputedValue> _allMarketData = new HashSet<ComputedValue>();
+
+  /**
+   * Creates an empty result.
+   *
+   * @param layout  the layout of the values, not null
+   */
+  public ColumnarViewComputationResultModel(ViewComputationResultLayout layout) {
+    ArgumentChecker.notNull(layout, "layout");
+    _layout = layout;
+    _present = new long[(layout.getCellCount() + 63) >>> 6];
+    _doubles = new double[layout.getCellCount()];
+  }
+
+  /**
+   * Creates a result from the arrays previously obtained from another instance, for example when deserializing. The
+   * arrays are used directly rather than copied.
+   *
+   * @param layout  the layout of the values, not null
+   * @param present  the bit set of cells holding values, as returned by {@link #getPresentCells}, not null
+   * @param doubles  the double values, as returned by {@link #getDoubleValues}, not null
+   * @param objects  the other values, as returned by {@link #getObjectValues}, may be null
+   */
+  public ColumnarViewComputationResultModel(ViewComputationResultLayout layout, long[] present, double[] doubles, Object[] objects) {
+    ArgumentChecker.notNull(layout, "layout");
+    ArgumentChecker.notNull(present, "present");
+    ArgumentChecker.notNull(doubles, "doubles");
+    ArgumentChecker.isTrue(present.length == (layout.getCellCount() + 63) >>> 6, "present does not match layout");
+    ArgumentChecker.isTrue(doubles.length == layout.getCellCount(), "doubles does not match layout");
+    ArgumentChecker.isTrue(objects == null || objects.length == layout.getCellCount(), "objects does not match layout");
+    _layout = layout;
+    _present = present;
+    _doubles = doubles;
+    _objects = objects;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public UniqueId getViewProcessId() {
+    return _viewProcessId;
+  }
+
+  public void setViewProcessId(UniqueId viewProcessId) {
+    _viewProcessId = viewProcessId;
+  }
+
+  @Override
+  public UniqueId getViewCycleId() {
+    return _viewCycleId;
+  }
+
+  public void setViewCycleId(UniqueId viewCycleId) {
+    _viewCycleId = viewCycleId;
+  }
+
+  @Override
+  public Instant getValuationTime() {
+    return _valuationTime;
+  }
+
+  public void setValuationTime(Instant valuationTime) {
+    _valuationTime = valuationTime;
+  }
+
+  @Override
+  public Instant getCalculationTime() {
+    return _calculationTime;
+  }
+
+  public void setCalculationTime(Instant calculationTime) {
+    _calculationTime = calculationTime;
+  }
+
+  @Override
+  public Duration getCalculationDuration() {
+    return _calculationDuration;
+  }
+
+  public void setCalculationDuration(Duration calculationDuration) {
+    _calculationDuration = calculationDuration;
+  }
+
+  @Override
+  public VersionCorrection getVersionCorrection() {
+    return _versionCorrection;
+  }
+
+  public void setVersionCorrection(VersionCorrection versionCorrection) {
+    _versionCorrection = versionCorrection;
+  }
+
+  public void addMarketData(ComputedValue marketData) {
+    _allMarketData.add(marketData);
+  }
+
+  @Override
+  public Set<ComputedValue> getAllMarketData() {
+    return Collections.unmodifiableSet(_allMarketData);
+  }
+
+  //-------------------------------------------------------------------------
+  public ViewComputationResultLayout getLayout() {
+    return _layout;
+  }
+
+  /**
+   * Adds a value to the result.
+   *
+   * @param calcConfigurationName  the calculation configuration name, not null
+   * @param value  the value, not null
+   * @throws IllegalArgumentException if the value is not in the layout
+   */
+  public void addValue(String calcConfigurationName, ComputedValue value) {
+    ArgumentChecker.notNull(value, "value");
+    final int calcConfiguration = getLayout().getCalculationConfigurationIndex(calcConfigurationName);
+    final int cell = (calcConfiguration >= 0) ? getLayout().getCellIndex(calcConfiguration, value.getSpecification()) : -1;
+    if (cell < 0) {
+      throw new IllegalArgumentException("Value " + value.getSpecification() + " for " + calcConfigurationName + " is not in the result layout");
+    }
+    setValue(cell, value.getValue());
+  }
+
+  /**
+   * Sets the value of a cell.
+   *
+   * @param cell  the cell index
+   * @param value  the value, not null
+   */
+  public void setValue(int cell, Object value) {
+    ArgumentChecker.notNull(value, "value");
+    if (value instanceof Double) {
+      setDouble(cell, (Double) value);
+    } else {
+      if (_objects == null) {
+        _objects = new Object[_doubles.length];
+      }
+      _objects[cell] = value;
+      _present[cell >>> 6] |= 1L << cell;
+    }
+  }
+
+  public void setDouble(int cell, double value) {
+    _doubles[cell] = value;
+    if (_objects != null) {
+      _objects[cell] = null;
+    }
+    _present[cell >>> 6] |= 1L << cell;
+  }
+
+  public boolean isPresent(int cell) {
+    return (_present[cell >>> 6] & (1L << cell)) != 0;
+  }
+
+  /**
+   * Tests whether a cell holds a double value.
+   *
+   * @param cell  the cell index
+   * @return true if the cell holds a value which {@link #getDouble} will return
+   */
+  public boolean isDouble(int cell) {
+    return isPresent(cell) && ((_objects == null) || (_objects[cell] == null));
+  }
+
+  public double getDouble(int cell) {
+    return _doubles[cell];
+  }
+
+  /**
+   * Gets the value of a cell.
+   *
+   * @param cell  the cell index
+   * @return the value, null if the cell holds no value
+   */
+  public Object getValue(int cell) {
+    if (!isPresent(cell)) {
+      return null;
+    }
+    if ((_objects != null) && (_objects[cell] != null)) {
+      return _objects[cell];
+    }
+    return _doubles[cell];
+  }
+
+  /**
+   * Gets the value of a cell with its specification.
+   *
+   * @param cell  the cell index
+   * @return the value, null if the cell holds no value
+   */
+  public ComputedValue getComputedValue(int cell) {
+    final Object value = getValue(cell);
+    if (value == null) {
+      return null;
+    }
+    return new ComputedValue(getLayout().getCell(cell), value);
+  }
+
+  /**
+   * Gets the bit set of the cells holding values. The returned array must not be modified.
+   *
+   * @return the bits, one for each cell in the low order bits first, not null
+   */
+  public long[] getPresentCells() {
+    return _present;
+  }
+
+  /**
+   * Gets the double values of the cells. Cells which are not present, or which hold other values, are undefined. The
+   * returned array must not be modified.
+   *
+   * @return the values, not null
+   */
+  public double[] getDoubleValues() {
+    return _doubles;
+  }
+
+  /**
+   * Gets the values of the cells which are not doubles. The returned array must not be modified.
+   *
+   * @return the values, null for cells not holding such a value, or null if there are none
+   */
+  public Object[] getObjectValues() {
+    return _objects;
+  }
+
+  /**
+   * Gets the next cell holding a value. The cells holding values can be visited with:
+   * <pre>
+   * for (int cell = result.nextPresentCell(start); (cell >= 0) && (cell < end); cell = result.nextPresentCell(cell + 1))
+   * </pre>
+   *
+   * @param cell  the cell index to start from
+   * @return the index of the first cell from {@code cell} onwards holding a value, -1 if there is none
+   */
+  public int nextPresentCell(int cell) {
+    int word = cell >>> 6;
+    if (word >= _present.length) {
+      return -1;
+    }
+    long bits = _present[word] & (-1L << cell);
+    while (bits == 0) {
+      if (++word == _present.length) {
+        return -1;
+      }
+      bits = _present[word];
+    }
+    return (word << 6) + Long.numberOfTrailingZeros(bits);
+  }
+
+  private boolean hasValues(int start, int end) {
+    final int cell = nextPresentCell(start);
+    return (cell >= 0) && (cell < end);
+  }
+
+  /**
+   * Tests whether a target is reported in the results of a calculation configuration, either because it is a
+   * required target or because it has values.
+   *
+   * @param calcConfiguration  the calculation configuration index
+   * @param target  the target index
+   * @return true if the target is reported
+   */
+  public boolean isReported(int calcConfiguration, int target) {
+    return getLayout().isRequiredTarget(target) || hasValues(getLayout().getCellStart(calcConfiguration, target), getLayout().getCellEnd(calcConfiguration, target));
+  }
+
+  /**
+   * Tests whether a target is reported in the results of any calculation configuration.
+   *
+   * @param target  the target index
+   * @return true if the target is reported
+   */
+  public boolean isReportedTarget(int target) {
+    if (getLayout().isRequiredTarget(target)) {
+      return true;
+    }
+    final int calcConfigurations = getLayout().getCalculationConfigurationNames().size();
+    for (int calcConfiguration = 0; calcConfiguration < calcConfigurations; calcConfiguration++) {
+      if (hasValues(getLayout().getCellStart(calcConfiguration, target), getLayout().getCellEnd(calcConfiguration, target))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the targets reported in a range of cells, in one pass over the cells holding values.
+   */
+  private List<ComputationTargetSpecification> getReportedTargets(int start, int end) {
+    final boolean[] hasValues = new boolean[getLayout().getTargetCount()];
+    for (int cell = nextPresentCell(start); (cell >= 0) && (cell < end); cell = nextPresentCell(cell + 1)) {
+      hasValues[getLayout().getCellTarget(cell)] = true;
+    }
+    final List<ComputationTargetSpecification> targets = new ArrayList<ComputationTargetSpecification>();
+    for (int target = 0; target < hasValues.length; target++) {
+      if (hasValues[target] || getLayout().isRequiredTarget(target)) {
+        targets.add(getLayout().getTarget(target));
+      }
+    }
+    return Collections.unmodifiableList(targets);
+  }
+
+  private List<ComputedValue> getComputedValues(int calcConfiguration, int target) {
+    final int end = getLayout().getCellEnd(calcConfiguration, target);
+    final List<ComputedValue> values = new ArrayList<ComputedValue>(end - getLayout().getCellStart(calcConfiguration, target));
+    for (int cell = nextPresentCell(getLayout().getCellStart(calcConfiguration, target)); (cell >= 0) && (cell < end); cell = nextPresentCell(cell + 1)) {
+      values.add(getComputedValue(cell));
+    }
+    return values;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public Collection<ComputationTargetSpecification> getAllTargets() {
+    return getReportedTargets(0, getLayout().getCellCount());
+  }
+
+  @Override
+  public Collection<String> getCalculationConfigurationNames() {
+    return getLayout().getCalculationConfigurationNames();
+  }
+
+  @Override
+  public ViewCalculationResultModel getCalculationResult(String calcConfigurationName) {
+    final int calcConfiguration = getLayout().getCalculationConfigurationIndex(calcConfigurationName);
+    if (calcConfiguration < 0) {
+      return null;
+    }
+    return new CalculationResult(calcConfiguration);
+  }
+
+  @Override
+  public ViewTargetResultModel getTargetResult(ComputationTargetSpecification targetSpecification) {
+    final int target = getLayout().getTargetIndex(targetSpecification);
+    if (target < 0) {
+      return null;
+    }
+    return isReportedTarget(target) ? new TargetResult(target) : null;
+  }
+
+  @Override
+  public List<ViewResultEntry> getAllResults() {
+    final List<ViewResultEntry> results = new ArrayList<ViewResultEntry>();
+    final int calcConfigurations = getLayout().getCalculationConfigurationNames().size();
+    for (int calcConfiguration = 0; calcConfiguration < calcConfigurations; calcConfiguration++) {
+      final String calcConfigurationName = getLayout().getCalculationConfigurationName(calcConfiguration);
+      final int end = getLayout().getCellEnd(calcConfiguration);
+      for (int cell = nextPresentCell(getLayout().getCellStart(calcConfiguration)); (cell >= 0) && (cell < end); cell = nextPresentCell(cell + 1)) {
+        results.add(new ViewResultEntry(calcConfigurationName, getComputedValue(cell)));
+      }
+    }
+    return Collections.unmodifiableList(results);
+  }
+
+  @Override
+  public Set<String> getAllOutputValueNames() {
+    final Set<String> outputValueNames = new HashSet<String>();
+    for (int cell = nextPresentCell(0); cell >= 0; cell = nextPresentCell(cell + 1)) {
+      outputValueNames.add(getLayout().getCell(cell).getValueName());
+    }
+    return outputValueNames;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The results of one calculation configuration.
+   */
+  private final class CalculationResult implements ViewCalculationResultModel, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int _calcConfiguration;
+
+    private CalculationResult(int calcConfiguration) {
+      _calcConfiguration = calcConfiguration;
+    }
+
+    @Override
+    public Collection<ComputationTargetSpecification> getAllTargets() {
+      return getReportedTargets(getLayout().getCellStart(_calcConfiguration), getLayout().getCellEnd(_calcConfiguration));
+    }
+
+    @Override
+    public Map<Pair<String, ValueProperties>, ComputedValue> getValues(ComputationTargetSpecification targetSpecification) {
+      final int target = getLayout().getTargetIndex(targetSpecification);
+      if ((target < 0) || !isReported(_calcConfiguration, target)) {
+        return null;
+      }
+      final Map<Pair<String, ValueProperties>, ComputedValue> values = new HashMap<Pair<String, ValueProperties>, ComputedValue>();
+      final int end = getLayout().getCellEnd(_calcConfiguration, target);
+      for (int cell = nextPresentCell(getLayout().getCellStart(_calcConfiguration, target)); (cell >= 0) && (cell < end); cell = nextPresentCell(cell + 1)) {
+        values.put(getLayout().getColumn(getLayout().getCellColumn(cell)), getComputedValue(cell));
+      }
+      return Collections.unmodifiableMap(values);
+    }
+
+    @Override
+    public Collection<ComputedValue> getAllValues(ComputationTargetSpecification targetSpecification) {
+      final int target = getLayout().getTargetIndex(targetSpecification);
+      if ((target < 0) || !isReported(_calcConfiguration, target)) {
+        return null;
+      }
+      return Collections.unmodifiableList(getComputedValues(_calcConfiguration, target));
+    }
+
+  }
+
+  /**
+   * The results for one target.
+   */
+  private final class TargetResult implements ViewTargetResultModel, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int _target;
+
+    private TargetResult(int target) {
+      _target = target;
+    }
+
+    @Override
+    public Collection<String> getCalculationConfigurationNames() {
+      final List<String> names = new ArrayList<String>();
+      final int calcConfigurations = getLayout().getCalculationConfigurationNames().size();
+      for (int calcConfiguration = 0; calcConfiguration < calcConfigurations; calcConfiguration++) {
+        if (isReported(calcConfiguration, _target)) {
+          names.add(getLayout().getCalculationConfigurationName(calcConfiguration));
+        }
+      }
+      return Collections.unmodifiableList(names);
+    }
+
+    @Override
+    public Collection<ComputedValue> getAllValues(String calcConfigurationName) {
+      final int calcConfiguration = getLayout().getCalculationConfigurationIndex(calcConfigurationName);
+      if ((calcConfiguration < 0) || !isReported(calcConfiguration, _target)) {
+        return null;
+      }
+      return Collections.unmodifiableList(getComputedValues(calcConfiguration, _target));
+    }
+
+  }
+
+}
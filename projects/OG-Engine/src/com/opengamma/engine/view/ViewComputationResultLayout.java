@@ -0,0 +1,339 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.GUIDGenerator;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * The fixed set of values which can appear in the results of a compiled view, for use by
+ * {@link ColumnarViewComputationResultModel}.
+ * <p>
+ * Each value is a cell identified by an integer. The cells are ordered by calculation configuration and then by
+ * target, so the cells of a configuration, or of a target within a configuration, form a contiguous range. Each
+ * target is a row and each distinct value name and properties pair is a column, so a cell can also be located
+ * in a grid by its row and column.
+ * <p>
+ * This class is immutable and thread-safe. A layout is shared by the results of every cycle executed using the
+ * same compiled view definition. Each layout has a unique identifier so that it need only be sent to a remote
+ * receiver once, with the results of each cycle referring to it by that identifier.
+ */
+public class ViewComputationResultLayout implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String _id;
+  private final String[] _calcConfigurationNames;
+  private final Map<String, Integer> _calcConfigurationIndices = new HashMap<String, Integer>();
+  private final ComputationTargetSpecification[] _targets;
+  private final Map<ComputationTargetSpecification, Integer> _targetIndices;
+  /**
+   * The number of targets, from the start of {@link #_targets}, which are always reported in the results even if they
+   * have no values.
+   */
+  private final int _requiredTargetCount;
+  private final List<Pair<String, ValueProperties>> _columns = new ArrayList<Pair<String, ValueProperties>>();
+  private final ValueSpecification[] _cells;
+  private final int[] _cellTargets;
+  private final int[] _cellColumns;
+  /**
+   * The first cell of each target in each configuration, with a final entry for the end of the configuration.
+   */
+  private final int[][] _targetCellStarts;
+  private final List<Map<ValueSpecification, Integer>> _cellIndices;
+
+  /**
+   * Creates a layout.
+   * <p>
+   * The cells of each target within a configuration are in the order given by the outputs. The targets are in the
+   * order given by the required targets, followed by any others in the order they first appear in the outputs.
+   *
+   * @param calcConfigurationNames  the names of the calculation configurations, not null
+   * @param requiredTargets  the targets always reported in the results, such as the nodes and positions of a
+   *                         portfolio, not null
+   * @param outputs  the values output by each calculation configuration, not null. A configuration without an entry
+   *                 has no values.
+   */
+  public ViewComputationResultLayout(Collection<String> calcConfigurationNames, Collection<ComputationTargetSpecification> requiredTargets,
+      Map<String, ? extends Collection<ValueSpecification>> outputs) {
+    this(GUIDGenerator.generate().toString(), calcConfigurationNames, requiredTargets, outputs);
+  }
+
+  /**
+   * Creates a layout with a given identifier, such as when rebuilding a layout received from elsewhere.
+   *
+   * @param id  the unique identifier of the layout, not null
+   * @param calcConfigurationNames  the names of the calculation configurations, not null
+   * @param requiredTargets  the targets always reported in the results, not null
+   * @param outputs  the values output by each calculation configuration, not null
+   */
+  public ViewComputationResultLayout(String id, Collection<String> calcConfigurationNames, Collection<ComputationTargetSpecification> requiredTargets,
+      Map<String, ? extends Collection<ValueSpecification>> outputs) {
+    ArgumentChecker.notNull(id, "id");
+    ArgumentChecker.notNull(calcConfigurationNames, "calcConfigurationNames");
+    ArgumentChecker.notNull(requiredTargets, "requiredTargets");
+    ArgumentChecker.notNull(outputs, "outputs");
+    _id = id;
+    _calcConfigurationNames = calcConfigurationNames.toArray(new String[calcConfigurationNames.size()]);
+    for (int i = 0; i < _calcConfigurationNames.length; i++) {
+      _calcConfigurationIndices.put(_calcConfigurationNames[i], i);
+    }
+    final Map<ComputationTargetSpecification, Integer> targetIndices = new LinkedHashMap<ComputationTargetSpecification, Integer>();
+    for (ComputationTargetSpecification target : requiredTargets) {
+      if (!targetIndices.containsKey(target)) {
+        targetIndices.put(target, targetIndices.size());
+      }
+    }
+    _requiredTargetCount = targetIndices.size();
+    int cellCount = 0;
+    for (String calcConfigurationName : _calcConfigurationNames) {
+      final Collection<ValueSpecification> values = outputs.get(calcConfigurationName);
+      if (values != null) {
+        for (ValueSpecification value : values) {
+          if (!targetIndices.containsKey(value.getTargetSpecification())) {
+            targetIndices.put(value.getTargetSpecification(), targetIndices.size());
+          }
+        }
+        cellCount += values.size();
+      }
+    }
+    _targets = targetIndices.keySet().toArray(new ComputationTargetSpecification[targetIndices.size()]);
+    _targetIndices = new HashMap<ComputationTargetSpecification, Integer>(targetIndices);
+    _cells = new ValueSpecification[cellCount];
+    _cellTargets = new int[cellCount];
+    _cellColumns = new int[cellCount];
+    _targetCellStarts = new int[_calcConfigurationNames.length][];
+    _cellIndices = new ArrayList<Map<ValueSpecification, Integer>>(_calcConfigurationNames.length);
+    int cell = 0;
+    for (int i = 0; i < _calcConfigurationNames.length; i++) {
+      final Collection<ValueSpecification> values = outputs.get(_calcConfigurationNames[i]);
+      final int[] targetCellStarts = new int[_targets.length + 1];
+      final Map<ValueSpecification, Integer> cellIndices = new HashMap<ValueSpecification, Integer>();
+      if (values != null) {
+        // Counting sort of the values by target, keeping the order of the values for each target
+        final int[] targetCellCounts = new int[_targets.length];
+        for (ValueSpecification value : values) {
+          targetCellCounts[_targetIndices.get(value.getTargetSpecification())]++;
+        }
+        final int[] nextCell = new int[_targets.length];
+        int start = cell;
+        for (int target = 0; target < _targets.length; target++) {
+          targetCellStarts[target] = start;
+          nextCell[target] = start;
+          start += targetCellCounts[target];
+        }
+        for (ValueSpecification value : values) {
+          final int target = _targetIndices.get(value.getTargetSpecification());
+          final int index = nextCell[target]++;
+          _cells[index] = value;
+          _cellTargets[index] = target;
+          cellIndices.put(value, index);
+        }
+        cell = start;
+      } else {
+        Arrays.fill(targetCellStarts, cell);
+      }
+      targetCellStarts[_targets.length] = cell;
+      _targetCellStarts[i] = targetCellStarts;
+      _cellIndices.add(cellIndices);
+    }
+    // Columns are numbered in cell order so that a layout rebuilt from its cells has the same columns
+    final Map<Pair<String, ValueProperties>, Integer> columnIndices = new HashMap<Pair<String, ValueProperties>, Integer>();
+    for (int i = 0; i < _cells.length; i++) {
+      final Pair<String, ValueProperties> columnKey = Pair.of(_cells[i].getValueName(), _cells[i].getProperties());
+      Integer column = columnIndices.get(columnKey);
+      if (column == null) {
+        column = _columns.size();
+        columnIndices.put(columnKey, column);
+        _columns.add(columnKey);
+      }
+      _cellColumns[i] = column;
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the unique identifier of the layout.
+   *
+   * @return the identifier, not null
+   */
+  public String getId() {
+    return _id;
+  }
+
+  public List<String> getCalculationConfigurationNames() {
+    return Collections.unmodifiableList(Arrays.asList(_calcConfigurationNames));
+  }
+
+  /**
+   * Gets the index of a calculation configuration.
+   *
+   * @param calcConfigurationName  the name of the calculation configuration
+   * @return the index, or -1 if the configuration is not in the layout
+   */
+  public int getCalculationConfigurationIndex(String calcConfigurationName) {
+    final Integer index = _calcConfigurationIndices.get(calcConfigurationName);
+    return (index != null) ? index : -1;
+  }
+
+  public String getCalculationConfigurationName(int calcConfigurationIndex) {
+    return _calcConfigurationNames[calcConfigurationIndex];
+  }
+
+  public int getTargetCount() {
+    return _targets.length;
+  }
+
+  public ComputationTargetSpecification getTarget(int target) {
+    return _targets[target];
+  }
+
+  /**
+   * Gets the index of a target, its row.
+   *
+   * @param target  the target specification
+   * @return the index, or -1 if the target is not in the layout
+   */
+  public int getTargetIndex(ComputationTargetSpecification target) {
+    final Integer index = _targetIndices.get(target);
+    return (index != null) ? index : -1;
+  }
+
+  /**
+   * Tests whether a target is always reported in the results, even if it has no values.
+   *
+   * @param target  the target index
+   * @return true if the target is always reported
+   */
+  public boolean isRequiredTarget(int target) {
+    return target < _requiredTargetCount;
+  }
+
+  /**
+   * Gets the targets always reported in the results, in the order they were given to the constructor.
+   *
+   * @return the required targets, not null
+   */
+  public List<ComputationTargetSpecification> getRequiredTargets() {
+    return Collections.unmodifiableList(Arrays.asList(_targets).subList(0, _requiredTargetCount));
+  }
+
+  public int getColumnCount() {
+    return _columns.size();
+  }
+
+  /**
+   * Gets the value name and properties of a column.
+   *
+   * @param column  the column index
+   * @return the value name and properties, not null
+   */
+  public Pair<String, ValueProperties> getColumn(int column) {
+    return _columns.get(column);
+  }
+
+  //-------------------------------------------------------------------------
+  public int getCellCount() {
+    return _cells.length;
+  }
+
+  public ValueSpecification getCell(int cell) {
+    return _cells[cell];
+  }
+
+  public int getCellTarget(int cell) {
+    return _cellTargets[cell];
+  }
+
+  public int getCellColumn(int cell) {
+    return _cellColumns[cell];
+  }
+
+  /**
+   * Gets the cell holding a value.
+   *
+   * @param calcConfigurationIndex  the calculation configuration index
+   * @param valueSpecification  the value specification
+   * @return the cell index, or -1 if the value is not in the layout
+   */
+  public int getCellIndex(int calcConfigurationIndex, ValueSpecification valueSpecification) {
+    final Integer index = _cellIndices.get(calcConfigurationIndex).get(valueSpecification);
+    return (index != null) ? index : -1;
+  }
+
+  /**
+   * Gets the first cell of a calculation configuration.
+   *
+   * @param calcConfigurationIndex  the calculation configuration index
+   * @return the first cell index
+   */
+  public int getCellStart(int calcConfigurationIndex) {
+    return _targetCellStarts[calcConfigurationIndex][0];
+  }
+
+  /**
+   * Gets the end of the cells of a calculation configuration.
+   *
+   * @param calcConfigurationIndex  the calculation configuration index
+   * @return one more than the last cell index
+   */
+  public int getCellEnd(int calcConfigurationIndex) {
+    return _targetCellStarts[calcConfigurationIndex][_targets.length];
+  }
+
+  /**
+   * Gets the first cell of a target within a calculation configuration.
+   *
+   * @param calcConfigurationIndex  the calculation configuration index
+   * @param target  the target index
+   * @return the first cell index
+   */
+  public int getCellStart(int calcConfigurationIndex, int target) {
+    return _targetCellStarts[calcConfigurationIndex][target];
+  }
+
+  /**
+   * Gets the end of the cells of a target within a calculation configuration.
+   *
+   * @param calcConfigurationIndex  the calculation configuration index
+   * @param target  the target index
+   * @return one more than the last cell index
+   */
+  public int getCellEnd(int calcConfigurationIndex, int target) {
+    return _targetCellStarts[calcConfigurationIndex][target + 1];
+  }
+
+  /**
+   * Gets the values of a calculation configuration, in cell order.
+   *
+   * @param calcConfigurationIndex  the calculation configuration index
+   * @return the value specifications, not null
+   */
+  public List<ValueSpecification> getCells(int calcConfigurationIndex) {
+    return Collections.unmodifiableList(Arrays.asList(_cells).subList(getCellStart(calcConfigurationIndex), getCellEnd(calcConfigurationIndex)));
+  }
+
+  @Override
+  public String toString() {
+    return "ViewComputationResultLayout[id=" + _id + ", calcConfigurations=" + _calcConfigurationNames.length + ", targets=" + _targets.length + ", columns=" + _columns.size()
+        + ", cells=" + _cells.length + "]";
+  }
+
+}
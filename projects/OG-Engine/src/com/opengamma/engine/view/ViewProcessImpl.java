@@ -6,6 +6,7 @@
 package com.opengamma.engine.view;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
@@ -22,6 +23,7 @@ import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.engine.marketdata.MarketDataInjector;
 import com.opengamma.engine.marketdata.permission.MarketDataPermissionProvider;
 import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.calc.EngineResourceManagerInternal;
 import com.opengamma.engine.view.calc.SingleComputationCycle;
 import com.opengamma.engine.view.calc.ViewComputationJob;
@@ -44,6 +46,11 @@ import com.opengamma.util.tuple.Pair;
 public class ViewProcessImpl implements ViewProcessInternal, Lifecycle {
 
   private static final Logger s_logger = LoggerFactory.getLogger(ViewProcess.class);
+
+  /**
+   * The number of recent deltas retained for listeners which have fallen behind. Only the latest full result is kept.
+   */
+  private static final int RESULT_HISTORY_SIZE = 32;
   
   private final UniqueId _viewProcessId;
   private final UniqueId _viewDefinitionId;
@@ -71,6 +78,7 @@ public class ViewProcessImpl implements ViewProcessInternal, Lifecycle {
   private final AtomicReference<Pair<CompiledViewDefinitionWithGraphsImpl, MarketDataPermissionProvider>> _latestCompiledViewDefinition =
       new AtomicReference<Pair<CompiledViewDefinitionWithGraphsImpl, MarketDataPermissionProvider>>();
   private final AtomicReference<ViewComputationResultModel> _latestResult = new AtomicReference<ViewComputationResultModel>();
+  private final ViewResultHistory _resultHistory = new ViewResultHistory(RESULT_HISTORY_SIZE);
 
   /**
    * Constructs an instance.
@@ -125,6 +133,16 @@ public class ViewProcessImpl implements ViewProcessInternal, Lifecycle {
   public ViewProcessState getState() {
     return _state;
   }
+
+  /**
+   * Gets the recent results of this process, from which listeners can obtain the changes since a result they have
+   * already seen without merging every delta themselves.
+   * 
+   * @return the result history, not null
+   */
+  public ViewResultHistory getResultHistory() {
+    return _resultHistory;
+  }
   
   @Override
   public void shutdown() {
@@ -257,7 +275,8 @@ public class ViewProcessImpl implements ViewProcessInternal, Lifecycle {
     ViewComputationResultModel previousResult = _latestResult.get();
     _latestResult.set(result);
     
-    ViewDeltaResultModel deltaResult = ViewDeltaResultCalculator.computeDeltaModel(cycle.getCompiledViewDefinition().getViewDefinition(), previousResult, result);
+    ViewDeltaResultModel deltaResult = computeDeltaModel(cycle, previousResult, result);
+    _resultHistory.add(cycle.getCompiledViewDefinition().getViewDefinition(), result, deltaResult);
     for (ViewResultListener listener : _listeners) {
       try {
         listener.cycleCompleted(result, deltaResult);
@@ -267,6 +286,20 @@ public class ViewProcessImpl implements ViewProcessInternal, Lifecycle {
     }
   }
   
+  private ViewDeltaResultModel computeDeltaModel(ViewCycle cycle, ViewComputationResultModel previousResult, ViewComputationResultModel result) {
+    ViewDefinition viewDefinition = cycle.getCompiledViewDefinition().getViewDefinition();
+    if (previousResult != null && cycle instanceof SingleComputationCycle) {
+      // If the cycle reused the values of the one which produced the previous result, only the values it recomputed
+      // need to be compared
+      SingleComputationCycle computationCycle = (SingleComputationCycle) cycle;
+      Map<String, Set<ValueSpecification>> recomputedValues = computationCycle.getRecomputedValues();
+      if (recomputedValues != null && previousResult.getViewCycleId().equals(computationCycle.getPreviousCycleId())) {
+        return ViewDeltaResultCalculator.computeDeltaModel(viewDefinition, previousResult, result, recomputedValues);
+      }
+    }
+    return ViewDeltaResultCalculator.computeDeltaModel(viewDefinition, previousResult, result);
+  }
+  
   public void cycleExecutionFailed(ViewCycleExecutionOptions executionOptions, Exception exception) {
     s_logger.error("Cycle execution failed for " + executionOptions + ": ", exception);
     for (ViewResultListener listener : _listeners) {
@@ -278,6 +278,7 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
       if (existingAttachment != null) {
         throw new IllegalStateException("View client " + client.getUniqueId() + " is already attached to view process " + existingAttachment.getFirst().getUniqueId());
       }
+      client.setResultHistory(process.getResultHistory());
       ViewPermissionProvider permissionProvider = process.attachListener(listener);
       _clientToProcess.put(client.getUniqueId(), processListenerPair);
       return permissionProvider;
@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.opengamma.engine.view.client.ViewDeltaResultCalculator;
+import com.opengamma.engine.view.client.merging.ViewDeltaResultModelMerger;
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * The recent results of a view process, shared by every listener attached to it.
+ * <p>
+ * Each result is given a version, starting at 1, and the deltas of the most recent results are kept in a ring. Only the
+ * latest full result is retained; a full result can be as large as the whole view, whereas a delta holds only the
+ * values which changed. A listener which has fallen behind, for example because its updates are rate-limited, can
+ * then ask for the changes between the version it last saw and a later one instead of merging every delta itself. The
+ * merged delta to the latest version is cached so that listeners which last saw the same version share a single
+ * instance.
+ * <p>
+ * This class is thread-safe. Results are added by the view process while listeners read concurrently.
+ */
+public class ViewResultHistory {
+
+  private final Entry[] _entries;
+  private long _latestVersion;
+  private ViewComputationResultModel _latestResult;
+  /**
+   * The merged deltas from a version to {@link #_latestVersion}, keyed by the earlier version.
+   */
+  private final Map<Long, ViewDeltaResultModel> _deltasToLatest = new HashMap<Long, ViewDeltaResultModel>();
+
+  /**
+   * Creates an empty history.
+   *
+   * @param capacity  the number of deltas to retain, at least 1
+   */
+  public ViewResultHistory(int capacity) {
+    ArgumentChecker.isTrue(capacity > 0, "capacity must be positive");
+    _entries = new Entry[capacity];
+  }
+
+  /**
+   * Adds the result of a cycle, making it the latest version.
+   *
+   * @param viewDefinition  the view definition to which the result applies, not null
+   * @param fullResult  the full result, not null
+   * @param deltaResult  the delta from the previous result, null if not known
+   * @return the version of the result
+   */
+  public synchronized long add(ViewDefinition viewDefinition, ViewComputationResultModel fullResult, ViewDeltaResultModel deltaResult) {
+    ArgumentChecker.notNull(viewDefinition, "viewDefinition");
+    ArgumentChecker.notNull(fullResult, "fullResult");
+    final long version = ++_latestVersion;
+    _entries[getIndex(version)] = new Entry(fullResult.getViewCycleId(), viewDefinition, deltaResult);
+    _latestResult = fullResult;
+    _deltasToLatest.clear();
+    return version;
+  }
+
+  /**
+   * Discards every result. Versions continue from the latest one.
+   */
+  public synchronized void clear() {
+    for (int i = 0; i < _entries.length; i++) {
+      _entries[i] = null;
+    }
+    _latestResult = null;
+    _deltasToLatest.clear();
+  }
+
+  /**
+   * Gets the latest version.
+   *
+   * @return the latest version, 0 if no results have been added
+   */
+  public synchronized long getLatestVersion() {
+    return _latestVersion;
+  }
+
+  /**
+   * Gets the latest full result.
+   *
+   * @return the latest full result, null if none
+   */
+  public synchronized ViewComputationResultModel getLatestResult() {
+    return _latestResult;
+  }
+
+  /**
+   * Gets a retained full result. Only the full result of the latest version is retained.
+   *
+   * @param version  the version
+   * @return the full result, null if the version is not the latest
+   */
+  public synchronized ViewComputationResultModel getResult(long version) {
+    return (version == _latestVersion) ? _latestResult : null;
+  }
+
+  /**
+   * Gets the version of the result produced by a cycle.
+   *
+   * @param viewCycleId  the unique identifier of the cycle, not null
+   * @return the version, or -1 if the result is no longer retained
+   */
+  public synchronized long getVersion(UniqueId viewCycleId) {
+    ArgumentChecker.notNull(viewCycleId, "viewCycleId");
+    for (long version = _latestVersion; version > Math.max(0, _latestVersion - _entries.length); version--) {
+      final Entry entry = getEntry(version);
+      if ((entry != null) && viewCycleId.equals(entry.getViewCycleId())) {
+        return version;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the changes between two versions.
+   * <p>
+   * The deltas of the intervening results are merged if they are all retained. Otherwise every value of the later
+   * result is included, which is a safe, if larger, delta, but is only possible if the later version is the latest.
+   *
+   * @param fromVersion  the version already seen, 0 for none
+   * @param toVersion  the later version, which must be retained
+   * @return the delta, null if there are no changes, the later version is not retained, or the intervening deltas are
+   *  not all retained and the later version is not the latest
+   */
+  public ViewDeltaResultModel getDelta(long fromVersion, long toVersion) {
+    return getDelta(fromVersion, toVersion, null);
+  }
+
+  /**
+   * Gets the changes between two versions.
+   * <p>
+   * The deltas of the intervening results are merged if they are all retained. Otherwise every value of the later
+   * result is included, which is a safe, if larger, delta. As only the latest full result is retained, a caller asking
+   * for the changes to an earlier version should supply the full result of that version for this case.
+   *
+   * @param fromVersion  the version already seen, 0 for none
+   * @param toVersion  the later version, which must be retained
+   * @param toResult  the full result of the later version, null to use the latest full result
+   * @return the delta, null if there are no changes, the later version is not retained, or the intervening deltas are
+   *  not all retained and no full result is available for the later version
+   */
+  public ViewDeltaResultModel getDelta(long fromVersion, long toVersion, ViewComputationResultModel toResult) {
+    ArgumentChecker.isTrue(fromVersion >= 0, "fromVersion must not be negative");
+    final Entry toEntry;
+    ViewComputationResultModel fullResult = toResult;
+    List<ViewDeltaResultModel> deltas = null;
+    final boolean latest;
+    synchronized (this) {
+      if (fromVersion >= toVersion) {
+        return null;
+      }
+      toEntry = getEntry(toVersion);
+      if (toEntry == null) {
+        return null;
+      }
+      latest = (toVersion == _latestVersion);
+      if ((fullResult == null) && latest) {
+        fullResult = _latestResult;
+      }
+      if (latest) {
+        final ViewDeltaResultModel cached = _deltasToLatest.get(fromVersion);
+        if (cached != null) {
+          return cached;
+        }
+      }
+      if (fromVersion == toVersion - 1 && toEntry.getDeltaResult() != null) {
+        return toEntry.getDeltaResult();
+      }
+      if (fromVersion >= toVersion - _entries.length) {
+        deltas = new ArrayList<ViewDeltaResultModel>((int) (toVersion - fromVersion));
+        for (long version = fromVersion + 1; version <= toVersion; version++) {
+          final Entry entry = getEntry(version);
+          if ((entry == null) || (entry.getDeltaResult() == null)) {
+            deltas = null;
+            break;
+          }
+          deltas.add(entry.getDeltaResult());
+        }
+      }
+      if ((deltas == null) && (fullResult == null)) {
+        return null;
+      }
+    }
+    // Merge outside of the lock so that new results can be added meanwhile
+    final ViewDeltaResultModel delta;
+    if (deltas != null) {
+      final ViewDeltaResultModelMerger merger = new ViewDeltaResultModelMerger();
+      for (ViewDeltaResultModel intermediate : deltas) {
+        merger.merge(intermediate);
+      }
+      delta = merger.getLatestResult();
+    } else {
+      delta = ViewDeltaResultCalculator.computeDeltaModel(toEntry.getViewDefinition(), null, fullResult);
+    }
+    if (latest) {
+      synchronized (this) {
+        if (toVersion == _latestVersion) {
+          final ViewDeltaResultModel cached = _deltasToLatest.get(fromVersion);
+          if (cached != null) {
+            return cached;
+          }
+          _deltasToLatest.put(fromVersion, delta);
+        }
+      }
+    }
+    return delta;
+  }
+
+  //-------------------------------------------------------------------------
+  private int getIndex(long version) {
+    return (int) (version % _entries.length);
+  }
+
+  private Entry getEntry(long version) {
+    if ((version <= 0) || (version > _latestVersion) || (version <= _latestVersion - _entries.length)) {
+      return null;
+    }
+    return _entries[getIndex(version)];
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ViewResultHistory[capacity=" + _entries.length + ", latestVersion=" + _latestVersion + "]";
+  }
+
+  //-------------------------------------------------------------------------
+  private static final class Entry {
+
+    private final UniqueId _viewCycleId;
+    private final ViewDefinition _viewDefinition;
+    private final ViewDeltaResultModel _deltaResult;
+
+    private Entry(UniqueId viewCycleId, ViewDefinition viewDefinition, ViewDeltaResultModel deltaResult) {
+      _viewCycleId = viewCycleId;
+      _viewDefinition = viewDefinition;
+      _deltaResult = deltaResult;
+    }
+
+    public UniqueId getViewCycleId() {
+      return _viewCycleId;
+    }
+
+    public ViewDefinition getViewDefinition() {
+      return _viewDefinition;
+    }
+
+    public ViewDeltaResultModel getDeltaResult() {
+      return _deltaResult;
+    }
+
+  }
+
+}
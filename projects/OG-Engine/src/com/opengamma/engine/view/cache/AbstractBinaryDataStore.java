@@ -5,22 +5,25 @@
  */
 package com.opengamma.engine.view.cache;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 
 /**
  * Partial implementation of {@link BinaryDataStore}.
  */
 public abstract class AbstractBinaryDataStore implements BinaryDataStore {
 
-  public Map<Long, byte[]> get(final Collection<Long> identifiers) {
+  public Long2ObjectMap<byte[]> get(final LongCollection identifiers) {
     return get(this, identifiers);
   }
 
-  public static Map<Long, byte[]> get(final BinaryDataStore dataStore, final Collection<Long> identifiers) {
-    final Map<Long, byte[]> result = new HashMap<Long, byte[]>();
-    for (Long identifier : identifiers) {
+  public static Long2ObjectMap<byte[]> get(final BinaryDataStore dataStore, final LongCollection identifiers) {
+    final Long2ObjectMap<byte[]> result = new Long2ObjectOpenHashMap<byte[]>(identifiers.size());
+    final LongIterator itr = identifiers.iterator();
+    while (itr.hasNext()) {
+      final long identifier = itr.nextLong();
       final byte[] data = dataStore.get(identifier);
       if (data != null) {
         result.put(identifier, data);
@@ -29,13 +32,16 @@ public abstract class AbstractBinaryDataStore implements BinaryDataStore {
     return result;
   }
 
-  public void put(final Map<Long, byte[]> data) {
+  public void put(final Long2ObjectMap<byte[]> data) {
     put(this, data);
   }
 
-  public static void put(final BinaryDataStore dataStore, final Map<Long, byte[]> data) {
-    for (Map.Entry<Long, byte[]> pair : data.entrySet()) {
-      dataStore.put(pair.getKey(), pair.getValue());
+  public static void put(final BinaryDataStore dataStore, final Long2ObjectMap<byte[]> data) {
+    // Iterate the keys rather than the entry set to avoid creating an entry object for each value
+    final LongIterator itr = data.keySet().iterator();
+    while (itr.hasNext()) {
+      final long identifier = itr.nextLong();
+      dataStore.put(identifier, data.get(identifier));
     }
   }
 
@@ -5,8 +5,8 @@
  */
 package com.opengamma.engine.view.cache;
 
-import java.util.Collection;
-import java.util.Map;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -89,12 +89,12 @@ public class BerkeleyDBBinaryDataStore extends AbstractBerkeleyDBComponent imple
   }
 
   @Override
-  public Map<Long, byte[]> get(final Collection<Long> identifiers) {
+  public Long2ObjectMap<byte[]> get(final LongCollection identifiers) {
     return AbstractBinaryDataStore.get(this, identifiers);
   }
 
   @Override
-  public void put(final Map<Long, byte[]> data) {
+  public void put(final Long2ObjectMap<byte[]> data) {
     AbstractBinaryDataStore.put(this, data);
   }
 
@@ -5,8 +5,8 @@
  */
 package com.opengamma.engine.view.cache;
 
-import java.util.Collection;
-import java.util.Map;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 
 import com.opengamma.engine.value.ValueSpecification;
 
@@ -32,7 +32,7 @@ public interface BinaryDataStore {
    * @param identifiers identifiers to query
    * @return map of results. If there is no data for an identifier it will be missing from the map. 
    */
-  Map<Long, byte[]> get(Collection<Long> identifiers);
+  Long2ObjectMap<byte[]> get(LongCollection identifiers);
 
   /**
    * Provide data for the given identifier for this store.
@@ -47,7 +47,7 @@ public interface BinaryDataStore {
    * 
    * @param data map of identifier to data values to store
    */
-  void put(Map<Long, byte[]> data);
+  void put(Long2ObjectMap<byte[]> data);
 
   /**
    * Remove any underlying resources, and free all memory, relating
@@ -6,7 +6,8 @@
 
 package com.opengamma.engine.view.cache;
 
-import java.util.ArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -61,12 +62,7 @@ public final class CacheSelectHint {
    */
   public void convertSpecifications(final IdentifierMap identifierMap) {
     if (_valueIdentifiers == null) {
-      final Collection<Long> identifiers = identifierMap.getIdentifiers(_valueSpecifications).values();
-      _valueIdentifiers = new long[identifiers.size()];
-      int i = 0;
-      for (Long identifier : identifiers) {
-        _valueIdentifiers[i++] = identifier;
-      }
+      _valueIdentifiers = identifierMap.getIdentifiers(_valueSpecifications).values().toLongArray();
     }
   }
 
@@ -77,11 +73,7 @@ public final class CacheSelectHint {
    */
   public void resolveSpecifications(final IdentifierMap identifierMap) {
     if (_valueSpecifications.isEmpty()) {
-      final Collection<Long> identifiers = new ArrayList<Long>(_valueIdentifiers.length);
-      for (long identifier : _valueIdentifiers) {
-        identifiers.add(identifier);
-      }
-      _valueSpecifications.addAll(identifierMap.getValueSpecifications(identifiers).values());
+      _valueSpecifications.addAll(identifierMap.getValueSpecifications(LongArrayList.wrap(_valueIdentifiers)).values());
     }
   }
 
@@ -5,10 +5,17 @@
  */
 package com.opengamma.engine.view.cache;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
@@ -59,16 +66,16 @@ public class CachingIdentifierMap implements IdentifierMap {
   }
 
   @Override
-  public Map<ValueSpecification, Long> getIdentifiers(Collection<ValueSpecification> specs) {
-    final Map<ValueSpecification, Long> identifiers = new HashMap<ValueSpecification, Long>();
+  public Object2LongMap<ValueSpecification> getIdentifiers(Collection<ValueSpecification> specs) {
+    final Object2LongMap<ValueSpecification> identifiers = new Object2LongOpenHashMap<ValueSpecification>(specs.size());
     List<ValueSpecification> cacheMisses = null;
     for (ValueSpecification spec : specs) {
       final Long value = _specificationToIdentifier.get(spec);
       if (value != null) {
-        identifiers.put(spec, value);
+        identifiers.put(spec, value.longValue());
       } else {
         if (cacheMisses == null) {
-          cacheMisses = new LinkedList<ValueSpecification>();
+          cacheMisses = new ArrayList<ValueSpecification>();
         }
         cacheMisses.add(spec);
       }
@@ -81,12 +88,13 @@ public class CachingIdentifierMap implements IdentifierMap {
         _identifierToSpecification.put(value, spec);
         identifiers.put(spec, value);
       } else {
-        final Map<ValueSpecification, Long> values = getUnderlying().getIdentifiers(cacheMisses);
-        for (Map.Entry<ValueSpecification, Long> value : values.entrySet()) {
-          _specificationToIdentifier.put(value.getKey(), value.getValue());
-          _identifierToSpecification.put(value.getValue(), value.getKey());
+        final Object2LongMap<ValueSpecification> values = getUnderlying().getIdentifiers(cacheMisses);
+        for (ValueSpecification spec : cacheMisses) {
+          final long value = values.getLong(spec);
+          _specificationToIdentifier.put(spec, value);
+          _identifierToSpecification.put(value, spec);
+          identifiers.put(spec, value);
         }
-        identifiers.putAll(values);
       }
     }
     return identifiers;
@@ -105,34 +113,39 @@ public class CachingIdentifierMap implements IdentifierMap {
   }
 
   @Override
-  public Map<Long, ValueSpecification> getValueSpecifications(Collection<Long> identifiers) {
-    final Map<Long, ValueSpecification> specifications = new HashMap<Long, ValueSpecification>();
-    List<Long> cacheMisses = null;
-    for (Long identifier : identifiers) {
+  public Long2ObjectMap<ValueSpecification> getValueSpecifications(LongCollection identifiers) {
+    final Long2ObjectMap<ValueSpecification> specifications = new Long2ObjectOpenHashMap<ValueSpecification>(identifiers.size());
+    LongArrayList cacheMisses = null;
+    final LongIterator itr = identifiers.iterator();
+    while (itr.hasNext()) {
+      final long identifier = itr.nextLong();
       final ValueSpecification specification = _identifierToSpecification.get(identifier);
       if (specification != null) {
         specifications.put(identifier, specification);
       } else {
         if (cacheMisses == null) {
-          cacheMisses = new LinkedList<Long>();
+          cacheMisses = new LongArrayList();
         }
         cacheMisses.add(identifier);
       }
     }
     if (cacheMisses != null) {
       if (cacheMisses.size() == 1) {
-        final Long identifier = cacheMisses.get(0);
+        final long identifier = cacheMisses.getLong(0);
         final ValueSpecification specification = getUnderlying().getValueSpecification(identifier);
         _specificationToIdentifier.put(specification, identifier);
         _identifierToSpecification.put(identifier, specification);
         specifications.put(identifier, specification);
       } else {
-        final Map<Long, ValueSpecification> values = getUnderlying().getValueSpecifications(cacheMisses);
-        for (Map.Entry<Long, ValueSpecification> value : values.entrySet()) {
-          _specificationToIdentifier.put(value.getValue(), value.getKey());
-          _identifierToSpecification.put(value.getKey(), value.getValue());
+        final Long2ObjectMap<ValueSpecification> values = getUnderlying().getValueSpecifications(cacheMisses);
+        final LongIterator missItr = cacheMisses.iterator();
+        while (missItr.hasNext()) {
+          final long identifier = missItr.nextLong();
+          final ValueSpecification specification = values.get(identifier);
+          _specificationToIdentifier.put(specification, identifier);
+          _identifierToSpecification.put(identifier, specification);
+          specifications.put(identifier, specification);
         }
-        specifications.putAll(values);
       }
     }
     return specifications;
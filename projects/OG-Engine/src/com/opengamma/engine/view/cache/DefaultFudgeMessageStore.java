@@ -5,10 +5,12 @@
  */
 package com.opengamma.engine.view.cache;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+
 import java.io.ByteArrayOutputStream;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
@@ -53,11 +55,13 @@ public class DefaultFudgeMessageStore implements FudgeMessageStore {
   }
 
   @Override
-  public Map<Long, FudgeMsg> get(Collection<Long> identifiers) {
-    final Map<Long, byte[]> dataValues = getBinaryData().get(identifiers);
-    final Map<Long, FudgeMsg> resultValues = new HashMap<Long, FudgeMsg>();
-    for (Map.Entry<Long, byte[]> data : dataValues.entrySet()) {
-      resultValues.put(data.getKey(), new EncodedFudgeMsg(data.getValue(), getFudgeContext()));
+  public Long2ObjectMap<FudgeMsg> get(LongCollection identifiers) {
+    final Long2ObjectMap<byte[]> dataValues = getBinaryData().get(identifiers);
+    final Long2ObjectMap<FudgeMsg> resultValues = new Long2ObjectOpenHashMap<FudgeMsg>(dataValues.size());
+    final LongIterator itr = dataValues.keySet().iterator();
+    while (itr.hasNext()) {
+      final long identifier = itr.nextLong();
+      resultValues.put(identifier, new EncodedFudgeMsg(dataValues.get(identifier), getFudgeContext()));
     }
     return resultValues;
   }
@@ -77,14 +81,17 @@ public class DefaultFudgeMessageStore implements FudgeMessageStore {
   }
 
   @Override
-  public void put(Map<Long, FudgeMsg> dataMessages) {
-    final Map<Long, byte[]> dataBytes = new HashMap<Long, byte[]>();
+  public void put(Long2ObjectMap<FudgeMsg> dataMessages) {
+    final Long2ObjectMap<byte[]> dataBytes = new Long2ObjectOpenHashMap<byte[]>(dataMessages.size());
     ByteArrayOutputStream baos = null;
     FudgeDataOutputStreamWriter writer = null;
-    for (Map.Entry<Long, FudgeMsg> dataMessage : dataMessages.entrySet()) {
+    final LongIterator itr = dataMessages.keySet().iterator();
+    while (itr.hasNext()) {
+      final long identifier = itr.nextLong();
+      final FudgeMsg dataMessage = dataMessages.get(identifier);
       final byte[] data;
-      if (dataMessage.getValue() instanceof FudgeEncoded) {
-        data = ((FudgeEncoded) dataMessage.getValue()).getFudgeEncoded();
+      if (dataMessage instanceof FudgeEncoded) {
+        data = ((FudgeEncoded) dataMessage).getFudgeEncoded();
       } else {
         if (baos == null) {
           baos = new ByteArrayOutputStream();
@@ -92,10 +99,10 @@ public class DefaultFudgeMessageStore implements FudgeMessageStore {
         } else {
           baos.reset();
         }
-        writer.writeFields(dataMessage.getValue());
+        writer.writeFields(dataMessage);
         data = baos.toByteArray();
       }
-      dataBytes.put(dataMessage.getKey(), data);
+      dataBytes.put(identifier, data);
     }
     getBinaryData().put(dataBytes);
   }
@@ -5,12 +5,22 @@
  */
 package com.opengamma.engine.view.cache;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeFieldType;
@@ -22,6 +32,7 @@ import org.fudgemsg.wire.FudgeSize;
 import org.fudgemsg.wire.types.FudgeWireType;
 
 import com.google.common.collect.Lists;
+import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.util.ArgumentChecker;
@@ -41,7 +52,7 @@ public class DefaultViewComputationCache implements ViewComputationCache,
 
     FudgeMsg findMissingValue(long identifier);
 
-    Map<Long, FudgeMsg> findMissingValues(Collection<Long> identifiers);
+    Long2ObjectMap<FudgeMsg> findMissingValues(LongCollection identifiers);
 
   };
 
@@ -53,6 +64,7 @@ public class DefaultViewComputationCache implements ViewComputationCache,
   private final FudgeContext _fudgeContext;
 
   private MissingValueLoader _missingValueLoader;
+  private Executor _overlapExecutor;
 
   /**
    * The size of recent values that have gone into or come out of this cache.
@@ -122,6 +134,51 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     return _missingValueLoader;
   }
 
+  /**
+   * Sets the executor used to overlap operations on the shared data store with those on the private data store.
+   * If not set, operations on the two stores happen sequentially.
+   * 
+   * @param overlapExecutor the executor, or null for none
+   */
+  public void setOverlapExecutor(final Executor overlapExecutor) {
+    _overlapExecutor = overlapExecutor;
+  }
+
+  public Executor getOverlapExecutor() {
+    return _overlapExecutor;
+  }
+
+  /**
+   * Starts an operation on the shared data store using the overlap executor, if there is one.
+   * 
+   * @param <T> the result type
+   * @param operation the operation
+   * @return the pending operation or null if there is no executor and the caller must perform it
+   */
+  private <T> FutureTask<T> startSharedOperation(final Callable<T> operation) {
+    final Executor executor = getOverlapExecutor();
+    if (executor == null) {
+      return null;
+    }
+    final FutureTask<T> task = new FutureTask<T>(operation);
+    executor.execute(task);
+    return task;
+  }
+
+  private static <T> T waitForSharedOperation(final FutureTask<T> task) {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.interrupted();
+      throw new OpenGammaRuntimeException("Interrupted waiting for shared data store", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new OpenGammaRuntimeException("Error from shared data store", e.getCause());
+    }
+  }
+
   /**
    * Gets the identifierSource field.
    * @return the identifierSource
@@ -189,62 +246,67 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     return obj;
   }
 
+  /**
+   * Deserializes the values found for a batch of identifiers. Any that were not found are moved to the front
+   * of the specification and identifier arrays, and the identifier list truncated, so that they can be passed
+   * to the next source.
+   * 
+   * @param rawValues the values found
+   * @param specifications the specifications, aligned with the identifiers
+   * @param identifiers the identifiers requested
+   * @param deserializer the deserializer to use
+   * @param returnValues the collection to add the deserialized values to
+   * @return the number of identifiers still unresolved
+   */
+  private int resolveValues(final Long2ObjectMap<FudgeMsg> rawValues, final ValueSpecification[] specifications, final LongArrayList identifiers,
+      final FudgeDeserializer deserializer, final Collection<Pair<ValueSpecification, Object>> returnValues) {
+    final long[] identifierArray = identifiers.elements();
+    final int count = identifiers.size();
+    int unresolved = 0;
+    for (int i = 0; i < count; i++) {
+      final FudgeMsg data = rawValues.get(identifierArray[i]);
+      if (data != null) {
+        final Object value = deserializeValue(deserializer, data);
+        cacheValueSize(specifications[i], data, value);
+        returnValues.add(Pair.of(specifications[i], value));
+      } else {
+        specifications[unresolved] = specifications[i];
+        identifierArray[unresolved++] = identifierArray[i];
+      }
+    }
+    identifiers.size(unresolved);
+    return unresolved;
+  }
+
   @Override
   public Collection<Pair<ValueSpecification, Object>> getValues(final Collection<ValueSpecification> specifications) {
     ArgumentChecker.notNull(specifications, "specifications");
-    final Map<ValueSpecification, Long> identifiers = getIdentifierMap().getIdentifiers(specifications);
+    final Object2LongMap<ValueSpecification> identifiers = getIdentifierMap().getIdentifiers(specifications);
     final Collection<Pair<ValueSpecification, Object>> returnValues = new ArrayList<Pair<ValueSpecification, Object>>(specifications.size());
-    final Collection<Long> identifierValues = identifiers.values();
+    final ValueSpecification[] specificationArray = new ValueSpecification[identifiers.size()];
+    final LongArrayList identifierValues = new LongArrayList(identifiers.size());
+    for (ValueSpecification specification : identifiers.keySet()) {
+      specificationArray[identifierValues.size()] = specification;
+      identifierValues.add(identifiers.getLong(specification));
+    }
     final FudgeDeserializer deserializer = new FudgeDeserializer(getFudgeContext());
-    Map<Long, FudgeMsg> rawValues = getPrivateDataStore().get(identifierValues);
+    Long2ObjectMap<FudgeMsg> rawValues = getPrivateDataStore().get(identifierValues);
     if (!rawValues.isEmpty()) {
-      final Iterator<Map.Entry<ValueSpecification, Long>> identifierIterator = identifiers.entrySet().iterator();
-      while (identifierIterator.hasNext()) {
-        final Map.Entry<ValueSpecification, Long> identifier = identifierIterator.next();
-        final FudgeMsg data = rawValues.get(identifier.getValue());
-        if (data != null) {
-          Object value = deserializeValue(deserializer, data);
-          cacheValueSize(identifier.getKey(), data, value);
-          returnValues.add(Pair.of(identifier.getKey(), value));
-          identifierIterator.remove();
-        }
-      }
-      if (identifiers.isEmpty()) {
+      if (resolveValues(rawValues, specificationArray, identifierValues, deserializer, returnValues) == 0) {
         return returnValues;
       }
     }
     rawValues = getSharedDataStore().get(identifierValues);
     if (!rawValues.isEmpty()) {
-      final Iterator<Map.Entry<ValueSpecification, Long>> identifierIterator = identifiers.entrySet().iterator();
-      while (identifierIterator.hasNext()) {
-        final Map.Entry<ValueSpecification, Long> identifier = identifierIterator.next();
-        final FudgeMsg data = rawValues.get(identifier.getValue());
-        if (data != null) {
-          Object value = deserializeValue(deserializer, data);
-          cacheValueSize(identifier.getKey(), data, value);
-          returnValues.add(Pair.of(identifier.getKey(), value));
-          identifierIterator.remove();
-        }
-      }
-      if (identifiers.isEmpty()) {
+      if (resolveValues(rawValues, specificationArray, identifierValues, deserializer, returnValues) == 0) {
         return returnValues;
       }
     }
     final MissingValueLoader loader = getMissingValueLoader();
     if (loader != null) {
-      rawValues = loader.findMissingValues(identifierValues);
-      if (!rawValues.isEmpty()) {
-        final Iterator<Map.Entry<ValueSpecification, Long>> identifierIterator = identifiers.entrySet().iterator();
-        while (identifierIterator.hasNext()) {
-          final Map.Entry<ValueSpecification, Long> identifier = identifierIterator.next();
-          final FudgeMsg data = rawValues.get(identifier.getValue());
-          if (data != null) {
-            Object value = deserializeValue(deserializer, data);
-            cacheValueSize(identifier.getKey(), data, value);
-            returnValues.add(Pair.of(identifier.getKey(), value));
-            identifierIterator.remove();
-          }
-        }
+      final Long2ObjectMap<FudgeMsg> missingValues = loader.findMissingValues(identifierValues);
+      if (!missingValues.isEmpty()) {
+        resolveValues(missingValues, specificationArray, identifierValues, deserializer, returnValues);
       }
     }
     return returnValues;
@@ -253,55 +315,74 @@ public class DefaultViewComputationCache implements ViewComputationCache,
   @Override
   public Collection<Pair<ValueSpecification, Object>> getValues(final Collection<ValueSpecification> specifications, final CacheSelectHint filter) {
     ArgumentChecker.notNull(specifications, "specifications");
-    final Map<ValueSpecification, Long> identifiers = getIdentifierMap().getIdentifiers(specifications);
+    final Object2LongMap<ValueSpecification> identifiers = getIdentifierMap().getIdentifiers(specifications);
     final Collection<Pair<ValueSpecification, Object>> returnValues = new ArrayList<Pair<ValueSpecification, Object>>(specifications.size());
-    List<Long> privateIdentifiers = null;
-    List<Long> sharedIdentifiers = null;
+    LongArrayList privateIdentifiers = null;
+    LongArrayList sharedIdentifiers = null;
     for (ValueSpecification specification : specifications) {
       if (filter.isPrivateValue(specification)) {
         if (privateIdentifiers == null) {
-          privateIdentifiers = new ArrayList<Long>(specifications.size());
+          privateIdentifiers = new LongArrayList(specifications.size());
         }
-        privateIdentifiers.add(identifiers.get(specification));
+        privateIdentifiers.add(identifiers.getLong(specification));
       } else {
         if (sharedIdentifiers == null) {
-          sharedIdentifiers = new ArrayList<Long>(specifications.size());
+          sharedIdentifiers = new LongArrayList(specifications.size());
         }
-        sharedIdentifiers.add(identifiers.get(specification));
+        sharedIdentifiers.add(identifiers.getLong(specification));
       }
     }
-    final Map<Long, FudgeMsg> rawValues = new HashMap<Long, FudgeMsg>();
-    // TODO Can we overlay the fetch of shared and private data?
-    if (sharedIdentifiers != null) {
-      if (sharedIdentifiers.size() == 1) {
-        final FudgeMsg data = getSharedDataStore().get(sharedIdentifiers.get(0));
-        rawValues.put(sharedIdentifiers.get(0), data);
-      } else {
-        rawValues.putAll(getSharedDataStore().get(sharedIdentifiers));
+    Long2ObjectMap<FudgeMsg> privateValues = null;
+    Long2ObjectMap<FudgeMsg> sharedValues = null;
+    if ((sharedIdentifiers != null) && (privateIdentifiers != null)) {
+      // Overlay the fetch of shared and private data
+      final LongArrayList sharedIdentifierValues = sharedIdentifiers;
+      final FutureTask<Long2ObjectMap<FudgeMsg>> sharedFetch = startSharedOperation(new Callable<Long2ObjectMap<FudgeMsg>>() {
+        @Override
+        public Long2ObjectMap<FudgeMsg> call() {
+          return getSharedDataStore().get(sharedIdentifierValues);
+        }
+      });
+      if (sharedFetch != null) {
+        privateValues = getPrivateDataStore().get(privateIdentifiers);
+        sharedValues = waitForSharedOperation(sharedFetch);
+        sharedIdentifiers = null;
+        privateIdentifiers = null;
       }
     }
+    if (sharedIdentifiers != null) {
+      sharedValues = getValues(getSharedDataStore(), sharedIdentifiers);
+    }
     if (privateIdentifiers != null) {
-      if (privateIdentifiers.size() == 1) {
-        final FudgeMsg data = getPrivateDataStore().get(privateIdentifiers.get(0));
-        rawValues.put(privateIdentifiers.get(0), data);
-      } else {
-        rawValues.putAll(getPrivateDataStore().get(privateIdentifiers));
-      }
+      privateValues = getValues(getPrivateDataStore(), privateIdentifiers);
     }
     final FudgeDeserializer deserializer = new FudgeDeserializer(getFudgeContext());
-    for (Map.Entry<ValueSpecification, Long> identifier : identifiers.entrySet()) {
-      final FudgeMsg data = rawValues.get(identifier.getValue());
+    for (ValueSpecification specification : identifiers.keySet()) {
+      final long identifier = identifiers.getLong(specification);
+      FudgeMsg data = (privateValues != null) ? privateValues.get(identifier) : null;
+      if ((data == null) && (sharedValues != null)) {
+        data = sharedValues.get(identifier);
+      }
       if (data != null) {
         Object value = deserializeValue(deserializer, data);
-        cacheValueSize(identifier.getKey(), data, value);
-        returnValues.add(Pair.of(identifier.getKey(), value));
+        cacheValueSize(specification, data, value);
+        returnValues.add(Pair.of(specification, value));
       } else {
-        returnValues.add(Pair.of(identifier.getKey(), null));
+        returnValues.add(Pair.of(specification, null));
       }
     }
     return returnValues;
   }
 
+  private static Long2ObjectMap<FudgeMsg> getValues(final FudgeMessageStore dataStore, final LongArrayList identifiers) {
+    if (identifiers.size() == 1) {
+      final long identifier = identifiers.getLong(0);
+      return Long2ObjectMaps.singleton(identifier, dataStore.get(identifier));
+    } else {
+      return dataStore.get(identifiers);
+    }
+  }
+
   protected void putValue(final ComputedValue value, final FudgeMessageStore dataStore) {
     ArgumentChecker.notNull(value, "value");
     final long identifier = getIdentifierMap().getIdentifier(value.getSpecification());
@@ -333,14 +414,14 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     for (ComputedValue value : values) {
       specifications.add(value.getSpecification());
     }
-    final Map<ValueSpecification, Long> identifiers = getIdentifierMap().getIdentifiers(specifications);
-    final Map<Long, FudgeMsg> data = new HashMap<Long, FudgeMsg>();
+    final Object2LongMap<ValueSpecification> identifiers = getIdentifierMap().getIdentifiers(specifications);
+    final Long2ObjectMap<FudgeMsg> data = new Long2ObjectOpenHashMap<FudgeMsg>(values.size());
     final FudgeSerializer serializer = new FudgeSerializer(getFudgeContext());
     for (ComputedValue value : values) {
       Object obj = value.getValue();
       final FudgeMsg valueData = serializeValue(serializer, obj);
       cacheValueSize(value.getSpecification(), valueData, value.getValue());
-      data.put(identifiers.get(value.getSpecification()), valueData);
+      data.put(identifiers.getLong(value.getSpecification()), valueData);
     }
     dataStore.put(data);
   }
@@ -355,6 +436,83 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     putValues(values, getSharedDataStore());
   }
 
+  /**
+   * Layers the shared data store of this cache on that of an earlier cache, so that values this cache does not hold
+   * are read from the earlier one rather than copied into this one. The earlier cache must use the same identifier
+   * map. Only caches created by the same {@link DefaultViewComputationCacheSource} can be layered.
+   *
+   * @param previous the cache to read through to, not null
+   * @param shadowed the values which will be written to this cache, and so must not be read from the earlier one,
+   *  not null
+   * @return true if the caches were layered, false if they cannot be and the values must be copied instead
+   */
+  public boolean overlaySharedValues(final DefaultViewComputationCache previous, final Collection<ValueSpecification> shadowed) {
+    ArgumentChecker.notNull(previous, "previous");
+    ArgumentChecker.notNull(shadowed, "shadowed");
+    if ((previous.getIdentifierMap() != getIdentifierMap()) || !(getSharedDataStore() instanceof OverlayFudgeMessageStore)
+        || !(previous.getSharedDataStore() instanceof OverlayFudgeMessageStore)) {
+      return false;
+    }
+    final LongArrayList identifiers = new LongArrayList(getIdentifierMap().getIdentifiers(shadowed).values());
+    return ((OverlayFudgeMessageStore) getSharedDataStore()).setParent((OverlayFudgeMessageStore) previous.getSharedDataStore(), identifiers);
+  }
+
+  /**
+   * Writes values held only in the private data store, or by the missing value loader, to the shared data store. A
+   * later cache layered on this one, see {@link #overlaySharedValues}, can then read them after the private data
+   * has been discarded.
+   *
+   * @param specifications the values to share, not null
+   * @return the number of values written to the shared data store
+   */
+  public int shareValues(final Collection<ValueSpecification> specifications) {
+    ArgumentChecker.notNull(specifications, "specifications");
+    if (getSharedDataStore() == getPrivateDataStore()) {
+      return 0;
+    }
+    final LongArrayList identifiers = new LongArrayList(getIdentifierMap().getIdentifiers(specifications).values());
+    final Long2ObjectMap<FudgeMsg> data = new Long2ObjectOpenHashMap<FudgeMsg>();
+    if (copyEncodedValues(getSharedDataStore().get(identifiers), identifiers, null) > 0) {
+      if (copyEncodedValues(getPrivateDataStore().get(identifiers), identifiers, data) > 0) {
+        final MissingValueLoader loader = getMissingValueLoader();
+        if (loader != null) {
+          copyEncodedValues(loader.findMissingValues(identifiers), identifiers, data);
+        }
+      }
+    }
+    if (!data.isEmpty()) {
+      getSharedDataStore().put(data);
+    }
+    return data.size();
+  }
+
+  /**
+   * Moves the values found from the raw map to the result map, compacting the found identifiers out of the list.
+   * If the result map is null the values found are only removed from the list.
+   *
+   * @return the number of identifiers still unresolved
+   */
+  private static int copyEncodedValues(final Long2ObjectMap<FudgeMsg> rawValues, final LongArrayList identifiers, final Long2ObjectMap<FudgeMsg> data) {
+    if (rawValues.isEmpty()) {
+      return identifiers.size();
+    }
+    final long[] identifierArray = identifiers.elements();
+    final int count = identifiers.size();
+    int unresolved = 0;
+    for (int i = 0; i < count; i++) {
+      final FudgeMsg value = rawValues.get(identifierArray[i]);
+      if (value != null) {
+        if (data != null) {
+          data.put(identifierArray[i], value);
+        }
+      } else {
+        identifierArray[unresolved++] = identifierArray[i];
+      }
+    }
+    identifiers.size(unresolved);
+    return unresolved;
+  }
+
   @Override
   public void putValues(final Collection<ComputedValue> values, final CacheSelectHint filter) {
     ArgumentChecker.notNull(values, "values");
@@ -362,27 +520,42 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     for (ComputedValue value : values) {
       specifications.add(value.getSpecification());
     }
-    final Map<ValueSpecification, Long> identifiers = getIdentifierMap().getIdentifiers(specifications);
+    final Object2LongMap<ValueSpecification> identifiers = getIdentifierMap().getIdentifiers(specifications);
     final FudgeSerializer serializer = new FudgeSerializer(getFudgeContext());
-    Map<Long, FudgeMsg> privateData = null;
-    Map<Long, FudgeMsg> sharedData = null;
+    Long2ObjectMap<FudgeMsg> privateData = null;
+    Long2ObjectMap<FudgeMsg> sharedData = null;
     for (ComputedValue value : values) {
       Object obj = value.getValue();
       final FudgeMsg valueData = serializeValue(serializer, obj);
       cacheValueSize(value.getSpecification(), valueData, value.getValue());
       if (filter.isPrivateValue(value.getSpecification())) {
         if (privateData == null) {
-          privateData = new HashMap<Long, FudgeMsg>();
+          privateData = new Long2ObjectOpenHashMap<FudgeMsg>(values.size());
         }
-        privateData.put(identifiers.get(value.getSpecification()), valueData);
+        privateData.put(identifiers.getLong(value.getSpecification()), valueData);
       } else {
         if (sharedData == null) {
-          sharedData = new HashMap<Long, FudgeMsg>();
+          sharedData = new Long2ObjectOpenHashMap<FudgeMsg>(values.size());
+        }
+        sharedData.put(identifiers.getLong(value.getSpecification()), valueData);
+      }
+    }
+    if ((sharedData != null) && (privateData != null)) {
+      // Overlay the shared and private puts
+      final Long2ObjectMap<FudgeMsg> sharedDataValues = sharedData;
+      final FutureTask<Object> sharedPut = startSharedOperation(new Callable<Object>() {
+        @Override
+        public Object call() {
+          getSharedDataStore().put(sharedDataValues);
+          return null;
         }
-        sharedData.put(identifiers.get(value.getSpecification()), valueData);
+      });
+      if (sharedPut != null) {
+        getPrivateDataStore().put(privateData);
+        waitForSharedOperation(sharedPut);
+        return;
       }
     }
-    // TODO 2010-08-31 Andrew -- can we overlay the shared and private puts ?
     if (sharedData != null) {
       getSharedDataStore().put(sharedData);
     }
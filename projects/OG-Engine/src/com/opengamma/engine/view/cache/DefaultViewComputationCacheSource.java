@@ -5,13 +5,17 @@
  */
 package com.opengamma.engine.view.cache;
 
-import java.util.Collection;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.fudgemsg.FudgeContext;
@@ -45,21 +49,41 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
 
     FudgeMsg findMissingValue(ViewComputationCacheKey cache, long identifier);
 
-    Map<Long, FudgeMsg> findMissingValues(ViewComputationCacheKey cache, Collection<Long> identifier);
+    Long2ObjectMap<FudgeMsg> findMissingValues(ViewComputationCacheKey cache, LongCollection identifiers);
 
   }
 
+  /**
+   * The number of released view cycles remembered, so that late requests do not recreate their caches.
+   */
+  private static final int RELEASED_CYCLE_HISTORY = 1024;
+
   private final IdentifierMap _identifierMap;
   private final FudgeContext _fudgeContext;
 
   private final ConcurrentMap<ViewComputationCacheKey, DefaultViewComputationCache> _cachesByKey = new ConcurrentHashMap<ViewComputationCacheKey, DefaultViewComputationCache>();
   private final Map<UniqueId, List<ViewComputationCacheKey>> _activeCachesByCycle = new HashMap<UniqueId, List<ViewComputationCacheKey>>();
   private final ReentrantLock _cacheManagementLock = new ReentrantLock();
+  /**
+   * Serializes changes to the layering of the shared data stores, see {@link OverlayFudgeMessageStore}.
+   */
+  private final Object _overlayLock = new Object();
+  private final Map<UniqueId, Boolean> _releasedCycles = new LinkedHashMap<UniqueId, Boolean>() {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<UniqueId, Boolean> eldest) {
+      return size() > RELEASED_CYCLE_HISTORY;
+    }
+
+  };
   private final FudgeMessageStoreFactory _privateDataStoreFactory;
   private final FudgeMessageStoreFactory _sharedDataStoreFactory;
 
   private ReleaseCachesCallback _releaseCachesCallback;
   private MissingValueLoader _missingValueLoader;
+  private Executor _overlapExecutor;
 
   protected DefaultViewComputationCacheSource(final IdentifierMap identifierMap, final FudgeContext fudgeContext,
       final FudgeMessageStoreFactory dataStoreFactory) {
@@ -119,6 +143,22 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
     return cache;
   }
 
+  /**
+   * Returns the cache for a key, creating it if the caches of its view cycle have not already been released. A
+   * request delayed in transit must not recreate a cache after its cycle has finished with it, as nothing would
+   * release it again.
+   * 
+   * @param key the cache key, not null
+   * @return the cache, or null if the caches of the view cycle have been released
+   */
+  public DefaultViewComputationCache getUnreleasedCache(final ViewComputationCacheKey key) {
+    final DefaultViewComputationCache cache = findCache(key);
+    if (cache != null) {
+      return cache;
+    }
+    return constructCache(key, true);
+  }
+
   protected DefaultViewComputationCache findCache(UniqueId viewCycleId, String calculationConfigurationName) {
     return findCache(new ViewComputationCacheKey(viewCycleId, calculationConfigurationName));
   }
@@ -128,15 +168,30 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
   }
 
   protected DefaultViewComputationCache constructCache(final ViewComputationCacheKey key) {
+    return constructCache(key, false);
+  }
+
+  private DefaultViewComputationCache constructCache(final ViewComputationCacheKey key, final boolean unlessReleased) {
     DefaultViewComputationCache cache = null;
     _cacheManagementLock.lock();
     try {
       // Have to double-check. Too expensive to construct otherwise.
       cache = findCache(key);
       if (cache == null) {
-        final FudgeMessageStore privateDataStore = _privateDataStoreFactory.createMessageStore(key);
-        final FudgeMessageStore sharedDataStore = (_privateDataStoreFactory == _sharedDataStoreFactory) ? privateDataStore
-            : _sharedDataStoreFactory.createMessageStore(key);
+        if (unlessReleased && _releasedCycles.containsKey(key.getViewCycleId())) {
+          return null;
+        }
+        // The shared data store is layered so that a delta cycle can read the values it does not recompute from the
+        // cache of the cycle before it
+        final FudgeMessageStore privateDataStore;
+        final FudgeMessageStore sharedDataStore;
+        if (_privateDataStoreFactory == _sharedDataStoreFactory) {
+          sharedDataStore = new OverlayFudgeMessageStore(_sharedDataStoreFactory.createMessageStore(key), _overlayLock);
+          privateDataStore = sharedDataStore;
+        } else {
+          privateDataStore = _privateDataStoreFactory.createMessageStore(key);
+          sharedDataStore = new OverlayFudgeMessageStore(_sharedDataStoreFactory.createMessageStore(key), _overlayLock);
+        }
         cache = createViewComputationCache(getIdentifierMap(), privateDataStore, sharedDataStore, getFudgeContext());
         _cachesByKey.put(key, cache);
         List<ViewComputationCacheKey> caches = _activeCachesByCycle.get(key.getViewCycleId());
@@ -145,6 +200,7 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
           _activeCachesByCycle.put(key.getViewCycleId(), caches);
         }
         caches.add(key);
+        cache.setOverlapExecutor(getOverlapExecutor());
         final MissingValueLoader loader = getMissingValueLoader();
         if (loader != null) {
           cache.setMissingValueLoader(new DefaultViewComputationCache.MissingValueLoader() {
@@ -155,7 +211,7 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
             }
 
             @Override
-            public Map<Long, FudgeMsg> findMissingValues(Collection<Long> identifiers) {
+            public Long2ObjectMap<FudgeMsg> findMissingValues(final LongCollection identifiers) {
               return loader.findMissingValues(key, identifiers);
             }
 
@@ -192,6 +248,7 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
     DefaultViewComputationCache[] caches;
     _cacheManagementLock.lock();
     try {
+      _releasedCycles.put(viewCycleId, Boolean.TRUE);
       final List<ViewComputationCacheKey> cacheKeys = _activeCachesByCycle.remove(viewCycleId);
       if (cacheKeys == null) {
         return;
@@ -221,6 +278,20 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
     _missingValueLoader = missingValueLoader;
   }
 
+  /**
+   * Sets the executor used by caches created after this call to overlap operations on the shared and private
+   * data stores. If not set, the operations are performed sequentially by the calling thread.
+   * 
+   * @param overlapExecutor the executor, or null for none
+   */
+  public void setOverlapExecutor(final Executor overlapExecutor) {
+    _overlapExecutor = overlapExecutor;
+  }
+
+  public Executor getOverlapExecutor() {
+    return _overlapExecutor;
+  }
+
   public MissingValueLoader getMissingValueLoader() {
     return _missingValueLoader;
   }
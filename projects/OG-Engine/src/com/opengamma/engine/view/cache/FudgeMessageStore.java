@@ -5,8 +5,8 @@
  */
 package com.opengamma.engine.view.cache;
 
-import java.util.Collection;
-import java.util.Map;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 
 import org.fudgemsg.FudgeMsg;
 
@@ -35,7 +35,7 @@ public interface FudgeMessageStore {
    * @param identifiers identifiers to query
    * @return map of results. If there is no data for an identifier it will be missing from the map. 
    */
-  Map<Long, FudgeMsg> get(Collection<Long> identifiers);
+  Long2ObjectMap<FudgeMsg> get(LongCollection identifiers);
 
   /**
    * Provide data for the given identifier for this store.
@@ -50,7 +50,7 @@ public interface FudgeMessageStore {
    * 
    * @param data map of identifier to data values to store
    */
-  void put(Map<Long, FudgeMsg> data);
+  void put(Long2ObjectMap<FudgeMsg> data);
 
   /**
    * Remove any underlying resources, and free all memory, relating
@@ -5,15 +5,19 @@
  */
 package com.opengamma.engine.view.cache;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -25,6 +29,9 @@ import org.fudgemsg.FudgeMsgEnvelope;
 import org.fudgemsg.MutableFudgeMsg;
 import org.fudgemsg.mapping.FudgeDeserializer;
 import org.fudgemsg.mapping.FudgeSerializer;
+import org.fudgemsg.wire.EncodedFudgeMsg;
+import org.fudgemsg.wire.FudgeDataOutputStreamWriter;
+import org.fudgemsg.wire.FudgeEncoded;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,8 +41,11 @@ import com.opengamma.engine.view.cache.msg.CacheMessage;
 import com.opengamma.engine.view.cache.msg.CacheMessageVisitor;
 import com.opengamma.engine.view.cache.msg.DeleteRequest;
 import com.opengamma.engine.view.cache.msg.FindMessage;
+import com.opengamma.engine.view.cache.msg.GetBinaryRequest;
+import com.opengamma.engine.view.cache.msg.GetBinaryResponse;
 import com.opengamma.engine.view.cache.msg.GetRequest;
 import com.opengamma.engine.view.cache.msg.GetResponse;
+import com.opengamma.engine.view.cache.msg.PutBinaryRequest;
 import com.opengamma.engine.view.cache.msg.PutRequest;
 import com.opengamma.engine.view.cache.msg.ReleaseCacheMessage;
 import com.opengamma.engine.view.cache.msg.SlaveChannelMessage;
@@ -49,6 +59,10 @@ import com.opengamma.util.ArgumentChecker;
 /**
  * Server for {@link RemoteFudgeMessageStore} clients created by a {@link RemoteFudgeMessageStoreFactory}.
  * The underlying is the shared data store component of a {@link DefaultViewComputationCache}.
+ * <p>
+ * Get and put requests are processed on a thread pool so that a client may have many in flight on the
+ * same connection; the responses are matched to requests by correlation id. The binary forms of the
+ * requests pass the encoded values between the underlying store and the connection without decoding them.
  */
 public class FudgeMessageStoreServer implements FudgeConnectionReceiver, ReleaseCachesCallback, MissingValueLoader, FudgeConnectionStateListener {
 
@@ -56,7 +70,8 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
 
   private static class ValueSearch {
 
-    private final ConcurrentMap<Long, CountDownLatch> _pending = new ConcurrentHashMap<Long, CountDownLatch>();
+    // Guarded by this search's monitor
+    private final Long2ObjectMap<CountDownLatch> _pending = new Long2ObjectOpenHashMap<CountDownLatch>();
     private int _refCount = 1;
 
     public void incrementRefCount() {
@@ -67,27 +82,39 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
       return --_refCount;
     }
 
-    public void found(final Long identifier) {
-      final CountDownLatch sync = _pending.remove(identifier);
-      if (sync != null) {
-        sync.countDown();
+    public void found(final LongArrayList identifiers) {
+      synchronized (this) {
+        if (_pending.isEmpty()) {
+          return;
+        }
+        for (int i = 0; i < identifiers.size(); i++) {
+          final CountDownLatch sync = _pending.remove(identifiers.getLong(i));
+          if (sync != null) {
+            sync.countDown();
+          }
+        }
       }
     }
 
-    public boolean waitFor(final Long identifier, final long timeout) throws InterruptedException {
+    public boolean waitFor(final long identifier, final long timeout) throws InterruptedException {
       if (timeout <= 0) {
         return false;
       }
-      CountDownLatch latch = new CountDownLatch(1);
-      final CountDownLatch previousLatch = _pending.putIfAbsent(identifier, latch);
-      if (previousLatch != null) {
-        latch = previousLatch;
+      CountDownLatch latch;
+      synchronized (this) {
+        latch = _pending.get(identifier);
+        if (latch == null) {
+          latch = new CountDownLatch(1);
+          _pending.put(identifier, latch);
+        }
       }
       return latch.await(timeout, TimeUnit.MILLISECONDS);
     }
 
   }
 
+  private static final byte[] EMPTY_DATA = new byte[0];
+
   private final ExecutorService _executorService = Executors.newCachedThreadPool();
   private final DefaultViewComputationCacheSource _underlying;
   private final Map<FudgeConnection, Object> _connections = new ConcurrentHashMap<FudgeConnection, Object>();
@@ -110,6 +137,44 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
     return _connections;
   }
 
+  /**
+   * Tests whether a request can be processed concurrently with others received on the same connection. Requests
+   * that read or write values can be; anything else is handled in the order it was received.
+   * 
+   * @param request the request message
+   * @return true if the request can be passed to {@link #execute}
+   */
+  protected static boolean isPipelined(final CacheMessage request) {
+    return (request.getCorrelationId() != null) && ((request instanceof GetRequest) || (request instanceof PutRequest) || (request instanceof PutBinaryRequest));
+  }
+
+  /**
+   * Runs a task on the thread pool used for pipelined requests and broadcasts.
+   * 
+   * @param task the task to run
+   */
+  protected void execute(final Runnable task) {
+    _executorService.execute(task);
+  }
+
+  /**
+   * Returns the encoded fields of a message, in the same form as {@link DefaultFudgeMessageStore}, using the
+   * existing encoding if it has one.
+   * 
+   * @param fudgeContext the context to encode with
+   * @param message the message
+   * @return the encoded message fields
+   */
+  protected static byte[] encode(final FudgeContext fudgeContext, final FudgeMsg message) {
+    if (message instanceof FudgeEncoded) {
+      return ((FudgeEncoded) message).getFudgeEncoded();
+    }
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDataOutputStreamWriter writer = new FudgeDataOutputStreamWriter(fudgeContext, baos);
+    writer.writeFields(message);
+    return baos.toByteArray();
+  }
+
   /**
    * Asynchronously sends a message to all open connections.
    * 
@@ -179,22 +244,18 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
   }
 
   @Override
-  public Map<Long, FudgeMsg> findMissingValues(final ViewComputationCacheKey cache,
-      final Collection<Long> identifiers) {
+  public Long2ObjectMap<FudgeMsg> findMissingValues(final ViewComputationCacheKey cache, final LongCollection identifiers) {
     s_logger.debug("findMissing values {}", identifiers);
     broadcast(new FindMessage(cache.getViewCycleId(), cache.getCalculationConfigurationName(), identifiers));
     final ValueSearch search = getOrCreateValueSearch(cache);
     // We're in the callback so we know the cache must exist
     final FudgeMessageStore store = getUnderlying().findCache(cache).getSharedDataStore();
-    final Long[] identifierArray = new Long[identifiers.size()];
-    int identifierCount = 0;
-    for (Long identifier : identifiers) {
-      identifierArray[identifierCount++] = identifier;
-    }
-    final Map<Long, FudgeMsg> map = new HashMap<Long, FudgeMsg>();
+    final long[] identifierArray = identifiers.toLongArray();
+    int identifierCount = identifierArray.length;
+    final Long2ObjectMap<FudgeMsg> map = new Long2ObjectOpenHashMap<FudgeMsg>(identifierCount);
     try {
       while (identifierCount > 0) {
-        final Long identifier = identifierArray[0];
+        final long identifier = identifierArray[0];
         FudgeMsg data = store.get(identifier);
         if (data != null) {
           s_logger.debug("Value for {} found and transferred to shared data store", identifier);
@@ -273,7 +334,7 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
 
     @Override
     protected GetResponse visitGetRequest(final GetRequest request) {
-      final List<Long> identifiers = request.getIdentifier();
+      final LongArrayList identifiers = new LongArrayList(request.getIdentifier());
       final Collection<FudgeMsg> response;
       final DefaultViewComputationCache cache = getUnderlying().findCache(request.getViewCycleId(), request.getCalculationConfigurationName());
       if (cache == null) {
@@ -283,16 +344,16 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
       } else {
         final FudgeMessageStore store = cache.getSharedDataStore();
         if (identifiers.size() == 1) {
-          FudgeMsg data = store.get(identifiers.get(0));
+          FudgeMsg data = store.get(identifiers.getLong(0));
           if (data == null) {
             data = FudgeContext.EMPTY_MESSAGE;
           }
           response = Collections.singleton(data);
         } else {
           response = new ArrayList<FudgeMsg>(identifiers.size());
-          final Map<Long, FudgeMsg> data = store.get(identifiers);
-          for (Long identifier : identifiers) {
-            FudgeMsg value = data.get(identifier);
+          final Long2ObjectMap<FudgeMsg> data = store.get(identifiers);
+          for (int i = 0; i < identifiers.size(); i++) {
+            FudgeMsg value = data.get(identifiers.getLong(i));
             if (value == null) {
               value = FudgeContext.EMPTY_MESSAGE;
             }
@@ -303,31 +364,91 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
       return new GetResponse(response);
     }
 
+    @Override
+    protected GetBinaryResponse visitGetBinaryRequest(final GetBinaryRequest request) {
+      final LongArrayList identifiers = new LongArrayList(request.getIdentifier());
+      final List<byte[]> response = new ArrayList<byte[]>(identifiers.size());
+      final DefaultViewComputationCache cache = getUnderlying().findCache(request.getViewCycleId(), request.getCalculationConfigurationName());
+      if (cache == null) {
+        // Can happen if a node runs slowly, the job is retried elsewhere and the cycle completed while the original node is still generating traffic
+        s_logger.warn("Get request on invalid cache - {}", request);
+        for (int i = 0; i < identifiers.size(); i++) {
+          response.add(EMPTY_DATA);
+        }
+      } else {
+        final FudgeMessageStore store = cache.getSharedDataStore();
+        final FudgeContext fudgeContext = getUnderlying().getFudgeContext();
+        if (identifiers.size() == 1) {
+          final FudgeMsg data = store.get(identifiers.getLong(0));
+          response.add((data != null) ? encode(fudgeContext, data) : EMPTY_DATA);
+        } else {
+          final Long2ObjectMap<FudgeMsg> data = store.get(identifiers);
+          for (int i = 0; i < identifiers.size(); i++) {
+            final FudgeMsg value = data.get(identifiers.getLong(i));
+            response.add((value != null) ? encode(fudgeContext, value) : EMPTY_DATA);
+          }
+        }
+      }
+      return new GetBinaryResponse(response);
+    }
+
+    @Override
+    protected CacheMessage visitPutBinaryRequest(final PutBinaryRequest request) {
+      final LongArrayList identifiers = new LongArrayList(request.getIdentifier());
+      final List<byte[]> data = request.getData();
+      final ViewComputationCacheKey key = new ViewComputationCacheKey(request.getViewCycleId(), request.getCalculationConfigurationName());
+      final DefaultViewComputationCache cache = getUnderlying().getUnreleasedCache(key);
+      if (cache == null) {
+        // Can happen if a pipelined put is still being handled when the cycle completes and its caches are released
+        s_logger.warn("Put request on released cache - {}", request);
+        return null;
+      }
+      final FudgeMessageStore store = cache.getSharedDataStore();
+      final FudgeContext fudgeContext = getUnderlying().getFudgeContext();
+      // The encoded messages are stored as they are; they will only be decoded if a consumer in this process reads them
+      if (identifiers.size() == 1) {
+        store.put(identifiers.getLong(0), new EncodedFudgeMsg(data.get(0), fudgeContext));
+      } else {
+        final Long2ObjectMap<FudgeMsg> map = new Long2ObjectOpenHashMap<FudgeMsg>(identifiers.size());
+        for (int i = 0; i < identifiers.size(); i++) {
+          map.put(identifiers.getLong(i), new EncodedFudgeMsg(data.get(i), fudgeContext));
+        }
+        store.put(map);
+      }
+      found(key, identifiers);
+      return null;
+    }
+
     @Override
     protected CacheMessage visitPutRequest(final PutRequest request) {
-      final List<Long> identifiers = request.getIdentifier();
+      final LongArrayList identifiers = new LongArrayList(request.getIdentifier());
       final List<FudgeMsg> data = request.getData();
       final ViewComputationCacheKey key = new ViewComputationCacheKey(request.getViewCycleId(), request.getCalculationConfigurationName());
-      // Review 2010-10-19 Andrew -- This causes cache creation. This is bad if messages were delayed and the cache has already been released.
-      final FudgeMessageStore store = getUnderlying().getCache(key).getSharedDataStore();
+      final DefaultViewComputationCache cache = getUnderlying().getUnreleasedCache(key);
+      if (cache == null) {
+        // Can happen if a pipelined put is still being handled when the cycle completes and its caches are released
+        s_logger.warn("Put request on released cache - {}", request);
+        return null;
+      }
+      final FudgeMessageStore store = cache.getSharedDataStore();
       if (identifiers.size() == 1) {
-        store.put(identifiers.get(0), data.get(0));
+        store.put(identifiers.getLong(0), data.get(0));
       } else {
-        final Map<Long, FudgeMsg> map = new HashMap<Long, FudgeMsg>();
-        final Iterator<Long> i = identifiers.iterator();
-        final Iterator<FudgeMsg> j = data.iterator();
-        while (i.hasNext()) {
-          map.put(i.next(), j.next());
+        final Long2ObjectMap<FudgeMsg> map = new Long2ObjectOpenHashMap<FudgeMsg>(identifiers.size());
+        for (int i = 0; i < identifiers.size(); i++) {
+          map.put(identifiers.getLong(i), data.get(i));
         }
         store.put(map);
       }
+      found(key, identifiers);
+      return null;
+    }
+
+    private void found(final ViewComputationCacheKey key, final LongArrayList identifiers) {
       final ValueSearch searching = getValueSearch(key);
       if (searching != null) {
-        for (Long identifier : identifiers) {
-          searching.found(identifier);
-        }
+        searching.found(identifiers);
       }
-      return null;
     }
 
     @Override
@@ -336,10 +457,7 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
       return null;
     }
 
-    @Override
-    public void messageReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
-      final FudgeDeserializer deserializer = new FudgeDeserializer(fudgeContext);
-      final CacheMessage request = deserializer.fudgeMsgToObject(CacheMessage.class, msgEnvelope.getMessage());
+    private void handleRequest(final FudgeContext fudgeContext, final CacheMessage request) {
       CacheMessage response = request.accept(this);
       if (response == null) {
         if (request.getCorrelationId() != null) {
@@ -356,6 +474,22 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
       }
     }
 
+    @Override
+    public void messageReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
+      final FudgeDeserializer deserializer = new FudgeDeserializer(fudgeContext);
+      final CacheMessage request = deserializer.fudgeMsgToObject(CacheMessage.class, msgEnvelope.getMessage());
+      if (isPipelined(request)) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            handleRequest(fudgeContext, request);
+          }
+        });
+      } else {
+        handleRequest(fudgeContext, request);
+      }
+    }
+
   };
 
   protected MessageHandler onNewConnection(final FudgeConnection connection) {
@@ -5,11 +5,14 @@
  */
 package com.opengamma.engine.view.cache;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
@@ -53,11 +56,12 @@ public class IdentifierMapServer extends CacheMessageVisitor implements FudgeReq
     if (spec.size() == 1) {
       identifiers = Collections.singleton(getUnderlying().getIdentifier(spec.get(0)));
     } else {
-      final Map<ValueSpecification, Long> identifierMap = getUnderlying().getIdentifiers(spec);
-      identifiers = new ArrayList<Long>(identifierMap.size());
+      final Object2LongMap<ValueSpecification> identifierMap = getUnderlying().getIdentifiers(spec);
+      final LongArrayList identifierList = new LongArrayList(spec.size());
       for (ValueSpecification specEntry : spec) {
-        identifiers.add(identifierMap.get(specEntry));
+        identifierList.add(identifierMap.getLong(specEntry));
       }
+      identifiers = identifierList;
     }
     final IdentifierLookupResponse response = new IdentifierLookupResponse(identifiers);
     return response;
@@ -65,15 +69,15 @@ public class IdentifierMapServer extends CacheMessageVisitor implements FudgeReq
 
   @Override
   protected SpecificationLookupResponse visitSpecificationLookupRequest(final SpecificationLookupRequest request) {
-    final List<Long> identifiers = request.getIdentifier();
+    final LongArrayList identifiers = new LongArrayList(request.getIdentifier());
     final Collection<ValueSpecification> specifications;
     if (identifiers.size() == 1) {
-      specifications = Collections.singleton(getUnderlying().getValueSpecification(identifiers.get(0)));
+      specifications = Collections.singleton(getUnderlying().getValueSpecification(identifiers.getLong(0)));
     } else {
-      final Map<Long, ValueSpecification> specificationMap = getUnderlying().getValueSpecifications(identifiers);
+      final Long2ObjectMap<ValueSpecification> specificationMap = getUnderlying().getValueSpecifications(identifiers);
       specifications = new ArrayList<ValueSpecification>(specificationMap.size());
-      for (Long identifier : identifiers) {
-        specifications.add(specificationMap.get(identifier));
+      for (int i = 0; i < identifiers.size(); i++) {
+        specifications.add(specificationMap.get(identifiers.getLong(i)));
       }
     }
     final SpecificationLookupResponse response = new SpecificationLookupResponse(specifications);
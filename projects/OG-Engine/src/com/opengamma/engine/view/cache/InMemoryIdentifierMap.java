@@ -5,9 +5,11 @@
  */
 package com.opengamma.engine.view.cache;
 
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.util.ArgumentChecker;
@@ -16,13 +18,48 @@ import com.opengamma.util.ArgumentChecker;
  * An implementation of {@link IdentifierMap} which is backed by an in-memory
  * {@link ConcurrentMap}. This has no facilities for acting as a cache, or for persistence.
  * It should only be used for development and debugging purposes.
+ * <p>
+ * Identifiers are allocated sequentially so the reverse lookup is held in fixed size pages
+ * indexed by the identifier rather than a map. This avoids boxing the identifier on each
+ * lookup.
  */
 public class InMemoryIdentifierMap extends AbstractIdentifierMap implements IdentifierMap {
 
+  private static final int PAGE_BITS = 12;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
   private final AtomicLong _nextIdentifier = new AtomicLong(1L);
 
   private final ConcurrentMap<ValueSpecification, Long> _identifiers = new ConcurrentHashMap<ValueSpecification, Long>();
-  private final ConcurrentMap<Long, ValueSpecification> _specifications = new ConcurrentHashMap<Long, ValueSpecification>();
+  @SuppressWarnings("unchecked")
+  private volatile AtomicReferenceArray<ValueSpecification>[] _specifications = new AtomicReferenceArray[0];
+
+  private AtomicReferenceArray<ValueSpecification> getPage(final long identifier, final boolean create) {
+    if (identifier < 0) {
+      return null;
+    }
+    final long page = identifier >>> PAGE_BITS;
+    AtomicReferenceArray<ValueSpecification>[] pages = _specifications;
+    if (page < pages.length) {
+      return pages[(int) page];
+    }
+    if (!create) {
+      return null;
+    }
+    synchronized (this) {
+      pages = _specifications;
+      if (page >= pages.length) {
+        final AtomicReferenceArray<ValueSpecification>[] newPages = Arrays.copyOf(pages, (int) page + 1);
+        for (int i = pages.length; i < newPages.length; i++) {
+          newPages[i] = new AtomicReferenceArray<ValueSpecification>(PAGE_SIZE);
+        }
+        _specifications = newPages;
+        pages = newPages;
+      }
+    }
+    return pages[(int) page];
+  }
 
   @Override
   public long getIdentifier(ValueSpecification spec) {
@@ -35,14 +72,18 @@ public class InMemoryIdentifierMap extends AbstractIdentifierMap implements Iden
     result = _identifiers.putIfAbsent(spec, freshIdentifier);
     if (result == null) {
       result = freshIdentifier;
-      _specifications.put(freshIdentifier, spec);
+      getPage(freshIdentifier, true).set((int) (freshIdentifier & PAGE_MASK), spec);
     }
     return result;
   }
 
   @Override
   public ValueSpecification getValueSpecification(long identifier) {
-    return _specifications.get(identifier);
+    final AtomicReferenceArray<ValueSpecification> page = getPage(identifier, false);
+    if (page == null) {
+      return null;
+    }
+    return page.get((int) (identifier & PAGE_MASK));
   }
 
 }
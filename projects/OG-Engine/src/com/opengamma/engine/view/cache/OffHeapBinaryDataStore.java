@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * An implementation of {@link BinaryDataStore} which holds the data outside of the Java heap. Values
+ * are appended to slabs obtained from an {@link OffHeapBinaryDataStoreFactory}; only a compact index of
+ * identifier to slab location is held on the heap. Deleting the store returns all of its slabs to the
+ * factory in one step.
+ * <p>
+ * Space is never reclaimed for overwritten values until the store is deleted. This suits the view
+ * computation cache where values are written once per cycle and the whole store released afterwards.
+ * This class is internally synchronized. Reads share a lock which writes and deletes hold exclusively, so a delete
+ * waits for any reads in progress before returning the slabs, and reads started after a delete find nothing. The
+ * multiple value forms of get and put take the lock once for all of the values.
+ */
+public class OffHeapBinaryDataStore extends AbstractBinaryDataStore implements BinaryDataStore {
+
+  /**
+   * Size of the length prefix written before each value.
+   */
+  private static final int HEADER_SIZE = 4;
+
+  private final OffHeapBinaryDataStoreFactory _factory;
+  private final Lock _readLock;
+  private final Lock _writeLock;
+  // The remaining state is guarded by the lock
+  /**
+   * Identifier to location; the slab index in the upper 32 bits and the offset of the length prefix within the slab in the lower.
+   */
+  private final Long2LongMap _index = new Long2LongOpenHashMap();
+  private final List<ByteBuffer> _slabs = new ArrayList<ByteBuffer>();
+  private ByteBuffer _currentSlab;
+  private int _currentSlabIndex = -1;
+  private boolean _deleted;
+
+  public OffHeapBinaryDataStore(final OffHeapBinaryDataStoreFactory factory) {
+    ArgumentChecker.notNull(factory, "factory");
+    _factory = factory;
+    final ReadWriteLock lock = new ReentrantReadWriteLock();
+    _readLock = lock.readLock();
+    _writeLock = lock.writeLock();
+    // Locations are never negative
+    _index.defaultReturnValue(-1L);
+  }
+
+  protected OffHeapBinaryDataStoreFactory getFactory() {
+    return _factory;
+  }
+
+  private static long location(final int slabIndex, final int offset) {
+    return ((long) slabIndex << 32) | (offset & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Adds a buffer to the set of slabs owned by this store. Must be called holding the write lock.
+   */
+  private int addSlab(final ByteBuffer slab) {
+    final int index = _slabs.size();
+    _slabs.add(slab);
+    return index;
+  }
+
+  /**
+   * Reserves space for a value, writing the length prefix and data. Must be called holding the write lock.
+   */
+  private long write(final byte[] data) {
+    final int required = data.length + HEADER_SIZE;
+    final ByteBuffer buffer;
+    final int slabIndex;
+    if (required > getFactory().getSlabSize()) {
+      buffer = getFactory().allocateOversize(required);
+      slabIndex = addSlab(buffer);
+    } else {
+      if ((_currentSlab == null) || (_currentSlab.remaining() < required)) {
+        _currentSlab = getFactory().allocateSlab();
+        _currentSlabIndex = addSlab(_currentSlab);
+      }
+      buffer = _currentSlab;
+      slabIndex = _currentSlabIndex;
+    }
+    final int offset = buffer.position();
+    buffer.putInt(data.length);
+    buffer.put(data);
+    return location(slabIndex, offset);
+  }
+
+  /**
+   * Reads a value. Must be called holding the read lock.
+   */
+  private byte[] read(final long identifier) {
+    final long location = _index.get(identifier);
+    if (location < 0) {
+      return null;
+    }
+    // Work on a duplicate so that concurrent readers do not disturb each other's position
+    final ByteBuffer slab = _slabs.get((int) (location >>> 32)).duplicate();
+    slab.position((int) location);
+    final byte[] data = new byte[slab.getInt()];
+    slab.get(data);
+    return data;
+  }
+
+  @Override
+  public byte[] get(final long identifier) {
+    _readLock.lock();
+    try {
+      return read(identifier);
+    } finally {
+      _readLock.unlock();
+    }
+  }
+
+  @Override
+  public Long2ObjectMap<byte[]> get(final LongCollection identifiers) {
+    final Long2ObjectMap<byte[]> result = new Long2ObjectOpenHashMap<byte[]>(identifiers.size());
+    final LongIterator itr = identifiers.iterator();
+    _readLock.lock();
+    try {
+      while (itr.hasNext()) {
+        final long identifier = itr.nextLong();
+        final byte[] data = read(identifier);
+        if (data != null) {
+          result.put(identifier, data);
+        }
+      }
+    } finally {
+      _readLock.unlock();
+    }
+    return result;
+  }
+
+  @Override
+  public void put(final long identifier, final byte[] data) {
+    ArgumentChecker.notNull(data, "data");
+    _writeLock.lock();
+    try {
+      if (_deleted) {
+        throw new IllegalStateException("Data store has been deleted");
+      }
+      _index.put(identifier, write(data));
+    } finally {
+      _writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void put(final Long2ObjectMap<byte[]> data) {
+    _writeLock.lock();
+    try {
+      if (_deleted) {
+        throw new IllegalStateException("Data store has been deleted");
+      }
+      // Iterate the keys rather than the entry set to avoid creating an entry object for each value
+      final LongIterator itr = data.keySet().iterator();
+      while (itr.hasNext()) {
+        final long identifier = itr.nextLong();
+        final byte[] value = data.get(identifier);
+        ArgumentChecker.notNull(value, "data");
+        _index.put(identifier, write(value));
+      }
+    } finally {
+      _writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void delete() {
+    final List<ByteBuffer> slabs;
+    // Waits for any reads in progress, and any starting afterwards will find the index empty
+    _writeLock.lock();
+    try {
+      _deleted = true;
+      _index.clear();
+      slabs = new ArrayList<ByteBuffer>(_slabs);
+      _slabs.clear();
+      _currentSlab = null;
+      _currentSlabIndex = -1;
+    } finally {
+      _writeLock.unlock();
+    }
+    getFactory().releaseSlabs(slabs);
+  }
+
+}
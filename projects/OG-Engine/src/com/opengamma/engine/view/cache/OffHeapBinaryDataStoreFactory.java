@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Creates {@link OffHeapBinaryDataStore} instances. The factory owns a pool of fixed size slabs,
+ * either direct buffers or memory-mapped regions of temporary files, which the data stores
+ * allocate from. When a data store is deleted its slabs are returned to the pool in one step
+ * so that the next cycle can reuse them without any further native allocation.
+ */
+public class OffHeapBinaryDataStoreFactory implements BinaryDataStoreFactory {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(OffHeapBinaryDataStoreFactory.class);
+
+  /**
+   * Default size of each slab - 4Mb.
+   */
+  public static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+  /**
+   * Default number of unused slabs to keep in the pool.
+   */
+  public static final int DEFAULT_MAX_FREE_SLABS = 64;
+
+  private final int _slabSize;
+  private final int _maxFreeSlabs;
+  private final File _mappedFileDirectory;
+  private final ConcurrentLinkedQueue<ByteBuffer> _freeSlabs = new ConcurrentLinkedQueue<ByteBuffer>();
+  private final AtomicInteger _freeSlabCount = new AtomicInteger();
+  private final AtomicInteger _allocatedSlabCount = new AtomicInteger();
+
+  /**
+   * Creates a factory using direct buffers of the default slab size.
+   */
+  public OffHeapBinaryDataStoreFactory() {
+    this(DEFAULT_SLAB_SIZE, DEFAULT_MAX_FREE_SLABS, null);
+  }
+
+  /**
+   * Creates a factory.
+   *
+   * @param slabSize the size of each slab in bytes, values larger than this are held in dedicated buffers
+   * @param maxFreeSlabs the number of released slabs to retain for reuse
+   * @param mappedFileDirectory the folder to create memory-mapped slab files in, or null to use direct buffers
+   */
+  public OffHeapBinaryDataStoreFactory(final int slabSize, final int maxFreeSlabs, final File mappedFileDirectory) {
+    ArgumentChecker.notNegativeOrZero(slabSize, "slabSize");
+    ArgumentChecker.notNegative(maxFreeSlabs, "maxFreeSlabs");
+    _slabSize = slabSize;
+    _maxFreeSlabs = maxFreeSlabs;
+    _mappedFileDirectory = mappedFileDirectory;
+    if (mappedFileDirectory != null) {
+      mappedFileDirectory.mkdirs();
+    }
+  }
+
+  public int getSlabSize() {
+    return _slabSize;
+  }
+
+  public int getMaxFreeSlabs() {
+    return _maxFreeSlabs;
+  }
+
+  public File getMappedFileDirectory() {
+    return _mappedFileDirectory;
+  }
+
+  /**
+   * Returns the number of slabs that have been natively allocated by this factory.
+   *
+   * @return the number of slabs
+   */
+  public int getAllocatedSlabCount() {
+    return _allocatedSlabCount.get();
+  }
+
+  /**
+   * Returns the number of slabs currently held in the pool awaiting reuse.
+   *
+   * @return the number of slabs
+   */
+  public int getFreeSlabCount() {
+    return _freeSlabCount.get();
+  }
+
+  protected ByteBuffer allocateBuffer(final int size) {
+    if (getMappedFileDirectory() == null) {
+      return ByteBuffer.allocateDirect(size);
+    }
+    try {
+      final File file = File.createTempFile("slab", ".dat", getMappedFileDirectory());
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.setLength(size);
+        return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      } finally {
+        // The mapping stays valid after the channel is closed, and on most platforms after the file is removed
+        raf.close();
+        if (!file.delete()) {
+          file.deleteOnExit();
+        }
+      }
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Couldn't create memory-mapped slab in " + getMappedFileDirectory(), e);
+    }
+  }
+
+  /**
+   * Takes a slab from the pool, or allocates a new one if the pool is empty.
+   *
+   * @return a slab of {@link #getSlabSize} bytes, position zero and limit at capacity
+   */
+  protected ByteBuffer allocateSlab() {
+    final ByteBuffer slab = _freeSlabs.poll();
+    if (slab != null) {
+      _freeSlabCount.decrementAndGet();
+      slab.clear();
+      return slab;
+    }
+    _allocatedSlabCount.incrementAndGet();
+    s_logger.debug("Allocating new slab of {} bytes", getSlabSize());
+    return allocateBuffer(getSlabSize());
+  }
+
+  /**
+   * Allocates a buffer for a value that is too large to fit in a slab. These are not pooled.
+   *
+   * @param size the size of the buffer
+   * @return the buffer
+   */
+  protected ByteBuffer allocateOversize(final int size) {
+    s_logger.debug("Allocating oversize buffer of {} bytes", size);
+    return allocateBuffer(size);
+  }
+
+  /**
+   * Returns slabs to the pool. Slabs beyond the maximum pool size, and oversize buffers, are
+   * dropped for the garbage collector to release.
+   *
+   * @param slabs the slabs to release
+   */
+  protected void releaseSlabs(final Collection<ByteBuffer> slabs) {
+    for (ByteBuffer slab : slabs) {
+      if (slab.capacity() != getSlabSize()) {
+        continue;
+      }
+      if (_freeSlabCount.incrementAndGet() <= getMaxFreeSlabs()) {
+        _freeSlabs.add(slab);
+      } else {
+        _freeSlabCount.decrementAndGet();
+        _allocatedSlabCount.decrementAndGet();
+      }
+    }
+  }
+
+  @Override
+  public BinaryDataStore createDataStore(final ViewComputationCacheKey cacheKey) {
+    return new OffHeapBinaryDataStore(this);
+  }
+
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.FudgeMsg;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * A {@link FudgeMessageStore} for the shared values of a view cycle which can read through to the store of an
+ * earlier cycle.
+ * <p>
+ * A delta cycle only recomputes the nodes which depend on the market data that changed. Instead of copying the values
+ * of every other node into its cache, the cycle's store is layered on that of the previous cycle. Identifiers which
+ * the cycle will write are shadowed; any other identifier not found in the underlying store is read from the parent
+ * layer.
+ * <p>
+ * Deleting a layer releases it. Its underlying store is kept while a later layer reads through it. When a released
+ * layer with a single child is the only child of a released parent, the values it shadows are merged into the parent
+ * and the child reads through to the parent directly. A merge costs no more than the number of identifiers shadowed,
+ * so the chain of layers stays short however many delta cycles are run. The underlying store of a merged layer is
+ * deleted when its child is released, so that reads already passing through it can complete.
+ * <p>
+ * Reads do not lock. Changes to the layering are serialized by a lock shared by all layers created by the same source.
+ */
+/* package */final class OverlayFudgeMessageStore implements FudgeMessageStore {
+
+  private final FudgeMessageStore _underlying;
+  private final Object _lock;
+
+  /**
+   * The layer to read through to, null for none.
+   */
+  private volatile OverlayFudgeMessageStore _parent;
+  /**
+   * The identifiers which are not read from the parent. Published before {@link #_parent} and replaced rather than
+   * modified once published.
+   */
+  private volatile LongSet _shadowed;
+  /**
+   * The identifiers which a merged layer shadowed but had no value for, so that any value for them in the underlying
+   * store is no longer visible. Replaced rather than modified once published; null if none.
+   */
+  private volatile LongSet _hidden;
+
+  // The remaining state is guarded by _lock
+  private final List<OverlayFudgeMessageStore> _children = new ArrayList<OverlayFudgeMessageStore>(1);
+  private final List<FudgeMessageStore> _retired = new ArrayList<FudgeMessageStore>(1);
+  private boolean _released;
+
+  public OverlayFudgeMessageStore(final FudgeMessageStore underlying, final Object lock) {
+    ArgumentChecker.notNull(underlying, "underlying");
+    ArgumentChecker.notNull(lock, "lock");
+    _underlying = underlying;
+    _lock = lock;
+  }
+
+  protected FudgeMessageStore getUnderlying() {
+    return _underlying;
+  }
+
+  /**
+   * Layers this store on another. It must not already have a parent.
+   *
+   * @param parent the layer to read through to, not null
+   * @param shadowed the identifiers this layer will write, which must not be read from the parent, not null
+   * @return true if the store was layered, false if either layer has been released or the layers were created by
+   *  different sources
+   */
+  public boolean setParent(final OverlayFudgeMessageStore parent, final LongCollection shadowed) {
+    ArgumentChecker.notNull(parent, "parent");
+    ArgumentChecker.notNull(shadowed, "shadowed");
+    if ((parent._lock != _lock) || (parent == this)) {
+      return false;
+    }
+    synchronized (_lock) {
+      ArgumentChecker.isTrue(_parent == null, "store already has a parent");
+      if (_released || parent._released) {
+        return false;
+      }
+      _shadowed = new LongOpenHashSet(shadowed);
+      _parent = parent;
+      parent._children.add(this);
+    }
+    return true;
+  }
+
+  @Override
+  public FudgeMsg get(final long identifier) {
+    OverlayFudgeMessageStore layer = this;
+    do {
+      final LongSet hidden = layer._hidden;
+      if ((hidden != null) && hidden.contains(identifier)) {
+        return null;
+      }
+      final FudgeMsg data = layer.getUnderlying().get(identifier);
+      if (data != null) {
+        return data;
+      }
+      final OverlayFudgeMessageStore parent = layer._parent;
+      if ((parent == null) || layer._shadowed.contains(identifier)) {
+        return null;
+      }
+      layer = parent;
+    } while (true);
+  }
+
+  @Override
+  public Long2ObjectMap<FudgeMsg> get(final LongCollection identifiers) {
+    OverlayFudgeMessageStore layer = this;
+    LongCollection remaining = identifiers;
+    Long2ObjectMap<FudgeMsg> result = null;
+    do {
+      final LongSet hidden = layer._hidden;
+      if (hidden != null) {
+        remaining = without(remaining, hidden);
+      }
+      final Long2ObjectMap<FudgeMsg> found = layer.getUnderlying().get(remaining);
+      final OverlayFudgeMessageStore parent = layer._parent;
+      if (result == null) {
+        if (parent == null) {
+          return found;
+        }
+        result = new Long2ObjectOpenHashMap<FudgeMsg>(found);
+      } else {
+        result.putAll(found);
+        if (parent == null) {
+          return result;
+        }
+      }
+      final LongSet shadowed = layer._shadowed;
+      final LongArrayList next = new LongArrayList(remaining.size() - found.size());
+      final LongIterator itr = remaining.iterator();
+      while (itr.hasNext()) {
+        final long identifier = itr.nextLong();
+        if (!found.containsKey(identifier) && !shadowed.contains(identifier)) {
+          next.add(identifier);
+        }
+      }
+      if (next.isEmpty()) {
+        return result;
+      }
+      remaining = next;
+      layer = parent;
+    } while (true);
+  }
+
+  private static LongCollection without(final LongCollection identifiers, final LongSet excluded) {
+    final LongArrayList result = new LongArrayList(identifiers.size());
+    final LongIterator itr = identifiers.iterator();
+    while (itr.hasNext()) {
+      final long identifier = itr.nextLong();
+      if (!excluded.contains(identifier)) {
+        result.add(identifier);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void put(final long identifier, final FudgeMsg data) {
+    getUnderlying().put(identifier, data);
+  }
+
+  @Override
+  public void put(final Long2ObjectMap<FudgeMsg> data) {
+    getUnderlying().put(data);
+  }
+
+  /**
+   * Releases the layer. The underlying store is deleted once no other layer reads through it.
+   */
+  @Override
+  public void delete() {
+    final List<FudgeMessageStore> toDelete = new ArrayList<FudgeMessageStore>();
+    synchronized (_lock) {
+      if (_released) {
+        return;
+      }
+      _released = true;
+      tidy(this, toDelete);
+    }
+    for (FudgeMessageStore store : toDelete) {
+      store.delete();
+    }
+  }
+
+  /**
+   * Discards or merges released layers after a change to the layering. Caller must hold the lock.
+   */
+  private static void tidy(OverlayFudgeMessageStore layer, final List<FudgeMessageStore> toDelete) {
+    while ((layer != null) && layer._released) {
+      if (layer._children.isEmpty()) {
+        toDelete.add(layer.getUnderlying());
+        toDelete.addAll(layer._retired);
+        layer._retired.clear();
+        final OverlayFudgeMessageStore parent = layer._parent;
+        if (parent != null) {
+          parent._children.remove(layer);
+        }
+        layer = parent;
+      } else {
+        if (layer._children.size() == 1) {
+          final OverlayFudgeMessageStore child = layer._children.get(0);
+          if (child._released && (child._children.size() == 1)) {
+            mergeChild(layer, child, toDelete);
+            continue;
+          }
+        }
+        final OverlayFudgeMessageStore parent = layer._parent;
+        if ((parent != null) && parent._released && (parent._children.size() == 1) && (layer._children.size() == 1)) {
+          mergeChild(parent, layer, toDelete);
+          layer = parent;
+          continue;
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Merges a released layer, with a single child, into its released parent which has no other children. Caller must
+   * hold the lock.
+   */
+  private static void mergeChild(final OverlayFudgeMessageStore parent, final OverlayFudgeMessageStore layer, final List<FudgeMessageStore> toDelete) {
+    final LongSet shadowed = layer._shadowed;
+    final LongSet layerHidden = layer._hidden;
+    final Long2ObjectMap<FudgeMsg> values = layer.getUnderlying().get((layerHidden != null) ? without(shadowed, layerHidden) : shadowed);
+    // Readers only reach the parent through the layer, which never passes these identifiers down, so the parent can
+    // be changed while they are active
+    if (!values.isEmpty()) {
+      parent.getUnderlying().put(values);
+    }
+    LongSet hidden = (parent._hidden != null) ? new LongOpenHashSet(parent._hidden) : null;
+    final LongIterator itr = shadowed.iterator();
+    while (itr.hasNext()) {
+      final long identifier = itr.nextLong();
+      if (values.containsKey(identifier)) {
+        if (hidden != null) {
+          hidden.remove(identifier);
+        }
+      } else {
+        if (hidden == null) {
+          hidden = new LongOpenHashSet();
+        }
+        hidden.add(identifier);
+      }
+    }
+    parent._hidden = ((hidden != null) && !hidden.isEmpty()) ? hidden : null;
+    if (parent._parent != null) {
+      final LongSet parentShadowed = new LongOpenHashSet(parent._shadowed);
+      parentShadowed.addAll(shadowed);
+      parent._shadowed = parentShadowed;
+    }
+    final OverlayFudgeMessageStore child = layer._children.get(0);
+    child._parent = parent;
+    parent._children.clear();
+    parent._children.add(child);
+    layer._children.clear();
+    // The layer's store may still be in use by reads which reached it before the child was moved
+    toDelete.addAll(layer._retired);
+    layer._retired.clear();
+    child._retired.add(layer.getUnderlying());
+  }
+
+  @Override
+  public String toString() {
+    return "OverlayFudgeMessageStore[" + getUnderlying() + "]";
+  }
+
+}
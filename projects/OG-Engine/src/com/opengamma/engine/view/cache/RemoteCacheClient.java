@@ -5,6 +5,9 @@
  */
 package com.opengamma.engine.view.cache;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.mapping.FudgeDeserializer;
@@ -21,7 +24,8 @@ import com.opengamma.util.ArgumentChecker;
  * {@link FudgeSynchronousClient} implementation for the remote cache component clients. The client
  * has a "get" and "put" channel. Although equal priority, this gives two blocking queues to isolate
  * operations that query the cache from those that update or control it. This allows, for example,
- * cache writes from a previous job to not delay loads needed by the next job.
+ * cache writes from a previous job to not delay loads needed by the next job. Multiple requests
+ * may be in flight on each channel.
  */
 public class RemoteCacheClient {
 
@@ -50,6 +54,23 @@ public class RemoteCacheClient {
       return response;
     }
 
+    private <Response extends CacheMessage> List<Response> sendMessages(final List<? extends CacheMessage> requests, final Class<Response> responseClass) {
+      final FudgeSerializer scontext = new FudgeSerializer(getMessageSender().getFudgeContext());
+      final List<PendingRequest> pending = new ArrayList<PendingRequest>(requests.size());
+      // Send all of the requests before waiting for any responses so that they are processed concurrently
+      for (CacheMessage request : requests) {
+        final long correlationId = getNextCorrelationId();
+        request.setCorrelationId(correlationId);
+        pending.add(sendRequest(FudgeSerializer.addClassHeader(scontext.objectToFudgeMsg(request), request.getClass(), CacheMessage.class), correlationId));
+      }
+      final FudgeDeserializer dcontext = new FudgeDeserializer(getMessageSender().getFudgeContext());
+      final List<Response> responses = new ArrayList<Response>(pending.size());
+      for (PendingRequest request : pending) {
+        responses.add(dcontext.fudgeMsgToObject(responseClass, waitForResponse(request)));
+      }
+      return responses;
+    }
+
     private <Message extends CacheMessage> void postMessage(final Message message) {
       final FudgeSerializer scontext = new FudgeSerializer(getMessageSender().getFudgeContext());
       sendMessage(FudgeSerializer.addClassHeader(scontext.objectToFudgeMsg(message), message.getClass(), CacheMessage.class));
@@ -101,6 +122,30 @@ public class RemoteCacheClient {
     return _fudgePuts.sendMessage(request, expectedResponse);
   }
 
+  /**
+   * Sends a number of "get" requests, allowing them all to be in flight at once, and waits for the responses.
+   * 
+   * @param <T> the response type
+   * @param requests the requests to send
+   * @param expectedResponse the response type
+   * @return the responses in the same order as the requests
+   */
+  protected <T extends CacheMessage> List<T> sendGetMessages(final List<? extends CacheMessage> requests, final Class<T> expectedResponse) {
+    return _fudgeGets.sendMessages(requests, expectedResponse);
+  }
+
+  /**
+   * Sends a number of "put" requests, allowing them all to be in flight at once, and waits for the responses.
+   * 
+   * @param <T> the response type
+   * @param requests the requests to send
+   * @param expectedResponse the response type
+   * @return the responses in the same order as the requests
+   */
+  protected <T extends CacheMessage> List<T> sendPutMessages(final List<? extends CacheMessage> requests, final Class<T> expectedResponse) {
+    return _fudgePuts.sendMessages(requests, expectedResponse);
+  }
+
   protected FudgeContext getFudgeContext() {
     return _fudgeGets.getMessageSender().getFudgeContext();
   }
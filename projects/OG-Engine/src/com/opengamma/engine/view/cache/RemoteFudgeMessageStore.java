@@ -1,36 +1,57 @@
 /**
  * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
- * 
+ *
  * Please see distribution for license.
  */
 package com.opengamma.engine.view.cache;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.wire.EncodedFudgeMsg;
 
 import com.opengamma.engine.view.cache.msg.CacheMessage;
 import com.opengamma.engine.view.cache.msg.DeleteRequest;
-import com.opengamma.engine.view.cache.msg.GetRequest;
-import com.opengamma.engine.view.cache.msg.GetResponse;
-import com.opengamma.engine.view.cache.msg.PutRequest;
+import com.opengamma.engine.view.cache.msg.GetBinaryRequest;
+import com.opengamma.engine.view.cache.msg.GetBinaryResponse;
+import com.opengamma.engine.view.cache.msg.PutBinaryRequest;
+import com.opengamma.util.ArgumentChecker;
 
 /**
  * Client to a {@link FudgeMessageStoreServer}. These are created by a {@link RemoteFudgeMessageStoreFactory}.
+ * <p>
+ * Values are exchanged with the server in their encoded form so that the server does not need to decode
+ * and re-encode them. Large batches are split into a number of requests which are all sent before waiting
+ * for any of the responses so that the server can process them concurrently.
  */
 public class RemoteFudgeMessageStore implements FudgeMessageStore {
 
+  /**
+   * Default maximum number of values in a single request.
+   */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
   private final RemoteCacheClient _client;
   private final ViewComputationCacheKey _cacheKey;
+  private final int _maxBatchSize;
 
   public RemoteFudgeMessageStore(final RemoteCacheClient client, final ViewComputationCacheKey cacheKey) {
+    this(client, cacheKey, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  public RemoteFudgeMessageStore(final RemoteCacheClient client, final ViewComputationCacheKey cacheKey, final int maxBatchSize) {
+    ArgumentChecker.notNegativeOrZero(maxBatchSize, "maxBatchSize");
     _client = client;
     _cacheKey = cacheKey;
+    _maxBatchSize = maxBatchSize;
   }
 
   protected RemoteCacheClient getRemoteCacheClient() {
@@ -41,6 +62,18 @@ public class RemoteFudgeMessageStore implements FudgeMessageStore {
     return _cacheKey;
   }
 
+  protected int getMaxBatchSize() {
+    return _maxBatchSize;
+  }
+
+  private FudgeMsg decode(final byte[] data) {
+    return (data.length == 0) ? null : new EncodedFudgeMsg(data, getRemoteCacheClient().getFudgeContext());
+  }
+
+  private byte[] encode(final FudgeMsg data) {
+    return FudgeMessageStoreServer.encode(getRemoteCacheClient().getFudgeContext(), data);
+  }
+
   @Override
   public void delete() {
     // [ENG-256] Don't need the delete messages if we propogate at the releaseCaches level
@@ -50,46 +83,74 @@ public class RemoteFudgeMessageStore implements FudgeMessageStore {
 
   @Override
   public FudgeMsg get(long identifier) {
-    final GetRequest request = new GetRequest(getCacheKey().getViewCycleId(), getCacheKey()
+    final GetBinaryRequest request = new GetBinaryRequest(getCacheKey().getViewCycleId(), getCacheKey()
         .getCalculationConfigurationName(), Collections.singleton(identifier));
-    final GetResponse response = getRemoteCacheClient().sendGetMessage(request, GetResponse.class);
-    final FudgeMsg data = response.getData().get(0);
-    return data.isEmpty() ? null : data;
+    final GetBinaryResponse response = getRemoteCacheClient().sendGetMessage(request, GetBinaryResponse.class);
+    return decode(response.getData().get(0));
   }
 
   @Override
-  public Map<Long, FudgeMsg> get(Collection<Long> identifiers) {
-    final GetRequest request = new GetRequest(getCacheKey().getViewCycleId(), getCacheKey()
-        .getCalculationConfigurationName(), identifiers);
-    final GetResponse response = getRemoteCacheClient().sendGetMessage(request, GetResponse.class);
-    final Map<Long, FudgeMsg> result = new HashMap<Long, FudgeMsg>();
-    final List<FudgeMsg> values = response.getData();
-    int i = 0;
-    for (Long identifier : request.getIdentifier()) {
-      result.put(identifier, values.get(i++));
+  public Long2ObjectMap<FudgeMsg> get(LongCollection identifiers) {
+    final Long2ObjectMap<FudgeMsg> result = new Long2ObjectOpenHashMap<FudgeMsg>(identifiers.size());
+    if (identifiers.isEmpty()) {
+      return result;
+    }
+    // Request i holds the identifiers from i * getMaxBatchSize() in this array
+    final long[] identifierArray = identifiers.toLongArray();
+    final List<GetBinaryRequest> requests = new ArrayList<GetBinaryRequest>((identifierArray.length + getMaxBatchSize() - 1) / getMaxBatchSize());
+    for (int offset = 0; offset < identifierArray.length; offset += getMaxBatchSize()) {
+      final LongArrayList batch = new LongArrayList(identifierArray, offset, Math.min(identifierArray.length - offset, getMaxBatchSize()));
+      requests.add(new GetBinaryRequest(getCacheKey().getViewCycleId(), getCacheKey().getCalculationConfigurationName(), batch));
+    }
+    final List<GetBinaryResponse> responses = getRemoteCacheClient().sendGetMessages(requests, GetBinaryResponse.class);
+    int index = 0;
+    for (GetBinaryResponse response : responses) {
+      for (byte[] data : response.getData()) {
+        final FudgeMsg value = decode(data);
+        if (value != null) {
+          result.put(identifierArray[index], value);
+        }
+        index++;
+      }
     }
     return result;
   }
 
   @Override
   public void put(long identifier, FudgeMsg data) {
-    final PutRequest request = new PutRequest(getCacheKey().getViewCycleId(), getCacheKey()
+    final PutBinaryRequest request = new PutBinaryRequest(getCacheKey().getViewCycleId(), getCacheKey()
         .getCalculationConfigurationName(), Collections.singleton(identifier),
-        Collections.singleton(data));
+        Collections.singleton(encode(data)));
     getRemoteCacheClient().sendPutMessage(request, CacheMessage.class);
   }
 
   @Override
-  public void put(Map<Long, FudgeMsg> data) {
-    final List<Long> identifiers = new ArrayList<Long>(data.size());
-    final List<FudgeMsg> values = new ArrayList<FudgeMsg>(data.size());
-    for (Map.Entry<Long, FudgeMsg> entry : data.entrySet()) {
-      identifiers.add(entry.getKey());
-      values.add(entry.getValue());
+  public void put(Long2ObjectMap<FudgeMsg> data) {
+    if (data.isEmpty()) {
+      return;
+    }
+    final List<PutBinaryRequest> requests = new ArrayList<PutBinaryRequest>((data.size() + getMaxBatchSize() - 1) / getMaxBatchSize());
+    LongArrayList identifiers = new LongArrayList(Math.min(data.size(), getMaxBatchSize()));
+    List<byte[]> values = new ArrayList<byte[]>(Math.min(data.size(), getMaxBatchSize()));
+    final LongIterator itr = data.keySet().iterator();
+    while (itr.hasNext()) {
+      final long identifier = itr.nextLong();
+      identifiers.add(identifier);
+      values.add(encode(data.get(identifier)));
+      if (identifiers.size() == getMaxBatchSize()) {
+        requests.add(new PutBinaryRequest(getCacheKey().getViewCycleId(), getCacheKey().getCalculationConfigurationName(), identifiers, values));
+        identifiers = new LongArrayList(getMaxBatchSize());
+        values = new ArrayList<byte[]>(getMaxBatchSize());
+      }
+    }
+    if (!identifiers.isEmpty()) {
+      requests.add(new PutBinaryRequest(getCacheKey().getViewCycleId(), getCacheKey().getCalculationConfigurationName(), identifiers, values));
+    }
+    if (requests.size() == 1) {
+      getRemoteCacheClient().sendPutMessage(requests.get(0), CacheMessage.class);
+    } else {
+      getRemoteCacheClient().sendPutMessages(requests, CacheMessage.class);
     }
-    final PutRequest request = new PutRequest(getCacheKey().getViewCycleId(), getCacheKey()
-        .getCalculationConfigurationName(), identifiers, values);
-    getRemoteCacheClient().sendPutMessage(request, CacheMessage.class);
   }
 
 }
@@ -5,12 +5,15 @@
  */
 package com.opengamma.engine.view.cache;
 
+import com.opengamma.util.ArgumentChecker;
+
 /**
  * Creates {@link RemoteFudgeMessageStore} clients to connect to a {@link FudgeMessageStoreServer}.
  */
 public class RemoteFudgeMessageStoreFactory implements FudgeMessageStoreFactory {
 
   private final RemoteCacheClient _client;
+  private int _maxBatchSize = RemoteFudgeMessageStore.DEFAULT_MAX_BATCH_SIZE;
 
   public RemoteFudgeMessageStoreFactory(final RemoteCacheClient client) {
     _client = client;
@@ -20,9 +23,24 @@ public class RemoteFudgeMessageStoreFactory implements FudgeMessageStoreFactory
     return _client;
   }
 
+  /**
+   * Sets the maximum number of values sent in a single request. Larger batches are split into multiple
+   * requests which are sent concurrently.
+   * 
+   * @param maxBatchSize the maximum batch size
+   */
+  public void setMaxBatchSize(final int maxBatchSize) {
+    ArgumentChecker.notNegativeOrZero(maxBatchSize, "maxBatchSize");
+    _maxBatchSize = maxBatchSize;
+  }
+
+  public int getMaxBatchSize() {
+    return _maxBatchSize;
+  }
+
   @Override
   public FudgeMessageStore createMessageStore(final ViewComputationCacheKey cacheKey) {
-    return new RemoteFudgeMessageStore(getRemoteCacheClient(), cacheKey);
+    return new RemoteFudgeMessageStore(getRemoteCacheClient(), cacheKey, getMaxBatchSize());
   }
 
 }
@@ -5,11 +5,16 @@
  */
 package com.opengamma.engine.view.cache;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.cache.msg.IdentifierLookupRequest;
@@ -40,11 +45,11 @@ public class RemoteIdentifierMap implements IdentifierMap {
   }
 
   @Override
-  public Map<ValueSpecification, Long> getIdentifiers(Collection<ValueSpecification> specs) {
+  public Object2LongMap<ValueSpecification> getIdentifiers(Collection<ValueSpecification> specs) {
     final IdentifierLookupRequest request = new IdentifierLookupRequest(specs);
     final IdentifierLookupResponse response = getRemoteCacheClient().sendGetMessage(request, IdentifierLookupResponse.class);
     final List<Long> identifiers = response.getIdentifier();
-    final Map<ValueSpecification, Long> identifierMap = new HashMap<ValueSpecification, Long>();
+    final Object2LongMap<ValueSpecification> identifierMap = new Object2LongOpenHashMap<ValueSpecification>(identifiers.size());
     int i = 0;
     for (ValueSpecification spec : request.getSpecification()) {
       identifierMap.put(spec, identifiers.get(i++));
@@ -60,14 +65,16 @@ public class RemoteIdentifierMap implements IdentifierMap {
   }
 
   @Override
-  public Map<Long, ValueSpecification> getValueSpecifications(Collection<Long> identifiers) {
+  public Long2ObjectMap<ValueSpecification> getValueSpecifications(LongCollection identifiers) {
     final SpecificationLookupRequest request = new SpecificationLookupRequest(identifiers);
     final SpecificationLookupResponse response = getRemoteCacheClient().sendGetMessage(request, SpecificationLookupResponse.class);
     final List<ValueSpecification> specifications = response.getSpecification();
-    final Map<Long, ValueSpecification> specificationMap = new HashMap<Long, ValueSpecification>();
+    final Long2ObjectMap<ValueSpecification> specificationMap = new Long2ObjectOpenHashMap<ValueSpecification>(specifications.size());
+    // The request holds the identifiers in iteration order
+    final LongIterator itr = identifiers.iterator();
     int i = 0;
-    for (Long identifier : request.getIdentifier()) {
-      specificationMap.put(identifier, specifications.get(i++));
+    while (itr.hasNext()) {
+      specificationMap.put(itr.nextLong(), specifications.get(i++));
     }
     return specificationMap;
   }
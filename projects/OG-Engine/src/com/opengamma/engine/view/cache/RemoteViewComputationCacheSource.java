@@ -5,8 +5,10 @@
  */
 package com.opengamma.engine.view.cache;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
 import java.util.List;
-import java.util.Map;
 
 import net.sf.ehcache.CacheManager;
 
@@ -54,6 +56,8 @@ public class RemoteViewComputationCacheSource extends DefaultViewComputationCach
     super(createIdentifierMap(client), fudgeContext, privateDataStoreFactory, createFudgeMessageStoreFactory(client,
         cacheManager, -1));
     client.setAsynchronousMessageReceiver(this);
+    // Overlap the remote shared data store operations with the local private ones
+    setOverlapExecutor(new ThreadPerThreadExecutor());
   }
 
   public RemoteViewComputationCacheSource(final RemoteCacheClient client,
@@ -62,6 +66,8 @@ public class RemoteViewComputationCacheSource extends DefaultViewComputationCach
     super(createIdentifierMap(client), fudgeContext, privateDataStoreFactory, createFudgeMessageStoreFactory(client,
         cacheManager, maxLocalCachedElements));
     client.setAsynchronousMessageReceiver(this);
+    // Overlap the remote shared data store operations with the local private ones
+    setOverlapExecutor(new ThreadPerThreadExecutor());
   }
 
   private static IdentifierMap createIdentifierMap(final RemoteCacheClient client) {
@@ -103,11 +109,11 @@ public class RemoteViewComputationCacheSource extends DefaultViewComputationCach
             cache.getSharedDataStore().put(identifier, data);
           }
         } else {
-          final Map<Long, FudgeMsg> data = cache.getPrivateDataStore().get(identifiers);
+          final Long2ObjectMap<FudgeMsg> data = cache.getPrivateDataStore().get(new LongArrayList(identifiers));
           if (data.size() == 1) {
             s_logger.debug("Found 1 of {} identifiers in private cache", identifiers.size());
-            final Map.Entry<Long, FudgeMsg> entry = data.entrySet().iterator().next();
-            cache.getSharedDataStore().put(entry.getKey(), entry.getValue());
+            final long identifier = data.keySet().iterator().nextLong();
+            cache.getSharedDataStore().put(identifier, data.get(identifier));
           } else if (data.size() > 1) {
             s_logger.debug("Found {} of {} identifiers in private cache", data.size(), identifiers.size());
             cache.getSharedDataStore().put(data);
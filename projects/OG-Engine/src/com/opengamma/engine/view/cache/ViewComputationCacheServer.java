@@ -84,10 +84,7 @@ public class ViewComputationCacheServer implements FudgeConnectionReceiver, Fudg
       return (T) message.accept(getIdentifierMap());
     }
 
-    @Override
-    public void messageReceived(final FudgeContext context, final FudgeMsgEnvelope message) {
-      final FudgeDeserializer deserializer = new FudgeDeserializer(context);
-      final CacheMessage request = deserializer.fudgeMsgToObject(CacheMessage.class, message.getMessage());
+    private void handleRequest(final FudgeContext context, final CacheMessage request) {
       CacheMessage response = request.accept(this);
       if (response == null) {
         if (request.getCorrelationId() != null) {
@@ -104,6 +101,22 @@ public class ViewComputationCacheServer implements FudgeConnectionReceiver, Fudg
       }
     }
 
+    @Override
+    public void messageReceived(final FudgeContext context, final FudgeMsgEnvelope message) {
+      final FudgeDeserializer deserializer = new FudgeDeserializer(context);
+      final CacheMessage request = deserializer.fudgeMsgToObject(CacheMessage.class, message.getMessage());
+      if (FudgeMessageStoreServer.isPipelined(request)) {
+        ViewComputationCacheServer.this.getBinaryDataStore().execute(new Runnable() {
+          @Override
+          public void run() {
+            handleRequest(context, request);
+          }
+        });
+      } else {
+        handleRequest(context, request);
+      }
+    }
+
   };
 
   @Override
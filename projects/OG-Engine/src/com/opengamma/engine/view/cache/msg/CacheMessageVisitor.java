@@ -29,6 +29,14 @@ public abstract class CacheMessageVisitor {
     return visitBinaryDataStoreMessage(message);
   }
 
+  protected GetBinaryResponse visitGetBinaryRequest(final GetBinaryRequest message) {
+    return visitBinaryDataStoreMessage(message);
+  }
+
+  protected CacheMessage visitGetBinaryResponse(final GetBinaryResponse message) {
+    return visitBinaryDataStoreMessage(message);
+  }
+
   protected GetResponse visitGetRequest(final GetRequest message) {
     return visitBinaryDataStoreMessage(message);
   }
@@ -45,6 +53,10 @@ public abstract class CacheMessageVisitor {
     return visitIdentifierMapMessage(message);
   }
 
+  protected CacheMessage visitPutBinaryRequest(final PutBinaryRequest message) {
+    return visitBinaryDataStoreMessage(message);
+  }
+
   protected CacheMessage visitPutRequest(final PutRequest message) {
     return visitBinaryDataStoreMessage(message);
   }
@@ -0,0 +1,51 @@
+// Automatically created - do not modify
+///CLOVER:OFF
+// CSOFF: Generated File
+package com.opengamma.engine.view.cache.msg;
+public class GetBinaryRequest extends com.opengamma.engine.view.cache.msg.GetRequest implements java.io.Serializable {
+  public CacheMessage accept (CacheMessageVisitor visitor) { return visitor.visitGetBinaryRequest (this); }
+  private static final long serialVersionUID = 1l;
+  public GetBinaryRequest (com.opengamma.id.UniqueId viewCycleId, String calculationConfigurationName, java.util.Collection<? extends Long> identifier) {
+    super (viewCycleId, calculationConfigurationName, identifier);
+  }
+  protected GetBinaryRequest (final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg fudgeMsg) {
+    super (deserializer, fudgeMsg);
+  }
+  public GetBinaryRequest (Long correlationId, com.opengamma.id.UniqueId viewCycleId, String calculationConfigurationName, java.util.Collection<? extends Long> identifier) {
+    super (correlationId, viewCycleId, calculationConfigurationName, identifier);
+  }
+  protected GetBinaryRequest (final GetBinaryRequest source) {
+    super (source);
+  }
+  public GetBinaryRequest clone () {
+    return new GetBinaryRequest (this);
+  }
+  public org.fudgemsg.FudgeMsg toFudgeMsg (final org.fudgemsg.mapping.FudgeSerializer serializer) {
+    if (serializer == null) throw new NullPointerException ("serializer must not be null");
+    final org.fudgemsg.MutableFudgeMsg msg = serializer.newMessage ();
+    toFudgeMsg (serializer, msg);
+    return msg;
+  }
+  public void toFudgeMsg (final org.fudgemsg.mapping.FudgeSerializer serializer, final org.fudgemsg.MutableFudgeMsg msg) {
+    super.toFudgeMsg (serializer, msg);
+  }
+  public static GetBinaryRequest fromFudgeMsg (final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg fudgeMsg) {
+    final java.util.List<org.fudgemsg.FudgeField> types = fudgeMsg.getAllByOrdinal (0);
+    for (org.fudgemsg.FudgeField field : types) {
+      final String className = (String)field.getValue ();
+      if ("com.opengamma.engine.view.cache.msg.GetBinaryRequest".equals (className)) break;
+      try {
+        return (com.opengamma.engine.view.cache.msg.GetBinaryRequest)Class.forName (className).getDeclaredMethod ("fromFudgeMsg", org.fudgemsg.mapping.FudgeDeserializer.class, org.fudgemsg.FudgeMsg.class).invoke (null, deserializer, fudgeMsg);
+      }
+      catch (Throwable t) {
+        // no-action
+      }
+    }
+    return new GetBinaryRequest (deserializer, fudgeMsg);
+  }
+  public String toString () {
+    return org.apache.commons.lang.builder.ToStringBuilder.reflectionToString(this, org.apache.commons.lang.builder.ToStringStyle.SHORT_PREFIX_STYLE);
+  }
+}
+///CLOVER:ON
+// CSON: Generated File
@@ -0,0 +1,123 @@
+// Automatically created - do not modify
+///CLOVER:OFF
+// CSOFF: Generated File
+package com.opengamma.engine.view.cache.msg;
+public class GetBinaryResponse extends com.opengamma.engine.view.cache.msg.CacheMessage implements java.io.Serializable {
+  public CacheMessage accept (CacheMessageVisitor visitor) { return visitor.visitGetBinaryResponse (this); }
+  private static final long serialVersionUID = 1l;
+  private java.util.List<byte[]> _data;
+  public static final String DATA_KEY = "data";
+  public GetBinaryResponse (java.util.Collection<byte[]> data) {
+    if (data == null) throw new NullPointerException ("'data' cannot be null");
+    else {
+      final java.util.List<byte[]> fudge0 = new java.util.ArrayList<byte[]> (data);
+      if (data.size () == 0) throw new IllegalArgumentException ("'data' cannot be an empty list");
+      for (java.util.ListIterator<byte[]> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        byte[] fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'data' cannot be null");
+      }
+      _data = fudge0;
+    }
+  }
+  protected GetBinaryResponse (final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg fudgeMsg) {
+    super (deserializer, fudgeMsg);
+    java.util.List<org.fudgemsg.FudgeField> fudgeFields;
+    fudgeFields = fudgeMsg.getAllByName (DATA_KEY);
+    if (fudgeFields.size () == 0) throw new IllegalArgumentException ("Fudge message is not a GetBinaryResponse - field 'data' is not present");
+    _data = new java.util.ArrayList<byte[]> (fudgeFields.size ());
+    for (org.fudgemsg.FudgeField fudge1 : fudgeFields) {
+      try {
+        final byte[] fudge2;
+        fudge2 = fudgeMsg.getFieldValue (byte[].class, fudge1);
+        _data.add (fudge2);
+      }
+      catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException ("Fudge message is not a GetBinaryResponse - field 'data' is not byte[]", e);
+      }
+    }
+  }
+  public GetBinaryResponse (Long correlationId, java.util.Collection<byte[]> data) {
+    super (correlationId);
+    if (data == null) throw new NullPointerException ("'data' cannot be null");
+    else {
+      final java.util.List<byte[]> fudge0 = new java.util.ArrayList<byte[]> (data);
+      if (data.size () == 0) throw new IllegalArgumentException ("'data' cannot be an empty list");
+      for (java.util.ListIterator<byte[]> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        byte[] fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'data' cannot be null");
+      }
+      _data = fudge0;
+    }
+  }
+  protected GetBinaryResponse (final GetBinaryResponse source) {
+    super (source);
+    if (source == null) throw new NullPointerException ("'source' must not be null");
+    if (source._data == null) _data = null;
+    else {
+      _data = new java.util.ArrayList<byte[]> (source._data);
+    }
+  }
+  public GetBinaryResponse clone () {
+    return new GetBinaryResponse (this);
+  }
+  public org.fudgemsg.FudgeMsg toFudgeMsg (final org.fudgemsg.mapping.FudgeSerializer serializer) {
+    if (serializer == null) throw new NullPointerException ("serializer must not be null");
+    final org.fudgemsg.MutableFudgeMsg msg = serializer.newMessage ();
+    toFudgeMsg (serializer, msg);
+    return msg;
+  }
+  public void toFudgeMsg (final org.fudgemsg.mapping.FudgeSerializer serializer, final org.fudgemsg.MutableFudgeMsg msg) {
+    super.toFudgeMsg (serializer, msg);
+    if (_data != null)  {
+      for (byte[] fudge1 : _data) {
+        msg.add (DATA_KEY, null, fudge1);
+      }
+    }
+  }
+  public static GetBinaryResponse fromFudgeMsg (final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg fudgeMsg) {
+    final java.util.List<org.fudgemsg.FudgeField> types = fudgeMsg.getAllByOrdinal (0);
+    for (org.fudgemsg.FudgeField field : types) {
+      final String className = (String)field.getValue ();
+      if ("com.opengamma.engine.view.cache.msg.GetBinaryResponse".equals (className)) break;
+      try {
+        return (com.opengamma.engine.view.cache.msg.GetBinaryResponse)Class.forName (className).getDeclaredMethod ("fromFudgeMsg", org.fudgemsg.mapping.FudgeDeserializer.class, org.fudgemsg.FudgeMsg.class).invoke (null, deserializer, fudgeMsg);
+      }
+      catch (Throwable t) {
+        // no-action
+      }
+    }
+    return new GetBinaryResponse (deserializer, fudgeMsg);
+  }
+  public java.util.List<byte[]> getData () {
+    return java.util.Collections.unmodifiableList (_data);
+  }
+  public void setData (byte[] data) {
+    if (data == null) throw new NullPointerException ("'data' cannot be null");
+    else {
+      _data = new java.util.ArrayList<byte[]> (1);
+      addData (data);
+    }
+  }
+  public void setData (java.util.Collection<byte[]> data) {
+    if (data == null) throw new NullPointerException ("'data' cannot be null");
+    else {
+      final java.util.List<byte[]> fudge0 = new java.util.ArrayList<byte[]> (data);
+      if (data.size () == 0) throw new IllegalArgumentException ("'data' cannot be an empty list");
+      for (java.util.ListIterator<byte[]> fudge1 = fudge0.listIterator (); fudge1.hasNext (); ) {
+        byte[] fudge2 = fudge1.next ();
+        if (fudge2 == null) throw new NullPointerException ("List element of 'data' cannot be null");
+      }
+      _data = fudge0;
+    }
+  }
+  public void addData (byte[] data) {
+    if (data == null) throw new NullPointerException ("'data' cannot be null");
+    if (_data == null) _data = new java.util.ArrayList<byte[]> ();
+    _data.add (data);
+  }
+  public String toString () {
+    return org.apache.commons.lang.builder.ToStringBuilder.reflectionToString(this, org.apache.commons.lang.builder.ToStringStyle.SHORT_PREFIX_STYLE);
+  }
+}
+///CLOVER:ON
+// CSON: Generated File
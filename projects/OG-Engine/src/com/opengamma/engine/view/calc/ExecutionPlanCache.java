@@ -1,33 +1,167 @@
 /**
  * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
- * 
+ *
  * Please see distribution for license.
  */
 package com.opengamma.engine.view.calc;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
 import com.opengamma.util.ehcache.EHCacheUtils;
+import com.opengamma.util.tuple.Pair;
 
+/**
+ * Caches execution plans built by a {@link MultipleNodeExecutor}.
+ * <p>
+ * Plans are keyed on the fingerprint of the graph's nodes rather than on the node set itself, so finding a plan does not
+ * need to hash or compare every node. The most recent plan executed for each calculation configuration of a view process
+ * is also retained so that the executor can patch it for a graph with only a few nodes added or removed instead of
+ * planning from scratch.
+ * <p>
+ * When a plan completes, the invocation costs it was built with are periodically compared against the current function
+ * costs. If they have drifted beyond a threshold a replacement plan is built in the background, by the executor which
+ * has just run the plan; the existing plan remains in use until the replacement is available.
+ */
 /* package */class ExecutionPlanCache {
 
+  private static final Logger s_logger = LoggerFactory.getLogger(ExecutionPlanCache.class);
+
   private static final String CACHE_NAME = "executionPlans";
 
+  /**
+   * Default executor for building replacement plans, shared by all caches. Its single thread is a daemon and is only
+   * created when a plan is first replaced.
+   */
+  private static final Executor s_defaultReplanExecutor = Executors.newSingleThreadExecutor(new NamedThreadPoolFactory("ExecutionPlanCache", true));
+
+  /**
+   * Default proportion by which the plan's costs may drift before it is rebuilt.
+   */
+  public static final double DEFAULT_COST_DRIFT_THRESHOLD = 0.5;
+
+  /**
+   * Default minimum time, in milliseconds, between checking the costs of a plan.
+   */
+  public static final long DEFAULT_COST_DRIFT_CHECK_PERIOD = 60000L;
+
+  /**
+   * Default proportion of a graph that may be added or removed for a plan to be patched rather than rebuilt.
+   */
+  public static final double DEFAULT_MAXIMUM_PATCH_PROPORTION = 0.05;
+
   private final Cache _cache;
+  private final Set<PlanKey> _replanning = Collections.newSetFromMap(new ConcurrentHashMap<PlanKey, Boolean>());
+  private Executor _replanExecutor;
+  private volatile double _costDriftThreshold = DEFAULT_COST_DRIFT_THRESHOLD;
+  private volatile long _costDriftCheckPeriod = DEFAULT_COST_DRIFT_CHECK_PERIOD;
+  private volatile double _maximumPatchProportion = DEFAULT_MAXIMUM_PATCH_PROPORTION;
+
+  /**
+   * Identifies a graph by its configuration, size and node fingerprint.
+   */
+  private static final class PlanKey {
+
+    private final String _calculationConfigurationName;
+    private final int _size;
+    private final long _fingerprint;
+
+    public PlanKey(final DependencyGraph graph) {
+      _calculationConfigurationName = graph.getCalculationConfigurationName();
+      _size = graph.getSize();
+      _fingerprint = graph.getFingerprint();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof PlanKey)) {
+        return false;
+      }
+      final PlanKey other = (PlanKey) o;
+      return (_fingerprint == other._fingerprint) && (_size == other._size) && _calculationConfigurationName.equals(other._calculationConfigurationName);
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (_fingerprint ^ (_fingerprint >>> 32)) ^ _size;
+    }
+
+    @Override
+    public String toString() {
+      return _calculationConfigurationName + "/" + _size + "/" + Long.toHexString(_fingerprint);
+    }
+
+  }
 
   public ExecutionPlanCache(final CacheManager manager, final int cacheSize) {
     if (cacheSize > 0) {
       EHCacheUtils.addCache(manager, CACHE_NAME, cacheSize, MemoryStoreEvictionPolicy.LRU, false, null, true, 1800, 300, false, 0, null);
       _cache = EHCacheUtils.getCacheFromManager(manager, CACHE_NAME);
+      _replanExecutor = s_defaultReplanExecutor;
     } else {
       _cache = null;
     }
   }
 
+  /**
+   * Sets the executor used to build replacement plans, or null to never replace plans when costs drift.
+   *
+   * @param replanExecutor the executor, or null
+   */
+  public void setReplanExecutor(final Executor replanExecutor) {
+    _replanExecutor = replanExecutor;
+  }
+
+  public Executor getReplanExecutor() {
+    return _replanExecutor;
+  }
+
+  public void setCostDriftThreshold(final double costDriftThreshold) {
+    ArgumentChecker.isTrue(costDriftThreshold > 0, "costDriftThreshold");
+    _costDriftThreshold = costDriftThreshold;
+  }
+
+  public double getCostDriftThreshold() {
+    return _costDriftThreshold;
+  }
+
+  public void setCostDriftCheckPeriod(final long costDriftCheckPeriod) {
+    ArgumentChecker.notNegative(costDriftCheckPeriod, "costDriftCheckPeriod");
+    _costDriftCheckPeriod = costDriftCheckPeriod;
+  }
+
+  public long getCostDriftCheckPeriod() {
+    return _costDriftCheckPeriod;
+  }
+
+  public void setMaximumPatchProportion(final double maximumPatchProportion) {
+    ArgumentChecker.notNegative(maximumPatchProportion, "maximumPatchProportion");
+    _maximumPatchProportion = maximumPatchProportion;
+  }
+
+  public double getMaximumPatchProportion() {
+    return _maximumPatchProportion;
+  }
+
   public void clear() {
     if (_cache != null) {
       _cache.removeAll();
@@ -36,7 +170,28 @@ import com.opengamma.util.ehcache.EHCacheUtils;
 
   public RootGraphFragment getCachedExecutionPlan(final DependencyGraph graph) {
     if (_cache != null) {
-      final Element element = _cache.get(graph.getDependencyNodes());
+      final Element element = _cache.get(new PlanKey(graph));
+      if (element != null) {
+        return (RootGraphFragment) element.getObjectValue();
+      } else {
+        return null;
+      }
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the plan most recently executed for a calculation configuration of a view process. This may be for a different
+   * graph to the one about to be executed.
+   *
+   * @param viewProcessId the view process
+   * @param calculationConfigurationName the calculation configuration
+   * @return the plan, or null if there is none
+   */
+  public RootGraphFragment getLatestExecutionPlan(final UniqueId viewProcessId, final String calculationConfigurationName) {
+    if (_cache != null) {
+      final Element element = _cache.get(Pair.of(viewProcessId, calculationConfigurationName));
       if (element != null) {
         return (RootGraphFragment) element.getObjectValue();
       } else {
@@ -47,12 +202,101 @@ import com.opengamma.util.ehcache.EHCacheUtils;
     }
   }
 
-  public void cacheExecutionPlan(final DependencyGraph graph, final RootGraphFragment plan) {
+  /**
+   * Stores a plan after its execution has completed. A plan does not replace one built more recently for the same graph, for
+   * example a replacement built because of cost drift.
+   *
+   * @param executor the executor which has run the plan, and which will build any replacement
+   * @param graph the graph the plan is for
+   * @param plan the plan
+   */
+  public void cacheExecutionPlan(final MultipleNodeExecutor executor, final DependencyGraph graph, final RootGraphFragment plan) {
     if (_cache != null) {
-      _cache.put(new Element(graph.getDependencyNodes(), plan));
+      final PlanKey key = new PlanKey(graph);
+      if (!storeExecutionPlan(key, plan)) {
+        return;
+      }
+      final UniqueId viewProcessId = executor.getViewProcessId();
+      if (viewProcessId != null) {
+        _cache.put(new Element(Pair.of(viewProcessId, graph.getCalculationConfigurationName()), plan));
+      }
+      final Executor replanExecutor = _replanExecutor;
+      if ((replanExecutor != null) && plan.isCostCheckDue(getCostDriftCheckPeriod())) {
+        checkCostDrift(replanExecutor, executor, key, graph, plan);
+      }
     }
   }
 
-  // TODO [ENG-269] If the function costs change significantly, invalidate the execution plan cache.
+  private synchronized boolean storeExecutionPlan(final PlanKey key, final RootGraphFragment plan) {
+    final Element element = _cache.get(key);
+    if (element != null) {
+      final RootGraphFragment existing = (RootGraphFragment) element.getObjectValue();
+      if (existing == plan) {
+        return true;
+      }
+      if (existing.getPlanIdentifier() > plan.getPlanIdentifier()) {
+        s_logger.debug("Not caching execution plan for {} as a newer one is available", key);
+        return false;
+      }
+    }
+    _cache.put(new Element(key, plan));
+    return true;
+  }
+
+  private void checkCostDrift(final Executor replanExecutor, final MultipleNodeExecutor executor, final PlanKey key, final DependencyGraph graph,
+      final RootGraphFragment plan) {
+    if (!_replanning.add(key)) {
+      // Already checking or rebuilding this plan
+      return;
+    }
+    try {
+      replanExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            final double drift = plan.getCostDrift();
+            if (drift > getCostDriftThreshold()) {
+              s_logger.info("Function costs have drifted by {} since execution plan for {} was built; rebuilding", drift, key);
+              final RootGraphFragment replacement = executor.buildExecutionPlan(graph, new ReplacementStatisticsGatherer(plan.getStatistics()));
+              storeExecutionPlan(key, replacement);
+            } else {
+              s_logger.debug("Function costs have drifted by {} since execution plan for {} was built", drift, key);
+            }
+          } catch (RuntimeException e) {
+            s_logger.warn("Couldn't rebuild execution plan for " + key, e);
+          } finally {
+            _replanning.remove(key);
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      _replanning.remove(key);
+      s_logger.warn("Couldn't schedule cost check of execution plan for {} - {}", key, e.getMessage());
+    }
+  }
+
+  /**
+   * Statistics for a replacement plan. Building the plan dispatches nothing so is not reported as the graph being processed;
+   * executions of the plan are reported as the superseded plan's were.
+   */
+  private static final class ReplacementStatisticsGatherer implements GraphExecutorStatisticsGatherer {
+
+    private final GraphExecutorStatisticsGatherer _underlying;
+
+    public ReplacementStatisticsGatherer(final GraphExecutorStatisticsGatherer underlying) {
+      _underlying = underlying;
+    }
+
+    @Override
+    public void graphProcessed(final String calcConfig, final int totalJobs, final double meanJobSize, final double meanJobCycleCost, final double meanJobIOCost) {
+      // Nothing has been dispatched
+    }
+
+    @Override
+    public void graphExecuted(final String calcConfig, final int nodeCount, final long executionTime, final long duration) {
+      _underlying.graphExecuted(calcConfig, nodeCount, executionTime, duration);
+    }
+
+  }
 
 }
@@ -8,6 +8,7 @@ package com.opengamma.engine.view.calc;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -49,6 +50,7 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
   private int _executionId;
 
   private long _startTime = -1;
+  private long _criticalPathCost = -1;
   private long _invocationCost;
   private long _dataInputCost;
   private long _dataOutputCost;
@@ -156,6 +158,18 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
     return _dataOutputCost;
   }
 
+  /**
+   * Returns the invocation cost of the nodes using the current function statistics. This may differ from
+   * {@link #getJobInvocationCost} which is based on the statistics when the fragment was built.
+   */
+  public long getCurrentInvocationCost() {
+    long cost = 0;
+    for (DependencyNode node : getNodes()) {
+      cost += (long) getContext().getFunctionStatistics(node.getFunction().getFunction()).getInvocationCost();
+    }
+    return cost;
+  }
+
   public long getJobCost() {
     return getJobInvocationCost() + getJobDataInputCost() + getJobDataOutputCost();
   }
@@ -183,6 +197,37 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
     return latest;
   }
 
+  /**
+   * Returns the cost of the most expensive path from the start of this fragment to the end of the graph. Dispatching
+   * the fragments with the highest cost first lets the longest chains of work start as soon as possible.
+   */
+  public long getCriticalPathCost() {
+    if (_criticalPathCost >= 0) {
+      return _criticalPathCost;
+    }
+    long longest = 0;
+    for (GraphFragment output : getOutputFragments()) {
+      final long cost = output.getCriticalPathCost();
+      if (cost > longest) {
+        longest = cost;
+      }
+    }
+    _criticalPathCost = getJobCost() + longest;
+    return _criticalPathCost;
+  }
+
+  /**
+   * Orders fragments by descending critical path cost.
+   */
+  public static final Comparator<GraphFragment> CRITICAL_PATH_ORDER = new Comparator<GraphFragment>() {
+    @Override
+    public int compare(final GraphFragment o1, final GraphFragment o2) {
+      final long c1 = o1.getCriticalPathCost();
+      final long c2 = o2.getCriticalPathCost();
+      return (c1 > c2) ? -1 : ((c1 < c2) ? 1 : 0);
+    }
+  };
+
   /**
    * Merges input and invocation costs.
    */
@@ -401,7 +446,8 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
   }
 
   public void executeImpl() {
-    getContext().dispatchJob(createCalculationJob());
+    final CalculationJob job = createCalculationJob();
+    getContext().dispatchJob(job, getContext().getExecutor().isCriticalPathScheduling() ? getCriticalPathCost() : 0L);
   }
 
   public void execute() {
@@ -420,6 +466,8 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
       }
     }
     _requiredJobs = null;
+    // The plan may have been patched since the last execution
+    _criticalPathCost = -1;
     return true;
   }
 
@@ -431,8 +479,17 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
   public void resultReceived(final CalculationJobResult result) {
     // Release tree fragments up the tree
     getContext().addExecutionTime(result.getDuration());
-    for (GraphFragment dependent : getOutputFragments()) {
-      dependent.inputCompleted();
+    if ((getOutputFragments().size() > 1) && getContext().getExecutor().isCriticalPathScheduling()) {
+      // Any fragments released at the same time are dispatched most critical first
+      final List<GraphFragment> dependents = new ArrayList<GraphFragment>(getOutputFragments());
+      Collections.sort(dependents, CRITICAL_PATH_ORDER);
+      for (GraphFragment dependent : dependents) {
+        dependent.inputCompleted();
+      }
+    } else {
+      for (GraphFragment dependent : getOutputFragments()) {
+        dependent.inputCompleted();
+      }
     }
   }
 
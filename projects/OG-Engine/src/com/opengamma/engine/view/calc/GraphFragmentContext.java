@@ -146,9 +146,15 @@ import com.opengamma.util.Cancelable;
     }
   }
 
-  public void dispatchJob(final CalculationJob job) {
+  /**
+   * Dispatches a job.
+   * 
+   * @param job the job to dispatch
+   * @param priority the priority of the job, higher values to be given an invoker first
+   */
+  public void dispatchJob(final CalculationJob job, final long priority) {
     if (!_cancelled) {
-      _cancels.put(job.getSpecification(), getExecutor().dispatchJob(job, this));
+      _cancels.put(job.getSpecification(), getExecutor().dispatchJob(job, this, priority));
       if (!_job2fragment.containsKey(job.getSpecification())) {
         if (_cancels.remove(job.getSpecification()) != null) {
           s_logger.debug("Removed cancellation handle on fast job execution of {}", job.getSpecification());
@@ -5,7 +5,10 @@
  */
 package com.opengamma.engine.view.calc;
 
+import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -23,12 +26,19 @@ import com.opengamma.util.tuple.Pair;
  * Determines which nodes in a graph have changed. A node has 'changed' if and only 
  * if its subtree contains a node for which PreviousLiveDataInput != CurrentLiveDataInput.
  * Note that this excludes changes due to passage of the system clock. 
+ * <p>
+ * The inputs can either be compared by looking them up in the current and previous caches, or
+ * the caller can supply the set of inputs already known to have changed. In the latter case the
+ * market data nodes are looked up by the values they produce and the changed nodes are found by
+ * walking forwards through their dependents, so finding them costs time proportional to the size
+ * of the dirty subgraph. Building the set of unchanged nodes still visits every node in the graph.
  */
 public class LiveDataDeltaCalculator {
 
   private final DependencyGraph _graph;
   private final ViewComputationCache _cache;
   private final ViewComputationCache _previousCache;
+  private final Collection<ValueSpecification> _changedMarketData;
 
   private final Set<DependencyNode> _changedNodes = new HashSet<DependencyNode>();
   private final Set<DependencyNode> _unchangedNodes = new HashSet<DependencyNode>();
@@ -52,6 +62,23 @@ public class LiveDataDeltaCalculator {
     _graph = graph;
     _cache = cache;
     _previousCache = previousCache;
+    _changedMarketData = null;
+  }
+
+  /**
+   * Creates a calculator for a set of market data inputs already known to have changed.
+   * 
+   * @param graph Dependency graph
+   * @param changedMarketData The market data values for which PreviousLiveDataInput != CurrentLiveDataInput. Values
+   * not used by the graph are ignored.
+   */
+  public LiveDataDeltaCalculator(DependencyGraph graph, Collection<ValueSpecification> changedMarketData) {
+    ArgumentChecker.notNull(graph, "Graph");
+    ArgumentChecker.notNull(changedMarketData, "Changed market data");
+    _graph = graph;
+    _cache = null;
+    _previousCache = null;
+    _changedMarketData = changedMarketData;
   }
 
   public Set<DependencyNode> getChangedNodes() {
@@ -75,13 +102,44 @@ public class LiveDataDeltaCalculator {
       throw new IllegalStateException("Cannot determine delta twice");
     }
 
-    for (DependencyNode rootNode : _graph.getRootNodes()) {
-      computeDelta(rootNode);
+    if (_changedMarketData != null) {
+      computeDirtySubgraph();
+    } else {
+      for (DependencyNode rootNode : _graph.getRootNodes()) {
+        computeDelta(rootNode);
+      }
     }
 
     _done = true;
   }
 
+  private void computeDirtySubgraph() {
+    final Set<DependencyNode> graphNodes = _graph.getDependencyNodes();
+    final Deque<DependencyNode> dirty = new ArrayDeque<DependencyNode>();
+    for (ValueSpecification marketData : _changedMarketData) {
+      final DependencyNode node = _graph.getNodeProducing(marketData);
+      if (node != null) {
+        final Pair<ValueRequirement, ValueSpecification> liveData = node.getRequiredMarketData();
+        if ((liveData != null) && marketData.equals(liveData.getSecond()) && _changedNodes.add(node)) {
+          dirty.add(node);
+        }
+      }
+    }
+    // Everything downstream of a changed node requires recomputation
+    while (!dirty.isEmpty()) {
+      for (DependencyNode dependentNode : dirty.removeFirst().getDependentNodes()) {
+        if (graphNodes.contains(dependentNode) && _changedNodes.add(dependentNode)) {
+          dirty.add(dependentNode);
+        }
+      }
+    }
+    for (DependencyNode node : graphNodes) {
+      if (!_changedNodes.contains(node)) {
+        _unchangedNodes.add(node);
+      }
+    }
+  }
+
   private boolean computeDelta(DependencyNode node) {
     if (_changedNodes.contains(node)) {
       return true;
@@ -31,6 +31,7 @@ import com.opengamma.engine.view.calcnode.CalculationJob;
 import com.opengamma.engine.view.calcnode.CalculationJobSpecification;
 import com.opengamma.engine.view.calcnode.JobResultReceiver;
 import com.opengamma.engine.view.calcnode.stats.FunctionCosts;
+import com.opengamma.id.UniqueId;
 import com.opengamma.util.Cancelable;
 import com.opengamma.util.monitor.OperationTimer;
 import com.opengamma.util.tuple.Pair;
@@ -51,6 +52,7 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
   private final int _maxConcurrency;
   private final FunctionCosts _functionCosts;
   private final ExecutionPlanCache _cache;
+  private boolean _criticalPathScheduling;
 
   protected MultipleNodeExecutor(final SingleComputationCycle cycle, final int minimumJobItems, final int maximumJobItems, final long minimumJobCost, final long maximumJobCost,
       final int maximumConcurrency, final FunctionCosts functionCosts, final ExecutionPlanCache cache) {
@@ -77,6 +79,10 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
     return _cache;
   }
 
+  protected UniqueId getViewProcessId() {
+    return getCycle().getViewProcessId();
+  }
+
   protected CalculationJobSpecification createJobSpecification(final DependencyGraph graph) {
     return new CalculationJobSpecification(getCycle().getUniqueId(), graph.getCalculationConfigurationName(), getCycle().getValuationTime(), JobIdSource.getId());
   }
@@ -89,6 +95,21 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
     return getCycle().getViewProcessContext().getComputationJobDispatcher().dispatchJob(job, jobResultReceiver);
   }
 
+  /**
+   * Dispatches a job with a priority. The priority is only used if critical path scheduling is enabled.
+   * 
+   * @param job the job to dispatch
+   * @param jobResultReceiver the result receiver
+   * @param priority the priority, higher values to be given an invoker first
+   * @return the cancellation handle
+   */
+  protected Cancelable dispatchJob(final CalculationJob job, final JobResultReceiver jobResultReceiver, final long priority) {
+    if (!isCriticalPathScheduling()) {
+      return dispatchJob(job, jobResultReceiver);
+    }
+    return getCycle().getViewProcessContext().getComputationJobDispatcher().dispatchJob(job, jobResultReceiver, priority);
+  }
+
   protected void markExecuted(final DependencyNode node) {
     getCycle().markExecuted(node);
   }
@@ -98,6 +119,19 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
   }
 
   protected RootGraphFragment createExecutionPlan(final DependencyGraph graph, final GraphExecutorStatisticsGatherer statistics) {
+    final RootGraphFragment plan = buildExecutionPlan(graph, statistics);
+    executeLeafNodes(plan, new HashSet<GraphFragment>());
+    return plan;
+  }
+
+  /**
+   * Builds an execution plan without starting its execution.
+   * 
+   * @param graph the graph to build the plan for
+   * @param statistics the statistics gatherer
+   * @return the plan
+   */
+  protected RootGraphFragment buildExecutionPlan(final DependencyGraph graph, final GraphExecutorStatisticsGatherer statistics) {
     final OperationTimer timer = new OperationTimer(s_logger, "Creating execution plan for {}", graph);
     final GraphFragmentContext context = new GraphFragmentContext(this, graph);
     // writeGraphForTestingPurposes(graph);
@@ -109,7 +143,6 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
       for (ValueSpecification terminalOutput : graph.getTerminalOutputSpecifications()) {
         context.getSharedCacheValues().put(terminalOutput, Boolean.TRUE);
       }
-      fragment.executeImpl();
       timer.finished();
       return fragment;
     }
@@ -158,22 +191,216 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
     statistics.graphProcessed(graph.getCalculationConfigurationName(), count, (double) totalSize / (double) count,
         (double) totalInvocationCost / (double) count, (double) totalDataCost / (double) count);
     // printFragment(logicalRoot);
-    // Execute anything left (leaf nodes)
-    for (GraphFragment fragment : allFragments) {
-      fragment.executeImpl();
-    }
     timer.finished();
     return logicalRoot;
   }
 
+  /**
+   * Builds an execution plan for a graph by patching one built for a similar graph. This is possible if only a small number
+   * of nodes have been removed, and any nodes added are not inputs to nodes in the existing plan. Removed nodes are dropped
+   * from their fragments, with emptied fragments spliced out, and each added node becomes a fragment of its own. Tails are
+   * kept for the parts of the plan that are unaffected.
+   * 
+   * @param plan the existing plan
+   * @param graph the graph to build the plan for
+   * @param statistics the statistics gatherer
+   * @return the new plan, not yet executed, or null if the existing plan can't be patched
+   */
+  protected RootGraphFragment patchExecutionPlan(final RootGraphFragment plan, final DependencyGraph graph, final GraphExecutorStatisticsGatherer statistics) {
+    final DependencyGraph planGraph = plan.getContext().getGraph();
+    if ((planGraph == graph) || !plan.getNodes().isEmpty() || (plan.getFunctionInitializationTimestamp() != getFunctionInitId())
+        || !planGraph.getCalculationConfigurationName().equals(graph.getCalculationConfigurationName())) {
+      return null;
+    }
+    final int maxChanges = (int) (graph.getSize() * getCache().getMaximumPatchProportion());
+    if (Math.abs(graph.getSize() - planGraph.getSize()) > maxChanges) {
+      return null;
+    }
+    final List<DependencyNode> addedNodes = new ArrayList<DependencyNode>();
+    for (DependencyNode node : graph.getDependencyNodes()) {
+      if (!planGraph.containsNode(node)) {
+        addedNodes.add(node);
+        if (addedNodes.size() > maxChanges) {
+          return null;
+        }
+      }
+    }
+    final int removedNodes = planGraph.getSize() - (graph.getSize() - addedNodes.size());
+    if (addedNodes.size() + removedNodes > maxChanges) {
+      return null;
+    }
+    for (DependencyNode node : addedNodes) {
+      for (DependencyNode dependent : node.getDependentNodes()) {
+        if (planGraph.containsNode(dependent) && graph.containsNode(dependent)) {
+          // Would have to split an existing fragment
+          return null;
+        }
+      }
+    }
+    final OperationTimer timer = new OperationTimer(s_logger, "Patching execution plan for {}", graph);
+    final GraphFragmentContext context = new GraphFragmentContext(this, graph);
+    // Copy the existing fragments, dropping removed nodes
+    final Map<GraphFragment, GraphFragment> copies = new HashMap<GraphFragment, GraphFragment>();
+    final Set<Integer> brokenExecutions = new HashSet<Integer>();
+    int maxExecutionId = 0;
+    final LinkedList<GraphFragment> pending = new LinkedList<GraphFragment>(plan.getInputFragments());
+    final Set<GraphFragment> visited = new HashSet<GraphFragment>(pending);
+    while (!pending.isEmpty()) {
+      final GraphFragment fragment = pending.removeFirst();
+      final List<DependencyNode> nodes = new ArrayList<DependencyNode>(fragment.getNodes().size());
+      for (DependencyNode node : fragment.getNodes()) {
+        if (graph.containsNode(node)) {
+          nodes.add(node);
+        }
+      }
+      if (nodes.size() != fragment.getNodes().size()) {
+        // Changing the nodes may change the inputs of the tails
+        brokenExecutions.add(fragment.getExecutionId());
+      }
+      if (!nodes.isEmpty()) {
+        final GraphFragment copy = new GraphFragment(context, nodes);
+        copy.setExecutionId(fragment.getExecutionId());
+        copies.put(fragment, copy);
+      }
+      if (fragment.getExecutionId() > maxExecutionId) {
+        maxExecutionId = fragment.getExecutionId();
+      }
+      for (GraphFragment input : fragment.getInputFragments()) {
+        if (visited.add(input)) {
+          pending.add(input);
+        }
+      }
+    }
+    // Link the copies, splicing out any fragments that are now empty
+    final RootGraphFragment root = new RootGraphFragment(context, statistics);
+    final Map<GraphFragment, Collection<GraphFragment>> splicedInputs = new HashMap<GraphFragment, Collection<GraphFragment>>();
+    for (GraphFragment input : getPatchedInputs(plan, copies, splicedInputs)) {
+      root.getInputFragments().add(input);
+      input.getOutputFragments().add(root);
+    }
+    for (Map.Entry<GraphFragment, GraphFragment> copy : copies.entrySet()) {
+      for (GraphFragment input : getPatchedInputs(copy.getKey(), copies, splicedInputs)) {
+        copy.getValue().getInputFragments().add(input);
+        input.getOutputFragments().add(copy.getValue());
+      }
+    }
+    // Keep the tails of any execution sequences that are intact; fragments from the others must execute independently
+    for (Map.Entry<GraphFragment, GraphFragment> copy : copies.entrySet()) {
+      final GraphFragment fragment = copy.getKey();
+      if (brokenExecutions.contains(fragment.getExecutionId())) {
+        copy.getValue().setExecutionId(++maxExecutionId);
+      } else if (fragment.getTail() != null) {
+        for (GraphFragment tail : fragment.getTail()) {
+          copy.getValue().addTail(copies.get(tail));
+        }
+      }
+    }
+    // Each added node becomes a fragment executing independently
+    if (!addedNodes.isEmpty()) {
+      final Map<DependencyNode, GraphFragment> node2fragment = new HashMap<DependencyNode, GraphFragment>();
+      for (GraphFragment copy : copies.values()) {
+        for (DependencyNode node : copy.getNodes()) {
+          node2fragment.put(node, copy);
+        }
+      }
+      for (DependencyNode node : addedNodes) {
+        final GraphFragment fragment = new GraphFragment(context, node);
+        fragment.setExecutionId(++maxExecutionId);
+        node2fragment.put(node, fragment);
+      }
+      for (DependencyNode node : addedNodes) {
+        final GraphFragment fragment = node2fragment.get(node);
+        for (DependencyNode input : node.getInputNodes()) {
+          final GraphFragment inputFragment = node2fragment.get(input);
+          if (inputFragment != null) {
+            fragment.getInputFragments().add(inputFragment);
+            inputFragment.getOutputFragments().add(fragment);
+          }
+        }
+      }
+      for (DependencyNode node : addedNodes) {
+        final GraphFragment fragment = node2fragment.get(node);
+        if (fragment.getOutputFragments().isEmpty()) {
+          // Not an input to any other added node so must be a root of the graph
+          fragment.getOutputFragments().add(root);
+          root.getInputFragments().add(fragment);
+        }
+      }
+    }
+    context.allocateFragmentMap(visited.size() + addedNodes.size());
+    final Set<GraphFragment> initialized = new HashSet<GraphFragment>();
+    if (!root.reset(this, initialized)) {
+      return null;
+    }
+    long totalInvocationCost = 0;
+    long totalDataCost = 0;
+    for (GraphFragment fragment : initialized) {
+      totalInvocationCost += fragment.getJobInvocationCost();
+      totalDataCost += fragment.getJobDataInputCost() + fragment.getJobDataOutputCost();
+    }
+    final int count = Math.max(initialized.size(), 1);
+    statistics.graphProcessed(graph.getCalculationConfigurationName(), count, (double) graph.getSize() / (double) count, (double) totalInvocationCost / (double) count,
+        (double) totalDataCost / (double) count);
+    timer.finished();
+    return root;
+  }
+
+  /**
+   * Returns the copies of a fragment's inputs in a patched plan. If an input has been spliced out, its own inputs are used.
+   */
+  private static Collection<GraphFragment> getPatchedInputs(final GraphFragment fragment, final Map<GraphFragment, GraphFragment> copies,
+      final Map<GraphFragment, Collection<GraphFragment>> splicedInputs) {
+    final Collection<GraphFragment> inputs = new HashSet<GraphFragment>();
+    for (GraphFragment input : fragment.getInputFragments()) {
+      final GraphFragment copy = copies.get(input);
+      if (copy != null) {
+        inputs.add(copy);
+      } else {
+        Collection<GraphFragment> spliced = splicedInputs.get(input);
+        if (spliced == null) {
+          spliced = getPatchedInputs(input, copies, splicedInputs);
+          splicedInputs.put(input, spliced);
+        }
+        inputs.addAll(spliced);
+      }
+    }
+    return inputs;
+  }
+
   private void executeLeafNodes(final GraphFragment fragment, final Set<GraphFragment> visited) {
+    if (isCriticalPathScheduling()) {
+      final List<GraphFragment> leaves = new ArrayList<GraphFragment>();
+      findLeafNodes(fragment, visited, leaves);
+      Collections.sort(leaves, GraphFragment.CRITICAL_PATH_ORDER);
+      for (GraphFragment leaf : leaves) {
+        leaf.executeImpl();
+      }
+    } else {
+      executeLeafNodesInOrder(fragment, visited);
+    }
+  }
+
+  private void executeLeafNodesInOrder(final GraphFragment fragment, final Set<GraphFragment> visited) {
     final Set<GraphFragment> inputs = fragment.getInputFragments();
     if (inputs.isEmpty()) {
       fragment.executeImpl();
     } else {
       for (GraphFragment input : inputs) {
         if (visited.add(input)) {
-          executeLeafNodes(input, visited);
+          executeLeafNodesInOrder(input, visited);
+        }
+      }
+    }
+  }
+
+  private static void findLeafNodes(final GraphFragment fragment, final Set<GraphFragment> visited, final List<GraphFragment> leaves) {
+    final Set<GraphFragment> inputs = fragment.getInputFragments();
+    if (inputs.isEmpty()) {
+      leaves.add(fragment);
+    } else {
+      for (GraphFragment input : inputs) {
+        if (visited.add(input)) {
+          findLeafNodes(input, visited, leaves);
         }
       }
     }
@@ -182,9 +409,21 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
   @Override
   public Future<Object> execute(final DependencyGraph graph, final GraphExecutorStatisticsGatherer statistics) {
     final RootGraphFragment execution = _cache.getCachedExecutionPlan(graph);
-    if (execution != null) {
+    if (execution == null) {
+      final RootGraphFragment previous = _cache.getLatestExecutionPlan(getViewProcessId(), graph.getCalculationConfigurationName());
+      if ((previous != null) && isSameJobSizing(previous.getContext().getExecutor())) {
+        final RootGraphFragment patched = patchExecutionPlan(previous, graph, statistics);
+        if (patched != null) {
+          s_logger.info("Using patched execution plan for {}", graph);
+          executeLeafNodes(patched, new HashSet<GraphFragment>());
+          return patched;
+        }
+      }
+    } else {
       if (execution.getFunctionInitializationTimestamp() != getCycle().getFunctionInitId()) {
         s_logger.warn("Invalid cached execution plan for {} due to re-initialization", graph);
+      } else if (!isSameJobSizing(execution.getContext().getExecutor())) {
+        s_logger.info("Cached execution plan for {} built with different job sizing", graph);
       } else {
         final Set<GraphFragment> visited = new HashSet<GraphFragment>();
         if (execution.reset(this, visited)) {
@@ -200,6 +439,35 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
     return createExecutionPlan(graph, statistics);
   }
 
+  /**
+   * Tests whether plans built by another executor would have the same fragment sizes and concurrency as ones built
+   * by this. The parameters can be changed for a view, for example by a {@link MultipleNodeExecutorTuner}, after its
+   * plans have been cached.
+   * 
+   * @param other the other executor, not null
+   * @return true if the parameters are the same
+   */
+  protected boolean isSameJobSizing(final MultipleNodeExecutor other) {
+    return (other == this)
+        || ((getMinJobItems() == other.getMinJobItems()) && (getMaxJobItems() == other.getMaxJobItems()) && (getMinJobCost() == other.getMinJobCost())
+            && (getMaxJobCost() == other.getMaxJobCost()) && (getMaxConcurrency() == other.getMaxConcurrency()));
+  }
+
+  /**
+   * Sets whether fragments are dispatched in critical path order. When set, the fragments that can run at the same time
+   * are dispatched, and queued for an invoker, in descending order of the cost of the longest path from them to the end
+   * of the graph rather than the order the plan is traversed in.
+   * 
+   * @param criticalPathScheduling true to dispatch in critical path order
+   */
+  public void setCriticalPathScheduling(final boolean criticalPathScheduling) {
+    _criticalPathScheduling = criticalPathScheduling;
+  }
+
+  public boolean isCriticalPathScheduling() {
+    return _criticalPathScheduling;
+  }
+
   public int getMinJobItems() {
     return _minJobItems;
   }
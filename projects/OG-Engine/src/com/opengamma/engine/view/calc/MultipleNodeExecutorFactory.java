@@ -5,9 +5,15 @@
  */
 package com.opengamma.engine.view.calc;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.springframework.beans.factory.InitializingBean;
 
 import com.opengamma.engine.view.calcnode.stats.FunctionCosts;
+import com.opengamma.id.UniqueId;
 import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.ehcache.EHCacheUtils;
 
@@ -25,6 +31,11 @@ public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFacto
   private long _maximumJobCost = Long.MAX_VALUE;
   private int _maximumConcurrency = Integer.MAX_VALUE;
   private FunctionCosts _functionCosts;
+  private double _costDriftThreshold = ExecutionPlanCache.DEFAULT_COST_DRIFT_THRESHOLD;
+  private long _costDriftCheckPeriod = ExecutionPlanCache.DEFAULT_COST_DRIFT_CHECK_PERIOD;
+  private double _maximumPatchProportion = ExecutionPlanCache.DEFAULT_MAXIMUM_PATCH_PROPORTION;
+  private boolean _criticalPathScheduling;
+  private final ConcurrentMap<UniqueId, Double> _viewJobSizeScale = new ConcurrentHashMap<UniqueId, Double>();
 
   public void setMinimumJobItems(final int minimumJobItems) {
     _minimumJobItems = minimumJobItems;
@@ -86,14 +97,126 @@ public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFacto
     return _functionCosts;
   }
 
+  /**
+   * Sets the proportion by which the function costs used to build a cached execution plan may change before
+   * the plan is rebuilt.
+   * 
+   * @param costDriftThreshold the proportion, for example 0.5 to rebuild plans once costs have moved by 50%
+   */
+  public void setCostDriftThreshold(final double costDriftThreshold) {
+    _costDriftThreshold = costDriftThreshold;
+    if (_executionPlanCache != null) {
+      _executionPlanCache.setCostDriftThreshold(costDriftThreshold);
+    }
+  }
+
+  public double getCostDriftThreshold() {
+    return _costDriftThreshold;
+  }
+
+  /**
+   * Sets the minimum time between checks of the function costs used to build a cached execution plan.
+   * 
+   * @param costDriftCheckPeriod the period in milliseconds
+   */
+  public void setCostDriftCheckPeriod(final long costDriftCheckPeriod) {
+    _costDriftCheckPeriod = costDriftCheckPeriod;
+    if (_executionPlanCache != null) {
+      _executionPlanCache.setCostDriftCheckPeriod(costDriftCheckPeriod);
+    }
+  }
+
+  public long getCostDriftCheckPeriod() {
+    return _costDriftCheckPeriod;
+  }
+
+  /**
+   * Sets the largest proportion of a graph that may be added or removed for the previous execution plan to be
+   * patched instead of a new plan being built.
+   * 
+   * @param maximumPatchProportion the proportion, zero to always build a new plan
+   */
+  public void setMaximumPatchProportion(final double maximumPatchProportion) {
+    _maximumPatchProportion = maximumPatchProportion;
+    if (_executionPlanCache != null) {
+      _executionPlanCache.setMaximumPatchProportion(maximumPatchProportion);
+    }
+  }
+
+  public double getMaximumPatchProportion() {
+    return _maximumPatchProportion;
+  }
+
+  /**
+   * Sets whether executors dispatch fragments in critical path order, so that the fragments which gate the most
+   * work are started first, rather than the order the plan is traversed in.
+   * 
+   * @param criticalPathScheduling true to dispatch in critical path order
+   */
+  public void setCriticalPathScheduling(final boolean criticalPathScheduling) {
+    _criticalPathScheduling = criticalPathScheduling;
+  }
+
+  public boolean isCriticalPathScheduling() {
+    return _criticalPathScheduling;
+  }
+
+  /**
+   * Sets the factor by which the job item and cost limits are scaled for executors created for a view process. Plans
+   * cached for the view will be rebuilt the next time they are used.
+   * 
+   * @param viewProcessId the view process, not null
+   * @param scale the factor, 1 to use the limits unchanged
+   */
+  public void setViewJobSizeScale(final UniqueId viewProcessId, final double scale) {
+    ArgumentChecker.notNull(viewProcessId, "viewProcessId");
+    ArgumentChecker.isTrue(scale > 0, "scale");
+    if (scale == 1d) {
+      _viewJobSizeScale.remove(viewProcessId);
+    } else {
+      _viewJobSizeScale.put(viewProcessId, scale);
+    }
+  }
+
+  public double getViewJobSizeScale(final UniqueId viewProcessId) {
+    final Double scale = _viewJobSizeScale.get(viewProcessId);
+    return (scale != null) ? scale : 1d;
+  }
+
+  /**
+   * Returns the views with job size scales set.
+   * 
+   * @return the scale factors keyed by view process, not null
+   */
+  public Map<UniqueId, Double> getViewJobSizeScales() {
+    return Collections.unmodifiableMap(_viewJobSizeScale);
+  }
+
+  private static int scale(final int value, final double scale) {
+    final double scaled = Math.rint((double) value * scale);
+    return (scaled >= Integer.MAX_VALUE) ? Integer.MAX_VALUE : Math.max((int) scaled, 1);
+  }
+
+  private static long scale(final long value, final double scale) {
+    final double scaled = Math.rint((double) value * scale);
+    return (scaled >= Long.MAX_VALUE) ? Long.MAX_VALUE : Math.max((long) scaled, 1L);
+  }
+
   public void setCacheSize(final int size) {
     _executionPlanCache = new ExecutionPlanCache(EHCacheUtils.createCacheManager(), size);
+    _executionPlanCache.setCostDriftThreshold(getCostDriftThreshold());
+    _executionPlanCache.setCostDriftCheckPeriod(getCostDriftCheckPeriod());
+    _executionPlanCache.setMaximumPatchProportion(getMaximumPatchProportion());
   }
 
   @Override
   public MultipleNodeExecutor createExecutor(final SingleComputationCycle cycle) {
     ArgumentChecker.notNull(cycle, "cycle");
-    return new MultipleNodeExecutor(cycle, getMinimumJobItems(), getMaximumJobItems(), getMinimumJobCost(), getMaximumJobCost(), getMaximumConcurrency(), getFunctionCosts(), _executionPlanCache);
+    final double scale = getViewJobSizeScale(cycle.getViewProcessId());
+    final MultipleNodeExecutor executor = new MultipleNodeExecutor(cycle, scale(getMinimumJobItems(), scale), scale(getMaximumJobItems(), scale), scale(getMinimumJobCost(), scale),
+        scale(getMaximumJobCost(), scale), getMaximumConcurrency(), getFunctionCosts(), _executionPlanCache);
+    executor.setCriticalPathScheduling(isCriticalPathScheduling());
+    return executor;
   }
 
   @Override
@@ -6,7 +6,12 @@
 package com.opengamma.engine.view.calc;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.time.Instant;
 
@@ -23,7 +28,9 @@ import com.opengamma.engine.view.calcnode.JobDispatcher;
 import com.opengamma.engine.view.calcnode.PlatformCapabilities;
 import com.opengamma.engine.view.calcnode.stats.CalculationNodeStatistics;
 import com.opengamma.engine.view.calcnode.stats.TotallingNodeStatisticsGatherer;
+import com.opengamma.id.UniqueId;
 import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.InetAddressUtils;
 
 /**
  * <p>Continuously tunes the parameters to a {@link MultipleNodeExecutorFactory} to maintain good performance
@@ -32,9 +39,15 @@ import com.opengamma.util.ArgumentChecker;
  * 
  * <h2>Tuning rules<h2>
  * 
- * <p>Set maximum concurrency to the average node count of the job invokers. Requires a {@link JobDispatcher}.</p>
+ * <p>Set maximum concurrency to the average node count of the job invokers, weighting the averages for local and
+ * remote invokers by the number of jobs their nodes have run. Requires a {@link JobDispatcher}.</p>
  * 
- * <p>TODO: [ENG-200] Tuning of job size and cost parameters</p>
+ * <p>Scale the job item and cost limits for each view. The overhead of a node is its non-execution time as a proportion
+ * of its execution time; if this is above the target then jobs are too small for the dispatch cost and are made
+ * larger, if it is below the target then jobs are made smaller to allow more parallelism. Remote nodes have their own
+ * target as they will always pay the cost of the network. Any adjustment which makes the view's cycles take longer is
+ * reverted, and the same adjustment is not tried again for a number of periods. Requires the graph execution and job
+ * dispatch statistics.</p>
  */
 public class MultipleNodeExecutorTuner implements Runnable {
   
@@ -51,6 +64,71 @@ public class MultipleNodeExecutorTuner implements Runnable {
   private TotallingNodeStatisticsGatherer _jobDispatchStatistics;
   private double _statisticDecayRate = 0.1; // 10% decay every schedule
   private int _statisticsKeepAlive = 300; // keep for 5 minutes
+  private String _localNodeIdPrefix = InetAddressUtils.getLocalHostName();
+  private String _localInvokerId = "local";
+  private double _localTargetOverhead = 0.1;
+  private double _remoteTargetOverhead = 0.25;
+  private double _tolerance = 0.2;
+  private double _jobSizeStep = 1.5;
+  private double _minimumJobSizeScale = 1d / 16d;
+  private double _maximumJobSizeScale = 16d;
+  private int _revertHoldPeriods = 5;
+
+  private final Map<String, CalculationNodeStatistics> _previousNodeStatistics = new HashMap<String, CalculationNodeStatistics>();
+  private final Map<UniqueId, ViewTuning> _viewTuning = new ConcurrentHashMap<UniqueId, ViewTuning>();
+  private volatile double _localNodeOverhead = Double.NaN;
+  private volatile double _remoteNodeOverhead = Double.NaN;
+  private volatile String _concurrencyDecision;
+
+  /**
+   * Node statistics accumulated since the previous run for either the local or remote nodes.
+   */
+  private static final class NodeActivity {
+
+    private long _jobs;
+    private long _executionTime;
+    private long _nonExecutionTime;
+
+    public void add(final CalculationNodeStatistics current, final CalculationNodeStatistics previous) {
+      if (previous == null) {
+        _jobs += current.getSuccessfulJobs() + current.getUnsuccessfulJobs();
+        _executionTime += current.getExecutionTime();
+        _nonExecutionTime += current.getNonExecutionTime();
+      } else {
+        _jobs += Math.max(0, current.getSuccessfulJobs() + current.getUnsuccessfulJobs() - previous.getSuccessfulJobs() - previous.getUnsuccessfulJobs());
+        _executionTime += Math.max(0, current.getExecutionTime() - previous.getExecutionTime());
+        _nonExecutionTime += Math.max(0, current.getNonExecutionTime() - previous.getNonExecutionTime());
+      }
+    }
+
+    public long getJobs() {
+      return _jobs;
+    }
+
+    public double getOverhead() {
+      return (_executionTime > 0) ? (double) _nonExecutionTime / (double) _executionTime : Double.NaN;
+    }
+
+  }
+
+  /**
+   * The job size adjustments made for a view.
+   */
+  private static final class ViewTuning {
+
+    private long _executedGraphs;
+    private long _actualTime;
+    private double _lastCycleTime;
+    private int _lastStep;
+    private int _heldStep;
+    private int _holdPeriods;
+    private volatile String _decision = "No adjustments made";
+
+    public String getDecision() {
+      return _decision;
+    }
+
+  }
 
   /**
    * @param factory The factory to tune
@@ -104,52 +182,375 @@ public class MultipleNodeExecutorTuner implements Runnable {
     return _statisticDecayRate;
   }
 
+  public void setLocalNodeIdPrefix(final String localNodeIdPrefix) {
+    ArgumentChecker.notNull(localNodeIdPrefix, "localNodeIdPrefix");
+    _localNodeIdPrefix = localNodeIdPrefix;
+  }
+
+  /**
+   * Returns the prefix identifying nodes that run in this process, or on this host, rather than remotely. The
+   * default is the local host name used by {@link com.opengamma.engine.view.calcnode.LocalCalculationNodeSet}.
+   * 
+   * @return the prefix
+   */
+  public String getLocalNodeIdPrefix() {
+    return _localNodeIdPrefix;
+  }
+
+  public void setLocalInvokerId(final String localInvokerId) {
+    ArgumentChecker.notNull(localInvokerId, "localInvokerId");
+    _localInvokerId = localInvokerId;
+  }
+
+  /**
+   * Returns the identifier of the invoker for the local nodes. The default is that used by
+   * {@link com.opengamma.engine.view.calcnode.LocalNodeJobInvoker}.
+   * 
+   * @return the identifier
+   */
+  public String getLocalInvokerId() {
+    return _localInvokerId;
+  }
+
+  public void setLocalTargetOverhead(final double localTargetOverhead) {
+    ArgumentChecker.isTrue(localTargetOverhead > 0, "localTargetOverhead");
+    _localTargetOverhead = localTargetOverhead;
+  }
+
+  /**
+   * Returns the target non-execution time of local nodes as a proportion of their execution time.
+   * 
+   * @return the target overhead
+   */
+  public double getLocalTargetOverhead() {
+    return _localTargetOverhead;
+  }
+
+  public void setRemoteTargetOverhead(final double remoteTargetOverhead) {
+    ArgumentChecker.isTrue(remoteTargetOverhead > 0, "remoteTargetOverhead");
+    _remoteTargetOverhead = remoteTargetOverhead;
+  }
+
+  /**
+   * Returns the target non-execution time of remote nodes as a proportion of their execution time.
+   * 
+   * @return the target overhead
+   */
+  public double getRemoteTargetOverhead() {
+    return _remoteTargetOverhead;
+  }
+
+  /**
+   * Sets the proportion by which a measurement must differ from its target, or from the previous measurement, before
+   * it is acted on.
+   * 
+   * @param tolerance the tolerance, for example 0.2 for 20%
+   */
+  public void setTolerance(final double tolerance) {
+    ArgumentChecker.notNegative(tolerance, "tolerance");
+    _tolerance = tolerance;
+  }
+
+  public double getTolerance() {
+    return _tolerance;
+  }
+
+  /**
+   * Sets the factor by which job sizes are increased or decreased in a single adjustment.
+   * 
+   * @param jobSizeStep the factor, greater than 1
+   */
+  public void setJobSizeStep(final double jobSizeStep) {
+    ArgumentChecker.isTrue(jobSizeStep > 1, "jobSizeStep");
+    _jobSizeStep = jobSizeStep;
+  }
+
+  public double getJobSizeStep() {
+    return _jobSizeStep;
+  }
+
+  public void setMinimumJobSizeScale(final double minimumJobSizeScale) {
+    ArgumentChecker.isTrue(minimumJobSizeScale > 0, "minimumJobSizeScale");
+    _minimumJobSizeScale = minimumJobSizeScale;
+  }
+
+  public double getMinimumJobSizeScale() {
+    return _minimumJobSizeScale;
+  }
+
+  public void setMaximumJobSizeScale(final double maximumJobSizeScale) {
+    ArgumentChecker.isTrue(maximumJobSizeScale > 0, "maximumJobSizeScale");
+    _maximumJobSizeScale = maximumJobSizeScale;
+  }
+
+  public double getMaximumJobSizeScale() {
+    return _maximumJobSizeScale;
+  }
+
+  /**
+   * Sets the number of periods after an adjustment is reverted before the same adjustment will be made again.
+   * 
+   * @param revertHoldPeriods the number of periods
+   */
+  public void setRevertHoldPeriods(final int revertHoldPeriods) {
+    ArgumentChecker.notNegative(revertHoldPeriods, "revertHoldPeriods");
+    _revertHoldPeriods = revertHoldPeriods;
+  }
+
+  public int getRevertHoldPeriods() {
+    return _revertHoldPeriods;
+  }
+
+  /**
+   * Returns the overhead of the local nodes measured by the most recent run.
+   * 
+   * @return the overhead, NaN if no local jobs were run
+   */
+  public double getLocalNodeOverhead() {
+    return _localNodeOverhead;
+  }
+
+  /**
+   * Returns the overhead of the remote nodes measured by the most recent run.
+   * 
+   * @return the overhead, NaN if no remote jobs were run
+   */
+  public double getRemoteNodeOverhead() {
+    return _remoteNodeOverhead;
+  }
+
+  /**
+   * Returns the reason for the current maximum concurrency.
+   * 
+   * @return the reason, null if it has not been set by the tuner
+   */
+  public String getConcurrencyDecision() {
+    return _concurrencyDecision;
+  }
+
+  /**
+   * Returns the reason for the current job size scale of each view.
+   * 
+   * @return the reasons keyed by view process, not null
+   */
+  public Map<UniqueId, String> getViewDecisions() {
+    final Map<UniqueId, String> decisions = new HashMap<UniqueId, String>();
+    for (Map.Entry<UniqueId, ViewTuning> tuning : _viewTuning.entrySet()) {
+      decisions.put(tuning.getKey(), tuning.getValue().getDecision());
+    }
+    return decisions;
+  }
+
+  protected boolean isLocalNode(final String nodeId) {
+    return nodeId.startsWith(getLocalNodeIdPrefix());
+  }
+
   /**
    * Makes one tuning adjustment.
    */
   @Override
-  public void run() {
+  public synchronized void run() {
+    NodeActivity local = null;
+    NodeActivity remote = null;
+    if (getJobDispatchStatistics() != null) {
+      s_logger.debug("Processing job dispatch statistics");
+      local = new NodeActivity();
+      remote = new NodeActivity();
+      for (CalculationNodeStatistics statistics : getJobDispatchStatistics().getNodeStatistics()) {
+        final NodeActivity activity = isLocalNode(statistics.getNodeId()) ? local : remote;
+        activity.add(statistics, _previousNodeStatistics.get(statistics.getNodeId()));
+      }
+      _localNodeOverhead = local.getOverhead();
+      _remoteNodeOverhead = remote.getOverhead();
+      s_logger.debug("Local node overhead {} from {} jobs, remote node overhead {} from {} jobs",
+          new Object[] {_localNodeOverhead, local.getJobs(), _remoteNodeOverhead, remote.getJobs() });
+    }
     if (getJobDispatcher() != null) {
       s_logger.debug("Processing capabilities");
-      final Map<String, Collection<Capability>> allCapabilities = getJobDispatcher().getAllCapabilities();
-      int nodesPerInvokerCount = 0;
-      double nodesPerInvoker = 0;
-      for (Map.Entry<String, Collection<Capability>> capabilities : allCapabilities.entrySet()) {
-        for (Capability capability : capabilities.getValue()) {
-          if (PlatformCapabilities.NODE_COUNT.equals(capability.getIdentifier())) {
-            nodesPerInvokerCount++;
-            nodesPerInvoker += capability.getUpperBoundParameter();
-          }
-        }
-      }
-      if (nodesPerInvokerCount > 0) {
-        s_logger.debug("Found {} nodes at {} invokers", nodesPerInvoker, nodesPerInvokerCount);
-        int maxConcurrency = getFactory().getMaximumConcurrency();
-        int newMaxConcurrency = (int) Math.ceil(nodesPerInvoker / (double) nodesPerInvokerCount);
-        if (newMaxConcurrency != maxConcurrency) {
-          s_logger.info("Changing maximum concurrency to {}", newMaxConcurrency);
-          getFactory().setMaximumConcurrency(newMaxConcurrency);
-        }
-      }
+      tuneConcurrency(getJobDispatcher().getAllCapabilities(), local, remote);
     }
     if (getGraphExecutionStatistics() != null) {
       s_logger.debug("Processing graph execution statistics");
+      final double pressure = getOverheadPressure(local, remote);
+      final Set<UniqueId> views = new HashSet<UniqueId>();
       for (TotallingGraphStatisticsGathererProvider.Statistics gatherer : getGraphExecutionStatistics().getViewStatistics()) {
+        views.add(gatherer.getViewProcessId());
+        tuneJobSize(gatherer, pressure);
         for (GraphExecutionStatistics statistics : gatherer.getExecutionStatistics()) {
           statistics.decay(getStatisticsDecayRate());
         }
+        recordViewStatistics(gatherer);
       }
       getGraphExecutionStatistics().dropStatisticsBefore(Instant.now().minusSeconds(getStatisticsKeepAlive()));
+      final Iterator<UniqueId> itr = _viewTuning.keySet().iterator();
+      while (itr.hasNext()) {
+        final UniqueId viewProcessId = itr.next();
+        if (!views.contains(viewProcessId)) {
+          s_logger.debug("Discarding job size tuning for {}", viewProcessId);
+          itr.remove();
+          getFactory().setViewJobSizeScale(viewProcessId, 1d);
+        }
+      }
     }
     if (getJobDispatchStatistics() != null) {
-      s_logger.debug("Processing job dispatch statistics");
+      _previousNodeStatistics.clear();
       for (CalculationNodeStatistics statistics : getJobDispatchStatistics().getNodeStatistics()) {
         statistics.decay(getStatisticsDecayRate());
+        _previousNodeStatistics.put(statistics.getNodeId(), statistics.snapshot());
       }
       getJobDispatchStatistics().dropStatisticsBefore(Instant.now().minusSeconds(getStatisticsKeepAlive()));
     }
   }
 
+  private void tuneConcurrency(final Map<String, Collection<Capability>> allCapabilities, final NodeActivity local, final NodeActivity remote) {
+    int localInvokers = 0;
+    double localNodes = 0;
+    int remoteInvokers = 0;
+    double remoteNodes = 0;
+    for (Map.Entry<String, Collection<Capability>> capabilities : allCapabilities.entrySet()) {
+      for (Capability capability : capabilities.getValue()) {
+        if (PlatformCapabilities.NODE_COUNT.equals(capability.getIdentifier())) {
+          if (getLocalInvokerId().equals(capabilities.getKey())) {
+            localInvokers++;
+            localNodes += capability.getUpperBoundParameter();
+          } else {
+            remoteInvokers++;
+            remoteNodes += capability.getUpperBoundParameter();
+          }
+        }
+      }
+    }
+    if (localInvokers + remoteInvokers == 0) {
+      return;
+    }
+    s_logger.debug("Found {} nodes at {} local invokers, {} nodes at {} remote invokers", new Object[] {localNodes, localInvokers, remoteNodes, remoteInvokers });
+    final double concurrency;
+    final String reason;
+    final long localJobs = (local != null) ? local.getJobs() : 0;
+    final long remoteJobs = (remote != null) ? remote.getJobs() : 0;
+    if ((localInvokers > 0) && (remoteInvokers > 0) && (localJobs + remoteJobs > 0)) {
+      final double localShare = (double) localJobs / (double) (localJobs + remoteJobs);
+      concurrency = (localNodes / localInvokers) * localShare + (remoteNodes / remoteInvokers) * (1d - localShare);
+      reason = String.format("Average of %.1f nodes per local invoker and %.1f per remote invoker, weighted by %d local and %d remote jobs",
+          localNodes / localInvokers, remoteNodes / remoteInvokers, localJobs, remoteJobs);
+    } else {
+      concurrency = (localNodes + remoteNodes) / (localInvokers + remoteInvokers);
+      reason = String.format("Average of %.1f nodes per invoker", concurrency);
+    }
+    final int maxConcurrency = getFactory().getMaximumConcurrency();
+    final int newMaxConcurrency = (int) Math.ceil(concurrency);
+    if (newMaxConcurrency != maxConcurrency) {
+      s_logger.info("Changing maximum concurrency to {} - {}", newMaxConcurrency, reason);
+      getFactory().setMaximumConcurrency(newMaxConcurrency);
+      _concurrencyDecision = reason;
+    }
+  }
+
+  /**
+   * Returns the node overheads relative to their targets, weighted by the number of jobs run on the local and remote
+   * nodes. A value greater than one means the jobs are too small.
+   */
+  private double getOverheadPressure(final NodeActivity local, final NodeActivity remote) {
+    if (local == null) {
+      return Double.NaN;
+    }
+    double pressure = 0;
+    long jobs = 0;
+    if ((local.getJobs() > 0) && !Double.isNaN(local.getOverhead())) {
+      pressure += local.getJobs() * local.getOverhead() / getLocalTargetOverhead();
+      jobs += local.getJobs();
+    }
+    if ((remote.getJobs() > 0) && !Double.isNaN(remote.getOverhead())) {
+      pressure += remote.getJobs() * remote.getOverhead() / getRemoteTargetOverhead();
+      jobs += remote.getJobs();
+    }
+    return (jobs > 0) ? pressure / jobs : Double.NaN;
+  }
+
+  private void recordViewStatistics(final TotallingGraphStatisticsGathererProvider.Statistics gatherer) {
+    final ViewTuning tuning = _viewTuning.get(gatherer.getViewProcessId());
+    if (tuning != null) {
+      tuning._executedGraphs = 0;
+      tuning._actualTime = 0;
+      for (GraphExecutionStatistics statistics : gatherer.getExecutionStatistics()) {
+        tuning._executedGraphs += statistics.getExecutedGraphs();
+        tuning._actualTime += statistics.getActualTime();
+      }
+    }
+  }
+
+  private void tuneJobSize(final TotallingGraphStatisticsGathererProvider.Statistics gatherer, final double pressure) {
+    final UniqueId viewProcessId = gatherer.getViewProcessId();
+    ViewTuning tuning = _viewTuning.get(viewProcessId);
+    if (tuning == null) {
+      tuning = new ViewTuning();
+      _viewTuning.put(viewProcessId, tuning);
+    }
+    long executedGraphs = 0;
+    long actualTime = 0;
+    for (GraphExecutionStatistics statistics : gatherer.getExecutionStatistics()) {
+      executedGraphs += statistics.getExecutedGraphs();
+      actualTime += statistics.getActualTime();
+    }
+    executedGraphs -= tuning._executedGraphs;
+    actualTime -= tuning._actualTime;
+    if ((executedGraphs <= 0) || (actualTime <= 0)) {
+      s_logger.debug("No graphs executed for {}", viewProcessId);
+      return;
+    }
+    final double cycleTime = (double) actualTime / (double) executedGraphs;
+    if (tuning._holdPeriods > 0) {
+      tuning._holdPeriods--;
+    }
+    final double scale = getFactory().getViewJobSizeScale(viewProcessId);
+    int step = 0;
+    String reason;
+    if ((tuning._lastStep != 0) && (cycleTime > tuning._lastCycleTime * (1d + getTolerance()))) {
+      step = -tuning._lastStep;
+      tuning._heldStep = tuning._lastStep;
+      tuning._holdPeriods = getRevertHoldPeriods();
+      reason = String.format("Graph execution time rose from %.1fms to %.1fms after making jobs %s; reverting", tuning._lastCycleTime / 1e6, cycleTime / 1e6,
+          (tuning._lastStep > 0) ? "larger" : "smaller");
+      tuning._lastStep = 0;
+    } else {
+      if (pressure > 1d + getTolerance()) {
+        step = 1;
+        reason = String.format("Node overhead is %.2f times target; making jobs larger", pressure);
+      } else if (pressure < 1d - getTolerance()) {
+        step = -1;
+        reason = String.format("Node overhead is %.2f times target; making jobs smaller", pressure);
+      } else {
+        reason = Double.isNaN(pressure) ? "No node statistics available" : String.format("Node overhead is %.2f times target", pressure);
+      }
+      if ((step != 0) && (step == tuning._heldStep) && (tuning._holdPeriods > 0)) {
+        reason = reason + "; held for " + tuning._holdPeriods + " periods after reverting the same adjustment";
+        step = 0;
+      }
+      if ((step > 0) && (scale >= getMaximumJobSizeScale())) {
+        reason = reason + "; at maximum job size";
+        step = 0;
+      } else if ((step < 0) && (scale <= getMinimumJobSizeScale())) {
+        reason = reason + "; at minimum job size";
+        step = 0;
+      }
+      tuning._lastStep = step;
+    }
+    tuning._lastCycleTime = cycleTime;
+    double newScale = scale;
+    if (step > 0) {
+      newScale = Math.min(scale * getJobSizeStep(), getMaximumJobSizeScale());
+    } else if (step < 0) {
+      newScale = Math.max(scale / getJobSizeStep(), getMinimumJobSizeScale());
+    }
+    if (newScale != scale) {
+      s_logger.info("Changing job size scale for {} to {} - {}", new Object[] {viewProcessId, newScale, reason });
+      getFactory().setViewJobSizeScale(viewProcessId, newScale);
+    } else {
+      s_logger.debug("Job size scale for {} unchanged at {} - {}", new Object[] {viewProcessId, scale, reason });
+    }
+    tuning._decision = String.format("Job size scale %.3f - %s", newScale, reason);
+  }
+
   private FudgeMsg dumpCapabilities(final FudgeSerializer serializer, final String invokerId, final Collection<Capability> capabilities) {
     final MutableFudgeMsg message = serializer.newMessage();
     message.add("identifier", invokerId);
@@ -167,7 +568,18 @@ public class MultipleNodeExecutorTuner implements Runnable {
         message.add("Invoker", dumpCapabilities(serializer, capabilities.getKey(), capabilities.getValue()));
       }
     }
+    for (Map.Entry<UniqueId, String> decision : getViewDecisions().entrySet()) {
+      final MutableFudgeMsg view = serializer.newMessage();
+      view.add("viewProcessId", decision.getKey().toString());
+      view.add("decision", decision.getValue());
+      message.add("View", view);
+    }
     return message;
   }
 
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
 }
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.opengamma.core.change.ChangeEvent;
+import com.opengamma.core.change.ChangeListener;
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.core.position.PositionOrTrade;
+import com.opengamma.core.position.Trade;
+import com.opengamma.id.ObjectId;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.UniqueIdentifiable;
+
+/**
+ * Change listener for the portfolio, positions and securities of a view which notifies a computation job.
+ * <p>
+ * Only events for objects in the portfolio last compiled are passed on. A position added to the portfolio is reported
+ * through a change to the node, or portfolio, which contains it. Until a portfolio has been compiled all events are
+ * passed on.
+ */
+public class PortfolioChangeListener implements ChangeListener {
+
+  private final ViewComputationJob _computationJob;
+  private volatile Set<ObjectId> _portfolioObjectIds;
+
+  public PortfolioChangeListener(ViewComputationJob computationJob) {
+    _computationJob = computationJob;
+  }
+
+  /**
+   * Sets the portfolio that has been compiled. Subsequent events are only passed on if they concern its portfolio, nodes,
+   * positions, trades or securities.
+   *
+   * @param portfolio the compiled portfolio, or {@code null} to pass on all events
+   */
+  public void setPortfolio(final Portfolio portfolio) {
+    if (portfolio == null) {
+      _portfolioObjectIds = null;
+    } else {
+      final Set<ObjectId> objectIds = new HashSet<ObjectId>();
+      addObjectId(portfolio, objectIds);
+      if (portfolio.getRootNode() != null) {
+        addObjectIds(portfolio.getRootNode(), objectIds);
+      }
+      _portfolioObjectIds = Collections.unmodifiableSet(objectIds);
+    }
+  }
+
+  private static void addObjectId(final UniqueIdentifiable object, final Set<ObjectId> objectIds) {
+    final UniqueId uniqueId = object.getUniqueId();
+    if (uniqueId != null) {
+      objectIds.add(uniqueId.getObjectId());
+    }
+  }
+
+  private static void addSecurityObjectId(final PositionOrTrade positionOrTrade, final Set<ObjectId> objectIds) {
+    if (positionOrTrade.getSecurity() != null) {
+      addObjectId(positionOrTrade.getSecurity(), objectIds);
+    }
+    if ((positionOrTrade.getSecurityLink() != null) && (positionOrTrade.getSecurityLink().getObjectId() != null)) {
+      objectIds.add(positionOrTrade.getSecurityLink().getObjectId());
+    }
+  }
+
+  private static void addObjectIds(final PortfolioNode node, final Set<ObjectId> objectIds) {
+    addObjectId(node, objectIds);
+    for (Position position : node.getPositions()) {
+      addObjectId(position, objectIds);
+      addSecurityObjectId(position, objectIds);
+      if (position.getTrades() != null) {
+        for (Trade trade : position.getTrades()) {
+          addObjectId(trade, objectIds);
+          addSecurityObjectId(trade, objectIds);
+        }
+      }
+    }
+    for (PortfolioNode childNode : node.getChildNodes()) {
+      addObjectIds(childNode, objectIds);
+    }
+  }
+
+  @Override
+  public void entityChanged(ChangeEvent event) {
+    final Set<ObjectId> objectIds = _portfolioObjectIds;
+    if ((objectIds == null) || isPortfolioObject(event.getBeforeId(), objectIds) || isPortfolioObject(event.getAfterId(), objectIds)) {
+      getViewComputationJob().dirtyPortfolio();
+    }
+  }
+
+  private static boolean isPortfolioObject(final UniqueId uniqueId, final Set<ObjectId> objectIds) {
+    return (uniqueId != null) && objectIds.contains(uniqueId.getObjectId());
+  }
+
+  private ViewComputationJob getViewComputationJob() {
+    return _computationJob;
+  }
+
+}
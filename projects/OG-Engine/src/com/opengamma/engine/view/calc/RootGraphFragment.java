@@ -6,12 +6,15 @@
 package com.opengamma.engine.view.calc;
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
@@ -19,9 +22,13 @@ import com.opengamma.engine.view.calcnode.CalculationJobResult;
 
 /* package */class RootGraphFragment extends GraphFragment implements Future<Object> {
 
+  private static final AtomicLong s_nextPlanIdentifier = new AtomicLong();
+
+  private final long _planIdentifier = s_nextPlanIdentifier.incrementAndGet();
   private final GraphExecutorStatisticsGatherer _statistics;
   private long _jobStarted;
   private boolean _done;
+  private volatile long _costChecked = System.currentTimeMillis();
 
   public RootGraphFragment(final GraphFragmentContext context, final GraphExecutorStatisticsGatherer statistics) {
     super(context);
@@ -34,6 +41,58 @@ import com.opengamma.engine.view.calcnode.CalculationJobResult;
     _statistics = statistics;
   }
 
+  /**
+   * Returns an identifier for the plan. Plans built later have higher identifiers.
+   */
+  public long getPlanIdentifier() {
+    return _planIdentifier;
+  }
+
+  public GraphExecutorStatisticsGatherer getStatistics() {
+    return _statistics;
+  }
+
+  /**
+   * Tests whether the costs of the plan are due to be checked, updating the time of the last check if they are.
+   */
+  public boolean isCostCheckDue(final long period) {
+    final long now = System.currentTimeMillis();
+    if (now - _costChecked < period) {
+      return false;
+    }
+    _costChecked = now;
+    return true;
+  }
+
+  /**
+   * Compares the invocation costs the fragments were built with against the current function statistics.
+   * 
+   * @return the total absolute change in fragment costs as a proportion of the total cost the plan was built with
+   */
+  public double getCostDrift() {
+    final Set<GraphFragment> visited = new HashSet<GraphFragment>();
+    final LinkedList<GraphFragment> pending = new LinkedList<GraphFragment>();
+    pending.add(this);
+    long planned = 0;
+    long change = 0;
+    while (!pending.isEmpty()) {
+      final GraphFragment fragment = pending.removeFirst();
+      final long cost = fragment.getJobInvocationCost();
+      planned += cost;
+      change += Math.abs(fragment.getCurrentInvocationCost() - cost);
+      for (GraphFragment input : fragment.getInputFragments()) {
+        if (visited.add(input)) {
+          pending.add(input);
+        }
+      }
+    }
+    if (planned > 0) {
+      return (double) change / (double) planned;
+    } else {
+      return (change > 0) ? Double.POSITIVE_INFINITY : 0;
+    }
+  }
+
   @Override
   public synchronized void execute() {
     if (!isCancelled()) {
@@ -41,7 +100,8 @@ import com.opengamma.engine.view.calcnode.CalculationJobResult;
       notifyAll();
       _statistics.graphExecuted(getContext().getGraph().getCalculationConfigurationName(), getContext().getGraph().getSize(), getContext().getExecutionTime(), System.nanoTime() - _jobStarted);
       getContext().freeSharedCacheValues();
-      getContext().getExecutor().getCache().cacheExecutionPlan(getContext().getGraph(), this);
+      final MultipleNodeExecutor executor = getContext().getExecutor();
+      executor.getCache().cacheExecutionPlan(executor, getContext().getGraph(), this);
     }
   }
 
@@ -8,11 +8,13 @@ package com.opengamma.engine.view.calc;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -25,6 +27,7 @@ import java.util.concurrent.TimeoutException;
 import javax.time.Duration;
 import javax.time.Instant;
 
+import org.apache.commons.lang.ObjectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,15 +41,18 @@ import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.depgraph.DependencyNodeFilter;
 import com.opengamma.engine.function.MarketDataSourcingFunction;
+import com.opengamma.engine.marketdata.ChangeTrackingMarketDataSnapshot;
 import com.opengamma.engine.marketdata.MarketDataSnapshot;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
-import com.opengamma.engine.view.InMemoryViewComputationResultModel;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
 import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewComputationResultLayout;
 import com.opengamma.engine.view.ViewDefinition;
 import com.opengamma.engine.view.ViewProcessContext;
 import com.opengamma.engine.view.cache.CacheSelectHint;
+import com.opengamma.engine.view.cache.DefaultViewComputationCache;
 import com.opengamma.engine.view.cache.MissingMarketDataSentinel;
 import com.opengamma.engine.view.cache.ViewComputationCache;
 import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
@@ -85,9 +91,29 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
   private final Set<DependencyNode> _executedNodes = Collections.newSetFromMap(new ConcurrentHashMap<DependencyNode, Boolean>());
   private final Set<DependencyNode> _failedNodes = Collections.newSetFromMap(new ConcurrentHashMap<DependencyNode, Boolean>());
   private final Map<String, ViewComputationCache> _cachesByCalculationConfiguration = new HashMap<String, ViewComputationCache>();
+  /**
+   * The market data values used by this cycle, before any shift, so that the next cycle can determine which have changed
+   * without querying the computation caches.
+   */
+  private final Map<ValueSpecification, Object> _marketData = new HashMap<ValueSpecification, Object>();
+  /**
+   * The snapshot from which the market data was taken, so that the next cycle can ask a change tracking snapshot for the
+   * changed values.
+   */
+  private volatile MarketDataSnapshot _marketDataSnapshot;
+  /**
+   * The values recomputed by each calculation configuration when executed as a delta of {@link #_previousCycleId}.
+   */
+  private volatile Map<String, Set<ValueSpecification>> _recomputedValues;
+  /**
+   * The graphs passed to the executor for each calculation configuration, so that the next cycle can make the values
+   * they produced readable after this cycle's private data has been discarded.
+   */
+  private final Map<String, DependencyGraph> _executedGraphs = new ConcurrentHashMap<String, DependencyGraph>();
+  private volatile UniqueId _previousCycleId;
 
   // Output
-  private final InMemoryViewComputationResultModel _resultModel;
+  private final ColumnarViewComputationResultModel _resultModel;
 
   public SingleComputationCycle(UniqueId cycleId, UniqueId viewProcessId,
       ViewProcessContext viewProcessContext, CompiledViewDefinitionWithGraphsImpl compiledViewDefinition,
@@ -106,11 +132,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
 
     _executionOptions = executionOptions;
 
-    _resultModel = new InMemoryViewComputationResultModel();
-    _resultModel.setCalculationConfigurationNames(getCompiledViewDefinition().getViewDefinition().getAllCalculationConfigurationNames());
-    if (getCompiledViewDefinition().getPortfolio() != null) {
-      _resultModel.setPortfolio(getCompiledViewDefinition().getPortfolio());
-    }
+    _resultModel = new ColumnarViewComputationResultModel(getCompiledViewDefinition().getResultLayout());
     _resultModel.setViewCycleId(cycleId);
     _resultModel.setViewProcessId(getViewProcessId());
     _resultModel.setValuationTime(executionOptions.getValuationTime());
@@ -205,10 +227,31 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
   }
 
   @Override
-  public InMemoryViewComputationResultModel getResultModel() {
+  public ColumnarViewComputationResultModel getResultModel() {
     return _resultModel;
   }
 
+  /**
+   * Gets the identifier of the cycle from which this cycle was executed as a delta, copying the values which could
+   * not have changed.
+   * 
+   * @return the identifier of the previous cycle, or null if this cycle did not reuse the values of a previous cycle
+   */
+  public UniqueId getPreviousCycleId() {
+    return _previousCycleId;
+  }
+
+  /**
+   * Gets the values which were recomputed by this cycle, rather than copied from the previous cycle. Any value in the
+   * result model which is not listed is unchanged from the previous cycle's result model.
+   * 
+   * @return the specifications of the recomputed values keyed by calculation configuration name, or null if this cycle
+   *         did not reuse the values of a previous cycle with the same compiled view definition
+   */
+  public Map<String, Set<ValueSpecification>> getRecomputedValues() {
+    return _recomputedValues;
+  }
+
   @Override
   public ComputationCacheResponse queryComputationCaches(ComputationCacheQuery query) {
     ArgumentChecker.notNull(query, "query");
@@ -249,6 +292,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     _state = ViewCycleState.EXECUTING;
 
     createAllCaches();
+    _marketDataSnapshot = marketDataSnapshot;
     prepareInputs(marketDataSnapshot);
 
     if (previousCycle != null) {
@@ -260,6 +304,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     for (String calcConfigurationName : getAllCalculationConfigurationNames()) {
       s_logger.info("Executing plans for calculation configuration {}", calcConfigurationName);
       DependencyGraph depGraph = getExecutableDependencyGraph(calcConfigurationName);
+      _executedGraphs.put(calcConfigurationName, depGraph);
 
       s_logger.info("Submitting {} for execution by {}", depGraph, getDependencyGraphExecutor());
 
@@ -341,7 +386,9 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
         s_logger.debug("Unable to load market data value for {} from snapshot {}", marketDataRequirement, getValuationTime());
         missingMarketData.add(marketDataRequirement.getValue());
         dataAsValue = new ComputedValue(marketDataRequirement.getValue(), MissingMarketDataSentinel.getInstance());
+        _marketData.put(marketDataRequirement.getValue(), null);
       } else {
+        _marketData.put(marketDataRequirement.getValue(), data);
         dataAsValue = new ComputedValue(marketDataRequirement.getValue(), data);
         getResultModel().addMarketData(dataAsValue);
       }
@@ -429,6 +476,15 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
    * <li>Copy over all values that can be demonstrated to be the same from the previous iteration (because no input has changed)
    * <li>Only recompute the values that could have changed based on live data inputs
    * </ul> 
+   * If both cycles use the same compiled view definition, the changed inputs are taken from the market data snapshot when it
+   * can track its changes, or otherwise found by comparing the market data recorded by each cycle, and the nodes to
+   * recompute are found by walking downstream from those inputs. The unchanged nodes are marked as executed so that
+   * {@link #getExecutableDependencyGraph} passes just the dirty subgraph to the executor. Their values are not copied;
+   * the shared data store of each cache is layered on that of the previous cycle (see
+   * {@link DefaultViewComputationCache#overlaySharedValues}) so values which are not recomputed are read from it. The
+   * values the previous cycle computed which are only held privately are first written to its shared data store, so
+   * the values read or written are proportional to the dirty subgraphs of the two cycles. Marking the clean nodes as
+   * executed still visits each of them. If the caches cannot be layered, the clean values are copied.
    * 
    * @param previousCycle Previous iteration. It must not have been cleaned yet ({@link #releaseResources()}).
    */
@@ -437,34 +493,142 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
       throw new IllegalArgumentException("State of previous cycle must be " + ViewCycleState.EXECUTED);
     }
 
+    final Collection<ValueSpecification> changedMarketData;
+    if (previousCycle.getCompiledViewDefinition() == getCompiledViewDefinition()) {
+      changedMarketData = getChangedMarketData(previousCycle);
+      s_logger.debug("{} market data values out of {} have changed", changedMarketData.size(), _marketData.size());
+    } else {
+      changedMarketData = null;
+    }
+
+    // The values recomputed are only a complete record of the differences between the result models if both cycles
+    // produce results for the same graphs
+    final Map<String, Set<ValueSpecification>> recomputedValues = (changedMarketData != null) ? new HashMap<String, Set<ValueSpecification>>() : null;
     for (String calcConfigurationName : getAllCalculationConfigurationNames()) {
       DependencyGraph depGraph = getCompiledViewDefinition().getDependencyGraph(calcConfigurationName);
 
       ViewComputationCache cache = getComputationCache(calcConfigurationName);
       ViewComputationCache previousCache = previousCycle.getComputationCache(calcConfigurationName);
 
-      LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(depGraph, cache, previousCache);
+      LiveDataDeltaCalculator deltaCalculator;
+      if (changedMarketData != null) {
+        deltaCalculator = new LiveDataDeltaCalculator(depGraph, changedMarketData);
+      } else {
+        deltaCalculator = new LiveDataDeltaCalculator(depGraph, cache, previousCache);
+      }
       deltaCalculator.computeDelta();
 
       s_logger.info("Computed delta for calculation configuration '{}'. {} nodes out of {} require recomputation.",
           new Object[] {calcConfigurationName, deltaCalculator.getChangedNodes().size(), depGraph.getSize() });
 
-      Collection<ValueSpecification> specsToCopy = new HashSet<ValueSpecification>();
-
+      Set<ValueSpecification> recomputed = null;
+      if (recomputedValues != null) {
+        recomputed = new HashSet<ValueSpecification>();
+        recomputedValues.put(calcConfigurationName, Collections.unmodifiableSet(recomputed));
+      }
+      final Collection<ValueSpecification> shadowed = new HashSet<ValueSpecification>();
+      for (DependencyNode changedNode : deltaCalculator.getChangedNodes()) {
+        shadowed.addAll(changedNode.getOutputValues());
+      }
       for (DependencyNode unchangedNode : deltaCalculator.getUnchangedNodes()) {
         if (previousCycle.isExecuted(unchangedNode)) {
           markExecuted(unchangedNode);
           if (previousCycle.isFailed(unchangedNode)) {
             markFailed(unchangedNode);
-          } else {
+          }
+        } else {
+          shadowed.addAll(unchangedNode.getOutputValues());
+        }
+      }
+      if (recomputed != null) {
+        recomputed.addAll(shadowed);
+      }
+      if (!overlayValues(cache, previousCycle, calcConfigurationName, shadowed)) {
+        final Collection<ValueSpecification> specsToCopy = new HashSet<ValueSpecification>();
+        for (DependencyNode unchangedNode : deltaCalculator.getUnchangedNodes()) {
+          if (previousCycle.isExecuted(unchangedNode) && !previousCycle.isFailed(unchangedNode) && !isPreparedInput(unchangedNode)) {
             specsToCopy.addAll(unchangedNode.getOutputValues());
           }
         }
+        if (!specsToCopy.isEmpty()) {
+          copyValues(cache, previousCache, specsToCopy);
+        }
       }
-      if (!specsToCopy.isEmpty()) {
-        copyValues(cache, previousCache, specsToCopy);
+    }
+    _previousCycleId = previousCycle.getUniqueId();
+    if (recomputedValues != null) {
+      _recomputedValues = Collections.unmodifiableMap(recomputedValues);
+    }
+  }
+
+  /**
+   * Tests if a node sources market data that has already been written to the caches by {@link #prepareInputs}.
+   */
+  private boolean isPreparedInput(DependencyNode node) {
+    final Pair<ValueRequirement, ValueSpecification> marketData = node.getRequiredMarketData();
+    return (marketData != null) && _marketData.containsKey(marketData.getSecond());
+  }
+
+  private Collection<ValueSpecification> getChangedMarketData(SingleComputationCycle previousCycle) {
+    if ((_marketDataSnapshot instanceof ChangeTrackingMarketDataSnapshot) && (previousCycle._marketDataSnapshot != null)) {
+      final Set<ValueRequirement> changedRequirements = ((ChangeTrackingMarketDataSnapshot) _marketDataSnapshot).getChangesSince(previousCycle._marketDataSnapshot);
+      if (changedRequirements != null) {
+        return getChangedMarketData(changedRequirements);
+      }
+    }
+    final Collection<ValueSpecification> changed = new HashSet<ValueSpecification>();
+    for (Map.Entry<ValueSpecification, Object> marketData : _marketData.entrySet()) {
+      final Object previousValue = previousCycle._marketData.get(marketData.getKey());
+      if (!ObjectUtils.equals(previousValue, marketData.getValue()) || ((previousValue == null) && !previousCycle._marketData.containsKey(marketData.getKey()))) {
+        changed.add(marketData.getKey());
       }
     }
+    return changed;
+  }
+
+  private Collection<ValueSpecification> getChangedMarketData(Set<ValueRequirement> changedRequirements) {
+    final Map<ValueRequirement, ValueSpecification> marketDataRequirements = getCompiledViewDefinition().getMarketDataRequirements();
+    final Collection<ValueSpecification> changed = new HashSet<ValueSpecification>();
+    if (changedRequirements.size() < marketDataRequirements.size()) {
+      for (ValueRequirement changedRequirement : changedRequirements) {
+        final ValueSpecification marketDataSpec = marketDataRequirements.get(changedRequirement);
+        if (marketDataSpec != null) {
+          changed.add(marketDataSpec);
+        }
+      }
+    } else {
+      for (Map.Entry<ValueRequirement, ValueSpecification> marketDataRequirement : marketDataRequirements.entrySet()) {
+        if (changedRequirements.contains(marketDataRequirement.getKey())) {
+          changed.add(marketDataRequirement.getValue());
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Layers the shared data store of a cache on that of the previous cycle. The values computed by the previous cycle
+   * are first written to its shared data store, so that they remain readable when its private data is discarded.
+   * 
+   * @return true if the caches were layered, false if the values must be copied
+   */
+  private boolean overlayValues(ViewComputationCache cache, SingleComputationCycle previousCycle, String calcConfigurationName, Collection<ValueSpecification> shadowed) {
+    final ViewComputationCache previousCache = previousCycle.getComputationCache(calcConfigurationName);
+    if (!(cache instanceof DefaultViewComputationCache) || !(previousCache instanceof DefaultViewComputationCache)) {
+      return false;
+    }
+    final DefaultViewComputationCache defaultPreviousCache = (DefaultViewComputationCache) previousCache;
+    final DependencyGraph previousGraph = previousCycle._executedGraphs.get(calcConfigurationName);
+    if (previousGraph != null) {
+      final Collection<ValueSpecification> computed = new ArrayList<ValueSpecification>();
+      for (DependencyNode node : previousGraph.getDependencyNodes()) {
+        if (previousCycle.isExecuted(node) && !previousCycle.isFailed(node)) {
+          computed.addAll(node.getOutputValues());
+        }
+      }
+      defaultPreviousCache.shareValues(computed);
+    }
+    return ((DefaultViewComputationCache) cache).overlaySharedValues(defaultPreviousCache, shadowed);
   }
 
   private void copyValues(ViewComputationCache cache, ViewComputationCache previousCache, Collection<ValueSpecification> specsToCopy) {
@@ -483,34 +647,27 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
   private void populateResultModel() {
     getResultModel().setCalculationTime(Instant.now());
     getResultModel().setCalculationDuration(getDuration());
-    for (String calcConfigurationName : getAllCalculationConfigurationNames()) {
-      DependencyGraph depGraph = getCompiledViewDefinition().getDependencyGraph(calcConfigurationName);
-      populateResultModel(calcConfigurationName, depGraph);
+    final ViewComputationResultLayout layout = getResultModel().getLayout();
+    for (int i = 0; i < layout.getCalculationConfigurationNames().size(); i++) {
+      populateResultModel(layout, i);
     }
   }
 
-  private void populateResultModel(String calcConfigurationName, DependencyGraph depGraph) {
-    ViewComputationCache computationCache = getComputationCache(calcConfigurationName);
-    
-    for (Pair<ValueSpecification, Object> value : computationCache.getValues(getOutputSpecificationsForResultModel(depGraph), CacheSelectHint.allShared())) {
+  private void populateResultModel(ViewComputationResultLayout layout, int calcConfigurationIndex) {
+    List<ValueSpecification> outputs = layout.getCells(calcConfigurationIndex);
+    if (outputs.isEmpty()) {
+      return;
+    }
+    ViewComputationCache computationCache = getComputationCache(layout.getCalculationConfigurationName(calcConfigurationIndex));
+    for (Pair<ValueSpecification, Object> value : computationCache.getValues(outputs, CacheSelectHint.allShared())) {
       if (value.getValue() == null) {
         continue;
       }
       if (value.getSecond() instanceof MissingMarketDataSentinel) {
         continue;
       }
-      getResultModel().addValue(calcConfigurationName, new ComputedValue(value.getFirst(), value.getSecond()));
-    }
-  }
-
-  private Set<ValueSpecification> getOutputSpecificationsForResultModel(DependencyGraph depGraph) {
-    Set<ValueSpecification> outputSpecifications = new HashSet<ValueSpecification>();
-    for (ValueSpecification valueSpecification : depGraph.getOutputSpecifications()) {
-      if (getViewDefinition().getResultModelDefinition().shouldOutputResult(valueSpecification, depGraph)) {
-        outputSpecifications.add(valueSpecification);
-      }
+      getResultModel().setValue(layout.getCellIndex(calcConfigurationIndex, value.getFirst()), value.getSecond());
     }
-    return outputSpecifications;
   }
 
   private DependencyGraph getDependencyGraph(String calcConfName) {
@@ -6,6 +6,7 @@
 package com.opengamma.engine.view.calc;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -38,6 +39,7 @@ import com.opengamma.engine.view.ViewProcessContext;
 import com.opengamma.engine.view.ViewProcessImpl;
 import com.opengamma.engine.view.calc.trigger.CombinedViewCycleTrigger;
 import com.opengamma.engine.view.calc.trigger.FixedTimeTrigger;
+import com.opengamma.engine.view.calc.trigger.MarketDataChangeTrigger;
 import com.opengamma.engine.view.calc.trigger.RecomputationPeriodTrigger;
 import com.opengamma.engine.view.calc.trigger.RunAsFastAsPossibleTrigger;
 import com.opengamma.engine.view.calc.trigger.SuccessiveDeltaLimitTrigger;
@@ -72,6 +74,7 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   private final EngineResourceManagerInternal<SingleComputationCycle> _cycleManager;
   private final ViewCycleTrigger _masterCycleTrigger;
   private final FixedTimeTrigger _compilationExpiryCycleTrigger;
+  private final MarketDataChangeTrigger _marketDataChangeTrigger;
   private final boolean _executeCycles;
   
   private int _cycleCount;
@@ -84,12 +87,14 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   private CountDownLatch _pendingSubscriptionLatch;
   
   private ChangeListener _viewDefinitionChangeListener;
+  private PortfolioChangeListener _portfolioChangeListener;
   
   private volatile boolean _wakeOnMarketDataChanged;
   private volatile boolean _marketDataChanged = true;
   private volatile boolean _forceTriggerCycle;
   private volatile boolean _viewDefinitionDirty = true;
   private volatile boolean _compilationDirty;
+  private volatile boolean _portfolioDirty;
   
   /**
    * Nanoseconds
@@ -110,11 +115,13 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     _cycleManager = cycleManager;
     
     _compilationExpiryCycleTrigger = new FixedTimeTrigger();
+    _marketDataChangeTrigger = createMarketDataChangeTrigger(executionOptions);
     _masterCycleTrigger = createViewCycleTrigger(executionOptions);
     _executeCycles = !getExecutionOptions().getFlags().contains(ViewExecutionFlags.COMPILE_ONLY);
     
     updateViewDefinitionIfRequired();
     subscribeToViewDefinition();
+    subscribeToPortfolio();
   }
 
   private ViewCycleTrigger createViewCycleTrigger(ViewExecutionOptions executionOptions) {
@@ -129,8 +136,18 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     if (executionOptions.getMaxSuccessiveDeltaCycles() != null) {
       trigger.addTrigger(new SuccessiveDeltaLimitTrigger(executionOptions.getMaxSuccessiveDeltaCycles()));
     }
+    if (_marketDataChangeTrigger != null) {
+      trigger.addTrigger(_marketDataChangeTrigger);
+    }
     return trigger;
   }
+  
+  private MarketDataChangeTrigger createMarketDataChangeTrigger(ViewExecutionOptions executionOptions) {
+    if (!executionOptions.getFlags().contains(ViewExecutionFlags.TRIGGER_CYCLE_ON_MARKET_DATA_CHANGED) || executionOptions.getMarketDataLatencyMillis() == null) {
+      return null;
+    }
+    return new MarketDataChangeTrigger(executionOptions.getMaxMarketDataChanges(), executionOptions.getMarketDataLatencyMillis());
+  }
 
   //-------------------------------------------------------------------------
   private ViewProcessImpl getViewProcess() {
@@ -440,6 +457,7 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       _previousCycleReference.release();
     }
     unsubscribeFromViewDefinition();
+    unsubscribeFromPortfolio();
     removeMarketDataProvider();
     invalidateCachedCompiledViewDefinition();
   }
@@ -472,21 +490,35 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     _compilationDirty = true;
   }
   
+  /**
+   * Indicates that positions or securities have changed which may be in the portfolio. The portfolio is compared with
+   * the one last compiled before the next cycle, and only the targets which have changed are compiled again.
+   */
+  public void dirtyPortfolio() {
+    s_logger.debug("Marking portfolio as dirty for view process {}", getViewProcess());
+    _portfolioDirty = true;
+  }
+  
   public synchronized void triggerCycle() {
     s_logger.debug("Cycle triggered manually");
     _forceTriggerCycle = true;
     notifyAll();
   }
   
-  public synchronized void marketDataChanged() {
-    // REVIEW jonathan 2010-10-04 -- this synchronisation is necessary, but it feels very heavyweight for
-    // high-frequency market data. See how it goes, but we could take into account the recalc periods and apply a
-    // heuristic (e.g. only wake up due to market data if max - min < e, for some e) which tries to see whether it's
-    // worth doing all this.
-    
+  public void marketDataChanged() {
+    // Ticks arriving while a change is already pending are coalesced into the same cycle, so only the first of them
+    // needs to take the lock. The pending change is only cleared when a cycle is triggered, and the cycle's snapshot
+    // is taken after that, so a tick which sees it set will be included in that cycle.
+    if (_marketDataChanged) {
+      return;
+    }
+    marketDataChanged(false);
+  }
+  
+  private synchronized void marketDataChanged(boolean wake) {
     s_logger.debug("Market Data changed");
     _marketDataChanged = true;
-    if (!_wakeOnMarketDataChanged) {
+    if (!wake && !_wakeOnMarketDataChanged) {
       return;
     }
     notifyAll();
@@ -524,16 +556,37 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     } else {
       compiledViewDefinition = getCachedCompiledViewDefinition();
     }
+    // Changes arriving from now on are applied by a later compilation
+    final boolean portfolioDirty = _portfolioDirty;
+    _portfolioDirty = false;
     if (compiledViewDefinition != null && compiledViewDefinition.isValidFor(valuationTime) && functionInitId == compiledViewDefinition.getFunctionInitId()) {
-      // Existing cached model is valid (an optimisation for the common case of similar, increasing valuation times)
-      return compiledViewDefinition;
+      if (!portfolioDirty) {
+        // Existing cached model is valid (an optimisation for the common case of similar, increasing valuation times)
+        return compiledViewDefinition;
+      }
+    } else {
+      compiledViewDefinition = null;
     }
     
     try {
       MarketDataAvailabilityProvider availabilityProvider = getMarketDataProvider().getAvailabilityProvider();
       ViewCompilationServices compilationServices = getProcessContext().asCompilationServices(availabilityProvider);
-      compiledViewDefinition = ViewDefinitionCompiler.compile(_viewDefinition, compilationServices, valuationTime, versionCorrection);
+      if (compiledViewDefinition != null) {
+        // Only the portfolio may have changed. The cached model is not modified so remains in use by any cycles
+        // until the changes have been applied to a copy of it.
+        final CompiledViewDefinitionWithGraphsImpl previousCompiledViewDefinition = compiledViewDefinition;
+        compiledViewDefinition = ViewDefinitionCompiler.recompile(previousCompiledViewDefinition, compilationServices, valuationTime, versionCorrection);
+        if (compiledViewDefinition == previousCompiledViewDefinition) {
+          return compiledViewDefinition;
+        }
+      } else {
+        compiledViewDefinition = ViewDefinitionCompiler.compile(_viewDefinition, compilationServices, valuationTime, versionCorrection);
+      }
     } catch (Exception e) {
+      if (portfolioDirty) {
+        // The portfolio changes have not been applied, so must be by the next compilation
+        _portfolioDirty = true;
+      }
       String message = MessageFormat.format("Error compiling view definition {0} for time {1}", getViewProcess().getDefinitionId(), valuationTime);
       viewDefinitionCompilationFailed(valuationTime, new OpenGammaRuntimeException(message, e));
       throw new OpenGammaRuntimeException(message, e);
@@ -586,6 +639,10 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
    */
   public void setCachedCompiledViewDefinition(CompiledViewDefinitionWithGraphsImpl latestCompiledViewDefinition) {
     _latestCompiledViewDefinition = latestCompiledViewDefinition;
+    final PortfolioChangeListener portfolioChangeListener = _portfolioChangeListener;
+    if (portfolioChangeListener != null) {
+      portfolioChangeListener.setPortfolio((latestCompiledViewDefinition != null) ? latestCompiledViewDefinition.getPortfolio() : null);
+    }
   }
   
   /**
@@ -624,6 +681,32 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     _viewDefinitionChangeListener = null;
   }
   
+  private void subscribeToPortfolio() {
+    if (_portfolioChangeListener != null) {
+      return;
+    }
+    _portfolioChangeListener = new PortfolioChangeListener(this);
+    if (getProcessContext().getPositionSource() != null && getProcessContext().getPositionSource().changeManager() != null) {
+      getProcessContext().getPositionSource().changeManager().addChangeListener(_portfolioChangeListener);
+    }
+    if (getProcessContext().getSecuritySource() != null && getProcessContext().getSecuritySource().changeManager() != null) {
+      getProcessContext().getSecuritySource().changeManager().addChangeListener(_portfolioChangeListener);
+    }
+  }
+  
+  private void unsubscribeFromPortfolio() {
+    if (_portfolioChangeListener == null) {
+      return;
+    }
+    if (getProcessContext().getPositionSource() != null && getProcessContext().getPositionSource().changeManager() != null) {
+      getProcessContext().getPositionSource().changeManager().removeChangeListener(_portfolioChangeListener);
+    }
+    if (getProcessContext().getSecuritySource() != null && getProcessContext().getSecuritySource().changeManager() != null) {
+      getProcessContext().getSecuritySource().changeManager().removeChangeListener(_portfolioChangeListener);
+    }
+    _portfolioChangeListener = null;
+  }
+  
   //-------------------------------------------------------------------------
   private void replaceMarketDataProvider(MarketDataSpecification marketDataSpec) {
     removeMarketDataProvider();
@@ -737,7 +820,31 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       return;
     }
     Map<ValueRequirement, ValueSpecification> marketDataRequirements = compiledView.getMarketDataRequirements();
-    if (CollectionUtils.containsAny(marketDataRequirements.keySet(), values)) {
+    MarketDataChangeTrigger marketDataChangeTrigger = _marketDataChangeTrigger;
+    if (marketDataChangeTrigger == null) {
+      if (CollectionUtils.containsAny(marketDataRequirements.keySet(), values)) {
+        marketDataChanged();
+      }
+      return;
+    }
+    Collection<ValueRequirement> changedValues;
+    if (marketDataRequirements.keySet().containsAll(values)) {
+      changedValues = values;
+    } else {
+      changedValues = new ArrayList<ValueRequirement>(values.size());
+      for (ValueRequirement value : values) {
+        if (marketDataRequirements.containsKey(value)) {
+          changedValues.add(value);
+        }
+      }
+      if (changedValues.isEmpty()) {
+        return;
+      }
+    }
+    if (marketDataChangeTrigger.valuesChanged(changedValues)) {
+      // The latency budget may now be satisfied sooner than the job was expecting when it went to sleep 
+      marketDataChanged(true);
+    } else {
       marketDataChanged();
     }
   }
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc.jmx;
+
+import java.util.Map;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.id.UniqueId;
+
+/**
+ * MultipleNodeExecutorTunerMBean implementation.
+ */
+public final class MultipleNodeExecutorTuner implements MultipleNodeExecutorTunerMBean {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(MultipleNodeExecutorTuner.class);
+
+  private final com.opengamma.engine.view.calc.MultipleNodeExecutorTuner _underlying;
+
+  private MultipleNodeExecutorTuner(final com.opengamma.engine.view.calc.MultipleNodeExecutorTuner underlying) {
+    _underlying = underlying;
+  }
+
+  private com.opengamma.engine.view.calc.MultipleNodeExecutorTuner getUnderlying() {
+    return _underlying;
+  }
+
+  public static void registerMBeans(final com.opengamma.engine.view.calc.MultipleNodeExecutorTuner tuner, final MBeanServer server) throws JMException {
+    final ObjectName name = new ObjectName("com.opengamma:type=MultipleNodeExecutorTuner,name=" + tuner.toString());
+    final MultipleNodeExecutorTuner instance = new MultipleNodeExecutorTuner(tuner);
+    try {
+      server.registerMBean(instance, name);
+    } catch (InstanceAlreadyExistsException e) {
+      s_logger.warn("JMX MBean {} already exists - replacing", name);
+      server.unregisterMBean(name);
+      server.registerMBean(instance, name);
+    }
+  }
+
+  @Override
+  public void setLocalTargetOverhead(double localTargetOverhead) {
+    getUnderlying().setLocalTargetOverhead(localTargetOverhead);
+  }
+
+  @Override
+  public double getLocalTargetOverhead() {
+    return getUnderlying().getLocalTargetOverhead();
+  }
+
+  @Override
+  public void setRemoteTargetOverhead(double remoteTargetOverhead) {
+    getUnderlying().setRemoteTargetOverhead(remoteTargetOverhead);
+  }
+
+  @Override
+  public double getRemoteTargetOverhead() {
+    return getUnderlying().getRemoteTargetOverhead();
+  }
+
+  @Override
+  public void setTolerance(double tolerance) {
+    getUnderlying().setTolerance(tolerance);
+  }
+
+  @Override
+  public double getTolerance() {
+    return getUnderlying().getTolerance();
+  }
+
+  @Override
+  public void setJobSizeStep(double jobSizeStep) {
+    getUnderlying().setJobSizeStep(jobSizeStep);
+  }
+
+  @Override
+  public double getJobSizeStep() {
+    return getUnderlying().getJobSizeStep();
+  }
+
+  @Override
+  public void setMinimumJobSizeScale(double minimumJobSizeScale) {
+    getUnderlying().setMinimumJobSizeScale(minimumJobSizeScale);
+  }
+
+  @Override
+  public double getMinimumJobSizeScale() {
+    return getUnderlying().getMinimumJobSizeScale();
+  }
+
+  @Override
+  public void setMaximumJobSizeScale(double maximumJobSizeScale) {
+    getUnderlying().setMaximumJobSizeScale(maximumJobSizeScale);
+  }
+
+  @Override
+  public double getMaximumJobSizeScale() {
+    return getUnderlying().getMaximumJobSizeScale();
+  }
+
+  @Override
+  public double getLocalNodeOverhead() {
+    return getUnderlying().getLocalNodeOverhead();
+  }
+
+  @Override
+  public double getRemoteNodeOverhead() {
+    return getUnderlying().getRemoteNodeOverhead();
+  }
+
+  @Override
+  public String getConcurrencyDecision() {
+    return getUnderlying().getConcurrencyDecision();
+  }
+
+  @Override
+  public String[] getViewDecisions() {
+    final Map<UniqueId, String> decisions = getUnderlying().getViewDecisions();
+    final String[] result = new String[decisions.size()];
+    int i = 0;
+    for (Map.Entry<UniqueId, String> decision : decisions.entrySet()) {
+      result[i++] = decision.getKey() + ": " + decision.getValue();
+    }
+    return result;
+  }
+
+}
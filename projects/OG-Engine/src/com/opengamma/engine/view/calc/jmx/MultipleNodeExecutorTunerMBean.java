@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc.jmx;
+
+/**
+ * JMX MBean interface for the tuning targets and decisions of a {@link com.opengamma.engine.view.calc.MultipleNodeExecutorTuner}.
+ */
+public interface MultipleNodeExecutorTunerMBean {
+
+  void setLocalTargetOverhead(double localTargetOverhead);
+  double getLocalTargetOverhead();
+  void setRemoteTargetOverhead(double remoteTargetOverhead);
+  double getRemoteTargetOverhead();
+  void setTolerance(double tolerance);
+  double getTolerance();
+  void setJobSizeStep(double jobSizeStep);
+  double getJobSizeStep();
+  void setMinimumJobSizeScale(double minimumJobSizeScale);
+  double getMinimumJobSizeScale();
+  void setMaximumJobSizeScale(double maximumJobSizeScale);
+  double getMaximumJobSizeScale();
+  double getLocalNodeOverhead();
+  double getRemoteNodeOverhead();
+  String getConcurrencyDecision();
+  String[] getViewDecisions();
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc.trigger;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Trigger that coalesces market data changes between cycles, applying a latency budget to them.
+ * <p>
+ * Ticks are recorded against the value requirements they change, so any number of ticks for the same requirement
+ * count as a single change. Once market data has changed, a cycle is prevented until either the number of changed
+ * requirements reaches a limit or the latency budget has elapsed since the first change, allowing further changes to
+ * be picked up by the same cycle. Ticks may be recorded concurrently with the trigger being queried; the changes and
+ * the time of the first are guarded by the trigger's monitor so that a query never sees one without the other.
+ */
+public class MarketDataChangeTrigger implements ViewCycleTrigger {
+
+  private static final long NANOS_PER_MILLISECOND = 1000000;
+
+  private final int _maxChanges;
+  private final long _latencyNanos;
+
+  // The remaining state is guarded by this object's monitor
+  private final Set<ValueRequirement> _changes = new HashSet<ValueRequirement>();
+  private long _firstChangeNanos;
+
+  /**
+   * @param maxChanges  the number of changed requirements which triggers a cycle without waiting for the latency
+   * budget to elapse, null for no limit
+   * @param latencyMillis  the maximum time in milliseconds that a change is held back to be coalesced with further
+   * changes
+   */
+  public MarketDataChangeTrigger(Integer maxChanges, long latencyMillis) {
+    ArgumentChecker.isTrue(maxChanges == null || maxChanges > 0, "maxChanges must be positive");
+    ArgumentChecker.isTrue(latencyMillis >= 0, "latencyMillis must not be negative");
+    _maxChanges = (maxChanges != null) ? maxChanges : Integer.MAX_VALUE;
+    _latencyNanos = latencyMillis * NANOS_PER_MILLISECOND;
+  }
+
+  /**
+   * Records changes to market data.
+   *
+   * @param requirements  the requirements whose values have changed, not null
+   * @return true if the changes have made a cycle eligible sooner than previously indicated by {@link #query}, false
+   * otherwise
+   */
+  public synchronized boolean valuesChanged(Collection<ValueRequirement> requirements) {
+    boolean wake = false;
+    for (ValueRequirement requirement : requirements) {
+      if (_changes.add(requirement)) {
+        final int count = _changes.size();
+        if (count == 1) {
+          _firstChangeNanos = System.nanoTime();
+          wake = true;
+        }
+        if (count == _maxChanges) {
+          wake = true;
+        }
+      }
+    }
+    return wake;
+  }
+
+  /**
+   * Gets the number of requirements whose values have changed since the last cycle was triggered.
+   *
+   * @return the number of changes
+   */
+  /* package */synchronized int getChangeCount() {
+    return _changes.size();
+  }
+
+  @Override
+  public synchronized ViewCycleTriggerResult query(long cycleTimeNanos) {
+    if (_changes.isEmpty()) {
+      // Nothing to coalesce; leave it to the other triggers
+      return new ViewCycleTriggerResult(ViewCycleEligibility.ELIGIBLE);
+    }
+    if (_changes.size() >= _maxChanges) {
+      return new ViewCycleTriggerResult(ViewCycleEligibility.ELIGIBLE);
+    }
+    long deadlineNanos = _firstChangeNanos + _latencyNanos;
+    if (deadlineNanos - cycleTimeNanos <= 0) {
+      return new ViewCycleTriggerResult(ViewCycleEligibility.ELIGIBLE);
+    }
+    return ViewCycleTriggerResult.preventUntil(deadlineNanos);
+  }
+
+  @Override
+  public synchronized void cycleTriggered(long cycleTimeNanos, ViewCycleType cycleType) {
+    // The cycle's market data snapshot is taken after this, so any change removed here will be seen by the cycle. A
+    // change recorded afterwards contributes to the next cycle.
+    _changes.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "MarketDataChangeTrigger[maxChanges=" + _maxChanges + ", latencyNanos=" + _latencyNanos + ", changeCount=" + getChangeCount() + "]";
+  }
+
+}
@@ -17,6 +17,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
@@ -134,6 +135,7 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     private Status _status;
     private Set<JobEntry> _blocked;
     private Pair<Thread, CalculationJob> _executor;
+    private boolean _interrupted;
 
     public JobExecution(final long jobId) {
       _jobId = jobId;
@@ -157,12 +159,6 @@ public abstract class AbstractCalculationNodeInvocationContainer {
       _status = status;
     }
 
-    public synchronized Pair<Thread, CalculationJob> getAndSetExecutor(final Pair<Thread, CalculationJob> executor) {
-      final Pair<Thread, CalculationJob> previous = _executor;
-      _executor = executor;
-      return previous;
-    }
-
     public synchronized boolean threadBusy(final CalculationJob job) {
       assert _executor == null;
       if (_status == Status.FAILED) {
@@ -172,6 +168,37 @@ public abstract class AbstractCalculationNodeInvocationContainer {
       return true;
     }
 
+    /**
+     * Releases the executing thread, clearing any interrupt made by {@link #cancelExecutor} so that it cannot affect
+     * the next job run by the thread. The interrupt is made while holding the monitor so will always have been
+     * delivered by the time this method acquires it.
+     */
+    public synchronized void threadFree() {
+      assert (_executor == null) || (_executor.getFirst() == Thread.currentThread());
+      _executor = null;
+      if (_interrupted) {
+        _interrupted = false;
+        if (Thread.interrupted()) {
+          s_logger.debug("Interrupt status cleared");
+        }
+      }
+    }
+
+    /**
+     * Marks the job as cancelled and interrupts the thread executing it, if there is one.
+     *
+     * @return the interrupted thread and job, or null if the job was not executing
+     */
+    public synchronized Pair<Thread, CalculationJob> cancelExecutor() {
+      final Pair<Thread, CalculationJob> executor = _executor;
+      if ((executor != null) && !_interrupted) {
+        executor.getSecond().cancel();
+        executor.getFirst().interrupt();
+        _interrupted = true;
+      }
+      return executor;
+    }
+
     // Caller must own the monitor
     public Set<JobEntry> getBlocked() {
       Set<JobEntry> blocked = _blocked;
@@ -202,7 +229,16 @@ public abstract class AbstractCalculationNodeInvocationContainer {
   private final ConcurrentMap<Long, JobExecution> _failures = new ConcurrentSkipListMap<Long, JobExecution>();
   private final AtomicInteger _failureCount = new AtomicInteger();
 
+  /**
+   * Jobs that became runnable outside of a worker thread, for example when submitted with no required jobs.
+   */
   private final Queue<JobEntry> _runnableJobs = new ConcurrentLinkedQueue<JobEntry>();
+
+  /**
+   * The workers currently holding a node. Idle workers steal from the deques of these.
+   */
+  private final Queue<Worker> _workers = new ConcurrentLinkedQueue<Worker>();
+
   private final ExecutorService _executorService = Executors.newCachedThreadPool();
 
   protected Queue<AbstractCalculationNode> getNodes() {
@@ -261,6 +297,13 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     return _failures.get(jobId);
   }
 
+  /**
+   * Starts a worker on a node. The worker will run the given job, if any, and then any others that are runnable.
+   */
+  private void spawnWorker(final AbstractCalculationNode node, final JobEntry jobexec) {
+    getExecutorService().execute(new Worker(node, jobexec));
+  }
+
   /**
    * Adds a job to the runnable queue, spawning a worker thread if a node is supplied or one is
    * available. 
@@ -269,26 +312,18 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     if (node == null) {
       node = getNodes().poll();
       if (node == null) {
-        synchronized (this) {
-          node = getNodes().poll();
-          if (node == null) {
-            s_logger.debug("Adding job {} to runnable queue", jobexec.getJob().getSpecification().getJobId());
-            _runnableJobs.add(jobexec);
-            return;
-          }
+        s_logger.debug("Adding job {} to runnable queue", jobexec.getJob().getSpecification().getJobId());
+        _runnableJobs.add(jobexec);
+        // A worker may have released its node after we polled but before it could see the queued job
+        node = getNodes().poll();
+        if (node != null) {
+          spawnWorker(node, null);
         }
+        return;
       }
     }
     s_logger.debug("Spawning execution of job {}", jobexec.getJob().getSpecification().getJobId());
-    final AbstractCalculationNode parallelNode = node;
-    getExecutorService().execute(new Runnable() {
-
-      @Override
-      public void run() {
-        executeJobs(parallelNode, jobexec);
-      }
-
-    });
+    spawnWorker(node, jobexec);
   }
 
   private void failExecution(final JobExecution execution) {
@@ -379,109 +414,172 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     spawnOrQueueJob(jobEntry, node);
   }
 
-  private void threadFree(final JobExecution exec) {
-    // The executor should only go null transiently while the cancel action happens and should then
-    // be restored. If, for probably erroneous reasons, the job has been launched twice we can see
-    // a continuous null here from the second running thread so have a spin count here to give up
-    // after 1s regardless (which may cause further errors, but is better than deadlock).
-    int spin = 0;
-    do {
-      final Pair<Thread, CalculationJob> previous = exec.getAndSetExecutor(null);
-      if (previous != null) {
-        assert previous.getFirst() == Thread.currentThread();
-        return;
-      }
-      // Executor reference is null while the job is being canceled. An interrupt may be done as part of
-      // this so we need to make sure we swallow it rather than leave ourselves in an interrupted state.
-      if (Thread.interrupted()) {
-        s_logger.debug("Interrupt status cleared");
-        return;
-      }
-      switch (spin) {
-        case 0:
-          s_logger.debug("Waiting for interrupt");
-          break;
-        case 1:
-          s_logger.info("Waiting for interrupt");
-          break;
-        case 2:
-          s_logger.warn("Waiting for interrupt");
-          break;
-        default:
-          s_logger.error("Waiting for interrupt");
-          break;
-      }
-      try {
-        Thread.sleep(10);
-      } catch (InterruptedException e) {
-        s_logger.debug("Interrupt received");
-        return;
+  private boolean hasRunnableJobs() {
+    if (!_runnableJobs.isEmpty()) {
+      return true;
+    }
+    for (Worker worker : _workers) {
+      if (!worker.isIdle()) {
+        return true;
       }
-    } while (++spin < 1000);
+    }
+    return false;
   }
 
   /**
-   * Executes jobs from the runnable queue until it is empty.
-   * 
-   * @param node Node to run on, not null
-   * @param jobexec The first job to run, not null
+   * Executes jobs on a node for as long as there are any runnable. A job released by the completion of another is run
+   * immediately by the same worker as its inputs are likely to be in the node's cache. Any others released at the same
+   * time are pushed onto the worker's deque from which idle workers can steal them.
+   * <p>
+   * The worker takes jobs from its own deque first, most recently released first, then from the jobs submitted to the
+   * container and lastly by stealing the oldest jobs from another worker. When there are none it releases its node.
+   * Anything that becomes runnable after this is either seen by the worker when it re-checks, or the thread making it
+   * runnable will find the released node and spawn a new worker.
    */
-  private void executeJobs(final AbstractCalculationNode node, JobEntry jobexec) {
-    do {
-      s_logger.info("Executing job {} on {}", jobexec.getExecution().getJobId(), node.getNodeId());
+  private final class Worker implements Runnable {
+
+    private final LinkedBlockingDeque<JobEntry> _deque = new LinkedBlockingDeque<JobEntry>();
+    private AbstractCalculationNode _node;
+    private JobEntry _jobexec;
+
+    public Worker(final AbstractCalculationNode node, final JobEntry jobexec) {
+      _node = node;
+      _jobexec = jobexec;
+    }
+
+    public boolean isIdle() {
+      return _deque.isEmpty();
+    }
+
+    private JobEntry steal() {
+      for (Worker worker : _workers) {
+        if (worker != this) {
+          final JobEntry jobexec = worker._deque.pollLast();
+          if (jobexec != null) {
+            s_logger.debug("Stole job {}", jobexec.getExecution().getJobId());
+            return jobexec;
+          }
+        }
+      }
+      return null;
+    }
+
+    private JobEntry nextJob() {
+      JobEntry jobexec = _deque.pollFirst();
+      if (jobexec == null) {
+        jobexec = _runnableJobs.poll();
+        if (jobexec == null) {
+          jobexec = steal();
+        }
+      }
+      return jobexec;
+    }
+
+    /**
+     * Releases jobs blocked by one that has completed.
+     * 
+     * @param blocked the blocked jobs, not null
+     * @return a released job to run next, null if none were released
+     */
+    private JobEntry releaseBlocked(final Set<JobEntry> blocked) {
+      JobEntry next = null;
+      for (JobEntry tail : blocked) {
+        if (tail.getReceiver() != null) {
+          if (tail.releaseBlockCount()) {
+            if (next == null) {
+              next = tail;
+            } else {
+              _deque.addFirst(tail);
+              final AbstractCalculationNode node = getNodes().poll();
+              if (node != null) {
+                spawnWorker(node, null);
+              }
+            }
+          }
+        }
+      }
+      return next;
+    }
+
+    /**
+     * Executes a job.
+     * 
+     * @param jobexec the job to run, not null
+     * @return a job released by its completion to run next, null if none
+     */
+    private JobEntry executeJob(final JobEntry jobexec) {
+      s_logger.info("Executing job {} on {}", jobexec.getExecution().getJobId(), _node.getNodeId());
       onJobStart(jobexec.getJob());
       CalculationJobResult result = null;
       if (jobexec.getExecution().threadBusy(jobexec.getJob())) {
         try {
-          result = node.executeJob(jobexec.getJob());
-          threadFree(jobexec.getExecution());
+          result = _node.executeJob(jobexec.getJob());
+          jobexec.getExecution().threadFree();
         } catch (Exception e) {
           // Any tail jobs will be abandoned
-          threadFree(jobexec.getExecution());
+          jobexec.getExecution().threadFree();
           s_logger.warn("Job {} failed", jobexec.getExecution().getJobId());
           failExecution(jobexec.getExecution());
-          jobexec.getReceiver().executionFailed(node, e);
+          jobexec.getReceiver().executionFailed(_node, e);
         }
       } else {
         s_logger.debug("Job {} cancelled", jobexec.getExecution().getJobId());
       }
-      if (result != null) {
-        final Set<JobEntry> blocked;
-        synchronized (jobexec.getExecution()) {
-          jobexec.getExecution().setStatus(JobExecution.Status.COMPLETED);
-          blocked = jobexec.getExecution().getBlocked();
-          _executions.remove(jobexec.getExecution().getJobId());
-        }
-        if (blocked != null) {
-          s_logger.info("Job {} completed - releasing blocked jobs", jobexec.getExecution().getJobId());
-          for (JobEntry tail : blocked) {
-            if (tail.getReceiver() != null) {
-              if (tail.releaseBlockCount()) {
-                spawnOrQueueJob(tail, null);
-              }
-            }
-          }
-        } else {
-          s_logger.info("Job {} completed - no tail jobs", jobexec.getExecution().getJobId());
-        }
+      if (result == null) {
+        return null;
       }
-      if (result != null) {
-        jobexec.getReceiver().executionComplete(result);
+      final Set<JobEntry> blocked;
+      synchronized (jobexec.getExecution()) {
+        jobexec.getExecution().setStatus(JobExecution.Status.COMPLETED);
+        blocked = jobexec.getExecution().getBlocked();
+        _executions.remove(jobexec.getExecution().getJobId());
       }
-      jobexec = _runnableJobs.poll();
-      if (jobexec == null) {
-        synchronized (this) {
-          jobexec = _runnableJobs.poll();
-          if (jobexec == null) {
-            getNodes().add(node);
+      final JobEntry next;
+      if (blocked != null) {
+        s_logger.info("Job {} completed - releasing blocked jobs", jobexec.getExecution().getJobId());
+        next = releaseBlocked(blocked);
+      } else {
+        s_logger.info("Job {} completed - no tail jobs", jobexec.getExecution().getJobId());
+        next = null;
+      }
+      jobexec.getReceiver().executionComplete(result);
+      return next;
+    }
+
+    @Override
+    public void run() {
+      final String nodeId = _node.getNodeId();
+      _workers.add(this);
+      try {
+        do {
+          if (_jobexec == null) {
+            _jobexec = nextJob();
+          }
+          while (_jobexec != null) {
+            _jobexec = executeJob(_jobexec);
+            if (_jobexec == null) {
+              _jobexec = nextJob();
+            }
+          }
+          // Release the node before checking for work made runnable while it was held
+          getNodes().add(_node);
+          _node = null;
+          if (!hasRunnableJobs()) {
             break;
           }
-        }
+          _node = getNodes().poll();
+        } while (_node != null);
+      } finally {
+        _workers.remove(this);
       }
-    } while (true);
-    s_logger.debug("Finished job execution on {}", node.getNodeId());
-    onJobExecutionComplete();
-    // Housekeeping
+      s_logger.debug("Finished job execution on {}", nodeId);
+      onJobExecutionComplete();
+      housekeep();
+    }
+
+  }
+
+  private void housekeep() {
     if (_failureCount.get() > FAILURE_CLEANUP_PERIOD) {
       _failureCount.set(0);
       int count = 0;
@@ -509,21 +607,9 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     }
     s_logger.info("Cancelling job {}", jobSpec.getJobId());
     failExecution(jobExec);
-    Pair<Thread, CalculationJob> executor = jobExec.getAndSetExecutor(null);
+    final Pair<Thread, CalculationJob> executor = jobExec.cancelExecutor();
     if (executor != null) {
-      s_logger.debug("Marking job {} cancelled", executor.getSecond().getSpecification().getJobId());
-      executor.getSecond().cancel();
-      s_logger.info("Interrupting thread {}", executor.getFirst().getName());
-      executor.getFirst().interrupt();
-      // Need to wait for the execution thread to acknowledge the interrupt, or it may be canceled by us swapping the executor
-      // reference back in and the interrupt will affect a subsequent wait causing erroneous behavior
-      while (executor.getFirst().isInterrupted()) {
-        s_logger.debug("Waiting for thread {} to accept the interrupt", executor.getFirst().getName());
-        Thread.yield();
-      }
-      s_logger.debug("Thread {} interrupted", executor.getFirst().getName());
-      executor = jobExec.getAndSetExecutor(executor);
-      assert executor == null;
+      s_logger.info("Interrupted thread {} running job {}", executor.getFirst().getName(), executor.getSecond().getSpecification().getJobId());
     }
   }
 
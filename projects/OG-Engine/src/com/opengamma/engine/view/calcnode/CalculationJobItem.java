@@ -5,7 +5,8 @@
  */
 package com.opengamma.engine.view.calcnode;
 
-import java.util.ArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -88,11 +89,7 @@ public final class CalculationJobItem {
       if (_inputIdentifiers.length == 1) {
         _inputs.add(identifierMap.getValueSpecification(_inputIdentifiers[0]));
       } else {
-        final Collection<Long> identifiers = new ArrayList<Long>(_inputIdentifiers.length);
-        for (long identifier : _inputIdentifiers) {
-          identifiers.add(identifier);
-        }
-        _inputs.addAll(identifierMap.getValueSpecifications(identifiers).values());
+        _inputs.addAll(identifierMap.getValueSpecifications(LongArrayList.wrap(_inputIdentifiers)).values());
       }
     }
   }
@@ -108,12 +105,7 @@ public final class CalculationJobItem {
       if (_inputs.size() == 1) {
         _inputIdentifiers = new long[] {identifierMap.getIdentifier(_inputs.iterator().next())};
       } else {
-        final Collection<Long> identifiers = identifierMap.getIdentifiers(_inputs).values();
-        _inputIdentifiers = new long[identifiers.size()];
-        int i = 0;
-        for (Long identifier : identifiers) {
-          _inputIdentifiers[i++] = identifier;
-        }
+        _inputIdentifiers = identifierMap.getIdentifiers(_inputs).values().toLongArray();
       }
     }
   }
@@ -12,6 +12,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
@@ -125,11 +126,13 @@ public class JobDispatcher implements JobInvokerRegister {
     private final long _jobCreationTime;
     private final CapabilityRequirements _capabilityRequirements;
     private final AtomicReference<Timeout> _timeout = new AtomicReference<Timeout>();
+    private final long _priority;
     private Set<JobInvoker> _excludeJobInvoker;
     private int _rescheduled;
 
-    private DispatchJob(final CalculationJob job, final JobResultReceiver resultReceiver) {
+    private DispatchJob(final CalculationJob job, final JobResultReceiver resultReceiver, final long priority) {
       _rootJob = job;
+      _priority = priority;
       _resultReceivers = new ConcurrentHashMap<CalculationJobSpecification, JobResultReceiver>();
       final List<CalculationJob> jobs = getAllJobs(job, null);
       for (CalculationJob jobref : jobs) {
@@ -147,6 +150,10 @@ public class JobDispatcher implements JobInvokerRegister {
       return _rootJob;
     }
 
+    private long getPriority() {
+      return _priority;
+    }
+
     @Override
     public void jobCompleted(final CalculationJobResult result) {
       final JobResultReceiver resultReceiver = _resultReceivers.remove(result.getSpecification());
@@ -342,7 +349,10 @@ public class JobDispatcher implements JobInvokerRegister {
 
   }
 
-  private final Queue<DispatchJob> _pending = new LinkedList<DispatchJob>();
+  /**
+   * Jobs waiting for an invoker, in descending priority order. Jobs of the same priority are in the order they were dispatched.
+   */
+  private final LinkedList<DispatchJob> _pending = new LinkedList<DispatchJob>();
   private final Queue<JobInvoker> _invokers = new ConcurrentLinkedQueue<JobInvoker>();
   private final Map<JobInvoker, Collection<Capability>> _capabilityCache = new ConcurrentHashMap<JobInvoker, Collection<Capability>>();
 
@@ -535,10 +545,26 @@ public class JobDispatcher implements JobInvokerRegister {
     return false;
   }
 
+  // caller must already own monitor
+  private void addPending(final DispatchJob job) {
+    if (_pending.isEmpty() || (_pending.getLast().getPriority() >= job.getPriority())) {
+      _pending.addLast(job);
+      return;
+    }
+    final ListIterator<DispatchJob> iterator = _pending.listIterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().getPriority() < job.getPriority()) {
+        iterator.previous();
+        break;
+      }
+    }
+    iterator.add(job);
+  }
+
   private synchronized void dispatchJobImpl(final DispatchJob job) {
     if (!invoke(job)) {
       s_logger.debug("Adding job to pending set");
-      getPending().add(job);
+      addPending(job);
       if (_invokers != null) {
         retryPending(0L);
       }
@@ -557,10 +583,23 @@ public class JobDispatcher implements JobInvokerRegister {
    * @return A {@link Cancellable} callback to attempt to abort the job
    */
   public Cancelable dispatchJob(final CalculationJob job, final JobResultReceiver resultReceiver) {
+    return dispatchJob(job, resultReceiver, 0L);
+  }
+
+  /**
+   * Puts the job into the ready queue as {@link #dispatchJob(CalculationJob, JobResultReceiver)}. If there are no
+   * invokers available, jobs with a higher priority will be sent to an invoker before those with a lower one.
+   * 
+   * @param job The job to dispatch
+   * @param resultReceiver callback to receive the results
+   * @param priority the priority, higher values to be sent first
+   * @return A {@link Cancellable} callback to attempt to abort the job
+   */
+  public Cancelable dispatchJob(final CalculationJob job, final JobResultReceiver resultReceiver, final long priority) {
     ArgumentChecker.notNull(job, "job");
     ArgumentChecker.notNull(resultReceiver, "resultReceiver");
     s_logger.info("Dispatching job {}", job.getSpecification().getJobId());
-    final DispatchJob dispatchJob = new DispatchJob(job, resultReceiver);
+    final DispatchJob dispatchJob = new DispatchJob(job, resultReceiver, priority);
     dispatchJobImpl(dispatchJob);
     return dispatchJob;
   }
@@ -21,6 +21,7 @@ import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewDefinition;
 import com.opengamma.engine.view.ViewDeltaResultModel;
 import com.opengamma.engine.view.ViewProcessorImpl;
+import com.opengamma.engine.view.ViewResultHistory;
 import com.opengamma.engine.view.calc.EngineResourceReference;
 import com.opengamma.engine.view.calc.EngineResourceRetainer;
 import com.opengamma.engine.view.calc.ViewCycle;
@@ -234,6 +235,17 @@ public class ViewClientImpl implements ViewClient {
     }
   }
   
+  /**
+   * Sets the shared history of results of the view process to which this client is being attached, so that merged
+   * results are taken from it rather than merged privately by this client. Called by the view processor before the
+   * client's listener is attached to the process.
+   * 
+   * @param resultHistory  the result history, null to merge results privately
+   */
+  public void setResultHistory(ViewResultHistory resultHistory) {
+    _mergingViewProcessListener.setResultHistory(resultHistory);
+  }
+
   private void attachToViewProcessCore() {
     _isAttached.set(true);
     boolean isPaused = getState() == ViewClientState.PAUSED;
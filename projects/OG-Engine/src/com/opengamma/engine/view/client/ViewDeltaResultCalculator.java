@@ -5,22 +5,30 @@
  */
 package com.opengamma.engine.view.client;
 
+import java.util.Collection;
 import java.util.Map;
 
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
 import com.opengamma.engine.view.DeltaDefinition;
 import com.opengamma.engine.view.InMemoryViewDeltaResultModel;
 import com.opengamma.engine.view.ViewCalculationResultModel;
+import com.opengamma.engine.view.ViewComputationResultLayout;
 import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewDefinition;
 import com.opengamma.engine.view.ViewDeltaResultModel;
 import com.opengamma.engine.view.ViewResultModel;
+import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.tuple.Pair;
 
 /**
  * Produces {@link ViewDeltaResultModel} instances by comparing two {@link ViewComputationResultModel}.
+ * <p>
+ * Two {@link ColumnarViewComputationResultModel} instances with the same layout are compared cell by cell, without
+ * building maps of the values for each target.
  */
 public class ViewDeltaResultCalculator {
 
@@ -33,6 +41,96 @@ public class ViewDeltaResultCalculator {
    * @return  the delta between the two results, not null
    */
   public static ViewDeltaResultModel computeDeltaModel(ViewDefinition viewDefinition, ViewResultModel previousResult, ViewResultModel result) {
+    InMemoryViewDeltaResultModel deltaModel = createDeltaModel(previousResult, result);
+    if (isSameLayout(previousResult, result)) {
+      computeDeltaModel(viewDefinition, deltaModel, (ColumnarViewComputationResultModel) previousResult, (ColumnarViewComputationResultModel) result, null);
+      return deltaModel;
+    }
+    for (ComputationTargetSpecification targetSpec : result.getAllTargets()) {
+      computeDeltaModel(viewDefinition, deltaModel, targetSpec, previousResult, result);
+    }
+    return deltaModel;
+  }
+  
+  /**
+   * Computes the delta between old and new results, where the values which may differ between them are already known.
+   * <p>
+   * This is the case when the new result was produced by a delta cycle from the cycle which produced the old result.
+   * Only the values which were recomputed are compared, so the cost is proportional to the number of changes rather
+   * than to the size of the view. 
+   * 
+   * @param viewDefinition  the view definition to which the results apply
+   * @param previousResult  the previous result, not null
+   * @param result  the new result
+   * @param recomputedValues  the specifications of the values in the new result which may differ from the previous
+   *                          result, keyed by calculation configuration name. A configuration without an entry is
+   *                          compared in full.
+   * @return  the delta between the two results, not null
+   */
+  public static ViewDeltaResultModel computeDeltaModel(ViewDefinition viewDefinition, ViewResultModel previousResult, ViewResultModel result,
+      Map<String, ? extends Collection<ValueSpecification>> recomputedValues) {
+    ArgumentChecker.notNull(previousResult, "previousResult");
+    ArgumentChecker.notNull(recomputedValues, "recomputedValues");
+    InMemoryViewDeltaResultModel deltaModel = createDeltaModel(previousResult, result);
+    if (isSameLayout(previousResult, result)) {
+      computeDeltaModel(viewDefinition, deltaModel, (ColumnarViewComputationResultModel) previousResult, (ColumnarViewComputationResultModel) result, recomputedValues);
+      return deltaModel;
+    }
+    for (String calcConfigName : result.getCalculationConfigurationNames()) {
+      DeltaDefinition deltaDefinition = viewDefinition.getCalculationConfiguration(calcConfigName).getDeltaDefinition();
+      ViewCalculationResultModel resultCalcModel = result.getCalculationResult(calcConfigName);
+      ViewCalculationResultModel previousCalcModel = previousResult.getCalculationResult(calcConfigName);
+      Collection<ValueSpecification> recomputed = recomputedValues.get(calcConfigName);
+      if (recomputed == null) {
+        for (ComputationTargetSpecification targetSpec : result.getAllTargets()) {
+          computeDeltaModel(deltaDefinition, deltaModel, targetSpec, calcConfigName, previousCalcModel, resultCalcModel);
+        }
+      } else {
+        computeDeltaModel(deltaDefinition, deltaModel, calcConfigName, previousCalcModel, resultCalcModel, recomputed);
+      }
+    }
+    return deltaModel;
+  }
+
+  private static boolean isSameLayout(ViewResultModel previousResult, ViewResultModel result) {
+    return (previousResult instanceof ColumnarViewComputationResultModel) && (result instanceof ColumnarViewComputationResultModel)
+        && (((ColumnarViewComputationResultModel) previousResult).getLayout() == ((ColumnarViewComputationResultModel) result).getLayout());
+  }
+
+  private static void computeDeltaModel(ViewDefinition viewDefinition, InMemoryViewDeltaResultModel deltaModel, ColumnarViewComputationResultModel previousResult,
+      ColumnarViewComputationResultModel result, Map<String, ? extends Collection<ValueSpecification>> recomputedValues) {
+    final ViewComputationResultLayout layout = result.getLayout();
+    for (int calcConfig = 0; calcConfig < layout.getCalculationConfigurationNames().size(); calcConfig++) {
+      final String calcConfigName = layout.getCalculationConfigurationName(calcConfig);
+      final DeltaDefinition deltaDefinition = viewDefinition.getCalculationConfiguration(calcConfigName).getDeltaDefinition();
+      final Collection<ValueSpecification> recomputed = (recomputedValues != null) ? recomputedValues.get(calcConfigName) : null;
+      if (recomputed == null) {
+        final int end = layout.getCellEnd(calcConfig);
+        for (int cell = result.nextPresentCell(layout.getCellStart(calcConfig)); (cell >= 0) && (cell < end); cell = result.nextPresentCell(cell + 1)) {
+          computeDeltaModel(deltaDefinition, deltaModel, calcConfigName, previousResult, result, cell);
+        }
+      } else {
+        for (ValueSpecification valueSpec : recomputed) {
+          final int cell = layout.getCellIndex(calcConfig, valueSpec);
+          // Values which are not outputs of the view have no cell
+          if ((cell >= 0) && result.isPresent(cell)) {
+            computeDeltaModel(deltaDefinition, deltaModel, calcConfigName, previousResult, result, cell);
+          }
+        }
+      }
+    }
+  }
+
+  private static void computeDeltaModel(DeltaDefinition deltaDefinition, InMemoryViewDeltaResultModel deltaModel, String calcConfigName,
+      ColumnarViewComputationResultModel previousResult, ColumnarViewComputationResultModel result, int cell) {
+    final ComputedValue resultValue = result.getComputedValue(cell);
+    // As below, the comparison is with the value from the previous cycle rather than the last delta emitted
+    if (deltaDefinition.isDelta(previousResult.getComputedValue(cell), resultValue)) {
+      deltaModel.addValue(calcConfigName, resultValue);
+    }
+  }
+
+  private static InMemoryViewDeltaResultModel createDeltaModel(ViewResultModel previousResult, ViewResultModel result) {
     InMemoryViewDeltaResultModel deltaModel = new InMemoryViewDeltaResultModel();
     deltaModel.setValuationTime(result.getValuationTime());
     deltaModel.setCalculationTime(result.getCalculationTime());
@@ -45,9 +143,6 @@ public class ViewDeltaResultCalculator {
       deltaModel.setPreviousCalculationTime(previousResult.getCalculationTime());
     }
     deltaModel.setCalculationConfigurationNames(result.getCalculationConfigurationNames());
-    for (ComputationTargetSpecification targetSpec : result.getAllTargets()) {
-      computeDeltaModel(viewDefinition, deltaModel, targetSpec, previousResult, result);
-    }
     return deltaModel;
   }
   
@@ -61,6 +156,38 @@ public class ViewDeltaResultCalculator {
     }
   }
 
+  private static void computeDeltaModel(DeltaDefinition deltaDefinition, InMemoryViewDeltaResultModel deltaModel, String calcConfigName,
+      ViewCalculationResultModel previousCalcModel, ViewCalculationResultModel resultCalcModel, Collection<ValueSpecification> recomputed) {
+    if (resultCalcModel == null) {
+      return;
+    }
+    // Reuse the lookups for the last target seen, as several outputs of a node are usually for the same target
+    ComputationTargetSpecification targetSpec = null;
+    Map<Pair<String, ValueProperties>, ComputedValue> resultValues = null;
+    Map<Pair<String, ValueProperties>, ComputedValue> previousValues = null;
+    for (ValueSpecification valueSpec : recomputed) {
+      if (!valueSpec.getTargetSpecification().equals(targetSpec)) {
+        targetSpec = valueSpec.getTargetSpecification();
+        resultValues = resultCalcModel.getValues(targetSpec);
+        previousValues = (previousCalcModel != null) ? previousCalcModel.getValues(targetSpec) : null;
+      }
+      if (resultValues == null) {
+        // Not an output of the view
+        continue;
+      }
+      final Pair<String, ValueProperties> key = Pair.of(valueSpec.getValueName(), valueSpec.getProperties());
+      final ComputedValue resultValue = resultValues.get(key);
+      if (resultValue == null) {
+        continue;
+      }
+      final ComputedValue previousValue = (previousValues != null) ? previousValues.get(key) : null;
+      // As below, the comparison is with the value from the previous cycle rather than the last delta emitted
+      if (deltaDefinition.isDelta(previousValue, resultValue)) {
+        deltaModel.addValue(calcConfigName, resultValue);
+      }
+    }
+  }
+
   private static void computeDeltaModel(DeltaDefinition deltaDefinition, InMemoryViewDeltaResultModel deltaModel, ComputationTargetSpecification targetSpec,
       String calcConfigName, ViewCalculationResultModel previousCalcModel, ViewCalculationResultModel resultCalcModel) {
     final Map<Pair<String, ValueProperties>, ComputedValue> resultValues = resultCalcModel.getValues(targetSpec);
@@ -15,6 +15,7 @@ import javax.time.Instant;
 import com.google.common.base.Function;
 import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewDeltaResultModel;
+import com.opengamma.engine.view.ViewResultHistory;
 import com.opengamma.engine.view.calc.EngineResourceManagerInternal;
 import com.opengamma.engine.view.calc.EngineResourceRetainer;
 import com.opengamma.engine.view.compilation.CompiledViewDefinition;
@@ -42,6 +43,7 @@ public class MergingViewProcessListener implements ViewResultListener {
   private boolean _isPassThrough = true;
   private boolean _isLatestResultCycleRetained;
   private EngineResourceRetainer _cycleRetainer;
+  private volatile ViewResultHistory _resultHistory;
   
   /**
    * The time at which an update was last received.
@@ -106,6 +108,28 @@ public class MergingViewProcessListener implements ViewResultListener {
     return _lastUpdateMillis.get();
   }
   
+  /**
+   * Gets the shared history of results from which merged deltas are taken.
+   * 
+   * @return the result history, null if deltas are merged by this listener
+   */
+  public ViewResultHistory getResultHistory() {
+    return _resultHistory;
+  }
+
+  /**
+   * Sets the shared history of results of the view process to which this listener is attached. While results are
+   * being merged, the delta released is then taken from the history as the changes since the last result released,
+   * rather than being merged by this listener, so listeners attached to the same process share the work.
+   * <p>
+   * This should be set before the listener is attached to the process.
+   * 
+   * @param resultHistory  the result history, null to merge deltas in this listener
+   */
+  public void setResultHistory(ViewResultHistory resultHistory) {
+    _resultHistory = resultHistory;
+  }
+
   //-------------------------------------------------------------------------
   public boolean isLatestResultCycleRetained() {
     return _isLatestResultCycleRetained;
@@ -183,14 +207,14 @@ public class MergingViewProcessListener implements ViewResultListener {
         // Result collapsing
         if (_resultIndex != -1) {
           // There's an old result call in the queue - find it and move to end
-          CycleCompletedCall resultCall;
+          Function<ViewResultListener, ?> resultCall;
           int lastIndex = _callQueue.size() - 1;
           if (_resultIndex == lastIndex) {
             // Old result is already at end of queue
-            resultCall = (CycleCompletedCall) _callQueue.get(lastIndex);
+            resultCall = _callQueue.get(lastIndex);
           } else {
             // Old result is elsewhere in queue - pull to end and update indices
-            resultCall = (CycleCompletedCall) _callQueue.remove(_resultIndex);
+            resultCall = _callQueue.remove(_resultIndex);
             _callQueue.add(resultCall);
             if (_futureResultCompilationIndex > _resultIndex) {
               _futureResultCompilationIndex--;
@@ -199,10 +223,14 @@ public class MergingViewProcessListener implements ViewResultListener {
           }
           
           // Merge new result into old one
-          resultCall.update(fullResult, deltaResult);
+          if (resultCall instanceof SharedCycleCompletedCall) {
+            ((SharedCycleCompletedCall) resultCall).update(fullResult, deltaResult);
+          } else {
+            ((CycleCompletedCall) resultCall).update(fullResult, deltaResult);
+          }
         } else {
           // No existing result call - add new one
-          CycleCompletedCall resultCall = new CycleCompletedCall(fullResult, deltaResult);
+          Function<ViewResultListener, ?> resultCall = createResultCall(fullResult, deltaResult);
           _resultIndex = _callQueue.size();
           _callQueue.add(resultCall);
         }
@@ -304,6 +332,18 @@ public class MergingViewProcessListener implements ViewResultListener {
   }
   
   //-------------------------------------------------------------------------
+  private Function<ViewResultListener, ?> createResultCall(ViewComputationResultModel fullResult, ViewDeltaResultModel deltaResult) {
+    ViewResultHistory resultHistory = getResultHistory();
+    if (resultHistory != null && fullResult != null) {
+      long version = resultHistory.getVersion(fullResult.getViewCycleId());
+      if (version != -1) {
+        // A result with no delta is the first one released, so the changes are counted from it rather than before it
+        return new SharedCycleCompletedCall(resultHistory, fullResult, (deltaResult != null) ? version - 1 : version, version);
+      }
+    }
+    return new CycleCompletedCall(fullResult, deltaResult);
+  }
+
   private ViewResultListener getUnderlying() {
     return _underlying;
   }
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.client.merging;
+
+import com.google.common.base.Function;
+import com.opengamma.engine.view.ViewComputationResultModel;
+import com.opengamma.engine.view.ViewDeltaResultModel;
+import com.opengamma.engine.view.ViewResultHistory;
+import com.opengamma.engine.view.listener.CycleCompletedCall;
+import com.opengamma.engine.view.listener.ViewResultListener;
+
+/**
+ * Represents a call to {@link ViewResultListener#cycleCompleted} which takes its delta from a {@link ViewResultHistory}
+ * shared with other listeners, rather than merging the deltas itself as {@link CycleCompletedCall} does.
+ * <p>
+ * Only the range of versions covered is recorded as results are received. If a result is not found in the history,
+ * the deltas are merged by the call from then on.
+ */
+/* package */ class SharedCycleCompletedCall implements Function<ViewResultListener, Object> {
+
+  private final ViewResultHistory _resultHistory;
+  private final long _fromVersion;
+  private long _toVersion;
+  private ViewComputationResultModel _fullResult;
+  private ViewDeltaResultModelMerger _deltaMerger;
+
+  /**
+   * @param resultHistory  the result history, not null
+   * @param fullResult  the first full result, not null
+   * @param fromVersion  the version from which changes are to be included in the delta
+   * @param toVersion  the version of the first full result
+   */
+  public SharedCycleCompletedCall(ViewResultHistory resultHistory, ViewComputationResultModel fullResult, long fromVersion, long toVersion) {
+    _resultHistory = resultHistory;
+    _fullResult = fullResult;
+    _fromVersion = fromVersion;
+    _toVersion = toVersion;
+  }
+
+  public void update(ViewComputationResultModel fullResult, ViewDeltaResultModel deltaResult) {
+    // The history only retains the latest full result, so the one for the range covered so far is passed to it
+    final ViewComputationResultModel previousResult = _fullResult;
+    _fullResult = fullResult;
+    if (_deltaMerger == null) {
+      long version = (fullResult != null) ? _resultHistory.getVersion(fullResult.getViewCycleId()) : -1;
+      if (version > _toVersion) {
+        _toVersion = version;
+        return;
+      }
+      _deltaMerger = new ViewDeltaResultModelMerger();
+      ViewDeltaResultModel previousDelta = _resultHistory.getDelta(_fromVersion, _toVersion, previousResult);
+      if (previousDelta != null) {
+        _deltaMerger.merge(previousDelta);
+      }
+    }
+    if (deltaResult != null) {
+      _deltaMerger.merge(deltaResult);
+    }
+  }
+
+  public ViewComputationResultModel getFullResult() {
+    return _fullResult;
+  }
+
+  public ViewDeltaResultModel getDeltaResult() {
+    if (_deltaMerger != null) {
+      return _deltaMerger.getLatestResult();
+    }
+    return _resultHistory.getDelta(_fromVersion, _toVersion, _fullResult);
+  }
+
+  @Override
+  public Object apply(ViewResultListener listener) {
+    listener.cycleCompleted(getFullResult(), getDeltaResult());
+    return null;
+  }
+
+}
@@ -8,16 +8,25 @@ package com.opengamma.engine.view.compilation;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.time.Instant;
 
 import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyGraphExplorer;
 import com.opengamma.engine.depgraph.DependencyGraphExplorerImpl;
 import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ViewComputationResultLayout;
 import com.opengamma.engine.view.ViewDefinition;
 import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.tuple.Pair;
@@ -29,6 +38,7 @@ public class CompiledViewDefinitionWithGraphsImpl extends CompiledViewDefinition
 
   private final Map<String, DependencyGraph> _graphsByConfiguration;
   private final long _functionInitId;
+  private volatile ViewComputationResultLayout _resultLayout;
 
   /**
    * Constructs an instance.
@@ -93,6 +103,50 @@ public class CompiledViewDefinitionWithGraphsImpl extends CompiledViewDefinition
     return _functionInitId;
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the layout of the results produced by executing this compiled view definition. The layout is created the
+   * first time it is requested and shared by every cycle.
+   * 
+   * @return the result layout, not null
+   */
+  public ViewComputationResultLayout getResultLayout() {
+    ViewComputationResultLayout resultLayout = _resultLayout;
+    if (resultLayout == null) {
+      final List<ComputationTargetSpecification> requiredTargets = new ArrayList<ComputationTargetSpecification>();
+      if (getPortfolio() != null) {
+        addPortfolioTargets(getPortfolio().getRootNode(), requiredTargets);
+      }
+      final Map<String, Set<ValueSpecification>> outputs = new HashMap<String, Set<ValueSpecification>>();
+      for (Map.Entry<String, DependencyGraph> graph : _graphsByConfiguration.entrySet()) {
+        outputs.put(graph.getKey(), getOutputSpecificationsForResultModel(graph.getValue()));
+      }
+      resultLayout = new ViewComputationResultLayout(getViewDefinition().getAllCalculationConfigurationNames(), requiredTargets, outputs);
+      _resultLayout = resultLayout;
+    }
+    return resultLayout;
+  }
+
+  private static void addPortfolioTargets(final PortfolioNode node, final List<ComputationTargetSpecification> targets) {
+    for (Position position : node.getPositions()) {
+      targets.add(new ComputationTargetSpecification(position));
+    }
+    targets.add(new ComputationTargetSpecification(node));
+    for (PortfolioNode child : node.getChildNodes()) {
+      addPortfolioTargets(child, targets);
+    }
+  }
+
+  private Set<ValueSpecification> getOutputSpecificationsForResultModel(final DependencyGraph depGraph) {
+    final Set<ValueSpecification> outputs = new HashSet<ValueSpecification>();
+    for (ValueSpecification valueSpecification : depGraph.getOutputSpecifications()) {
+      if (getViewDefinition().getResultModelDefinition().shouldOutputResult(valueSpecification, depGraph)) {
+        outputs.add(valueSpecification);
+      }
+    }
+    return outputs;
+  }
+
   //-------------------------------------------------------------------------
   
   @Override
@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.time.Instant;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.core.position.Trade;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyGraphBuilder;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+
+/**
+ * Updates a compiled view definition for changes to its portfolio, or to the securities of its positions, without
+ * rebuilding the dependency graphs from scratch.
+ * <p>
+ * The portfolio is resolved again and compared with the one the view was compiled for. A position is changed if it is
+ * not equal to the previous one or its security has a different identifier, and a node is changed if any position or
+ * node beneath it is. The nodes of each dependency graph for the changed and removed targets, and the nodes which
+ * depend on them, are removed and requirements are added for the changed targets only. The retained nodes are given
+ * to the graph builders so that the values they produce, such as those of the unchanged positions beneath a changed
+ * node, are not resolved again. The resulting graphs are spliced into copies of the previous ones so that those remain
+ * usable throughout.
+ */
+/* package */final class IncrementalPortfolioCompiler {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(IncrementalPortfolioCompiler.class);
+
+  private IncrementalPortfolioCompiler() {
+  }
+
+  /**
+   * Updates a compiled view definition for the latest state of its portfolio.
+   *
+   * @param previous  the previous compilation, not null
+   * @param compilationServices  the compilation services, not null
+   * @param valuationTime  the valuation time, not null
+   * @param versionCorrection  the version-correction at which to resolve the portfolio, not null
+   * @return the updated compilation, the previous one if the portfolio is unchanged, or null if the changes cannot be
+   *         applied incrementally
+   */
+  public static CompiledViewDefinitionWithGraphsImpl execute(final CompiledViewDefinitionWithGraphsImpl previous, final ViewCompilationServices compilationServices,
+      final Instant valuationTime, final VersionCorrection versionCorrection) {
+    final ViewDefinition viewDefinition = previous.getViewDefinition();
+    final Portfolio previousPortfolio = previous.getPortfolio();
+    if (previousPortfolio == null) {
+      // Nothing in the view depends on the portfolio
+      return previous;
+    }
+    if (hasSpecificPortfolioRequirements(viewDefinition)) {
+      return null;
+    }
+    final ViewCompilationContext compilationContext = new ViewCompilationContext(viewDefinition, compilationServices, valuationTime);
+    final Portfolio portfolio = PortfolioCompiler.getPortfolio(compilationContext, versionCorrection);
+
+    // Compare the portfolios
+    final Map<UniqueId, PortfolioNode> previousNodes = new HashMap<UniqueId, PortfolioNode>();
+    final Map<UniqueId, Position> previousPositions = new HashMap<UniqueId, Position>();
+    final Set<ComputationTargetSpecification> previousTargets = new HashSet<ComputationTargetSpecification>();
+    gatherTargets(previousPortfolio.getRootNode(), previousNodes, previousPositions, previousTargets);
+    final Map<PortfolioNode, Set<String>> previousSecurityTypes = new IdentityHashMap<PortfolioNode, Set<String>>();
+    PortfolioCompiler.getSubNodeSecurityTypes(previousPortfolio.getRootNode(), previousSecurityTypes, new IdentityHashMap<PortfolioNode, Integer>());
+    final Map<PortfolioNode, Set<String>> securityTypes = new IdentityHashMap<PortfolioNode, Set<String>>();
+    PortfolioCompiler.getSubNodeSecurityTypes(portfolio.getRootNode(), securityTypes, new IdentityHashMap<PortfolioNode, Integer>());
+    final PortfolioDiff diff = new PortfolioDiff(previousNodes, previousPositions, previousSecurityTypes, securityTypes);
+    diff.compare(portfolio.getRootNode());
+    final Set<ComputationTargetSpecification> removedTargets = new HashSet<ComputationTargetSpecification>(previousTargets);
+    removedTargets.removeAll(diff.getUnchangedTargets());
+    if (diff.getChangedTargets().isEmpty() && removedTargets.isEmpty()) {
+      s_logger.debug("Portfolio {} unchanged", portfolio.getName());
+      return previous;
+    }
+    s_logger.info("Recompiling {} for {} changed and {} removed portfolio targets", new Object[] {viewDefinition.getName(), diff.getChangedTargets().size(), removedTargets.size() });
+    PortfolioCompiler.cacheTradesPositionsAndSecurities(compilationServices.getComputationTargetResolver(), portfolio.getRootNode());
+    compilationServices.getComputationTargetResolver().cachePortfolioNodeHierarchy(portfolio.getRootNode());
+
+    // Find the nodes to remove before any requirements are added
+    final Map<String, Set<DependencyNode>> removedNodes = new HashMap<String, Set<DependencyNode>>();
+    for (ViewCalculationConfiguration calcConfig : viewDefinition.getAllCalculationConfigurations()) {
+      final DependencyGraph graph = previous.getDependencyGraph(calcConfig.getName());
+      if (graph == null) {
+        return null;
+      }
+      final Set<DependencyNode> nodes = graph.getNodesDependingOnTargets(removedTargets);
+      if (!isRequestedAgain(nodes, removedTargets)) {
+        return null;
+      }
+      removedNodes.put(calcConfig.getName(), nodes);
+    }
+
+    // Resolve the changed targets only. The values of the retained nodes are not resolved again; the requirements of a
+    // changed node on its unchanged positions and child nodes are satisfied by the nodes already producing them.
+    for (ViewCalculationConfiguration calcConfig : viewDefinition.getAllCalculationConfigurations()) {
+      if (calcConfig.getAllPortfolioRequirements().size() == 0) {
+        continue;
+      }
+      final DependencyGraphBuilder builder = compilationContext.getBuilders().get(calcConfig.getName());
+      final Set<DependencyNode> retainedNodes = new HashSet<DependencyNode>(previous.getDependencyGraph(calcConfig.getName()).getDependencyNodes());
+      retainedNodes.removeAll(removedNodes.get(calcConfig.getName()));
+      builder.addExistingNodes(retainedNodes);
+      final PortfolioCompilerTraversalCallback traversalCallback = new PortfolioCompilerTraversalCallback(builder, calcConfig, securityTypes);
+      final Set<ValueRequirement> nodeRequirements = new HashSet<ValueRequirement>();
+      final Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
+      for (PortfolioNode node : diff.getChangedNodes()) {
+        nodeRequirements.clear();
+        traversalCallback.addRequirements(node, nodeRequirements);
+        for (ValueRequirement requirement : nodeRequirements) {
+          if (diff.getChangedTargets().contains(requirement.getTargetSpecification())) {
+            requirements.add(requirement);
+          }
+        }
+      }
+      traversalCallback.addTarget(requirements);
+    }
+    final Map<String, DependencyGraph> additions = ViewDefinitionCompiler.processDependencyGraphs(compilationContext);
+
+    // Splice the new nodes into copies of the previous graphs
+    final Map<String, DependencyGraph> graphsByConfiguration = new HashMap<String, DependencyGraph>();
+    for (Map.Entry<String, Set<DependencyNode>> removed : removedNodes.entrySet()) {
+      final DependencyGraph graph = previous.getDependencyGraph(removed.getKey()).splice(removed.getValue(), additions.get(removed.getKey()));
+      if (graph == null) {
+        s_logger.info("Unable to splice changes into dependency graph for {}", removed.getKey());
+        return null;
+      }
+      graphsByConfiguration.put(removed.getKey(), graph);
+    }
+    return new CompiledViewDefinitionWithGraphsImpl(viewDefinition, graphsByConfiguration, portfolio, previous.getFunctionInitId());
+  }
+
+  /**
+   * Tests whether any specific requirement is on a portfolio target, which would not be requested again for a
+   * changed target.
+   */
+  private static boolean hasSpecificPortfolioRequirements(final ViewDefinition viewDefinition) {
+    for (ViewCalculationConfiguration calcConfig : viewDefinition.getAllCalculationConfigurations()) {
+      for (ValueRequirement requirement : calcConfig.getSpecificRequirements()) {
+        if (isPortfolioTarget(requirement.getTargetSpecification())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Tests whether the terminal outputs of nodes to be removed will be requested again. This is the case if the nodes
+   * are all on removed or changed portfolio targets, or produce no terminal outputs.
+   */
+  private static boolean isRequestedAgain(final Set<DependencyNode> nodes, final Set<ComputationTargetSpecification> removedTargets) {
+    for (DependencyNode node : nodes) {
+      final ComputationTargetSpecification target = node.getComputationTarget().toSpecification();
+      if (removedTargets.contains(target)) {
+        continue;
+      }
+      if (isPortfolioTarget(target) || !node.getTerminalOutputValues().isEmpty()) {
+        s_logger.debug("Node {} depends on a changed target but would not be requested again", node);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isPortfolioTarget(final ComputationTargetSpecification target) {
+    final ComputationTargetType type = target.getType();
+    return (type == ComputationTargetType.PORTFOLIO_NODE) || (type == ComputationTargetType.POSITION) || (type == ComputationTargetType.TRADE);
+  }
+
+  private static void gatherTargets(final PortfolioNode node, final Map<UniqueId, PortfolioNode> nodes, final Map<UniqueId, Position> positions,
+      final Set<ComputationTargetSpecification> targets) {
+    nodes.put(node.getUniqueId(), node);
+    targets.add(new ComputationTargetSpecification(node));
+    for (Position position : node.getPositions()) {
+      positions.put(position.getUniqueId(), position);
+      targets.add(new ComputationTargetSpecification(position));
+      for (Trade trade : position.getTrades()) {
+        targets.add(new ComputationTargetSpecification(trade));
+      }
+    }
+    for (PortfolioNode child : node.getChildNodes()) {
+      gatherTargets(child, nodes, positions, targets);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Compares the nodes and positions of a portfolio with those of a previous version.
+   */
+  private static final class PortfolioDiff {
+
+    private final Map<UniqueId, PortfolioNode> _previousNodes;
+    private final Map<UniqueId, Position> _previousPositions;
+    private final Map<PortfolioNode, Set<String>> _previousSecurityTypes;
+    private final Map<PortfolioNode, Set<String>> _securityTypes;
+    private final List<PortfolioNode> _changedNodes = new ArrayList<PortfolioNode>();
+    private final Set<ComputationTargetSpecification> _changedTargets = new HashSet<ComputationTargetSpecification>();
+    private final Set<ComputationTargetSpecification> _unchangedTargets = new HashSet<ComputationTargetSpecification>();
+
+    private PortfolioDiff(final Map<UniqueId, PortfolioNode> previousNodes, final Map<UniqueId, Position> previousPositions,
+        final Map<PortfolioNode, Set<String>> previousSecurityTypes, final Map<PortfolioNode, Set<String>> securityTypes) {
+      _previousNodes = previousNodes;
+      _previousPositions = previousPositions;
+      _previousSecurityTypes = previousSecurityTypes;
+      _securityTypes = securityTypes;
+    }
+
+    public List<PortfolioNode> getChangedNodes() {
+      return _changedNodes;
+    }
+
+    public Set<ComputationTargetSpecification> getChangedTargets() {
+      return _changedTargets;
+    }
+
+    public Set<ComputationTargetSpecification> getUnchangedTargets() {
+      return _unchangedTargets;
+    }
+
+    /**
+     * Compares a node of the portfolio, and everything beneath it, with the previous version.
+     *
+     * @param node  the node, not null
+     * @return true if the node or anything beneath it has changed
+     */
+    public boolean compare(final PortfolioNode node) {
+      final PortfolioNode previousNode = _previousNodes.get(node.getUniqueId());
+      // The requirements of every position depend on the security types beneath its node
+      final boolean securityTypesChanged = (previousNode == null) || !_previousSecurityTypes.get(previousNode).equals(_securityTypes.get(node));
+      boolean changed = securityTypesChanged || !isSameStructure(previousNode, node);
+      for (Position position : node.getPositions()) {
+        if (securityTypesChanged || !isSamePosition(_previousPositions.get(position.getUniqueId()), position)) {
+          _changedTargets.add(new ComputationTargetSpecification(position));
+          for (Trade trade : position.getTrades()) {
+            _changedTargets.add(new ComputationTargetSpecification(trade));
+          }
+          changed = true;
+        } else {
+          _unchangedTargets.add(new ComputationTargetSpecification(position));
+          for (Trade trade : position.getTrades()) {
+            _unchangedTargets.add(new ComputationTargetSpecification(trade));
+          }
+        }
+      }
+      for (PortfolioNode child : node.getChildNodes()) {
+        changed |= compare(child);
+      }
+      if (changed) {
+        _changedNodes.add(node);
+        _changedTargets.add(new ComputationTargetSpecification(node));
+      } else {
+        _unchangedTargets.add(new ComputationTargetSpecification(node));
+      }
+      return changed;
+    }
+
+    private static boolean isSameStructure(final PortfolioNode previousNode, final PortfolioNode node) {
+      if ((previousNode.getPositions().size() != node.getPositions().size()) || (previousNode.getChildNodes().size() != node.getChildNodes().size())) {
+        return false;
+      }
+      final Set<UniqueId> previousIds = new HashSet<UniqueId>();
+      for (Position position : previousNode.getPositions()) {
+        previousIds.add(position.getUniqueId());
+      }
+      for (PortfolioNode child : previousNode.getChildNodes()) {
+        previousIds.add(child.getUniqueId());
+      }
+      for (Position position : node.getPositions()) {
+        if (!previousIds.contains(position.getUniqueId())) {
+          return false;
+        }
+      }
+      for (PortfolioNode child : node.getChildNodes()) {
+        if (!previousIds.contains(child.getUniqueId())) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean isSamePosition(final Position previousPosition, final Position position) {
+      return (previousPosition != null) && previousPosition.equals(position)
+          && ObjectUtils.equals(previousPosition.getSecurity().getUniqueId(), position.getSecurity().getUniqueId());
+    }
+
+  }
+
+}
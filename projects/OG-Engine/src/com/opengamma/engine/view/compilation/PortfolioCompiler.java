@@ -5,8 +5,18 @@
  */
 package com.opengamma.engine.view.compilation;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
@@ -24,6 +34,7 @@ import com.opengamma.core.security.Security;
 import com.opengamma.core.security.SecuritySource;
 import com.opengamma.engine.CachingComputationTargetResolver;
 import com.opengamma.engine.depgraph.DependencyGraphBuilder;
+import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.view.ResultModelDefinition;
 import com.opengamma.engine.view.ResultOutputMode;
 import com.opengamma.engine.view.ViewCalculationConfiguration;
@@ -39,6 +50,12 @@ public final class PortfolioCompiler {
 
   private static final Logger s_logger = LoggerFactory.getLogger(PortfolioCompiler.class);
 
+  /**
+   * The number of positions at or below which a portfolio sub-tree, or the positions of a single node, are compiled
+   * as a single task.
+   */
+  private static final int PARTITION_POSITIONS = 1000;
+
   private PortfolioCompiler() {
   }
 
@@ -65,33 +82,141 @@ public final class PortfolioCompiler {
      
     Portfolio portfolio = forcePortfolioResolution ? getPortfolio(compilationContext, versionCorrection) : null;
 
+    final List<ViewCalculationConfiguration> calcConfigs = new ArrayList<ViewCalculationConfiguration>();
     for (ViewCalculationConfiguration calcConfig : compilationContext.getViewDefinition().getAllCalculationConfigurations()) {
-      if (calcConfig.getAllPortfolioRequirements().size() == 0) {
-        // No portfolio requirements for this calculation configuration - avoid further processing.
-        continue;
+      // Avoid further processing of configurations with no portfolio requirements
+      if (calcConfig.getAllPortfolioRequirements().size() != 0) {
+        calcConfigs.add(calcConfig);
       }
+    }
+    if (calcConfigs.isEmpty()) {
+      return portfolio;
+    }
 
-      // Actually need the portfolio now
-      if (portfolio == null) {
-        portfolio = getPortfolio(compilationContext, versionCorrection);
-      }
-      
-      DependencyGraphBuilder builder = compilationContext.getBuilders().get(calcConfig.getName());
+    // Actually need the portfolio now
+    long t = -System.nanoTime();
+    if (portfolio == null) {
+      portfolio = getPortfolio(compilationContext, versionCorrection);
+    }
 
-      // Cache PortfolioNode, Trade and Position entities
-      CachingComputationTargetResolver resolver = compilationContext.getServices().getComputationTargetResolver();
-      resolver.cachePortfolioNodeHierarchy(portfolio.getRootNode());
-      cacheTradesPositionsAndSecurities(resolver, portfolio.getRootNode());
+    // Cache PortfolioNode, Trade and Position entities, which are shared by every configuration
+    CachingComputationTargetResolver resolver = compilationContext.getServices().getComputationTargetResolver();
+    resolver.cachePortfolioNodeHierarchy(portfolio.getRootNode());
+    cacheTradesPositionsAndSecurities(resolver, portfolio.getRootNode());
+    final Map<PortfolioNode, Set<String>> subNodeSecurityTypes = new IdentityHashMap<PortfolioNode, Set<String>>();
+    final Map<PortfolioNode, Integer> subNodePositions = new IdentityHashMap<PortfolioNode, Integer>();
+    getSubNodeSecurityTypes(portfolio.getRootNode(), subNodeSecurityTypes, subNodePositions);
+    t += System.nanoTime();
+    s_logger.debug("Resolved portfolio {} after {}ms", portfolio.getName(), (double) t / 1e6);
 
-      // Add portfolio requirements to the dependency graph
-      PortfolioCompilerTraversalCallback traversalCallback = new PortfolioCompilerTraversalCallback(builder, calcConfig);
-      PortfolioNodeTraverser.depthFirst(traversalCallback).traverse(portfolio.getRootNode());
+    // Add portfolio requirements to the dependency graphs
+    t = -System.nanoTime();
+    if (compilationContext.getServices().isParallelCompilation()) {
+      final List<Partition> partitions = new ArrayList<Partition>();
+      partition(portfolio.getRootNode(), subNodePositions, partitions);
+      addPortfolioRequirements(compilationContext, calcConfigs, subNodeSecurityTypes, partitions);
+      t += System.nanoTime();
+      s_logger.debug("Added portfolio requirements for {} configurations over {} sub-trees after {}ms", new Object[] {calcConfigs.size(), partitions.size(), (double) t / 1e6 });
+    } else {
+      for (ViewCalculationConfiguration calcConfig : calcConfigs) {
+        DependencyGraphBuilder builder = compilationContext.getBuilders().get(calcConfig.getName());
+        PortfolioCompilerTraversalCallback traversalCallback = new PortfolioCompilerTraversalCallback(builder, calcConfig, subNodeSecurityTypes);
+        PortfolioNodeTraverser.depthFirst(traversalCallback).traverse(portfolio.getRootNode());
+      }
+      t += System.nanoTime();
+      s_logger.debug("Added portfolio requirements for {} configurations after {}ms", calcConfigs.size(), (double) t / 1e6);
     }
-    
     return portfolio;
   }
 
-  private static void cacheTradesPositionsAndSecurities(final CachingComputationTargetResolver resolver, final PortfolioNode node) {
+  /**
+   * Adds the requirements of each portfolio sub-tree for each configuration as separate tasks. The builder for a
+   * configuration is given requirements by one task at a time but can resolve them in the background while other
+   * tasks gather more.
+   */
+  private static void addPortfolioRequirements(final ViewCompilationContext compilationContext, final List<ViewCalculationConfiguration> calcConfigs,
+      final Map<PortfolioNode, Set<String>> subNodeSecurityTypes, final List<Partition> partitions) {
+    final ExecutorCompletionService<Object> completer = new ExecutorCompletionService<Object>(compilationContext.getServices().getExecutorService());
+    int count = 0;
+    for (ViewCalculationConfiguration calcConfig : calcConfigs) {
+      final DependencyGraphBuilder builder = compilationContext.getBuilders().get(calcConfig.getName());
+      final PortfolioCompilerTraversalCallback traversalCallback = new PortfolioCompilerTraversalCallback(builder, calcConfig, subNodeSecurityTypes);
+      for (final Partition partition : partitions) {
+        completer.submit(new Callable<Object>() {
+          @Override
+          public Object call() {
+            final Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
+            partition.addRequirements(traversalCallback, requirements);
+            traversalCallback.addTarget(requirements);
+            return null;
+          }
+        });
+        count++;
+      }
+    }
+    OpenGammaRuntimeException failure = null;
+    for (; count > 0; count--) {
+      try {
+        completer.take().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new OpenGammaRuntimeException("Interrupted while adding portfolio requirements", e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = new OpenGammaRuntimeException("Unable to add portfolio requirements", e.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Divides the portfolio into sub-trees of at most {@link #PARTITION_POSITIONS} positions. A node with more positions
+   * beneath it is a partition of its own, with its child nodes divided further and its own positions split into
+   * chunks of at most {@link #PARTITION_POSITIONS}.
+   */
+  private static void partition(final PortfolioNode node, final Map<PortfolioNode, Integer> subNodePositions, final List<Partition> partitions) {
+    if (subNodePositions.get(node) <= PARTITION_POSITIONS) {
+      partitions.add(new Partition(node, true, null));
+    } else {
+      partitions.add(new Partition(node, false, null));
+      final List<Position> positions = new ArrayList<Position>(node.getPositions());
+      for (int i = 0; i < positions.size(); i += PARTITION_POSITIONS) {
+        partitions.add(new Partition(node, false, positions.subList(i, Math.min(i + PARTITION_POSITIONS, positions.size()))));
+      }
+      for (PortfolioNode child : node.getChildNodes()) {
+        partition(child, subNodePositions, partitions);
+      }
+    }
+  }
+
+  /**
+   * Gathers the security types of the positions beneath every node in a single pass over the portfolio.
+   * 
+   * @param node  the node, not null
+   * @param subNodeSecurityTypes  the security types beneath each node, populated by this method
+   * @param subNodePositions  the number of positions beneath each node, populated by this method
+   * @return the number of positions beneath the node
+   */
+  /* package */static int getSubNodeSecurityTypes(final PortfolioNode node, final Map<PortfolioNode, Set<String>> subNodeSecurityTypes,
+      final Map<PortfolioNode, Integer> subNodePositions) {
+    final Set<String> securityTypes = new TreeSet<String>();
+    int positions = node.getPositions().size();
+    for (Position position : node.getPositions()) {
+      securityTypes.add(position.getSecurity().getSecurityType());
+    }
+    for (PortfolioNode child : node.getChildNodes()) {
+      positions += getSubNodeSecurityTypes(child, subNodeSecurityTypes, subNodePositions);
+      securityTypes.addAll(subNodeSecurityTypes.get(child));
+    }
+    subNodeSecurityTypes.put(node, securityTypes);
+    subNodePositions.put(node, positions);
+    return positions;
+  }
+
+  /* package */static void cacheTradesPositionsAndSecurities(final CachingComputationTargetResolver resolver, final PortfolioNode node) {
     final Collection<Position> positions = node.getPositions();
     resolver.cachePositions(positions);
     for (Position position : positions) {
@@ -127,7 +252,7 @@ public final class PortfolioCompiler {
    * @param compilationContext  the compilation context containing the view being compiled, not null
    * @param versionCorrection  the version-correction at which the portfolio is required, not null
    */
-  private static Portfolio getPortfolio(ViewCompilationContext compilationContext, VersionCorrection versionCorrection) {
+  /* package */static Portfolio getPortfolio(ViewCompilationContext compilationContext, VersionCorrection versionCorrection) {
     ObjectId portfolioOid = compilationContext.getViewDefinition().getPortfolioOid();
     if (portfolioOid == null) {
       throw new OpenGammaRuntimeException("The view definition '" + compilationContext.getViewDefinition().getName() + "' contains required portfolio outputs, but it does not reference a portfolio.");
@@ -194,4 +319,39 @@ public final class PortfolioCompiler {
     return cloned;
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * A part of the portfolio whose requirements are added by a single task.
+   */
+  private static final class Partition {
+
+    private final PortfolioNode _node;
+    private final boolean _subTree;
+    private final List<Position> _positions;
+
+    /**
+     * Creates a partition.
+     * 
+     * @param node  the portfolio node, not null
+     * @param subTree  true for the node and everything beneath it, false for just the node or some of its positions
+     * @param positions  the positions of the node, or null for the node itself
+     */
+    private Partition(final PortfolioNode node, final boolean subTree, final List<Position> positions) {
+      _node = node;
+      _subTree = subTree;
+      _positions = positions;
+    }
+
+    public void addRequirements(final PortfolioCompilerTraversalCallback traversalCallback, final Set<ValueRequirement> requirements) {
+      if (_subTree) {
+        traversalCallback.addSubTreeRequirements(_node, requirements);
+      } else if (_positions == null) {
+        traversalCallback.addNodeRequirements(_node, requirements);
+      } else {
+        traversalCallback.addPositionRequirements(_node, _positions, requirements);
+      }
+    }
+
+  }
+
 }
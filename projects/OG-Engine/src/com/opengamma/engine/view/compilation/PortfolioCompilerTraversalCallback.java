@@ -5,21 +5,19 @@
  */
 package com.opengamma.engine.view.compilation;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Sets;
 import com.opengamma.core.position.PortfolioNode;
 import com.opengamma.core.position.Position;
 import com.opengamma.core.position.Trade;
 import com.opengamma.core.position.impl.AbstractPortfolioNodeTraversalCallback;
-import com.opengamma.core.position.impl.PortfolioNodeTraverser;
-import com.opengamma.core.position.impl.PositionAccumulator;
 import com.opengamma.engine.depgraph.DependencyGraphBuilder;
 import com.opengamma.engine.value.ValueProperties;
 import com.opengamma.engine.value.ValueRequirement;
@@ -30,66 +28,106 @@ import com.opengamma.util.tuple.Pair;
 
 /**
  * Compiles dependency graphs for each stage in a portfolio tree.
+ * <p>
+ * The security types beneath each node are gathered once for the whole portfolio, see
+ * {@link PortfolioCompiler#getSubNodeSecurityTypes}, so that one instance can be shared by several threads adding
+ * the requirements of different parts of the portfolio.
  */
 /* package */class PortfolioCompilerTraversalCallback extends AbstractPortfolioNodeTraversalCallback {
   private static final Logger s_logger = LoggerFactory.getLogger(PortfolioCompilerTraversalCallback.class);
   private final DependencyGraphBuilder _dependencyGraphBuilder;
   private final ViewCalculationConfiguration _calculationConfiguration;
   private final ResultModelDefinition _resultModelDefinition;
+  private final Map<PortfolioNode, Set<String>> _subNodeSecurityTypes;
 
-  public PortfolioCompilerTraversalCallback(DependencyGraphBuilder dependencyGraphBuilder, ViewCalculationConfiguration calculationConfiguration) {
+  public PortfolioCompilerTraversalCallback(DependencyGraphBuilder dependencyGraphBuilder, ViewCalculationConfiguration calculationConfiguration,
+      Map<PortfolioNode, Set<String>> subNodeSecurityTypes) {
     _dependencyGraphBuilder = dependencyGraphBuilder;
     _calculationConfiguration = calculationConfiguration;
     _resultModelDefinition = calculationConfiguration.getViewDefinition().getResultModelDefinition();
+    _subNodeSecurityTypes = subNodeSecurityTypes;
+  }
+
+  @Override
+  public void preOrderOperation(PortfolioNode portfolioNode) {
+    final Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
+    addRequirements(portfolioNode, requirements);
+    addTarget(requirements);
   }
 
   /**
-   * Gathers all security types. 
+   * Gathers the requirements of a node and of its positions, but not of its child nodes.
+   * 
+   * @param portfolioNode  the node, not null
+   * @param requirements  the requirements to add to, not null
    */
-  protected static class SubNodeSecurityTypeAccumulator extends AbstractPortfolioNodeTraversalCallback {
+  /* package */void addRequirements(PortfolioNode portfolioNode, Set<ValueRequirement> requirements) {
+    addNodeRequirements(portfolioNode, requirements);
+    addPositionRequirements(portfolioNode, portfolioNode.getPositions(), requirements);
+  }
 
-    private final Set<String> _subNodeSecurityTypes = new TreeSet<String>();
+  /**
+   * Gathers the requirements of a node itself, but not of its positions or child nodes.
+   * 
+   * @param portfolioNode  the node, not null
+   * @param requirements  the requirements to add to, not null
+   */
+  /* package */void addNodeRequirements(PortfolioNode portfolioNode, Set<ValueRequirement> requirements) {
+    addAggregateOnlyRequirements(portfolioNode, requirements);
+    addPortfolioRequirements(portfolioNode, requirements);
+  }
 
-    /**
-     * @return the subNodeSecurityTypes
-     */
-    public Set<String> getSubNodeSecurityTypes() {
-      return _subNodeSecurityTypes;
+  /**
+   * Gathers the requirements of some, or all, of the positions of a node and of their trades.
+   * 
+   * @param portfolioNode  the node holding the positions, not null
+   * @param positions  the positions, not null
+   * @param requirements  the requirements to add to, not null
+   */
+  /* package */void addPositionRequirements(PortfolioNode portfolioNode, Collection<Position> positions, Set<ValueRequirement> requirements) {
+    if (s_logger.isDebugEnabled()) {
+      for (Position position : positions) {
+        for (Trade trade : position.getTrades()) {
+          if (trade.getSecurity() == null) {
+            s_logger.debug("found a trade with security not resolved {}", trade);
+          }
+        }
+      }
     }
+    addPositionOutputRequirements(portfolioNode, positions, requirements);
+    addTradeRequirements(portfolioNode, positions, requirements);
+  }
 
-    @Override
-    public void preOrderOperation(Position position) {
-      _subNodeSecurityTypes.add(position.getSecurity().getSecurityType());
+  /**
+   * Gathers the requirements of a node, its positions and every node and position beneath it.
+   * 
+   * @param portfolioNode  the node, not null
+   * @param requirements  the requirements to add to, not null
+   */
+  /* package */void addSubTreeRequirements(PortfolioNode portfolioNode, Set<ValueRequirement> requirements) {
+    addRequirements(portfolioNode, requirements);
+    for (PortfolioNode childNode : portfolioNode.getChildNodes()) {
+      addSubTreeRequirements(childNode, requirements);
     }
-
   }
 
   /**
-   * @param portfolioNode
-   * @return
+   * Adds requirements to the dependency graph builder. The builder is only given requirements by one thread at a time.
+   * 
+   * @param requirements  the requirements, not null
    */
-  private static Set<String> getSubNodeSecurityTypes(PortfolioNode portfolioNode) {
-    SubNodeSecurityTypeAccumulator accumulator = new SubNodeSecurityTypeAccumulator();
-    PortfolioNodeTraverser.depthFirst(accumulator).traverse(portfolioNode);
-    return accumulator.getSubNodeSecurityTypes();
+  /* package */synchronized void addTarget(Set<ValueRequirement> requirements) {
+    if (!requirements.isEmpty()) {
+      _dependencyGraphBuilder.addTarget(requirements);
+    }
   }
 
-  @Override
-  public void preOrderOperation(PortfolioNode portfolioNode) {
-    final Set<Position> allPositions = PositionAccumulator.getAccumulatedPositions(portfolioNode);
-    for (Position position : allPositions) {
-      for (Trade trade : position.getTrades()) {
-        if (trade.getSecurity() == null) {
-          s_logger.debug("found a trade with security not resolved {}", trade);
-        }
-      }
-    }
-    addNodeRequirements(portfolioNode);
-    addPortfolioRequirements(portfolioNode);
-    addTradeRequirements(portfolioNode);
+  private Set<String> getSubNodeSecurityTypes(PortfolioNode portfolioNode) {
+    final Set<String> securityTypes = _subNodeSecurityTypes.get(portfolioNode);
+    return (securityTypes != null) ? securityTypes : Collections.<String>emptySet();
   }
 
-  private void addTradeRequirements(PortfolioNode portfolioNode) {
+  private void addTradeRequirements(PortfolioNode portfolioNode, Collection<Position> positions, Set<ValueRequirement> allRequirements) {
     final Set<String> subNodeSecurityTypes = getSubNodeSecurityTypes(portfolioNode);
     final Map<String, Set<Pair<String, ValueProperties>>> outputsBySecurityType = _calculationConfiguration.getTradeRequirementsBySecurityType();
     final Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
@@ -100,7 +138,7 @@ import com.opengamma.util.tuple.Pair;
       }
       // add requirements for trades as well
       if (_resultModelDefinition.getTradeOutputMode() != ResultOutputMode.NONE) {
-        for (Position position : portfolioNode.getPositions()) {
+        for (Position position : positions) {
           requirements.clear();
           for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
             requirements.add(new ValueRequirement(requiredOutput.getFirst(), position, requiredOutput.getSecond()));
@@ -114,43 +152,52 @@ import com.opengamma.util.tuple.Pair;
         }
       }
     }
-    _dependencyGraphBuilder.addTarget(requirements);
+    allRequirements.addAll(requirements);
   }
 
-  private void addPortfolioRequirements(PortfolioNode portfolioNode) {
+  private void addPortfolioRequirements(PortfolioNode portfolioNode, Set<ValueRequirement> requirements) {
+    // If the outputs are not even required in the results then there's no point adding them as terminal outputs
+    if (_resultModelDefinition.getAggregatePositionOutputMode() == ResultOutputMode.NONE) {
+      return;
+    }
     final Set<String> subNodeSecurityTypes = getSubNodeSecurityTypes(portfolioNode);
     final Map<String, Set<Pair<String, ValueProperties>>> outputsBySecurityType = _calculationConfiguration.getPortfolioRequirementsBySecurityType();
-    final Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
     for (String secType : subNodeSecurityTypes) {
       final Set<Pair<String, ValueProperties>> requiredOutputs = outputsBySecurityType.get(secType);
       if ((requiredOutputs == null) || requiredOutputs.isEmpty()) {
         continue;
       }
-      // If the outputs are not even required in the results then there's no point adding them as terminal outputs
-      if (_resultModelDefinition.getAggregatePositionOutputMode() != ResultOutputMode.NONE) {
-        for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
-          requirements.add(new ValueRequirement(requiredOutput.getFirst(), portfolioNode, requiredOutput.getSecond()));
-        }
+      for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
+        requirements.add(new ValueRequirement(requiredOutput.getFirst(), portfolioNode, requiredOutput.getSecond()));
       }
-      if (_resultModelDefinition.getPositionOutputMode() != ResultOutputMode.NONE) {
-        for (Position position : portfolioNode.getPositions()) {
-          for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
-            requirements.add(new ValueRequirement(requiredOutput.getFirst(), position, requiredOutput.getSecond()));
-          }
+    }
+  }
+
+  private void addPositionOutputRequirements(PortfolioNode portfolioNode, Collection<Position> positions, Set<ValueRequirement> requirements) {
+    if (_resultModelDefinition.getPositionOutputMode() == ResultOutputMode.NONE) {
+      return;
+    }
+    final Set<String> subNodeSecurityTypes = getSubNodeSecurityTypes(portfolioNode);
+    final Map<String, Set<Pair<String, ValueProperties>>> outputsBySecurityType = _calculationConfiguration.getPortfolioRequirementsBySecurityType();
+    for (String secType : subNodeSecurityTypes) {
+      final Set<Pair<String, ValueProperties>> requiredOutputs = outputsBySecurityType.get(secType);
+      if ((requiredOutputs == null) || requiredOutputs.isEmpty()) {
+        continue;
+      }
+      for (Position position : positions) {
+        for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
+          requirements.add(new ValueRequirement(requiredOutput.getFirst(), position, requiredOutput.getSecond()));
         }
       }
     }
-    _dependencyGraphBuilder.addTarget(requirements);
   }
   
-  private void addNodeRequirements(final PortfolioNode portfolioNode) {
+  private void addAggregateOnlyRequirements(final PortfolioNode portfolioNode, final Set<ValueRequirement> requirements) {
     final Set<Pair<String, ValueProperties>> requiredOutputs = _calculationConfiguration.getPortfolioRequirementsBySecurityType().get(ViewCalculationConfiguration.SECURITY_TYPE_AGGREGATE_ONLY);
     if ((requiredOutputs != null) && !requiredOutputs.isEmpty()) {
-      final Set<ValueRequirement> requirements = Sets.newHashSetWithExpectedSize(requiredOutputs.size());
       for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
         requirements.add(new ValueRequirement(requiredOutput.getFirst(), portfolioNode, requiredOutput.getSecond()));
       }
-      _dependencyGraphBuilder.addTarget(requirements);
     }
   }
 
@@ -29,6 +29,7 @@ public class ViewCompilationServices {
   private final ExecutorService _executorService;
   private final FunctionCompilationContext _compilationContext;
   private final CachingComputationTargetResolver _computationTargetResolver;
+  private volatile boolean _parallelCompilation = true;
   
   /**
    * Constructs an instance, without a position source or security source.
@@ -160,4 +161,24 @@ public class ViewCompilationServices {
     return _computationTargetResolver;
   }
 
+  /**
+   * Tests whether portfolio requirements are added to the dependency graphs in parallel. The default is true.
+   * 
+   * @return true if sub-trees of the portfolio are compiled concurrently using the executor service, false if the
+   *         portfolio is traversed sequentially for each configuration in turn
+   */
+  public boolean isParallelCompilation() {
+    return _parallelCompilation;
+  }
+
+  /**
+   * Sets whether portfolio requirements are added to the dependency graphs in parallel for compilations using these
+   * services.
+   * 
+   * @param parallelCompilation  true to compile sub-trees of the portfolio concurrently, false to traverse it sequentially
+   */
+  public void setParallelCompilation(final boolean parallelCompilation) {
+    _parallelCompilation = parallelCompilation;
+  }
+
 }
@@ -10,6 +10,8 @@ import java.util.EnumSet;
 
 import javax.time.InstantProvider;
 
+import org.apache.commons.lang.ObjectUtils;
+
 import com.opengamma.engine.marketdata.spec.MarketDataSpecification;
 import com.opengamma.id.VersionCorrection;
 import com.opengamma.util.ArgumentChecker;
@@ -26,6 +28,8 @@ public class ExecutionOptions implements ViewExecutionOptions {
   private final Integer _maxSuccessiveDeltaCycles;
   private final ViewCycleExecutionOptions _defaultExecutionOptions;
   private final VersionCorrection _versionCorrection;
+  private final Long _marketDataLatencyMillis;
+  private final Integer _maxMarketDataChanges;
   
   public ExecutionOptions(ViewCycleExecutionSequence executionSequence, EnumSet<ViewExecutionFlags> flags) {
     this(executionSequence, flags, null, null);
@@ -46,15 +50,25 @@ public class ExecutionOptions implements ViewExecutionOptions {
     
   public ExecutionOptions(ViewCycleExecutionSequence executionSequence, EnumSet<ViewExecutionFlags> flags,
       Integer maxSuccessiveDeltaCycles, ViewCycleExecutionOptions defaultExecutionOptions, VersionCorrection versionCorrection) {
+    this(executionSequence, flags, maxSuccessiveDeltaCycles, defaultExecutionOptions, versionCorrection, null, null);
+  }
+  
+  public ExecutionOptions(ViewCycleExecutionSequence executionSequence, EnumSet<ViewExecutionFlags> flags,
+      Integer maxSuccessiveDeltaCycles, ViewCycleExecutionOptions defaultExecutionOptions, VersionCorrection versionCorrection,
+      Long marketDataLatencyMillis, Integer maxMarketDataChanges) {
     ArgumentChecker.notNull(executionSequence, "executionSequence");
     ArgumentChecker.notNull(flags, "flags");
     ArgumentChecker.notNull(versionCorrection, "versionCorrection");
+    ArgumentChecker.isTrue(marketDataLatencyMillis == null || marketDataLatencyMillis >= 0, "marketDataLatencyMillis must not be negative");
+    ArgumentChecker.isTrue(maxMarketDataChanges == null || maxMarketDataChanges > 0, "maxMarketDataChanges must be positive");
     
     _executionSequence = executionSequence;
     _flags = flags;
     _maxSuccessiveDeltaCycles = maxSuccessiveDeltaCycles;
     _defaultExecutionOptions = defaultExecutionOptions;
     _versionCorrection = versionCorrection;
+    _marketDataLatencyMillis = marketDataLatencyMillis;
+    _maxMarketDataChanges = maxMarketDataChanges;
   }
   
   //-------------------------------------------------------------------------
@@ -68,6 +82,16 @@ public class ExecutionOptions implements ViewExecutionOptions {
     return _maxSuccessiveDeltaCycles;
   }
 
+  @Override
+  public Long getMarketDataLatencyMillis() {
+    return _marketDataLatencyMillis;
+  }
+
+  @Override
+  public Integer getMaxMarketDataChanges() {
+    return _maxMarketDataChanges;
+  }
+
   @Override
   public ViewCycleExecutionOptions getDefaultExecutionOptions() {
     return _defaultExecutionOptions;
@@ -92,6 +116,8 @@ public class ExecutionOptions implements ViewExecutionOptions {
     result = prime * result + ((_defaultExecutionOptions == null) ? 0 : _defaultExecutionOptions.hashCode());
     result = prime * result + ((_maxSuccessiveDeltaCycles == null) ? 0 : _maxSuccessiveDeltaCycles.hashCode());
     result = prime * result + _versionCorrection.hashCode();
+    result = prime * result + ((_marketDataLatencyMillis == null) ? 0 : _marketDataLatencyMillis.hashCode());
+    result = prime * result + ((_maxMarketDataChanges == null) ? 0 : _maxMarketDataChanges.hashCode());
     return result;
   }
 
@@ -129,13 +155,20 @@ public class ExecutionOptions implements ViewExecutionOptions {
     } else if (!_versionCorrection.equals(other._versionCorrection)) {
       return false;
     }
+    if (!ObjectUtils.equals(_marketDataLatencyMillis, other._marketDataLatencyMillis)) {
+      return false;
+    }
+    if (!ObjectUtils.equals(_maxMarketDataChanges, other._maxMarketDataChanges)) {
+      return false;
+    }
     return true;
   }
 
   @Override
   public String toString() {
     return "ExecutionOptions [executionSequence=" + _executionSequence + ", flags=" + _flags + ", maxSuccessiveDeltaCycles=" + _maxSuccessiveDeltaCycles + ", defaultExecutionOptions=" +
-        _defaultExecutionOptions + ", versionCorrection=" + _versionCorrection + "]";
+        _defaultExecutionOptions + ", versionCorrection=" + _versionCorrection + ", marketDataLatencyMillis=" + _marketDataLatencyMillis +
+        ", maxMarketDataChanges=" + _maxMarketDataChanges + "]";
   }
 
   //-------------------------------------------------------------------------
@@ -196,6 +229,23 @@ public class ExecutionOptions implements ViewExecutionOptions {
     return of(new InfiniteViewCycleExecutionSequence(), defaultExecutionOptions, flags);
   }
   
+  /**
+   * Creates an infinite execution sequence with a valuation time driven by the market data and all triggers enabled,
+   * coalescing market data changes into fewer cycles. A cycle is triggered once the given number of market data lines
+   * have changed, or once the latency budget has elapsed since the first change, whichever is sooner. 
+   * 
+   * @param marketDataSpec  the market data specification, not null
+   * @param marketDataLatencyMillis  the maximum time in milliseconds for which a market data change is held back
+   * @param maxMarketDataChanges  the number of changed market data lines which triggers a cycle immediately, null for no limit
+   * @return the execution sequence, not null
+   */
+  public static ViewExecutionOptions infinite(MarketDataSpecification marketDataSpec, long marketDataLatencyMillis, Integer maxMarketDataChanges) {
+    ViewCycleExecutionOptions defaultExecutionOptions = new ViewCycleExecutionOptions();
+    defaultExecutionOptions.setMarketDataSpecification(marketDataSpec);
+    return new ExecutionOptions(new InfiniteViewCycleExecutionSequence(), ExecutionFlags.triggersEnabled().get(), null, defaultExecutionOptions,
+        VersionCorrection.LATEST, marketDataLatencyMillis, maxMarketDataChanges);
+  }
+  
   /**
    * Creates an execution sequence designed for batch-mode operation. The typical next-cycle triggers are disabled; the
    * sequence is instead configured to run as fast as possible.
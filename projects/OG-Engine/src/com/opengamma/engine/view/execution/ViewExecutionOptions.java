@@ -34,6 +34,22 @@ public interface ViewExecutionOptions {
    * @return the maximum number of delta cycles following a full computation cycle, null for no limit
    */
   Integer getMaxSuccessiveDeltaCycles();
+  
+  /**
+   * Gets the maximum time for which market data changes are held back, to be coalesced with further changes, before
+   * they trigger a cycle. This applies only if cycles are triggered by market data changes.
+   * 
+   * @return the maximum time in milliseconds, null to trigger a cycle as soon as market data changes
+   */
+  Long getMarketDataLatencyMillis();
+  
+  /**
+   * Gets the number of changed market data lines that triggers a cycle without waiting for the latency given by
+   * {@link #getMarketDataLatencyMillis()} to elapse.
+   * 
+   * @return the number of changed lines, null for no limit
+   */
+  Integer getMaxMarketDataChanges();
     
   /**
    * Gets the default execution options.
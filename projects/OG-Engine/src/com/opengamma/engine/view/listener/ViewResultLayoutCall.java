@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.listener;
+
+import com.google.common.base.Function;
+import com.opengamma.engine.view.ViewComputationResultLayout;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Carries the layout of the results which follow it in a stream of calls, so that the layout is sent once rather
+ * than with the results of every cycle. The layout is registered with the receiver when the call is decoded; applying
+ * the call to a listener has no effect.
+ */
+public class ViewResultLayoutCall implements Function<ViewResultListener, Object> {
+
+  private final ViewComputationResultLayout _layout;
+
+  public ViewResultLayoutCall(ViewComputationResultLayout layout) {
+    ArgumentChecker.notNull(layout, "layout");
+    _layout = layout;
+  }
+
+  public ViewComputationResultLayout getLayout() {
+    return _layout;
+  }
+
+  @Override
+  public Object apply(ViewResultListener viewProcessListener) {
+    return null;
+  }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.depgraph;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.test.MockFunction;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests the incremental modification of a {@link DependencyGraph}.
+ */
+@Test
+public class DependencyGraphTest {
+
+  private static ComputationTarget target(final String name) {
+    return new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", name));
+  }
+
+  private static DependencyNode node(final String functionId, final ComputationTarget target, final DependencyNode... inputs) {
+    final MockFunction function = MockFunction.getMockFunction(functionId, target, 1d);
+    final DependencyNode node = new DependencyNode(target);
+    node.setFunction(function);
+    node.addOutputValues(function.getResultSpecs());
+    for (DependencyNode input : inputs) {
+      node.addInputNode(input);
+      for (ValueSpecification inputValue : input.getOutputValues()) {
+        node.addInputValue(inputValue);
+      }
+    }
+    return node;
+  }
+
+  private static DependencyGraph graph(final DependencyNode... nodes) {
+    final DependencyGraph graph = new DependencyGraph("Default");
+    for (DependencyNode node : nodes) {
+      graph.addDependencyNode(node);
+    }
+    for (DependencyNode node : nodes) {
+      if (graph.isRootNode(node)) {
+        for (ValueSpecification output : node.getOutputValues()) {
+          graph.addTerminalOutputValue(output);
+        }
+      }
+    }
+    return graph;
+  }
+
+  public void testNodesDependingOnTargets() {
+    final DependencyNode curve = node("Curve", target("Curve"));
+    final DependencyNode a = node("Value", target("A"), curve);
+    final DependencyNode b = node("Value", target("B"), curve);
+    final DependencyGraph graph = graph(curve, a, b);
+    assertEquals(Collections.singleton(b), graph.getNodesDependingOnTargets(Collections.singleton(target("B").toSpecification())));
+    assertEquals(graph.getDependencyNodes(), graph.getNodesDependingOnTargets(Collections.singleton(target("Curve").toSpecification())));
+  }
+
+  public void testSplice() {
+    final DependencyNode curve = node("Curve", target("Curve"));
+    final DependencyNode a = node("Value", target("A"), curve);
+    final DependencyNode b = node("Value", target("B"), curve);
+    final DependencyGraph graph = graph(curve, a, b);
+    final DependencyNode newCurve = node("Curve", target("Curve"));
+    final DependencyNode c = node("Value", target("C"), newCurve);
+    final DependencyGraph additions = graph(newCurve, c);
+    final DependencyGraph spliced = graph.splice(graph.getNodesDependingOnTargets(Collections.singleton(target("B").toSpecification())), additions);
+    assertNotNull(spliced);
+    assertEquals(3, spliced.getSize());
+    final ValueSpecification curveValue = curve.getOutputValues().iterator().next();
+    final DependencyNode splicedCurve = spliced.getNodeProducing(curveValue);
+    assertEquals(2, splicedCurve.getDependentNodes().size());
+    final Set<ValueSpecification> terminalOutputs = spliced.getTerminalOutputSpecifications();
+    assertEquals(2, terminalOutputs.size());
+    assertTrue(terminalOutputs.contains(a.getOutputValues().iterator().next()));
+    assertTrue(terminalOutputs.contains(c.getOutputValues().iterator().next()));
+    final DependencyNode splicedC = spliced.getNodeProducing(c.getOutputValues().iterator().next());
+    assertSame(splicedCurve, splicedC.getInputNodes().iterator().next());
+    // The original graph is unchanged
+    assertEquals(3, graph.getSize());
+    assertTrue(graph.containsNode(b));
+    assertEquals(2, curve.getDependentNodes().size());
+    assertFalse(spliced.containsNode(curve));
+  }
+
+  public void testSplicePrunesUnusedNodes() {
+    final DependencyNode curve = node("Curve", target("Curve"));
+    final DependencyNode otherCurve = node("OtherCurve", target("OtherCurve"));
+    final DependencyNode a = node("Value", target("A"), curve);
+    final DependencyNode b = node("Value", target("B"), otherCurve);
+    final DependencyGraph graph = graph(curve, otherCurve, a, b);
+    final DependencyGraph spliced = graph.splice(Collections.singleton(b), new DependencyGraph("Default"));
+    assertEquals(2, spliced.getSize());
+    assertNull(spliced.getNodeProducing(otherCurve.getOutputValues().iterator().next()));
+  }
+
+  public void testSpliceDifferentFunction() {
+    final DependencyNode curve = node("Curve", target("Curve"));
+    final DependencyNode a = node("Value", target("A"), curve);
+    final DependencyGraph graph = graph(curve, a);
+    // A value of the same specification produced by a different function can't be merged
+    final MockFunction function = MockFunction.getMockFunction("Curve2", target("Curve"), 1d);
+    final DependencyNode newCurve = new DependencyNode(target("Curve"));
+    newCurve.setFunction(function);
+    newCurve.addOutputValues(curve.getOutputValues());
+    final DependencyNode c = node("Value", target("C"), newCurve);
+    final DependencyGraph additions = graph(newCurve, c);
+    assertNull(graph.splice(Collections.<DependencyNode>emptySet(), additions));
+  }
+
+}
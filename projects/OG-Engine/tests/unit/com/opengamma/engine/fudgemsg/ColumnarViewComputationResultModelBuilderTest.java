@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.fudgemsg;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.time.Duration;
+import javax.time.Instant;
+
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.Test;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
+import com.opengamma.engine.view.ViewComputationResultLayout;
+import com.opengamma.engine.view.ViewComputationResultModel;
+import com.opengamma.engine.view.ViewResultEntry;
+import com.opengamma.engine.view.listener.CycleCompletedCall;
+import com.opengamma.engine.view.listener.ViewResultLayoutCall;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+import com.opengamma.util.test.AbstractFudgeBuilderTestCase;
+
+/**
+ * Tests the {@link ColumnarViewComputationResultModelFudgeBuilder} class.
+ */
+@Test
+public class ColumnarViewComputationResultModelBuilderTest extends AbstractFudgeBuilderTestCase {
+
+  private static final String CONFIG = "Config";
+  private static final ComputationTargetSpecification POSITION = new ComputationTargetSpecification(ComputationTargetType.POSITION, UniqueId.of("Test", "Position"));
+  private static final ComputationTargetSpecification OTHER = new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", "Other"));
+  private static final ValueSpecification POSITION_PV = new ValueSpecification("PV", POSITION, ValueProperties.with("Function", "Test").get());
+  private static final ValueSpecification POSITION_CURVE = new ValueSpecification("Curve", POSITION, ValueProperties.with("Function", "Test").get());
+  private static final ValueSpecification OTHER_PV = new ValueSpecification("PV", OTHER, ValueProperties.with("Function", "Test").get());
+
+  private ColumnarViewComputationResultModel createResultModel() {
+    final Map<String, List<ValueSpecification>> outputs = new HashMap<String, List<ValueSpecification>>();
+    outputs.put(CONFIG, Arrays.asList(POSITION_PV, POSITION_CURVE, OTHER_PV));
+    final ViewComputationResultLayout layout = new ViewComputationResultLayout(Arrays.asList(CONFIG), Arrays.asList(POSITION), outputs);
+    final ColumnarViewComputationResultModel resultModel = new ColumnarViewComputationResultModel(layout);
+    resultModel.setViewProcessId(UniqueId.of("Test", "ViewProcess"));
+    resultModel.setViewCycleId(UniqueId.of("Test", "ViewCycle"));
+    resultModel.setValuationTime(Instant.ofEpochMillis(1000));
+    resultModel.setCalculationTime(Instant.ofEpochMillis(2000));
+    resultModel.setCalculationDuration(Duration.ofMillis(100));
+    resultModel.setVersionCorrection(VersionCorrection.LATEST);
+    resultModel.addValue(CONFIG, new ComputedValue(POSITION_PV, 1.5));
+    resultModel.addValue(CONFIG, new ComputedValue(POSITION_CURVE, "Curve"));
+    resultModel.addMarketData(new ComputedValue(OTHER_PV, 2.5));
+    return resultModel;
+  }
+
+  private void assertResultModel(final ColumnarViewComputationResultModel expected, final ViewComputationResultModel actual) {
+    assertTrue(actual instanceof ColumnarViewComputationResultModel);
+    assertEquals(expected.getViewProcessId(), actual.getViewProcessId());
+    assertEquals(expected.getViewCycleId(), actual.getViewCycleId());
+    assertEquals(expected.getValuationTime(), actual.getValuationTime());
+    assertEquals(expected.getCalculationTime(), actual.getCalculationTime());
+    assertEquals(expected.getCalculationDuration(), actual.getCalculationDuration());
+    assertEquals(expected.getVersionCorrection(), actual.getVersionCorrection());
+    assertEquals(new HashSet<ViewResultEntry>(expected.getAllResults()), new HashSet<ViewResultEntry>(actual.getAllResults()));
+    assertEquals(new HashSet<ComputedValue>(expected.getAllMarketData()), new HashSet<ComputedValue>(actual.getAllMarketData()));
+  }
+
+  public void testCycleAsInterface() {
+    final ColumnarViewComputationResultModel resultModel = createResultModel();
+    final MutableFudgeMsg msgOut = getFudgeSerializer().newMessage();
+    getFudgeSerializer().addToMessage(msgOut, "test", null, resultModel);
+    final FudgeMsg msgIn = getFudgeContext().deserialize(getFudgeContext().toByteArray(msgOut)).getMessage();
+    assertResultModel(resultModel, getFudgeDeserializer().fieldValueToObject(ViewComputationResultModel.class, msgIn.getByName("test")));
+  }
+
+  public void testLayoutReused() {
+    final ColumnarViewComputationResultModel resultModel = createResultModel();
+    final ViewComputationResultLayout layout = cycleObject(ViewComputationResultLayout.class, resultModel.getLayout());
+    assertEquals(resultModel.getLayout().getId(), layout.getId());
+    assertEquals(resultModel.getLayout().getCellCount(), layout.getCellCount());
+    assertSame(layout, cycleObject(ViewComputationResultLayout.class, resultModel.getLayout()));
+    assertSame(layout, ((ColumnarViewComputationResultModel) cycleObject(ViewComputationResultModel.class, resultModel)).getLayout());
+  }
+
+  public void testCycleCompletedCall() {
+    final ColumnarViewComputationResultModel resultModel = createResultModel();
+    final ViewResultLayoutCall layoutCall = cycleObject(ViewResultLayoutCall.class, new ViewResultLayoutCall(resultModel.getLayout()));
+    final CycleCompletedCall cycled = cycleObject(CycleCompletedCall.class, new CycleCompletedCall(resultModel, null));
+    assertResultModel(resultModel, cycled.getFullResult());
+    assertSame(layoutCall.getLayout(), ((ColumnarViewComputationResultModel) cycled.getFullResult()).getLayout());
+    assertNull(cycled.getDeltaResult());
+  }
+
+  @Test(expectedExceptions = OpenGammaRuntimeException.class)
+  public void testCycleCompletedCallWithoutLayout() {
+    cycleObject(CycleCompletedCall.class, new CycleCompletedCall(createResultModel(), null));
+  }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.marketdata;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.id.UniqueId;
+import com.opengamma.livedata.normalization.MarketDataRequirementNames;
+
+/**
+ * Test {@link InMemoryLKVMarketDataProvider}.
+ */
+@Test
+public class InMemoryLKVMarketDataProviderTest {
+
+  private static ValueRequirement requirement(final String ticker) {
+    return new ValueRequirement(MarketDataRequirementNames.MARKET_VALUE, ComputationTargetType.PRIMITIVE, UniqueId.of("testdomain", ticker));
+  }
+
+  private static InMemoryLKVMarketDataSnapshot snapshot(final InMemoryLKVMarketDataProvider provider) {
+    final InMemoryLKVMarketDataSnapshot snapshot = provider.snapshot(null);
+    snapshot.init();
+    return snapshot;
+  }
+
+  public void testSnapshotIsolation() {
+    final InMemoryLKVMarketDataProvider provider = new InMemoryLKVMarketDataProvider();
+    provider.addValue(requirement("A"), 1d);
+    provider.addValue(requirement("B"), 2d);
+    final InMemoryLKVMarketDataSnapshot snapshot1 = snapshot(provider);
+    provider.addValue(requirement("A"), 10d);
+    provider.removeValue(requirement("B"));
+    provider.addValue(requirement("C"), 3d);
+    assertEquals(1d, snapshot1.query(requirement("A")));
+    assertEquals(2d, snapshot1.query(requirement("B")));
+    assertNull(snapshot1.query(requirement("C")));
+    assertEquals(2, snapshot1.getAllValueKeys().size());
+    final InMemoryLKVMarketDataSnapshot snapshot2 = snapshot(provider);
+    assertEquals(10d, snapshot2.query(requirement("A")));
+    assertNull(snapshot2.query(requirement("B")));
+    assertEquals(3d, snapshot2.query(requirement("C")));
+    assertEquals(new HashSet<ValueRequirement>(provider.getAllValueKeys()), snapshot2.getAllValueKeys());
+    assertTrue(provider.isAvailable(requirement("C")));
+    assertFalse(provider.isAvailable(requirement("B")));
+  }
+
+  public void testChangesSince() {
+    final InMemoryLKVMarketDataProvider provider = new InMemoryLKVMarketDataProvider();
+    provider.addValue(requirement("A"), 1d);
+    provider.addValue(requirement("B"), 2d);
+    final InMemoryLKVMarketDataSnapshot snapshot1 = snapshot(provider);
+    final InMemoryLKVMarketDataSnapshot snapshot2 = snapshot(provider);
+    assertEquals(Collections.emptySet(), snapshot2.getChangesSince(snapshot1));
+    provider.addValue(requirement("A"), 10d);
+    final InMemoryLKVMarketDataSnapshot snapshot3 = snapshot(provider);
+    provider.removeValue(requirement("B"));
+    provider.addValue(requirement("C"), 3d);
+    final InMemoryLKVMarketDataSnapshot snapshot4 = snapshot(provider);
+    assertEquals(Collections.singleton(requirement("A")), snapshot3.getChangesSince(snapshot1));
+    final Set<ValueRequirement> expected = new HashSet<ValueRequirement>();
+    expected.add(requirement("B"));
+    expected.add(requirement("C"));
+    assertEquals(expected, snapshot4.getChangesSince(snapshot3));
+    expected.add(requirement("A"));
+    assertEquals(expected, snapshot4.getChangesSince(snapshot2));
+    // Not an earlier snapshot
+    assertNull(snapshot1.getChangesSince(snapshot4));
+    assertNull(snapshot4.getChangesSince(snapshot(new InMemoryLKVMarketDataProvider())));
+  }
+
+  public void testManyValues() {
+    final InMemoryLKVMarketDataProvider provider = new InMemoryLKVMarketDataProvider();
+    final int count = 10000;
+    for (int i = 0; i < count; i++) {
+      provider.addValue(requirement(Integer.toString(i)), (double) i);
+    }
+    final InMemoryLKVMarketDataSnapshot snapshot1 = snapshot(provider);
+    for (int i = 0; i < count; i += 2) {
+      provider.removeValue(requirement(Integer.toString(i)));
+    }
+    final InMemoryLKVMarketDataSnapshot snapshot2 = snapshot(provider);
+    assertEquals(count, snapshot1.getAllValueKeys().size());
+    assertEquals(count / 2, snapshot2.getAllValueKeys().size());
+    for (int i = 0; i < count; i++) {
+      final ValueRequirement requirement = requirement(Integer.toString(i));
+      assertEquals((double) i, snapshot1.query(requirement));
+      assertEquals(((i & 1) == 0) ? null : (Object) (double) i, snapshot2.query(requirement));
+      assertTrue(snapshot1.getAllValueKeys().contains(requirement));
+    }
+    assertEquals(count / 2, snapshot2.getChangesSince(snapshot1).size());
+  }
+
+}
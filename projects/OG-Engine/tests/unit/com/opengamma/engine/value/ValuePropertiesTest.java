@@ -12,9 +12,17 @@ import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertSame;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
 /**
@@ -23,6 +31,8 @@ import org.testng.annotations.Test;
 @Test
 public class ValuePropertiesTest {
 
+  private static final Logger s_logger = LoggerFactory.getLogger(ValuePropertiesTest.class);
+
   public void testNone() {
     final ValueProperties none = ValueProperties.none();
     assertNotNull(none);
@@ -295,6 +305,51 @@ public class ValuePropertiesTest {
     ValueProperties.parse("ValueName=[");
   }
   
+  public void testInterned() {
+    final ValueProperties props = ValueProperties.with("A", "1").with("B", "2", "3").withOptional("C").get();
+    assertSame(props, ValueProperties.withOptional("C").with("B", "3").with("A", "1").with("B", "2").get());
+    assertSame(props, props.copy().get());
+    assertSame(props, ValueProperties.parse(props.toString()));
+    assertSame(props.getValues("A"), ValueProperties.with("D", "1").get().getValues("D"));
+    assertSame(props, props.compose(ValueProperties.with("A", "1").withAny("B").get()));
+    assertSame(ValueProperties.with("A", "1").get(), ValueProperties.with("A", "1", "2").get().compose(ValueProperties.with("A", "1", "3").get()));
+  }
+
+  public void testSerializationInterned() throws Exception {
+    final ValueProperties props = ValueProperties.with("A", "1").with("B", "2", "3").withOptional("C").get();
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(props);
+    out.close();
+    final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertSame(props, in.readObject());
+  }
+
+  private static long usedMemory() {
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+    }
+    return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+  }
+
+  /**
+   * Tests of performance. "enabled = false" for the standard testing.
+   */
+  @Test(enabled = false)
+  public void heapUsage() {
+    final int count = 1000000;
+    final List<ValueProperties> props = new ArrayList<ValueProperties>(count);
+    final long before = usedMemory();
+    for (int i = 0; i < count; i++) {
+      // Typical of the output properties of a dependency graph; few distinct combinations
+      props.add(ValueProperties.with(ValuePropertyNames.FUNCTION, "Function" + (i % 500)).with(ValuePropertyNames.CURRENCY, (i % 2 == 0) ? "USD" : "GBP")
+          .with(ValuePropertyNames.CURVE, "Curve" + (i % 10)).withAny("Aggregation").get());
+    }
+    final long after = usedMemory();
+    s_logger.info("{} property sets use {} bytes each", count, (double) (after - before) / count);
+    assertEquals(count, props.size());
+  }
+
   private static void parseCycle(ValueProperties original) {
     String vpString = original.toString();
     ValueProperties parsed = ValueProperties.parse(vpString);
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests {@link ColumnarViewComputationResultModel}
+ */
+@Test
+public class ColumnarViewComputationResultModelTest {
+
+  private static final String CONFIG_1 = "Config 1";
+  private static final String CONFIG_2 = "Config 2";
+
+  private static final ComputationTargetSpecification NODE = target("Node");
+  private static final ComputationTargetSpecification POSITION = target("Position");
+  private static final ComputationTargetSpecification OTHER = target("Other");
+
+  private static final ValueSpecification NODE_PV = spec("PV", NODE);
+  private static final ValueSpecification POSITION_PV = spec("PV", POSITION);
+  private static final ValueSpecification POSITION_CURVE = spec("Curve", POSITION);
+  private static final ValueSpecification OTHER_PV = spec("PV", OTHER);
+
+  private static ComputationTargetSpecification target(String name) {
+    return new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", name));
+  }
+
+  private static ValueSpecification spec(String valueName, ComputationTargetSpecification target) {
+    return new ValueSpecification(valueName, target, ValueProperties.with("Function", "Test").get());
+  }
+
+  private static ViewComputationResultLayout layout() {
+    Map<String, List<ValueSpecification>> outputs = new HashMap<String, List<ValueSpecification>>();
+    outputs.put(CONFIG_1, Arrays.asList(OTHER_PV, POSITION_PV, NODE_PV, POSITION_CURVE));
+    outputs.put(CONFIG_2, Arrays.asList(POSITION_PV));
+    return new ViewComputationResultLayout(Arrays.asList(CONFIG_1, CONFIG_2), Arrays.asList(POSITION, NODE), outputs);
+  }
+
+  public void testLayout() {
+    ViewComputationResultLayout layout = layout();
+    assertEquals(3, layout.getTargetCount());
+    assertEquals(POSITION, layout.getTarget(0));
+    assertEquals(NODE, layout.getTarget(1));
+    assertEquals(OTHER, layout.getTarget(2));
+    assertTrue(layout.isRequiredTarget(1));
+    assertFalse(layout.isRequiredTarget(2));
+    assertEquals(5, layout.getCellCount());
+    assertEquals(2, layout.getColumnCount());
+    // Cells are grouped by configuration, then target, keeping the output order within a target
+    assertEquals(Arrays.asList(POSITION_PV, POSITION_CURVE, NODE_PV, OTHER_PV), layout.getCells(0));
+    assertEquals(Arrays.asList(POSITION_PV), layout.getCells(1));
+    assertEquals(0, layout.getCellStart(0, 0));
+    assertEquals(2, layout.getCellEnd(0, 0));
+    assertEquals(4, layout.getCellStart(1, 0));
+    assertEquals(5, layout.getCellStart(1, 1));
+    assertEquals(4, layout.getCellIndex(1, POSITION_PV));
+    assertEquals(-1, layout.getCellIndex(1, NODE_PV));
+    assertEquals(layout.getCellColumn(0), layout.getCellColumn(2));
+  }
+
+  public void testEquivalentToInMemory() {
+    ColumnarViewComputationResultModel columnar = new ColumnarViewComputationResultModel(layout());
+    InMemoryViewComputationResultModel inMemory = new InMemoryViewComputationResultModel();
+    inMemory.setCalculationConfigurationNames(Arrays.asList(CONFIG_1, CONFIG_2));
+    List<ComputedValue> config1 = Arrays.asList(new ComputedValue(POSITION_PV, 1.5), new ComputedValue(POSITION_CURVE, "Curve"), new ComputedValue(OTHER_PV, 3.0));
+    for (ComputedValue value : config1) {
+      columnar.addValue(CONFIG_1, value);
+      inMemory.addValue(CONFIG_1, value);
+    }
+    // NODE is a required target so is reported without values, as it would be by InMemoryViewComputationResultModel.setPortfolio
+    assertEquals(new HashSet<ComputationTargetSpecification>(Arrays.asList(POSITION, NODE, OTHER)), new HashSet<ComputationTargetSpecification>(columnar.getAllTargets()));
+    assertEquals(new HashSet<String>(Arrays.asList("PV", "Curve")), columnar.getAllOutputValueNames());
+    assertEquals(new HashSet<ViewResultEntry>(inMemory.getAllResults()), new HashSet<ViewResultEntry>(columnar.getAllResults()));
+    ViewCalculationResultModel calcResult = columnar.getCalculationResult(CONFIG_1);
+    assertEquals(inMemory.getCalculationResult(CONFIG_1).getValues(POSITION), calcResult.getValues(POSITION));
+    assertEquals(new HashSet<ComputedValue>(config1.subList(0, 2)), new HashSet<ComputedValue>(calcResult.getAllValues(POSITION)));
+    assertTrue(calcResult.getAllValues(NODE).isEmpty());
+    assertTrue(columnar.getCalculationResult(CONFIG_2).getAllValues(POSITION).isEmpty());
+    assertNull(columnar.getCalculationResult(CONFIG_2).getAllValues(OTHER));
+    assertNull(columnar.getCalculationResult("Missing"));
+    ViewTargetResultModel targetResult = columnar.getTargetResult(OTHER);
+    assertEquals(Collections.singletonList(CONFIG_1), targetResult.getCalculationConfigurationNames());
+    assertEquals(Collections.singletonList(new ComputedValue(OTHER_PV, 3.0)), targetResult.getAllValues(CONFIG_1));
+    assertNull(columnar.getTargetResult(target("Missing")));
+  }
+
+  public void testCells() {
+    ColumnarViewComputationResultModel result = new ColumnarViewComputationResultModel(layout());
+    result.setDouble(0, 1.5);
+    result.setValue(1, "Curve");
+    assertTrue(result.isDouble(0));
+    assertEquals(1.5, result.getDouble(0), 0);
+    assertFalse(result.isDouble(1));
+    assertTrue(result.isPresent(1));
+    assertEquals("Curve", result.getValue(1));
+    assertFalse(result.isPresent(2));
+    assertNull(result.getComputedValue(2));
+    // Replacing an object with a double
+    result.setValue(1, 2.5);
+    assertTrue(result.isDouble(1));
+    assertEquals(2.5, result.getValue(1));
+  }
+
+  public void testCellIteration() {
+    Map<String, List<ValueSpecification>> outputs = new HashMap<String, List<ValueSpecification>>();
+    List<ValueSpecification> values = new ArrayList<ValueSpecification>();
+    for (int i = 0; i < 150; i++) {
+      values.add(spec("Value " + i, OTHER));
+    }
+    outputs.put(CONFIG_1, values);
+    ColumnarViewComputationResultModel result = new ColumnarViewComputationResultModel(new ViewComputationResultLayout(Arrays.asList(CONFIG_1),
+        Collections.<ComputationTargetSpecification>emptyList(), outputs));
+    assertEquals(-1, result.nextPresentCell(0));
+    assertFalse(result.isReportedTarget(0));
+    assertTrue(result.getAllTargets().isEmpty());
+    result.setDouble(3, 1.0);
+    result.setDouble(64, 2.0);
+    result.setValue(149, "Last");
+    assertEquals(3, result.nextPresentCell(0));
+    assertEquals(3, result.nextPresentCell(3));
+    assertEquals(64, result.nextPresentCell(4));
+    assertEquals(149, result.nextPresentCell(65));
+    assertEquals(-1, result.nextPresentCell(150));
+    assertTrue(result.isReportedTarget(0));
+    assertEquals(Collections.singletonList(OTHER), result.getAllTargets());
+  }
+
+  public void testReportedTargets() {
+    ColumnarViewComputationResultModel result = new ColumnarViewComputationResultModel(layout());
+    // Required targets are always reported
+    assertEquals(Arrays.asList(POSITION, NODE), result.getAllTargets());
+    assertFalse(result.isReportedTarget(2));
+    result.addValue(CONFIG_2, new ComputedValue(POSITION_PV, 1.0));
+    result.addValue(CONFIG_1, new ComputedValue(OTHER_PV, 1.0));
+    assertTrue(result.isReportedTarget(2));
+    assertEquals(Arrays.asList(POSITION, NODE, OTHER), result.getAllTargets());
+    assertEquals(Arrays.asList(POSITION, NODE), result.getCalculationResult(CONFIG_2).getAllTargets());
+    assertTrue(result.isReported(0, 2));
+    assertFalse(result.isReported(1, 2));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testValueNotInLayout() {
+    ColumnarViewComputationResultModel result = new ColumnarViewComputationResultModel(layout());
+    result.addValue(CONFIG_2, new ComputedValue(NODE_PV, 1.0));
+  }
+
+  public void testRebuildFromArrays() {
+    ColumnarViewComputationResultModel result = new ColumnarViewComputationResultModel(layout());
+    result.setDouble(4, 7.0);
+    ColumnarViewComputationResultModel copy = new ColumnarViewComputationResultModel(result.getLayout(), result.getPresentCells(), result.getDoubleValues(),
+        result.getObjectValues());
+    assertEquals(Collections.singletonList(new ComputedValue(POSITION_PV, 7.0)), copy.getCalculationResult(CONFIG_2).getAllValues(POSITION));
+    Set<ViewResultEntry> expected = Collections.singleton(new ViewResultEntry(CONFIG_2, new ComputedValue(POSITION_PV, 7.0)));
+    assertEquals(expected, new HashSet<ViewResultEntry>(copy.getAllResults()));
+  }
+
+}
@@ -77,13 +77,17 @@ public class LiveDataDeltaCalculatorTest {
     
     DependencyNode node = new DependencyNode(target);
     node.setFunction(function);
+    node.addOutputValue(function.getResult());
     node.addInputNodes(inputNodes);
     return node;
   }
   
+  private ValueSpecification getMarketDataSpecification(DependencyNode node) {
+    return ((MarketDataSourcingFunction) node.getFunction().getFunction()).getMarketDataRequirement().getSecond();
+  }
+
   private void put(ViewComputationCache cache, DependencyNode node, Object value) {
-    ValueSpecification spec = ((MarketDataSourcingFunction) node.getFunction().getFunction()).getMarketDataRequirement().getSecond();
-    cache.putSharedValue(new ComputedValue(spec, value));
+    cache.putSharedValue(new ComputedValue(getMarketDataSpecification(node), value));
   }
   
   /**
@@ -172,4 +176,29 @@ public class LiveDataDeltaCalculatorTest {
     assertEquals(_graph.getDependencyNodes(), _deltaCalculator.getChangedNodes());
   }
 
+  public void changedMarketDataNone() {
+    LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(_graph, Collections.<ValueSpecification>emptySet());
+    deltaCalculator.computeDelta();
+
+    assertEquals(_graph.getDependencyNodes(), deltaCalculator.getUnchangedNodes());
+    assertEquals(Collections.emptySet(), deltaCalculator.getChangedNodes());
+  }
+
+  public void changedMarketDataB() {
+    LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(_graph, Collections.singleton(getMarketDataSpecification(_node1)));
+    deltaCalculator.computeDelta();
+
+    assertEquals(Sets.newHashSet(_node2, _node3), deltaCalculator.getUnchangedNodes());
+    assertEquals(Sets.newHashSet(_node0, _node1), deltaCalculator.getChangedNodes());
+  }
+
+  public void changedMarketDataC() {
+    LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(_graph, Sets.newHashSet(getMarketDataSpecification(_node3),
+        new ValueSpecification(getValueRequirement("NotInGraph"), "mockFunctionId")));
+    deltaCalculator.computeDelta();
+
+    assertEquals(Collections.emptySet(), deltaCalculator.getUnchangedNodes());
+    assertEquals(_graph.getDependencyNodes(), deltaCalculator.getChangedNodes());
+  }
+
 }
@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+
+import javax.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.calc.EngineResourceManagerImpl;
+import com.opengamma.engine.view.client.merging.RateLimitingMergingViewProcessListener;
+import com.opengamma.engine.view.compilation.CompiledViewDefinition;
+import com.opengamma.engine.view.execution.ViewCycleExecutionOptions;
+import com.opengamma.engine.view.listener.ViewResultListener;
+import com.opengamma.id.UniqueId;
+import com.opengamma.livedata.UserPrincipal;
+
+/**
+ * Tests {@link ViewResultHistory}
+ */
+@Test
+public class ViewResultHistoryTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(ViewResultHistoryTest.class);
+
+  private static final String CALC_CONFIG = "Default";
+
+  private static ViewDefinition viewDefinition() {
+    ViewDefinition viewDefinition = new ViewDefinition(UniqueId.of("Test", "View"), "Test View", UserPrincipal.getTestUser());
+    viewDefinition.addViewCalculationConfiguration(new ViewCalculationConfiguration(viewDefinition, CALC_CONFIG));
+    return viewDefinition;
+  }
+
+  private static ValueSpecification spec(int target) {
+    return new ValueSpecification("Value", new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", Integer.toString(target))),
+        ValueProperties.with("Function", "Test").get());
+  }
+
+  private static InMemoryViewComputationResultModel fullResult(int cycle, double[] values) {
+    InMemoryViewComputationResultModel result = new InMemoryViewComputationResultModel();
+    result.setViewCycleId(UniqueId.of("Cycle", Integer.toString(cycle)));
+    result.setCalculationTime(Instant.ofEpochMillis(cycle));
+    result.setCalculationConfigurationNames(Collections.singleton(CALC_CONFIG));
+    for (int i = 0; i < values.length; i++) {
+      result.addValue(CALC_CONFIG, new ComputedValue(spec(i), values[i]));
+    }
+    return result;
+  }
+
+  private static InMemoryViewDeltaResultModel deltaResult(int cycle, int... changed) {
+    InMemoryViewDeltaResultModel result = new InMemoryViewDeltaResultModel();
+    result.setViewCycleId(UniqueId.of("Cycle", Integer.toString(cycle)));
+    result.setCalculationTime(Instant.ofEpochMillis(cycle));
+    result.setPreviousCalculationTime(Instant.ofEpochMillis(cycle - 1));
+    result.setCalculationConfigurationNames(Collections.singleton(CALC_CONFIG));
+    for (int target : changed) {
+      result.addValue(CALC_CONFIG, new ComputedValue(spec(target), (double) cycle));
+    }
+    return result;
+  }
+
+  private static Set<ComputationTargetSpecification> getTargets(ViewDeltaResultModel delta) {
+    return new HashSet<ComputationTargetSpecification>(delta.getCalculationResult(CALC_CONFIG).getAllTargets());
+  }
+
+  private static Set<ComputationTargetSpecification> targets(int... targets) {
+    Set<ComputationTargetSpecification> result = new HashSet<ComputationTargetSpecification>();
+    for (int target : targets) {
+      result.add(spec(target).getTargetSpecification());
+    }
+    return result;
+  }
+
+  public void testVersions() {
+    ViewResultHistory history = new ViewResultHistory(2);
+    assertEquals(0, history.getLatestVersion());
+    assertNull(history.getLatestResult());
+    ViewDefinition viewDefinition = viewDefinition();
+    for (int cycle = 1; cycle <= 3; cycle++) {
+      assertEquals(cycle, history.add(viewDefinition, fullResult(cycle, new double[1]), deltaResult(cycle, 0)));
+    }
+    assertEquals(3, history.getLatestVersion());
+    assertEquals(UniqueId.of("Cycle", "3"), history.getLatestResult().getViewCycleId());
+    assertEquals(2, history.getVersion(UniqueId.of("Cycle", "2")));
+    assertEquals(-1, history.getVersion(UniqueId.of("Cycle", "1")));
+    assertNull(history.getResult(1));
+    // Only the latest full result is retained
+    assertNull(history.getResult(2));
+    assertSame(history.getLatestResult(), history.getResult(3));
+  }
+
+  public void testMergedDelta() {
+    ViewResultHistory history = new ViewResultHistory(8);
+    ViewDefinition viewDefinition = viewDefinition();
+    history.add(viewDefinition, fullResult(1, new double[4]), deltaResult(1, 0, 1, 2, 3));
+    history.add(viewDefinition, fullResult(2, new double[4]), deltaResult(2, 1));
+    ViewDeltaResultModel lastDelta = deltaResult(3, 2);
+    history.add(viewDefinition, fullResult(3, new double[4]), lastDelta);
+    assertSame(lastDelta, history.getDelta(2, 3));
+    ViewDeltaResultModel delta = history.getDelta(1, 3);
+    assertEquals(targets(1, 2), getTargets(delta));
+    assertEquals(Instant.ofEpochMillis(1), delta.getPreviousResultTimestamp());
+    assertEquals(UniqueId.of("Cycle", "3"), delta.getViewCycleId());
+    // Listeners which have seen the same version share the merged delta
+    assertSame(delta, history.getDelta(1, 3));
+    assertEquals(targets(1), getTargets(history.getDelta(1, 2)));
+    assertNull(history.getDelta(3, 3));
+  }
+
+  public void testEvictedDelta() {
+    ViewResultHistory history = new ViewResultHistory(2);
+    ViewDefinition viewDefinition = viewDefinition();
+    for (int cycle = 1; cycle <= 4; cycle++) {
+      history.add(viewDefinition, fullResult(cycle, new double[3]), deltaResult(cycle, 0));
+    }
+    // The deltas since version 1 are no longer retained so every value is included
+    assertEquals(targets(0, 1, 2), getTargets(history.getDelta(1, 4)));
+    assertEquals(targets(0), getTargets(history.getDelta(2, 4)));
+    assertNull(history.getDelta(0, 1));
+  }
+
+  public void testEvictedDeltaToEarlierVersion() {
+    ViewResultHistory history = new ViewResultHistory(2);
+    ViewDefinition viewDefinition = viewDefinition();
+    ViewComputationResultModel thirdResult = null;
+    for (int cycle = 1; cycle <= 4; cycle++) {
+      ViewComputationResultModel fullResult = fullResult(cycle, new double[3]);
+      if (cycle == 3) {
+        thirdResult = fullResult;
+      }
+      history.add(viewDefinition, fullResult, deltaResult(cycle, 0));
+    }
+    // The full result of version 3 is not retained so the caller must supply it
+    assertNull(history.getDelta(1, 3));
+    assertEquals(targets(0, 1, 2), getTargets(history.getDelta(1, 3, thirdResult)));
+    assertEquals(targets(0), getTargets(history.getDelta(2, 3)));
+  }
+
+  public void testMergingListenerUsesHistory() {
+    ViewResultHistory history = new ViewResultHistory(8);
+    ViewDefinition viewDefinition = viewDefinition();
+    CountingListener underlying = new CountingListener();
+    RateLimitingMergingViewProcessListener listener = new RateLimitingMergingViewProcessListener(underlying, mock(EngineResourceManagerImpl.class), new Timer("Custom timer"));
+    listener.setResultHistory(history);
+    listener.setPaused(true);
+    for (int cycle = 1; cycle <= 3; cycle++) {
+      ViewComputationResultModel fullResult = fullResult(cycle, new double[3]);
+      ViewDeltaResultModel deltaResult = deltaResult(cycle, cycle - 1);
+      history.add(viewDefinition, fullResult, deltaResult);
+      listener.cycleCompleted(fullResult, deltaResult);
+    }
+    listener.drain();
+    assertEquals(1, underlying._results);
+    assertEquals(UniqueId.of("Cycle", "3"), underlying._lastFullResult.getViewCycleId());
+    assertSame(history.getDelta(0, 3), underlying._lastDeltaResult);
+    assertEquals(targets(0, 1, 2), getTargets(underlying._lastDeltaResult));
+    listener.terminate();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Tests of performance. "enabled = false" for the standard testing.
+   * <p>
+   * Simulates hundreds of rate-limited clients attached to the same view process, releasing merged results every few
+   * cycles, with each merging deltas privately and with each taking them from the shared history.
+   */
+  @Test(enabled = false)
+  public void sharedHistoryBenchmark() {
+    final int numClients = 300;
+    final int numValues = 10000;
+    final int numChanges = 1000;
+    final int numCycles = 100;
+    final int drainPeriod = 10;
+    final ViewDefinition viewDefinition = viewDefinition();
+    final List<ViewComputationResultModel> fullResults = new ArrayList<ViewComputationResultModel>(numCycles);
+    final List<ViewDeltaResultModel> deltaResults = new ArrayList<ViewDeltaResultModel>(numCycles);
+    for (int cycle = 1; cycle <= numCycles; cycle++) {
+      fullResults.add(fullResult(cycle, new double[numValues]));
+      final int[] changed = new int[numChanges];
+      for (int i = 0; i < numChanges; i++) {
+        changed[i] = (cycle * 7919 + i * 31) % numValues;
+      }
+      deltaResults.add(deltaResult(cycle, changed));
+    }
+    final Timer timer = new Timer("Benchmark timer");
+    for (int run = 0; run < 3; run++) {
+      for (boolean shared : new boolean[] {false, true }) {
+        final ViewResultHistory history = new ViewResultHistory(32);
+        final List<RateLimitingMergingViewProcessListener> listeners = new ArrayList<RateLimitingMergingViewProcessListener>(numClients);
+        for (int i = 0; i < numClients; i++) {
+          final RateLimitingMergingViewProcessListener listener = new RateLimitingMergingViewProcessListener(new CountingListener(), mock(EngineResourceManagerImpl.class), timer);
+          if (shared) {
+            listener.setResultHistory(history);
+          }
+          listener.setPaused(true);
+          listeners.add(listener);
+        }
+        final long start = System.nanoTime();
+        for (int cycle = 0; cycle < numCycles; cycle++) {
+          history.add(viewDefinition, fullResults.get(cycle), deltaResults.get(cycle));
+          for (RateLimitingMergingViewProcessListener listener : listeners) {
+            listener.cycleCompleted(fullResults.get(cycle), deltaResults.get(cycle));
+          }
+          if (cycle % drainPeriod == drainPeriod - 1) {
+            for (RateLimitingMergingViewProcessListener listener : listeners) {
+              listener.drain();
+            }
+          }
+        }
+        final long time = System.nanoTime() - start;
+        s_logger.info("{} clients, {} cycles, {}: {}ms", new Object[] {numClients, numCycles, shared ? "shared history" : "private merging", time / 1000000 });
+        for (RateLimitingMergingViewProcessListener listener : listeners) {
+          listener.terminate();
+        }
+      }
+    }
+    timer.cancel();
+  }
+
+  //-------------------------------------------------------------------------
+  private static class CountingListener implements ViewResultListener {
+
+    private int _results;
+    private ViewComputationResultModel _lastFullResult;
+    private ViewDeltaResultModel _lastDeltaResult;
+
+    @Override
+    public UserPrincipal getUser() {
+      return UserPrincipal.getTestUser();
+    }
+
+    @Override
+    public void viewDefinitionCompiled(CompiledViewDefinition compiledViewDefinition, boolean hasMarketDataPermissions) {
+    }
+
+    @Override
+    public void viewDefinitionCompilationFailed(Instant valuationTime, Exception exception) {
+    }
+
+    @Override
+    public void cycleCompleted(ViewComputationResultModel fullResult, ViewDeltaResultModel deltaResult) {
+      _results++;
+      _lastFullResult = fullResult;
+      _lastDeltaResult = deltaResult;
+    }
+
+    @Override
+    public void cycleExecutionFailed(ViewCycleExecutionOptions executionOptions, Exception exception) {
+    }
+
+    @Override
+    public void processCompleted() {
+    }
+
+    @Override
+    public void processTerminated(boolean executionInterrupted) {
+    }
+
+  }
+
+}
@@ -8,6 +8,8 @@ package com.opengamma.engine.view.cache;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertFalse;
 
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -107,7 +109,7 @@ public class BerkeleyDBValueSpecificationIdentifierSourceTest {
     }
     
     for (int j = 0; j < 5; j++) {
-      Map<Long, ValueSpecification> valueSpecs = idSource.getValueSpecifications(seenIdentifiers);
+      Map<Long, ValueSpecification> valueSpecs = idSource.getValueSpecifications(new LongArrayList(seenIdentifiers));
       assertEquals (seenIdentifiers.size (), valueSpecs.size ());
       for (int i = 0; i < 10; i++) {
         String valueName = "value-" + i;
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.wire.EncodedFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * Tests the bulk operations of the cache and measures the memory they allocate.
+ */
+@Test
+public class CacheAllocationTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(CacheAllocationTest.class);
+
+  private static List<ValueSpecification> createValueSpecifications(final int count) {
+    final List<ValueSpecification> specifications = new ArrayList<ValueSpecification>(count);
+    final ComputationTargetSpecification target = new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", "Target"));
+    for (int i = 0; i < count; i++) {
+      specifications.add(new ValueSpecification(new ValueRequirement(Integer.toString(i), target), "mockFunctionId"));
+    }
+    return specifications;
+  }
+
+  private static DefaultViewComputationCache createCache(final IdentifierMap identifierMap) {
+    return new DefaultViewComputationCache(identifierMap, new DefaultFudgeMessageStore(new InMemoryBinaryDataStore(), FudgeContext.GLOBAL_DEFAULT),
+        new DefaultFudgeMessageStore(new InMemoryBinaryDataStore(), FudgeContext.GLOBAL_DEFAULT), FudgeContext.GLOBAL_DEFAULT);
+  }
+
+  public void testBulkPutGet() {
+    final List<ValueSpecification> specifications = createValueSpecifications(1000);
+    final DefaultViewComputationCache cache = createCache(new InMemoryIdentifierMap());
+    final List<ComputedValue> values = new ArrayList<ComputedValue>(specifications.size());
+    for (ValueSpecification specification : specifications) {
+      values.add(new ComputedValue(specification, specification.getValueName()));
+    }
+    final CacheSelectHint hint = CacheSelectHint.privateValues(specifications.subList(0, 500));
+    cache.putValues(values, hint);
+    Collection<Pair<ValueSpecification, Object>> result = cache.getValues(specifications, hint);
+    assertEquals(specifications.size(), result.size());
+    for (Pair<ValueSpecification, Object> value : result) {
+      assertEquals(value.getFirst().getValueName(), value.getSecond());
+    }
+    result = cache.getValues(specifications);
+    assertEquals(specifications.size(), result.size());
+    for (Pair<ValueSpecification, Object> value : result) {
+      assertEquals(value.getFirst().getValueName(), value.getSecond());
+    }
+  }
+
+  public void testIdentifierRoundTrip() {
+    final List<ValueSpecification> specifications = createValueSpecifications(10000);
+    final IdentifierMap identifierMap = new InMemoryIdentifierMap();
+    final Object2LongMap<ValueSpecification> identifiers = identifierMap.getIdentifiers(specifications);
+    assertEquals(specifications.size(), identifiers.size());
+    final Long2ObjectMap<ValueSpecification> inverse = identifierMap.getValueSpecifications(identifiers.values());
+    assertEquals(specifications.size(), inverse.size());
+    for (ValueSpecification specification : specifications) {
+      assertEquals(specification, inverse.get(identifiers.getLong(specification)));
+      assertEquals(specification, identifierMap.getValueSpecification(identifierMap.getIdentifier(specification)));
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  private static long getAllocatedBytes() {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  /**
+   * The bulk operations as they were before the primitive collections, building the boxed maps and
+   * lists and passing each value to the store individually.
+   */
+  private static int boxedCycle(final IdentifierMap identifierMap, final FudgeMessageStore store, final List<ValueSpecification> specifications, final FudgeMsg value) {
+    final Map<ValueSpecification, Long> identifiers = new HashMap<ValueSpecification, Long>();
+    for (ValueSpecification specification : specifications) {
+      identifiers.put(specification, identifierMap.getIdentifier(specification));
+    }
+    final Map<Long, FudgeMsg> data = new HashMap<Long, FudgeMsg>();
+    for (ValueSpecification specification : specifications) {
+      data.put(identifiers.get(specification), value);
+    }
+    for (Map.Entry<Long, FudgeMsg> entry : data.entrySet()) {
+      store.put(entry.getKey(), entry.getValue());
+    }
+    final List<Long> identifierValues = new ArrayList<Long>(identifiers.values());
+    final Map<Long, FudgeMsg> result = new HashMap<Long, FudgeMsg>();
+    for (Long identifier : identifierValues) {
+      final FudgeMsg message = store.get(identifier);
+      if (message != null) {
+        result.put(identifier, message);
+      }
+    }
+    return result.size();
+  }
+
+  private static int primitiveCycle(final IdentifierMap identifierMap, final FudgeMessageStore store, final List<ValueSpecification> specifications, final FudgeMsg value) {
+    final Object2LongMap<ValueSpecification> identifiers = identifierMap.getIdentifiers(specifications);
+    final Long2ObjectMap<FudgeMsg> data = new Long2ObjectOpenHashMap<FudgeMsg>(specifications.size());
+    for (ValueSpecification specification : specifications) {
+      data.put(identifiers.getLong(specification), value);
+    }
+    store.put(data);
+    return store.get(new LongArrayList(identifiers.values())).size();
+  }
+
+  /**
+   * Tests of performance. "enabled = false" for the standard testing.
+   * <p>
+   * Reports the bytes allocated by one cycle of 100,000 values through the identifier map and message
+   * store using the boxed collections the previous API required, and using the primitive collections.
+   */
+  @Test(enabled = false)
+  public void allocationComparison() {
+    final int numValues = 100000;
+    final int numCycles = 5;
+    if (getAllocatedBytes() < 0) {
+      s_logger.warn("Thread allocation counters not available on this JVM");
+      return;
+    }
+    final List<ValueSpecification> specifications = createValueSpecifications(numValues);
+    final IdentifierMap identifierMap = new InMemoryIdentifierMap();
+    // Allocate the identifiers up front so that only the steady state of a cycle is measured
+    identifierMap.getIdentifiers(specifications);
+    final MutableFudgeMsg message = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    message.add("value", 42.0);
+    // Pre-encoded so that the stores don't serialize the message on each put
+    final FudgeMsg value = new EncodedFudgeMsg(FudgeMessageStoreServer.encode(FudgeContext.GLOBAL_DEFAULT, message), FudgeContext.GLOBAL_DEFAULT);
+    for (int i = 0; i < 2; i++) {
+      long boxed = 0;
+      long primitive = 0;
+      for (int cycle = 0; cycle < numCycles; cycle++) {
+        FudgeMessageStore store = new DefaultFudgeMessageStore(new InMemoryBinaryDataStore(), FudgeContext.GLOBAL_DEFAULT);
+        long start = getAllocatedBytes();
+        assertEquals(numValues, boxedCycle(identifierMap, store, specifications, value));
+        boxed += getAllocatedBytes() - start;
+        store = new DefaultFudgeMessageStore(new InMemoryBinaryDataStore(), FudgeContext.GLOBAL_DEFAULT);
+        start = getAllocatedBytes();
+        assertEquals(numValues, primitiveCycle(identifierMap, store, specifications, value));
+        primitive += getAllocatedBytes() - start;
+      }
+      s_logger.info("Boxed collections - {} bytes per {} value cycle", boxed / numCycles, numValues);
+      s_logger.info("Primitive collections - {} bytes per {} value cycle", primitive / numCycles, numValues);
+    }
+  }
+
+}
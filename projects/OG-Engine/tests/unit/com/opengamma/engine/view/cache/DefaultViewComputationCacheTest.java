@@ -6,12 +6,15 @@
 package com.opengamma.engine.view.cache;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.fudgemsg.FudgeContext;
@@ -22,6 +25,7 @@ import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueId;
 import com.opengamma.util.tuple.Pair;
 
 @Test
@@ -218,4 +222,39 @@ public class DefaultViewComputationCacheTest {
     assertPutValues (2, CacheSelectHint.sharedValues(Arrays.asList (valueSpecFoo)), CacheSelectHint.privateValues(Arrays.asList(valueSpecFoo)));
   }
 
+  @Test
+  public void testShareValues() {
+    final ValueSpecification valueSpecFoo = new ValueSpecification(new ValueRequirement("foo", new ComputationTargetSpecification(null)), "mockFunctionId");
+    final ValueSpecification valueSpecBar = new ValueSpecification(new ValueRequirement("bar", new ComputationTargetSpecification(null)), "mockFunctionId");
+    final ValueSpecification valueSpecMissing = new ValueSpecification(new ValueRequirement("missing", new ComputationTargetSpecification(null)), "mockFunctionId");
+    _viewComputationCache.putSharedValue(new ComputedValue(valueSpecFoo, "Foo"));
+    _viewComputationCache.putPrivateValue(new ComputedValue(valueSpecBar, "Bar"));
+    assertNull(_viewComputationCache.getValue(valueSpecBar, CacheSelectHint.allShared()));
+    assertEquals(1, _viewComputationCache.shareValues(Arrays.asList(valueSpecFoo, valueSpecBar, valueSpecMissing)));
+    assertEquals("Foo", _viewComputationCache.getValue(valueSpecFoo, CacheSelectHint.allShared()));
+    assertEquals("Bar", _viewComputationCache.getValue(valueSpecBar, CacheSelectHint.allShared()));
+    assertNull(_viewComputationCache.getValue(valueSpecMissing));
+  }
+
+  @Test
+  public void testOverlaySharedValues() {
+    final ValueSpecification valueSpecFoo = new ValueSpecification(new ValueRequirement("foo", new ComputationTargetSpecification(null)), "mockFunctionId");
+    final ValueSpecification valueSpecBar = new ValueSpecification(new ValueRequirement("bar", new ComputationTargetSpecification(null)), "mockFunctionId");
+    final InMemoryViewComputationCacheSource source = new InMemoryViewComputationCacheSource(FudgeContext.GLOBAL_DEFAULT);
+    final DefaultViewComputationCache previous = source.getCache(UniqueId.of("Test", "1"), "Default");
+    previous.putSharedValue(new ComputedValue(valueSpecFoo, "Foo"));
+    previous.putSharedValue(new ComputedValue(valueSpecBar, "Bar"));
+    final DefaultViewComputationCache cache = source.getCache(UniqueId.of("Test", "2"), "Default");
+    assertTrue(cache.overlaySharedValues(previous, Collections.singleton(valueSpecBar)));
+    assertEquals("Foo", cache.getValue(valueSpecFoo));
+    assertNull(cache.getValue(valueSpecBar));
+    cache.putSharedValue(new ComputedValue(valueSpecBar, "Bar2"));
+    assertEquals("Bar2", cache.getValue(valueSpecBar));
+    // The previous cycle's values remain readable once its caches are released
+    source.releaseCaches(UniqueId.of("Test", "1"));
+    assertEquals("Foo", cache.getValue(valueSpecFoo));
+    // Caches which do not share a source cannot be layered
+    assertFalse(cache.overlaySharedValues(_viewComputationCache, Collections.<ValueSpecification>emptySet()));
+  }
+
 }
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.id.UniqueId;
+import com.opengamma.util.monitor.OperationTimer;
+import com.sleepycat.je.Environment;
+
+/**
+ * Tests the {@link OffHeapBinaryDataStore} and compares its performance with the other stores.
+ */
+@Test
+public class OffHeapBinaryDataStoreTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(OffHeapBinaryDataStoreTest.class);
+
+  private static byte[] randomBytes(final Random random, final int length) {
+    final byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  public void testPutGet() {
+    final OffHeapBinaryDataStoreFactory factory = new OffHeapBinaryDataStoreFactory(1024, 4, null);
+    final BinaryDataStore store = factory.createDataStore(null);
+    final Random random = new Random(1L);
+    final Map<Long, byte[]> expected = new HashMap<Long, byte[]>();
+    for (long i = 0; i < 100; i++) {
+      final byte[] data = randomBytes(random, 1 + random.nextInt(200));
+      expected.put(i, data);
+      store.put(i, data);
+    }
+    assertTrue(factory.getAllocatedSlabCount() > 1);
+    for (Map.Entry<Long, byte[]> entry : expected.entrySet()) {
+      assertTrue(Arrays.equals(entry.getValue(), store.get(entry.getKey())));
+    }
+    assertNull(store.get(100L));
+    final Map<Long, byte[]> bulk = store.get(new LongArrayList(expected.keySet()));
+    assertEquals(expected.size(), bulk.size());
+  }
+
+  public void testOversizeValue() {
+    final OffHeapBinaryDataStoreFactory factory = new OffHeapBinaryDataStoreFactory(64, 4, null);
+    final BinaryDataStore store = factory.createDataStore(null);
+    final byte[] data = randomBytes(new Random(2L), 1000);
+    store.put(1L, data);
+    store.put(2L, new byte[0]);
+    assertTrue(Arrays.equals(data, store.get(1L)));
+    assertEquals(0, store.get(2L).length);
+  }
+
+  public void testOverwrite() {
+    final BinaryDataStore store = new OffHeapBinaryDataStoreFactory(64, 4, null).createDataStore(null);
+    store.put(1L, new byte[] {1, 2, 3 });
+    store.put(1L, new byte[] {4, 5 });
+    assertTrue(Arrays.equals(new byte[] {4, 5 }, store.get(1L)));
+  }
+
+  public void testBulkPut() {
+    final BinaryDataStore store = new OffHeapBinaryDataStoreFactory(64, 4, null).createDataStore(null);
+    final Long2ObjectMap<byte[]> data = new Long2ObjectOpenHashMap<byte[]>();
+    data.put(1L, new byte[] {1, 2, 3 });
+    data.put(2L, new byte[100]);
+    store.put(data);
+    assertTrue(Arrays.equals(new byte[] {1, 2, 3 }, store.get(1L)));
+    assertEquals(100, store.get(2L).length);
+    assertNull(store.get(3L));
+    assertEquals(2, store.get(new LongArrayList(new long[] {1L, 2L, 3L })).size());
+  }
+
+  public void testDeleteReleasesSlabs() {
+    final OffHeapBinaryDataStoreFactory factory = new OffHeapBinaryDataStoreFactory(128, 2, null);
+    final BinaryDataStore store = factory.createDataStore(null);
+    for (long i = 0; i < 20; i++) {
+      store.put(i, new byte[60]);
+    }
+    assertEquals(10, factory.getAllocatedSlabCount());
+    store.delete();
+    assertNull(store.get(0L));
+    assertEquals(2, factory.getFreeSlabCount());
+    assertEquals(2, factory.getAllocatedSlabCount());
+    final BinaryDataStore next = factory.createDataStore(null);
+    next.put(0L, new byte[60]);
+    assertEquals(1, factory.getFreeSlabCount());
+    assertEquals(2, factory.getAllocatedSlabCount());
+  }
+
+  public void testDeleteWhileReading() throws InterruptedException {
+    final OffHeapBinaryDataStoreFactory factory = new OffHeapBinaryDataStoreFactory(256, 16, null);
+    final byte[] original = new byte[100];
+    Arrays.fill(original, (byte) 1);
+    final byte[] overwrite = new byte[100];
+    Arrays.fill(overwrite, (byte) 2);
+    for (int run = 0; run < 100; run++) {
+      final BinaryDataStore store = factory.createDataStore(null);
+      for (long i = 0; i < 20; i++) {
+        store.put(i, original);
+      }
+      final AtomicReference<String> failure = new AtomicReference<String>();
+      final Thread reader = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 10000; j++) {
+            final byte[] data = store.get(j % 20);
+            if ((data != null) && !Arrays.equals(original, data)) {
+              failure.set("Read " + Arrays.toString(data));
+              return;
+            }
+          }
+        }
+      };
+      reader.start();
+      store.delete();
+      // The released slabs are reused and overwritten by another store while the reader may still be running
+      final BinaryDataStore next = factory.createDataStore(null);
+      for (long i = 0; i < 20; i++) {
+        next.put(i, overwrite);
+      }
+      reader.join();
+      next.delete();
+      assertNull(failure.get());
+    }
+  }
+
+  public void testMemoryMapped() throws IOException {
+    final File dir = new File(System.getProperty("java.io.tmpdir"), "OffHeapBinaryDataStore-" + System.currentTimeMillis());
+    try {
+      final OffHeapBinaryDataStoreFactory factory = new OffHeapBinaryDataStoreFactory(1024, 4, dir);
+      final BinaryDataStore store = factory.createDataStore(null);
+      final byte[] data = randomBytes(new Random(3L), 500);
+      store.put(42L, data);
+      assertTrue(Arrays.equals(data, store.get(42L)));
+      store.delete();
+    } finally {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+
+  private void putGetCycles(final BinaryDataStoreFactory factory, final String name) {
+    final int numEntries = 100000;
+    final int numCycles = 5;
+    final Random random = new Random(4L);
+    final byte[][] values = new byte[1000][];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = randomBytes(random, 50 + random.nextInt(950));
+    }
+    final OperationTimer timer = new OperationTimer(s_logger, "{} - {} cycles of {} entries", name, numCycles, numEntries);
+    for (int cycle = 0; cycle < numCycles; cycle++) {
+      final BinaryDataStore store = factory.createDataStore(new ViewComputationCacheKey(UniqueId.of("Test", name + cycle), "Default"));
+      for (int i = 0; i < numEntries; i++) {
+        store.put(i, values[i % values.length]);
+      }
+      for (int i = 0; i < numEntries; i++) {
+        store.get(i);
+      }
+      store.delete();
+    }
+    final long numMillis = timer.finished();
+    s_logger.info("{} - {} ms/cycle", name, (double) numMillis / (double) numCycles);
+  }
+
+  /**
+   * Tests of performance. "enabled = false" for the standard testing.
+   */
+  @Test(enabled = false)
+  public void performanceComparison() throws IOException {
+    final File dir = new File(System.getProperty("java.io.tmpdir"), "BinaryDataStoreComparison-" + System.currentTimeMillis());
+    dir.mkdirs();
+    try {
+      final Environment dbEnvironment = BerkeleyDBViewComputationCacheSource.constructDatabaseEnvironment(new File(dir, "bdb"), false);
+      try {
+        for (int i = 0; i < 2; i++) {
+          putGetCycles(new InMemoryBinaryDataStoreFactory(), "InMemory");
+          putGetCycles(new OffHeapBinaryDataStoreFactory(), "OffHeap direct");
+          putGetCycles(new OffHeapBinaryDataStoreFactory(OffHeapBinaryDataStoreFactory.DEFAULT_SLAB_SIZE, OffHeapBinaryDataStoreFactory.DEFAULT_MAX_FREE_SLABS,
+              new File(dir, "mapped")), "OffHeap mapped");
+          putGetCycles(new BerkeleyDBBinaryDataStoreFactory(dbEnvironment), "BerkeleyDB");
+        }
+      } finally {
+        dbEnvironment.close();
+      }
+    } finally {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+
+}
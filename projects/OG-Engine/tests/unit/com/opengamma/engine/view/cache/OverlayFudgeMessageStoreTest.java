@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link OverlayFudgeMessageStore} class.
+ */
+@Test
+public class OverlayFudgeMessageStoreTest {
+
+  private final Object _lock = new Object();
+  private final AtomicInteger _deleted = new AtomicInteger();
+
+  private OverlayFudgeMessageStore createStore() {
+    return new OverlayFudgeMessageStore(new DefaultFudgeMessageStore(new InMemoryBinaryDataStore() {
+      @Override
+      public void delete() {
+        _deleted.incrementAndGet();
+        super.delete();
+      }
+    }, FudgeContext.GLOBAL_DEFAULT), _lock);
+  }
+
+  private static FudgeMsg message(final int value) {
+    final MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add("value", value);
+    return msg;
+  }
+
+  private static Integer value(final FudgeMsg msg) {
+    return (msg != null) ? msg.getInt("value") : null;
+  }
+
+  private static LongArrayList identifiers(final long... identifiers) {
+    return new LongArrayList(identifiers);
+  }
+
+  public void testReadThrough() {
+    final OverlayFudgeMessageStore previous = createStore();
+    previous.put(1L, message(1));
+    previous.put(2L, message(1));
+    final OverlayFudgeMessageStore store = createStore();
+    assertTrue(store.setParent(previous, identifiers(2L, 3L)));
+    store.put(3L, message(2));
+    assertEquals((Integer) 1, value(store.get(1L)));
+    assertNull(store.get(2L));
+    assertEquals((Integer) 2, value(store.get(3L)));
+    final Long2ObjectMap<FudgeMsg> values = store.get(identifiers(1L, 2L, 3L, 4L));
+    assertEquals(2, values.size());
+    assertEquals((Integer) 1, value(values.get(1L)));
+    assertEquals((Integer) 2, value(values.get(3L)));
+  }
+
+  public void testReleaseKeepsParent() {
+    final OverlayFudgeMessageStore previous = createStore();
+    previous.put(1L, message(1));
+    final OverlayFudgeMessageStore store = createStore();
+    assertTrue(store.setParent(previous, identifiers()));
+    previous.delete();
+    assertEquals(0, _deleted.get());
+    assertEquals((Integer) 1, value(store.get(1L)));
+    store.delete();
+    assertEquals(2, _deleted.get());
+    assertFalse(createStore().setParent(store, identifiers()));
+  }
+
+  public void testMergeReleasedLayers() {
+    final OverlayFudgeMessageStore root = createStore();
+    root.put(1L, message(1));
+    root.put(2L, message(1));
+    root.put(3L, message(1));
+    final OverlayFudgeMessageStore first = createStore();
+    assertTrue(first.setParent(root, identifiers(2L, 3L)));
+    // No value is written for 3, as if its node failed
+    first.put(2L, message(2));
+    final OverlayFudgeMessageStore second = createStore();
+    assertTrue(second.setParent(first, identifiers(1L)));
+    second.put(1L, message(3));
+    root.delete();
+    first.delete();
+    // The first layer is merged into the root but its store is kept until the second layer is released
+    assertEquals(0, _deleted.get());
+    final OverlayFudgeMessageStore third = createStore();
+    assertTrue(third.setParent(second, identifiers()));
+    second.delete();
+    // Merging the second layer releases the store of the first
+    assertEquals(1, _deleted.get());
+    assertEquals((Integer) 3, value(third.get(1L)));
+    assertEquals((Integer) 2, value(third.get(2L)));
+    assertNull(third.get(3L));
+    final Long2ObjectMap<FudgeMsg> values = third.get(identifiers(1L, 2L, 3L));
+    assertEquals(2, values.size());
+    assertEquals((Integer) 3, value(values.get(1L)));
+    assertEquals((Integer) 2, value(values.get(2L)));
+    third.delete();
+    assertEquals(4, _deleted.get());
+  }
+
+}
@@ -6,6 +6,8 @@
 package com.opengamma.engine.view.cache;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -153,4 +155,36 @@ public class ReleaseCacheMessageTest {
     delayedEquals(2, privateClientStore._cachesDestroyed);
   }
 
+  @Test
+  public void testPutAfterRelease() {
+    final ReportingBinaryDataStoreFactory privateServerStore = new ReportingBinaryDataStoreFactory("server private");
+    final ReportingBinaryDataStoreFactory sharedStore = new ReportingBinaryDataStoreFactory("server shared");
+    final DefaultViewComputationCacheSource cacheSource = new DefaultViewComputationCacheSource(
+        new InMemoryIdentifierMap(), s_fudgeContext, new DefaultFudgeMessageStoreFactory(privateServerStore,
+            s_fudgeContext), new DefaultFudgeMessageStoreFactory(sharedStore, s_fudgeContext));
+    final UniqueId viewCycleId = UniqueId.of("Test", "ViewCycle", "1");
+    final ViewComputationCacheKey key = new ViewComputationCacheKey(viewCycleId, "Config 1");
+    putStuffIntoCache(cacheSource.getCache(viewCycleId, "Config 1"));
+    cacheSource.releaseCaches(viewCycleId);
+    assertEquals(1, sharedStore._cachesDestroyed.size());
+    assertNull(cacheSource.getUnreleasedCache(key));
+    assertEquals(1, sharedStore._cachesCreated.size());
+    final ViewComputationCacheServer server = new ViewComputationCacheServer(cacheSource);
+    final DirectFudgeConnection conduit = new DirectFudgeConnection(cacheSource.getFudgeContext());
+    conduit.connectEnd1(server);
+    final RemoteViewComputationCacheSource remoteSource = new RemoteViewComputationCacheSource(new RemoteCacheClient(
+        conduit.getEnd2()), new DefaultFudgeMessageStoreFactory(new ReportingBinaryDataStoreFactory("client private"), s_fudgeContext), EHCacheUtils
+        .createCacheManager());
+    s_logger.info("Writing to released cache from remote client");
+    putStuffIntoCache(remoteSource.getCache(viewCycleId, "Config 1"));
+    for (int i = 0; i < 5; i++) {
+      assertEquals(1, sharedStore._cachesCreated.size());
+      pause();
+    }
+    assertNull(cacheSource.findCache(key));
+    // Caches for other cycles are still created on demand
+    assertNotNull(cacheSource.getUnreleasedCache(new ViewComputationCacheKey(UniqueId.of("Test", "ViewCycle", "2"), "Config 1")));
+    assertEquals(2, sharedStore._cachesCreated.size());
+  }
+
 }
@@ -11,6 +11,10 @@ import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -236,14 +240,14 @@ public class RemoteCacheRequestResponseTest {
     for (int i = 32; i < 64; i++) {
       inputValue2.add(i, Integer.toString(i));
     }
-    final Map<Long, FudgeMsg> inputMap = new HashMap<Long, FudgeMsg>();
+    final Long2ObjectMap<FudgeMsg> inputMap = new Long2ObjectOpenHashMap<FudgeMsg>();
     identifier1++;
     long identifier2 = identifier1 + 1;
     inputMap.put(identifier1, inputValue1);
     inputMap.put(identifier2, inputValue2);
     dataStore.put(inputMap);
 
-    final Map<Long, FudgeMsg> outputMap = dataStore.get(Arrays.asList(identifier1, identifier2));
+    final Map<Long, FudgeMsg> outputMap = dataStore.get(LongArrayList.wrap(new long[] {identifier1, identifier2 }));
     assertEquals(2, outputMap.size());
     assertEquals(inputValue1.getAllFields(), outputMap.get(identifier1).getAllFields());
     assertEquals(inputValue2.getAllFields(), outputMap.get(identifier2).getAllFields());
@@ -275,4 +279,30 @@ public class RemoteCacheRequestResponseTest {
     assertNull(outputValue);
   }
 
+  @Test(timeOut = 10000l)
+  public void singleThreadPipelinedPutLoad() throws InterruptedException {
+    InMemoryViewComputationCacheSource cache = new InMemoryViewComputationCacheSource(s_fudgeContext);
+    ViewComputationCacheServer server = new ViewComputationCacheServer(cache);
+    DirectFudgeConnection conduit = new DirectFudgeConnection(cache.getFudgeContext());
+    conduit.connectEnd2(server);
+    RemoteCacheClient client = new RemoteCacheClient(conduit.getEnd1());
+    // Small batch size so that the bulk operations are split over several concurrent requests
+    FudgeMessageStore dataStore = new RemoteFudgeMessageStore(client, new ViewComputationCacheKey(UniqueId.of("Test", "ViewCycle1"), "Config1"), 7);
+    final Long2ObjectMap<FudgeMsg> inputMap = new Long2ObjectOpenHashMap<FudgeMsg>();
+    for (long identifier = 1; identifier <= 100; identifier++) {
+      final MutableFudgeMsg inputValue = s_fudgeContext.newMessage();
+      inputValue.add("identifier", Long.toString(identifier));
+      inputMap.put(identifier, inputValue);
+    }
+    dataStore.put(inputMap);
+    final LongArrayList identifiers = new LongArrayList(inputMap.keySet());
+    identifiers.add(101L);
+    final Map<Long, FudgeMsg> outputMap = dataStore.get(identifiers);
+    assertEquals(inputMap.size(), outputMap.size());
+    for (Map.Entry<Long, FudgeMsg> input : inputMap.entrySet()) {
+      assertEquals(input.getValue().getAllFields(), outputMap.get(input.getKey()).getAllFields());
+    }
+    assertNull(dataStore.get(101L));
+  }
+
 }
@@ -7,13 +7,22 @@ package com.opengamma.engine.view.calc;
 
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.time.Instant;
 
@@ -31,6 +40,7 @@ import com.opengamma.engine.value.ValuePropertyNames;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.cache.CacheSelectHint;
 import com.opengamma.engine.view.calc.stats.DiscardingGraphStatisticsGathererProvider;
+import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
 import com.opengamma.engine.view.calcnode.CalculationJob;
 import com.opengamma.engine.view.calcnode.CalculationJobSpecification;
 import com.opengamma.engine.view.calcnode.JobResultReceiver;
@@ -114,13 +124,22 @@ public class MultipleNodeExecutorTest {
   }
 
   private MultipleNodeExecutor createExecutor(final int minimum, final int maximum, final int concurrency) {
-    return new MultipleNodeExecutor(null, minimum, maximum, 0, Integer.MAX_VALUE, concurrency, new FunctionCosts(), new ExecutionPlanCache(EHCacheUtils.createCacheManager(), 0)) {
+    return createExecutor(minimum, maximum, concurrency, new FunctionCosts(), new ExecutionPlanCache(EHCacheUtils.createCacheManager(), 0));
+  }
+
+  private MultipleNodeExecutor createExecutor(final int minimum, final int maximum, final int concurrency, final FunctionCosts functionCosts, final ExecutionPlanCache cache) {
+    return new MultipleNodeExecutor(null, minimum, maximum, 0, Integer.MAX_VALUE, concurrency, functionCosts, cache) {
 
       @Override
       protected long getFunctionInitId() {
         return 0;
       }
 
+      @Override
+      protected UniqueId getViewProcessId() {
+        return UniqueId.of("Test", "ViewProcess");
+      }
+
       @Override
       protected CalculationJobSpecification createJobSpecification(final DependencyGraph graph) {
         return new CalculationJobSpecification(UniqueId.of("Test", "ViewProcess"), graph.getCalculationConfigurationName(), Instant.now(), JobIdSource.getId());
@@ -524,4 +543,193 @@ public class MultipleNodeExecutorTest {
     assertEquals(7, mask);
   }
 
+  /**
+   * Critical path of each fragment is its own cost plus the longest path through the fragments that consume its results.
+   */
+  public void testCriticalPathCost() {
+    final MultipleNodeExecutor executor = createExecutor(1, 1, 0);
+    final RootGraphFragment root = executor.createExecutionPlan(_testGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    final Set<GraphFragment> fragments = new HashSet<GraphFragment>();
+    collectFragments(root, fragments);
+    final GraphFragment n0 = findFragment(fragments, _testNode[0]);
+    final GraphFragment n1 = findFragment(fragments, _testNode[1]);
+    final GraphFragment n2 = findFragment(fragments, _testNode[2]);
+    final GraphFragment n3 = findFragment(fragments, _testNode[3]);
+    final GraphFragment n4 = findFragment(fragments, _testNode[4]);
+    assertEquals(n4.getJobCost(), n4.getCriticalPathCost());
+    assertEquals(n3.getJobCost() + n4.getCriticalPathCost(), n3.getCriticalPathCost());
+    final long longest = Math.max(n0.getCriticalPathCost(), Math.max(n1.getCriticalPathCost(), n4.getCriticalPathCost()));
+    assertEquals(n2.getJobCost() + longest, n2.getCriticalPathCost());
+    final List<GraphFragment> leaves = new ArrayList<GraphFragment>(Arrays.asList(n3, n2));
+    Collections.sort(leaves, GraphFragment.CRITICAL_PATH_ORDER);
+    assertTrue(leaves.get(0).getCriticalPathCost() >= leaves.get(1).getCriticalPathCost());
+  }
+
+  /**
+   * With critical path scheduling, jobs are dispatched with their critical path cost as the priority.
+   */
+  public void testCriticalPathDispatch() {
+    final List<Long> priorities = new ArrayList<Long>();
+    final MultipleNodeExecutor executor = new MultipleNodeExecutor(null, 1, 1, 0, Integer.MAX_VALUE, 0, new FunctionCosts(), new ExecutionPlanCache(EHCacheUtils.createCacheManager(), 0)) {
+
+      @Override
+      protected long getFunctionInitId() {
+        return 0;
+      }
+
+      @Override
+      protected CalculationJobSpecification createJobSpecification(final DependencyGraph graph) {
+        return new CalculationJobSpecification(UniqueId.of("Test", "ViewProcess"), graph.getCalculationConfigurationName(), Instant.now(), JobIdSource.getId());
+      }
+
+      @Override
+      protected void addJobToViewProcessorQuery(final CalculationJobSpecification jobSpec, final DependencyGraph graph) {
+        // Nothing
+      }
+
+      @Override
+      protected Cancelable dispatchJob(final CalculationJob job, final JobResultReceiver jobResultReceiver, final long priority) {
+        priorities.add(priority);
+        return new Cancelable() {
+          @Override
+          public boolean cancel(final boolean mayInterrupt) {
+            return false;
+          }
+        };
+      }
+
+    };
+    executor.setCriticalPathScheduling(true);
+    final RootGraphFragment root = executor.createExecutionPlan(_testGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    final Set<GraphFragment> fragments = new HashSet<GraphFragment>();
+    collectFragments(root, fragments);
+    findFragment(fragments, _testNode[2]).executeImpl();
+    assertEquals(1, priorities.size());
+    assertEquals(findFragment(fragments, _testNode[2]).getCriticalPathCost(), (long) priorities.get(0));
+  }
+
+  public void testGraphFingerprint() {
+    final DependencyGraph copy = _testGraph.subGraph(_testGraph.getDependencyNodes());
+    assertEquals(_testGraph.getFingerprint(), copy.getFingerprint());
+    copy.removeDependencyNode(_testNode[3]);
+    assertFalse(_testGraph.getFingerprint() == copy.getFingerprint());
+    copy.addDependencyNode(_testNode[3]);
+    assertEquals(_testGraph.getFingerprint(), copy.getFingerprint());
+  }
+
+  private void collectFragments(final GraphFragment fragment, final Set<GraphFragment> fragments) {
+    for (GraphFragment input : fragment.getInputFragments()) {
+      if (fragments.add(input)) {
+        collectFragments(input, fragments);
+      }
+    }
+  }
+
+  private GraphFragment findFragment(final Set<GraphFragment> fragments, final DependencyNode node) {
+    for (GraphFragment fragment : fragments) {
+      if (fragment.getNodes().contains(node)) {
+        return fragment;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Plan for the full graph patched for the graph without N3.
+   */
+  public void testPatchRemovedNode() {
+    final MultipleNodeExecutor executor = createExecutor(1, 1, 0);
+    executor.getCache().setMaximumPatchProportion(1.0);
+    final RootGraphFragment plan = executor.buildExecutionPlan(_testGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    final DependencyGraph subGraph = _testGraph.subGraph(Arrays.asList(_testNode[0], _testNode[1], _testNode[2], _testNode[4]));
+    final RootGraphFragment patched = executor.patchExecutionPlan(plan, subGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    assertNotNull(patched);
+    final Set<GraphFragment> fragments = new HashSet<GraphFragment>();
+    collectFragments(patched, fragments);
+    final Set<DependencyNode> nodes = new HashSet<DependencyNode>();
+    for (GraphFragment fragment : fragments) {
+      nodes.addAll(fragment.getNodes());
+    }
+    assertEquals(subGraph.getDependencyNodes(), nodes);
+    final GraphFragment n4 = findFragment(fragments, _testNode[4]);
+    assertEquals(1, n4.getInputFragments().size());
+    assertTrue(n4.getInputFragments().iterator().next().getNodes().contains(_testNode[2]));
+  }
+
+  /**
+   * Plan for the graph without N0 and N1 patched for the full graph.
+   */
+  public void testPatchAddedNodes() {
+    final MultipleNodeExecutor executor = createExecutor(1, 1, 0);
+    executor.getCache().setMaximumPatchProportion(1.0);
+    final DependencyGraph subGraph = _testGraph.subGraph(Arrays.asList(_testNode[2], _testNode[3], _testNode[4]));
+    final RootGraphFragment plan = executor.buildExecutionPlan(subGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    final RootGraphFragment patched = executor.patchExecutionPlan(plan, _testGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    assertNotNull(patched);
+    final Set<GraphFragment> fragments = new HashSet<GraphFragment>();
+    collectFragments(patched, fragments);
+    for (DependencyNode node : Arrays.asList(_testNode[0], _testNode[1])) {
+      final GraphFragment fragment = findFragment(fragments, node);
+      assertEquals(1, fragment.getNodes().size());
+      assertEquals(1, fragment.getInputFragments().size());
+      assertTrue(fragment.getInputFragments().iterator().next().getNodes().contains(_testNode[2]));
+      assertTrue(fragment.getOutputFragments().contains(patched));
+    }
+    // Nodes that would have to be inserted below the existing plan can't be patched in
+    final RootGraphFragment reversed = executor.buildExecutionPlan(_testGraph.subGraph(Arrays.asList(_testNode[0], _testNode[1], _testNode[4])),
+        DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    assertEquals(null, executor.patchExecutionPlan(reversed, _testGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE));
+  }
+
+  /**
+   * Plan replaced when function costs drift, by the executor which last ran it and without reporting the replacement as processed.
+   */
+  public void testReplanOnCostDrift() {
+    final ExecutionPlanCache cache = new ExecutionPlanCache(EHCacheUtils.createCacheManager(), 10);
+    cache.setCostDriftCheckPeriod(0);
+    cache.setReplanExecutor(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        command.run();
+      }
+    });
+    final FunctionCosts functionCosts = new FunctionCosts();
+    final MultipleNodeExecutor executor1 = createExecutor(1, 1, 0, functionCosts, cache);
+    final MultipleNodeExecutor executor2 = createExecutor(1, 1, 0, functionCosts, cache);
+    final AtomicInteger processed = new AtomicInteger();
+    final AtomicInteger executed = new AtomicInteger();
+    final GraphExecutorStatisticsGatherer statistics = new GraphExecutorStatisticsGatherer() {
+
+      @Override
+      public void graphProcessed(final String calcConfig, final int totalJobs, final double meanJobSize, final double meanJobCycleCost, final double meanJobIOCost) {
+        processed.incrementAndGet();
+      }
+
+      @Override
+      public void graphExecuted(final String calcConfig, final int nodeCount, final long executionTime, final long duration) {
+        executed.incrementAndGet();
+      }
+
+    };
+    final RootGraphFragment plan = executor1.buildExecutionPlan(_testGraph, statistics);
+    assertEquals(1, processed.get());
+    // Costs unchanged - plan is kept
+    cache.cacheExecutionPlan(executor1, _testGraph, plan);
+    assertSame(plan, cache.getCachedExecutionPlan(_testGraph));
+    for (DependencyNode node : _testNode) {
+      functionCosts.functionInvoked(_testGraph.getCalculationConfigurationName(), node.getFunction().getFunction().getFunctionDefinition().getUniqueId(), 100000, 1.0e12, Double.NaN,
+          Double.NaN);
+    }
+    cache.cacheExecutionPlan(executor2, _testGraph, plan);
+    final RootGraphFragment replacement = cache.getCachedExecutionPlan(_testGraph);
+    assertNotSame(plan, replacement);
+    assertSame(executor2, replacement.getContext().getExecutor());
+    assertEquals(1, processed.get());
+    replacement.getStatistics().graphExecuted(_testGraph.getCalculationConfigurationName(), _testGraph.getSize(), 0, 0);
+    assertEquals(1, executed.get());
+    // An older plan does not displace its replacement
+    cache.cacheExecutionPlan(executor1, _testGraph, plan);
+    assertSame(replacement, cache.getCachedExecutionPlan(_testGraph));
+  }
+
 }
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
+import com.opengamma.engine.view.calc.stats.TotallingGraphStatisticsGathererProvider;
+import com.opengamma.engine.view.calcnode.stats.TotallingNodeStatisticsGatherer;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests the job size adjustments made by {@link MultipleNodeExecutorTuner}.
+ */
+@Test
+public class MultipleNodeExecutorTunerTest {
+
+  private static final UniqueId VIEW_PROCESS_ID = UniqueId.of("Test", "ViewProcess");
+
+  private MultipleNodeExecutorFactory _factory;
+  private TotallingGraphStatisticsGathererProvider _graphStatistics;
+  private TotallingNodeStatisticsGatherer _nodeStatistics;
+  private MultipleNodeExecutorTuner _tuner;
+
+  @BeforeMethod
+  public void setUp() {
+    _factory = new MultipleNodeExecutorFactory();
+    _graphStatistics = new TotallingGraphStatisticsGathererProvider();
+    _nodeStatistics = new TotallingNodeStatisticsGatherer();
+    _tuner = new MultipleNodeExecutorTuner(_factory);
+    _tuner.setGraphExecutionStatistics(_graphStatistics);
+    _tuner.setJobDispatchStatistics(_nodeStatistics);
+    _tuner.setLocalNodeIdPrefix("local");
+    _tuner.setLocalTargetOverhead(0.1);
+    _tuner.setRemoteTargetOverhead(0.5);
+  }
+
+  /**
+   * Records one period of activity; a graph executing in the given time with jobs that spent the given proportion of
+   * their time in dispatch overhead.
+   */
+  private void period(final String nodeId, final double overhead, final long graphTime) {
+    final GraphExecutorStatisticsGatherer gatherer = _graphStatistics.getStatisticsGatherer(VIEW_PROCESS_ID);
+    gatherer.graphProcessed("Default", 10, 10d, 1000d, 0d);
+    gatherer.graphExecuted("Default", 100, graphTime, graphTime);
+    for (int i = 0; i < 10; i++) {
+      _nodeStatistics.jobCompleted(nodeId, 10, 1000000L, 1000000L + (long) (1000000d * overhead));
+    }
+    _tuner.run();
+  }
+
+  public void testRemoteOverheadGrowsJobs() {
+    period("remote", 1.0, 1000000L);
+    assertEquals(1.5, _factory.getViewJobSizeScale(VIEW_PROCESS_ID), 1e-9);
+    assertEquals(1.0, _tuner.getRemoteNodeOverhead(), 1e-9);
+  }
+
+  public void testRemoteOverheadWithinTarget() {
+    // The same overhead is acceptable from a remote node but not a local one
+    period("remote", 0.5, 1000000L);
+    assertEquals(1.0, _factory.getViewJobSizeScale(VIEW_PROCESS_ID), 1e-9);
+    period("local", 0.5, 1000000L);
+    assertEquals(1.5, _factory.getViewJobSizeScale(VIEW_PROCESS_ID), 1e-9);
+  }
+
+  public void testLowOverheadShrinksJobs() {
+    period("local", 0.01, 1000000L);
+    assertEquals(1.0 / 1.5, _factory.getViewJobSizeScale(VIEW_PROCESS_ID), 1e-9);
+    assertEquals(0.01, _tuner.getLocalNodeOverhead(), 1e-9);
+  }
+
+  public void testRevertWhenSlower() {
+    period("remote", 1.0, 1000000L);
+    assertEquals(1.5, _factory.getViewJobSizeScale(VIEW_PROCESS_ID), 1e-9);
+    period("remote", 1.0, 3000000L);
+    assertEquals(1.0, _factory.getViewJobSizeScale(VIEW_PROCESS_ID), 1e-9);
+    assertTrue(_tuner.getViewDecisions().get(VIEW_PROCESS_ID).contains("reverting"));
+    // The same adjustment is not made again straight away
+    period("remote", 1.0, 3000000L);
+    assertEquals(1.0, _factory.getViewJobSizeScale(VIEW_PROCESS_ID), 1e-9);
+    assertTrue(_tuner.getViewDecisions().get(VIEW_PROCESS_ID).contains("held"));
+  }
+
+  public void testScaleLimit() {
+    _tuner.setMaximumJobSizeScale(2.0);
+    period("remote", 1.0, 1000000L);
+    period("remote", 1.0, 1000000L);
+    period("remote", 1.0, 1000000L);
+    assertEquals(2.0, _factory.getViewJobSizeScale(VIEW_PROCESS_ID), 1e-9);
+  }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+
+import javax.time.Instant;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.core.change.ChangeEvent;
+import com.opengamma.core.change.ChangeType;
+import com.opengamma.core.position.impl.SimplePortfolio;
+import com.opengamma.core.position.impl.SimplePortfolioNode;
+import com.opengamma.core.position.impl.SimplePosition;
+import com.opengamma.core.security.impl.SimpleSecurity;
+import com.opengamma.id.ExternalId;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests the {@link PortfolioChangeListener} class.
+ */
+@Test
+public class PortfolioChangeListenerTest {
+
+  private static final UniqueId PORTFOLIO = UniqueId.of("Prt", "1", "1");
+  private static final UniqueId NODE = UniqueId.of("Prt", "2", "1");
+  private static final UniqueId POSITION = UniqueId.of("Pos", "1", "1");
+  private static final UniqueId SECURITY = UniqueId.of("Sec", "1", "1");
+
+  private SimplePortfolio createPortfolio() {
+    final SimplePortfolioNode node = new SimplePortfolioNode(NODE, "Node");
+    node.addPosition(new SimplePosition(POSITION, BigDecimal.ONE, new SimpleSecurity(SECURITY, ExternalId.of("Test", "1").toBundle(), "TEST", "Security")));
+    return new SimplePortfolio(PORTFOLIO, "Portfolio", node);
+  }
+
+  private void entityChanged(final PortfolioChangeListener listener, final UniqueId beforeId, final UniqueId afterId) {
+    listener.entityChanged(new ChangeEvent(ChangeType.UPDATED, beforeId, afterId, Instant.now()));
+  }
+
+  public void testUnfilteredBeforeCompilation() {
+    final ViewComputationJob job = mock(ViewComputationJob.class);
+    final PortfolioChangeListener listener = new PortfolioChangeListener(job);
+    entityChanged(listener, UniqueId.of("Pos", "2", "1"), UniqueId.of("Pos", "2", "2"));
+    verify(job).dirtyPortfolio();
+  }
+
+  public void testPortfolioObjects() {
+    final ViewComputationJob job = mock(ViewComputationJob.class);
+    final PortfolioChangeListener listener = new PortfolioChangeListener(job);
+    listener.setPortfolio(createPortfolio());
+    entityChanged(listener, PORTFOLIO, UniqueId.of("Prt", "1", "2"));
+    entityChanged(listener, NODE, UniqueId.of("Prt", "2", "2"));
+    entityChanged(listener, POSITION, UniqueId.of("Pos", "1", "2"));
+    entityChanged(listener, SECURITY, UniqueId.of("Sec", "1", "2"));
+    entityChanged(listener, POSITION, null);
+    verify(job, times(5)).dirtyPortfolio();
+  }
+
+  public void testOtherObjects() {
+    final ViewComputationJob job = mock(ViewComputationJob.class);
+    final PortfolioChangeListener listener = new PortfolioChangeListener(job);
+    listener.setPortfolio(createPortfolio());
+    entityChanged(listener, UniqueId.of("Prt", "3", "1"), UniqueId.of("Prt", "3", "2"));
+    entityChanged(listener, UniqueId.of("Pos", "2", "1"), UniqueId.of("Pos", "2", "2"));
+    entityChanged(listener, UniqueId.of("Sec", "2", "1"), UniqueId.of("Sec", "2", "2"));
+    entityChanged(listener, null, UniqueId.of("Pos", "3", "1"));
+    verify(job, never()).dirtyPortfolio();
+  }
+
+  public void testPortfolioCleared() {
+    final ViewComputationJob job = mock(ViewComputationJob.class);
+    final PortfolioChangeListener listener = new PortfolioChangeListener(job);
+    listener.setPortfolio(createPortfolio());
+    listener.setPortfolio(null);
+    entityChanged(listener, UniqueId.of("Pos", "2", "1"), UniqueId.of("Pos", "2", "2"));
+    verify(job).dirtyPortfolio();
+  }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc.trigger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.id.UniqueId;
+
+/**
+ * Tests {@link MarketDataChangeTrigger}
+ */
+@Test
+public class MarketDataChangeTriggerTest {
+
+  private static final long NANOS_PER_MILLISECOND = 1000000;
+
+  private static ValueRequirement requirement(String name) {
+    return new ValueRequirement("Market_Value", ComputationTargetType.PRIMITIVE, UniqueId.of("Test", name));
+  }
+
+  public void testNoChanges() {
+    MarketDataChangeTrigger trigger = new MarketDataChangeTrigger(2, 100);
+    ViewCycleTriggerResult result = trigger.query(System.nanoTime());
+    assertEquals(ViewCycleEligibility.ELIGIBLE, result.getCycleEligibility());
+  }
+
+  public void testLatencyBudget() {
+    MarketDataChangeTrigger trigger = new MarketDataChangeTrigger(null, 100);
+    assertTrue(trigger.valuesChanged(Collections.singleton(requirement("A"))));
+    long now = System.nanoTime();
+    ViewCycleTriggerResult result = trigger.query(now);
+    assertEquals(ViewCycleEligibility.PREVENT, result.getCycleEligibility());
+    long deadline = result.getNextStateChangeNanos();
+    assertTrue(deadline > now);
+    assertTrue(deadline <= now + 100 * NANOS_PER_MILLISECOND);
+    // Further ticks are coalesced without waking the job
+    assertFalse(trigger.valuesChanged(Arrays.asList(requirement("A"), requirement("B"))));
+    assertEquals(2, trigger.getChangeCount());
+    assertEquals(ViewCycleEligibility.ELIGIBLE, trigger.query(deadline).getCycleEligibility());
+    trigger.cycleTriggered(deadline, ViewCycleType.DELTA);
+    assertEquals(0, trigger.getChangeCount());
+    assertEquals(ViewCycleEligibility.ELIGIBLE, trigger.query(deadline).getCycleEligibility());
+  }
+
+  public void testChangeLimit() {
+    MarketDataChangeTrigger trigger = new MarketDataChangeTrigger(3, 60000);
+    assertTrue(trigger.valuesChanged(Collections.singleton(requirement("A"))));
+    assertFalse(trigger.valuesChanged(Collections.singleton(requirement("A"))));
+    assertFalse(trigger.valuesChanged(Collections.singleton(requirement("B"))));
+    assertEquals(ViewCycleEligibility.PREVENT, trigger.query(System.nanoTime()).getCycleEligibility());
+    assertTrue(trigger.valuesChanged(Collections.singleton(requirement("C"))));
+    assertEquals(ViewCycleEligibility.ELIGIBLE, trigger.query(System.nanoTime()).getCycleEligibility());
+    trigger.cycleTriggered(System.nanoTime(), ViewCycleType.DELTA);
+    assertEquals(0, trigger.getChangeCount());
+    // The next change starts a new latency budget
+    assertTrue(trigger.valuesChanged(Collections.singleton(requirement("A"))));
+    assertEquals(ViewCycleEligibility.PREVENT, trigger.query(System.nanoTime()).getCycleEligibility());
+  }
+
+  public void testForceOverridesBudget() {
+    MarketDataChangeTrigger trigger = new MarketDataChangeTrigger(null, 60000);
+    trigger.valuesChanged(Collections.singleton(requirement("A")));
+    CombinedViewCycleTrigger combined = new CombinedViewCycleTrigger();
+    combined.addTrigger(trigger);
+    FixedTimeTrigger fixed = new FixedTimeTrigger();
+    fixed.set(Long.MIN_VALUE, ViewCycleTriggerResult.forceFull());
+    combined.addTrigger(fixed);
+    assertEquals(ViewCycleEligibility.FORCE, combined.query(System.nanoTime()).getCycleEligibility());
+  }
+
+}
@@ -155,6 +155,41 @@ public class JobDispatcherTest {
     assertNull(node2._callback);
   }
 
+  @Test
+  public void invokePendingInPriorityOrder() {
+    s_logger.info("invokePendingInPriorityOrder");
+    final JobDispatcher jobDispatcher = new JobDispatcher();
+    final long[] priorities = new long[] {1L, 3L, 0L, 2L, 3L };
+    final List<CalculationJob> jobs = new ArrayList<CalculationJob>();
+    for (long priority : priorities) {
+      final CalculationJob job = createTestJob();
+      jobs.add(job);
+      jobDispatcher.dispatchJob(job, new TestJobResultReceiver(), priority);
+    }
+    final List<CalculationJobSpecification> invoked = new ArrayList<CalculationJobSpecification>();
+    jobDispatcher.registerJobInvoker(new AbstractJobInvoker("Test") {
+
+      @Override
+      public boolean invoke(final CalculationJob job, final JobInvocationReceiver receiver) {
+        invoked.add(job.getSpecification());
+        receiver.jobCompleted(createTestJobResult(job.getSpecification(), 0L, getInvokerId()));
+        return true;
+      }
+
+      @Override
+      public boolean notifyWhenAvailable(final JobInvokerRegister callback) {
+        return false;
+      }
+
+    });
+    assertEquals(jobs.size(), invoked.size());
+    assertEquals(jobs.get(1).getSpecification(), invoked.get(0));
+    assertEquals(jobs.get(4).getSpecification(), invoked.get(1));
+    assertEquals(jobs.get(3).getSpecification(), invoked.get(2));
+    assertEquals(jobs.get(0).getSpecification(), invoked.get(3));
+    assertEquals(jobs.get(2).getSpecification(), invoked.get(4));
+  }
+
   @Test
   public void saturateInvokers() {
     s_logger.info("saturateInvokers");
@@ -11,10 +11,20 @@ import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.opengamma.engine.test.TestCalculationNode;
+import com.opengamma.engine.view.cache.CacheSelectHint;
+import com.opengamma.util.monitor.OperationTimer;
 import com.opengamma.util.test.Timeout;
 
 /**
@@ -23,6 +33,7 @@ import com.opengamma.util.test.Timeout;
 @Test
 public class LocalNodeJobInvokerTest {
 
+  private static final Logger s_logger = LoggerFactory.getLogger(LocalNodeJobInvokerTest.class);
   private static final long TIMEOUT = Timeout.standardTimeoutMillis();
 
   private JobInvoker _invoker;
@@ -68,6 +79,95 @@ public class LocalNodeJobInvokerTest {
     assertEquals(job.getSpecification(), jobResult.getSpecification());
   }
 
+  private static Collection<AbstractCalculationNode> createNodes(final int count) {
+    final Collection<AbstractCalculationNode> nodes = new ArrayList<AbstractCalculationNode>(count);
+    for (int i = 0; i < count; i++) {
+      nodes.add(new TestCalculationNode());
+    }
+    return nodes;
+  }
+
+  private static CalculationJob createTailJob(final CalculationJob required) {
+    return new CalculationJob(JobDispatcherTest.createTestJobSpec(), 0L, Collections.singleton(required.getSpecification().getJobId()), JobDispatcherTest.createTestJobItems(),
+        CacheSelectHint.allPrivate());
+  }
+
+  /**
+   * Creates a job with a number of tails, each of which is the head of a chain of jobs.
+   */
+  private static CalculationJob createJobTree(final int width, final int depth) {
+    final CalculationJob root = JobDispatcherTest.createTestJob();
+    for (int i = 0; i < width; i++) {
+      CalculationJob parent = root;
+      for (int j = 0; j < depth; j++) {
+        final CalculationJob tail = createTailJob(parent);
+        parent.addTail(tail);
+        parent = tail;
+      }
+    }
+    return root;
+  }
+
+  private static class CountingReceiver implements JobInvocationReceiver {
+
+    private final CountDownLatch _remaining;
+
+    public CountingReceiver(final int count) {
+      _remaining = new CountDownLatch(count);
+    }
+
+    @Override
+    public void jobCompleted(final CalculationJobResult result) {
+      _remaining.countDown();
+    }
+
+    @Override
+    public void jobFailed(final JobInvoker jobInvoker, final String computeNodeId, final Exception exception) {
+      s_logger.warn("Job failed on {}", computeNodeId);
+    }
+
+    public boolean waitForCompletion(final long timeoutMillis) throws InterruptedException {
+      return _remaining.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+  }
+
+  public void testInvokeWithTails() throws InterruptedException {
+    final LocalNodeJobInvoker invoker = new LocalNodeJobInvoker(createNodes(4));
+    final CountingReceiver receiver = new CountingReceiver(1 + 8 * 3);
+    assertTrue(invoker.invoke(createJobTree(8, 3), receiver));
+    assertTrue(receiver.waitForCompletion(TIMEOUT));
+  }
+
+  /**
+   * Tests of performance. "enabled = false" for the standard testing.
+   * <p>
+   * Measures the throughput of job trees of a few thousand small jobs on at least 32 nodes. The tails of the root
+   * are all released at once so must be stolen by the idle nodes; each then releases a chain of single jobs.
+   */
+  @Test(enabled = false)
+  public void throughput() throws InterruptedException {
+    final int numNodes = Math.max(32, Runtime.getRuntime().availableProcessors());
+    final int width = numNodes * 4;
+    final int depth = 50;
+    final int numCycles = 20;
+    final LocalNodeJobInvoker invoker = new LocalNodeJobInvoker(createNodes(numNodes));
+    for (int i = 0; i < 2; i++) {
+      final OperationTimer timer = new OperationTimer(s_logger, "{} cycles of {} jobs on {} nodes", numCycles, 1 + width * depth, numNodes);
+      for (int cycle = 0; cycle < numCycles; cycle++) {
+        final CountingReceiver receiver = new CountingReceiver(1 + width * depth);
+        final CalculationJob job = createJobTree(width, depth);
+        // The previous cycle's workers may still be releasing their nodes
+        while (!invoker.invoke(job, receiver)) {
+          Thread.yield();
+        }
+        assertTrue(receiver.waitForCompletion(TIMEOUT * 10));
+      }
+      final long numMillis = timer.finished();
+      s_logger.info("{} jobs/s", (double) numCycles * (1 + width * depth) * 1000d / (double) numMillis);
+    }
+  }
+
   class Register implements JobInvokerRegister {
     @Override
     public void registerJobInvoker(final JobInvoker invoker) {
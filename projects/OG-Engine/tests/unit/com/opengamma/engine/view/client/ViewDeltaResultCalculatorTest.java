@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.client;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueProperties;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
+import com.opengamma.engine.view.InMemoryViewComputationResultModel;
+import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewCalculationResultModel;
+import com.opengamma.engine.view.ViewComputationResultLayout;
+import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.engine.view.ViewDeltaResultModel;
+import com.opengamma.id.UniqueId;
+import com.opengamma.livedata.UserPrincipal;
+
+/**
+ * Tests {@link ViewDeltaResultCalculator}
+ */
+@Test
+public class ViewDeltaResultCalculatorTest {
+
+  private static final String CALC_CONFIG = "Default";
+
+  private static final ValueSpecification SPEC_A = spec("A", "Value");
+  private static final ValueSpecification SPEC_B = spec("B", "Value");
+  private static final ValueSpecification SPEC_C = spec("C", "Value");
+  private static final ValueSpecification SPEC_D = spec("D", "Value");
+
+  private static ValueSpecification spec(String target, String valueName) {
+    return new ValueSpecification(valueName, new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueId.of("Test", target)),
+        ValueProperties.with("Function", "Test").get());
+  }
+
+  private static ViewDefinition viewDefinition() {
+    ViewDefinition viewDefinition = new ViewDefinition(UniqueId.of("Test", "View"), "Test View", UserPrincipal.getTestUser());
+    viewDefinition.addViewCalculationConfiguration(new ViewCalculationConfiguration(viewDefinition, CALC_CONFIG));
+    return viewDefinition;
+  }
+
+  private static InMemoryViewComputationResultModel result(String cycleId, ComputedValue... values) {
+    InMemoryViewComputationResultModel result = new InMemoryViewComputationResultModel();
+    result.setViewCycleId(UniqueId.of("Cycle", cycleId));
+    result.setCalculationConfigurationNames(Collections.singleton(CALC_CONFIG));
+    for (ComputedValue value : values) {
+      result.addValue(CALC_CONFIG, value);
+    }
+    return result;
+  }
+
+  private static ColumnarViewComputationResultModel columnarResult(ViewComputationResultLayout layout, String cycleId, ComputedValue... values) {
+    ColumnarViewComputationResultModel result = new ColumnarViewComputationResultModel(layout);
+    result.setViewCycleId(UniqueId.of("Cycle", cycleId));
+    for (ComputedValue value : values) {
+      result.addValue(CALC_CONFIG, value);
+    }
+    return result;
+  }
+
+  private static Set<ComputedValue> getValues(ViewDeltaResultModel deltaModel) {
+    Set<ComputedValue> values = new HashSet<ComputedValue>();
+    ViewCalculationResultModel calcResult = deltaModel.getCalculationResult(CALC_CONFIG);
+    for (ComputationTargetSpecification target : calcResult.getAllTargets()) {
+      values.addAll(calcResult.getAllValues(target));
+    }
+    return values;
+  }
+
+  public void testRecomputedValues() {
+    ViewDefinition viewDefinition = viewDefinition();
+    InMemoryViewComputationResultModel previousResult = result("1", new ComputedValue(SPEC_A, 1.0), new ComputedValue(SPEC_B, 2.0), new ComputedValue(SPEC_C, 3.0));
+    InMemoryViewComputationResultModel result = result("2", new ComputedValue(SPEC_A, 1.0), new ComputedValue(SPEC_B, 5.0), new ComputedValue(SPEC_C, 3.0),
+        new ComputedValue(SPEC_D, 4.0));
+    Set<ComputedValue> expected = new HashSet<ComputedValue>(Arrays.asList(new ComputedValue(SPEC_B, 5.0), new ComputedValue(SPEC_D, 4.0)));
+    assertEquals(expected, getValues(ViewDeltaResultCalculator.computeDeltaModel(viewDefinition, previousResult, result)));
+    // Recomputed values which haven't changed, or which aren't outputs, are not reported
+    Map<String, Collection<ValueSpecification>> recomputed = Collections.<String, Collection<ValueSpecification>>singletonMap(CALC_CONFIG,
+        Arrays.asList(SPEC_A, SPEC_B, SPEC_D, spec("E", "Value")));
+    assertEquals(expected, getValues(ViewDeltaResultCalculator.computeDeltaModel(viewDefinition, previousResult, result, recomputed)));
+  }
+
+  public void testOnlyRecomputedValuesCompared() {
+    ViewDefinition viewDefinition = viewDefinition();
+    InMemoryViewComputationResultModel previousResult = result("1", new ComputedValue(SPEC_A, 1.0), new ComputedValue(SPEC_B, 2.0));
+    InMemoryViewComputationResultModel result = result("2", new ComputedValue(SPEC_A, 6.0), new ComputedValue(SPEC_B, 7.0));
+    Map<String, Collection<ValueSpecification>> recomputed = Collections.<String, Collection<ValueSpecification>>singletonMap(CALC_CONFIG,
+        Collections.singleton(SPEC_B));
+    assertEquals(Collections.singleton(new ComputedValue(SPEC_B, 7.0)),
+        getValues(ViewDeltaResultCalculator.computeDeltaModel(viewDefinition, previousResult, result, recomputed)));
+  }
+
+  public void testNoRecomputedValuesForConfiguration() {
+    ViewDefinition viewDefinition = viewDefinition();
+    InMemoryViewComputationResultModel previousResult = result("1", new ComputedValue(SPEC_A, 1.0), new ComputedValue(SPEC_B, 2.0));
+    InMemoryViewComputationResultModel result = result("2", new ComputedValue(SPEC_A, 6.0), new ComputedValue(SPEC_B, 2.0));
+    Map<String, Collection<ValueSpecification>> recomputed = Collections.emptyMap();
+    assertEquals(Collections.singleton(new ComputedValue(SPEC_A, 6.0)),
+        getValues(ViewDeltaResultCalculator.computeDeltaModel(viewDefinition, previousResult, result, recomputed)));
+  }
+
+  public void testColumnarResults() {
+    ViewDefinition viewDefinition = viewDefinition();
+    Map<String, List<ValueSpecification>> outputs = new HashMap<String, List<ValueSpecification>>();
+    outputs.put(CALC_CONFIG, Arrays.asList(SPEC_A, SPEC_B, SPEC_C, SPEC_D));
+    ViewComputationResultLayout layout = new ViewComputationResultLayout(Collections.singleton(CALC_CONFIG), Collections.<ComputationTargetSpecification>emptyList(), outputs);
+    ColumnarViewComputationResultModel previousResult = columnarResult(layout, "1", new ComputedValue(SPEC_A, 1.0), new ComputedValue(SPEC_B, 2.0),
+        new ComputedValue(SPEC_C, 3.0));
+    ColumnarViewComputationResultModel result = columnarResult(layout, "2", new ComputedValue(SPEC_A, 1.0), new ComputedValue(SPEC_B, 5.0),
+        new ComputedValue(SPEC_C, 6.0), new ComputedValue(SPEC_D, 4.0));
+    Set<ComputedValue> expected = new HashSet<ComputedValue>(Arrays.asList(new ComputedValue(SPEC_B, 5.0), new ComputedValue(SPEC_C, 6.0),
+        new ComputedValue(SPEC_D, 4.0)));
+    assertEquals(expected, getValues(ViewDeltaResultCalculator.computeDeltaModel(viewDefinition, previousResult, result)));
+    // Only the recomputed values which are outputs are compared
+    Map<String, Collection<ValueSpecification>> recomputed = Collections.<String, Collection<ValueSpecification>>singletonMap(CALC_CONFIG,
+        Arrays.asList(SPEC_A, SPEC_B, SPEC_D, spec("E", "Value")));
+    expected.remove(new ComputedValue(SPEC_C, 6.0));
+    assertEquals(expected, getValues(ViewDeltaResultCalculator.computeDeltaModel(viewDefinition, previousResult, result, recomputed)));
+  }
+
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.time.Instant;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.core.position.impl.MockPositionSource;
+import com.opengamma.core.position.impl.SimplePortfolio;
+import com.opengamma.core.position.impl.SimplePortfolioNode;
+import com.opengamma.core.position.impl.SimplePosition;
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.DefaultCachingComputationTargetResolver;
+import com.opengamma.engine.DefaultComputationTargetResolver;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.function.AbstractFunction;
+import com.opengamma.engine.function.CachingFunctionRepositoryCompiler;
+import com.opengamma.engine.function.CompiledFunctionService;
+import com.opengamma.engine.function.FunctionCompilationContext;
+import com.opengamma.engine.function.FunctionExecutionContext;
+import com.opengamma.engine.function.FunctionInputs;
+import com.opengamma.engine.function.InMemoryFunctionRepository;
+import com.opengamma.engine.function.resolver.DefaultFunctionResolver;
+import com.opengamma.engine.marketdata.InMemoryLKVMarketDataProvider;
+import com.opengamma.engine.test.MockFunction;
+import com.opengamma.engine.test.MockSecurity;
+import com.opengamma.engine.test.MockSecuritySource;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.id.ExternalId;
+import com.opengamma.id.ObjectId;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+import com.opengamma.util.ehcache.EHCacheUtils;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * Tests the incremental recompilation of a view definition against a full compilation of the changed portfolio.
+ */
+@Test
+public class IncrementalPortfolioCompilerTest {
+
+  private ExecutorService _executorService;
+  private SimplePortfolioNode _book1;
+  private SimplePortfolioNode _book2;
+  private PositionFunction _positionFunction;
+  private ViewCompilationServices _compilationServices;
+  private ViewDefinition _viewDefinition;
+
+  @BeforeMethod
+  public void setUp() {
+    _executorService = Executors.newSingleThreadExecutor();
+    final MockSecurity secA = new MockSecurity("A");
+    secA.addIdentifier(ExternalId.of("SEC", "A"));
+    final MockSecurity secB = new MockSecurity("B");
+    secB.addIdentifier(ExternalId.of("SEC", "B"));
+    final MockSecuritySource securitySource = new MockSecuritySource();
+    securitySource.addSecurity(secA);
+    securitySource.addSecurity(secB);
+
+    final SimplePortfolioNode root = new SimplePortfolioNode("root");
+    _book1 = new SimplePortfolioNode("book 1");
+    _book2 = new SimplePortfolioNode("book 2");
+    for (int i = 0; i < 3; i++) {
+      _book1.addPosition(new SimplePosition(new BigDecimal(i + 1), ExternalId.of("SEC", (i == 0) ? "A" : "B")));
+      _book2.addPosition(new SimplePosition(new BigDecimal(i + 1), ExternalId.of("SEC", "B")));
+    }
+    root.addChildNode(_book1);
+    root.addChildNode(_book2);
+    final SimplePortfolio portfolio = new SimplePortfolio(UniqueId.of("FOO", "BAR"), "portfolio");
+    portfolio.setRootNode(root);
+    final MockPositionSource positionSource = new MockPositionSource();
+    positionSource.addPortfolio(portfolio);
+
+    _positionFunction = new PositionFunction();
+    final InMemoryFunctionRepository functionRepo = new InMemoryFunctionRepository();
+    functionRepo.addFunction(_positionFunction);
+    functionRepo.addFunction(new SumFunction());
+    final FunctionCompilationContext functionCompilationContext = new FunctionCompilationContext();
+    functionCompilationContext.setFunctionInitId(123);
+    functionCompilationContext.setSecuritySource(securitySource);
+    final CompiledFunctionService cfs = new CompiledFunctionService(functionRepo, new CachingFunctionRepositoryCompiler(), functionCompilationContext);
+    cfs.initialize();
+    final DefaultFunctionResolver functionResolver = new DefaultFunctionResolver(cfs);
+    final DefaultCachingComputationTargetResolver computationTargetResolver = new DefaultCachingComputationTargetResolver(new DefaultComputationTargetResolver(securitySource,
+        positionSource), EHCacheUtils.createCacheManager());
+    _compilationServices = new ViewCompilationServices(new InMemoryLKVMarketDataProvider(), functionResolver, functionCompilationContext, computationTargetResolver,
+        _executorService, securitySource, positionSource);
+
+    _viewDefinition = new ViewDefinition(UniqueId.of("foo", "bar"), "My View", ObjectId.of("FOO", "BAR"), "kirk");
+    final ViewCalculationConfiguration calcConfig = new ViewCalculationConfiguration(_viewDefinition, "Config1");
+    calcConfig.addPortfolioRequirementName("A", "OUTPUT");
+    calcConfig.addPortfolioRequirementName("B", "OUTPUT");
+    _viewDefinition.addViewCalculationConfiguration(calcConfig);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    _executorService.shutdown();
+  }
+
+  private CompiledViewDefinitionWithGraphsImpl compile() {
+    return ViewDefinitionCompiler.compile(_viewDefinition, _compilationServices, Instant.now(), VersionCorrection.LATEST);
+  }
+
+  private CompiledViewDefinitionWithGraphsImpl recompile(final CompiledViewDefinitionWithGraphsImpl previous) {
+    _positionFunction.getAppliedTargets().clear();
+    return ViewDefinitionCompiler.recompile(previous, _compilationServices, Instant.now(), VersionCorrection.LATEST);
+  }
+
+  public void testUnchanged() {
+    final CompiledViewDefinitionWithGraphsImpl previous = compile();
+    assertSame(previous, recompile(previous));
+    assertTrue(_positionFunction.getAppliedTargets().isEmpty());
+  }
+
+  public void testChangePosition() {
+    final CompiledViewDefinitionWithGraphsImpl previous = compile();
+    final Set<DependencyNode> previousNodes = new HashSet<DependencyNode>(previous.getDependencyGraph("Config1").getDependencyNodes());
+    final Position position = _book1.getPositions().get(1);
+    final SimplePosition changed = new SimplePosition(position.getUniqueId(), new BigDecimal(10), ExternalId.of("SEC", "B"));
+    changed.setParentNodeId(_book1.getUniqueId());
+    _book1.removePosition(position);
+    _book1.addPosition(changed);
+    final CompiledViewDefinitionWithGraphsImpl recompiled = recompile(previous);
+    assertNotSame(previous, recompiled);
+    // The unchanged positions are not resolved again
+    assertEquals(Collections.singleton(new ComputationTargetSpecification(changed)), _positionFunction.getAppliedTargets());
+    assertSameGraphs(compile(), recompiled);
+    // The previous compilation is not modified
+    assertEquals(previousNodes, previous.getDependencyGraph("Config1").getDependencyNodes());
+  }
+
+  public void testAddPosition() {
+    final CompiledViewDefinitionWithGraphsImpl previous = compile();
+    final SimplePosition added = new SimplePosition(UniqueId.of("Mock", "added"), new BigDecimal(5), ExternalId.of("SEC", "A"));
+    added.setParentNodeId(_book2.getUniqueId());
+    _book2.addPosition(added);
+    final CompiledViewDefinitionWithGraphsImpl recompiled = recompile(previous);
+    // A security type new to the book changes the requirements of all of its positions
+    final Set<ComputationTargetSpecification> expected = new HashSet<ComputationTargetSpecification>();
+    for (Position position : _book2.getPositions()) {
+      expected.add(new ComputationTargetSpecification(position));
+    }
+    assertEquals(expected, _positionFunction.getAppliedTargets());
+    assertSameGraphs(compile(), recompiled);
+  }
+
+  public void testRemovePosition() {
+    final CompiledViewDefinitionWithGraphsImpl previous = compile();
+    _book2.removePosition(_book2.getPositions().get(0));
+    final CompiledViewDefinitionWithGraphsImpl recompiled = recompile(previous);
+    assertTrue(_positionFunction.getAppliedTargets().isEmpty());
+    assertSameGraphs(compile(), recompiled);
+    assertEquals(8, recompiled.getComputationTargets().size());
+  }
+
+  /**
+   * A specific requirement on a portfolio target would not be requested again by the incremental compilation, so the
+   * view definition is compiled in full.
+   */
+  public void testFallbackToFullCompilation() {
+    final Position position = _book1.getPositions().get(0);
+    _viewDefinition.getCalculationConfiguration("Config1").addSpecificRequirement(new ValueRequirement("OUTPUT", new ComputationTargetSpecification(position)));
+    final CompiledViewDefinitionWithGraphsImpl previous = compile();
+    _book2.removePosition(_book2.getPositions().get(0));
+    final CompiledViewDefinitionWithGraphsImpl recompiled = recompile(previous);
+    // Every remaining position is resolved again
+    assertEquals(5, _positionFunction.getAppliedTargets().size());
+    assertSameGraphs(compile(), recompiled);
+  }
+
+  private static void assertSameGraphs(final CompiledViewDefinitionWithGraphsImpl expected, final CompiledViewDefinitionWithGraphsImpl actual) {
+    assertEquals(expected.getPortfolio().getRootNode().size(), actual.getPortfolio().getRootNode().size());
+    assertEquals(expected.getComputationTargets(), actual.getComputationTargets());
+    final DependencyGraph expectedGraph = expected.getDependencyGraph("Config1");
+    final DependencyGraph actualGraph = actual.getDependencyGraph("Config1");
+    assertEquals(expectedGraph.getTerminalOutputSpecifications(), actualGraph.getTerminalOutputSpecifications());
+    assertEquals(expectedGraph.getOutputSpecifications(), actualGraph.getOutputSpecifications());
+    assertEquals(getNodeKeys(expectedGraph), getNodeKeys(actualGraph));
+    // Every input is connected to the node producing it
+    for (DependencyNode node : actualGraph.getDependencyNodes()) {
+      for (ValueSpecification input : node.getInputValues()) {
+        final DependencyNode producer = actualGraph.getNodeProducing(input);
+        assertTrue(node.getInputNodes().contains(producer));
+        assertTrue(producer.getDependentNodes().contains(node));
+      }
+    }
+  }
+
+  private static Set<Pair<ComputationTargetSpecification, String>> getNodeKeys(final DependencyGraph graph) {
+    final Set<Pair<ComputationTargetSpecification, String>> keys = new HashSet<Pair<ComputationTargetSpecification, String>>();
+    for (DependencyNode node : graph.getDependencyNodes()) {
+      keys.add(Pair.of(node.getComputationTarget().toSpecification(), node.getFunction().getFunction().getFunctionDefinition().getUniqueId()));
+    }
+    return keys;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Produces the mock output of a position, recording the positions it is applied to.
+   */
+  private static final class PositionFunction extends AbstractFunction.NonCompiledInvoker {
+
+    private final Set<ComputationTargetSpecification> _appliedTargets = Collections.synchronizedSet(new HashSet<ComputationTargetSpecification>());
+
+    private PositionFunction() {
+      setUniqueId("Position");
+    }
+
+    public Set<ComputationTargetSpecification> getAppliedTargets() {
+      return _appliedTargets;
+    }
+
+    @Override
+    public boolean canApplyTo(FunctionCompilationContext context, ComputationTarget target) {
+      return target.getType() == ComputationTargetType.POSITION;
+    }
+
+    @Override
+    public Set<ValueRequirement> getRequirements(FunctionCompilationContext context, ComputationTarget target, ValueRequirement desiredValue) {
+      _appliedTargets.add(target.toSpecification());
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<ValueSpecification> getResults(FunctionCompilationContext context, ComputationTarget target) {
+      return Collections.singleton(new ValueSpecification(MockFunction.getOutputRequirement(target), getUniqueId()));
+    }
+
+    @Override
+    public String getShortName() {
+      return getUniqueId();
+    }
+
+    @Override
+    public ComputationTargetType getTargetType() {
+      return ComputationTargetType.POSITION;
+    }
+
+    @Override
+    public Set<ComputedValue> execute(FunctionExecutionContext executionContext, FunctionInputs inputs, ComputationTarget target, Set<ValueRequirement> desiredValues) {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+  /**
+   * Produces the mock output of a node from those of its positions and child nodes.
+   */
+  private static final class SumFunction extends AbstractFunction.NonCompiledInvoker {
+
+    private SumFunction() {
+      setUniqueId("Sum");
+    }
+
+    @Override
+    public boolean canApplyTo(FunctionCompilationContext context, ComputationTarget target) {
+      return target.getType() == ComputationTargetType.PORTFOLIO_NODE;
+    }
+
+    @Override
+    public Set<ValueRequirement> getRequirements(FunctionCompilationContext context, ComputationTarget target, ValueRequirement desiredValue) {
+      final PortfolioNode node = target.getPortfolioNode();
+      final Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
+      for (Position position : node.getPositions()) {
+        requirements.add(MockFunction.getOutputRequirement(new ComputationTarget(ComputationTargetType.POSITION, position)));
+      }
+      for (PortfolioNode child : node.getChildNodes()) {
+        requirements.add(MockFunction.getOutputRequirement(new ComputationTarget(ComputationTargetType.PORTFOLIO_NODE, child)));
+      }
+      return requirements;
+    }
+
+    @Override
+    public Set<ValueSpecification> getResults(FunctionCompilationContext context, ComputationTarget target) {
+      return Collections.singleton(new ValueSpecification(MockFunction.getOutputRequirement(target), getUniqueId()));
+    }
+
+    @Override
+    public String getShortName() {
+      return getUniqueId();
+    }
+
+    @Override
+    public ComputationTargetType getTargetType() {
+      return ComputationTargetType.PORTFOLIO_NODE;
+    }
+
+    @Override
+    public Set<ComputedValue> execute(FunctionExecutionContext executionContext, FunctionInputs inputs, ComputationTarget target, Set<ValueRequirement> desiredValues) {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+}
@@ -11,6 +11,7 @@ import static org.testng.AssertJUnit.assertTrue;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -18,6 +19,8 @@ import java.util.concurrent.Executors;
 
 import javax.time.Instant;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
 import com.opengamma.core.position.impl.MockPositionSource;
@@ -29,15 +32,21 @@ import com.opengamma.engine.ComputationTargetType;
 import com.opengamma.engine.DefaultCachingComputationTargetResolver;
 import com.opengamma.engine.DefaultComputationTargetResolver;
 import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.function.AbstractFunction;
 import com.opengamma.engine.function.CachingFunctionRepositoryCompiler;
 import com.opengamma.engine.function.CompiledFunctionService;
 import com.opengamma.engine.function.FunctionCompilationContext;
+import com.opengamma.engine.function.FunctionExecutionContext;
+import com.opengamma.engine.function.FunctionInputs;
 import com.opengamma.engine.function.InMemoryFunctionRepository;
 import com.opengamma.engine.function.resolver.DefaultFunctionResolver;
 import com.opengamma.engine.marketdata.InMemoryLKVMarketDataProvider;
 import com.opengamma.engine.test.MockFunction;
 import com.opengamma.engine.test.MockSecurity;
 import com.opengamma.engine.test.MockSecuritySource;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.ResultOutputMode;
 import com.opengamma.engine.view.ViewCalculationConfiguration;
 import com.opengamma.engine.view.ViewDefinition;
@@ -50,6 +59,8 @@ import com.opengamma.util.ehcache.EHCacheUtils;
 @Test
 public class ViewDefinitionCompilerTest {
 
+  private static final Logger s_logger = LoggerFactory.getLogger(ViewDefinitionCompilerTest.class);
+
   @Test(expectedExceptions = IllegalArgumentException.class)
   public void testNullDependencyGraphs() {
     new CompiledViewDefinitionWithGraphsImpl(null, null, null, 0);
@@ -305,6 +316,118 @@ public class ViewDefinitionCompilerTest {
     assertTargets(compiledViewDefinition);
   }
 
+  public void testParallelPortfolioCompilation() {
+    // Two sub-trees with more positions than fit in a single partition between them
+    final ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      final CompiledViewDefinitionWithGraphsImpl sequential = compileSyntheticPortfolio(2, 1, 700, false, executorService);
+      final CompiledViewDefinitionWithGraphsImpl concurrent = compileSyntheticPortfolio(2, 1, 700, true, executorService);
+      assertEquals(1405, sequential.getComputationTargets().size());
+      assertEquals(sequential.getComputationTargets(), concurrent.getComputationTargets());
+      for (String calcConfigName : Arrays.asList("Config1", "Config2")) {
+        assertEquals(sequential.getDependencyGraph(calcConfigName).getTerminalOutputSpecifications(),
+            concurrent.getDependencyGraph(calcConfigName).getTerminalOutputSpecifications());
+      }
+      // Every node and position has an output, as security type "A" is held within every node
+      assertEquals(1405, concurrent.getDependencyGraph("Config1").getTerminalOutputSpecifications().size());
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  public void testParallelFlatPortfolioCompilation() {
+    // A single book with more positions than fit in a single partition
+    final ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      final CompiledViewDefinitionWithGraphsImpl sequential = compileSyntheticPortfolio(1, 1, 2500, false, executorService);
+      final CompiledViewDefinitionWithGraphsImpl concurrent = compileSyntheticPortfolio(1, 1, 2500, true, executorService);
+      assertEquals(2503, sequential.getComputationTargets().size());
+      assertEquals(sequential.getComputationTargets(), concurrent.getComputationTargets());
+      for (String calcConfigName : Arrays.asList("Config1", "Config2")) {
+        assertEquals(sequential.getDependencyGraph(calcConfigName).getTerminalOutputSpecifications(),
+            concurrent.getDependencyGraph(calcConfigName).getTerminalOutputSpecifications());
+      }
+      assertEquals(2503, concurrent.getDependencyGraph("Config1").getTerminalOutputSpecifications().size());
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * Tests of performance. "enabled = false" for the standard testing.
+   * <p>
+   * Compiles a synthetic portfolio of 80,000 positions in 8 desks of 10 books with two configurations, traversing the
+   * portfolio sequentially and in parallel.
+   */
+  @Test(enabled = false)
+  public void parallelPortfolioCompilationBenchmark() {
+    final ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      for (int run = 0; run < 3; run++) {
+        for (boolean mode : new boolean[] {false, true }) {
+          final long start = System.nanoTime();
+          compileSyntheticPortfolio(8, 10, 1000, mode, executorService);
+          s_logger.info("{} compilation: {}ms", mode ? "Parallel" : "Sequential", (System.nanoTime() - start) / 1000000);
+        }
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  private CompiledViewDefinitionWithGraphsImpl compileSyntheticPortfolio(final int desks, final int books, final int positions, final boolean parallel,
+      final ExecutorService executorService) {
+    final MockSecurity secA = new MockSecurity("A");
+    secA.addIdentifier(ExternalId.of("SEC", "A"));
+    final MockSecurity secB = new MockSecurity("B");
+    secB.addIdentifier(ExternalId.of("SEC", "B"));
+    final MockSecuritySource securitySource = new MockSecuritySource();
+    securitySource.addSecurity(secA);
+    securitySource.addSecurity(secB);
+
+    final SimplePortfolioNode root = new SimplePortfolioNode("root");
+    for (int i = 0; i < desks; i++) {
+      final SimplePortfolioNode desk = new SimplePortfolioNode("desk " + i);
+      for (int j = 0; j < books; j++) {
+        final SimplePortfolioNode book = new SimplePortfolioNode("book " + j);
+        for (int k = 0; k < positions; k++) {
+          book.addPosition(new SimplePosition(new BigDecimal(k), ExternalId.of("SEC", (k == 0) ? "A" : "B")));
+        }
+        desk.addChildNode(book);
+      }
+      root.addChildNode(desk);
+    }
+    final SimplePortfolio portfolio = new SimplePortfolio(UniqueId.of("FOO", "BAR"), "portfolio");
+    portfolio.setRootNode(root);
+    final MockPositionSource positionSource = new MockPositionSource();
+    positionSource.addPortfolio(portfolio);
+
+    final InMemoryFunctionRepository functionRepo = new InMemoryFunctionRepository();
+    functionRepo.addFunction(new OutputFunction(ComputationTargetType.PORTFOLIO_NODE));
+    functionRepo.addFunction(new OutputFunction(ComputationTargetType.POSITION));
+    final FunctionCompilationContext functionCompilationContext = new FunctionCompilationContext();
+    functionCompilationContext.setFunctionInitId(123);
+    functionCompilationContext.setSecuritySource(securitySource);
+    final CompiledFunctionService cfs = new CompiledFunctionService(functionRepo, new CachingFunctionRepositoryCompiler(), functionCompilationContext);
+    cfs.initialize();
+    final DefaultFunctionResolver functionResolver = new DefaultFunctionResolver(cfs);
+    final DefaultCachingComputationTargetResolver computationTargetResolver = new DefaultCachingComputationTargetResolver(new DefaultComputationTargetResolver(securitySource,
+        positionSource), EHCacheUtils.createCacheManager());
+    final ViewCompilationServices vcs = new ViewCompilationServices(new InMemoryLKVMarketDataProvider(), functionResolver, functionCompilationContext, computationTargetResolver,
+        executorService, securitySource, positionSource);
+    vcs.setParallelCompilation(parallel);
+
+    final ViewDefinition viewDefinition = new ViewDefinition(UniqueId.of("foo", "bar"), "My View", ObjectId.of("FOO", "BAR"), "kirk");
+    final ViewCalculationConfiguration calcConfig1 = new ViewCalculationConfiguration(viewDefinition, "Config1");
+    calcConfig1.addPortfolioRequirementName("A", MockFunction.getOutputRequirement(new ComputationTarget(root)).getValueName());
+    viewDefinition.addViewCalculationConfiguration(calcConfig1);
+    final ViewCalculationConfiguration calcConfig2 = new ViewCalculationConfiguration(viewDefinition, "Config2");
+    calcConfig2.addPortfolioRequirementName("A", MockFunction.getOutputRequirement(new ComputationTarget(root)).getValueName());
+    calcConfig2.addPortfolioRequirementName("B", MockFunction.getOutputRequirement(new ComputationTarget(root)).getValueName());
+    viewDefinition.addViewCalculationConfiguration(calcConfig2);
+    return ViewDefinitionCompiler.compile(viewDefinition, vcs, Instant.now(), VersionCorrection.LATEST);
+  }
+
   private void assertTargets(CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, UniqueId... targets) {
     Set<UniqueId> expectedTargets = new HashSet<UniqueId>(Arrays.asList(targets));
     Set<ComputationTarget> actualTargets = compiledViewDefinition.getComputationTargets();
@@ -314,4 +437,48 @@ public class ViewDefinitionCompilerTest {
     }
   }
 
+  /**
+   * Produces the mock output for any target of a type, without any inputs.
+   */
+  private static final class OutputFunction extends AbstractFunction.NonCompiledInvoker {
+
+    private final ComputationTargetType _targetType;
+
+    private OutputFunction(final ComputationTargetType targetType) {
+      _targetType = targetType;
+      setUniqueId("Output" + targetType);
+    }
+
+    @Override
+    public boolean canApplyTo(FunctionCompilationContext context, ComputationTarget target) {
+      return target.getType() == _targetType;
+    }
+
+    @Override
+    public Set<ValueRequirement> getRequirements(FunctionCompilationContext context, ComputationTarget target, ValueRequirement desiredValue) {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<ValueSpecification> getResults(FunctionCompilationContext context, ComputationTarget target) {
+      return Collections.singleton(new ValueSpecification(MockFunction.getOutputRequirement(target), getUniqueId()));
+    }
+
+    @Override
+    public String getShortName() {
+      return getUniqueId();
+    }
+
+    @Override
+    public ComputationTargetType getTargetType() {
+      return _targetType;
+    }
+
+    @Override
+    public Set<ComputedValue> execute(FunctionExecutionContext executionContext, FunctionInputs inputs, ComputationTarget target, Set<ValueRequirement> desiredValues) {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
 }
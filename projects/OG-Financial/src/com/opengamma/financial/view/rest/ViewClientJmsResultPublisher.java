@@ -12,6 +12,8 @@ import org.fudgemsg.FudgeContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
+import com.opengamma.engine.view.ViewComputationResultLayout;
 import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewDeltaResultModel;
 import com.opengamma.engine.view.client.ViewClient;
@@ -23,6 +25,7 @@ import com.opengamma.engine.view.listener.ProcessCompletedCall;
 import com.opengamma.engine.view.listener.ProcessTerminatedCall;
 import com.opengamma.engine.view.listener.ViewDefinitionCompilationFailedCall;
 import com.opengamma.engine.view.listener.ViewDefinitionCompiledCall;
+import com.opengamma.engine.view.listener.ViewResultLayoutCall;
 import com.opengamma.engine.view.listener.ViewResultListener;
 import com.opengamma.financial.rest.AbstractJmsResultPublisher;
 import com.opengamma.livedata.UserPrincipal;
@@ -35,6 +38,10 @@ public class ViewClientJmsResultPublisher extends AbstractJmsResultPublisher imp
   private static final Logger s_logger = LoggerFactory.getLogger(ViewClientJmsResultPublisher.class);
   
   private final ViewClient _viewClient;
+  /**
+   * The identifier of the result layout last sent to the receiver, null if none.
+   */
+  private String _sentLayoutId;
   
   public ViewClientJmsResultPublisher(ViewClient viewClient, FudgeContext fudgeContext, ConnectionFactory connectionFactory) {
     super(fudgeContext, connectionFactory);
@@ -45,6 +52,9 @@ public class ViewClientJmsResultPublisher extends AbstractJmsResultPublisher imp
   @Override
   protected void startListener() {
     s_logger.debug("Setting listener {} on view client {}'s results", this, _viewClient);
+    synchronized (this) {
+      _sentLayoutId = null;
+    }
     _viewClient.setResultListener(this);
   }
   
@@ -71,7 +81,15 @@ public class ViewClientJmsResultPublisher extends AbstractJmsResultPublisher imp
   }
 
   @Override
-  public void cycleCompleted(ViewComputationResultModel fullResult, ViewDeltaResultModel deltaResult) {
+  public synchronized void cycleCompleted(ViewComputationResultModel fullResult, ViewDeltaResultModel deltaResult) {
+    if (fullResult instanceof ColumnarViewComputationResultModel) {
+      // Send the layout once; the results of each cycle then refer to it
+      ViewComputationResultLayout layout = ((ColumnarViewComputationResultModel) fullResult).getLayout();
+      if (!layout.getId().equals(_sentLayoutId)) {
+        send(new ViewResultLayoutCall(layout));
+        _sentLayoutId = layout.getId();
+      }
+    }
     send(new CycleCompletedCall(fullResult, deltaResult));
   }
 
@@ -0,0 +1,22 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+/**
+ * A normalization rule which can be applied by a {@link CompiledNormalizationRuleSet} without
+ * building intermediate Fudge messages.
+ */
+/* package */interface CompilableNormalizationRule extends NormalizationRule {
+
+  /**
+   * Creates the compiled form of the rule.
+   * 
+   * @param layout resolves the names of the fields used by the rule to ordinals, not null
+   * @return the compiled rule, not null
+   */
+  CompiledNormalizationRule compile(NormalizationFieldBuffer.Layout layout);
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+
+/**
+ * A normalization rule applied to the fields held in a {@link NormalizationFieldBuffer}.
+ */
+/* package */interface CompiledNormalizationRule {
+
+  /**
+   * The rule was applied and the next rule should be applied.
+   */
+  int CONTINUE = 0;
+  /**
+   * The rule rejected the message.
+   */
+  int EXTINGUISH = 1;
+  /**
+   * The rule can't be applied to the buffer, which has not been modified. The original rule
+   * and the rules after it must be applied to a message built from the buffer.
+   */
+  int FALLBACK = 2;
+
+  /**
+   * Applies the rule.
+   * 
+   * @param fields the fields of the message being normalized, not null
+   * @param fieldHistory the history store passed to {@link NormalizationRule#apply}, not null
+   * @return one of {@link #CONTINUE}, {@link #EXTINGUISH} or {@link #FALLBACK}
+   */
+  int apply(NormalizationFieldBuffer fields, FieldHistoryStore fieldHistory);
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * The compiled form of the rules of a {@link NormalizationRuleSet}.
+ * <p>
+ * The rules at the start of the chain which implement {@link CompilableNormalizationRule} are applied
+ * to a {@link NormalizationFieldBuffer}, with the field names they use resolved to ordinals once when
+ * the rule set is compiled. A message is only built once those rules have been applied, and any other
+ * rules are then applied to it as before. A compiled rule which can't handle a message falls back to
+ * applying the original rules from that point in the chain.
+ */
+/* package */final class CompiledNormalizationRuleSet {
+
+  private final NormalizationRule[] _rules;
+  private final CompiledNormalizationRule[] _compiledRules;
+  private final ThreadLocal<NormalizationFieldBuffer> _buffer;
+
+  private CompiledNormalizationRuleSet(final List<NormalizationRule> rules, final List<CompiledNormalizationRule> compiledRules,
+      final NormalizationFieldBuffer.Layout layout) {
+    _rules = rules.toArray(new NormalizationRule[rules.size()]);
+    _compiledRules = compiledRules.toArray(new CompiledNormalizationRule[compiledRules.size()]);
+    _buffer = new ThreadLocal<NormalizationFieldBuffer>() {
+      @Override
+      protected NormalizationFieldBuffer initialValue() {
+        return new NormalizationFieldBuffer(layout);
+      }
+    };
+  }
+
+  /**
+   * Compiles a chain of rules.
+   *
+   * @param rules the rules, not null
+   * @return the compiled rules, or null if the first rule can't be compiled
+   */
+  public static CompiledNormalizationRuleSet compile(final List<NormalizationRule> rules) {
+    final NormalizationFieldBuffer.Layout layout = new NormalizationFieldBuffer.Layout();
+    final List<CompiledNormalizationRule> compiledRules = new ArrayList<CompiledNormalizationRule>();
+    for (NormalizationRule rule : rules) {
+      if (!(rule instanceof CompilableNormalizationRule)) {
+        break;
+      }
+      compiledRules.add(((CompilableNormalizationRule) rule).compile(layout));
+    }
+    if (compiledRules.isEmpty()) {
+      return null;
+    }
+    return new CompiledNormalizationRuleSet(rules, compiledRules, layout);
+  }
+
+  public FudgeMsg getNormalizedMessage(final FudgeMsg msg, final FieldHistoryStore fieldHistory) {
+    final FudgeContext context = OpenGammaFudgeContext.getInstance();
+    final NormalizationFieldBuffer buffer = _buffer.get();
+    MutableFudgeMsg normalizedMsg;
+    int i = 0;
+    if (buffer.load(msg)) {
+      while (i < _compiledRules.length) {
+        final int result = _compiledRules[i].apply(buffer, fieldHistory);
+        if (result == CompiledNormalizationRule.EXTINGUISH) {
+          // One of the rules rejected the message entirely.
+          return null;
+        } else if (result == CompiledNormalizationRule.FALLBACK) {
+          break;
+        }
+        i++;
+      }
+      normalizedMsg = buffer.toMessage(context);
+    } else {
+      normalizedMsg = context.newMessage(msg);
+    }
+    for (; i < _rules.length; i++) {
+      normalizedMsg = _rules[i].apply(normalizedMsg, fieldHistory);
+      if (normalizedMsg == null) {
+        // One of the rules rejected the message entirely.
+        break;
+      }
+    }
+    return normalizedMsg;
+  }
+
+}
@@ -22,7 +22,7 @@ import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
  * <p>
  * If no field is accepted, the message is extinguished. 
  */
-public class FieldFilter implements NormalizationRule {
+public class FieldFilter implements CompilableNormalizationRule {
   
   private final Collection<String> _fieldsToAccept;
   private final FudgeContext _context;
@@ -81,4 +81,15 @@ public class FieldFilter implements NormalizationRule {
     return normalizedMsg;
   }
   
+  @Override
+  public CompiledNormalizationRule compile(NormalizationFieldBuffer.Layout layout) {
+    final int[] fieldsToAccept = layout.getOrdinals(_fieldsToAccept);
+    return new CompiledNormalizationRule() {
+      @Override
+      public int apply(NormalizationFieldBuffer fields, FieldHistoryStore fieldHistory) {
+        return fields.retain(fieldsToAccept) ? CONTINUE : EXTINGUISH;
+      }
+    };
+  }
+  
 }
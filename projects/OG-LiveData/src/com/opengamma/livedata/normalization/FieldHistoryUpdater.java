@@ -18,7 +18,7 @@ import com.opengamma.livedata.server.FieldHistoryStore;
  *
  * @author pietari
  */
-public class FieldHistoryUpdater implements NormalizationRule {
+public class FieldHistoryUpdater implements CompilableNormalizationRule {
 
   @Override
   public MutableFudgeMsg apply(MutableFudgeMsg msg,
@@ -26,5 +26,16 @@ public class FieldHistoryUpdater implements NormalizationRule {
     fieldHistory.liveDataReceived(msg);
     return msg;
   }
+
+  @Override
+  public CompiledNormalizationRule compile(NormalizationFieldBuffer.Layout layout) {
+    return new CompiledNormalizationRule() {
+      @Override
+      public int apply(NormalizationFieldBuffer fields, FieldHistoryStore fieldHistory) {
+        fields.updateHistory(fieldHistory);
+        return CONTINUE;
+      }
+    };
+  }
   
 }
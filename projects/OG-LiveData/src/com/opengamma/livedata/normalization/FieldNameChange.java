@@ -16,7 +16,7 @@ import com.opengamma.util.ArgumentChecker;
  *
  * @author pietari
  */
-public class FieldNameChange implements NormalizationRule {
+public class FieldNameChange implements CompilableNormalizationRule {
   
   private final String _from;
   private final String _to;
@@ -42,5 +42,25 @@ public class FieldNameChange implements NormalizationRule {
     return msg;
     
   }
+  
+  @Override
+  public CompiledNormalizationRule compile(NormalizationFieldBuffer.Layout layout) {
+    final int from = layout.getOrdinal(_from);
+    final int to = layout.getOrdinal(_to);
+    return new CompiledNormalizationRule() {
+      @Override
+      public int apply(NormalizationFieldBuffer fields, FieldHistoryStore fieldHistory) {
+        if (!fields.isPresent(from)) {
+          return CONTINUE;
+        }
+        if (fields.isPresent(to)) {
+          // The message would contain the new name twice
+          return FALLBACK;
+        }
+        fields.rename(from, to);
+        return CONTINUE;
+      }
+    };
+  }
 
 }
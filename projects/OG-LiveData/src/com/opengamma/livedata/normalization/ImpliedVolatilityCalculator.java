@@ -22,7 +22,7 @@ import com.opengamma.livedata.server.FieldHistoryStore;
  *
  * @author pietari
  */
-public class ImpliedVolatilityCalculator implements NormalizationRule {
+public class ImpliedVolatilityCalculator implements CompilableNormalizationRule {
   
   @Override
   public MutableFudgeMsg apply(
@@ -66,4 +66,61 @@ public class ImpliedVolatilityCalculator implements NormalizationRule {
     return msg;
   }
 
+  @Override
+  public CompiledNormalizationRule compile(NormalizationFieldBuffer.Layout layout) {
+    return new Compiled(layout);
+  }
+
+  /**
+   * The compiled form of the rule, which calculates the same value as {@link #apply}.
+   */
+  private static final class Compiled implements CompiledNormalizationRule {
+
+    private final int _best;
+    private final int _mid;
+    private final int _last;
+    private final int _bid;
+    private final int _ask;
+    private final int _impliedVolatility;
+
+    private Compiled(NormalizationFieldBuffer.Layout layout) {
+      _best = layout.getOrdinal(BEST_IMPLIED_VOLATILITY);
+      _mid = layout.getOrdinal(MID_IMPLIED_VOLATILITY);
+      _last = layout.getOrdinal(LAST_IMPLIED_VOLATILITY);
+      _bid = layout.getOrdinal(BID_IMPLIED_VOLATILITY);
+      _ask = layout.getOrdinal(ASK_IMPLIED_VOLATILITY);
+      _impliedVolatility = layout.getOrdinal(IMPLIED_VOLATILITY);
+    }
+
+    @Override
+    public int apply(NormalizationFieldBuffer fields, FieldHistoryStore fieldHistory) {
+      if (fields.isPresent(_impliedVolatility)) {
+        // The message would contain the implied volatility twice
+        return FALLBACK;
+      }
+      if (!fields.isNumeric(_best) || !fields.isNumeric(_mid) || !fields.isNumeric(_last) || !fields.isNumeric(_bid) || !fields.isNumeric(_ask)) {
+        return FALLBACK;
+      }
+      if (fields.isPresent(_best)) {
+        fields.setDouble(_impliedVolatility, fields.getDouble(_best));
+      } else if (fields.isPresent(_mid)) {
+        fields.setDouble(_impliedVolatility, fields.getDouble(_mid));
+      } else if (fields.isPresent(_last)) {
+        fields.setDouble(_impliedVolatility, fields.getDouble(_last));
+      } else if (fields.isPresent(_bid) && fields.isPresent(_ask)) {
+        fields.setDouble(_impliedVolatility, (fields.getDouble(_bid) + fields.getDouble(_ask)) / 2);
+      } else {
+        final Object impliedVolatility = fieldHistory.getLastKnownValue(IMPLIED_VOLATILITY);
+        if (impliedVolatility != null) {
+          if (!(impliedVolatility instanceof Number)) {
+            return FALLBACK;
+          }
+          fields.setDouble(_impliedVolatility, ((Number) impliedVolatility).doubleValue());
+        }
+      }
+      return CONTINUE;
+    }
+
+  }
+
 }
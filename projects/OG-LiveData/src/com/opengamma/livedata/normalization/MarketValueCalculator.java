@@ -17,7 +17,7 @@ import com.opengamma.livedata.server.FieldHistoryStore;
 /**
  * Calculates a best estimate of the current value of a security.
  */
-public class MarketValueCalculator implements NormalizationRule {
+public class MarketValueCalculator implements CompilableNormalizationRule {
   
   private static final double TOLERANCE = 0.00001;
   private static final double MAX_ACCEPTABLE_SPREAD_TO_USE_MIDPOINT = 0.05;
@@ -113,4 +113,91 @@ public class MarketValueCalculator implements NormalizationRule {
     return msg;
   }
 
+  @Override
+  public CompiledNormalizationRule compile(NormalizationFieldBuffer.Layout layout) {
+    return new Compiled(layout);
+  }
+
+  /**
+   * The compiled form of the rule, which calculates the same value as {@link #apply}.
+   */
+  private static final class Compiled implements CompiledNormalizationRule {
+
+    private final int _bid;
+    private final int _ask;
+    private final int _last;
+    private final int _marketValue;
+
+    private Compiled(NormalizationFieldBuffer.Layout layout) {
+      _bid = layout.getOrdinal(BID);
+      _ask = layout.getOrdinal(ASK);
+      _last = layout.getOrdinal(LAST);
+      _marketValue = layout.getOrdinal(MarketDataRequirementNames.MARKET_VALUE);
+    }
+
+    private static boolean isNumeric(Object value) {
+      return (value == null) || (value instanceof Number);
+    }
+
+    @Override
+    public int apply(NormalizationFieldBuffer fields, FieldHistoryStore fieldHistory) {
+      if (fields.isPresent(_marketValue)) {
+        // The message would contain the market value twice
+        return FALLBACK;
+      }
+      if (!fields.isNumeric(_bid) || !fields.isNumeric(_ask) || !fields.isNumeric(_last)) {
+        return FALLBACK;
+      }
+      final Object lkvBid = fields.isPresent(_bid) ? null : fieldHistory.getLastKnownValue(BID);
+      final Object lkvAsk = fields.isPresent(_ask) ? null : fieldHistory.getLastKnownValue(ASK);
+      if (!isNumeric(lkvBid) || !isNumeric(lkvAsk)) {
+        return FALLBACK;
+      }
+      
+      // If we have seen bid & ask in the past, use bid & ask midpoint.
+      if ((fields.isPresent(_bid) || (lkvBid != null)) && (fields.isPresent(_ask) || (lkvAsk != null))) {
+        final double bid = fields.isPresent(_bid) ? fields.getDouble(_bid) : ((Number) lkvBid).doubleValue();
+        final double ask = fields.isPresent(_ask) ? fields.getDouble(_ask) : ((Number) lkvAsk).doubleValue();
+        
+        // Too big of a spread for midpoint to be meaningful?
+        if (Math.abs(bid) > TOLERANCE && (Math.abs(ask - bid) / Math.abs(bid) > MAX_ACCEPTABLE_SPREAD_TO_USE_MIDPOINT)) {
+          final Object lkvLast = fieldHistory.getLastKnownValue(LAST);
+          if (!isNumeric(lkvLast)) {
+            return FALLBACK;
+          }
+          if ((lkvLast != null) || fields.isPresent(_last)) {
+            final double last = (lkvLast != null) ? ((Number) lkvLast).doubleValue() : fields.getDouble(_last);
+            if (last < bid) {
+              fields.setDouble(_marketValue, bid);
+            } else if (last > ask) {
+              fields.setDouble(_marketValue, ask);
+            } else {
+              fields.setDouble(_marketValue, last);
+            }
+            return CONTINUE;
+          }
+        }
+        
+        fields.setDouble(_marketValue, (bid + ask) / 2.0);
+        return CONTINUE;
+      }
+      
+      if (fields.isPresent(_last)) {
+        fields.setDouble(_marketValue, fields.getDouble(_last));
+        return CONTINUE;
+      }
+      
+      final Object lastKnownMarketValue = fieldHistory.getLastKnownValue(MarketDataRequirementNames.MARKET_VALUE);
+      if (lastKnownMarketValue == null) {
+        return CONTINUE;
+      }
+      if (!(lastKnownMarketValue instanceof Number)) {
+        return FALLBACK;
+      }
+      fields.setDouble(_marketValue, ((Number) lastKnownMarketValue).doubleValue());
+      return CONTINUE;
+    }
+
+  }
+
 }
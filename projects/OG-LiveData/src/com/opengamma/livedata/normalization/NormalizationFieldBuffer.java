@@ -0,0 +1,301 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.UnmodifiableFudgeField;
+import org.fudgemsg.wire.types.FudgeWireType;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+
+/**
+ * Holds the fields of a message being normalized by a {@link CompiledNormalizationRuleSet}.
+ * <p>
+ * The fields named by the rules are identified by ordinals resolved when the rule set is compiled, and
+ * doubles calculated by the rules are held as primitives. The other fields are passed through unchanged.
+ * The order in which fields are added and removed is tracked so that the message produced is the same
+ * as the one produced by applying the rules to a Fudge message. A buffer is reused for each message, so
+ * must only be used by one thread.
+ */
+/* package */final class NormalizationFieldBuffer {
+
+  /**
+   * Resolves field names to ordinals when a rule set is compiled.
+   */
+  public static final class Layout {
+
+    private final Map<String, Integer> _ordinals = new HashMap<String, Integer>();
+    private final List<String> _names = new ArrayList<String>();
+
+    public int getOrdinal(final String fieldName) {
+      Integer ordinal = _ordinals.get(fieldName);
+      if (ordinal == null) {
+        ordinal = _names.size();
+        _ordinals.put(fieldName, ordinal);
+        _names.add(fieldName);
+      }
+      return ordinal;
+    }
+
+    public int[] getOrdinals(final Iterable<String> fieldNames) {
+      final List<Integer> ordinals = new ArrayList<Integer>();
+      for (String fieldName : fieldNames) {
+        ordinals.add(getOrdinal(fieldName));
+      }
+      final int[] result = new int[ordinals.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = ordinals.get(i);
+      }
+      return result;
+    }
+
+  }
+
+  private static final byte ABSENT = 0;
+  private static final byte FIELD = 1;
+  private static final byte DOUBLE = 2;
+
+  private final Map<String, Integer> _ordinals;
+  private final String[] _names;
+  private final byte[] _state;
+  private final FudgeField[] _fields;
+  private final double[] _doubles;
+  /**
+   * Position in {@link #_order} of the entry for each field present.
+   */
+  private final int[] _position;
+  private final boolean[] _retain;
+  /**
+   * The order of the fields, an ordinal or the one's complement of an index into {@link #_others}.
+   * Entries for fields which have since been removed or added again are skipped.
+   */
+  private int[] _order = new int[16];
+  private int _orderCount;
+  private FudgeField[] _others = new FudgeField[16];
+  private int _otherCount;
+  private boolean _othersRemoved;
+
+  public NormalizationFieldBuffer(final Layout layout) {
+    _ordinals = new HashMap<String, Integer>(layout._ordinals);
+    _names = layout._names.toArray(new String[layout._names.size()]);
+    _state = new byte[_names.length];
+    _fields = new FudgeField[_names.length];
+    _doubles = new double[_names.length];
+    _position = new int[_names.length];
+    _retain = new boolean[_names.length];
+  }
+
+  private void append(final int entry) {
+    if (_orderCount == _order.length) {
+      final int[] order = new int[_orderCount << 1];
+      System.arraycopy(_order, 0, order, 0, _orderCount);
+      _order = order;
+    }
+    if (entry >= 0) {
+      _position[entry] = _orderCount;
+    }
+    _order[_orderCount++] = entry;
+  }
+
+  private void clear() {
+    for (int i = 0; i < _orderCount; i++) {
+      final int entry = _order[i];
+      if (entry >= 0) {
+        _state[entry] = ABSENT;
+        _fields[entry] = null;
+      }
+    }
+    _orderCount = 0;
+    for (int i = 0; i < _otherCount; i++) {
+      _others[i] = null;
+    }
+    _otherCount = 0;
+    _othersRemoved = false;
+  }
+
+  /**
+   * Loads the fields of a message into the buffer.
+   *
+   * @param msg the message
+   * @return false if the message contains a field named by the rules more than once, and can't be held in the buffer
+   */
+  public boolean load(final FudgeMsg msg) {
+    clear();
+    for (FudgeField field : msg) {
+      final String name = field.getName();
+      final Integer ordinal = (name != null) ? _ordinals.get(name) : null;
+      if (ordinal != null) {
+        final int o = ordinal;
+        if (_state[o] != ABSENT) {
+          return false;
+        }
+        _state[o] = FIELD;
+        _fields[o] = field;
+        append(o);
+      } else {
+        if (_otherCount == _others.length) {
+          final FudgeField[] others = new FudgeField[_otherCount << 1];
+          System.arraycopy(_others, 0, others, 0, _otherCount);
+          _others = others;
+        }
+        _others[_otherCount] = field;
+        append(~_otherCount);
+        _otherCount++;
+      }
+    }
+    return true;
+  }
+
+  public boolean isPresent(final int ordinal) {
+    return _state[ordinal] != ABSENT;
+  }
+
+  /**
+   * Tests whether a field is absent or has a numeric value.
+   *
+   * @param ordinal the field ordinal
+   * @return true if {@link #getDouble} can be used if the field is present
+   */
+  public boolean isNumeric(final int ordinal) {
+    return (_state[ordinal] != FIELD) || (_fields[ordinal].getValue() instanceof Number);
+  }
+
+  public double getDouble(final int ordinal) {
+    if (_state[ordinal] == DOUBLE) {
+      return _doubles[ordinal];
+    }
+    return ((Number) _fields[ordinal].getValue()).doubleValue();
+  }
+
+  /**
+   * Removes any existing value of a field and adds a double value at the end of the message.
+   *
+   * @param ordinal the field ordinal
+   * @param value the value
+   */
+  public void setDouble(final int ordinal, final double value) {
+    _state[ordinal] = DOUBLE;
+    _fields[ordinal] = null;
+    _doubles[ordinal] = value;
+    append(ordinal);
+  }
+
+  /**
+   * Moves the value of a field to another field, added at the end of the message. The other field must be absent.
+   *
+   * @param from the ordinal of the field to rename, which must be present
+   * @param to the ordinal of the new field name
+   */
+  public void rename(final int from, final int to) {
+    if (_state[from] == DOUBLE) {
+      _state[to] = DOUBLE;
+      _doubles[to] = _doubles[from];
+    } else {
+      final FudgeField field = _fields[from];
+      _state[to] = FIELD;
+      _fields[to] = UnmodifiableFudgeField.of(field.getType(), field.getValue(), _names[to]);
+    }
+    remove(from);
+    append(to);
+  }
+
+  public void remove(final int ordinal) {
+    _state[ordinal] = ABSENT;
+    _fields[ordinal] = null;
+  }
+
+  /**
+   * Removes all fields except those listed.
+   *
+   * @param ordinals the ordinals of the fields to keep
+   * @return true if any fields remain
+   */
+  public boolean retain(final int[] ordinals) {
+    boolean retained = false;
+    for (int ordinal : ordinals) {
+      if (_state[ordinal] != ABSENT) {
+        _retain[ordinal] = true;
+        retained = true;
+      }
+    }
+    for (int i = 0; i < _orderCount; i++) {
+      final int entry = _order[i];
+      if ((entry >= 0) && !_retain[entry]) {
+        remove(entry);
+      }
+    }
+    for (int ordinal : ordinals) {
+      _retain[ordinal] = false;
+    }
+    _othersRemoved = true;
+    return retained;
+  }
+
+  private boolean isCurrent(final int index) {
+    final int entry = _order[index];
+    if (entry >= 0) {
+      return (_state[entry] != ABSENT) && (_position[entry] == index);
+    } else {
+      return !_othersRemoved;
+    }
+  }
+
+  private FudgeField getField(final int index) {
+    final int entry = _order[index];
+    if (entry < 0) {
+      return _others[~entry];
+    } else if (_state[entry] == DOUBLE) {
+      return UnmodifiableFudgeField.of(FudgeWireType.DOUBLE, _doubles[entry], _names[entry]);
+    } else {
+      return _fields[entry];
+    }
+  }
+
+  /**
+   * Stores the current fields in a history.
+   *
+   * @param fieldHistory the history
+   */
+  public void updateHistory(final FieldHistoryStore fieldHistory) {
+    final List<FudgeField> fields = new ArrayList<FudgeField>(_orderCount);
+    for (int i = 0; i < _orderCount; i++) {
+      if (isCurrent(i)) {
+        fields.add(getField(i));
+      }
+    }
+    fieldHistory.liveDataReceived(fields);
+  }
+
+  /**
+   * Creates a message containing the current fields.
+   *
+   * @param context the Fudge context
+   * @return the message
+   */
+  public MutableFudgeMsg toMessage(final FudgeContext context) {
+    final MutableFudgeMsg msg = context.newMessage();
+    for (int i = 0; i < _orderCount; i++) {
+      if (isCurrent(i)) {
+        final int entry = _order[i];
+        if ((entry >= 0) && (_state[entry] == DOUBLE)) {
+          msg.add(_names[entry], _doubles[entry]);
+        } else {
+          msg.add(getField(i));
+        }
+      }
+    }
+    return msg;
+  }
+
+}
@@ -20,11 +20,15 @@ import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
 
 /**
  * An ordered set of normalization rules.
+ * <p>
+ * By default the rule set is compiled, so that the standard rules are applied to the fields of a message
+ * without building intermediate Fudge messages. The result is the same as applying each rule in turn.
  */
 public class NormalizationRuleSet {
   private final String _id;
   private final String _jmsTopicSuffix;
   private final List<NormalizationRule> _rules;
+  private final CompiledNormalizationRuleSet _compiledRules;
   
   /* Useful for tests */
   public NormalizationRuleSet(String id) {
@@ -39,6 +43,19 @@ public class NormalizationRuleSet {
   public NormalizationRuleSet(String id, 
       String jmsTopicSuffix,
       List<NormalizationRule> rules) {
+    this(id, jmsTopicSuffix, rules, true);
+  }
+  
+  /**
+   * @param id the rule set ID
+   * @param jmsTopicSuffix the JMS topic suffix
+   * @param rules the rules, applied in order
+   * @param compiled whether to compile the rules, false to apply each rule to a Fudge message in turn
+   */
+  public NormalizationRuleSet(String id, 
+      String jmsTopicSuffix,
+      List<NormalizationRule> rules,
+      boolean compiled) {
     ArgumentChecker.notNull(id, "Rule set ID");
     ArgumentChecker.notNull(jmsTopicSuffix, "Jms Topic Suffix");
     ArgumentChecker.notNull(rules, "StandardRules");
@@ -51,6 +68,7 @@ public class NormalizationRuleSet {
     }
     
     _rules = new ArrayList<NormalizationRule>(rules);    
+    _compiledRules = compiled ? CompiledNormalizationRuleSet.compile(_rules) : null;
   }
   
   /**
@@ -66,6 +84,9 @@ public class NormalizationRuleSet {
   public FudgeMsg getNormalizedMessage(
       FudgeMsg msg,
       FieldHistoryStore fieldHistory) {
+    if (_compiledRules != null) {
+      return _compiledRules.getNormalizedMessage(msg, fieldHistory);
+    }
     MutableFudgeMsg normalizedMsg = OpenGammaFudgeContext.getInstance().newMessage(msg);
     for (NormalizationRule rule : _rules) {
       normalizedMsg = rule.apply(normalizedMsg, fieldHistory);
@@ -77,6 +98,15 @@ public class NormalizationRuleSet {
     return normalizedMsg;
   }
   
+  /**
+   * Tests whether the rules are applied in compiled form.
+   * 
+   * @return true if the rules are compiled
+   */
+  public boolean isCompiled() {
+    return _compiledRules != null;
+  }
+  
   /**
    * Gets the ID of this normalization rule set.
    * 
@@ -17,7 +17,7 @@ import com.opengamma.livedata.server.FieldHistoryStore;
 /**
  * Rejects any update that doesn't contain a set of fields.
  */
-public class RequiredFieldFilter implements NormalizationRule {
+public class RequiredFieldFilter implements CompilableNormalizationRule {
 
   /**
    * The field names that must be present.
@@ -69,4 +69,20 @@ public class RequiredFieldFilter implements NormalizationRule {
     return null;
   }
 
+  @Override
+  public CompiledNormalizationRule compile(NormalizationFieldBuffer.Layout layout) {
+    final int[] requiredFields = layout.getOrdinals(getRequiredFieldNames());
+    return new CompiledNormalizationRule() {
+      @Override
+      public int apply(NormalizationFieldBuffer fields, FieldHistoryStore fieldHistory) {
+        for (int requiredField : requiredFields) {
+          if (!fields.isPresent(requiredField)) {
+            return EXTINGUISH;
+          }
+        }
+        return CONTINUE;
+      }
+    };
+  }
+
 }
@@ -15,7 +15,7 @@ import com.opengamma.util.ArgumentChecker;
  *
  * @author pietari
  */
-public class UnitChange implements NormalizationRule {
+public class UnitChange implements CompilableNormalizationRule {
   
   private final String _field;
   private final double _multiplier;
@@ -40,5 +40,23 @@ public class UnitChange implements NormalizationRule {
     return msg;
     
   }
+  
+  @Override
+  public CompiledNormalizationRule compile(NormalizationFieldBuffer.Layout layout) {
+    final int field = layout.getOrdinal(_field);
+    return new CompiledNormalizationRule() {
+      @Override
+      public int apply(NormalizationFieldBuffer fields, FieldHistoryStore fieldHistory) {
+        if (!fields.isPresent(field)) {
+          return CONTINUE;
+        }
+        if (!fields.isNumeric(field)) {
+          return FALLBACK;
+        }
+        fields.setDouble(field, fields.getDouble(field) * _multiplier);
+        return CONTINUE;
+      }
+    };
+  }
 
 }
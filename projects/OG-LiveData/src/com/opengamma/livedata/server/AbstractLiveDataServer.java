@@ -57,6 +57,7 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
       .getLogger(AbstractLiveDataServer.class);
   
   private volatile MarketDataSenderFactory _marketDataSenderFactory = new EmptyMarketDataSenderFactory();
+  private volatile DistributionPipeline _distributionPipeline;
   private final Collection<SubscriptionListener> _subscriptionListeners = new CopyOnWriteArrayList<SubscriptionListener>();
   
   /** Access controlled via _subscriptionLock */
@@ -65,8 +66,8 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   /** _Write_ access controlled via _subscriptionLock */
   private final Map<String, Subscription> _securityUniqueId2Subscription = new ConcurrentHashMap<String, Subscription>();
   
-  /** Access controlled via _subscriptionLock */
-  private final Map<LiveDataSpecification, MarketDataDistributor> _fullyQualifiedSpec2Distributor = new HashMap<LiveDataSpecification, MarketDataDistributor>();
+  /** _Write_ access controlled via _subscriptionLock */
+  private final Map<LiveDataSpecification, MarketDataDistributor> _fullyQualifiedSpec2Distributor = new ConcurrentHashMap<LiveDataSpecification, MarketDataDistributor>();
 
   private final AtomicLong _numMarketDataUpdatesReceived = new AtomicLong(0);
   private final PerformanceCounter _performanceCounter;
@@ -115,6 +116,20 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     _marketDataSenderFactory = marketDataSenderFactory;
   }
 
+  public DistributionPipeline getDistributionPipeline() {
+    return _distributionPipeline;
+  }
+  
+  /**
+   * Sets the pipeline used to normalize and send market data on dedicated threads.
+   * 
+   * @param distributionPipeline the pipeline, null to distribute market data on 
+   * the thread it is received on
+   */
+  public void setDistributionPipeline(DistributionPipeline distributionPipeline) {
+    _distributionPipeline = distributionPipeline;
+  }
+
   public void addSubscriptionListener(SubscriptionListener subscriptionListener) {
     ArgumentChecker.notNull(subscriptionListener, "Subscription Listener");
     _subscriptionListeners.add(subscriptionListener);
@@ -850,12 +865,8 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   }
   
   public boolean isSubscribedTo(LiveDataSpecification fullyQualifiedSpec) {
-    _subscriptionLock.lock();
-    try {
-      return _fullyQualifiedSpec2Distributor.containsKey(fullyQualifiedSpec);
-    } finally {
-      _subscriptionLock.unlock();
-    }
+    //NOTE: don't need lock here, map is safe
+    return _fullyQualifiedSpec2Distributor.containsKey(fullyQualifiedSpec);
   }
 
   public boolean isSubscribedTo(Subscription subscription) {
@@ -876,8 +887,13 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
       s_logger.warn("Got data for invalid security unique ID {}", securityUniqueId);
       return;
     }
-      
-    subscription.liveDataReceived(liveDataFields);
+    
+    DistributionPipeline distributionPipeline = getDistributionPipeline();
+    if (distributionPipeline != null) {
+      distributionPipeline.liveDataReceived(subscription, liveDataFields);
+    } else {
+      subscription.liveDataReceived(liveDataFields);
+    }
   }
 
   public Set<String> getActiveDistributionSpecs() {
@@ -945,25 +961,16 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   
   public Map<LiveDataSpecification, MarketDataDistributor> getMarketDataDistributors(Collection<LiveDataSpecification> fullyQualifiedSpecs) {
     //NOTE: this is not much (if any) faster here, but for subclasses it can be 
-    _subscriptionLock.lock();
-    try {
-      HashMap<LiveDataSpecification, MarketDataDistributor> hashMap = new HashMap<LiveDataSpecification, MarketDataDistributor>();
-      for (LiveDataSpecification liveDataSpecification : fullyQualifiedSpecs) {
-        hashMap.put(liveDataSpecification, _fullyQualifiedSpec2Distributor.get(liveDataSpecification));
-      }
-      return hashMap;
-    } finally {
-      _subscriptionLock.unlock();
+    HashMap<LiveDataSpecification, MarketDataDistributor> hashMap = new HashMap<LiveDataSpecification, MarketDataDistributor>();
+    for (LiveDataSpecification liveDataSpecification : fullyQualifiedSpecs) {
+      hashMap.put(liveDataSpecification, _fullyQualifiedSpec2Distributor.get(liveDataSpecification));
     }
+    return hashMap;
   }
   
   public MarketDataDistributor getMarketDataDistributor(LiveDataSpecification fullyQualifiedSpec) {
-    _subscriptionLock.lock();
-    try {
-      return _fullyQualifiedSpec2Distributor.get(fullyQualifiedSpec);
-    } finally {
-      _subscriptionLock.unlock();
-    }
+    //NOTE: don't need lock here, map is safe
+    return _fullyQualifiedSpec2Distributor.get(fullyQualifiedSpec);
   }
   
   /**
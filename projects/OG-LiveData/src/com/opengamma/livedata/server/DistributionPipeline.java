@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fudgemsg.FudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.Lifecycle;
+
+import com.opengamma.livedata.server.distribution.MarketDataDistributor;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Distributes market data received by a live data server on dedicated threads.
+ * <p>
+ * Ticks are passed from the threads of the underlying market data API through ring buffers to
+ * normalizer threads. Each subscription is always handled by the same normalizer thread, so the
+ * ticks for a subscription are processed in the order they were received. A normalizer thread
+ * normalizes each tick and merges it into the data waiting to be sent by each distributor. A
+ * distributor is passed to the sender thread through another ring buffer when it first has data
+ * waiting, and the sender thread sends the merged data in batches. Fields that change faster than
+ * the field receivers can take them are therefore only sent with their latest values.
+ * <p>
+ * While the pipeline is not running, market data is distributed on the calling thread. Ticks received while the
+ * pipeline is stopping wait for the ticks already passed to it to be distributed, as do those whose buffer is full when
+ * it stops.
+ */
+public class DistributionPipeline implements Lifecycle {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(DistributionPipeline.class);
+
+  /**
+   * The default number of entries in each ring buffer.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+  /**
+   * The maximum number of entries a stage takes from its buffer at once.
+   */
+  private static final int BATCH_SIZE = 256;
+
+  private final RingBuffer[] _normalizerBuffers;
+  private final RingBuffer _senderBuffer;
+  private final AtomicLong _numMessagesSent = new AtomicLong();
+  private final AtomicInteger _publishing = new AtomicInteger();
+  /**
+   * Released by the last producer to finish publishing once the pipeline has stopped running.
+   */
+  private volatile CountDownLatch _published;
+  private volatile boolean _running;
+  private volatile boolean _stopping;
+  private Thread[] _normalizerThreads;
+  private Thread _senderThread;
+
+  public DistributionPipeline() {
+    this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param normalizerThreads the number of threads normalizing ticks
+   * @param bufferSize the number of entries in each ring buffer
+   */
+  public DistributionPipeline(int normalizerThreads, int bufferSize) {
+    ArgumentChecker.isTrue(normalizerThreads > 0, "Number of normalizer threads must be positive");
+    ArgumentChecker.isTrue(bufferSize > 0, "Buffer size must be positive");
+    _normalizerBuffers = new RingBuffer[normalizerThreads];
+    for (int i = 0; i < normalizerThreads; i++) {
+      _normalizerBuffers[i] = new RingBuffer(bufferSize);
+    }
+    _senderBuffer = new RingBuffer(bufferSize);
+  }
+
+  /**
+   * Gets the number of batches of conflated data sent to distributors.
+   *
+   * @return the number sent
+   */
+  public long getNumMessagesSent() {
+    return _numMessagesSent.get();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Passes a tick for a subscription to the pipeline.
+   *
+   * @param subscription the subscription the tick is for, not null
+   * @param liveDataFields unnormalized market data from underlying market data API, not null
+   */
+  public void liveDataReceived(Subscription subscription, FudgeMsg liveDataFields) {
+    if (_running) {
+      // Counted so that stop can wait for the tick to be published before taking the last entries from the buffers
+      _publishing.incrementAndGet();
+      try {
+        if (_running) {
+          final int hash = subscription.hashCode();
+          if (_normalizerBuffers[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % _normalizerBuffers.length].publish(subscription, liveDataFields)) {
+            return;
+          }
+        }
+      } finally {
+        if ((_publishing.decrementAndGet() == 0) && !_running) {
+          final CountDownLatch published = _published;
+          if (published != null) {
+            published.countDown();
+          }
+        }
+      }
+    }
+    if (_stopping) {
+      awaitStop();
+    }
+    subscription.liveDataReceived(liveDataFields);
+  }
+
+  /**
+   * Passes a distributor with newly conflated data to the sender thread. Once the sender thread has stopped, the data is
+   * sent by the calling thread if the buffer is full.
+   *
+   * @param distributor the distributor, not null
+   */
+  /*package*/ void sendLiveData(MarketDataDistributor distributor) {
+    if (!_senderBuffer.publish(distributor, null)) {
+      new Sender().consume(distributor, null);
+    }
+  }
+
+  /**
+   * Returns once any stop in progress, which holds the lock throughout, has completed.
+   */
+  private synchronized void awaitStop() {
+    // Taking the lock is enough
+  }
+
+  //-------------------------------------------------------------------------
+  private final class Normalizer implements Runnable, RingBuffer.Consumer {
+
+    private final RingBuffer _buffer;
+
+    private Normalizer(RingBuffer buffer) {
+      _buffer = buffer;
+    }
+
+    @Override
+    public void consume(Object subscription, Object liveDataFields) {
+      try {
+        ((Subscription) subscription).conflateLiveData((FudgeMsg) liveDataFields, DistributionPipeline.this);
+      } catch (RuntimeException e) {
+        s_logger.error("Distributing " + liveDataFields + " to " + subscription + " failed", e);
+      }
+    }
+
+    @Override
+    public void run() {
+      while (_running || !_buffer.isEmpty()) {
+        if (_buffer.drain(this, BATCH_SIZE) == 0) {
+          _buffer.await();
+        }
+      }
+    }
+
+  }
+
+  private final class Sender implements Runnable, RingBuffer.Consumer {
+
+    @Override
+    public void consume(Object distributor, Object unused) {
+      try {
+        ((MarketDataDistributor) distributor).sendConflatedLiveData();
+        _numMessagesSent.incrementAndGet();
+      } catch (RuntimeException e) {
+        s_logger.error("Sending from " + distributor + " failed", e);
+      }
+    }
+
+    @Override
+    public void run() {
+      while (_running || !_senderBuffer.isEmpty() || isNormalizing()) {
+        if (_senderBuffer.drain(this, BATCH_SIZE) == 0) {
+          _senderBuffer.await();
+        }
+      }
+    }
+
+  }
+
+  private boolean isNormalizing() {
+    for (Thread thread : _normalizerThreads) {
+      if (thread.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public synchronized boolean isRunning() {
+    return _running;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (_running) {
+      return;
+    }
+    for (RingBuffer buffer : _normalizerBuffers) {
+      buffer.open();
+    }
+    _senderBuffer.open();
+    _running = true;
+    _normalizerThreads = new Thread[_normalizerBuffers.length];
+    for (int i = 0; i < _normalizerBuffers.length; i++) {
+      _normalizerThreads[i] = new Thread(new Normalizer(_normalizerBuffers[i]), "DistributionPipeline-Normalizer-" + i);
+      _normalizerThreads[i].setDaemon(true);
+      _normalizerThreads[i].start();
+    }
+    _senderThread = new Thread(new Sender(), "DistributionPipeline-Sender");
+    _senderThread.setDaemon(true);
+    _senderThread.start();
+    s_logger.info("Started {} normalizer threads", _normalizerThreads.length);
+  }
+
+  /**
+   * Stops the pipeline once the ticks already passed to it have been distributed.
+   */
+  @Override
+  public synchronized void stop() {
+    if (!_running) {
+      return;
+    }
+    _stopping = true;
+    try {
+      _published = new CountDownLatch(1);
+      _running = false;
+      // Producers waiting for space give up and distribute their ticks themselves once this has finished
+      for (RingBuffer buffer : _normalizerBuffers) {
+        buffer.close();
+      }
+      try {
+        // Any producer still publishing decrements the count after seeing the pipeline is not running
+        if (_publishing.get() > 0) {
+          _published.await();
+        }
+        for (Thread thread : _normalizerThreads) {
+          thread.join();
+        }
+        _senderBuffer.close();
+        _senderThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        s_logger.warn("Interrupted while waiting for the pipeline to stop");
+        return;
+      }
+      // A consumer may have found its buffer empty just before the last entries were published
+      for (RingBuffer buffer : _normalizerBuffers) {
+        drain(buffer, new Normalizer(buffer));
+      }
+      drain(_senderBuffer, new Sender());
+      s_logger.info("Stopped");
+    } finally {
+      _stopping = false;
+    }
+  }
+
+  private static void drain(final RingBuffer buffer, final RingBuffer.Consumer consumer) {
+    while (!buffer.isEmpty()) {
+      buffer.drain(consumer, BATCH_SIZE);
+    }
+  }
+
+}
@@ -5,6 +5,7 @@
  */
 package com.opengamma.livedata.server;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -46,6 +47,24 @@ public class FieldHistoryStore {
     }
   }
   
+  public synchronized void liveDataReceived(Collection<? extends FudgeField> fields) {
+    for (FudgeField field : fields) {
+      _lastKnownValues.put(field.getName(), UnmodifiableFudgeField.of(field)); //NOTE: duplicates are discarded
+    }
+  }
+  
+  /**
+   * Gets the last known value of a single field, without building a message of all the
+   * last known values.
+   * 
+   * @param fieldName the name of the field
+   * @return the last known value, or null if the field has not been received
+   */
+  public synchronized Object getLastKnownValue(String fieldName) {
+    FudgeField field = _lastKnownValues.get(fieldName);
+    return (field != null) ? field.getValue() : null;
+  }
+  
   public void clear() {
     _lastKnownValues.clear();
   }
@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded buffer passing pairs of objects from any number of producer threads to a single consumer thread without locking.
+ * <p>
+ * A producer claims a sequence number, writes its entry into the slot for that sequence and then publishes the
+ * sequence number to the slot. The consumer reads published slots in sequence order and frees them a batch at a time.
+ * A sequence number is only claimed once its slot is free, so a producer finding the buffer full waits for the consumer
+ * to catch up, or gives up if the buffer has been closed.
+ * <p>
+ * An idle consumer spins briefly and then parks until a producer publishes an entry or the buffer is closed, so it
+ * uses no processor time while there is nothing to consume.
+ */
+/* package */final class RingBuffer {
+
+  /**
+   * Receives the entries taken from the buffer.
+   */
+  public interface Consumer {
+
+    void consume(Object first, Object second);
+
+  }
+
+  /**
+   * How long a producer blocked by a full buffer parks before checking the buffer again.
+   */
+  private static final long PARK_NANOS = 50000L;
+
+  /**
+   * Number of times an idle consumer checks the buffer before parking.
+   */
+  private static final int SPIN_TRIES = 100;
+
+  private final int _mask;
+  private final Object[] _first;
+  private final Object[] _second;
+  private final AtomicLongArray _published;
+  private final AtomicLong _claimed = new AtomicLong();
+  /**
+   * The consumer thread while it is parked, or about to park, waiting for an entry.
+   */
+  private final AtomicReference<Thread> _waiter = new AtomicReference<Thread>();
+  private volatile long _consumed;
+  private volatile boolean _closed;
+
+  /**
+   * @param capacity the minimum number of entries the buffer can hold, rounded up to a power of two
+   */
+  public RingBuffer(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    final int size = Integer.highestOneBit(capacity - 1) << 1;
+    _mask = Math.max(size, 1) - 1;
+    _first = new Object[_mask + 1];
+    _second = new Object[_mask + 1];
+    _published = new AtomicLongArray(_mask + 1);
+    for (int i = 0; i <= _mask; i++) {
+      _published.set(i, -1L);
+    }
+  }
+
+  public int getCapacity() {
+    return _mask + 1;
+  }
+
+  /**
+   * Stops producers waiting for space; {@link #publish} fails rather than wait while the buffer is closed. A parked
+   * consumer is woken so that it can see the buffer has been closed.
+   */
+  public void close() {
+    _closed = true;
+    wakeConsumer();
+  }
+
+  /**
+   * Lets producers wait for space again after {@link #close}.
+   */
+  public void open() {
+    _closed = false;
+  }
+
+  /**
+   * Adds an entry to the buffer, waiting for space if it is full.
+   *
+   * @param first the first object, not null
+   * @param second the second object, may be null
+   * @return true if the entry was added, false if the buffer was full and has been closed
+   */
+  public boolean publish(final Object first, final Object second) {
+    long sequence;
+    while (true) {
+      sequence = _claimed.get();
+      if (sequence - _consumed > _mask) {
+        if (_closed) {
+          return false;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+      } else if (_claimed.compareAndSet(sequence, sequence + 1)) {
+        break;
+      }
+    }
+    final int slot = (int) sequence & _mask;
+    _first[slot] = first;
+    _second[slot] = second;
+    // Not a lazy set, so that the consumer either sees the entry before it parks or is seen to be waiting below
+    _published.set(slot, sequence);
+    if (_waiter.get() != null) {
+      wakeConsumer();
+    }
+    return true;
+  }
+
+  private void wakeConsumer() {
+    final Thread waiter = _waiter.getAndSet(null);
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+  }
+
+  /**
+   * Passes the published entries to a consumer. Must only be called from the consumer thread.
+   *
+   * @param consumer the consumer, not null
+   * @param maxEntries the maximum number of entries to pass before the slots are released
+   * @return the number of entries passed
+   */
+  public int drain(final Consumer consumer, final int maxEntries) {
+    long sequence = _consumed;
+    int count = 0;
+    try {
+      while (count < maxEntries) {
+        final int slot = (int) sequence & _mask;
+        if (_published.get(slot) != sequence) {
+          break;
+        }
+        final Object first = _first[slot];
+        final Object second = _second[slot];
+        _first[slot] = null;
+        _second[slot] = null;
+        sequence++;
+        count++;
+        consumer.consume(first, second);
+      }
+    } finally {
+      _consumed = sequence;
+    }
+    return count;
+  }
+
+  /**
+   * Tests whether an entry has been published but not yet consumed.
+   *
+   * @return true if there is an entry to consume
+   */
+  public boolean isEmpty() {
+    final long sequence = _consumed;
+    return _published.get((int) sequence & _mask) != sequence;
+  }
+
+  /**
+   * Waits for an entry to be published, or for the buffer to be closed. Must only be called from the consumer thread.
+   * May return early, so the caller should check the buffer again.
+   */
+  public void await() {
+    for (int i = 0; i < SPIN_TRIES; i++) {
+      if (!isEmpty() || _closed) {
+        return;
+      }
+      Thread.yield();
+    }
+    final Thread consumer = Thread.currentThread();
+    _waiter.set(consumer);
+    // Checked again after registering, as a producer that published first will not have seen the waiter
+    if (isEmpty() && !_closed) {
+      LockSupport.park(this);
+    }
+    _waiter.compareAndSet(consumer, null);
+  }
+
+}
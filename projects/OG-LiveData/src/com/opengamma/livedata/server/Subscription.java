@@ -184,6 +184,23 @@ public class Subscription {
     }
   }
   
+  /**
+   * Normalizes and conflates market data for each distributor, passing those with
+   * newly pending data to a pipeline for sending.
+   * 
+   * @param liveDataFields Unnormalized market data from underlying market data API.
+   * @param pipeline The pipeline which will send the conflated data.
+   */
+  /*package*/ synchronized void conflateLiveData(FudgeMsg liveDataFields, DistributionPipeline pipeline) {
+    _history.liveDataReceived(liveDataFields);
+    
+    for (MarketDataDistributor distributor : _distributors.values()) { //NOTE: this is only safe because we are synchronized
+      if (distributor.conflateLiveData(liveDataFields)) {
+        pipeline.sendLiveData(distributor);
+      }
+    }
+  }
+  
   public synchronized FieldHistoryStore getLiveDataHistory() {
     return new FieldHistoryStore(_history);
   }
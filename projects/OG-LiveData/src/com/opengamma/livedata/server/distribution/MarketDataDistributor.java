@@ -56,6 +56,12 @@ public class MarketDataDistributor {
    */
   private final FieldHistoryStore _history = new FieldHistoryStore();
   
+  /**
+   * Normalized fields waiting to be sent by {@link #sendConflatedLiveData()}, or null
+   * if there is nothing to send. Successive ticks are merged into this until it is sent.
+   */
+  private FieldHistoryStore _conflatedLiveData;
+  
   /**
    * Stores how many normalized messages have been sent to clients.  
    */
@@ -188,15 +194,7 @@ public class MarketDataDistributor {
           getDistributionSpec().getFullyQualifiedLiveDataSpecification(),
           normalizedMsg);
       
-      s_logger.debug("{}: Sending Live Data update {}", this, data);
-      
-      for (MarketDataSender sender : _marketDataSenders) {
-        try {
-          sender.sendMarketData(data);
-        } catch (RuntimeException e) {
-          s_logger.error(sender + " failed", e);
-        }
-      }
+      send(data);
       
       _numMessagesSent.incrementAndGet();
     
@@ -205,6 +203,72 @@ public class MarketDataDistributor {
     }
   }
   
+  /**
+   * Normalizes market data and merges it with any normalized data not yet sent
+   * to field receivers. The merged data is sent by {@link #sendConflatedLiveData()},
+   * so fields that change faster than they can be sent are only sent with their
+   * latest values.
+   * 
+   * @param liveDataFields Unnormalized market data from underlying market data API.
+   * @return true if there was no data waiting to be sent before this call, and 
+   * {@link #sendConflatedLiveData()} must be called to send it
+   */
+  public synchronized boolean conflateLiveData(FudgeMsg liveDataFields) {
+    FudgeMsg normalizedMsg;
+    try {
+      normalizedMsg = normalize(liveDataFields);
+    } catch (RuntimeException e) {
+      s_logger.error("Normalizing " + liveDataFields + " to " + this + " failed.", e);
+      return false;
+    }
+    
+    if (normalizedMsg == null) {
+      s_logger.debug("{}: Not sending Live Data update (message extinguished).", this);
+      return false;
+    }
+    updateLastKnownValues(normalizedMsg);
+    if (_conflatedLiveData == null) {
+      _conflatedLiveData = new FieldHistoryStore(normalizedMsg);
+      return true;
+    } else {
+      _conflatedLiveData.liveDataReceived(normalizedMsg);
+      return false;
+    }
+  }
+  
+  /**
+   * Sends the market data merged by {@link #conflateLiveData(FudgeMsg)} to field receivers.
+   * <p>
+   * The field receivers are called without holding the lock on this distributor, so must 
+   * only be called from one thread at a time to ensure a well-defined distribution order.  
+   */
+  public void sendConflatedLiveData() {
+    LiveDataValueUpdateBean data;
+    synchronized (this) {
+      if (_conflatedLiveData == null) {
+        return;
+      }
+      data = new LiveDataValueUpdateBean(
+          _numMessagesSent.getAndIncrement(), // 0-based as it should be
+          getDistributionSpec().getFullyQualifiedLiveDataSpecification(),
+          _conflatedLiveData.getLastKnownValues());
+      _conflatedLiveData = null;
+    }
+    send(data);
+  }
+  
+  private void send(LiveDataValueUpdateBean data) {
+    s_logger.debug("{}: Sending Live Data update {}", this, data);
+    
+    for (MarketDataSender sender : _marketDataSenders) {
+      try {
+        sender.sendMarketData(data);
+      } catch (RuntimeException e) {
+        s_logger.error(sender + " failed", e);
+      }
+    }
+  }
+  
   /**
    * @return Milliseconds from UTC epoch, or null if 
    * the distributor never expires.
@@ -5,11 +5,22 @@
  */
 package com.opengamma.livedata.normalization;
 
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
 import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.MutableFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
 import com.opengamma.livedata.server.FieldHistoryStore;
@@ -19,6 +30,8 @@ import com.opengamma.livedata.server.FieldHistoryStore;
  */
 public class NormalizationRuleSetTest {
 
+  private static final Logger s_logger = LoggerFactory.getLogger(NormalizationRuleSetTest.class);
+
   /**
    * First filter will remove the message entirely.
    * Testing to make sure that the break condition happens, and that
@@ -38,4 +51,151 @@ public class NormalizationRuleSetTest {
     FudgeMsg normalizedMsg = ruleSet.getNormalizedMessage(msg, new FieldHistoryStore());
     assertNull(normalizedMsg);
   }
+
+  private static List<NormalizationRule> getRules(NormalizationRule... extraRules) {
+    List<NormalizationRule> rules = new ArrayList<NormalizationRule>();
+    rules.add(new FieldFilter("RawBid", MarketDataRequirementNames.BID, MarketDataRequirementNames.ASK, MarketDataRequirementNames.LAST, MarketDataRequirementNames.MARKET_VALUE,
+        MarketDataRequirementNames.MID_IMPLIED_VOLATILITY, MarketDataRequirementNames.BID_IMPLIED_VOLATILITY, MarketDataRequirementNames.ASK_IMPLIED_VOLATILITY,
+        MarketDataRequirementNames.VOLUME));
+    rules.add(new FieldNameChange("RawBid", MarketDataRequirementNames.BID));
+    rules.add(new UnitChange(MarketDataRequirementNames.VOLUME, 1000));
+    for (NormalizationRule rule : extraRules) {
+      rules.add(rule);
+    }
+    rules.add(new MarketValueCalculator());
+    rules.add(new ImpliedVolatilityCalculator());
+    rules.add(new FieldHistoryUpdater());
+    rules.add(new RequiredFieldFilter(MarketDataRequirementNames.MARKET_VALUE));
+    return rules;
+  }
+
+  private static MutableFudgeMsg getTick(Random random) {
+    MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    double price = 100 + random.nextGaussian();
+    if (random.nextInt(3) > 0) {
+      msg.add("RawBid", price - random.nextDouble() * (random.nextBoolean() ? 0.1 : 10));
+    }
+    if (random.nextInt(3) > 0) {
+      msg.add(MarketDataRequirementNames.ASK, price + random.nextDouble() * (random.nextBoolean() ? 0.1 : 10));
+    }
+    if (random.nextInt(3) == 0) {
+      msg.add(MarketDataRequirementNames.LAST, price);
+    }
+    if (random.nextInt(4) == 0) {
+      msg.add(MarketDataRequirementNames.VOLUME, random.nextInt(100));
+    }
+    if (random.nextInt(4) == 0) {
+      msg.add(MarketDataRequirementNames.MID_IMPLIED_VOLATILITY, random.nextDouble());
+    }
+    if (random.nextInt(4) == 0) {
+      msg.add(MarketDataRequirementNames.BID_IMPLIED_VOLATILITY, random.nextDouble());
+      msg.add(MarketDataRequirementNames.ASK_IMPLIED_VOLATILITY, random.nextDouble());
+    }
+    if (random.nextInt(10) == 0) {
+      msg.add(MarketDataRequirementNames.MARKET_VALUE, price);
+    }
+    if (random.nextInt(10) == 0) {
+      // Duplicate field
+      msg.add(MarketDataRequirementNames.ASK, price);
+    }
+    if (random.nextInt(10) == 0) {
+      // Renamed field already present
+      msg.add(MarketDataRequirementNames.BID, price);
+    }
+    if (random.nextBoolean()) {
+      msg.add("Other", random.nextInt());
+    }
+    if (random.nextInt(5) == 0) {
+      msg.add((String) null, 1, "Unnamed");
+    }
+    return msg;
+  }
+
+  private static void assertMessagesEqual(FudgeMsg expected, FudgeMsg actual) {
+    if (expected == null) {
+      assertNull(actual);
+      return;
+    }
+    assertEquals(expected.getNumFields(), actual.getNumFields());
+    Iterator<FudgeField> itr = actual.iterator();
+    for (FudgeField expectedField : expected) {
+      FudgeField actualField = itr.next();
+      assertEquals(expectedField.getName(), actualField.getName());
+      assertEquals(expectedField.getOrdinal(), actualField.getOrdinal());
+      assertEquals(expectedField.getType(), actualField.getType());
+      assertEquals(expectedField.getValue(), actualField.getValue());
+    }
+  }
+
+  private static void assertCompiledEquivalent(NormalizationRule... extraRules) {
+    NormalizationRuleSet interpreted = new NormalizationRuleSet("Testing", "Testing", getRules(extraRules), false);
+    NormalizationRuleSet compiled = new NormalizationRuleSet("Testing", "Testing", getRules(extraRules), true);
+    assertFalse(interpreted.isCompiled());
+    assertTrue(compiled.isCompiled());
+    Random random = new Random(1L);
+    FieldHistoryStore interpretedHistory = new FieldHistoryStore();
+    FieldHistoryStore compiledHistory = new FieldHistoryStore();
+    for (int i = 0; i < 10000; i++) {
+      MutableFudgeMsg msg = getTick(random);
+      assertMessagesEqual(interpreted.getNormalizedMessage(msg, interpretedHistory), compiled.getNormalizedMessage(msg, compiledHistory));
+      assertEquals(interpretedHistory.getLastKnownValues().getNumFields(), compiledHistory.getLastKnownValues().getNumFields());
+      for (FudgeField field : interpretedHistory.getLastKnownValues()) {
+        assertEquals(field.getValue(), compiledHistory.getLastKnownValue(field.getName()));
+      }
+    }
+  }
+
+  @Test
+  public void compiledEquivalent() {
+    assertCompiledEquivalent();
+  }
+
+  @Test
+  public void compiledEquivalentWithCustomRule() {
+    assertCompiledEquivalent(new NormalizationRule() {
+      @Override
+      public MutableFudgeMsg apply(MutableFudgeMsg msg, FieldHistoryStore fieldHistory) {
+        msg.add("Custom", msg.getNumFields());
+        return msg;
+      }
+    });
+  }
+
+  @Test
+  public void notCompiled() {
+    NormalizationRuleSet ruleSet = new NormalizationRuleSet("Testing", new NormalizationRule() {
+      @Override
+      public MutableFudgeMsg apply(MutableFudgeMsg msg, FieldHistoryStore fieldHistory) {
+        return msg;
+      }
+    }, new FieldHistoryUpdater());
+    assertFalse(ruleSet.isCompiled());
+    assertFalse(StandardRules.getNoNormalization().isCompiled());
+  }
+
+  /**
+   * Tests of performance. "enabled = false" for the standard testing.
+   */
+  @Test(enabled = false)
+  public void normalizationPerformance() {
+    for (boolean compiled : new boolean[] {false, true, false, true }) {
+      NormalizationRuleSet ruleSet = new NormalizationRuleSet("Testing", "Testing", getRules(), compiled);
+      Random random = new Random(1L);
+      MutableFudgeMsg[] ticks = new MutableFudgeMsg[1024];
+      for (int i = 0; i < ticks.length; i++) {
+        do {
+          ticks[i] = getTick(random);
+        } while (ticks[i].getAllByName(MarketDataRequirementNames.ASK).size() > 1);
+      }
+      FieldHistoryStore history = new FieldHistoryStore();
+      final int count = 2000000;
+      long start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        ruleSet.getNormalizedMessage(ticks[i & 1023], history);
+      }
+      long time = System.nanoTime() - start;
+      s_logger.info("Compiled = {}: {}ns per message", compiled, (double) time / count);
+    }
+  }
+
 }
@@ -0,0 +1,305 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.MutableFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.id.ExternalScheme;
+import com.opengamma.livedata.LiveDataValueUpdateBean;
+import com.opengamma.livedata.server.distribution.MarketDataDistributor;
+import com.opengamma.livedata.server.distribution.MarketDataSender;
+import com.opengamma.livedata.server.distribution.MarketDataSenderFactory;
+
+/**
+ * Test {@link DistributionPipeline}.
+ */
+@Test
+public class DistributionPipelineTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(DistributionPipelineTest.class);
+
+  private static class RecordingSender implements MarketDataSender {
+
+    private final MarketDataDistributor _distributor;
+    private final List<LiveDataValueUpdateBean> _updates = Collections.synchronizedList(new ArrayList<LiveDataValueUpdateBean>());
+
+    public RecordingSender(MarketDataDistributor distributor) {
+      _distributor = distributor;
+    }
+
+    @Override
+    public void sendMarketData(LiveDataValueUpdateBean data) {
+      _updates.add(data);
+    }
+
+    @Override
+    public MarketDataDistributor getDistributor() {
+      return _distributor;
+    }
+
+  }
+
+  private static class RecordingSenderFactory implements MarketDataSenderFactory {
+
+    private final List<RecordingSender> _senders = Collections.synchronizedList(new ArrayList<RecordingSender>());
+
+    @Override
+    public Collection<MarketDataSender> create(MarketDataDistributor distributor) {
+      final RecordingSender sender = new RecordingSender(distributor);
+      _senders.add(sender);
+      return Collections.<MarketDataSender>singleton(sender);
+    }
+
+  }
+
+  private static class CountingSenderFactory implements MarketDataSenderFactory {
+
+    private final AtomicLong _count = new AtomicLong();
+
+    @Override
+    public Collection<MarketDataSender> create(final MarketDataDistributor distributor) {
+      return Collections.<MarketDataSender>singleton(new MarketDataSender() {
+
+        @Override
+        public void sendMarketData(LiveDataValueUpdateBean data) {
+          _count.incrementAndGet();
+        }
+
+        @Override
+        public MarketDataDistributor getDistributor() {
+          return distributor;
+        }
+
+      });
+    }
+
+  }
+
+  private static MutableFudgeMsg tick(final int sequence) {
+    final MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add("Sequence", sequence);
+    if ((sequence & 1) == 0) {
+      msg.add("Even", sequence);
+    }
+    return msg;
+  }
+
+  private static MockLiveDataServer createServer(final MarketDataSenderFactory senderFactory, final DistributionPipeline pipeline) {
+    final MockLiveDataServer server = new MockLiveDataServer(ExternalScheme.of("test"));
+    server.setMarketDataSenderFactory(senderFactory);
+    server.setDistributionPipeline(pipeline);
+    server.connect();
+    return server;
+  }
+
+  public void notRunning() {
+    final RecordingSenderFactory senderFactory = new RecordingSenderFactory();
+    final MockLiveDataServer server = createServer(senderFactory, new DistributionPipeline(1, 16));
+    server.subscribe("A");
+    server.liveDataReceived("A", tick(0));
+    server.liveDataReceived("A", tick(1));
+    assertEquals(1, senderFactory._senders.size());
+    assertEquals(2, senderFactory._senders.get(0)._updates.size());
+  }
+
+  public void conflation() {
+    final RecordingSenderFactory senderFactory = new RecordingSenderFactory();
+    final DistributionPipeline pipeline = new DistributionPipeline(2, 16);
+    final MockLiveDataServer server = createServer(senderFactory, pipeline);
+    server.subscribe("A");
+    server.subscribe("B");
+    pipeline.start();
+    final int count = 10000;
+    for (int i = 0; i < count; i++) {
+      server.liveDataReceived("A", tick(i));
+      server.liveDataReceived("B", tick(i));
+    }
+    pipeline.stop();
+    assertEquals(2, senderFactory._senders.size());
+    for (RecordingSender sender : senderFactory._senders) {
+      final List<LiveDataValueUpdateBean> updates = sender._updates;
+      assertTrue(updates.size() > 0);
+      assertTrue(updates.size() <= count);
+      int previous = -1;
+      for (int i = 0; i < updates.size(); i++) {
+        final LiveDataValueUpdateBean update = updates.get(i);
+        assertEquals(i, update.getSequenceNumber());
+        // Ticks are merged in order, so the latest value of each field is sent
+        final int sequence = update.getFields().getInt("Sequence");
+        assertTrue(sequence > previous);
+        final Integer even = update.getFields().getInt("Even");
+        if (even != null) {
+          assertTrue(sequence - even <= 1);
+        }
+        previous = sequence;
+      }
+      assertEquals(count - 1, previous);
+      assertEquals(count - 1, (int) sender.getDistributor().getSnapshot().getFields().getInt("Sequence"));
+      assertEquals(count - 2, (int) sender.getDistributor().getSnapshot().getFields().getInt("Even"));
+    }
+    assertEquals(senderFactory._senders.get(0)._updates.size() + senderFactory._senders.get(1)._updates.size(), pipeline.getNumMessagesSent());
+  }
+
+  public void publishToClosedBuffer() {
+    final RingBuffer buffer = new RingBuffer(2);
+    assertTrue(buffer.publish("A", null));
+    assertTrue(buffer.publish("B", null));
+    buffer.close();
+    // Full, so gives up rather than waiting for a consumer
+    assertFalse(buffer.publish("C", null));
+    final List<Object> consumed = new ArrayList<Object>();
+    buffer.drain(new RingBuffer.Consumer() {
+      @Override
+      public void consume(Object first, Object second) {
+        consumed.add(first);
+      }
+    }, 16);
+    assertEquals(2, consumed.size());
+    // Space is available, so still accepted
+    assertTrue(buffer.publish("D", null));
+    assertFalse(buffer.isEmpty());
+  }
+
+  @Test(timeOut = 10000)
+  public void awaitBlocksUntilWoken() throws InterruptedException {
+    final RingBuffer buffer = new RingBuffer(2);
+    final AtomicLong woken = new AtomicLong();
+    final Thread consumer = new Thread() {
+      @Override
+      public void run() {
+        // Returns once for the publish and once for the close, but may return early so checks the buffer again
+        while (buffer.isEmpty()) {
+          buffer.await();
+        }
+        woken.incrementAndGet();
+        buffer.drain(new RingBuffer.Consumer() {
+          @Override
+          public void consume(Object first, Object second) {
+          }
+        }, 16);
+        buffer.await();
+        woken.incrementAndGet();
+      }
+    };
+    consumer.start();
+    // Wait for the consumer to block
+    while (consumer.getState() != Thread.State.WAITING) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, woken.get());
+    assertTrue(buffer.publish("A", null));
+    while (woken.get() == 0 || consumer.getState() == Thread.State.RUNNABLE) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, woken.get());
+    buffer.close();
+    consumer.join();
+    assertEquals(2, woken.get());
+  }
+
+  public void stopWhileReceiving() throws InterruptedException {
+    final RecordingSenderFactory senderFactory = new RecordingSenderFactory();
+    final DistributionPipeline pipeline = new DistributionPipeline(2, 16);
+    final MockLiveDataServer server = createServer(senderFactory, pipeline);
+    final String[] uniqueIds = new String[] {"A", "B", "C", "D" };
+    for (String uniqueId : uniqueIds) {
+      server.subscribe(uniqueId);
+    }
+    pipeline.start();
+    final int count = 20000;
+    final Thread[] threads = new Thread[uniqueIds.length];
+    for (int i = 0; i < uniqueIds.length; i++) {
+      final String uniqueId = uniqueIds[i];
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < count; j++) {
+            server.liveDataReceived(uniqueId, tick(j));
+          }
+        }
+      };
+      threads[i].start();
+    }
+    pipeline.stop();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(uniqueIds.length, senderFactory._senders.size());
+    for (RecordingSender sender : senderFactory._senders) {
+      // Ticks distributed after the pipeline stopped follow all of those passed to it
+      int previous = -1;
+      for (LiveDataValueUpdateBean update : sender._updates) {
+        final int sequence = update.getFields().getInt("Sequence");
+        assertTrue(sequence > previous);
+        previous = sequence;
+      }
+      assertEquals(count - 1, previous);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Tests of performance. "enabled = false" for the standard testing.
+   */
+  @Test(enabled = false)
+  public void throughput() throws InterruptedException {
+    final int subscriptions = 1000;
+    final int producers = 4;
+    final int ticksPerProducer = 2500000;
+    for (int run = 0; run < 3; run++) {
+      final CountingSenderFactory senderFactory = new CountingSenderFactory();
+      final DistributionPipeline pipeline = new DistributionPipeline();
+      final MockLiveDataServer server = createServer(senderFactory, pipeline);
+      final String[] uniqueIds = new String[subscriptions];
+      for (int i = 0; i < subscriptions; i++) {
+        uniqueIds[i] = Integer.toString(i);
+        server.subscribe(uniqueIds[i]);
+      }
+      final MutableFudgeMsg[] ticks = new MutableFudgeMsg[64];
+      for (int i = 0; i < ticks.length; i++) {
+        ticks[i] = tick(i);
+      }
+      pipeline.start();
+      final Thread[] threads = new Thread[producers];
+      for (int i = 0; i < producers; i++) {
+        final int offset = i;
+        threads[i] = new Thread() {
+          @Override
+          public void run() {
+            for (int j = 0; j < ticksPerProducer; j++) {
+              server.liveDataReceived(uniqueIds[(j + offset) % subscriptions], ticks[j & 63]);
+            }
+          }
+        };
+      }
+      final long start = System.nanoTime();
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      pipeline.stop();
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      s_logger.info("{} ticks in {}s = {} ticks/s, {} messages sent", new Object[] {producers * ticksPerProducer, seconds, (producers * ticksPerProducer) / seconds, senderFactory._count.get() });
+    }
+  }
+
+}
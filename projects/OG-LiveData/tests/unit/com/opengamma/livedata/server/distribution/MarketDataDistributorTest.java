@@ -6,6 +6,8 @@
 package com.opengamma.livedata.server.distribution;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.MutableFudgeMsg;
@@ -51,4 +53,24 @@ public class MarketDataDistributorTest {
     assertEquals(1, mdd.getNumMessagesSent());
   }
   
+  @Test
+  public void conflation() {
+    MarketDataDistributor mdd = getTestDistributor();
+    MutableFudgeMsg msg1 = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg1.add("foo", "bar");
+    msg1.add("baz", 1);
+    MutableFudgeMsg msg2 = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg2.add("foo", "qux");
+    assertTrue(mdd.conflateLiveData(msg1));
+    assertFalse(mdd.conflateLiveData(msg2));
+    assertFalse(mdd.conflateLiveData(FudgeContext.EMPTY_MESSAGE)); // empty msg not conflated
+    assertEquals(0, mdd.getNumMessagesSent());
+    mdd.sendConflatedLiveData();
+    assertEquals(1, mdd.getNumMessagesSent());
+    assertEquals("qux", mdd.getSnapshot().getFields().getString("foo"));
+    mdd.sendConflatedLiveData(); // nothing waiting to be sent
+    assertEquals(1, mdd.getNumMessagesSent());
+    assertTrue(mdd.conflateLiveData(msg1));
+  }
+  
 }
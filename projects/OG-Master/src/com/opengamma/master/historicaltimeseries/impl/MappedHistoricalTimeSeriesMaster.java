@@ -0,0 +1,530 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.master.historicaltimeseries.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.time.Instant;
+import javax.time.calendar.LocalDate;
+
+import org.apache.commons.lang.StringUtils;
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+import org.fudgemsg.wire.FudgeDataInputStreamReader;
+import org.fudgemsg.wire.FudgeDataOutputStreamWriter;
+import org.fudgemsg.wire.FudgeMsgReader;
+import org.fudgemsg.wire.FudgeMsgWriter;
+import org.joda.beans.JodaBeanUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.DataNotFoundException;
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.core.change.BasicChangeManager;
+import com.opengamma.core.change.ChangeManager;
+import com.opengamma.core.change.ChangeType;
+import com.opengamma.id.ObjectId;
+import com.opengamma.id.ObjectIdentifiable;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+import com.opengamma.master.historicaltimeseries.HistoricalTimeSeriesInfoDocument;
+import com.opengamma.master.historicaltimeseries.HistoricalTimeSeriesInfoHistoryRequest;
+import com.opengamma.master.historicaltimeseries.HistoricalTimeSeriesInfoHistoryResult;
+import com.opengamma.master.historicaltimeseries.HistoricalTimeSeriesInfoMetaDataRequest;
+import com.opengamma.master.historicaltimeseries.HistoricalTimeSeriesInfoMetaDataResult;
+import com.opengamma.master.historicaltimeseries.HistoricalTimeSeriesInfoSearchRequest;
+import com.opengamma.master.historicaltimeseries.HistoricalTimeSeriesInfoSearchResult;
+import com.opengamma.master.historicaltimeseries.HistoricalTimeSeriesMaster;
+import com.opengamma.master.historicaltimeseries.ManageableHistoricalTimeSeries;
+import com.opengamma.master.historicaltimeseries.ManageableHistoricalTimeSeriesInfo;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.Paging;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
+import com.opengamma.util.timeseries.fast.integer.FastArrayIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.localdate.ArrayLocalDateDoubleTimeSeries;
+import com.opengamma.util.timeseries.localdate.LocalDateDoubleTimeSeries;
+
+/**
+ * A file-backed implementation of a historical time-series master.
+ * <p>
+ * The data points of each series are held as columns of dates and values in memory-mapped files, so a date range of a
+ * series is read with a binary search and a bulk copy rather than a query returning a row per point. The time-series
+ * info documents are held in memory and persisted to a log file in the same directory which is replayed when the master
+ * is created.
+ * <p>
+ * As with {@link InMemoryHistoricalTimeSeriesMaster}, only the latest version of each series is retained.
+ */
+public class MappedHistoricalTimeSeriesMaster implements HistoricalTimeSeriesMaster {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(MappedHistoricalTimeSeriesMaster.class);
+
+  /**
+   * The default scheme used for each {@link UniqueId}.
+   */
+  public static final String DEFAULT_OID_SCHEME = "MapHts";
+
+  private static final String INFO_FILE = "info.dat";
+  private static final String DOCUMENT_FIELD = "document";
+  private static final String REMOVED_FIELD = "removed";
+
+  /**
+   * The time-series info by identifier.
+   */
+  private final ConcurrentMap<ObjectId, HistoricalTimeSeriesInfoDocument> _storeInfo = new ConcurrentHashMap<ObjectId, HistoricalTimeSeriesInfoDocument>();
+  /**
+   * The time-series points.
+   */
+  private final MappedTimeSeriesStore _storePoints;
+  /**
+   * The scheme of the identifiers.
+   */
+  private final String _scheme;
+  /**
+   * The last identifier allocated.
+   */
+  private final AtomicLong _lastId = new AtomicLong();
+  /**
+   * The Fudge context used to persist the info documents.
+   */
+  private final FudgeContext _fudgeContext = OpenGammaFudgeContext.getInstance();
+  /**
+   * The writer of the info document log.
+   */
+  private final FudgeMsgWriter _infoWriter;
+  /**
+   * The change manager.
+   */
+  private final ChangeManager _changeManager;
+
+  /**
+   * Creates an instance.
+   *
+   * @param directory  the directory to hold the files, created if necessary, not null
+   */
+  public MappedHistoricalTimeSeriesMaster(final File directory) {
+    this(directory, DEFAULT_OID_SCHEME, new BasicChangeManager());
+  }
+
+  /**
+   * Creates an instance specifying the change manager.
+   *
+   * @param directory  the directory to hold the files, created if necessary, not null
+   * @param changeManager  the change manager, not null
+   */
+  public MappedHistoricalTimeSeriesMaster(final File directory, final ChangeManager changeManager) {
+    this(directory, DEFAULT_OID_SCHEME, changeManager);
+  }
+
+  /**
+   * Creates an instance specifying the identifier scheme and change manager.
+   *
+   * @param directory  the directory to hold the files, created if necessary, not null
+   * @param scheme  the scheme of the identifiers, not null
+   * @param changeManager  the change manager, not null
+   */
+  public MappedHistoricalTimeSeriesMaster(final File directory, final String scheme, final ChangeManager changeManager) {
+    this(directory, scheme, changeManager, MappedTimeSeriesStore.DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Creates an instance specifying the identifier scheme, change manager and size of the mapped files.
+   *
+   * @param directory  the directory to hold the files, created if necessary, not null
+   * @param scheme  the scheme of the identifiers, not null
+   * @param changeManager  the change manager, not null
+   * @param segmentSize  the size of each file of data points, in bytes
+   */
+  public MappedHistoricalTimeSeriesMaster(final File directory, final String scheme, final ChangeManager changeManager, final int segmentSize) {
+    ArgumentChecker.notNull(directory, "directory");
+    ArgumentChecker.notNull(scheme, "scheme");
+    ArgumentChecker.notNull(changeManager, "changeManager");
+    _scheme = scheme;
+    _changeManager = changeManager;
+    _storePoints = new MappedTimeSeriesStore(directory, segmentSize);
+    final File infoFile = new File(directory, INFO_FILE);
+    try {
+      if (infoFile.exists()) {
+        replayInfo(infoFile);
+      }
+      _infoWriter = new FudgeMsgWriter(new FudgeDataOutputStreamWriter(_fudgeContext, new BufferedOutputStream(new FileOutputStream(infoFile, true))));
+    } catch (IOException e) {
+      _storePoints.close();
+      throw new OpenGammaRuntimeException("Couldn't open time-series info in " + directory, e);
+    }
+  }
+
+  private void replayInfo(final File infoFile) throws IOException {
+    final FudgeDeserializer deserializer = new FudgeDeserializer(_fudgeContext);
+    final FudgeMsgReader reader = new FudgeMsgReader(new FudgeDataInputStreamReader(_fudgeContext, new BufferedInputStream(new FileInputStream(infoFile))));
+    try {
+      while (reader.hasNext()) {
+        final FudgeMsg msg = reader.nextMessage();
+        final FudgeMsg documentMsg = msg.getMessage(DOCUMENT_FIELD);
+        if (documentMsg != null) {
+          final HistoricalTimeSeriesInfoDocument document = deserializer.fudgeMsgToObject(HistoricalTimeSeriesInfoDocument.class, documentMsg);
+          final ObjectId objectId = document.getObjectId();
+          _storeInfo.put(objectId, document);
+          final long id = validateId(objectId);
+          if (id > _lastId.get()) {
+            _lastId.set(id);
+          }
+        } else {
+          _storeInfo.remove(ObjectId.parse(msg.getString(REMOVED_FIELD)));
+        }
+      }
+    } catch (RuntimeException e) {
+      // An interrupted write leaves a truncated message at the end of the log
+      s_logger.warn("Couldn't read all time-series info from {} - {}", infoFile, e.getMessage());
+    } finally {
+      reader.close();
+    }
+  }
+
+  private synchronized void writeInfo(final MutableFudgeMsg msg) {
+    _infoWriter.writeMessage(msg);
+    _infoWriter.flush();
+  }
+
+  private void writeDocument(final HistoricalTimeSeriesInfoDocument document) {
+    final FudgeSerializer serializer = new FudgeSerializer(_fudgeContext);
+    final MutableFudgeMsg msg = serializer.newMessage();
+    msg.add(DOCUMENT_FIELD, serializer.objectToFudgeMsg(document));
+    writeInfo(msg);
+  }
+
+  private void writeRemoved(final ObjectId objectId) {
+    final MutableFudgeMsg msg = _fudgeContext.newMessage();
+    msg.add(REMOVED_FIELD, objectId.toString());
+    writeInfo(msg);
+  }
+
+  /**
+   * Closes the files. The master must not be used after it has been closed.
+   */
+  public void close() {
+    synchronized (this) {
+      _infoWriter.close();
+    }
+    _storePoints.close();
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public HistoricalTimeSeriesInfoMetaDataResult metaData(HistoricalTimeSeriesInfoMetaDataRequest request) {
+    ArgumentChecker.notNull(request, "request");
+    HistoricalTimeSeriesInfoMetaDataResult result = new HistoricalTimeSeriesInfoMetaDataResult();
+    if (request.isDataFields()) {
+      Set<String> types = new HashSet<String>();
+      for (HistoricalTimeSeriesInfoDocument doc : _storeInfo.values()) {
+        types.add(doc.getInfo().getDataField());
+      }
+      result.getDataFields().addAll(types);
+    }
+    if (request.isDataSources()) {
+      Set<String> types = new HashSet<String>();
+      for (HistoricalTimeSeriesInfoDocument doc : _storeInfo.values()) {
+        types.add(doc.getInfo().getDataSource());
+      }
+      result.getDataSources().addAll(types);
+    }
+    if (request.isDataProviders()) {
+      Set<String> types = new HashSet<String>();
+      for (HistoricalTimeSeriesInfoDocument doc : _storeInfo.values()) {
+        types.add(doc.getInfo().getDataProvider());
+      }
+      result.getDataProviders().addAll(types);
+    }
+    if (request.isObservationTimes()) {
+      Set<String> types = new HashSet<String>();
+      for (HistoricalTimeSeriesInfoDocument doc : _storeInfo.values()) {
+        types.add(doc.getInfo().getObservationTime());
+      }
+      result.getObservationTimes().addAll(types);
+    }
+    return result;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public HistoricalTimeSeriesInfoSearchResult search(HistoricalTimeSeriesInfoSearchRequest request) {
+    ArgumentChecker.notNull(request, "request");
+    final List<HistoricalTimeSeriesInfoDocument> list = new ArrayList<HistoricalTimeSeriesInfoDocument>();
+    for (HistoricalTimeSeriesInfoDocument doc : _storeInfo.values()) {
+      if (request.matches(doc)) {
+        list.add(doc);
+      }
+    }
+    HistoricalTimeSeriesInfoSearchResult result = new HistoricalTimeSeriesInfoSearchResult();
+    result.setPaging(Paging.of(request.getPagingRequest(), list));
+    result.getDocuments().addAll(request.getPagingRequest().select(list));
+    return result;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public HistoricalTimeSeriesInfoDocument get(final UniqueId uniqueId) {
+    return get(uniqueId, VersionCorrection.LATEST);
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public HistoricalTimeSeriesInfoDocument get(final ObjectIdentifiable objectKey, VersionCorrection versionCorrection) {
+    validateId(objectKey);
+    ArgumentChecker.notNull(versionCorrection, "versionCorrection");
+    final ObjectId objectId = objectKey.getObjectId();
+    final HistoricalTimeSeriesInfoDocument document = _storeInfo.get(objectId);
+    if (document == null) {
+      throw new DataNotFoundException("Historical time-series not found: " + objectId);
+    }
+    return document;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public HistoricalTimeSeriesInfoDocument add(final HistoricalTimeSeriesInfoDocument document) {
+    validateDocument(document);
+
+    final ObjectId objectId = ObjectId.of(_scheme, Long.toString(_lastId.incrementAndGet()));
+    final UniqueId uniqueId = objectId.atVersion("");
+    final HistoricalTimeSeriesInfoDocument cloned = JodaBeanUtils.clone(document);
+    final ManageableHistoricalTimeSeriesInfo info = cloned.getInfo();
+    info.setUniqueId(uniqueId);
+    final Instant now = Instant.now();
+    cloned.setVersionFromInstant(now);
+    cloned.setCorrectionFromInstant(now);
+    cloned.getInfo().setTimeSeriesObjectId(objectId);
+    writeDocument(cloned);
+    _storeInfo.put(objectId, cloned);
+    _changeManager.entityChanged(ChangeType.ADDED, null, uniqueId, now);
+    return cloned;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public HistoricalTimeSeriesInfoDocument update(final HistoricalTimeSeriesInfoDocument document) {
+    validateDocument(document);
+    ArgumentChecker.notNull(document.getUniqueId(), "document.uniqueId");
+
+    final UniqueId uniqueId = document.getUniqueId();
+    final Instant now = Instant.now();
+    final HistoricalTimeSeriesInfoDocument storedDocument = _storeInfo.get(uniqueId.getObjectId());
+    if (storedDocument == null) {
+      throw new DataNotFoundException("Historical time-series not found: " + uniqueId);
+    }
+    document.setVersionFromInstant(now);
+    document.setVersionToInstant(null);
+    document.setCorrectionFromInstant(now);
+    document.setCorrectionToInstant(null);
+    synchronized (this) {
+      if (_storeInfo.replace(uniqueId.getObjectId(), storedDocument, document) == false) {
+        throw new IllegalArgumentException("Concurrent modification");
+      }
+      writeDocument(document);
+    }
+    _changeManager.entityChanged(ChangeType.UPDATED, uniqueId, document.getUniqueId(), now);
+    return document;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public void remove(final UniqueId uniqueId) {
+    final long id = validateId(uniqueId);
+    synchronized (this) {
+      if (_storeInfo.remove(uniqueId.getObjectId()) == null) {
+        throw new DataNotFoundException("Historical time-series not found: " + uniqueId);
+      }
+      writeRemoved(uniqueId.getObjectId());
+    }
+    _storePoints.remove(id);
+    _changeManager.entityChanged(ChangeType.REMOVED, uniqueId, null, Instant.now());
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public HistoricalTimeSeriesInfoDocument correct(final HistoricalTimeSeriesInfoDocument document) {
+    return update(document);
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public HistoricalTimeSeriesInfoHistoryResult history(HistoricalTimeSeriesInfoHistoryRequest request) {
+    ArgumentChecker.notNull(request, "request");
+    ArgumentChecker.notNull(request.getObjectId(), "request.objectId");
+
+    final HistoricalTimeSeriesInfoHistoryResult result = new HistoricalTimeSeriesInfoHistoryResult();
+    final HistoricalTimeSeriesInfoDocument doc = get(request.getObjectId(), VersionCorrection.LATEST);
+    if (doc != null) {
+      result.getDocuments().add(doc);
+    }
+    result.setPaging(Paging.ofAll(result.getDocuments()));
+    return result;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public ManageableHistoricalTimeSeries getTimeSeries(UniqueId uniqueId, LocalDate fromDateInclusive, LocalDate toDateInclusive) {
+    return getTimeSeries(uniqueId.getObjectId(), VersionCorrection.LATEST, fromDateInclusive, toDateInclusive);
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public ManageableHistoricalTimeSeries getTimeSeries(ObjectIdentifiable objectKey, VersionCorrection versionCorrection, LocalDate fromDateInclusive, LocalDate toDateInclusive) {
+    final long id = validateId(objectKey);
+    final int fromDate = toEpochDays(fromDateInclusive, Integer.MIN_VALUE);
+    final int toDate = toEpochDays(toDateInclusive, Integer.MAX_VALUE);
+    ArgumentChecker.isTrue(fromDate <= toDate, "fromDateInclusive must be before or equal to toDateInclusive");
+    final ObjectId objectId = objectKey.getObjectId();
+    if (_storeInfo.get(objectId) == null) {
+      throw new DataNotFoundException("Historical time-series not found: " + objectId);
+    }
+
+    final Instant now = Instant.now();
+    final ManageableHistoricalTimeSeries result = new ManageableHistoricalTimeSeries();
+    result.setUniqueId(objectId.atLatestVersion());
+    // Take the block once; appends publish a new block so this is a consistent snapshot
+    final MappedTimeSeriesStore.Block block = _storePoints.get(id);
+    if ((block == null) || (block.getCount() == 0)) {
+      result.setTimeSeries(new ArrayLocalDateDoubleTimeSeries());
+    } else {
+      final int from = block.findDate(fromDate);
+      final int to = block.findDateAfter(toDate);
+      final int[] dates = new int[to - from];
+      final double[] values = new double[to - from];
+      block.getDates(from, dates, 0, dates.length);
+      block.getValues(from, values, 0, values.length);
+      result.setTimeSeries(new ArrayLocalDateDoubleTimeSeries(new FastArrayIntDoubleTimeSeries(DateTimeNumericEncoding.DATE_EPOCH_DAYS, dates, values)));
+      result.setEarliest(LocalDate.ofEpochDays(block.getDate(0)));
+      result.setLatest(LocalDate.ofEpochDays(block.getDate(block.getCount() - 1)));
+    }
+    result.setVersionInstant(now);
+    result.setCorrectionInstant(now);
+    return result;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public UniqueId updateTimeSeriesDataPoints(ObjectIdentifiable objectKey, LocalDateDoubleTimeSeries series) {
+    final long id = validateId(objectKey);
+    ArgumentChecker.notNull(series, "series");
+    final ObjectId objectId = objectKey.getObjectId();
+    if (_storeInfo.get(objectId) == null) {
+      throw new DataNotFoundException("Historical time-series not found: " + objectId);
+    }
+
+    final int[] dates = toEpochDays(series);
+    if (dates.length > 0) {
+      synchronized (_storePoints) {
+        final MappedTimeSeriesStore.Block existing = _storePoints.get(id);
+        if ((existing != null) && (existing.getCount() > 0) && (dates[0] <= existing.getDate(existing.getCount() - 1))) {
+          throw new IllegalArgumentException("Unable to add time-series as dates overlap");
+        }
+        _storePoints.append(id, dates, series.valuesArrayFast());
+      }
+    }
+    final Instant now = Instant.now();
+    final UniqueId uniqueId = objectId.atLatestVersion();
+    changeManager().entityChanged(ChangeType.UPDATED, uniqueId, uniqueId, now);
+    return uniqueId;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public UniqueId correctTimeSeriesDataPoints(ObjectIdentifiable objectKey, LocalDateDoubleTimeSeries series) {
+    final long id = validateId(objectKey);
+    ArgumentChecker.notNull(series, "series");
+    final ObjectId objectId = objectKey.getObjectId();
+    if (_storeInfo.get(objectId) == null) {
+      throw new DataNotFoundException("Historical time-series not found: " + objectId);
+    }
+
+    _storePoints.correct(id, toEpochDays(series), series.valuesArrayFast());
+    final Instant now = Instant.now();
+    final UniqueId uniqueId = objectId.atLatestVersion();
+    changeManager().entityChanged(ChangeType.CORRECTED, uniqueId, uniqueId, now);
+    return uniqueId;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public UniqueId removeTimeSeriesDataPoints(ObjectIdentifiable objectKey, LocalDate fromDateInclusive, LocalDate toDateInclusive) {
+    final long id = validateId(objectKey);
+    final int fromDate = toEpochDays(fromDateInclusive, Integer.MIN_VALUE);
+    final int toDate = toEpochDays(toDateInclusive, Integer.MAX_VALUE);
+    ArgumentChecker.isTrue(fromDate <= toDate, "fromDateInclusive must be before or equal to toDateInclusive");
+    final ObjectId objectId = objectKey.getObjectId();
+
+    _storePoints.remove(id, fromDate, toDate);
+    return objectId.atLatestVersion();
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public ChangeManager changeManager() {
+    return _changeManager;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Converts an optional date bound to the epoch-day form used by the store, clamped to the range of an int. A missing
+   * bound is open, so is given the most extreme day in that direction.
+   */
+  private static int toEpochDays(final LocalDate date, final int unbounded) {
+    if (date == null) {
+      return unbounded;
+    }
+    final long epochDays = date.toEpochDays();
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, epochDays));
+  }
+
+  private static int[] toEpochDays(final LocalDateDoubleTimeSeries series) {
+    final LocalDate[] times = series.timesArray();
+    final int[] dates = new int[times.length];
+    for (int i = 0; i < times.length; i++) {
+      dates[i] = (int) times[i].toEpochDays();
+    }
+    return dates;
+  }
+
+  private long validateId(ObjectIdentifiable objectId) {
+    ArgumentChecker.notNull(objectId, "objectId");
+    try {
+      return Long.parseLong(objectId.getObjectId().getValue());
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Invalid objectId " + objectId);
+    }
+  }
+
+  private void validateDocument(HistoricalTimeSeriesInfoDocument document) {
+    ArgumentChecker.notNull(document, "document");
+    if (document.getUniqueId() != null) {
+      validateId(document.getUniqueId());
+    }
+    ArgumentChecker.notNull(document.getInfo(), "document.series");
+    ArgumentChecker.notNull(document.getInfo().getExternalIdBundle(), "document.series.identifiers");
+    ArgumentChecker.isTrue(document.getInfo().getExternalIdBundle().toBundle().getExternalIds().size() > 0, "document.series.identifiers must not be empty");
+    ArgumentChecker.isTrue(StringUtils.isNotBlank(document.getInfo().getDataSource()), "document.series.dataSource must not be blank");
+    ArgumentChecker.isTrue(StringUtils.isNotBlank(document.getInfo().getDataProvider()), "document.series.dataProvider must not be blank");
+    ArgumentChecker.isTrue(StringUtils.isNotBlank(document.getInfo().getDataField()), "document.series.dataField must not be blank");
+    ArgumentChecker.isTrue(StringUtils.isNotBlank(document.getInfo().getObservationTime()), "document.series.observationTime must not be blank");
+  }
+
+}
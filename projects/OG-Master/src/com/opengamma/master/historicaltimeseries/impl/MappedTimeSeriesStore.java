@@ -0,0 +1,496 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.master.historicaltimeseries.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Stores the data points of daily time-series in memory-mapped files.
+ * <p>
+ * Each series is a block holding a column of epoch-day dates followed by a column of values. Blocks are written to
+ * segment files which are mapped when opened, so reading a range of a series is a binary search of the date column
+ * and a bulk copy of the two column ranges. Blocks are allocated with spare capacity so that appending points, the
+ * usual daily update, writes into the existing block. Any other change writes a replacement block.
+ * <p>
+ * The location of the current block of each series is recorded in an append-only index file which is replayed when the
+ * store is opened. The points of a block are forced to disk before the index record that refers to them, and the index
+ * record is forced before the update returns. When the store is opened the index is compacted to one record per series,
+ * written to a temporary file which is renamed over the original. Replaced blocks are not reclaimed.
+ */
+/* package */class MappedTimeSeriesStore {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(MappedTimeSeriesStore.class);
+
+  /**
+   * Default size of a segment file, in bytes.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final String INDEX_FILE = "index.dat";
+  private static final String INDEX_TEMP_FILE = "index.tmp";
+  private static final String SEGMENT_PREFIX = "points-";
+  private static final String SEGMENT_SUFFIX = ".dat";
+  private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+  private static final int INDEX_RECORD_SIZE = 24;
+  private static final int MINIMUM_SPARE_CAPACITY = 32;
+
+  /**
+   * The location and length of a series. Instances are immutable; a block whose points have been appended to in place
+   * is replaced by one with the larger count, leaving readers of the original unaffected.
+   */
+  /* package */static final class Block {
+
+    private final ByteBuffer _buffer;
+    private final int _segment;
+    private final int _offset;
+    private final int _capacity;
+    private final int _count;
+
+    private Block(final ByteBuffer buffer, final int segment, final int offset, final int capacity, final int count) {
+      _buffer = buffer;
+      _segment = segment;
+      _offset = offset;
+      _capacity = capacity;
+      _count = count;
+    }
+
+    public int getCount() {
+      return _count;
+    }
+
+    public int getDate(final int index) {
+      return _buffer.getInt(_offset + (index << 2));
+    }
+
+    /**
+     * Returns the index of the first date that is on or after the given date.
+     */
+    public int findDate(final int date) {
+      int low = 0;
+      int high = _count - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        final int midDate = getDate(mid);
+        if (midDate < date) {
+          low = mid + 1;
+        } else if (midDate > date) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * Returns the index of the first date that is after the given date.
+     */
+    public int findDateAfter(final int date) {
+      if (date == Integer.MAX_VALUE) {
+        return _count;
+      }
+      return findDate(date + 1);
+    }
+
+    private int getValuesOffset() {
+      return _offset + datesLength(_capacity);
+    }
+
+    public void getDates(final int from, final int[] dates, final int dateIndex, final int length) {
+      final ByteBuffer view = _buffer.duplicate().order(BYTE_ORDER);
+      view.position(_offset + (from << 2));
+      view.asIntBuffer().get(dates, dateIndex, length);
+    }
+
+    public void getValues(final int from, final double[] values, final int valueIndex, final int length) {
+      final ByteBuffer view = _buffer.duplicate().order(BYTE_ORDER);
+      view.position(getValuesOffset() + (from << 3));
+      view.asDoubleBuffer().get(values, valueIndex, length);
+    }
+
+    private void put(final int from, final int[] dates, final double[] values, final int index, final int length) {
+      ByteBuffer view = _buffer.duplicate().order(BYTE_ORDER);
+      view.position(_offset + (from << 2));
+      view.asIntBuffer().put(dates, index, length);
+      view = _buffer.duplicate().order(BYTE_ORDER);
+      view.position(getValuesOffset() + (from << 3));
+      view.asDoubleBuffer().put(values, index, length);
+    }
+
+  }
+
+  /**
+   * A mapped segment file.
+   */
+  private static final class Segment {
+
+    private final MappedByteBuffer _buffer;
+    private int _used;
+
+    private Segment(final MappedByteBuffer buffer) {
+      _buffer = buffer;
+    }
+
+  }
+
+  private final File _directory;
+  private final int _segmentSize;
+  private final ConcurrentMap<Long, Block> _blocks = new ConcurrentHashMap<Long, Block>();
+  private final List<Segment> _segments = new ArrayList<Segment>();
+  private final FileChannel _index;
+
+  /**
+   * Opens a store, creating it if the directory is empty.
+   *
+   * @param directory the directory to hold the files, not null
+   * @param segmentSize the size of each segment file, in bytes
+   */
+  public MappedTimeSeriesStore(final File directory, final int segmentSize) {
+    ArgumentChecker.notNull(directory, "directory");
+    ArgumentChecker.isTrue(segmentSize > 0, "segmentSize");
+    _directory = directory;
+    _segmentSize = segmentSize;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new OpenGammaRuntimeException("Couldn't create directory " + directory);
+    }
+    try {
+      openSegments();
+      replayIndex();
+      compactIndex();
+      _index = new FileOutputStream(new File(directory, INDEX_FILE), true).getChannel();
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Couldn't open time-series store in " + directory, e);
+    }
+  }
+
+  private static int datesLength(final int capacity) {
+    // Keep the value column 8 byte aligned
+    return ((capacity << 2) + 7) & ~7;
+  }
+
+  private static int blockLength(final int capacity) {
+    return datesLength(capacity) + (capacity << 3);
+  }
+
+  private File getSegmentFile(final int segment) {
+    return new File(_directory, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+  }
+
+  private Segment mapSegment(final int segment, final long size) throws IOException {
+    final RandomAccessFile file = new RandomAccessFile(getSegmentFile(segment), "rw");
+    try {
+      final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, file.length()));
+      buffer.order(BYTE_ORDER);
+      return new Segment(buffer);
+    } finally {
+      // The mapping remains valid after the file is closed
+      file.close();
+    }
+  }
+
+  private void openSegments() throws IOException {
+    final String[] files = _directory.list(new FilenameFilter() {
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    for (int i = 0; i < files.length; i++) {
+      final File file = getSegmentFile(i);
+      if (!file.exists()) {
+        throw new OpenGammaRuntimeException("Missing segment file " + file);
+      }
+      _segments.add(mapSegment(i, file.length()));
+    }
+  }
+
+  private void replayIndex() throws IOException {
+    final File file = new File(_directory, INDEX_FILE);
+    if (!file.exists()) {
+      return;
+    }
+    final RandomAccessFile index = new RandomAccessFile(file, "rw");
+    try {
+      // A partial record from an interrupted write is discarded
+      final long length = index.length() - (index.length() % INDEX_RECORD_SIZE);
+      if (length != index.length()) {
+        s_logger.warn("Discarding partial index record in {}", file);
+        index.setLength(length);
+      }
+      final ByteBuffer records = index.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length).order(BYTE_ORDER);
+      while (records.remaining() >= INDEX_RECORD_SIZE) {
+        final long identifier = records.getLong();
+        final int segment = records.getInt();
+        final int offset = records.getInt();
+        final int capacity = records.getInt();
+        final int count = records.getInt();
+        if (count < 0) {
+          _blocks.remove(identifier);
+        } else {
+          final Segment s = _segments.get(segment);
+          s._used = Math.max(s._used, offset + blockLength(capacity));
+          _blocks.put(identifier, new Block(s._buffer, segment, offset, capacity, count));
+        }
+      }
+    } finally {
+      index.close();
+    }
+    s_logger.info("Opened {} time-series from {}", _blocks.size(), _directory);
+  }
+
+  private static void writeIndexRecord(final ByteBuffer record, final long identifier, final int segment, final int offset, final int capacity, final int count) {
+    record.putLong(identifier).putInt(segment).putInt(offset).putInt(capacity).putInt(count);
+  }
+
+  /**
+   * Rewrites the index with just the current block of each series. The new index is written and forced to a
+   * temporary file which then replaces the original, so an interrupted compaction leaves the original intact.
+   */
+  private void compactIndex() throws IOException {
+    final File file = new File(_directory, INDEX_FILE);
+    final File temp = new File(_directory, INDEX_TEMP_FILE);
+    final ByteBuffer records = ByteBuffer.allocate(_blocks.size() * INDEX_RECORD_SIZE).order(BYTE_ORDER);
+    for (Map.Entry<Long, Block> block : _blocks.entrySet()) {
+      final Block b = block.getValue();
+      writeIndexRecord(records, block.getKey(), b._segment, b._offset, b._capacity, b._count);
+    }
+    records.flip();
+    final FileOutputStream out = new FileOutputStream(temp);
+    try {
+      final FileChannel channel = out.getChannel();
+      while (records.hasRemaining()) {
+        channel.write(records);
+      }
+      channel.force(true);
+    } finally {
+      out.close();
+    }
+    if (!temp.renameTo(file)) {
+      // Some platforms won't rename over an existing file; the replacement is complete, so the original can go
+      if (!file.delete() || !temp.renameTo(file)) {
+        throw new IOException("Couldn't replace " + file + " with " + temp);
+      }
+    }
+  }
+
+  // caller must already own monitor
+  private void forceSegment(final int segment) {
+    _segments.get(segment)._buffer.force();
+  }
+
+  // caller must already own monitor
+  private void writeIndex(final long identifier, final int segment, final int offset, final int capacity, final int count) {
+    final ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE).order(BYTE_ORDER);
+    writeIndexRecord(record, identifier, segment, offset, capacity, count);
+    record.flip();
+    try {
+      while (record.hasRemaining()) {
+        _index.write(record);
+      }
+      _index.force(false);
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Couldn't write to time-series index", e);
+    }
+  }
+
+  // caller must already own monitor
+  private Block allocate(final int capacity) {
+    final int length = blockLength(capacity);
+    int segment = _segments.size() - 1;
+    if ((segment < 0) || (_segments.get(segment)._buffer.capacity() - _segments.get(segment)._used < length)) {
+      segment++;
+      try {
+        _segments.add(mapSegment(segment, Math.max(_segmentSize, length)));
+      } catch (IOException e) {
+        throw new OpenGammaRuntimeException("Couldn't create segment file " + getSegmentFile(segment), e);
+      }
+    }
+    final Segment s = _segments.get(segment);
+    final int offset = s._used;
+    s._used += length;
+    return new Block(s._buffer, segment, offset, capacity, 0);
+  }
+
+  /**
+   * Gets the current block of a series.
+   *
+   * @param identifier the series identifier
+   * @return the block, null if there are no points stored
+   */
+  public Block get(final long identifier) {
+    return _blocks.get(identifier);
+  }
+
+  /**
+   * Replaces all of the points of a series.
+   *
+   * @param identifier the series identifier
+   * @param dates the dates, in ascending order, not null
+   * @param values the values, not null
+   * @return the new block, not null
+   */
+  public synchronized Block put(final long identifier, final int[] dates, final double[] values) {
+    final int count = dates.length;
+    final Block allocated = allocate(count + Math.max(count >> 1, MINIMUM_SPARE_CAPACITY));
+    allocated.put(0, dates, values, 0, count);
+    final Block block = new Block(allocated._buffer, allocated._segment, allocated._offset, allocated._capacity, count);
+    forceSegment(block._segment);
+    writeIndex(identifier, block._segment, block._offset, block._capacity, count);
+    _blocks.put(identifier, block);
+    return block;
+  }
+
+  /**
+   * Appends points to a series. The points must all be after the last point of the existing series.
+   *
+   * @param identifier the series identifier
+   * @param dates the dates, in ascending order, not null
+   * @param values the values, not null
+   * @return the new block, not null
+   */
+  public synchronized Block append(final long identifier, final int[] dates, final double[] values) {
+    final Block existing = _blocks.get(identifier);
+    if (existing == null) {
+      return put(identifier, dates, values);
+    }
+    final int count = existing._count + dates.length;
+    if (count <= existing._capacity) {
+      // Readers of the existing block only read up to its count, so aren't affected by writing past it
+      existing.put(existing._count, dates, values, 0, dates.length);
+      final Block block = new Block(existing._buffer, existing._segment, existing._offset, existing._capacity, count);
+      forceSegment(block._segment);
+      writeIndex(identifier, block._segment, block._offset, block._capacity, count);
+      _blocks.put(identifier, block);
+      return block;
+    }
+    final int[] newDates = new int[count];
+    final double[] newValues = new double[count];
+    existing.getDates(0, newDates, 0, existing._count);
+    existing.getValues(0, newValues, 0, existing._count);
+    System.arraycopy(dates, 0, newDates, existing._count, dates.length);
+    System.arraycopy(values, 0, newValues, existing._count, values.length);
+    return put(identifier, newDates, newValues);
+  }
+
+  /**
+   * Merges points into a series, replacing the values of any existing points with the same dates.
+   *
+   * @param identifier the series identifier
+   * @param dates the dates, in ascending order, not null
+   * @param values the values, not null
+   * @return the new block, not null
+   */
+  public synchronized Block correct(final long identifier, final int[] dates, final double[] values) {
+    final Block existing = _blocks.get(identifier);
+    if (existing == null) {
+      return put(identifier, dates, values);
+    }
+    final int existingCount = existing._count;
+    if ((dates.length > 0) && ((existingCount == 0) || (dates[0] > existing.getDate(existingCount - 1)))) {
+      return append(identifier, dates, values);
+    }
+    final int[] existingDates = new int[existingCount];
+    final double[] existingValues = new double[existingCount];
+    existing.getDates(0, existingDates, 0, existingCount);
+    existing.getValues(0, existingValues, 0, existingCount);
+    final int[] newDates = new int[existingCount + dates.length];
+    final double[] newValues = new double[existingCount + dates.length];
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while ((i < existingCount) && (j < dates.length)) {
+      if (existingDates[i] < dates[j]) {
+        newDates[k] = existingDates[i];
+        newValues[k++] = existingValues[i++];
+      } else {
+        if (existingDates[i] == dates[j]) {
+          i++;
+        }
+        newDates[k] = dates[j];
+        newValues[k++] = values[j++];
+      }
+    }
+    while (i < existingCount) {
+      newDates[k] = existingDates[i];
+      newValues[k++] = existingValues[i++];
+    }
+    while (j < dates.length) {
+      newDates[k] = dates[j];
+      newValues[k++] = values[j++];
+    }
+    return put(identifier, Arrays.copyOf(newDates, k), Arrays.copyOf(newValues, k));
+  }
+
+  /**
+   * Removes the points of a series within a date range.
+   *
+   * @param identifier the series identifier
+   * @param fromDate the first date to remove, inclusive
+   * @param toDate the last date to remove, inclusive
+   */
+  public synchronized void remove(final long identifier, final int fromDate, final int toDate) {
+    final Block existing = _blocks.get(identifier);
+    if (existing == null) {
+      return;
+    }
+    final int from = existing.findDate(fromDate);
+    final int to = existing.findDateAfter(toDate);
+    if (from >= to) {
+      return;
+    }
+    final int count = existing._count - (to - from);
+    final int[] newDates = new int[count];
+    final double[] newValues = new double[count];
+    existing.getDates(0, newDates, 0, from);
+    existing.getValues(0, newValues, 0, from);
+    existing.getDates(to, newDates, from, existing._count - to);
+    existing.getValues(to, newValues, from, existing._count - to);
+    put(identifier, newDates, newValues);
+  }
+
+  /**
+   * Removes all of the points of a series.
+   *
+   * @param identifier the series identifier
+   */
+  public synchronized void remove(final long identifier) {
+    if (_blocks.remove(identifier) != null) {
+      writeIndex(identifier, 0, 0, 0, -1);
+    }
+  }
+
+  /**
+   * Closes the index file. The mapped segments are released when no longer referenced.
+   */
+  public synchronized void close() {
+    try {
+      _index.close();
+    } catch (IOException e) {
+      s_logger.warn("Couldn't close time-series index - {}", e.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.master.historicaltimeseries.impl;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.time.calendar.LocalDate;
+
+import org.apache.commons.io.FileUtils;
+import org.joda.beans.JodaBeanUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.opengamma.DataNotFoundException;
+import com.opengamma.core.change.BasicChangeManager;
+import com.opengamma.id.ExternalId;
+import com.opengamma.id.ExternalIdBundle;
+import com.opengamma.id.ExternalIdBundleWithDates;
+import com.opengamma.id.UniqueId;
+import com.opengamma.id.VersionCorrection;
+import com.opengamma.master.historicaltimeseries.HistoricalTimeSeriesInfoDocument;
+import com.opengamma.master.historicaltimeseries.HistoricalTimeSeriesInfoSearchRequest;
+import com.opengamma.master.historicaltimeseries.ManageableHistoricalTimeSeries;
+import com.opengamma.master.historicaltimeseries.ManageableHistoricalTimeSeriesInfo;
+import com.opengamma.util.timeseries.localdate.ArrayLocalDateDoubleTimeSeries;
+import com.opengamma.util.timeseries.localdate.LocalDateDoubleTimeSeries;
+
+/**
+ * Test {@link MappedHistoricalTimeSeriesMaster}.
+ */
+@Test
+public class MappedHistoricalTimeSeriesMasterTest {
+
+  private static final ExternalIdBundle BUNDLE = ExternalIdBundle.of(ExternalId.of("A", "B"));
+  private static final LocalDate DATE1 = LocalDate.of(2011, 6, 1);
+  private static final LocalDate DATE2 = LocalDate.of(2011, 6, 2);
+  private static final LocalDate DATE3 = LocalDate.of(2011, 6, 3);
+  private static final LocalDate DATE4 = LocalDate.of(2011, 6, 6);
+
+  private File _directory;
+  private MappedHistoricalTimeSeriesMaster _master;
+  private HistoricalTimeSeriesInfoDocument _doc;
+
+  @BeforeMethod
+  public void setUp() {
+    _directory = new File(System.getProperty("java.io.tmpdir"), "MappedHistoricalTimeSeriesMaster-" + System.currentTimeMillis());
+    // Small files so that the tests span more than one
+    _master = new MappedHistoricalTimeSeriesMaster(_directory, "Test", new BasicChangeManager(), 256);
+    final ManageableHistoricalTimeSeriesInfo info = new ManageableHistoricalTimeSeriesInfo();
+    info.setName("Name");
+    info.setDataField("DF");
+    info.setDataSource("DS");
+    info.setDataProvider("DP");
+    info.setObservationTime("OT");
+    info.setExternalIdBundle(ExternalIdBundleWithDates.of(BUNDLE));
+    final HistoricalTimeSeriesInfoDocument doc = new HistoricalTimeSeriesInfoDocument();
+    doc.setInfo(info);
+    _doc = _master.add(doc);
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    _master.close();
+    FileUtils.deleteDirectory(_directory);
+  }
+
+  private void reopen() {
+    _master.close();
+    _master = new MappedHistoricalTimeSeriesMaster(_directory, "Test", new BasicChangeManager(), 256);
+  }
+
+  private static LocalDateDoubleTimeSeries series(final LocalDate[] dates, final double[] values) {
+    return new ArrayLocalDateDoubleTimeSeries(dates, values);
+  }
+
+  //-------------------------------------------------------------------------
+  public void test_getTimeSeries_empty() {
+    final ManageableHistoricalTimeSeries result = _master.getTimeSeries(_doc.getInfo().getTimeSeriesObjectId(), VersionCorrection.LATEST, null, null);
+    assertEquals(0, result.getTimeSeries().size());
+    assertNull(result.getEarliest());
+    assertNull(result.getLatest());
+  }
+
+  @Test(expectedExceptions = DataNotFoundException.class)
+  public void test_getTimeSeries_notFound() {
+    _master.getTimeSeries(UniqueId.of("Test", "99"), null, null);
+  }
+
+  public void test_updateTimeSeriesDataPoints_range() {
+    final UniqueId uniqueId = _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE1, DATE2 }, new double[] {1, 2 }));
+    _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE3, DATE4 }, new double[] {3, 4 }));
+    ManageableHistoricalTimeSeries result = _master.getTimeSeries(uniqueId, null, null);
+    assertEquals(series(new LocalDate[] {DATE1, DATE2, DATE3, DATE4 }, new double[] {1, 2, 3, 4 }), result.getTimeSeries());
+    result = _master.getTimeSeries(uniqueId, DATE2, LocalDate.of(2011, 6, 4));
+    assertEquals(series(new LocalDate[] {DATE2, DATE3 }, new double[] {2, 3 }), result.getTimeSeries());
+    assertEquals(DATE1, result.getEarliest());
+    assertEquals(DATE4, result.getLatest());
+    result = _master.getTimeSeries(uniqueId, LocalDate.of(2011, 6, 4), LocalDate.of(2011, 6, 5));
+    assertEquals(0, result.getTimeSeries().size());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void test_updateTimeSeriesDataPoints_overlap() {
+    _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE1, DATE2 }, new double[] {1, 2 }));
+    _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE2, DATE3 }, new double[] {2, 3 }));
+  }
+
+  public void test_updateTimeSeriesDataPoints_grow() {
+    final int count = 200;
+    for (int i = 0; i < count; i++) {
+      _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE1.plusDays(i) }, new double[] {i }));
+    }
+    final LocalDateDoubleTimeSeries result = _master.getTimeSeries(_doc.getInfo().getTimeSeriesObjectId(), VersionCorrection.LATEST, null, null).getTimeSeries();
+    assertEquals(count, result.size());
+    for (int i = 0; i < count; i++) {
+      assertEquals((double) i, result.getValue(DATE1.plusDays(i)));
+    }
+  }
+
+  public void test_correctTimeSeriesDataPoints() {
+    _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE1, DATE3 }, new double[] {1, 3 }));
+    _master.correctTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE2, DATE3 }, new double[] {2, 30 }));
+    final LocalDateDoubleTimeSeries result = _master.getTimeSeries(_doc.getInfo().getTimeSeriesObjectId(), VersionCorrection.LATEST, null, null).getTimeSeries();
+    assertEquals(series(new LocalDate[] {DATE1, DATE2, DATE3 }, new double[] {1, 2, 30 }), result);
+  }
+
+  public void test_removeTimeSeriesDataPoints() {
+    _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE1, DATE2, DATE3, DATE4 }, new double[] {1, 2, 3, 4 }));
+    _master.removeTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), DATE2, DATE3);
+    final LocalDateDoubleTimeSeries result = _master.getTimeSeries(_doc.getInfo().getTimeSeriesObjectId(), VersionCorrection.LATEST, null, null).getTimeSeries();
+    assertEquals(series(new LocalDate[] {DATE1, DATE4 }, new double[] {1, 4 }), result);
+  }
+
+  public void test_removeTimeSeriesDataPoints_unbounded() {
+    _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE1, DATE2, DATE3, DATE4 }, new double[] {1, 2, 3, 4 }));
+    _master.removeTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), DATE3, null);
+    LocalDateDoubleTimeSeries result = _master.getTimeSeries(_doc.getInfo().getTimeSeriesObjectId(), VersionCorrection.LATEST, DATE2, null).getTimeSeries();
+    assertEquals(series(new LocalDate[] {DATE2 }, new double[] {2 }), result);
+    _master.removeTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), null, DATE1);
+    result = _master.getTimeSeries(_doc.getInfo().getTimeSeriesObjectId(), VersionCorrection.LATEST, null, null).getTimeSeries();
+    assertEquals(series(new LocalDate[] {DATE2 }, new double[] {2 }), result);
+  }
+
+  @Test(expectedExceptions = DataNotFoundException.class)
+  public void test_remove() {
+    _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE1 }, new double[] {1 }));
+    _master.remove(_doc.getUniqueId());
+    assertEquals(0, _master.search(new HistoricalTimeSeriesInfoSearchRequest()).getDocuments().size());
+    _master.getTimeSeries(_doc.getInfo().getTimeSeriesObjectId(), VersionCorrection.LATEST, null, null);
+  }
+
+  //-------------------------------------------------------------------------
+  public void test_reopen() {
+    _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE1, DATE2 }, new double[] {1, 2 }));
+    final HistoricalTimeSeriesInfoDocument removed = new HistoricalTimeSeriesInfoDocument();
+    removed.setInfo(JodaBeanUtils.clone(_doc.getInfo()));
+    _master.remove(_master.add(removed).getUniqueId());
+    reopen();
+    assertEquals(_doc.getInfo(), _master.get(_doc.getUniqueId()).getInfo());
+    assertEquals(1, _master.search(new HistoricalTimeSeriesInfoSearchRequest()).getDocuments().size());
+    assertEquals(series(new LocalDate[] {DATE1, DATE2 }, new double[] {1, 2 }),
+        _master.getTimeSeries(_doc.getInfo().getTimeSeriesObjectId(), VersionCorrection.LATEST, null, null).getTimeSeries());
+    _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {DATE3 }, new double[] {3 }));
+    final HistoricalTimeSeriesInfoDocument added = new HistoricalTimeSeriesInfoDocument();
+    added.setInfo(JodaBeanUtils.clone(_doc.getInfo()));
+    assertEquals("3", _master.add(added).getUniqueId().getValue());
+    reopen();
+    assertEquals(series(new LocalDate[] {DATE1, DATE2, DATE3 }, new double[] {1, 2, 3 }),
+        _master.getTimeSeries(_doc.getInfo().getTimeSeriesObjectId(), VersionCorrection.LATEST, null, null).getTimeSeries());
+  }
+
+  public void test_reopen_compactsIndex() {
+    final LocalDate[] dates = new LocalDate[] {DATE1, DATE2, DATE3, DATE4 };
+    for (int i = 0; i < dates.length; i++) {
+      _master.updateTimeSeriesDataPoints(_doc.getInfo().getTimeSeriesObjectId(), series(new LocalDate[] {dates[i] }, new double[] {i + 1 }));
+    }
+    assertEquals(4 * 24, new File(_directory, "index.dat").length());
+    reopen();
+    assertEquals(24, new File(_directory, "index.dat").length());
+    assertFalse(new File(_directory, "index.tmp").exists());
+    assertEquals(series(new LocalDate[] {DATE1, DATE2, DATE3, DATE4 }, new double[] {1, 2, 3, 4 }),
+        _master.getTimeSeries(_doc.getInfo().getTimeSeriesObjectId(), VersionCorrection.LATEST, null, null).getTimeSeries());
+  }
+
+}
@@ -16,6 +16,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 
 import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
+import com.opengamma.engine.view.ViewComputationResultLayout;
 import com.opengamma.engine.view.ViewResultEntry;
 import com.opengamma.engine.view.ViewResultModel;
 import com.opengamma.financial.conversion.ResultConverter;
@@ -57,45 +59,31 @@ public class AdHocBatchResultWriter extends AbstractBatchResultWriter {
     writeImpl(resultModel);
   }
   
-  @SuppressWarnings("unchecked")
   public void writeImpl(ViewResultModel resultModel) {
     List<SqlParameterSource> successes = new ArrayList<SqlParameterSource>();
     
-    int riskRunId = getRiskRunId();
+    Date evalInstant = new Date(resultModel.getCalculationTime().toEpochMillisLong());
     
-    for (ViewResultEntry result : resultModel.getAllResults()) {
-      ValueSpecification output = result.getComputedValue().getSpecification();
-      Object outputValue = result.getComputedValue().getValue();
-      
-      int calcConfId = getCalculationConfigurationId(result.getCalculationConfiguration());
-      
-      ResultConverter<Object> resultConverter;
-      try {
-        resultConverter = (ResultConverter<Object>) getResultConverterCache().getConverter(outputValue);
-      } catch (IllegalArgumentException e) {
-        s_logger.info("Could not convert value of type " + outputValue.getClass());
-        continue; // with ad hoc batches we accept this 
+    if (resultModel instanceof ColumnarViewComputationResultModel) {
+      // Read the values directly from the cells rather than creating an entry for each one
+      ColumnarViewComputationResultModel columnarModel = (ColumnarViewComputationResultModel) resultModel;
+      ViewComputationResultLayout layout = columnarModel.getLayout();
+      int calcConfigCount = layout.getCalculationConfigurationNames().size();
+      for (int calcConfig = 0; calcConfig < calcConfigCount; calcConfig++) {
+        int end = layout.getCellEnd(calcConfig);
+        int cell = columnarModel.nextPresentCell(layout.getCellStart(calcConfig));
+        if (cell < 0 || cell >= end) {
+          continue;
+        }
+        int calcConfId = getCalculationConfigurationId(layout.getCalculationConfigurationName(calcConfig));
+        for (; cell >= 0 && cell < end; cell = columnarModel.nextPresentCell(cell + 1)) {
+          addRiskValues(successes, calcConfId, layout.getCell(cell), columnarModel.getValue(cell), evalInstant);
+        }
       }
-      
-      Map<String, Double> valuesAsDoubles = resultConverter.convert(output.getValueName(), outputValue);
-      
-      int computationTargetId = getComputationTargetId(output.getTargetSpecification());
-      
-      for (Map.Entry<String, Double> riskValueEntry : valuesAsDoubles.entrySet()) {
-        int valueNameId = getValueNameId(riskValueEntry.getKey());
-        int functionUniqueId = getFunctionUniqueId(output.getFunctionUniqueId());
-      
-        RiskValue riskValue = new RiskValue();
-        riskValue.setId(generateUniqueId());
-        riskValue.setCalculationConfigurationId(calcConfId);
-        riskValue.setValueNameId(valueNameId);
-        riskValue.setFunctionUniqueId(functionUniqueId);
-        riskValue.setComputationTargetId(computationTargetId);
-        riskValue.setRunId(riskRunId);
-        riskValue.setValue(riskValueEntry.getValue());
-        riskValue.setEvalInstant(new Date(resultModel.getCalculationTime().toEpochMillisLong()));
-        riskValue.setComputeNodeId(_computeNodeId);
-        successes.add(riskValue.toSqlParameterSource());
+    } else {
+      for (ViewResultEntry result : resultModel.getAllResults()) {
+        int calcConfId = getCalculationConfigurationId(result.getCalculationConfiguration());
+        addRiskValues(successes, calcConfId, result.getComputedValue().getSpecification(), result.getComputedValue().getValue(), evalInstant);
       }
     }
     
@@ -111,5 +99,37 @@ public class AdHocBatchResultWriter extends AbstractBatchResultWriter {
     
     insertRows("risk", RiskValue.sqlInsertRisk(), successes);
   }
+  
+  @SuppressWarnings("unchecked")
+  private void addRiskValues(List<SqlParameterSource> successes, int calcConfId, ValueSpecification output, Object outputValue, Date evalInstant) {
+    ResultConverter<Object> resultConverter;
+    try {
+      resultConverter = (ResultConverter<Object>) getResultConverterCache().getConverter(outputValue);
+    } catch (IllegalArgumentException e) {
+      s_logger.info("Could not convert value of type " + outputValue.getClass());
+      return; // with ad hoc batches we accept this 
+    }
+    
+    Map<String, Double> valuesAsDoubles = resultConverter.convert(output.getValueName(), outputValue);
+    
+    int computationTargetId = getComputationTargetId(output.getTargetSpecification());
+    
+    for (Map.Entry<String, Double> riskValueEntry : valuesAsDoubles.entrySet()) {
+      int valueNameId = getValueNameId(riskValueEntry.getKey());
+      int functionUniqueId = getFunctionUniqueId(output.getFunctionUniqueId());
+    
+      RiskValue riskValue = new RiskValue();
+      riskValue.setId(generateUniqueId());
+      riskValue.setCalculationConfigurationId(calcConfId);
+      riskValue.setValueNameId(valueNameId);
+      riskValue.setFunctionUniqueId(functionUniqueId);
+      riskValue.setComputationTargetId(computationTargetId);
+      riskValue.setRunId(getRiskRunId());
+      riskValue.setValue(riskValueEntry.getValue());
+      riskValue.setEvalInstant(evalInstant);
+      riskValue.setComputeNodeId(_computeNodeId);
+      successes.add(riskValue.toSqlParameterSource());
+    }
+  }
 
 }
@@ -46,7 +46,7 @@ public abstract class FudgeSynchronousClient implements FudgeMessageReceiver {
   /**
    * The map of pending requests keyed by correlation id.
    */
-  private final Map<Long, ClientRequestHolder> _pendingRequests = new ConcurrentHashMap<Long, ClientRequestHolder>();
+  private final Map<Long, PendingRequest> _pendingRequests = new ConcurrentHashMap<Long, PendingRequest>();
   /**
    * The timeout.
    */
@@ -132,23 +132,50 @@ public abstract class FudgeSynchronousClient implements FudgeMessageReceiver {
    * @return the result
    */
   protected FudgeMsg sendRequestAndWaitForResponse(FudgeMsg requestMsg, long correlationId) {
-    ClientRequestHolder requestHolder = new ClientRequestHolder();
-    _pendingRequests.put(correlationId, requestHolder);
+    return waitForResponse(sendRequest(requestMsg, correlationId));
+  }
+
+  /**
+   * Sends the message without waiting for the response. Any number of requests may be in flight at
+   * once; the responses are matched by correlation id and must be collected with {@link #waitForResponse}.
+   * 
+   * @param requestMsg  the message, not null
+   * @param correlationId  the message id
+   * @return the handle to pass to {@link #waitForResponse}, not null
+   */
+  protected PendingRequest sendRequest(FudgeMsg requestMsg, long correlationId) {
+    final PendingRequest request = new PendingRequest(correlationId);
+    _pendingRequests.put(correlationId, request);
     try {
       getMessageSender().send(requestMsg);
+    } catch (RuntimeException e) {
+      _pendingRequests.remove(correlationId);
+      throw e;
+    }
+    return request;
+  }
+
+  /**
+   * Waits for the response to a message sent by {@link #sendRequest}.
+   * 
+   * @param request  the handle returned by {@link #sendRequest}, not null
+   * @return the result
+   */
+  protected FudgeMsg waitForResponse(PendingRequest request) {
+    try {
       try {
-        requestHolder.latch.await(getTimeoutInMilliseconds(), TimeUnit.MILLISECONDS);
+        request.latch.await(getTimeoutInMilliseconds(), TimeUnit.MILLISECONDS);
       } catch (InterruptedException e) {
         Thread.interrupted();
-        s_logger.warn("Didn't get response to {} in {}ms", correlationId, getTimeoutInMilliseconds());
+        s_logger.warn("Didn't get response to {} in {}ms", request.correlationId, getTimeoutInMilliseconds());
       }
-      if (requestHolder.resultValue == null) {
-        throw new OpenGammaRuntimeException("Didn't receive a response message to " + correlationId + " in " + getTimeoutInMilliseconds() + "ms");
+      if (request.resultValue == null) {
+        throw new OpenGammaRuntimeException("Didn't receive a response message to " + request.correlationId + " in " + getTimeoutInMilliseconds() + "ms");
       }
-      assert getCorrelationIdFromReply(requestHolder.resultValue) == correlationId;
-      return requestHolder.resultValue;
+      assert getCorrelationIdFromReply(request.resultValue) == request.correlationId;
+      return request.resultValue;
     } finally {
-      _pendingRequests.remove(correlationId);
+      _pendingRequests.remove(request.correlationId);
     }
   }
 
@@ -175,7 +202,7 @@ public abstract class FudgeSynchronousClient implements FudgeMessageReceiver {
       }
       return;
     }
-    final ClientRequestHolder requestHolder = _pendingRequests.remove(correlationId);
+    final PendingRequest requestHolder = _pendingRequests.remove(correlationId);
     if (requestHolder == null) {
       s_logger.warn("Got a response on non-pending correlation Id {}", correlationId);
       return;
@@ -194,11 +221,16 @@ public abstract class FudgeSynchronousClient implements FudgeMessageReceiver {
 
   //-------------------------------------------------------------------------
   /**
-   * Data holder.
+   * Data holder for a request awaiting its response.
    */
-  private static final class ClientRequestHolder {
-    public FudgeMsg resultValue; // CSIGNORE: simple holder object
-    public final CountDownLatch latch = new CountDownLatch(1); // CSIGNORE: simple holder object
+  protected static final class PendingRequest {
+    private final long correlationId;
+    private volatile FudgeMsg resultValue;
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private PendingRequest(final long correlationId) {
+      this.correlationId = correlationId;
+    }
   }
 
 }
@@ -5,6 +5,11 @@
  */
 package com.opengamma.util.timeseries.fast.integer;
 
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
 import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
 
 /**
@@ -26,4 +31,28 @@ public abstract class AbstractFastMutableIntDoubleTimeSeries extends AbstractFas
     primitiveRemoveDataPoint(time);
   }
 
+  private void replaceWith(final FastIntDoubleTimeSeries result) {
+    clear();
+    final IntIterator times = result.timesIteratorFast();
+    final DoubleIterator values = result.valuesIteratorFast();
+    while (times.hasNext()) {
+      primitivePutDataPoint(times.nextInt(), values.nextDouble());
+    }
+  }
+
+  @Override
+  public void operateInPlace(final UnaryOperator operator) {
+    replaceWith(operate(operator));
+  }
+
+  @Override
+  public void operateInPlace(final double other, final BinaryOperator operator) {
+    replaceWith(operate(other, operator));
+  }
+
+  @Override
+  public void operateInPlace(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
+    replaceWith(operate(other, operator));
+  }
+
 }
@@ -25,12 +25,17 @@ import java.util.SortedMap;
 import org.apache.commons.lang.ArrayUtils;
 
 import com.opengamma.util.timeseries.DoubleTimeSeries;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
 import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
 import com.opengamma.util.timeseries.fast.longint.FastLongDoubleTimeSeries;
 import com.opengamma.util.tuple.IntDoublePair;
 
 /**
- * 
+ * Immutable time series backed by primitive arrays.
+ * <p>
+ * A series may be a view onto a range of arrays shared with other series. The sub-series, head and tail operations,
+ * and the results of operations which don't change the times, share arrays rather than copying them.
  */
 public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSeries {
   /** An empty double time series with the time expressed as int and the millisecond-from-epoch date encoding */
@@ -39,11 +44,29 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
   private final int[] _times;
   private final double[] _values;
+  /** Index of the first point in the backing arrays */
+  private final int _start;
+  /** Index after the last point in the backing arrays */
+  private final int _end;
 
   public FastArrayIntDoubleTimeSeries(final DateTimeNumericEncoding encoding) {
     super(encoding);
     _times = new int[0];
     _values = new double[0];
+    _start = 0;
+    _end = 0;
+  }
+
+  /**
+   * Creates a view onto a range of arrays. The arrays are not copied and must not be modified after the series has been
+   * constructed.
+   */
+  private FastArrayIntDoubleTimeSeries(final DateTimeNumericEncoding encoding, final int[] times, final double[] values, final int start, final int end) {
+    super(encoding);
+    _times = times;
+    _values = values;
+    _start = start;
+    _end = end;
   }
 
   public FastArrayIntDoubleTimeSeries(final DateTimeNumericEncoding encoding, final Integer[] times,
@@ -51,6 +74,8 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
     super(encoding);
     _times = new int[times.length];
     _values = new double[values.length];
+    _start = 0;
+    _end = times.length;
     init(ArrayUtils.toPrimitive(times), ArrayUtils.toPrimitive(values));
   }
 
@@ -58,6 +83,8 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
     super(encoding);
     _times = new int[times.length];
     _values = new double[values.length];
+    _start = 0;
+    _end = times.length;
     init(times, values);
   }
 
@@ -85,6 +112,8 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
     }
     _times = new int[times.size()];
     _values = new double[values.size()];
+    _start = 0;
+    _end = _times.length;
     final Iterator<Double> iter = values.iterator();
     int i = 0;
     int maxTime = Integer.MIN_VALUE; // for checking the dates are sorted.
@@ -103,8 +132,19 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
   public FastArrayIntDoubleTimeSeries(final FastIntDoubleTimeSeries dts) {
     super(dts.getEncoding());
-    _times = dts.timesArrayFast();
-    _values = dts.valuesArrayFast();
+    if (dts instanceof FastArrayIntDoubleTimeSeries) {
+      // Immutable, so the arrays can be shared
+      final FastArrayIntDoubleTimeSeries other = (FastArrayIntDoubleTimeSeries) dts;
+      _times = other._times;
+      _values = other._values;
+      _start = other._start;
+      _end = other._end;
+    } else {
+      _times = dts.timesArrayFast();
+      _values = dts.valuesArrayFast();
+      _start = 0;
+      _end = _times.length;
+    }
   }
 
   public FastArrayIntDoubleTimeSeries(final DateTimeNumericEncoding encoding, final FastIntDoubleTimeSeries dts) {
@@ -115,6 +155,8 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
       _times[i] = sourceEncoding.convertToInt(_times[i], encoding);
     }
     _values = dts.valuesArrayFast();
+    _start = 0;
+    _end = _times.length;
   }
 
   public FastArrayIntDoubleTimeSeries(final FastLongDoubleTimeSeries dts) {
@@ -130,6 +172,8 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
       _times[i] = otherEncoding.convertToInt(otherTimes[i], encoding);
     }
     _values = dts.valuesArrayFast();
+    _start = 0;
+    _end = _times.length;
   }
 
   public FastArrayIntDoubleTimeSeries(final DateTimeNumericEncoding encoding,
@@ -138,6 +182,8 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
     final int size = initialMap.size();
     _times = new int[size];
     _values = new double[size];
+    _start = 0;
+    _end = size;
     final Iterator<Entry<Integer, Double>> iterator = initialMap.entrySet().iterator();
     int i = 0;
     while (iterator.hasNext()) {
@@ -153,26 +199,18 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
     if (isEmpty()) {
       return EMPTY_SERIES;
     }
-    // throw new NoSuchElementException("Series is empty")
-    int startPos = Arrays.binarySearch(_times, startTime);
-    int endPos = (endTime == Integer.MIN_VALUE) ? _times.length : Arrays.binarySearch(_times, endTime);
-    // if either is -1, make it zero
+    int startPos = Arrays.binarySearch(_times, _start, _end, startTime);
+    int endPos = (endTime == Integer.MIN_VALUE) ? _end : Arrays.binarySearch(_times, _start, _end, endTime);
     startPos = startPos >= 0 ? startPos : -(startPos + 1);
     endPos = endPos >= 0 ? endPos : -(endPos + 1);
-    final int length = endPos - startPos; // trying it out anyway.
-    if (endPos >= _times.length) {
-      endPos--;
+    if (endPos < startPos) {
+      throw new IllegalArgumentException("endTime must not be before startTime");
     }
-
-    final int[] resultTimes = new int[length];
-    final double[] resultValues = new double[length];
-    System.arraycopy(_times, startPos, resultTimes, 0, length);
-    System.arraycopy(_values, startPos, resultValues, 0, length);
-    return new FastArrayIntDoubleTimeSeries(getEncoding(), resultTimes, resultValues);
+    return new FastArrayIntDoubleTimeSeries(getEncoding(), _times, _values, startPos, endPos);
   }
 
   public double getDataPointFast(final int time) {
-    final int index = Arrays.binarySearch(_times, time);
+    final int index = Arrays.binarySearch(_times, _start, _end, time);
     if (index >= 0) {
       return _values[index];
     } else {
@@ -182,8 +220,8 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
   @Override
   public int getEarliestTimeFast() {
-    if (_times.length > 0) {
-      return _times[0];
+    if (_end > _start) {
+      return _times[_start];
     } else {
       throw new NoSuchElementException("Series is empty");
     }
@@ -191,8 +229,8 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
   @Override
   public double getEarliestValueFast() {
-    if (_values.length > 0) {
-      return _values[0];
+    if (_end > _start) {
+      return _values[_start];
     } else {
       throw new NoSuchElementException("Series is empty");
     }
@@ -200,9 +238,8 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
   @Override
   public int getLatestTimeFast() {
-    if (_times.length > 0) {
-      final int index = _times.length - 1;
-      return _times[index];
+    if (_end > _start) {
+      return _times[_end - 1];
     } else {
       throw new NoSuchElementException("Series is empty");
     }
@@ -210,19 +247,19 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
   @Override
   public double getLatestValueFast() {
-    if (_values.length > 0) {
-      return _values[_values.length - 1];
+    if (_end > _start) {
+      return _values[_end - 1];
     } else {
       throw new NoSuchElementException("Series is empty");
     }
   }
 
   /* package */class PrimitiveArrayDoubleTimeSeriesIterator implements ObjectIterator<Int2DoubleMap.Entry> {
-    private int _current;
+    private int _current = _start;
 
     @Override
     public boolean hasNext() {
-      return _current < _times.length;
+      return _current < _end;
     }
 
     @Override
@@ -243,31 +280,28 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
     @Override
     public int skip(final int n) {
-      final int skipped = n > (_times.length - _current) ? _times.length - _current : n;
-      _current += n;
-      if (_current >= _times.length) {
-        _current = _times.length;
-      }
+      final int skipped = n > (_end - _current) ? _end - _current : n;
+      _current += skipped;
       return skipped;
     }
   }
 
   @Override
   public int size() {
-    return _times.length;
+    return _end - _start;
   }
 
   @Override
   public boolean isEmpty() {
-    return _times.length == 0;
+    return _end == _start;
   }
 
   /* package */class PrimitiveArrayIntDoubleTimeSeriesTimesIterator implements IntIterator {
-    private int _current;
+    private int _current = _start;
 
     @Override
     public boolean hasNext() {
-      return _current < _times.length;
+      return _current < _end;
     }
 
     @Override
@@ -299,21 +333,18 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
     @Override
     public int skip(final int n) {
-      final int skipped = n > (_times.length - _current) ? _times.length - _current : n;
-      _current += n;
-      if (_current >= _times.length) {
-        _current = _times.length;
-      }
+      final int skipped = n > (_end - _current) ? _end - _current : n;
+      _current += skipped;
       return skipped;
     }
   }
 
   /* package */class PrimitiveArrayIntDoubleTimeSeriesValuesIterator implements DoubleIterator {
-    private int _current;
+    private int _current = _start;
 
     @Override
     public boolean hasNext() {
-      return _current < _values.length;
+      return _current < _end;
     }
 
     @Override
@@ -345,11 +376,8 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
     @Override
     public int skip(final int n) {
-      final int skipped = n > (_times.length - _current) ? _times.length - _current : n;
-      _current += n;
-      if (_current >= _times.length) {
-        _current = _times.length;
-      }
+      final int skipped = n > (_end - _current) ? _end - _current : n;
+      _current += skipped;
       return skipped;
     }
   }
@@ -361,27 +389,31 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
   @Override
   public double[] valuesArrayFast() {
-    return _values.clone();
+    if ((_start == 0) && (_end == _values.length)) {
+      return _values.clone();
+    } else {
+      return Arrays.copyOfRange(_values, _start, _end);
+    }
   }
 
   @Override
   public int[] timesArrayFast() {
-    return _times.clone();
+    if ((_start == 0) && (_end == _times.length)) {
+      return _times.clone();
+    } else {
+      return Arrays.copyOfRange(_times, _start, _end);
+    }
   }
 
   @Override
   public int getTimeFast(final int index) {
-    return _times[index];
+    return _times[_start + index];
   }
 
   @Override
   public FastIntDoubleTimeSeries tailFast(final int numItems) {
-    if (numItems <= _times.length) {
-      final int[] times = new int[numItems];
-      final double[] values = new double[numItems];
-      System.arraycopy(_times, _times.length - numItems, times, 0, numItems);
-      System.arraycopy(_values, _values.length - numItems, values, 0, numItems);
-      return new FastArrayIntDoubleTimeSeries(getEncoding(), times, values);
+    if (numItems <= size()) {
+      return new FastArrayIntDoubleTimeSeries(getEncoding(), _times, _values, _end - numItems, _end);
     } else {
       throw new NoSuchElementException("Not enough elements");
     }
@@ -389,17 +421,28 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
   @Override
   public FastIntDoubleTimeSeries headFast(final int numItems) {
-    if (numItems <= _times.length) {
-      final int[] times = new int[numItems];
-      final double[] values = new double[numItems];
-      System.arraycopy(_times, 0, times, 0, numItems);
-      System.arraycopy(_values, 0, values, 0, numItems);
-      return new FastArrayIntDoubleTimeSeries(getEncoding(), times, values);
+    if (numItems <= size()) {
+      return new FastArrayIntDoubleTimeSeries(getEncoding(), _times, _values, _start, _start + numItems);
     } else {
       throw new NoSuchElementException("Not enough elements");
     }
   }
 
+  private boolean valuesEqual(final double[] values, final int start, final int end) {
+    if ((end - start) != size()) {
+      return false;
+    }
+    if ((values == _values) && (start == _start)) {
+      return true;
+    }
+    for (int i = _start, j = start; i < _end; i++, j++) {
+      if (Double.doubleToLongBits(_values[i]) != Double.doubleToLongBits(values[j])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * {@inheritDoc}
    * Note that this is so complicated to try and provide optimal performance. A
@@ -416,14 +459,15 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
     if (getClass() != obj.getClass()) {
       if (obj instanceof FastIntDoubleTimeSeries) {
         final FastIntDoubleTimeSeries other = (FastIntDoubleTimeSeries) obj;
-        if (!Arrays.equals(other.valuesArrayFast(), _values)) {
+        final double[] otherValues = other.valuesArrayFast();
+        if (!valuesEqual(otherValues, 0, otherValues.length)) {
           return false;
         }
         if (other.getEncoding().equals(getEncoding())) {
-          return Arrays.equals(other.timesArrayFast(), _times);
+          return IntDoubleArrayOperations.sameTimes(other.timesArrayFast(), 0, _times, _start, size());
         } else {
           final IntIterator otherTimesIterator = other.timesIteratorFast();
-          int i = 0;
+          int i = _start;
           final DateTimeNumericEncoding otherEncoding = other.getEncoding();
           final DateTimeNumericEncoding myEncoding = getEncoding();
           // invarient is that both are the same length as we got past the
@@ -437,11 +481,12 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
         }
       } else if (obj instanceof FastLongDoubleTimeSeries) {
         final FastLongDoubleTimeSeries other = (FastLongDoubleTimeSeries) obj;
-        if (!Arrays.equals(other.valuesArrayFast(), _values)) {
+        final double[] otherValues = other.valuesArrayFast();
+        if (!valuesEqual(otherValues, 0, otherValues.length)) {
           return false;
         }
         final LongIterator otherTimesIterator = other.timesIteratorFast();
-        int i = 0;
+        int i = _start;
         final DateTimeNumericEncoding otherEncoding = other.getEncoding();
         final DateTimeNumericEncoding myEncoding = getEncoding();
         // invarient is that both are the same length as we got past the
@@ -461,22 +506,22 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
       if (size() != other.size()) { // should always be O(1)
         return false;
       }
-      if (!Arrays.equals(_values, other._values)) {
+      if (!valuesEqual(other._values, other._start, other._end)) {
         return false;
       }
       if (other.getEncoding() == getEncoding()) {
-        if (!Arrays.equals(_times, other._times)) {
+        if (!IntDoubleArrayOperations.sameTimes(_times, _start, other._times, other._start, size())) {
           return false;
         }
       } else {
         // encoding of other is different, must check...
-        // invariant: other.size() == _times.size();
+        // invariant: other.size() == size();
         final int[] myTimes = _times;
         final int[] otherTimes = other._times;
         final DateTimeNumericEncoding encoding = other.getEncoding();
         final DateTimeNumericEncoding myEncoding = getEncoding();
-        for (int i = 0; i < myTimes.length; i++) {
-          if (myTimes[i] != encoding.convertToInt(otherTimes[i], myEncoding)) {
+        for (int i = _start, j = other._start; i < _end; i++, j++) {
+          if (myTimes[i] != encoding.convertToInt(otherTimes[j], myEncoding)) {
             return false;
           }
         }
@@ -487,22 +532,28 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
   @Override
   public IntList timesFast() {
-    return new IntArrayList(_times);
+    return new IntArrayList(_times, _start, size());
   }
 
   @Override
   public DoubleList valuesFast() {
-    return new DoubleArrayList(_values);
+    return new DoubleArrayList(_values, _start, size());
   }
 
   @Override
   public int hashCode() {
-    return Arrays.hashCode(_values);
+    // Same as Arrays.hashCode on the values in range
+    int result = 1;
+    for (int i = _start; i < _end; i++) {
+      final long bits = Double.doubleToLongBits(_values[i]);
+      result = 31 * result + (int) (bits ^ (bits >>> 32));
+    }
+    return result;
   }
 
   @Override
   public double getValueFast(final int time) {
-    final int binarySearch = Arrays.binarySearch(_times, time);
+    final int binarySearch = Arrays.binarySearch(_times, _start, _end, time);
     if (binarySearch >= 0 && _times[binarySearch] == time) {
       return _values[binarySearch];
     } else {
@@ -512,7 +563,7 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
 
   @Override
   public double getValueAtFast(final int index) {
-    return _values[index];
+    return _values[_start + index];
   }
 
   @Override
@@ -545,4 +596,75 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
     return new FastArrayIntDoubleTimeSeries(getEncoding(), times, values);
   }
 
+  /**
+   * Returns a series with new values at the times of this one. The times are shared if the series starts at the beginning
+   * of its backing array.
+   */
+  private FastIntDoubleTimeSeries withValues(final double[] values) {
+    if (_start == 0) {
+      return new FastArrayIntDoubleTimeSeries(getEncoding(), _times, values, 0, values.length);
+    } else {
+      return new FastArrayIntDoubleTimeSeries(getEncoding(), Arrays.copyOfRange(_times, _start, _end), values, 0, values.length);
+    }
+  }
+
+  @Override
+  public FastIntDoubleTimeSeries operate(final UnaryOperator operator) {
+    final double[] results = new double[size()];
+    IntDoubleArrayOperations.operate(_values, _start, results, 0, results.length, operator);
+    return withValues(results);
+  }
+
+  @Override
+  public FastIntDoubleTimeSeries operate(final double other, final BinaryOperator operator) {
+    final double[] results = new double[size()];
+    IntDoubleArrayOperations.operate(_values, _start, other, results, 0, results.length, operator);
+    return withValues(results);
+  }
+
+  /**
+   * Returns the other series, converted to this encoding if necessary, as a series which can be passed to the array operations.
+   */
+  private FastArrayIntDoubleTimeSeries toArraySeries(final FastIntDoubleTimeSeries other) {
+    if (other.getEncoding() == getEncoding()) {
+      if (other instanceof FastArrayIntDoubleTimeSeries) {
+        return (FastArrayIntDoubleTimeSeries) other;
+      }
+      return new FastArrayIntDoubleTimeSeries(other);
+    }
+    return new FastArrayIntDoubleTimeSeries(getEncoding(), other);
+  }
+
+  @Override
+  public FastIntDoubleTimeSeries operate(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
+    final FastArrayIntDoubleTimeSeries b = toArraySeries(other);
+    final int size = size();
+    if ((size == b.size()) && IntDoubleArrayOperations.sameTimes(_times, _start, b._times, b._start, size)) {
+      final double[] results = new double[size];
+      IntDoubleArrayOperations.operate(_values, _start, b._values, b._start, results, 0, size, operator);
+      return withValues(results);
+    }
+    final int capacity = Math.min(size, b.size());
+    final int[] resultTimes = new int[capacity];
+    final double[] resultValues = new double[capacity];
+    final int count = IntDoubleArrayOperations.intersection(_times, _values, _start, _end, b._times, b._values, b._start, b._end, resultTimes, resultValues, 0, operator);
+    return new FastArrayIntDoubleTimeSeries(getEncoding(), resultTimes, resultValues, 0, count);
+  }
+
+  @Override
+  public FastIntDoubleTimeSeries unionOperate(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
+    final FastArrayIntDoubleTimeSeries b = toArraySeries(other);
+    final int size = size();
+    if ((size == b.size()) && IntDoubleArrayOperations.sameTimes(_times, _start, b._times, b._start, size)) {
+      final double[] results = new double[size];
+      IntDoubleArrayOperations.operate(_values, _start, b._values, b._start, results, 0, size, operator);
+      return withValues(results);
+    }
+    final int capacity = size + b.size();
+    final int[] resultTimes = new int[capacity];
+    final double[] resultValues = new double[capacity];
+    final int count = IntDoubleArrayOperations.union(_times, _values, _start, _end, b._times, b._values, b._start, b._end, resultTimes, resultValues, operator);
+    return new FastArrayIntDoubleTimeSeries(getEncoding(), resultTimes, resultValues, 0, count);
+  }
+
 }
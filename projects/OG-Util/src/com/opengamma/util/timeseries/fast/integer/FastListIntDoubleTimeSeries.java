@@ -24,6 +24,8 @@ import java.util.SortedMap;
 
 import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.util.timeseries.DoubleTimeSeries;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
 import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
 import com.opengamma.util.timeseries.fast.longint.FastLongDoubleTimeSeries;
 import com.opengamma.util.tuple.IntDoublePair;
@@ -314,6 +316,41 @@ public class FastListIntDoubleTimeSeries extends AbstractFastMutableIntDoubleTim
     }
   }
 
+  @Override
+  public void operateInPlace(final UnaryOperator operator) {
+    final double[] values = _values.elements();
+    IntDoubleArrayOperations.operate(values, 0, values, 0, _values.size(), operator);
+  }
+
+  @Override
+  public void operateInPlace(final double other, final BinaryOperator operator) {
+    final double[] values = _values.elements();
+    IntDoubleArrayOperations.operate(values, 0, other, values, 0, _values.size(), operator);
+  }
+
+  @Override
+  public void operateInPlace(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
+    final int[] times = _times.elements();
+    final double[] values = _values.elements();
+    final int size = _times.size();
+    if (other == this) {
+      IntDoubleArrayOperations.operate(values, 0, values, 0, values, 0, size, operator);
+      return;
+    }
+    int[] otherTimes = other.timesArrayFast();
+    if (other.getEncoding() != getEncoding()) {
+      final DateTimeNumericEncoding otherEncoding = other.getEncoding();
+      for (int i = 0; i < otherTimes.length; i++) {
+        otherTimes[i] = otherEncoding.convertToInt(otherTimes[i], getEncoding());
+      }
+    }
+    final double[] otherValues = other.valuesArrayFast();
+    // Results are never written ahead of the point being read, so can go straight into the backing arrays
+    final int count = IntDoubleArrayOperations.intersection(times, values, 0, size, otherTimes, otherValues, 0, otherTimes.length, times, values, 0, operator);
+    _times.size(count);
+    _values.size(count);
+  }
+
   // REVIEW: jim 15-Feb-2010 -- should these be here (head and tail)?
 
   @Override
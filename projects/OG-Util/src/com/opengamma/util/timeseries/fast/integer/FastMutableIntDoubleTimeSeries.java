@@ -5,6 +5,9 @@
  */
 package com.opengamma.util.timeseries.fast.integer;
 
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
+
 /**
  * 
  */
@@ -14,4 +17,30 @@ public interface FastMutableIntDoubleTimeSeries extends FastIntDoubleTimeSeries
   void primitiveRemoveDataPoint(int time);
 
   void clear();
+
+  /**
+   * Replaces each value with the result of applying the operator to it.
+   * 
+   * @param operator the operator
+   */
+  void operateInPlace(UnaryOperator operator);
+
+  /**
+   * Replaces each value with the result of applying the operator to it and a scalar.
+   * 
+   * @param other the scalar, passed as the second operand
+   * @param operator the operator
+   */
+  void operateInPlace(double other, BinaryOperator operator);
+
+  /**
+   * Replaces each value with the result of applying the operator to it and the value at the same time in another series.
+   * Points at times not in the other series are removed, giving the same result as
+   * {@link #operate(FastIntDoubleTimeSeries, BinaryOperator)}.
+   * 
+   * @param other the other series, whose values are passed as the second operand
+   * @param operator the operator
+   */
+  void operateInPlace(FastIntDoubleTimeSeries other, BinaryOperator operator);
+
 }
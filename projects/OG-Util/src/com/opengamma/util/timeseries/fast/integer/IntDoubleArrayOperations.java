@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.util.timeseries.fast.integer;
+
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
+
+/**
+ * Bulk operations over ranges of the primitive time and value arrays backing the fast time series.
+ * <p>
+ * The standard operators from {@link DoubleTimeSeriesOperators} are applied in loops of their own rather than through
+ * the operator interface so that the loop bodies are simple enough for the JIT to unroll. The merge operations combine
+ * the time alignment and the operator in a single pass, writing directly into the result arrays.
+ */
+/* package */final class IntDoubleArrayOperations {
+
+  private IntDoubleArrayOperations() {
+  }
+
+  /**
+   * Tests whether two ranges of time arrays hold the same times.
+   *
+   * @param aTimes the first times
+   * @param aStart the first index of the first range
+   * @param bTimes the second times
+   * @param bStart the first index of the second range
+   * @param length the length of both ranges
+   * @return true if the ranges are equal
+   */
+  public static boolean sameTimes(final int[] aTimes, final int aStart, final int[] bTimes, final int bStart, final int length) {
+    if ((aTimes == bTimes) && (aStart == bStart)) {
+      return true;
+    }
+    for (int i = 0; i < length; i++) {
+      if (aTimes[aStart + i] != bTimes[bStart + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Applies a unary operator to a range of values.
+   *
+   * @param values the values
+   * @param start the first index of the range
+   * @param result the result array, may be the same as the values
+   * @param resultStart the first index to write the results to
+   * @param length the length of the range
+   * @param operator the operator
+   */
+  public static void operate(final double[] values, final int start, final double[] result, final int resultStart, final int length, final UnaryOperator operator) {
+    if (operator == DoubleTimeSeriesOperators.NEGATE_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = -values[start + i];
+      }
+    } else if (operator == DoubleTimeSeriesOperators.ABS_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = Math.abs(values[start + i]);
+      }
+    } else if (operator == DoubleTimeSeriesOperators.RECIPROCAL_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = 1 / values[start + i];
+      }
+    } else if (operator == DoubleTimeSeriesOperators.LOG_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = Math.log(values[start + i]);
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = operator.operate(values[start + i]);
+      }
+    }
+  }
+
+  /**
+   * Applies a binary operator to a range of values and a scalar.
+   *
+   * @param values the values
+   * @param start the first index of the range
+   * @param other the scalar, passed as the second operand
+   * @param result the result array, may be the same as the values
+   * @param resultStart the first index to write the results to
+   * @param length the length of the range
+   * @param operator the operator
+   */
+  public static void operate(final double[] values, final int start, final double other, final double[] result, final int resultStart, final int length,
+      final BinaryOperator operator) {
+    if (operator == DoubleTimeSeriesOperators.ADD_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = values[start + i] + other;
+      }
+    } else if (operator == DoubleTimeSeriesOperators.SUBTRACT_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = values[start + i] - other;
+      }
+    } else if (operator == DoubleTimeSeriesOperators.MULTIPLY_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = values[start + i] * other;
+      }
+    } else if (operator == DoubleTimeSeriesOperators.DIVIDE_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = values[start + i] / other;
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = operator.operate(values[start + i], other);
+      }
+    }
+  }
+
+  /**
+   * Applies a binary operator element-wise to two ranges of values of the same length, for series with the same times.
+   *
+   * @param aValues the first operands
+   * @param aStart the first index of the first operands
+   * @param bValues the second operands
+   * @param bStart the first index of the second operands
+   * @param result the result array, may be the same as either of the operands
+   * @param resultStart the first index to write the results to
+   * @param length the length of the ranges
+   * @param operator the operator
+   */
+  public static void operate(final double[] aValues, final int aStart, final double[] bValues, final int bStart, final double[] result, final int resultStart,
+      final int length, final BinaryOperator operator) {
+    if (operator == DoubleTimeSeriesOperators.ADD_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = aValues[aStart + i] + bValues[bStart + i];
+      }
+    } else if (operator == DoubleTimeSeriesOperators.SUBTRACT_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = aValues[aStart + i] - bValues[bStart + i];
+      }
+    } else if (operator == DoubleTimeSeriesOperators.MULTIPLY_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = aValues[aStart + i] * bValues[bStart + i];
+      }
+    } else if (operator == DoubleTimeSeriesOperators.DIVIDE_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = aValues[aStart + i] / bValues[bStart + i];
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        result[resultStart + i] = operator.operate(aValues[aStart + i], bValues[bStart + i]);
+      }
+    }
+  }
+
+  /**
+   * Applies a binary operator to the values at the times present in both of two series. The result arrays must have space
+   * for the shorter of the two ranges. The result arrays may be the same as the first series' arrays if the result starts
+   * at or before the first series' range.
+   *
+   * @param aTimes the times of the first series
+   * @param aValues the values of the first series
+   * @param aStart the first index of the first series
+   * @param aEnd the index after the last of the first series
+   * @param bTimes the times of the second series
+   * @param bValues the values of the second series
+   * @param bStart the first index of the second series
+   * @param bEnd the index after the last of the second series
+   * @param resultTimes the result times
+   * @param resultValues the result values
+   * @param resultStart the first index to write the results to
+   * @param operator the operator
+   * @return the number of results written
+   */
+  public static int intersection(final int[] aTimes, final double[] aValues, int aStart, final int aEnd, final int[] bTimes, final double[] bValues, int bStart,
+      final int bEnd, final int[] resultTimes, final double[] resultValues, final int resultStart, final BinaryOperator operator) {
+    final int length = aEnd - aStart;
+    if ((length == (bEnd - bStart)) && sameTimes(aTimes, aStart, bTimes, bStart, length)) {
+      if ((resultTimes != aTimes) || (resultStart != aStart)) {
+        System.arraycopy(aTimes, aStart, resultTimes, resultStart, length);
+      }
+      operate(aValues, aStart, bValues, bStart, resultValues, resultStart, length, operator);
+      return length;
+    }
+    int result = resultStart;
+    while ((aStart < aEnd) && (bStart < bEnd)) {
+      final int aTime = aTimes[aStart];
+      final int bTime = bTimes[bStart];
+      if (aTime == bTime) {
+        resultTimes[result] = aTime;
+        resultValues[result++] = operator.operate(aValues[aStart++], bValues[bStart++]);
+      } else if (aTime < bTime) {
+        aStart++;
+      } else {
+        bStart++;
+      }
+    }
+    return result - resultStart;
+  }
+
+  /**
+   * Applies a binary operator to the values at the times present in both of two series, and takes the values at times
+   * present in only one of the series unchanged. The result arrays must have space for the sum of the two ranges and must
+   * not be the same as either series' arrays.
+   *
+   * @param aTimes the times of the first series
+   * @param aValues the values of the first series
+   * @param aStart the first index of the first series
+   * @param aEnd the index after the last of the first series
+   * @param bTimes the times of the second series
+   * @param bValues the values of the second series
+   * @param bStart the first index of the second series
+   * @param bEnd the index after the last of the second series
+   * @param resultTimes the result times
+   * @param resultValues the result values
+   * @param operator the operator
+   * @return the number of results written
+   */
+  public static int union(final int[] aTimes, final double[] aValues, int aStart, final int aEnd, final int[] bTimes, final double[] bValues, int bStart,
+      final int bEnd, final int[] resultTimes, final double[] resultValues, final BinaryOperator operator) {
+    final int length = aEnd - aStart;
+    if ((length == (bEnd - bStart)) && sameTimes(aTimes, aStart, bTimes, bStart, length)) {
+      System.arraycopy(aTimes, aStart, resultTimes, 0, length);
+      operate(aValues, aStart, bValues, bStart, resultValues, 0, length, operator);
+      return length;
+    }
+    int result = 0;
+    while ((aStart < aEnd) && (bStart < bEnd)) {
+      final int aTime = aTimes[aStart];
+      final int bTime = bTimes[bStart];
+      if (aTime == bTime) {
+        resultTimes[result] = aTime;
+        resultValues[result++] = operator.operate(aValues[aStart++], bValues[bStart++]);
+      } else if (aTime < bTime) {
+        resultTimes[result] = aTime;
+        resultValues[result++] = aValues[aStart++];
+      } else {
+        resultTimes[result] = bTime;
+        resultValues[result++] = bValues[bStart++];
+      }
+    }
+    if (aStart < aEnd) {
+      System.arraycopy(aTimes, aStart, resultTimes, result, aEnd - aStart);
+      System.arraycopy(aValues, aStart, resultValues, result, aEnd - aStart);
+      result += aEnd - aStart;
+    } else if (bStart < bEnd) {
+      System.arraycopy(bTimes, bStart, resultTimes, result, bEnd - bStart);
+      System.arraycopy(bValues, bStart, resultValues, result, bEnd - bStart);
+      result += bEnd - bStart;
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.util.timeseries.fast.integer;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.util.monitor.OperationTimer;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
+
+/**
+ * Tests the bulk operations of {@link FastArrayIntDoubleTimeSeries} against the generic implementations used by
+ * {@link FastListIntDoubleTimeSeries}.
+ */
+@Test
+public class FastArrayIntDoubleTimeSeriesTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(FastArrayIntDoubleTimeSeriesTest.class);
+
+  private static final DateTimeNumericEncoding ENCODING = DateTimeNumericEncoding.DATE_EPOCH_DAYS;
+
+  /**
+   * Operator that isn't one of the standard ones, so isn't given a loop of its own.
+   */
+  private static final BinaryOperator CUSTOM_OPERATOR = new BinaryOperator() {
+    @Override
+    public double operate(final double a, final double b) {
+      return 2 * a - b;
+    }
+  };
+
+  private static final BinaryOperator[] OPERATORS = new BinaryOperator[] {DoubleTimeSeriesOperators.ADD_OPERATOR, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR,
+    DoubleTimeSeriesOperators.MULTIPLY_OPERATOR, DoubleTimeSeriesOperators.DIVIDE_OPERATOR, DoubleTimeSeriesOperators.MAXIMUM_OPERATOR, CUSTOM_OPERATOR };
+
+  private static int[] randomTimes(final Random random, final int count, final int gap) {
+    final int[] times = new int[count];
+    int time = random.nextInt(gap);
+    for (int i = 0; i < count; i++) {
+      times[i] = time;
+      time += 1 + random.nextInt(gap);
+    }
+    return times;
+  }
+
+  private static double[] randomValues(final Random random, final int count) {
+    final double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = random.nextDouble() + 0.5;
+    }
+    return values;
+  }
+
+  public void testOperateMatchesGeneric() {
+    final Random random = new Random(1L);
+    for (int i = 0; i < 50; i++) {
+      final int[] aTimes = randomTimes(random, random.nextInt(100), 3);
+      final int[] bTimes = randomTimes(random, random.nextInt(100), 3);
+      final double[] aValues = randomValues(random, aTimes.length);
+      final double[] bValues = randomValues(random, bTimes.length);
+      final FastIntDoubleTimeSeries a = new FastArrayIntDoubleTimeSeries(ENCODING, aTimes, aValues);
+      final FastIntDoubleTimeSeries b = new FastArrayIntDoubleTimeSeries(ENCODING, bTimes, bValues);
+      final FastIntDoubleTimeSeries aList = new FastListIntDoubleTimeSeries(ENCODING, aTimes, aValues);
+      final FastIntDoubleTimeSeries bList = new FastListIntDoubleTimeSeries(ENCODING, bTimes, bValues);
+      for (BinaryOperator operator : OPERATORS) {
+        assertEquals(aList.operate(bList, operator), a.operate(b, operator));
+        assertEquals(aList.unionOperate(bList, operator), a.unionOperate(b, operator));
+        assertEquals(aList.operate(bList, operator), a.operate(bList, operator));
+        assertEquals(aList.operate(0.5, operator), a.operate(0.5, operator));
+      }
+      assertEquals(aList.operate(DoubleTimeSeriesOperators.NEGATE_OPERATOR), a.operate(DoubleTimeSeriesOperators.NEGATE_OPERATOR));
+      assertEquals(aList.operate(DoubleTimeSeriesOperators.LOG10_OPERATOR), a.operate(DoubleTimeSeriesOperators.LOG10_OPERATOR));
+    }
+  }
+
+  public void testOperateSameTimes() {
+    final Random random = new Random(2L);
+    final int[] times = randomTimes(random, 100, 3);
+    final FastIntDoubleTimeSeries a = new FastArrayIntDoubleTimeSeries(ENCODING, times, randomValues(random, times.length));
+    final FastIntDoubleTimeSeries b = new FastArrayIntDoubleTimeSeries(ENCODING, times, randomValues(random, times.length));
+    final FastIntDoubleTimeSeries sum = a.operate(b, DoubleTimeSeriesOperators.ADD_OPERATOR);
+    assertEquals(times.length, sum.size());
+    for (int i = 0; i < times.length; i++) {
+      assertEquals(times[i], sum.getTimeFast(i));
+      assertEquals(a.getValueAtFast(i) + b.getValueAtFast(i), sum.getValueAtFast(i));
+    }
+    assertEquals(sum, a.unionOperate(b, DoubleTimeSeriesOperators.ADD_OPERATOR));
+  }
+
+  public void testOperateOnViews() {
+    final Random random = new Random(3L);
+    final int[] times = randomTimes(random, 200, 2);
+    final double[] values = randomValues(random, times.length);
+    final FastIntDoubleTimeSeries series = new FastArrayIntDoubleTimeSeries(ENCODING, times, values);
+    final FastIntDoubleTimeSeries a = series.subSeriesFast(times[10], times[150]);
+    final FastIntDoubleTimeSeries b = series.subSeriesFast(times[50], times[190]);
+    final FastIntDoubleTimeSeries aCopy = new FastArrayIntDoubleTimeSeries(ENCODING, a.timesArrayFast(), a.valuesArrayFast());
+    final FastIntDoubleTimeSeries bCopy = new FastArrayIntDoubleTimeSeries(ENCODING, b.timesArrayFast(), b.valuesArrayFast());
+    for (BinaryOperator operator : OPERATORS) {
+      assertEquals(aCopy.operate(bCopy, operator), a.operate(b, operator));
+      assertEquals(aCopy.unionOperate(bCopy, operator), a.unionOperate(b, operator));
+      assertEquals(aCopy.operate(2.0, operator), a.operate(2.0, operator));
+    }
+    assertEquals(aCopy.operate(DoubleTimeSeriesOperators.ABS_OPERATOR), a.operate(DoubleTimeSeriesOperators.ABS_OPERATOR));
+  }
+
+  public void testViews() {
+    final int[] times = new int[] {1, 3, 5, 7, 9 };
+    final double[] values = new double[] {1.0, 3.0, 5.0, 7.0, 9.0 };
+    final FastIntDoubleTimeSeries series = new FastArrayIntDoubleTimeSeries(ENCODING, times, values);
+    final FastIntDoubleTimeSeries sub = series.subSeriesFast(2, 8);
+    assertEquals(3, sub.size());
+    assertEquals(3, sub.getEarliestTimeFast());
+    assertEquals(7.0, sub.getLatestValueFast());
+    assertEquals(5.0, sub.getValueFast(5));
+    assertEquals(5, sub.getTimeFast(1));
+    assertTrue(Arrays.equals(new int[] {3, 5, 7 }, sub.timesArrayFast()));
+    assertTrue(Arrays.equals(new double[] {3.0, 5.0, 7.0 }, sub.valuesArrayFast()));
+    final FastIntDoubleTimeSeries copy = new FastArrayIntDoubleTimeSeries(ENCODING, new int[] {3, 5, 7 }, new double[] {3.0, 5.0, 7.0 });
+    assertEquals(copy, sub);
+    assertEquals(sub, copy);
+    assertEquals(copy.hashCode(), sub.hashCode());
+    assertEquals(new FastListIntDoubleTimeSeries(copy), sub);
+    assertEquals(copy.timesFast(), sub.timesFast());
+    assertEquals(copy.valuesFast(), sub.valuesFast());
+    assertEquals(new FastArrayIntDoubleTimeSeries(ENCODING, new int[] {5 }, new double[] {5.0 }), sub.subSeriesFast(4, 6));
+    assertEquals(new FastArrayIntDoubleTimeSeries(ENCODING, new int[] {3, 5 }, new double[] {3.0, 5.0 }), sub.headFast(2));
+    assertEquals(new FastArrayIntDoubleTimeSeries(ENCODING, new int[] {5, 7 }, new double[] {5.0, 7.0 }), sub.tailFast(2));
+    assertEquals(series.subSeriesFast(5, Integer.MIN_VALUE), sub.subSeriesFast(5, Integer.MIN_VALUE).unionOperate(series.tailFast(1),
+        DoubleTimeSeriesOperators.FIRST_OPERATOR));
+    int count = 0;
+    final IntIterator iterator = sub.timesIteratorFast();
+    while (iterator.hasNext()) {
+      assertEquals(copy.getTimeFast(count++), iterator.nextInt());
+    }
+    assertEquals(3, count);
+  }
+
+  public void testOperateInPlace() {
+    final Random random = new Random(4L);
+    for (int i = 0; i < 20; i++) {
+      final int[] aTimes = randomTimes(random, random.nextInt(100), 3);
+      final int[] bTimes = randomTimes(random, random.nextInt(100), 3);
+      final double[] aValues = randomValues(random, aTimes.length);
+      final double[] bValues = randomValues(random, bTimes.length);
+      final FastIntDoubleTimeSeries a = new FastArrayIntDoubleTimeSeries(ENCODING, aTimes, aValues);
+      final FastIntDoubleTimeSeries b = new FastArrayIntDoubleTimeSeries(ENCODING, bTimes, bValues);
+      for (BinaryOperator operator : OPERATORS) {
+        FastMutableIntDoubleTimeSeries mutable = new FastListIntDoubleTimeSeries(ENCODING, aTimes, aValues);
+        mutable.operateInPlace(b, operator);
+        assertEquals(a.operate(b, operator), mutable);
+        mutable = new FastListIntDoubleTimeSeries(ENCODING, aTimes, aValues);
+        mutable.operateInPlace(3.0, operator);
+        assertEquals(a.operate(3.0, operator), mutable);
+        mutable = new FastMapIntDoubleTimeSeries(ENCODING, aTimes, aValues);
+        mutable.operateInPlace(b, operator);
+        assertEquals(a.operate(b, operator), new FastArrayIntDoubleTimeSeries(mutable));
+      }
+      final FastMutableIntDoubleTimeSeries mutable = new FastListIntDoubleTimeSeries(ENCODING, aTimes, aValues);
+      mutable.operateInPlace(mutable, DoubleTimeSeriesOperators.ADD_OPERATOR);
+      assertEquals(a.operate(2.0, DoubleTimeSeriesOperators.MULTIPLY_OPERATOR), mutable);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  private static double cycle(final FastIntDoubleTimeSeries[] series, final int window) {
+    double total = 0;
+    for (int i = 1; i < series.length; i++) {
+      final FastIntDoubleTimeSeries a = series[i - 1];
+      final FastIntDoubleTimeSeries b = series[i];
+      final FastIntDoubleTimeSeries returns = b.operate(a, DoubleTimeSeriesOperators.DIVIDE_OPERATOR).operate(1.0, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR);
+      final FastIntDoubleTimeSeries recent = returns.subSeriesFast(returns.getTimeFast(returns.size() - window), Integer.MIN_VALUE);
+      total += recent.operate(returns.tailFast(window), DoubleTimeSeriesOperators.MULTIPLY_OPERATOR).getLatestValueFast();
+    }
+    return total;
+  }
+
+  /**
+   * Tests of performance. "enabled = false" for the standard testing.
+   * <p>
+   * Compares a historical VaR style workload of element-wise operations and windowing over ten years of daily data on
+   * the array series with the same workload on the list series, which uses the generic operator implementations.
+   */
+  @Test(enabled = false)
+  public void performanceComparison() {
+    final int numSeries = 1000;
+    final int numPoints = 2600;
+    final int numCycles = 10;
+    final Random random = new Random(5L);
+    final int[] times = randomTimes(random, numPoints, 1);
+    final FastIntDoubleTimeSeries[] arraySeries = new FastIntDoubleTimeSeries[numSeries];
+    final FastIntDoubleTimeSeries[] listSeries = new FastIntDoubleTimeSeries[numSeries];
+    for (int i = 0; i < numSeries; i++) {
+      final double[] values = randomValues(random, numPoints);
+      arraySeries[i] = new FastArrayIntDoubleTimeSeries(ENCODING, times, values);
+      listSeries[i] = new FastListIntDoubleTimeSeries(ENCODING, times, values);
+    }
+    for (int i = 0; i < 3; i++) {
+      OperationTimer timer = new OperationTimer(s_logger, "Generic - {} cycles of {} series", numCycles, numSeries);
+      for (int j = 0; j < numCycles; j++) {
+        cycle(listSeries, 250);
+      }
+      long millis = timer.finished();
+      s_logger.info("Generic - {} ms/cycle", (double) millis / (double) numCycles);
+      timer = new OperationTimer(s_logger, "Array - {} cycles of {} series", numCycles, numSeries);
+      for (int j = 0; j < numCycles; j++) {
+        cycle(arraySeries, 250);
+      }
+      millis = timer.finished();
+      s_logger.info("Array - {} ms/cycle", (double) millis / (double) numCycles);
+    }
+  }
+
+}
@@ -30,7 +30,9 @@ import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueProperties;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
 import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewComputationResultLayout;
 import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewDefinition;
 import com.opengamma.engine.view.ViewTargetResultModel;
@@ -84,37 +86,65 @@ public abstract class RequirementBasedWebViewGrid extends WebViewGrid {
     
     // Whether or not the row is in the viewport, we may have to store history
     for (String calcConfigName : resultModel.getCalculationConfigurationNames()) {
-      
       for (ComputedValue value : resultModel.getAllValues(calcConfigName)) {
-        ValueSpecification specification = value.getSpecification();
-        Collection<WebViewGridColumn> columns = getGridStructure().getColumns(calcConfigName, specification);
-        if (columns == null) {
-          // Expect a column for every value
-          s_logger.warn("Could not find column for calculation configuration {} with value specification {}", calcConfigName, specification);
-          continue;
-        }
-        
-        Object originalValue = value.getValue();        
-        for (WebViewGridColumn column : columns) {
-          int colId = column.getId();
-          WebGridCell cell = WebGridCell.of(rowId, colId);
-          ResultConverter<Object> converter = originalValue != null ? getConverter(column, value.getSpecification().getValueName(), originalValue.getClass()) : null;
-          Map<String, Object> cellData = processCellValue(cell, specification, originalValue, resultTimestamp, converter);
-          Object depGraph = getDepGraphIfRequested(cell, calcConfigName, specification, resultTimestamp);
-          if (depGraph != null) {
-            if (cellData == null) {
-              cellData = new HashMap<String, Object>();
-            }
-            cellData.put("dg", depGraph);
-          }
-          if (cellData != null) {
-            valuesToSend.put(Integer.toString(colId), cellData);
-          }
-        }
+        processValue(rowId, calcConfigName, value.getSpecification(), value.getValue(), resultTimestamp, valuesToSend);
+      }
+    }
+    getRemoteClient().deliver(getLocalClient(), getUpdateChannel(), valuesToSend, null);
+  }
+  
+  /**
+   * Processes the results for a target from a columnar result model, reading the values directly from its cells.
+   * 
+   * @param target  the target specification
+   * @param result  the result model
+   * @param targetIndex  the index of the target in the result layout
+   * @param resultTimestamp  the result timestamp
+   */
+  public void processTargetResult(ComputationTargetSpecification target, ColumnarViewComputationResultModel result, int targetIndex, Long resultTimestamp) {
+    Integer rowId = getGridStructure().getRowId(target.getUniqueId());
+    if (rowId == null) {
+      // Result not in the grid
+      return;
+    }
+
+    Map<String, Object> valuesToSend = createDefaultTargetResult(rowId);
+    ViewComputationResultLayout layout = result.getLayout();
+    int calcConfigCount = layout.getCalculationConfigurationNames().size();
+    for (int calcConfig = 0; calcConfig < calcConfigCount; calcConfig++) {
+      String calcConfigName = layout.getCalculationConfigurationName(calcConfig);
+      int end = layout.getCellEnd(calcConfig, targetIndex);
+      for (int cell = result.nextPresentCell(layout.getCellStart(calcConfig, targetIndex)); cell >= 0 && cell < end; cell = result.nextPresentCell(cell + 1)) {
+        processValue(rowId, calcConfigName, layout.getCell(cell), result.getValue(cell), resultTimestamp, valuesToSend);
       }
     }
-    if (valuesToSend != null) {
-      getRemoteClient().deliver(getLocalClient(), getUpdateChannel(), valuesToSend, null);
+    getRemoteClient().deliver(getLocalClient(), getUpdateChannel(), valuesToSend, null);
+  }
+  
+  private void processValue(int rowId, String calcConfigName, ValueSpecification specification, Object originalValue, Long resultTimestamp,
+      Map<String, Object> valuesToSend) {
+    Collection<WebViewGridColumn> columns = getGridStructure().getColumns(calcConfigName, specification);
+    if (columns == null) {
+      // Expect a column for every value
+      s_logger.warn("Could not find column for calculation configuration {} with value specification {}", calcConfigName, specification);
+      return;
+    }
+    
+    for (WebViewGridColumn column : columns) {
+      int colId = column.getId();
+      WebGridCell cell = WebGridCell.of(rowId, colId);
+      ResultConverter<Object> converter = originalValue != null ? getConverter(column, specification.getValueName(), originalValue.getClass()) : null;
+      Map<String, Object> cellData = processCellValue(cell, specification, originalValue, resultTimestamp, converter);
+      Object depGraph = getDepGraphIfRequested(cell, calcConfigName, specification, resultTimestamp);
+      if (depGraph != null) {
+        if (cellData == null) {
+          cellData = new HashMap<String, Object>();
+        }
+        cellData.put("dg", depGraph);
+      }
+      if (cellData != null) {
+        valuesToSend.put(Integer.toString(colId), cellData);
+      }
     }
   }
   
@@ -286,9 +316,11 @@ public abstract class RequirementBasedWebViewGrid extends WebViewGrid {
 
   @Override
   protected String[][] getCsvRows(ViewComputationResultModel result) {
+    if (result instanceof ColumnarViewComputationResultModel) {
+      return getCsvRows((ColumnarViewComputationResultModel) result);
+    }
     String[][] rows = new String[getGridStructure().getTargets().size()][];
     int columnCount = getGridStructure().getColumns().size() + getAdditionalCsvColumnCount();
-    int offset = getCsvDataColumnOffset();
     for (ComputationTargetSpecification target : result.getAllTargets()) {
       Integer rowId = getGridStructure().getRowId(target.getUniqueId());
       if (rowId == null) {
@@ -300,27 +332,58 @@ public abstract class RequirementBasedWebViewGrid extends WebViewGrid {
       rows[rowId] = values;
       for (String calcConfigName : resultModel.getCalculationConfigurationNames()) {
         for (ComputedValue value : resultModel.getAllValues(calcConfigName)) {
-          Object originalValue = value.getValue();
-          if (originalValue == null) {
-            continue;
-          }
-          ValueSpecification specification = value.getSpecification();
-          Collection<WebViewGridColumn> columns = getGridStructure().getColumns(calcConfigName, specification);
-          if (columns == null) {
-            // Expect a column for every value
-            s_logger.warn("Could not find column for calculation configuration {} with value specification {}", calcConfigName, specification);
-            continue;
-          }
-          for (WebViewGridColumn column : columns) {
-            int colId = column.getId();
-            ResultConverter<Object> converter = originalValue != null ? getConverter(column, value.getSpecification().getValueName(), originalValue.getClass()) : null;
-            values[offset + colId] = converter.convertToText(getConverterCache(), value.getSpecification(), originalValue);
-          }
+          addCsvValue(values, calcConfigName, value.getSpecification(), value.getValue());
         }
       }
     }
     return rows;
   }
+  
+  private String[][] getCsvRows(ColumnarViewComputationResultModel result) {
+    String[][] rows = new String[getGridStructure().getTargets().size()][];
+    int columnCount = getGridStructure().getColumns().size() + getAdditionalCsvColumnCount();
+    ViewComputationResultLayout layout = result.getLayout();
+    int calcConfigCount = layout.getCalculationConfigurationNames().size();
+    for (int targetIndex = 0; targetIndex < layout.getTargetCount(); targetIndex++) {
+      if (!result.isReportedTarget(targetIndex)) {
+        continue;
+      }
+      ComputationTargetSpecification target = layout.getTarget(targetIndex);
+      Integer rowId = getGridStructure().getRowId(target.getUniqueId());
+      if (rowId == null) {
+        continue;
+      }
+      String[] values = new String[columnCount];
+      supplementCsvRowData(rowId, target, values);
+      rows[rowId] = values;
+      for (int calcConfig = 0; calcConfig < calcConfigCount; calcConfig++) {
+        String calcConfigName = layout.getCalculationConfigurationName(calcConfig);
+        int end = layout.getCellEnd(calcConfig, targetIndex);
+        for (int cell = result.nextPresentCell(layout.getCellStart(calcConfig, targetIndex)); cell >= 0 && cell < end; cell = result.nextPresentCell(cell + 1)) {
+          addCsvValue(values, calcConfigName, layout.getCell(cell), result.getValue(cell));
+        }
+      }
+    }
+    return rows;
+  }
+  
+  private void addCsvValue(String[] values, String calcConfigName, ValueSpecification specification, Object originalValue) {
+    if (originalValue == null) {
+      return;
+    }
+    Collection<WebViewGridColumn> columns = getGridStructure().getColumns(calcConfigName, specification);
+    if (columns == null) {
+      // Expect a column for every value
+      s_logger.warn("Could not find column for calculation configuration {} with value specification {}", calcConfigName, specification);
+      return;
+    }
+    int offset = getCsvDataColumnOffset();
+    for (WebViewGridColumn column : columns) {
+      int colId = column.getId();
+      ResultConverter<Object> converter = getConverter(column, specification.getValueName(), originalValue.getClass());
+      values[offset + colId] = converter.convertToText(getConverterCache(), specification, originalValue);
+    }
+  }
 
   protected int getAdditionalCsvColumnCount() {
     return 0;
@@ -26,6 +26,8 @@ import org.slf4j.LoggerFactory;
 import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.marketdata.spec.MarketDataSpecification;
+import com.opengamma.engine.view.ColumnarViewComputationResultModel;
+import com.opengamma.engine.view.ViewComputationResultLayout;
 import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewDeltaResultModel;
 import com.opengamma.engine.view.client.ViewClient;
@@ -298,6 +300,10 @@ public class WebView {
   
   private void processResult(ViewComputationResultModel resultModel) {
     long resultTimestamp = resultModel.getCalculationTime().toEpochMillisLong();
+    if (resultModel instanceof ColumnarViewComputationResultModel) {
+      processResult((ColumnarViewComputationResultModel) resultModel, resultTimestamp);
+      return;
+    }
     
     for (ComputationTargetSpecification target : resultModel.getAllTargets()) {
       switch (target.getType()) {
@@ -319,6 +325,29 @@ public class WebView {
     }
   }
   
+  private void processResult(ColumnarViewComputationResultModel resultModel, long resultTimestamp) {
+    ViewComputationResultLayout layout = resultModel.getLayout();
+    for (int targetIndex = 0; targetIndex < layout.getTargetCount(); targetIndex++) {
+      ComputationTargetSpecification target = layout.getTarget(targetIndex);
+      switch (target.getType()) {
+        case PRIMITIVE:
+          if (getPrimitivesGrid() != null && resultModel.isReportedTarget(targetIndex)) {
+            getPrimitivesGrid().processTargetResult(target, resultModel, targetIndex, resultTimestamp);
+          }
+          break;
+        case PORTFOLIO_NODE:
+        case POSITION:
+          if (getPortfolioGrid() != null && resultModel.isReportedTarget(targetIndex)) {
+            getPortfolioGrid().processTargetResult(target, resultModel, targetIndex, resultTimestamp);
+          }
+          break;
+        default:
+          // Something that the client does not display
+          continue;
+      }
+    }
+  }
+  
   /**
    * Tells the remote client that updates are starting.
    */